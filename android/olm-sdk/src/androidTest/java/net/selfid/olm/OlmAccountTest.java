@@ -42,6 +42,8 @@ import java.io.ObjectOutputStream;
 import java.util.Map;
 
 import static android.support.test.InstrumentationRegistry.getInstrumentation;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
@@ -490,4 +492,163 @@ public class OlmAccountTest {
             assertTrue(e.getMessage(),false);
         }
     }
+
+    /**
+     * - the packed identity keys match the JSON ones
+     * - the packed one time keys match the JSON ones
+     * - paging returns the same keys as a single call
+     * - the unpublished filter skips the published keys
+     */
+    @Test
+    public void test18PackedKeys() {
+        try {
+            OlmAccount account = new OlmAccount();
+
+            Map<String, String> identityKeys = account.identityKeys();
+            String[] identityKeysArray = account.identityKeysArray();
+            assertEquals(TestHelper.getIdentityKey(identityKeys), identityKeysArray[OlmAccount.IDENTITY_KEY_INDEX]);
+            assertEquals(TestHelper.getFingerprintKey(identityKeys), identityKeysArray[OlmAccount.FINGER_PRINT_KEY_INDEX]);
+
+            account.generateOneTimeKeys(5);
+            account.markOneTimeKeysAsPublished();
+            account.generateOneTimeKeys(3);
+            assertEquals(8, account.oneTimeKeysCount(false));
+            assertEquals(3, account.oneTimeKeysCount(true));
+
+            Map<String, String> jsonKeys = account.oneTimeKeys().get(OlmAccount.JSON_KEY_ONE_TIME_KEY);
+            OlmAccount.OneTimeKeys unpublished = account.oneTimeKeys(0, 100, true);
+            assertEquals(3, unpublished.mKeyIds.length);
+            for (int i = 0; i < unpublished.mKeyIds.length; i++) {
+                assertEquals(jsonKeys.get(unpublished.mKeyIds[i]), unpublished.mKeys[i]);
+            }
+
+            byte[] allKeys = account.oneTimeKeysPacked(0, 100, false);
+            assertEquals(8 * OlmAccount.PACKED_ONE_TIME_KEY_LENGTH, allKeys.length);
+            byte[] pagedKeys = new byte[allKeys.length];
+            int offset = 0;
+            byte[] page;
+            while ((page = account.oneTimeKeysPacked(offset, 3, false)).length > 0) {
+                System.arraycopy(page, 0, pagedKeys, offset * OlmAccount.PACKED_ONE_TIME_KEY_LENGTH, page.length);
+                offset += page.length / OlmAccount.PACKED_ONE_TIME_KEY_LENGTH;
+            }
+            assertEquals(8, offset);
+            assertArrayEquals(allKeys, pagedKeys);
+
+            account.releaseAccount();
+        } catch (OlmException e) {
+            assertTrue(e.getMessage(), false);
+        }
+    }
+
+    /**
+     * - the replenisher generates the missing keys in the background
+     * - no key is generated while a batch is being uploaded
+     * - a successful upload marks the batch as published, a failed one keeps it
+     */
+    @Test
+    public void test19OneTimeKeyReplenisher() {
+        OlmAccount account = null;
+        OlmOneTimeKeyReplenisher replenisher = null;
+
+        try {
+            account = new OlmAccount();
+            replenisher = new OlmOneTimeKeyReplenisher(account, 20);
+            assertEquals(20, replenisher.getTargetCount());
+            waitForReadyKeys(replenisher, 20);
+
+            OlmAccount.OneTimeKeys batch = replenisher.takeUploadBatch();
+            assertEquals(20, batch.mKeyIds.length);
+            assertNull(replenisher.takeUploadBatch());
+
+            // the server lost some keys while the upload was running: nothing is generated yet
+            replenisher.setServerKeyCount(0);
+            Thread.sleep(100);
+            assertEquals(20, replenisher.getReadyKeyCount());
+
+            replenisher.onUploadFailed(batch);
+            batch = replenisher.takeUploadBatch();
+            assertEquals(20, batch.mKeyIds.length);
+            replenisher.onUploadSucceeded(batch, 15);
+            synchronized (account) {
+                assertEquals(20, account.oneTimeKeysCount(false));
+            }
+
+            // 5 keys are missing on the server
+            waitForReadyKeys(replenisher, 5);
+            Thread.sleep(100);
+            assertEquals(5, replenisher.getReadyKeyCount());
+            batch = replenisher.takeUploadBatch();
+            assertEquals(5, batch.mKeyIds.length);
+            replenisher.onUploadSucceeded(batch, 20);
+            // a batch which isn't pending is ignored
+            replenisher.onUploadSucceeded(batch, 0);
+            Thread.sleep(100);
+            assertEquals(0, replenisher.getReadyKeyCount());
+        } catch (Exception e) {
+            assertTrue(e.getMessage(), false);
+        }
+
+        if (null != replenisher) {
+            replenisher.shutdown();
+        }
+        if (null != account) {
+            synchronized (account) {
+                account.releaseAccount();
+            }
+        }
+    }
+
+    /**
+     * - the unpublished keys are signed in one call, in the packed keys order
+     * - the signatures verify against the canonical key objects
+     * - the upload object holds one signed entry per key
+     * - a batch of messages gets the same signatures as one by one signing
+     */
+    @Test
+    public void test20SignedOneTimeKeys() {
+        try {
+            OlmAccount account = new OlmAccount();
+            OlmUtility utility = new OlmUtility();
+            String fingerprintKey = TestHelper.getFingerprintKey(account.identityKeys());
+
+            account.generateOneTimeKeys(2);
+            account.markOneTimeKeysAsPublished();
+            account.generateOneTimeKeys(3);
+
+            OlmAccount.OneTimeKeys unpublished = account.oneTimeKeys(0, 100, true);
+            OlmAccount.SignedOneTimeKeys signedKeys = account.signedOneTimeKeys(0, 100, true);
+            assertEquals(3, signedKeys.mKeys.length);
+            assertArrayEquals(unpublished.mKeyIds, signedKeys.mKeyIds);
+            assertArrayEquals(unpublished.mKeys, signedKeys.mKeys);
+
+            String[] payloads = new String[signedKeys.mKeys.length];
+            for (int i = 0; i < signedKeys.mKeys.length; i++) {
+                payloads[i] = "{\"key\":\"" + signedKeys.mKeys[i] + "\"}";
+                utility.verifyEd25519Signature(signedKeys.mSignatures[i], fingerprintKey, payloads[i]);
+            }
+            assertArrayEquals(signedKeys.mSignatures, account.signMessages(payloads));
+
+            JSONObject upload = new JSONObject(account.signedOneTimeKeysUpload("@alice:example.org", "DEVICEID"));
+            assertEquals(3, upload.length());
+            JSONObject signedKey = upload.getJSONObject(OlmAccount.JSON_KEY_SIGNED_ONE_TIME_KEY + ":" + signedKeys.mKeyIds[0]);
+            assertEquals(signedKeys.mKeys[0], signedKey.getString("key"));
+            assertEquals(signedKeys.mSignatures[0], signedKey.getJSONObject("signatures")
+                    .getJSONObject("@alice:example.org").getString("ed25519:DEVICEID"));
+
+            account.markOneTimeKeysAsPublished();
+            assertEquals("{}", account.signedOneTimeKeysUpload("@alice:example.org", "DEVICEID"));
+
+            utility.releaseUtility();
+            account.releaseAccount();
+        } catch (Exception e) {
+            assertTrue(e.getMessage(), false);
+        }
+    }
+
+    private static void waitForReadyKeys(OlmOneTimeKeyReplenisher aReplenisher, int aCount) throws InterruptedException {
+        for (int i = 0; (i < 100) && (aReplenisher.getReadyKeyCount() < aCount); i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(aCount, aReplenisher.getReadyKeyCount());
+    }
 }
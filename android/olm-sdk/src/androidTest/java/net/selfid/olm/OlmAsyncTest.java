@@ -0,0 +1,274 @@
+/*
+ * Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.selfid.olm;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.MethodSorters;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class OlmAsyncTest {
+    private static final String LOG_TAG = "OlmAsyncTest";
+
+    private static OlmManager mOlmManager;
+    private static OlmAsync mOlmAsync;
+
+    @BeforeClass
+    public static void setUpClass() {
+        // load native lib
+        mOlmManager = new OlmManager();
+        mOlmAsync = new OlmAsync(4, null);
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        mOlmAsync.shutdown();
+        assertTrue(mOlmAsync.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * - alice and bob set up an Olm session
+     * - alice queues many encryptions at once, bob queues their decryptions
+     * - the messages are decrypted in order
+     */
+    @Test
+    public void test01OrderedSessionMessages() throws Exception {
+        OlmAccount aliceAccount = new OlmAccount();
+        OlmAccount bobAccount = new OlmAccount();
+        bobAccount.generateOneTimeKeys(1);
+        String bobIdentityKey = TestHelper.getIdentityKey(bobAccount.identityKeys());
+        String bobOneTimeKey = TestHelper.getOneTimeKey(bobAccount.oneTimeKeys(), 1);
+
+        OlmSession aliceSession = new OlmSession();
+        aliceSession.initOutboundSession(aliceAccount, bobIdentityKey, bobOneTimeKey);
+        OlmMessage preKeyMessage = aliceSession.encryptMessage("hello");
+        OlmSession bobSession = new OlmSession();
+        bobSession.initInboundSession(bobAccount, preKeyMessage.mCipherText);
+        assertEquals("hello", bobSession.decryptMessage(preKeyMessage));
+
+        final int count = 50;
+        List<Future<OlmMessage>> encrypted = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            encrypted.add(mOlmAsync.encryptMessage(aliceSession, "message " + i, null));
+        }
+
+        List<Future<String>> decrypted = new ArrayList<>();
+        for (Future<OlmMessage> message : encrypted) {
+            decrypted.add(mOlmAsync.decryptMessage(bobSession, message.get(), null));
+        }
+
+        for (int i = 0; i < count; i++) {
+            assertEquals("message " + i, decrypted.get(i).get());
+        }
+        assertEquals(0, mOlmAsync.pendingCount(bobSession));
+
+        aliceSession.releaseSession();
+        bobSession.releaseSession();
+        aliceAccount.releaseAccount();
+        bobAccount.releaseAccount();
+    }
+
+    /**
+     * - several group sessions encrypt in parallel
+     * - the callbacks of each session report increasing message indexes
+     */
+    @Test
+    public void test02ParallelGroupSessions() throws Exception {
+        final int sessions = 8;
+        final int messages = 20;
+        final CountDownLatch latch = new CountDownLatch(sessions * messages);
+        final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+
+        List<OlmOutboundGroupSession> outboundSessions = new ArrayList<>();
+        List<OlmInboundGroupSession> inboundSessions = new ArrayList<>();
+        for (int i = 0; i < sessions; i++) {
+            OlmOutboundGroupSession outboundSession = new OlmOutboundGroupSession();
+            outboundSessions.add(outboundSession);
+            inboundSessions.add(new OlmInboundGroupSession(outboundSession.sessionKey()));
+        }
+
+        for (int i = 0; i < sessions; i++) {
+            final OlmInboundGroupSession inboundSession = inboundSessions.get(i);
+
+            for (int j = 0; j < messages; j++) {
+                final long expectedIndex = j;
+
+                mOlmAsync.encryptMessage(outboundSessions.get(i), "group message " + j, new OlmAsync.Callback<String>() {
+                    @Override
+                    public void onSuccess(String aResult) {
+                        mOlmAsync.decryptMessage(inboundSession, aResult, new OlmAsync.Callback<OlmInboundGroupSession.DecryptMessageResult>() {
+                            @Override
+                            public void onSuccess(OlmInboundGroupSession.DecryptMessageResult aResult) {
+                                if (expectedIndex != aResult.mIndex) {
+                                    errors.add("index " + aResult.mIndex + " instead of " + expectedIndex);
+                                }
+                                latch.countDown();
+                            }
+
+                            @Override
+                            public void onFailure(Exception aException) {
+                                errors.add(aException.getMessage());
+                                latch.countDown();
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void onFailure(Exception aException) {
+                        errors.add(aException.getMessage());
+                        latch.countDown();
+                    }
+                });
+            }
+        }
+
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        assertTrue(errors.toString(), errors.isEmpty());
+
+        for (int i = 0; i < sessions; i++) {
+            assertEquals(messages, outboundSessions.get(i).messageIndex());
+            outboundSessions.get(i).releaseSession();
+            inboundSessions.get(i).releaseSession();
+        }
+    }
+
+    /**
+     * - a decryption failure is reported to the callback and by the future
+     * - the following operations on the session still run
+     */
+    @Test
+    public void test03Failure() throws Exception {
+        OlmOutboundGroupSession outboundSession = new OlmOutboundGroupSession();
+        OlmInboundGroupSession inboundSession = new OlmInboundGroupSession(outboundSession.sessionKey());
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+
+        Future<OlmInboundGroupSession.DecryptMessageResult> future = mOlmAsync.decryptMessage(inboundSession, "not a message",
+                new OlmAsync.Callback<OlmInboundGroupSession.DecryptMessageResult>() {
+                    @Override
+                    public void onSuccess(OlmInboundGroupSession.DecryptMessageResult aResult) {
+                        latch.countDown();
+                    }
+
+                    @Override
+                    public void onFailure(Exception aException) {
+                        failure.set(aException);
+                        latch.countDown();
+                    }
+                });
+
+        Future<OlmInboundGroupSession.DecryptMessageResult> next = mOlmAsync.decryptMessage(inboundSession,
+                outboundSession.encryptMessage("valid"), null);
+
+        try {
+            future.get();
+            assertTrue("the decryption must fail", false);
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof OlmException);
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(failure.get() instanceof OlmException);
+        assertEquals("valid", next.get().mDecryptedMessage);
+
+        outboundSession.releaseSession();
+        inboundSession.releaseSession();
+    }
+
+    /**
+     * - one time keys are generated and the account pickled asynchronously
+     * - the pickle is taken after the keys are generated
+     */
+    @Test
+    public void test04KeysAndPickle() throws Exception {
+        OlmAccount account = new OlmAccount();
+        byte[] key = "async pickle key".getBytes("UTF-8");
+
+        mOlmAsync.generateOneTimeKeys(account, 10, null);
+        byte[] pickle = mOlmAsync.pickle(account, key, null).get();
+        assertNotNull(pickle);
+
+        assertEquals(10, account.oneTimeKeysCount(false));
+        assertArrayEquals(account.serialize(key, new StringBuffer()), pickle);
+
+        account.releaseAccount();
+    }
+
+    /**
+     * - a callback throws, then the callback executor rejects the delivery
+     * - the later operations on the same session still complete
+     */
+    @Test
+    public void test05ThrowingCallback() throws Exception {
+        OlmOutboundGroupSession outboundSession = new OlmOutboundGroupSession();
+
+        OlmAsync.Callback<String> throwingCallback = new OlmAsync.Callback<String>() {
+            @Override
+            public void onSuccess(String aResult) {
+                throw new IllegalStateException("callback failure");
+            }
+
+            @Override
+            public void onFailure(Exception aException) {
+                throw new IllegalStateException("callback failure");
+            }
+        };
+
+        mOlmAsync.encryptMessage(outboundSession, "first", throwingCallback);
+        Future<String> next = mOlmAsync.encryptMessage(outboundSession, "second", null);
+        assertNotNull(next.get(10, TimeUnit.SECONDS));
+        assertEquals(0, mOlmAsync.pendingCount(outboundSession));
+
+        OlmAsync rejecting = new OlmAsync(1, new Executor() {
+            @Override
+            public void execute(Runnable aCommand) {
+                throw new RejectedExecutionException("callback executor shut down");
+            }
+        });
+        rejecting.encryptMessage(outboundSession, "third", throwingCallback);
+        next = rejecting.encryptMessage(outboundSession, "fourth", null);
+        assertNotNull(next.get(10, TimeUnit.SECONDS));
+        rejecting.shutdown();
+        assertTrue(rejecting.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(4, outboundSession.messageIndex());
+        outboundSession.releaseSession();
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.selfid.olm;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.MethodSorters;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static android.support.test.InstrumentationRegistry.getArguments;
+import static android.support.test.InstrumentationRegistry.getInstrumentation;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Attachment cipher throughput, logged in MB/s.<br>
+ * It needs 256 MiB of free cache storage, so it only runs when asked for:
+ * <pre>./gradlew connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.benchmark=true</pre>
+ */
+@RunWith(AndroidJUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class OlmAttachmentCipherBenchmark {
+    private static final String LOG_TAG = "OlmAttachmentCipherBenchmark";
+
+    private static final int CHUNK_SIZE = 1 << 20;
+    private static final int CHUNKS = 256;
+
+    private static OlmManager mOlmManager;
+
+    private static final byte[] KEY = new byte[OlmAttachmentCipher.KEY_LENGTH];
+    private static final byte[] IV = new byte[OlmAttachmentCipher.IV_LENGTH];
+
+    @BeforeClass
+    public static void setUpClass() {
+        assumeTrue("benchmark not requested", Boolean.parseBoolean(getArguments().getString("benchmark")));
+
+        // load native lib
+        mOlmManager = new OlmManager();
+
+        new Random(42).nextBytes(KEY);
+        new Random(43).nextBytes(IV);
+    }
+
+    /**
+     * Encrypts 256 MiB through direct buffers.
+     */
+    @Test
+    public void test01DirectBuffers() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        OlmAttachmentCipher cipher = new OlmAttachmentCipher(true, KEY, IV);
+        long start = System.nanoTime();
+        for (int i = 0; i < CHUNKS; i++) {
+            buffer.clear();
+            cipher.update(buffer, buffer.duplicate());
+        }
+        cipher.digest();
+        long elapsed = System.nanoTime() - start;
+        cipher.releaseCipher();
+        Log.d(LOG_TAG, "## test01DirectBuffers(): " + throughput(CHUNK_SIZE * (long) CHUNKS, elapsed) + " MB/s");
+    }
+
+    /**
+     * Encrypts a 256 MiB file.
+     */
+    @Test
+    public void test02File() throws Exception {
+        File directory = getInstrumentation().getContext().getCacheDir();
+        File plainFile = new File(directory, "benchmark.plain");
+        File encryptedFile = new File(directory, "benchmark.encrypted");
+        RandomAccessFile plain = new RandomAccessFile(plainFile, "rw");
+        plain.setLength(CHUNK_SIZE * (long) CHUNKS);
+        plain.close();
+
+        try {
+            long start = System.nanoTime();
+            OlmAttachmentCipher.encryptFile(plainFile, encryptedFile, KEY, IV);
+            long elapsed = System.nanoTime() - start;
+            Log.d(LOG_TAG, "## test02File(): " + throughput(CHUNK_SIZE * (long) CHUNKS, elapsed) + " MB/s");
+
+            assertEquals(plainFile.length(), encryptedFile.length());
+        } finally {
+            assertTrue(plainFile.delete());
+            encryptedFile.delete();
+        }
+    }
+
+    private static long throughput(long aBytes, long aNanos) {
+        return (aBytes * 1000L) / Math.max(aNanos, 1);
+    }
+}
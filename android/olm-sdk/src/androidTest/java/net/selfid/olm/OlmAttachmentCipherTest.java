@@ -0,0 +1,179 @@
+/*
+ * Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.selfid.olm;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.MethodSorters;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Random;
+
+import static android.support.test.InstrumentationRegistry.getInstrumentation;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class OlmAttachmentCipherTest {
+    private static OlmManager mOlmManager;
+
+    private static final byte[] KEY = new byte[OlmAttachmentCipher.KEY_LENGTH];
+    private static final byte[] IV = new byte[OlmAttachmentCipher.IV_LENGTH];
+
+    @BeforeClass
+    public static void setUpClass() {
+        // load native lib
+        mOlmManager = new OlmManager();
+
+        new Random(42).nextBytes(KEY);
+        new Random(43).nextBytes(IV);
+        // the counter half of the IV starts at zero
+        Arrays.fill(IV, 8, 16, (byte) 0);
+    }
+
+    private static byte[] hex(String aHex) {
+        byte[] bytes = new byte[aHex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(aHex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+
+    /**
+     * NIST SP 800-38A F.5.5 CTR-AES256.Encrypt, processed in place in two chunks
+     */
+    @Test
+    public void test01TestVector() throws Exception {
+        byte[] key = hex("603deb1015ca71be2b73aef0857d77811f352c073b6108d72d9810a30914dff4");
+        byte[] iv = hex("f0f1f2f3f4f5f6f7f8f9fafbfcfdfeff");
+        byte[] data = hex("6bc1bee22e409f96e93d7e117393172aae2d8a571e03ac9c9eb76fac45af8e51"
+                + "30c81c46a35ce411e5fbc1191a0a52eff69f2445df4f9b17ad2b417be66c3710");
+        byte[] expected = hex("601ec313775789a5b7a7f504bbf3d228f443e3ca4d62b59aca84e990cacaf5c5"
+                + "2b0930daa23de94ce87017ba2d84988ddfc9c58db67aada613c2dd08457941a6");
+
+        OlmAttachmentCipher cipher = new OlmAttachmentCipher(true, key, iv);
+        cipher.update(data, 0, 21, data, 0);
+        cipher.update(data, 21, data.length - 21, data, 21);
+        assertArrayEquals(expected, data);
+        assertEquals(64, cipher.getProcessedLength());
+        assertEquals(OlmAttachmentCipher.DIGEST_LENGTH, cipher.digest().length);
+        cipher.releaseCipher();
+        assertTrue(cipher.isReleased());
+    }
+
+    /**
+     * - a payload is encrypted between two channels
+     * - it is decrypted through byte buffers
+     * - both sides compute the same digest
+     */
+    @Test
+    public void test02ChannelRoundTrip() throws Exception {
+        byte[] plain = new byte[3 * 1024 * 1024 + 17];
+        new Random(1).nextBytes(plain);
+
+        OlmAttachmentCipher encryption = new OlmAttachmentCipher(true, KEY, IV);
+        ByteArrayOutputStream encryptedStream = new ByteArrayOutputStream();
+        long length = encryption.transfer(Channels.newChannel(new ByteArrayInputStream(plain)), Channels.newChannel(encryptedStream));
+        assertEquals(plain.length, length);
+        byte[] encrypted = encryptedStream.toByteArray();
+        assertFalse(Arrays.equals(plain, encrypted));
+
+        OlmAttachmentCipher decryption = new OlmAttachmentCipher(false, KEY, IV);
+        ByteBuffer input = ByteBuffer.allocateDirect(encrypted.length);
+        input.put(encrypted);
+        input.flip();
+        ByteBuffer output = ByteBuffer.allocate(encrypted.length);
+        // direct and heap buffers can't be mixed
+        try {
+            decryption.update(input, output);
+            assertTrue("mixed buffers must be rejected", false);
+        } catch (OlmException e) {
+            assertEquals(OlmException.EXCEPTION_CODE_ATTACHMENT_CIPHER_UPDATE, e.getExceptionCode());
+        }
+        decryption.update(input, input.duplicate());
+        input.flip();
+        byte[] decrypted = new byte[plain.length];
+        input.get(decrypted);
+
+        assertArrayEquals(plain, decrypted);
+        assertArrayEquals(encryption.digest(), decryption.digest());
+
+        encryption.releaseCipher();
+        decryption.releaseCipher();
+    }
+
+    /**
+     * - a file is encrypted and decrypted through file channels
+     * - the result matches the channel based encryption
+     * - an array larger than a native chunk gives the same result
+     */
+    @Test
+    public void test03FileRoundTrip() throws Exception {
+        File directory = getInstrumentation().getContext().getCacheDir();
+        File plainFile = new File(directory, "attachment.plain");
+        File encryptedFile = new File(directory, "attachment.encrypted");
+        File decryptedFile = new File(directory, "attachment.decrypted");
+
+        byte[] plain = new byte[1024 * 1024 + 5];
+        new Random(2).nextBytes(plain);
+        FileOutputStream plainStream = new FileOutputStream(plainFile);
+        plainStream.write(plain);
+        plainStream.close();
+
+        byte[] encryptionDigest = OlmAttachmentCipher.encryptFile(plainFile, encryptedFile, KEY, IV);
+        byte[] decryptionDigest = OlmAttachmentCipher.decryptFile(encryptedFile, decryptedFile, KEY, IV);
+        assertArrayEquals(encryptionDigest, decryptionDigest);
+
+        OlmAttachmentCipher cipher = new OlmAttachmentCipher(true, KEY, IV);
+        ByteArrayOutputStream encryptedStream = new ByteArrayOutputStream();
+        cipher.transfer(Channels.newChannel(new ByteArrayInputStream(plain)), Channels.newChannel(encryptedStream));
+        assertArrayEquals(encryptionDigest, cipher.digest());
+        cipher.releaseCipher();
+
+        cipher = new OlmAttachmentCipher(true, KEY, IV);
+        byte[] encrypted = new byte[plain.length];
+        cipher.update(plain, 0, plain.length, encrypted, 0);
+        assertArrayEquals(encryptionDigest, cipher.digest());
+        assertArrayEquals(encryptedStream.toByteArray(), encrypted);
+        cipher.releaseCipher();
+
+        byte[] decrypted = new byte[plain.length];
+        RandomAccessFile decryptedReader = new RandomAccessFile(decryptedFile, "r");
+        assertEquals(plain.length, decryptedReader.length());
+        decryptedReader.readFully(decrypted);
+        decryptedReader.close();
+        assertArrayEquals(plain, decrypted);
+
+        assertTrue(plainFile.delete());
+        assertTrue(encryptedFile.delete());
+        assertTrue(decryptedFile.delete());
+    }
+}
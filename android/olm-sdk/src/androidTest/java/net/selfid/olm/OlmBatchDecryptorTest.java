@@ -0,0 +1,281 @@
+/*
+ * Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.selfid.olm;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.MethodSorters;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class OlmBatchDecryptorTest {
+    private static final String LOG_TAG = "OlmBatchDecryptorTest";
+
+    private static OlmManager mOlmManager;
+    private static OlmAsync mOlmAsync;
+
+    @BeforeClass
+    public static void setUpClass() {
+        // load native lib
+        mOlmManager = new OlmManager();
+        mOlmAsync = new OlmAsync(4, null);
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        mOlmAsync.shutdown();
+        assertTrue(mOlmAsync.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Store of the tests: the to-device messages are megolm session keys.
+     */
+    private static class TestStore implements OlmBatchDecryptor.Store {
+        final OlmAccount mAccount;
+        final Map<String, List<OlmSession>> mSessions = new HashMap<>();
+        final Map<String, OlmInboundGroupSession> mGroupSessions = new HashMap<>();
+
+        TestStore(OlmAccount aAccount) {
+            mAccount = aAccount;
+        }
+
+        @Override
+        public OlmAccount getAccount() {
+            return mAccount;
+        }
+
+        @Override
+        public List<OlmSession> getSessions(String aSenderKey) {
+            return mSessions.get(aSenderKey);
+        }
+
+        @Override
+        public void onNewSession(String aSenderKey, OlmSession aSession) {
+            List<OlmSession> sessions = new ArrayList<>();
+            sessions.add(aSession);
+            mSessions.put(aSenderKey, sessions);
+        }
+
+        @Override
+        public void onToDeviceMessage(String aSenderKey, String aPlaintext) {
+            try {
+                OlmInboundGroupSession session = new OlmInboundGroupSession(aPlaintext);
+                mGroupSessions.put(session.sessionIdentifier(), session);
+            } catch (OlmException e) {
+                assertTrue(e.getMessage(), false);
+            }
+        }
+
+        @Override
+        public OlmInboundGroupSession getInboundGroupSession(String aSessionId) {
+            return mGroupSessions.get(aSessionId);
+        }
+
+        void release() {
+            for (List<OlmSession> sessions : mSessions.values()) {
+                for (OlmSession session : sessions) {
+                    session.releaseSession();
+                }
+            }
+            for (OlmInboundGroupSession session : mGroupSessions.values()) {
+                session.releaseSession();
+            }
+        }
+    }
+
+    /**
+     * - alice shares two megolm sessions with bob over Olm
+     * - the room events of both sessions are interleaved in reverse index order, after the keys
+     * - bob decrypts the whole batch: every event is decrypted, and reported at its position
+     * - an event of an unknown session fails on its own
+     */
+    @Test
+    public void test01MixedBatch() throws Exception {
+        OlmAccount aliceAccount = new OlmAccount();
+        OlmAccount bobAccount = new OlmAccount();
+        bobAccount.generateOneTimeKeys(1);
+        String aliceIdentityKey = TestHelper.getIdentityKey(aliceAccount.identityKeys());
+        String bobIdentityKey = TestHelper.getIdentityKey(bobAccount.identityKeys());
+        String bobOneTimeKey = TestHelper.getOneTimeKey(bobAccount.oneTimeKeys(), 1);
+
+        OlmSession aliceSession = new OlmSession();
+        aliceSession.initOutboundSession(aliceAccount, bobIdentityKey, bobOneTimeKey);
+
+        OlmOutboundGroupSession firstGroup = new OlmOutboundGroupSession();
+        OlmOutboundGroupSession secondGroup = new OlmOutboundGroupSession();
+
+        List<OlmBatchDecryptor.Event> events = new ArrayList<>();
+        events.add(OlmBatchDecryptor.toDevice(aliceIdentityKey, aliceSession.encryptMessage(firstGroup.sessionKey())));
+        events.add(OlmBatchDecryptor.toDevice(aliceIdentityKey, aliceSession.encryptMessage(secondGroup.sessionKey())));
+
+        final int messages = 10;
+        List<String> firstMessages = new ArrayList<>();
+        List<String> secondMessages = new ArrayList<>();
+        for (int i = 0; i < messages; i++) {
+            firstMessages.add(firstGroup.encryptMessage("first " + i));
+            secondMessages.add(secondGroup.encryptMessage("second " + i));
+        }
+        for (int i = messages - 1; i >= 0; i--) {
+            events.add(OlmBatchDecryptor.room(firstGroup.sessionIdentifier(), firstMessages.get(i)));
+            events.add(OlmBatchDecryptor.room(secondGroup.sessionIdentifier(), secondMessages.get(i)));
+        }
+
+        OlmOutboundGroupSession unknownGroup = new OlmOutboundGroupSession();
+        events.add(OlmBatchDecryptor.room(unknownGroup.sessionIdentifier(), unknownGroup.encryptMessage("unknown")));
+
+        TestStore store = new TestStore(bobAccount);
+        List<OlmBatchDecryptor.Result> results = new OlmBatchDecryptor(mOlmAsync).decrypt(events, store);
+
+        assertEquals(events.size(), results.size());
+        assertEquals(firstGroup.sessionKey(), results.get(0).mPlaintext);
+        assertEquals(secondGroup.sessionKey(), results.get(1).mPlaintext);
+        assertEquals(1, store.mSessions.get(aliceIdentityKey).size());
+        assertEquals(0, bobAccount.oneTimeKeysCount(false));
+
+        for (int i = 0; i < messages; i++) {
+            int index = messages - 1 - i;
+            OlmBatchDecryptor.Result first = results.get(2 + 2 * i);
+            OlmBatchDecryptor.Result second = results.get(3 + 2 * i);
+
+            assertNull(first.mError);
+            assertEquals("first " + index, first.mPlaintext);
+            assertEquals(index, first.mMessageIndex);
+            assertNull(second.mError);
+            assertEquals("second " + index, second.mPlaintext);
+        }
+
+        OlmBatchDecryptor.Result unknown = results.get(results.size() - 1);
+        assertNull(unknown.mPlaintext);
+        assertNotNull(unknown.mError);
+
+        store.release();
+        aliceSession.releaseSession();
+        firstGroup.releaseSession();
+        secondGroup.releaseSession();
+        unknownGroup.releaseSession();
+        aliceAccount.releaseAccount();
+        bobAccount.releaseAccount();
+    }
+
+    /**
+     * The message index is read from the megolm message header.
+     */
+    @Test
+    public void test02MessageIndex() throws Exception {
+        OlmOutboundGroupSession session = new OlmOutboundGroupSession();
+
+        for (int i = 0; i < 200; i++) {
+            assertEquals(i, OlmBatchDecryptor.messageIndex(session.encryptMessage("message")));
+        }
+        assertEquals(Long.MAX_VALUE, OlmBatchDecryptor.messageIndex("not a message"));
+
+        session.releaseSession();
+    }
+
+    /**
+     * - a pre-key message matching an existing session but failing to decrypt is reported
+     * - no new session is created for it
+     */
+    @Test
+    public void test03PreKeyMessageFailure() throws Exception {
+        OlmAccount aliceAccount = new OlmAccount();
+        OlmAccount bobAccount = new OlmAccount();
+        bobAccount.generateOneTimeKeys(1);
+        String aliceIdentityKey = TestHelper.getIdentityKey(aliceAccount.identityKeys());
+        String bobIdentityKey = TestHelper.getIdentityKey(bobAccount.identityKeys());
+        String bobOneTimeKey = TestHelper.getOneTimeKey(bobAccount.oneTimeKeys(), 1);
+
+        OlmSession aliceSession = new OlmSession();
+        aliceSession.initOutboundSession(aliceAccount, bobIdentityKey, bobOneTimeKey);
+
+        TestStore store = new TestStore(bobAccount);
+        OlmBatchDecryptor decryptor = new OlmBatchDecryptor(mOlmAsync);
+        OlmOutboundGroupSession group = new OlmOutboundGroupSession();
+
+        List<OlmBatchDecryptor.Event> events = new ArrayList<>();
+        events.add(OlmBatchDecryptor.toDevice(aliceIdentityKey, aliceSession.encryptMessage(group.sessionKey())));
+        assertNull(decryptor.decrypt(events, store).get(0).mError);
+        OlmSession bobSession = store.mSessions.get(aliceIdentityKey).get(0);
+
+        // still a pre-key message, with a corrupted MAC
+        OlmMessage message = aliceSession.encryptMessage(group.sessionKey());
+        assertEquals(OlmMessage.MESSAGE_TYPE_PRE_KEY, message.mType);
+        char[] cipherText = message.mCipherText.toCharArray();
+        int position = cipherText.length - 4;
+        cipherText[position] = ('A' == cipherText[position]) ? 'B' : 'A';
+        message.mCipherText = new String(cipherText);
+
+        events.clear();
+        events.add(OlmBatchDecryptor.toDevice(aliceIdentityKey, message));
+        OlmBatchDecryptor.Result result = decryptor.decrypt(events, store).get(0);
+
+        assertNull(result.mPlaintext);
+        assertNotNull(result.mError);
+        assertEquals(OlmException.EXCEPTION_CODE_SESSION_DECRYPT_MESSAGE, result.mError.getExceptionCode());
+        assertEquals(OlmErrorCode.name(OlmErrorCode.BAD_MESSAGE_MAC), result.mError.getMessage());
+        assertTrue(bobSession == store.mSessions.get(aliceIdentityKey).get(0));
+
+        store.release();
+        aliceSession.releaseSession();
+        group.releaseSession();
+        aliceAccount.releaseAccount();
+        bobAccount.releaseAccount();
+    }
+
+    /**
+     * - an interrupted batch returns with the interrupt status kept
+     * - every room event is either decrypted or failed
+     */
+    @Test
+    public void test04InterruptedBatch() throws Exception {
+        OlmOutboundGroupSession group = new OlmOutboundGroupSession();
+        TestStore store = new TestStore(null);
+        store.onToDeviceMessage(null, group.sessionKey());
+
+        List<OlmBatchDecryptor.Event> events = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            events.add(OlmBatchDecryptor.room(group.sessionIdentifier(), group.encryptMessage("message " + i)));
+        }
+
+        Thread.currentThread().interrupt();
+        List<OlmBatchDecryptor.Result> results = new OlmBatchDecryptor(mOlmAsync).decrypt(events, store);
+        assertTrue(Thread.interrupted());
+
+        for (OlmBatchDecryptor.Result result : results) {
+            assertTrue((null == result.mPlaintext) != (null == result.mError));
+        }
+
+        store.release();
+        group.releaseSession();
+    }
+}
@@ -29,16 +29,24 @@ import org.junit.runner.RunWith;
 import org.junit.runners.MethodSorters;
 
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static android.support.test.InstrumentationRegistry.getInstrumentation;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 @RunWith(AndroidJUnit4.class)
@@ -623,4 +631,523 @@ public class OlmGroupSessionTest {
         assertTrue(isVerified);
         inboundGroupSession2.releaseSession();
     }
+
+    @Test
+    public void test21TestInboundGroupSessionSeenIndices() {
+        OlmOutboundGroupSession outboundGroupSession = null;
+        OlmInboundGroupSession inboundGroupSession = null;
+
+        try {
+            outboundGroupSession = new OlmOutboundGroupSession();
+            inboundGroupSession = new OlmInboundGroupSession(outboundGroupSession.sessionKey());
+            assertFalse(inboundGroupSession.isTrackingSeenIndices());
+            inboundGroupSession.setTrackSeenIndices(true);
+            assertTrue(inboundGroupSession.isTrackingSeenIndices());
+        } catch (Exception e) {
+            assertTrue("Exception in session creation, Exception msg=" + e.getMessage(), false);
+        }
+
+        try {
+            String message0 = outboundGroupSession.encryptMessage("Message 0");
+            String message1 = outboundGroupSession.encryptMessage("Message 1");
+
+            OlmInboundGroupSession.DecryptMessageResult result = inboundGroupSession.decryptMessage(message1);
+            assertTrue(1 == result.mIndex);
+            assertFalse(result.mAlreadySeen);
+            assertFalse(inboundGroupSession.hasSeenIndex(0));
+            assertTrue(inboundGroupSession.hasSeenIndex(1));
+
+            result = inboundGroupSession.decryptMessage(message0);
+            assertFalse(result.mAlreadySeen);
+
+            // replayed message
+            result = inboundGroupSession.decryptMessage(message1);
+            assertTrue(TextUtils.equals(result.mDecryptedMessage, "Message 1"));
+            assertTrue(result.mAlreadySeen);
+
+            inboundGroupSession.setTrackSeenIndices(false);
+            assertFalse(inboundGroupSession.hasSeenIndex(1));
+        } catch (Exception e) {
+            assertTrue("Exception in decryption, Exception msg=" + e.getMessage(), false);
+        }
+
+        outboundGroupSession.releaseSession();
+        inboundGroupSession.releaseSession();
+    }
+
+    /**
+     * - tryDecrypt() reports the message index and the replays through a reused result
+     * - a corrupted message reports INVALID_BASE64 without throwing
+     * - the decryptMessage() exception carries the same status name, without a stack trace
+     * - a released session reports a failure without throwing
+     */
+    @Test
+    public void test22TestInboundGroupSessionTryDecrypt() {
+        OlmOutboundGroupSession outboundGroupSession = null;
+        OlmInboundGroupSession inboundGroupSession = null;
+
+        try {
+            outboundGroupSession = new OlmOutboundGroupSession();
+            inboundGroupSession = new OlmInboundGroupSession(outboundGroupSession.sessionKey());
+            inboundGroupSession.setTrackSeenIndices(true);
+        } catch (Exception e) {
+            assertTrue("Exception in session creation, Exception msg=" + e.getMessage(), false);
+        }
+
+        OlmDecryptResult result = new OlmDecryptResult();
+
+        try {
+            outboundGroupSession.encryptMessage("Message 0");
+            String message1 = outboundGroupSession.encryptMessage("Message 1");
+
+            assertTrue(OlmErrorCode.SUCCESS == inboundGroupSession.tryDecrypt(message1, result));
+            assertTrue(result.isSuccess());
+            assertTrue(TextUtils.equals(result.mPlaintext, "Message 1"));
+            assertTrue(1 == result.mIndex);
+            assertFalse(result.mAlreadySeen);
+
+            assertTrue(OlmErrorCode.SUCCESS == inboundGroupSession.tryDecrypt(message1, result));
+            assertTrue(result.mAlreadySeen);
+        } catch (Exception e) {
+            assertTrue("Exception in encryption, Exception msg=" + e.getMessage(), false);
+        }
+
+        String corruptedEncryptedMsg = "AwgANYTHINGf87ge45ge7gr*/rg5ganything4gr41rrgr4re55tanythingmcsXUkhDv0UePj922kgf+";
+        assertTrue(OlmErrorCode.INVALID_BASE64 == inboundGroupSession.tryDecrypt(corruptedEncryptedMsg, result));
+        assertFalse(result.isSuccess());
+        assertTrue(null == result.mPlaintext);
+        assertTrue(-1 == result.mIndex);
+        assertTrue(OlmErrorCode.INVALID_INPUT == inboundGroupSession.tryDecrypt(null, result));
+
+        try {
+            inboundGroupSession.decryptMessage(corruptedEncryptedMsg);
+            assertTrue("decryptMessage should have failed", false);
+        } catch (OlmException e) {
+            assertTrue(OlmException.EXCEPTION_CODE_INBOUND_GROUP_SESSION_DECRYPT_SESSION == e.getExceptionCode());
+            assertTrue(TextUtils.equals(OlmErrorCode.name(OlmErrorCode.INVALID_BASE64), e.getMessage()));
+            assertTrue(0 == e.getStackTrace().length);
+        }
+
+        String message2 = null;
+        try {
+            message2 = outboundGroupSession.encryptMessage("Message 2");
+        } catch (Exception e) {
+            assertTrue("Exception in encryption, Exception msg=" + e.getMessage(), false);
+        }
+
+        outboundGroupSession.releaseSession();
+        inboundGroupSession.releaseSession();
+
+        assertTrue(OlmErrorCode.JNI_ERROR == inboundGroupSession.tryDecrypt(message2, result));
+        assertFalse(result.isSuccess());
+    }
+
+    /**
+     * - a group message is parsed once, its index is read before decrypting it
+     * - the parsed message is decrypted with the index and the replay flag
+     */
+    @Test
+    public void test23TestInboundGroupSessionParsedMessage() {
+        OlmOutboundGroupSession outboundGroupSession = null;
+        OlmInboundGroupSession inboundGroupSession = null;
+
+        try {
+            outboundGroupSession = new OlmOutboundGroupSession();
+            inboundGroupSession = new OlmInboundGroupSession(outboundGroupSession.sessionKey());
+            inboundGroupSession.setTrackSeenIndices(true);
+        } catch (Exception e) {
+            assertTrue("Exception in session creation, Exception msg=" + e.getMessage(), false);
+        }
+
+        OlmDecryptResult result = new OlmDecryptResult();
+
+        try {
+            outboundGroupSession.encryptMessage("Message 0");
+            OlmGroupMessage message = new OlmGroupMessage(outboundGroupSession.encryptMessage("Message 1"));
+            assertTrue(1 == message.getMessageIndex());
+
+            assertTrue(OlmErrorCode.SUCCESS == inboundGroupSession.tryDecryptParsed(message, result));
+            assertTrue(TextUtils.equals(result.mPlaintext, "Message 1"));
+            assertTrue(1 == result.mIndex);
+            assertFalse(result.mAlreadySeen);
+
+            // the parsed message is left untouched by the decryption
+            assertTrue(OlmErrorCode.SUCCESS == inboundGroupSession.tryDecryptParsed(message, result));
+            assertTrue(result.mAlreadySeen);
+
+            message.releaseMessage();
+            assertTrue(message.isReleased());
+            assertTrue(OlmErrorCode.INVALID_INPUT == inboundGroupSession.tryDecryptParsed(message, result));
+        } catch (Exception e) {
+            assertTrue("Exception in encryption, Exception msg=" + e.getMessage(), false);
+        }
+
+        try {
+            new OlmGroupMessage("AwgANYTHINGf87ge45ge7gr*/rg5ganything4gr41rrgr4re55tanythingmcsXUkhDv0UePj922kgf+");
+            assertTrue("the message should not be parsed", false);
+        } catch (OlmException e) {
+            assertTrue(OlmException.EXCEPTION_CODE_PARSED_MESSAGE_CREATION == e.getExceptionCode());
+        }
+
+        outboundGroupSession.releaseSession();
+        inboundGroupSession.releaseSession();
+    }
+
+    /**
+     * - several sessions are exported at once, to a buffer and to a stream
+     * - a released session only fails on its own
+     * - the exports are imported back at once and decrypt the messages of their index
+     */
+    @Test
+    public void test24TestInboundGroupSessionBulkExportImport() {
+        int count = 20;
+        List<OlmOutboundGroupSession> outboundGroupSessions = new ArrayList<>();
+        List<OlmInboundGroupSession> inboundGroupSessions = new ArrayList<>();
+        List<String> messages = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < count; i++) {
+                OlmOutboundGroupSession outboundGroupSession = new OlmOutboundGroupSession();
+                inboundGroupSessions.add(new OlmInboundGroupSession(outboundGroupSession.sessionKey()));
+                outboundGroupSession.encryptMessage("Message 0");
+                messages.add(outboundGroupSession.encryptMessage("Message 1 of " + i));
+                outboundGroupSessions.add(outboundGroupSession);
+            }
+        } catch (Exception e) {
+            assertTrue("Exception in session creation, Exception msg=" + e.getMessage(), false);
+        }
+
+        final List<Integer> progress = new ArrayList<>();
+        OlmInboundGroupSession.BulkProgressListener listener = new OlmInboundGroupSession.BulkProgressListener() {
+            @Override
+            public void onProgress(int aDone, int aTotal) {
+                progress.add(aDone);
+            }
+        };
+
+        inboundGroupSessions.get(5).releaseSession();
+        long[] messageIndexes = new long[count];
+        Arrays.fill(messageIndexes, 1);
+
+        try {
+            OlmInboundGroupSession.BulkExportResult buffered = OlmInboundGroupSession.exportSessions(inboundGroupSessions, messageIndexes, 4, listener);
+            assertTrue(count - 1 == buffered.mSuccessCount);
+            assertTrue(OlmErrorCode.INVALID_INPUT == buffered.mStatuses[5]);
+            assertTrue(buffered.mOffsets[5] == buffered.mOffsets[6]);
+            assertTrue(count == progress.get(progress.size() - 1));
+
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            OlmInboundGroupSession.BulkExportResult streamed = OlmInboundGroupSession.exportSessions(inboundGroupSessions, messageIndexes, 0, stream, null);
+            assertNull(streamed.mExported);
+            assertTrue(Arrays.equals(buffered.mExported, stream.toByteArray()));
+
+            String single = inboundGroupSessions.get(0).export(1);
+            assertTrue(TextUtils.equals(single + "\n", new String(buffered.mExported, buffered.mOffsets[0], buffered.mOffsets[1] - buffered.mOffsets[0], "UTF-8")));
+
+            // a broken line fails on its own
+            ByteArrayOutputStream input = new ByteArrayOutputStream();
+            input.write(buffered.mExported);
+            input.write("\r\nnot an exported session\n".getBytes("UTF-8"));
+
+            progress.clear();
+            OlmInboundGroupSession.BulkImportResult imported = OlmInboundGroupSession.importSessions(new ByteArrayInputStream(input.toByteArray()), 4, listener);
+            assertTrue(count == imported.mSessions.size());
+            assertTrue(count - 1 == imported.mSuccessCount);
+            assertNull(imported.mSessions.get(count - 1));
+            assertTrue(OlmErrorCode.SUCCESS != imported.mStatuses.get(count - 1));
+            assertTrue(count == progress.get(progress.size() - 1));
+
+            for (int i = 0; i < count - 1; i++) {
+                OlmInboundGroupSession session = imported.mSessions.get(i);
+                int message = (i < 5) ? i : i + 1;
+                assertTrue(1 == session.getFirstKnownIndex());
+                OlmInboundGroupSession.DecryptMessageResult result = session.decryptMessage(messages.get(message));
+                assertTrue(TextUtils.equals(result.mDecryptedMessage, "Message 1 of " + message));
+                session.releaseSession();
+            }
+        } catch (Exception e) {
+            assertTrue("Exception in bulk export, Exception msg=" + e.getMessage(), false);
+        }
+
+        for (int i = 0; i < count; i++) {
+            outboundGroupSessions.get(i).releaseSession();
+            inboundGroupSessions.get(i).releaseSession();
+        }
+    }
+
+    /**
+     * - the successor session is generated in the background before the rotation is due
+     * - its key, shared early, decrypts the messages sent after the rotation
+     * - rotateNow() discards the successor and rotates before the next message
+     */
+    @Test
+    public void test25TestGroupSessionRotator() {
+        final List<String> successorKeys = new ArrayList<>();
+        final List<OlmOutboundGroupSession> rotated = new ArrayList<>();
+        final CountDownLatch successorReady = new CountDownLatch(1);
+
+        OlmGroupSessionRotator.Policy policy = new OlmGroupSessionRotator.Policy();
+        policy.mMaxMessages = 5;
+        policy.mMaxAgeMillis = 0;
+        policy.mLeadMessages = 2;
+
+        OlmGroupSessionRotator.Listener listener = new OlmGroupSessionRotator.Listener() {
+            @Override
+            public void onSuccessorReady(String aSessionId, String aSessionKey) {
+                synchronized (successorKeys) {
+                    successorKeys.add(aSessionKey);
+                }
+                successorReady.countDown();
+            }
+
+            @Override
+            public void onRotated(OlmOutboundGroupSession aPrevious, OlmOutboundGroupSession aCurrent, boolean aPregenerated) {
+                rotated.add(aPrevious);
+            }
+        };
+
+        try {
+            OlmGroupSessionRotator rotator = new OlmGroupSessionRotator(null, 0, policy, listener);
+            OlmOutboundGroupSession first = rotator.getCurrentSession();
+
+            for (int i = 0; i < 5; i++) {
+                assertTrue(first == rotator.prepareForSend());
+                first.encryptMessage("Message " + i);
+            }
+            assertTrue(successorReady.await(10, TimeUnit.SECONDS));
+            // the successor is published once the listener has returned
+            waitForSuccessor(rotator);
+            assertNotNull(rotator.getSuccessorSession());
+
+            // the early shared key decrypts the first message of the new session
+            OlmInboundGroupSession inboundGroupSession;
+            synchronized (successorKeys) {
+                inboundGroupSession = new OlmInboundGroupSession(successorKeys.get(0));
+            }
+            OlmOutboundGroupSession second = rotator.prepareForSend();
+            assertFalse(first == second);
+            assertTrue(rotated.size() == 1 && rotated.get(0) == first);
+            assertTrue(1 == rotator.getRotationCount());
+            assertTrue(0 == rotator.getInlineCreationCount());
+            OlmInboundGroupSession.DecryptMessageResult result = inboundGroupSession.decryptMessage(second.encryptMessage("Message 5"));
+            assertTrue(TextUtils.equals(result.mDecryptedMessage, "Message 5"));
+
+            rotator.rotateNow();
+            OlmOutboundGroupSession third = rotator.prepareForSend();
+            assertFalse(second == third);
+            assertTrue(2 == rotator.getRotationCount());
+
+            assertTrue(third == rotator.shutdown());
+            assertNull(rotator.getCurrentSession());
+
+            inboundGroupSession.releaseSession();
+            third.releaseSession();
+            for (OlmOutboundGroupSession session : rotated) {
+                session.releaseSession();
+            }
+        } catch (Exception e) {
+            assertTrue("Exception in rotation, Exception msg=" + e.getMessage(), false);
+        }
+    }
+
+    /**
+     * - several threads decrypt the backlog of one session concurrently
+     * - every message decrypts once, and the session ends up having seen all the indices
+     * - a replay through the concurrent path is reported
+     */
+    @Test
+    public void test26TestInboundGroupSessionConcurrentDecryption() {
+        final int messageCount = 64;
+        final int threadCount = 4;
+        OlmOutboundGroupSession outboundGroupSession = null;
+        OlmInboundGroupSession inboundGroupSession = null;
+        final List<String> messages = new ArrayList<>();
+
+        try {
+            outboundGroupSession = new OlmOutboundGroupSession();
+            inboundGroupSession = new OlmInboundGroupSession(outboundGroupSession.sessionKey());
+            inboundGroupSession.setTrackSeenIndices(true);
+            for (int i = 0; i < messageCount; i++) {
+                messages.add(outboundGroupSession.encryptMessage("Message " + i));
+            }
+        } catch (Exception e) {
+            assertTrue("Exception in session creation, Exception msg=" + e.getMessage(), false);
+        }
+
+        final OlmInboundGroupSession session = inboundGroupSession;
+        final int[] successes = new int[threadCount];
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            final int thread = t;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    OlmDecryptResult result = new OlmDecryptResult();
+                    // the threads go through the backlog in opposite orders
+                    for (int i = 0; i < messageCount; i++) {
+                        int index = (0 == thread % 2) ? i : messageCount - 1 - i;
+                        if (index % threadCount != thread) {
+                            continue;
+                        }
+                        if (OlmErrorCode.SUCCESS == session.tryDecryptConcurrently(messages.get(index), result)
+                                && index == result.mIndex
+                                && !result.mAlreadySeen
+                                && TextUtils.equals(result.mPlaintext, "Message " + index)) {
+                            successes[thread]++;
+                        }
+                    }
+                }
+            }));
+        }
+
+        try {
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            assertTrue("Interrupted, Exception msg=" + e.getMessage(), false);
+        }
+
+        for (int success : successes) {
+            assertTrue(messageCount / threadCount == success);
+        }
+
+        try {
+            for (int i = 0; i < messageCount; i++) {
+                assertTrue(inboundGroupSession.hasSeenIndex(i));
+            }
+
+            OlmInboundGroupSession.DecryptMessageResult result = inboundGroupSession.decryptMessageConcurrently(messages.get(messageCount - 1));
+            assertTrue(TextUtils.equals(result.mDecryptedMessage, "Message " + (messageCount - 1)));
+            assertTrue(result.mAlreadySeen);
+        } catch (Exception e) {
+            assertTrue("Exception in decryption, Exception msg=" + e.getMessage(), false);
+        }
+
+        outboundGroupSession.releaseSession();
+        inboundGroupSession.releaseSession();
+    }
+
+    /**
+     * - a raw group message is a quarter smaller than the base64 one (3/4 of the size)
+     * - it decrypts, and it is left untouched so a replay is reported
+     * - a corrupted raw message is rejected
+     */
+    @Test
+    public void test27TestGroupSessionRawMessages() {
+        OlmOutboundGroupSession outboundGroupSession = null;
+        OlmInboundGroupSession inboundGroupSession = null;
+
+        try {
+            outboundGroupSession = new OlmOutboundGroupSession();
+            inboundGroupSession = new OlmInboundGroupSession(outboundGroupSession.sessionKey());
+            inboundGroupSession.setTrackSeenIndices(true);
+
+            String message = outboundGroupSession.encryptMessage("Message 0");
+            byte[] rawMessage = outboundGroupSession.encryptMessageRaw("Message 1");
+            assertNotNull(rawMessage);
+            // unpadded base64
+            assertTrue((rawMessage.length * 4 + 2) / 3 == message.length());
+            byte[] rawMessageCopy = Arrays.copyOf(rawMessage, rawMessage.length);
+
+            OlmInboundGroupSession.DecryptMessageResult result = inboundGroupSession.decryptMessageRaw(rawMessage);
+            assertTrue(TextUtils.equals(result.mDecryptedMessage, "Message 1"));
+            assertTrue(1 == result.mIndex);
+            assertFalse(result.mAlreadySeen);
+            assertTrue(Arrays.equals(rawMessageCopy, rawMessage));
+
+            OlmDecryptResult decrypted = new OlmDecryptResult();
+            assertTrue(OlmErrorCode.SUCCESS == inboundGroupSession.tryDecryptRaw(rawMessage, decrypted));
+            assertTrue(decrypted.mAlreadySeen);
+
+            assertTrue(TextUtils.equals(inboundGroupSession.decryptMessage(message).mDecryptedMessage, "Message 0"));
+
+            rawMessage[rawMessage.length - 1] ^= 1;
+            assertTrue(OlmErrorCode.BAD_SIGNATURE == inboundGroupSession.tryDecryptRaw(rawMessage, decrypted));
+            assertTrue(OlmErrorCode.INVALID_INPUT == inboundGroupSession.tryDecryptRaw(null, decrypted));
+        } catch (Exception e) {
+            assertTrue("Exception in raw messages, Exception msg=" + e.getMessage(), false);
+        }
+
+        outboundGroupSession.releaseSession();
+        inboundGroupSession.releaseSession();
+    }
+
+    /**
+     * - a rotation due while the successor key is being shared does not use the successor
+     * - the successor is published once the listener has returned
+     */
+    @Test
+    public void test28TestGroupSessionRotatorRace() {
+        final CountDownLatch successorReady = new CountDownLatch(1);
+        final CountDownLatch keyShared = new CountDownLatch(1);
+        final List<Boolean> pregenerated = new ArrayList<>();
+        final List<OlmOutboundGroupSession> rotated = new ArrayList<>();
+
+        OlmGroupSessionRotator.Policy policy = new OlmGroupSessionRotator.Policy();
+        policy.mMaxMessages = 3;
+        policy.mMaxAgeMillis = 0;
+        policy.mLeadMessages = 1;
+
+        OlmGroupSessionRotator.Listener listener = new OlmGroupSessionRotator.Listener() {
+            @Override
+            public void onSuccessorReady(String aSessionId, String aSessionKey) {
+                successorReady.countDown();
+                try {
+                    // the key is still being shared when the rotation is due
+                    keyShared.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void onRotated(OlmOutboundGroupSession aPrevious, OlmOutboundGroupSession aCurrent, boolean aPregenerated) {
+                rotated.add(aPrevious);
+                pregenerated.add(aPregenerated);
+            }
+        };
+
+        try {
+            OlmGroupSessionRotator rotator = new OlmGroupSessionRotator(null, 0, policy, listener);
+            OlmOutboundGroupSession first = rotator.getCurrentSession();
+
+            for (int i = 0; i < 3; i++) {
+                assertTrue(first == rotator.prepareForSend());
+                first.encryptMessage("Message " + i);
+            }
+            assertTrue(successorReady.await(10, TimeUnit.SECONDS));
+            assertNull(rotator.getSuccessorSession());
+
+            OlmOutboundGroupSession second = rotator.prepareForSend();
+            assertFalse(first == second);
+            assertTrue(1 == pregenerated.size() && !pregenerated.get(0));
+            assertTrue(1 == rotator.getInlineCreationCount());
+
+            keyShared.countDown();
+            waitForSuccessor(rotator);
+            OlmOutboundGroupSession successor = rotator.getSuccessorSession();
+            assertNotNull(successor);
+            assertFalse(second == successor);
+
+            assertTrue(second == rotator.shutdown());
+            second.releaseSession();
+            for (OlmOutboundGroupSession session : rotated) {
+                session.releaseSession();
+            }
+        } catch (Exception e) {
+            assertTrue("Exception in rotation race, Exception msg=" + e.getMessage(), false);
+        }
+    }
+
+    private static void waitForSuccessor(OlmGroupSessionRotator aRotator) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+
+        while ((null == aRotator.getSuccessorSession()) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(10);
+        }
+    }
 }
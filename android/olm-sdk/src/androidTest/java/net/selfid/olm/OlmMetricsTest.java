@@ -0,0 +1,158 @@
+/*
+ * Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.selfid.olm;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.MethodSorters;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class OlmMetricsTest {
+    private static OlmManager mOlmManager;
+
+    @BeforeClass
+    public static void setUpClass() {
+        // load native lib
+        mOlmManager = new OlmManager();
+    }
+
+    @After
+    public void tearDown() {
+        OlmMetrics.setEnabled(false);
+        OlmMetrics.setListener(null);
+        OlmMetrics.reset();
+    }
+
+    /**
+     * Nothing is recorded while the metrics are off.
+     */
+    @Test
+    public void test01Disabled() throws Exception {
+        OlmMetrics.reset();
+        assertFalse(OlmMetrics.isEnabled());
+
+        OlmOutboundGroupSession outboundSession = new OlmOutboundGroupSession();
+        outboundSession.encryptMessage("Hello");
+        outboundSession.releaseSession();
+
+        OlmMetrics.Snapshot snapshot = OlmMetrics.snapshot();
+        assertEquals(0, snapshot.mCounts[OlmMetrics.OPERATION_GROUP_ENCRYPT]);
+        assertEquals(0, snapshot.mNativeCounters[OlmMetrics.NATIVE_MEGOLM_HASHES]);
+        assertEquals(0, snapshot.mNativeCounters[OlmMetrics.NATIVE_BYTES_ENCRYPTED]);
+    }
+
+    /**
+     * - group messages are counted and timed
+     * - failures are counted by native error
+     * - the native counters follow the Java ones
+     * - the listener sees each operation
+     */
+    @Test
+    public void test02GroupMessages() throws Exception {
+        final List<String> operations = new ArrayList<>();
+        OlmMetrics.setListener(new OlmMetrics.Listener() {
+            @Override
+            public void onOperation(int aOperation, long aDurationNanos, String aError) {
+                operations.add(OlmMetrics.operationName(aOperation) + ":" + aError);
+            }
+        });
+        OlmMetrics.reset();
+        OlmMetrics.setEnabled(true);
+        assertTrue(OlmMetrics.isEnabled());
+
+        OlmOutboundGroupSession outboundSession = new OlmOutboundGroupSession();
+        OlmInboundGroupSession inboundSession = new OlmInboundGroupSession(outboundSession.sessionKey());
+
+        String encrypted = outboundSession.encryptMessage("Hello");
+        assertEquals("Hello", inboundSession.decryptMessage(encrypted).mDecryptedMessage);
+
+        try {
+            inboundSession.decryptMessage(encrypted.substring(0, encrypted.length() - 4) + "AAAA");
+            assertTrue("corrupted message must not decrypt", false);
+        } catch (OlmException e) {
+            assertNotNull(e.getMessage());
+        }
+
+        OlmMetrics.Snapshot snapshot = OlmMetrics.snapshot();
+        assertEquals(1, snapshot.mCounts[OlmMetrics.OPERATION_GROUP_ENCRYPT]);
+        assertEquals(0, snapshot.mFailures[OlmMetrics.OPERATION_GROUP_ENCRYPT]);
+        assertEquals(2, snapshot.mCounts[OlmMetrics.OPERATION_GROUP_DECRYPT]);
+        assertEquals(1, snapshot.mFailures[OlmMetrics.OPERATION_GROUP_DECRYPT]);
+        assertEquals(Long.valueOf(1), snapshot.mFailuresByError.get("BAD_SIGNATURE"));
+        assertTrue(snapshot.mTotalNanos[OlmMetrics.OPERATION_GROUP_DECRYPT] > 0);
+        assertTrue(snapshot.percentileMicros(OlmMetrics.OPERATION_GROUP_DECRYPT, 50) > 0);
+
+        long histogramTotal = 0;
+        for (long bucket : snapshot.mHistograms[OlmMetrics.OPERATION_GROUP_DECRYPT]) {
+            histogramTotal += bucket;
+        }
+        assertEquals(2, histogramTotal);
+
+        assertEquals(5, snapshot.mNativeCounters[OlmMetrics.NATIVE_BYTES_ENCRYPTED]);
+        assertEquals(5, snapshot.mNativeCounters[OlmMetrics.NATIVE_BYTES_DECRYPTED]);
+        assertTrue(snapshot.mNativeCounters[OlmMetrics.NATIVE_MEGOLM_HASHES] > 0);
+
+        assertEquals(3, operations.size());
+        assertEquals("group_encrypt:null", operations.get(0));
+        assertEquals("group_decrypt:null", operations.get(1));
+        assertEquals("group_decrypt:BAD_SIGNATURE", operations.get(2));
+
+        outboundSession.releaseSession();
+        inboundSession.releaseSession();
+
+        OlmMetrics.reset();
+        snapshot = OlmMetrics.snapshot();
+        assertEquals(0, snapshot.mCounts[OlmMetrics.OPERATION_GROUP_DECRYPT]);
+        assertNull(snapshot.mFailuresByError.get("BAD_SIGNATURE"));
+        assertEquals(0, snapshot.mNativeCounters[OlmMetrics.NATIVE_BYTES_DECRYPTED]);
+    }
+
+    /**
+     * - failures without a status code are counted under one bounded reason
+     */
+    @Test
+    public void test03FailureReasonsAreBounded() throws Exception {
+        OlmMetrics.reset();
+        OlmMetrics.setEnabled(true);
+
+        OlmMetrics.fail(OlmMetrics.OPERATION_PICKLE, OlmMetrics.start(), "failed to pickle 0x7f3a");
+        OlmMetrics.fail(OlmMetrics.OPERATION_PICKLE, OlmMetrics.start(), "failed to pickle 0x7f3b");
+        OlmMetrics.fail(OlmMetrics.OPERATION_UNPICKLE, OlmMetrics.start(), null);
+        OlmMetrics.fail(OlmMetrics.OPERATION_UNPICKLE, OlmMetrics.start(), OlmErrorCode.name(OlmErrorCode.CORRUPTED_PICKLE));
+
+        OlmMetrics.Snapshot snapshot = OlmMetrics.snapshot();
+        assertEquals(2, snapshot.mFailuresByError.size());
+        assertEquals(Long.valueOf(3), snapshot.mFailuresByError.get("UNKNOWN_ERROR"));
+        assertEquals(Long.valueOf(1), snapshot.mFailuresByError.get("CORRUPTED_PICKLE"));
+    }
+}
@@ -198,4 +198,178 @@ public class OlmPkTest {
 
         olmUtility.releaseUtility();
     }
+
+    /**
+     * - a message is decrypted through tryDecrypt()
+     * - a message with a tampered MAC fails with BAD_MESSAGE_MAC, without throwing
+     */
+    @Test
+    public void test04TryDecrypt() {
+        OlmPkEncryption encryption = null;
+        OlmPkDecryption decryption = null;
+        OlmPkMessage message = null;
+
+        try {
+            encryption = new OlmPkEncryption();
+            decryption = new OlmPkDecryption();
+            encryption.setRecipientKey(decryption.generateKey());
+            message = encryption.encrypt("Public key test");
+        } catch (OlmException e) {
+            assertTrue("Exception in encrypt, Exception code=" + e.getExceptionCode(), false);
+        }
+
+        OlmDecryptResult result = new OlmDecryptResult();
+        assertTrue(OlmErrorCode.SUCCESS == decryption.tryDecrypt(message, result));
+        assertTrue("Public key test".equals(result.mPlaintext));
+
+        OlmPkMessage tampered = new OlmPkMessage();
+        tampered.mCipherText = message.mCipherText;
+        tampered.mEphemeralKey = message.mEphemeralKey;
+        tampered.mMac = message.mMac.substring(1) + (message.mMac.startsWith("A") ? "B" : "A");
+        assertTrue(OlmErrorCode.BAD_MESSAGE_MAC == decryption.tryDecrypt(tampered, result));
+        assertNull(result.mPlaintext);
+
+        try {
+            decryption.decrypt(tampered);
+            assertTrue("decrypt should have failed", false);
+        } catch (OlmException e) {
+            assertTrue("BAD_MESSAGE_MAC".equals(e.getMessage()));
+        }
+
+        encryption.releaseEncryption();
+        decryption.releaseDecryption();
+    }
+
+    /**
+     * - a batch of messages is signed in one call
+     * - each signature matches the single message one and verifies
+     */
+    @Test
+    public void test05SignMessages() {
+        try {
+            OlmPkSigning signing = new OlmPkSigning();
+            String pubkey = signing.initWithSeed(OlmPkSigning.generateSeed());
+            String[] messages = {"{\"key\":\"first\"}", "", "{\"key\":\"third\"}"};
+
+            String[] signatures = signing.signMessages(messages);
+            assertTrue(messages.length == signatures.length);
+
+            OlmUtility olmUtility = new OlmUtility();
+            for (int i = 0; i < messages.length; i++) {
+                assertTrue(signing.sign(messages[i]).equals(signatures[i]));
+                olmUtility.verifyEd25519Signature(signatures[i], pubkey, messages[i]);
+            }
+            assertTrue(0 == signing.signMessages(new String[0]).length);
+
+            olmUtility.releaseUtility();
+            signing.releaseSigning();
+        } catch (OlmException e) {
+            assertTrue("signMessages failed " + e.getMessage(), false);
+        }
+    }
+
+    /**
+     * - a batch of messages is decrypted on several threads
+     * - a tampered or incomplete message only fails on its own
+     */
+    @Test
+    public void test06DecryptBatch() {
+        try {
+            OlmPkEncryption encryption = new OlmPkEncryption();
+            OlmPkDecryption decryption = new OlmPkDecryption();
+            encryption.setRecipientKey(decryption.generateKey());
+
+            int count = 50;
+            String[] cipherTexts = new String[count];
+            String[] macs = new String[count];
+            String[] ephemeralKeys = new String[count];
+            for (int i = 0; i < count; i++) {
+                OlmPkMessage message = encryption.encrypt("Room key " + i);
+                cipherTexts[i] = message.mCipherText;
+                macs[i] = message.mMac;
+                ephemeralKeys[i] = message.mEphemeralKey;
+            }
+            macs[7] = macs[7].substring(1) + (macs[7].startsWith("A") ? "B" : "A");
+            ephemeralKeys[11] = null;
+
+            OlmPkDecryption.BatchResult result = decryption.decryptBatch(cipherTexts, macs, ephemeralKeys, 4);
+            assertTrue(count - 2 == result.mSuccessCount);
+            for (int i = 0; i < count; i++) {
+                if (7 == i) {
+                    assertTrue(OlmErrorCode.BAD_MESSAGE_MAC == result.mStatuses[i]);
+                    assertNull(result.mPlaintexts[i]);
+                } else if (11 == i) {
+                    assertTrue(OlmErrorCode.INVALID_INPUT == result.mStatuses[i]);
+                    assertNull(result.mPlaintexts[i]);
+                } else {
+                    assertTrue(OlmErrorCode.SUCCESS == result.mStatuses[i]);
+                    assertTrue(("Room key " + i).equals(result.mPlaintexts[i]));
+                }
+            }
+
+            try {
+                decryption.decryptBatch(cipherTexts, new String[1], ephemeralKeys, 0);
+                assertTrue("mismatched arrays must be rejected", false);
+            } catch (OlmException e) {
+                assertTrue(OlmException.EXCEPTION_CODE_PK_DECRYPTION_DECRYPT == e.getExceptionCode());
+            }
+
+            encryption.releaseEncryption();
+            decryption.releaseDecryption();
+        } catch (OlmException e) {
+            assertTrue("decryptBatch failed " + e.getMessage(), false);
+        }
+    }
+
+    /**
+     * - a batch of plaintexts is encrypted on several threads
+     * - every message has its own ephemeral key and decrypts to its plaintext
+     * - a null plaintext rejects the batch
+     */
+    @Test
+    public void test07EncryptBatch() {
+        try {
+            OlmPkEncryption encryption = new OlmPkEncryption();
+            OlmPkDecryption decryption = new OlmPkDecryption();
+            encryption.setRecipientKey(decryption.generateKey());
+
+            int count = 50;
+            String[] plaintexts = new String[count];
+            for (int i = 0; i < count; i++) {
+                plaintexts[i] = "Room key " + i;
+            }
+
+            OlmPkEncryption.EncryptedBatch batch = encryption.encryptBatch(plaintexts, 4);
+            assertTrue(count == batch.size());
+            String[] cipherTexts = new String[count];
+            String[] macs = new String[count];
+            String[] ephemeralKeys = new String[count];
+            for (int i = 0; i < count; i++) {
+                OlmPkMessage message = batch.getMessage(i);
+                assertTrue(plaintexts[i].equals(decryption.decrypt(message)));
+                cipherTexts[i] = message.mCipherText;
+                macs[i] = message.mMac;
+                ephemeralKeys[i] = message.mEphemeralKey;
+            }
+            assertFalse(ephemeralKeys[0].equals(ephemeralKeys[1]));
+
+            OlmPkDecryption.BatchResult result = decryption.decryptBatch(cipherTexts, macs, ephemeralKeys, 0);
+            assertTrue(count == result.mSuccessCount);
+
+            assertTrue(0 == encryption.encryptBatch(new String[0], 0).size());
+
+            plaintexts[3] = null;
+            try {
+                encryption.encryptBatch(plaintexts, 0);
+                assertTrue("null plaintext must be rejected", false);
+            } catch (OlmException e) {
+                assertTrue(OlmException.EXCEPTION_CODE_PK_ENCRYPTION_ENCRYPT == e.getExceptionCode());
+            }
+
+            encryption.releaseEncryption();
+            decryption.releaseDecryption();
+        } catch (OlmException e) {
+            assertTrue("encryptBatch failed " + e.getMessage(), false);
+        }
+    }
 }
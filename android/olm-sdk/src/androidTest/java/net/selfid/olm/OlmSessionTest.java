@@ -35,11 +35,14 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import static android.support.test.InstrumentationRegistry.getInstrumentation;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 @RunWith(AndroidJUnit4.class)
@@ -1011,4 +1014,277 @@ public class OlmSessionTest {
         assertTrue(bobSession.isReleased());
     }
 
+    /**
+     * - a pre-key message is parsed once, its keys are read to route it
+     * - the parsed message is matched and decrypted by bob's new session
+     * - a normal message has no base key, and a corrupted message can't be parsed
+     */
+    @Test
+    public void test07ParsedMessage() {
+        OlmAccount aliceAccount = null;
+        OlmAccount bobAccount = null;
+        OlmSession aliceSession = null;
+        OlmSession bobSession = null;
+
+        try {
+            aliceAccount = new OlmAccount();
+            bobAccount = new OlmAccount();
+            bobAccount.generateOneTimeKeys(1);
+        } catch (OlmException e) {
+            assertTrue(e.getMessage(), false);
+        }
+
+        try {
+            String aliceIdentityKey = TestHelper.getIdentityKey(aliceAccount.identityKeys());
+            String bobIdentityKey = TestHelper.getIdentityKey(bobAccount.identityKeys());
+            String bobOneTimeKey = TestHelper.getOneTimeKey(bobAccount.oneTimeKeys(), 1);
+
+            aliceSession = new OlmSession();
+            aliceSession.initOutboundSession(aliceAccount, bobIdentityKey, bobOneTimeKey);
+            OlmMessage preKeyMessage = aliceSession.encryptMessage("Hello bob");
+
+            OlmParsedMessage parsed = new OlmParsedMessage(preKeyMessage);
+            assertTrue(OlmMessage.MESSAGE_TYPE_PRE_KEY == parsed.getType());
+            assertTrue(0 == parsed.getCounter());
+            assertTrue(TextUtils.equals(aliceIdentityKey, parsed.getIdentityKey()));
+            assertTrue(TextUtils.equals(bobOneTimeKey, parsed.getOneTimeKey()));
+            assertNotNull(parsed.getBaseKey());
+            assertNotNull(parsed.getRatchetKey());
+
+            bobSession = new OlmSession();
+            bobSession.initInboundSessionFrom(bobAccount, aliceIdentityKey, preKeyMessage.mCipherText);
+            assertTrue(bobSession.matchesInboundParsedSession(parsed));
+            assertTrue(bobSession.matchesInboundParsedSessionFrom(aliceIdentityKey, parsed));
+            assertFalse(bobSession.matchesInboundParsedSessionFrom(bobIdentityKey, parsed));
+
+            OlmDecryptResult result = new OlmDecryptResult();
+            assertTrue(OlmErrorCode.SUCCESS == bobSession.tryDecryptParsed(parsed, result));
+            assertTrue(TextUtils.equals("Hello bob", result.mPlaintext));
+
+            parsed.releaseMessage();
+            assertTrue(parsed.isReleased());
+            assertTrue(OlmErrorCode.INVALID_INPUT == bobSession.tryDecryptParsed(parsed, result));
+            assertFalse(bobSession.matchesInboundParsedSession(parsed));
+
+            OlmMessage reply = bobSession.encryptMessage("Hello alice");
+            parsed = new OlmParsedMessage(reply);
+            assertTrue(OlmMessage.MESSAGE_TYPE_MESSAGE == parsed.getType());
+            assertNull(parsed.getBaseKey());
+            assertNull(parsed.getIdentityKey());
+            assertNotNull(parsed.getRatchetKey());
+            assertTrue(TextUtils.equals("Hello alice", aliceSession.decryptParsedMessage(parsed)));
+            parsed.releaseMessage();
+        } catch (Exception e) {
+            assertTrue(e.getMessage(), false);
+        }
+
+        OlmMessage corrupted = new OlmMessage();
+        corrupted.mType = OlmMessage.MESSAGE_TYPE_MESSAGE;
+        corrupted.mCipherText = "AwgANYTHING*/rg5ganything";
+
+        try {
+            new OlmParsedMessage(corrupted);
+            assertTrue("the message should not be parsed", false);
+        } catch (OlmException e) {
+            assertTrue(OlmException.EXCEPTION_CODE_PARSED_MESSAGE_CREATION == e.getExceptionCode());
+        }
+
+        aliceSession.releaseSession();
+        bobSession.releaseSession();
+        aliceAccount.releaseAccount();
+        bobAccount.releaseAccount();
+    }
+
+    /**
+     * - bob has two sessions with alice
+     * - a message on the second one is decrypted by it, whatever the order of the candidates
+     * - a replayed message reports the MAC error of the last session tried
+     */
+    @Test
+    public void test08TryDecryptWithSessions() {
+        OlmAccount aliceAccount = null;
+        OlmAccount bobAccount = null;
+        List<OlmSession> aliceSessions = new ArrayList<>();
+        List<OlmSession> bobSessions = new ArrayList<>();
+
+        try {
+            aliceAccount = new OlmAccount();
+            bobAccount = new OlmAccount();
+            bobAccount.generateOneTimeKeys(2);
+
+            String aliceIdentityKey = TestHelper.getIdentityKey(aliceAccount.identityKeys());
+            String bobIdentityKey = TestHelper.getIdentityKey(bobAccount.identityKeys());
+            Map<String, Map<String, String>> bobOneTimeKeys = bobAccount.oneTimeKeys();
+
+            for (int i = 1; i <= 2; i++) {
+                OlmSession aliceSession = new OlmSession();
+                aliceSession.initOutboundSession(aliceAccount, bobIdentityKey, TestHelper.getOneTimeKey(bobOneTimeKeys, i));
+                OlmMessage message = aliceSession.encryptMessage("Hello " + i);
+
+                OlmSession bobSession = new OlmSession();
+                bobSession.initInboundSessionFrom(bobAccount, aliceIdentityKey, message.mCipherText);
+                assertTrue(TextUtils.equals("Hello " + i, bobSession.decryptMessage(message)));
+
+                aliceSessions.add(aliceSession);
+                bobSessions.add(bobSession);
+            }
+
+            OlmParsedMessage parsed = new OlmParsedMessage(aliceSessions.get(1).encryptMessage("Second session"));
+            OlmDecryptResult result = new OlmDecryptResult();
+            assertTrue(OlmErrorCode.SUCCESS == OlmSession.tryDecryptWithSessions(bobSessions, parsed, result));
+            assertTrue(TextUtils.equals("Second session", result.mPlaintext));
+            assertTrue(1 == result.mSessionIndex);
+
+            assertTrue(OlmErrorCode.BAD_MESSAGE_MAC == OlmSession.tryDecryptWithSessions(bobSessions, parsed, result));
+            assertTrue(-1 == result.mSessionIndex);
+            assertTrue(OlmErrorCode.INVALID_INPUT == OlmSession.tryDecryptWithSessions(new ArrayList<OlmSession>(), parsed, result));
+
+            List<OlmSession> withNull = new ArrayList<>(bobSessions);
+            withNull.add(0, null);
+            assertTrue(OlmErrorCode.INVALID_INPUT == OlmSession.tryDecryptWithSessions(withNull, parsed, result));
+            parsed.releaseMessage();
+        } catch (Exception e) {
+            assertTrue(e.getMessage(), false);
+        }
+
+        for (OlmSession session : aliceSessions) {
+            session.releaseSession();
+        }
+        for (OlmSession session : bobSessions) {
+            session.releaseSession();
+        }
+        aliceAccount.releaseAccount();
+        bobAccount.releaseAccount();
+    }
+
+    /**
+     * - the ephemeral key pool is filled in the background
+     * - an outbound session and the replies use the pooled key pairs
+     * - the messages decrypt on the other side
+     * - disabling the pool wipes it
+     */
+    @Test
+    public void test09EphemeralKeyPool() {
+        OlmAccount aliceAccount = null;
+        OlmAccount bobAccount = null;
+        OlmSession aliceSession = null;
+        OlmSession bobSession = null;
+
+        try {
+            OlmEphemeralKeyPool.enable(4);
+            assertTrue(OlmEphemeralKeyPool.isEnabled());
+            for (int i = 0; (i < 100) && (OlmEphemeralKeyPool.size() < 4); i++) {
+                Thread.sleep(20);
+            }
+            assertTrue(4 == OlmEphemeralKeyPool.size());
+
+            aliceAccount = new OlmAccount();
+            bobAccount = new OlmAccount();
+            bobAccount.generateOneTimeKeys(1);
+
+            String aliceIdentityKey = TestHelper.getIdentityKey(aliceAccount.identityKeys());
+            String bobIdentityKey = TestHelper.getIdentityKey(bobAccount.identityKeys());
+
+            aliceSession = new OlmSession();
+            aliceSession.initOutboundSession(aliceAccount, bobIdentityKey, TestHelper.getOneTimeKey(bobAccount.oneTimeKeys(), 1));
+            OlmMessage message = aliceSession.encryptMessage("Hello");
+
+            bobSession = new OlmSession();
+            bobSession.initInboundSessionFrom(bobAccount, aliceIdentityKey, message.mCipherText);
+            assertTrue(TextUtils.equals("Hello", bobSession.decryptMessage(message)));
+
+            // the replies alternate, each one starts a new sender chain
+            for (int i = 0; i < 6; i++) {
+                OlmSession sender = (0 == i % 2) ? bobSession : aliceSession;
+                OlmSession receiver = (0 == i % 2) ? aliceSession : bobSession;
+                OlmMessage reply = sender.encryptMessage("Reply " + i);
+                assertTrue(TextUtils.equals("Reply " + i, receiver.decryptMessage(reply)));
+            }
+
+            OlmEphemeralKeyPool.disable();
+            assertFalse(OlmEphemeralKeyPool.isEnabled());
+            assertTrue(0 == OlmEphemeralKeyPool.size());
+        } catch (Exception e) {
+            assertTrue(e.getMessage(), false);
+        } finally {
+            OlmEphemeralKeyPool.disable();
+        }
+
+        if (null != aliceSession) {
+            aliceSession.releaseSession();
+        }
+        if (null != bobSession) {
+            bobSession.releaseSession();
+        }
+        if (null != aliceAccount) {
+            aliceAccount.releaseAccount();
+        }
+        if (null != bobAccount) {
+            bobAccount.releaseAccount();
+        }
+    }
+
+    /**
+     * - a session is created from a raw PRE_KEY message
+     * - the raw replies decrypt on the other side
+     * - a raw message can't be decrypted as a base64 one, and a missing raw message is rejected
+     */
+    @Test
+    public void test10RawMessages() {
+        OlmAccount aliceAccount = null;
+        OlmAccount bobAccount = null;
+        OlmSession aliceSession = null;
+        OlmSession bobSession = null;
+
+        try {
+            aliceAccount = new OlmAccount();
+            bobAccount = new OlmAccount();
+            bobAccount.generateOneTimeKeys(1);
+
+            String bobIdentityKey = TestHelper.getIdentityKey(bobAccount.identityKeys());
+
+            aliceSession = new OlmSession();
+            aliceSession.initOutboundSession(aliceAccount, bobIdentityKey, TestHelper.getOneTimeKey(bobAccount.oneTimeKeys(), 1));
+            OlmMessage message = aliceSession.encryptMessageRaw("Hello");
+            assertTrue(OlmMessage.MESSAGE_TYPE_PRE_KEY == message.mType);
+            assertNull(message.mCipherText);
+            assertNotNull(message.mRawCipherText);
+
+            bobSession = new OlmSession();
+            bobSession.initInboundSessionRaw(bobAccount, message.mRawCipherText);
+            assertTrue(TextUtils.equals("Hello", bobSession.decryptMessageRaw(message)));
+
+            for (int i = 0; i < 4; i++) {
+                OlmSession sender = (0 == i % 2) ? bobSession : aliceSession;
+                OlmSession receiver = (0 == i % 2) ? aliceSession : bobSession;
+                OlmMessage reply = sender.encryptMessageRaw("Reply " + i);
+                assertTrue(OlmMessage.MESSAGE_TYPE_MESSAGE == reply.mType);
+                assertTrue(TextUtils.equals("Reply " + i, receiver.decryptMessageRaw(reply)));
+            }
+
+            OlmDecryptResult result = new OlmDecryptResult();
+            OlmMessage reply = bobSession.encryptMessageRaw("Reply");
+            reply.mCipherText = new String(reply.mRawCipherText, "ISO-8859-1");
+            assertFalse(OlmErrorCode.SUCCESS == aliceSession.tryDecrypt(reply, result));
+            assertTrue(TextUtils.equals("Reply", aliceSession.decryptMessageRaw(reply)));
+
+            reply.mRawCipherText = null;
+            assertTrue(OlmErrorCode.INVALID_INPUT == aliceSession.tryDecryptRaw(reply, result));
+        } catch (Exception e) {
+            assertTrue(e.getMessage(), false);
+        }
+
+        if (null != aliceSession) {
+            aliceSession.releaseSession();
+        }
+        if (null != bobSession) {
+            bobSession.releaseSession();
+        }
+        if (null != aliceAccount) {
+            aliceAccount.releaseAccount();
+        }
+        if (null != bobAccount) {
+            bobAccount.releaseAccount();
+        }
+    }
 }
@@ -158,4 +158,61 @@ public class OlmUtilityTest {
         utility.releaseUtility();
         assertTrue(utility.isReleased());
     }
+
+    /**
+     * - a verified signature is served by the cache the next time
+     * - a bad signature is never cached
+     * - the cache stays within its capacity
+     * - the per-thread utility is reused until released
+     */
+    @Test
+    public void test03SignatureCache() {
+        try {
+            OlmAccount account = new OlmAccount();
+            String fingerPrintKey = TestHelper.getFingerprintKey(account.identityKeys());
+
+            SignatureCache cache = new SignatureCache(2);
+            OlmUtility.setSignatureCache(cache);
+
+            String signature = account.signMessage("message 0");
+            OlmUtility.verifySignature(signature, fingerPrintKey, "message 0");
+            OlmUtility.verifySignature(signature, fingerPrintKey, "message 0");
+            SignatureCache.Stats stats = cache.getStats();
+            assertTrue(1 == stats.mHits);
+            assertTrue(1 == stats.mMisses);
+            assertTrue(1 == stats.mSize);
+            assertTrue(0.5 == stats.getHitRate());
+
+            // the same signature for another message is verified, and rejected
+            for (int i = 0; i < 2; i++) {
+                try {
+                    OlmUtility.verifySignature(signature, fingerPrintKey, "message 1");
+                    assertTrue("the signature should be rejected", false);
+                } catch (OlmException e) {
+                    assertTrue(OlmException.EXCEPTION_CODE_UTILITY_VERIFY_SIGNATURE == e.getExceptionCode());
+                }
+            }
+            assertTrue(1 == cache.getStats().mSize);
+
+            for (int i = 1; i <= 3; i++) {
+                OlmUtility.verifySignature(account.signMessage("message " + i), fingerPrintKey, "message " + i);
+            }
+            stats = cache.getStats();
+            assertTrue(2 == stats.mSize);
+            assertTrue(2 == stats.mEvictions);
+
+            OlmUtility utility = OlmUtility.forCurrentThread();
+            assertTrue(utility == OlmUtility.forCurrentThread());
+            OlmUtility.releaseForCurrentThread();
+            assertTrue(utility.isReleased());
+            assertFalse(utility == OlmUtility.forCurrentThread());
+            OlmUtility.releaseForCurrentThread();
+
+            account.releaseAccount();
+        } catch (OlmException e) {
+            assertTrue("signature cache failed " + e.getMessage(), false);
+        } finally {
+            OlmUtility.setSignatureCache(null);
+        }
+    }
 }
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.selfid.olm;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.MethodSorters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class SessionCacheTest {
+    private static OlmManager mOlmManager;
+
+    @BeforeClass
+    public static void setUpClass() {
+        // load native lib
+        mOlmManager = new OlmManager();
+    }
+
+    /**
+     * - three inbound group sessions are put in a cache holding two of them
+     * - the least recently used one is evicted and transparently reloaded
+     * - the reloaded session still decrypts messages
+     */
+    @Test
+    public void test01EvictAndReload() throws Exception {
+        SessionCache<OlmInboundGroupSession> cache = SessionCache.forInboundGroupSessions(2, 0);
+        OlmOutboundGroupSession[] outboundSessions = new OlmOutboundGroupSession[3];
+        String[] sessionIds = new String[3];
+
+        for (int i = 0; i < 3; i++) {
+            outboundSessions[i] = new OlmOutboundGroupSession();
+            OlmInboundGroupSession inboundSession = new OlmInboundGroupSession(outboundSessions[i].sessionKey());
+            sessionIds[i] = inboundSession.sessionIdentifier();
+            cache.put(sessionIds[i], inboundSession);
+        }
+
+        assertFalse(cache.isResident(sessionIds[0]));
+        assertTrue(cache.isResident(sessionIds[1]));
+        assertTrue(cache.isResident(sessionIds[2]));
+
+        String encrypted = outboundSessions[0].encryptMessage("Hello");
+        OlmInboundGroupSession reloaded = cache.get(sessionIds[0]);
+        assertNotNull(reloaded);
+        assertEquals("Hello", reloaded.decryptMessage(encrypted).mDecryptedMessage);
+
+        // the reload evicted the least recently used session
+        assertFalse(cache.isResident(sessionIds[1]));
+
+        SessionCache.Stats stats = cache.getStats();
+        assertEquals(0, stats.mHits);
+        assertEquals(1, stats.mMisses);
+        assertEquals(1, stats.mLoads);
+        assertEquals(2, stats.mEvictions);
+        assertEquals(2, stats.mResidentCount);
+        assertTrue(stats.mResidentBytes > 0);
+
+        assertNull(cache.get("unknown"));
+
+        cache.clear();
+        for (OlmOutboundGroupSession outboundSession : outboundSessions) {
+            outboundSession.releaseSession();
+        }
+    }
+
+    /**
+     * - a pinned session is never evicted
+     * - once unpinned, it becomes evictable again
+     */
+    @Test
+    public void test02PinnedSessionIsNotEvicted() throws Exception {
+        SessionCache<OlmInboundGroupSession> cache = SessionCache.forInboundGroupSessions(1, 0);
+        OlmOutboundGroupSession outboundSession = new OlmOutboundGroupSession();
+        OlmInboundGroupSession inboundSession = new OlmInboundGroupSession(outboundSession.sessionKey());
+
+        cache.put("first", inboundSession);
+        assertSame(inboundSession, cache.acquire("first"));
+
+        cache.put("second", new OlmInboundGroupSession(outboundSession.sessionKey()));
+        assertTrue(cache.isResident("first"));
+        assertFalse(cache.isResident("second"));
+        assertFalse(inboundSession.isReleased());
+
+        cache.release("first", inboundSession);
+        assertNotNull(cache.get("second"));
+        assertFalse(cache.isResident("first"));
+        assertTrue(inboundSession.isReleased());
+
+        cache.clear();
+        outboundSession.releaseSession();
+    }
+
+    /**
+     * - the session returned by get() is not evicted to make room for itself
+     * - clear() does not release a pinned session before it is unpinned
+     */
+    @Test
+    public void test03ReturnedAndPinnedSessionsStayAlive() throws Exception {
+        SessionCache<OlmInboundGroupSession> cache = SessionCache.forInboundGroupSessions(1, 0);
+        OlmOutboundGroupSession outboundSession = new OlmOutboundGroupSession();
+        OlmInboundGroupSession firstSession = new OlmInboundGroupSession(outboundSession.sessionKey());
+        OlmInboundGroupSession secondSession = new OlmInboundGroupSession(outboundSession.sessionKey());
+
+        cache.put("first", firstSession);
+        cache.put("second", secondSession);
+        assertTrue(cache.isResident("second"));
+
+        // "second" is pinned, reloading "first" goes over capacity
+        assertSame(secondSession, cache.acquire("second"));
+        OlmInboundGroupSession reloaded = cache.get("first");
+        assertNotNull(reloaded);
+        assertFalse(reloaded.isReleased());
+        assertTrue(cache.isResident("first"));
+
+        String encrypted = outboundSession.encryptMessage("Hello");
+        assertEquals("Hello", reloaded.decryptMessage(encrypted).mDecryptedMessage);
+
+        cache.clear();
+        assertTrue(reloaded.isReleased());
+        assertFalse(secondSession.isReleased());
+        assertEquals("Hello", secondSession.decryptMessage(encrypted).mDecryptedMessage);
+
+        cache.release("second", secondSession);
+        assertTrue(secondSession.isReleased());
+
+        outboundSession.releaseSession();
+    }
+
+    /**
+     * - putting a pinned session again keeps it pinned
+     * - releasing a replaced session does not unpin its replacement
+     */
+    @Test
+    public void test04PinsFollowTheSession() throws Exception {
+        SessionCache<OlmInboundGroupSession> cache = SessionCache.forInboundGroupSessions(1, 0);
+        OlmOutboundGroupSession outboundSession = new OlmOutboundGroupSession();
+        OlmInboundGroupSession firstSession = new OlmInboundGroupSession(outboundSession.sessionKey());
+        OlmInboundGroupSession secondSession = new OlmInboundGroupSession(outboundSession.sessionKey());
+        OlmInboundGroupSession otherSession = new OlmInboundGroupSession(outboundSession.sessionKey());
+
+        cache.put("A", firstSession);
+        assertSame(firstSession, cache.acquire("A"));
+        cache.put("A", firstSession);
+        cache.put("B", otherSession);
+        assertTrue(cache.isResident("A"));
+        assertFalse(firstSession.isReleased());
+
+        // firstSession is replaced while pinned, then secondSession is pinned by another user
+        cache.put("A", secondSession);
+        assertFalse(firstSession.isReleased());
+        assertSame(secondSession, cache.acquire("A"));
+
+        cache.release("A", firstSession);
+        assertTrue(firstSession.isReleased());
+
+        cache.put("B", new OlmInboundGroupSession(outboundSession.sessionKey()));
+        assertTrue(cache.isResident("A"));
+        assertFalse(secondSession.isReleased());
+
+        cache.release("A", secondSession);
+        cache.clear();
+        assertTrue(secondSession.isReleased());
+        outboundSession.releaseSession();
+    }
+}
@@ -26,6 +26,7 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Map;
 
@@ -55,6 +56,49 @@ public class OlmAccount extends CommonSerializeUtils implements Serializable {
      never leave the device, but the public part is published to the Matrix network. **/
     public static final String JSON_KEY_FINGER_PRINT_KEY = "ed25519";
 
+    /** Index of the Curve25519 identity key in the array returned by {@link #identityKeysArray()} **/
+    public static final int IDENTITY_KEY_INDEX = 0;
+
+    /** Index of the Ed25519 fingerprint key in the array returned by {@link #identityKeysArray()} **/
+    public static final int FINGER_PRINT_KEY_INDEX = 1;
+
+    /** Length of a base64 encoded public key in the packed key formats **/
+    public static final int PACKED_KEY_LENGTH = 43;
+
+    /** Length of a base64 encoded one time key id in the packed key formats **/
+    public static final int PACKED_KEY_ID_LENGTH = 6;
+
+    /** Length of a record returned by {@link #oneTimeKeysPacked(int, int, boolean)}: the key id followed by the key **/
+    public static final int PACKED_ONE_TIME_KEY_LENGTH = PACKED_KEY_ID_LENGTH + PACKED_KEY_LENGTH;
+
+    /** Length of a base64 encoded Ed25519 signature **/
+    public static final int SIGNATURE_LENGTH = 86;
+
+    /** Key algorithm of the signed one time keys in a key upload **/
+    public static final String JSON_KEY_SIGNED_ONE_TIME_KEY = "signed_curve25519";
+
+    /**
+     * A page of "one time keys" returned by {@link #oneTimeKeys(int, int, boolean)}.<br>
+     * The key at index i of {@link #mKeys} has the id at index i of {@link #mKeyIds}.
+     */
+    public static class OneTimeKeys {
+        /** the base64 encoded key ids **/
+        public String[] mKeyIds;
+
+        /** the base64 encoded Curve25519 keys **/
+        public String[] mKeys;
+    }
+
+    /**
+     * A page of signed "one time keys" returned by {@link #signedOneTimeKeys(int, int, boolean)}.<br>
+     * The signature at index i of {@link #mSignatures} signs the canonical JSON object
+     * <tt>{"key":"&lt;key&gt;"}</tt> of the key at index i of {@link #mKeys}.
+     */
+    public static class SignedOneTimeKeys extends OneTimeKeys {
+        /** the base64 encoded Ed25519 signatures **/
+        public String[] mSignatures;
+    }
+
     /** Account Id returned by JNI.
      * This value identifies uniquely the native account instance.
      */
@@ -155,6 +199,37 @@ public class OlmAccount extends CommonSerializeUtils implements Serializable {
      */
     private native byte[] identityKeysJni();
 
+    /**
+     * Return the identity keys without going through JSON.<br>
+     * The Curve25519 identity key is at {@link #IDENTITY_KEY_INDEX} and the
+     * Ed25519 fingerprint key at {@link #FINGER_PRINT_KEY_INDEX}, both base64 encoded.
+     * @return the identity keys
+     * @exception OlmException the failure reason
+     */
+    public String[] identityKeysArray() throws OlmException {
+        byte[] packedKeys;
+
+        try {
+            packedKeys = identityKeysPackedJni();
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "## identityKeysArray(): Failure - " + e.getMessage());
+            throw new OlmException(OlmException.EXCEPTION_CODE_ACCOUNT_IDENTITY_KEYS, e.getMessage());
+        }
+
+        return new String[] {
+                new String(packedKeys, 0, PACKED_KEY_LENGTH, StandardCharsets.US_ASCII),
+                new String(packedKeys, PACKED_KEY_LENGTH, PACKED_KEY_LENGTH, StandardCharsets.US_ASCII)
+        };
+    }
+
+    /**
+     * Get the public identity keys with no JSON framing: the base64 Curve25519 identity key
+     * immediately followed by the base64 Ed25519 fingerprint key.
+     * An exception is thrown if the operation fails.
+     * @return the packed identity keys
+     */
+    private native byte[] identityKeysPackedJni();
+
     /**
      * Return the largest number of "one time keys" this account can store.
      * @return the max number of "one time keys", -1 otherwise
@@ -177,11 +252,18 @@ public class OlmAccount extends CommonSerializeUtils implements Serializable {
      * @exception OlmException the failure reason
      */
     public void generateOneTimeKeys(int aNumberOfKeys) throws OlmException {
+        long start = OlmMetrics.start();
+        long traceStart = OlmTrace.begin(OlmTrace.EVENT_KEY_GENERATION);
         try {
             generateOneTimeKeysJni(aNumberOfKeys);
         } catch (Exception e) {
+            OlmMetrics.fail(OlmMetrics.OPERATION_GENERATE_ONE_TIME_KEYS, start, e.getMessage());
+            OlmTrace.end(traceStart, null, aNumberOfKeys, -1, e.getMessage());
             throw new OlmException(OlmException.EXCEPTION_CODE_ACCOUNT_GENERATE_ONE_TIME_KEYS, e.getMessage());
         }
+
+        OlmMetrics.end(OlmMetrics.OPERATION_GENERATE_ONE_TIME_KEYS, start);
+        OlmTrace.end(traceStart, null, aNumberOfKeys, -1, null);
     }
 
     /**
@@ -240,6 +322,168 @@ public class OlmAccount extends CommonSerializeUtils implements Serializable {
      */
     private native byte[] oneTimeKeysJni();
 
+    /**
+     * Return the number of "one time keys" held by the account.
+     * @param aUnpublishedOnly true to only count the keys that haven't been published yet
+     * @return the number of keys, -1 if the account has been released
+     */
+    public int oneTimeKeysCount(boolean aUnpublishedOnly) {
+        return oneTimeKeysCountJni(aUnpublishedOnly);
+    }
+
+    /**
+     * Return the number of "one time keys" held by the account.
+     * @param aUnpublishedOnly true to only count the keys that haven't been published yet
+     * @return the number of keys, -1 if the account is invalid
+     */
+    private native int oneTimeKeysCountJni(boolean aUnpublishedOnly);
+
+    /**
+     * Return a page of "one time keys" without going through JSON.<br>
+     * The keys are listed newest first, and each of them is a record of
+     * {@link #PACKED_ONE_TIME_KEY_LENGTH} ASCII bytes: the base64 key id followed by
+     * the base64 Curve25519 key. The records can be copied as they are into a request body.
+     * @param aOffset number of keys to skip
+     * @param aLimit maximum number of keys to return
+     * @param aUnpublishedOnly true to skip the keys that have already been published,
+     *                         they are then not counted by aOffset either
+     * @return the packed records, an empty array when there is no key past aOffset
+     * @exception OlmException the failure reason
+     */
+    public byte[] oneTimeKeysPacked(int aOffset, int aLimit, boolean aUnpublishedOnly) throws OlmException {
+        try {
+            return oneTimeKeysPackedJni(aOffset, aLimit, aUnpublishedOnly);
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "## oneTimeKeysPacked(): Failure - " + e.getMessage());
+            throw new OlmException(OlmException.EXCEPTION_CODE_ACCOUNT_ONE_TIME_KEYS, e.getMessage());
+        }
+    }
+
+    /**
+     * Return a page of "one time keys" as key id / key pairs without going through JSON.<br>
+     * See {@link #oneTimeKeysPacked(int, int, boolean)} for the ordering and paging rules.
+     * @param aOffset number of keys to skip
+     * @param aLimit maximum number of keys to return
+     * @param aUnpublishedOnly true to skip the keys that have already been published
+     * @return the one time keys
+     * @exception OlmException the failure reason
+     */
+    public OneTimeKeys oneTimeKeys(int aOffset, int aLimit, boolean aUnpublishedOnly) throws OlmException {
+        byte[] packedKeys = oneTimeKeysPacked(aOffset, aLimit, aUnpublishedOnly);
+        int count = packedKeys.length / PACKED_ONE_TIME_KEY_LENGTH;
+
+        OneTimeKeys oneTimeKeys = new OneTimeKeys();
+        oneTimeKeys.mKeyIds = new String[count];
+        oneTimeKeys.mKeys = new String[count];
+
+        for (int i = 0; i < count; i++) {
+            int offset = i * PACKED_ONE_TIME_KEY_LENGTH;
+            oneTimeKeys.mKeyIds[i] = new String(packedKeys, offset, PACKED_KEY_ID_LENGTH, StandardCharsets.US_ASCII);
+            oneTimeKeys.mKeys[i] = new String(packedKeys, offset + PACKED_KEY_ID_LENGTH, PACKED_KEY_LENGTH, StandardCharsets.US_ASCII);
+        }
+
+        return oneTimeKeys;
+    }
+
+    /**
+     * Get a page of "one time keys" with no JSON framing.<br>
+     * Each key is the base64 key id immediately followed by the base64 Curve25519 key.
+     * An exception is thrown if the operation fails.
+     * @param aOffset number of keys to skip
+     * @param aLimit maximum number of keys to return
+     * @param aUnpublishedOnly true to skip the keys that have already been published
+     * @return the packed records
+     */
+    private native byte[] oneTimeKeysPackedJni(int aOffset, int aLimit, boolean aUnpublishedOnly);
+
+    /**
+     * Sign a page of "one time keys" in a single native call.<br>
+     * See {@link #oneTimeKeysPacked(int, int, boolean)} for the ordering and paging rules.
+     * @param aOffset number of keys to skip
+     * @param aLimit maximum number of keys to sign
+     * @param aUnpublishedOnly true to skip the keys that have already been published
+     * @return the signed keys
+     * @exception OlmException the failure reason
+     */
+    public SignedOneTimeKeys signedOneTimeKeys(int aOffset, int aLimit, boolean aUnpublishedOnly) throws OlmException {
+        byte[] signedKeys;
+
+        try {
+            signedKeys = signOneTimeKeysJni(aOffset, aLimit, aUnpublishedOnly);
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "## signedOneTimeKeys(): Failure - " + e.getMessage());
+            throw new OlmException(OlmException.EXCEPTION_CODE_ACCOUNT_SIGN_MESSAGE, e.getMessage());
+        }
+
+        int recordLength = PACKED_ONE_TIME_KEY_LENGTH + SIGNATURE_LENGTH;
+        int count = signedKeys.length / recordLength;
+
+        SignedOneTimeKeys oneTimeKeys = new SignedOneTimeKeys();
+        oneTimeKeys.mKeyIds = new String[count];
+        oneTimeKeys.mKeys = new String[count];
+        oneTimeKeys.mSignatures = new String[count];
+
+        for (int i = 0; i < count; i++) {
+            int offset = i * recordLength;
+            oneTimeKeys.mKeyIds[i] = new String(signedKeys, offset, PACKED_KEY_ID_LENGTH, StandardCharsets.US_ASCII);
+            oneTimeKeys.mKeys[i] = new String(signedKeys, offset + PACKED_KEY_ID_LENGTH, PACKED_KEY_LENGTH, StandardCharsets.US_ASCII);
+            oneTimeKeys.mSignatures[i] = new String(signedKeys, offset + PACKED_ONE_TIME_KEY_LENGTH, SIGNATURE_LENGTH, StandardCharsets.US_ASCII);
+        }
+
+        return oneTimeKeys;
+    }
+
+    /**
+     * Build the "one_time_keys" object of a key upload from all the unpublished keys.<br>
+     * The keys are signed in a single native call. Ex:<tt>
+     * {
+     *  "signed_curve25519:AAAABQ": {
+     *      "key": "qefVZd8qvjOpsFzoKSAdfUnJVkIreyxWFlipCHjSQQg",
+     *      "signatures": { "@alice:example.org": { "ed25519:DEVICEID": "..." } }
+     *  },
+     *  ...
+     * }</tt>
+     * @param aUserId the user id of the account owner
+     * @param aDeviceId the device id of the account
+     * @return the JSON object, "{}" if there is no unpublished key
+     * @exception OlmException the failure reason
+     */
+    public String signedOneTimeKeysUpload(String aUserId, String aDeviceId) throws OlmException {
+        if (TextUtils.isEmpty(aUserId) || TextUtils.isEmpty(aDeviceId)) {
+            Log.e(LOG_TAG, "## signedOneTimeKeysUpload(): invalid input parameters");
+            throw new OlmException(OlmException.EXCEPTION_CODE_ACCOUNT_SIGN_MESSAGE, "invalid input parameters");
+        }
+
+        SignedOneTimeKeys signedKeys = signedOneTimeKeys(0, Integer.MAX_VALUE, true);
+        String signer = "{" + JSONObject.quote(aUserId) + ":{" + JSONObject.quote(JSON_KEY_FINGER_PRINT_KEY + ":" + aDeviceId) + ":\"";
+        StringBuilder upload = new StringBuilder(2 + signedKeys.mKeys.length * (signer.length() + 160));
+
+        upload.append('{');
+        for (int i = 0; i < signedKeys.mKeys.length; i++) {
+            if (i > 0) {
+                upload.append(',');
+            }
+            upload.append('"').append(JSON_KEY_SIGNED_ONE_TIME_KEY).append(':').append(signedKeys.mKeyIds[i])
+                    .append("\":{\"key\":\"").append(signedKeys.mKeys[i])
+                    .append("\",\"signatures\":").append(signer).append(signedKeys.mSignatures[i])
+                    .append("\"}}}");
+        }
+        upload.append('}');
+
+        return upload.toString();
+    }
+
+    /**
+     * Sign a page of "one time keys" for a signed key upload.<br>
+     * Each key is a record of {@link #PACKED_ONE_TIME_KEY_LENGTH} + {@link #SIGNATURE_LENGTH} bytes.
+     * An exception is thrown if the operation fails.
+     * @param aOffset number of keys to skip
+     * @param aLimit maximum number of keys to sign
+     * @param aUnpublishedOnly true to skip the keys that have already been published
+     * @return the signed records
+     */
+    private native byte[] signOneTimeKeysJni(int aOffset, int aLimit, boolean aUnpublishedOnly);
+
     /**
      * Remove the "one time keys" that the session used from the account.
      * @param aSession session instance
@@ -321,6 +565,50 @@ public class OlmAccount extends CommonSerializeUtils implements Serializable {
      */
     private native byte[] signMessageJni(byte[] aMessage);
 
+    /**
+     * Sign a batch of messages with the ed25519 fingerprint key for this account, in a
+     * single native call.
+     * @param aMessages messages to sign, typically canonical JSON payloads
+     * @return the signatures, in the order of the messages
+     * @exception OlmException the failure reason
+     */
+    public String[] signMessages(String[] aMessages) throws OlmException {
+        if (null == aMessages) {
+            return null;
+        }
+
+        byte[][] utf8Messages = new byte[aMessages.length][];
+        try {
+            for (int i = 0; i < aMessages.length; i++) {
+                utf8Messages[i] = aMessages[i].getBytes("UTF-8");
+            }
+
+            byte[][] signatures = signMessagesJni(utf8Messages);
+            String[] result = new String[signatures.length];
+            for (int i = 0; i < signatures.length; i++) {
+                result[i] = new String(signatures[i], "UTF-8");
+            }
+            return result;
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "## signMessages(): failed " + e.getMessage());
+            throw new OlmException(OlmException.EXCEPTION_CODE_ACCOUNT_SIGN_MESSAGE, e.getMessage());
+        } finally {
+            for (byte[] utf8Message : utf8Messages) {
+                if (null != utf8Message) {
+                    Arrays.fill(utf8Message, (byte) 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sign a batch of messages with the ed25519 fingerprint key for this account.<br>
+     * An exception is thrown if a message can't be signed.
+     * @param aMessages messages to sign
+     * @return the signatures
+     */
+    private native byte[][] signMessagesJni(byte[][] aMessages);
+
     //==============================================================================================================
     // Serialization management
     //==============================================================================================================
@@ -363,12 +651,20 @@ public class OlmAccount extends CommonSerializeUtils implements Serializable {
             aErrorMsg.append("Invalid input parameters in serializeDataWithKey()");
         } else {
             aErrorMsg.setLength(0);
+            long start = OlmMetrics.start();
+            long traceStart = OlmTrace.begin(OlmTrace.EVENT_PICKLE);
             try {
                 pickleRetValue = serializeJni(aKey);
             } catch (Exception e) {
+                OlmMetrics.fail(OlmMetrics.OPERATION_PICKLE, start, e.getMessage());
+                OlmTrace.end(traceStart, null, -1, -1, e.getMessage());
                 Log.e(LOG_TAG, "## serialize() failed " + e.getMessage());
                 aErrorMsg.append(e.getMessage());
+                return null;
             }
+
+            OlmMetrics.end(OlmMetrics.OPERATION_PICKLE, start);
+            OlmTrace.end(traceStart, null, (null == pickleRetValue) ? -1 : pickleRetValue.length, -1, null);
         }
 
         return pickleRetValue;
@@ -391,6 +687,8 @@ public class OlmAccount extends CommonSerializeUtils implements Serializable {
     @Override
     protected void deserialize(byte[] aSerializedData, byte[] aKey) throws Exception {
         String errorMsg = null;
+        long start = OlmMetrics.start();
+        long traceStart = OlmTrace.begin(OlmTrace.EVENT_PICKLE);
 
         try {
             if ((null == aSerializedData) || (null == aKey)) {
@@ -405,9 +703,14 @@ public class OlmAccount extends CommonSerializeUtils implements Serializable {
         }
 
         if (!TextUtils.isEmpty(errorMsg)) {
+            OlmMetrics.fail(OlmMetrics.OPERATION_UNPICKLE, start, errorMsg);
+            OlmTrace.end(traceStart, null, (null == aSerializedData) ? -1 : aSerializedData.length, -1, errorMsg);
             releaseAccount();
             throw new OlmException(OlmException.EXCEPTION_CODE_ACCOUNT_DESERIALIZATION, errorMsg);
         }
+
+        OlmMetrics.end(OlmMetrics.OPERATION_UNPICKLE, start);
+        OlmTrace.end(traceStart, null, aSerializedData.length, -1, null);
     }
 
     /**
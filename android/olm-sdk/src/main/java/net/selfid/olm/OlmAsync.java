@@ -0,0 +1,445 @@
+/*
+ * Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.selfid.olm;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs Olm operations on a bounded pool of worker threads.<br>
+ * The operations submitted for the same session object run one at a time, in submission order,
+ * so a session is never used by two workers at once. Operations on different sessions run in
+ * parallel, up to the number of worker threads.<br>
+ * Each operation returns a {@link Future}, and can also report its result to a {@link Callback}.
+ * <br><br>The ordering only covers the operations submitted through this class: a session used
+ * asynchronously must not be used directly from other threads until its operations completed.
+ * Plain futures are returned because CompletableFuture requires API level 24.
+ */
+public class OlmAsync {
+    private static final String LOG_TAG = "OlmAsync";
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Receives the outcome of an asynchronous operation.<br>
+     * It is called on the callback executor given to {@link #OlmAsync(int, Executor)},
+     * or on the worker thread which ran the operation if there is none.
+     * It is not called when the operation is cancelled. An exception thrown by the callback is logged
+     * and dropped.
+     * @param <T> the operation result type
+     */
+    public interface Callback<T> {
+        /**
+         * The operation succeeded.
+         * @param aResult the operation result
+         */
+        void onSuccess(T aResult);
+
+        /**
+         * The operation failed.
+         * @param aException the failure reason, usually an {@link OlmException}
+         */
+        void onFailure(Exception aException);
+    }
+
+    private final ThreadPoolExecutor mExecutor;
+    private final Executor mCallbackExecutor;
+
+    // the lanes with pending operations, by session (compared by identity)
+    private final IdentityHashMap<Object, Lane> mLanes = new IdentityHashMap<>();
+
+    /**
+     * Create an instance with one worker thread per available processor,
+     * calling the callbacks on the worker threads.
+     */
+    public OlmAsync() {
+        this(Runtime.getRuntime().availableProcessors(), null);
+    }
+
+    /**
+     * Create an instance.
+     * @param aThreads max number of worker threads
+     * @param aCallbackExecutor the executor running the callbacks, null to run them on the worker threads
+     */
+    public OlmAsync(int aThreads, Executor aCallbackExecutor) {
+        int threads = Math.max(1, aThreads);
+
+        mExecutor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new WorkerThreadFactory());
+        mExecutor.allowCoreThreadTimeOut(true);
+        mCallbackExecutor = aCallbackExecutor;
+    }
+
+    /**
+     * Run a task after the operations already submitted for a session.<br>
+     * This is the building block of the other methods, and can be used to keep any work on
+     * a session (e.g. persisting it) in order with its encryptions and decryptions.
+     * @param aSession the session object the task works on
+     * @param aTask the task
+     * @param aCallback the callback, null if not needed
+     * @param <T> the task result type
+     * @return the future result of the task
+     * @exception RejectedExecutionException if {@link #shutdown()} has been called
+     */
+    public <T> Future<T> submit(Object aSession, Callable<T> aTask, Callback<T> aCallback) {
+        if ((null == aSession) || (null == aTask)) {
+            throw new IllegalArgumentException("invalid input parameters");
+        }
+
+        Operation<T> operation = new Operation<>(aTask, aCallback);
+
+        synchronized (mLanes) {
+            if (mExecutor.isShutdown()) {
+                throw new RejectedExecutionException("OlmAsync has been shut down");
+            }
+
+            Lane lane = mLanes.get(aSession);
+
+            if (null == lane) {
+                lane = new Lane(aSession);
+                mLanes.put(aSession, lane);
+            }
+
+            lane.mOperations.add(operation);
+
+            if (!lane.mScheduled) {
+                lane.mScheduled = true;
+                mExecutor.execute(lane);
+            }
+        }
+
+        return operation;
+    }
+
+    /**
+     * Encrypt a message with an Olm session, see {@link OlmSession#encryptMessage(String)}.
+     * @param aSession the session
+     * @param aClearMsg the message to encrypt
+     * @param aCallback the callback, null if not needed
+     * @return the future encrypted message
+     */
+    public Future<OlmMessage> encryptMessage(final OlmSession aSession, final String aClearMsg, Callback<OlmMessage> aCallback) {
+        return submit(aSession, new Callable<OlmMessage>() {
+            @Override
+            public OlmMessage call() throws Exception {
+                return aSession.encryptMessage(aClearMsg);
+            }
+        }, aCallback);
+    }
+
+    /**
+     * Decrypt a message with an Olm session, see {@link OlmSession#decryptMessage(OlmMessage)}.
+     * @param aSession the session
+     * @param aEncryptedMsg the message to decrypt
+     * @param aCallback the callback, null if not needed
+     * @return the future decrypted message
+     */
+    public Future<String> decryptMessage(final OlmSession aSession, final OlmMessage aEncryptedMsg, Callback<String> aCallback) {
+        return submit(aSession, new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return aSession.decryptMessage(aEncryptedMsg);
+            }
+        }, aCallback);
+    }
+
+    /**
+     * Encrypt a message with an outbound group session, see {@link OlmOutboundGroupSession#encryptMessage(String)}.
+     * @param aSession the session
+     * @param aClearMsg the message to encrypt
+     * @param aCallback the callback, null if not needed
+     * @return the future encrypted message
+     */
+    public Future<String> encryptMessage(final OlmOutboundGroupSession aSession, final String aClearMsg, Callback<String> aCallback) {
+        return submit(aSession, new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return aSession.encryptMessage(aClearMsg);
+            }
+        }, aCallback);
+    }
+
+    /**
+     * Decrypt a message with an inbound group session, see {@link OlmInboundGroupSession#decryptMessage(String)}.
+     * @param aSession the session
+     * @param aEncryptedMsg the message to decrypt
+     * @param aCallback the callback, null if not needed
+     * @return the future decrypted message
+     */
+    public Future<OlmInboundGroupSession.DecryptMessageResult> decryptMessage(final OlmInboundGroupSession aSession, final String aEncryptedMsg,
+                                                                              Callback<OlmInboundGroupSession.DecryptMessageResult> aCallback) {
+        return submit(aSession, new Callable<OlmInboundGroupSession.DecryptMessageResult>() {
+            @Override
+            public OlmInboundGroupSession.DecryptMessageResult call() throws Exception {
+                return aSession.decryptMessage(aEncryptedMsg);
+            }
+        }, aCallback);
+    }
+
+    /**
+     * Generate one time keys, see {@link OlmAccount#generateOneTimeKeys(int)}.
+     * @param aAccount the account
+     * @param aNumberOfKeys number of keys to generate
+     * @param aCallback the callback, null if not needed
+     * @return the future completion
+     */
+    public Future<Void> generateOneTimeKeys(final OlmAccount aAccount, final int aNumberOfKeys, Callback<Void> aCallback) {
+        return submit(aAccount, new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                aAccount.generateOneTimeKeys(aNumberOfKeys);
+                return null;
+            }
+        }, aCallback);
+    }
+
+    /**
+     * Pickle an account.
+     * @param aAccount the account
+     * @param aKey the pickle key
+     * @param aCallback the callback, null if not needed
+     * @return the future pickle
+     */
+    public Future<byte[]> pickle(OlmAccount aAccount, byte[] aKey, Callback<byte[]> aCallback) {
+        return pickleObject(aAccount, aKey, OlmException.EXCEPTION_CODE_ACCOUNT_SERIALIZATION, aCallback);
+    }
+
+    /**
+     * Pickle an Olm session.
+     * @param aSession the session
+     * @param aKey the pickle key
+     * @param aCallback the callback, null if not needed
+     * @return the future pickle
+     */
+    public Future<byte[]> pickle(OlmSession aSession, byte[] aKey, Callback<byte[]> aCallback) {
+        return pickleObject(aSession, aKey, OlmException.EXCEPTION_CODE_SESSION_SERIALIZATION, aCallback);
+    }
+
+    /**
+     * Pickle an outbound group session.
+     * @param aSession the session
+     * @param aKey the pickle key
+     * @param aCallback the callback, null if not needed
+     * @return the future pickle
+     */
+    public Future<byte[]> pickle(OlmOutboundGroupSession aSession, byte[] aKey, Callback<byte[]> aCallback) {
+        return pickleObject(aSession, aKey, OlmException.EXCEPTION_CODE_OUTBOUND_GROUP_SESSION_SERIALIZATION, aCallback);
+    }
+
+    /**
+     * Pickle an inbound group session.
+     * @param aSession the session
+     * @param aKey the pickle key
+     * @param aCallback the callback, null if not needed
+     * @return the future pickle
+     */
+    public Future<byte[]> pickle(OlmInboundGroupSession aSession, byte[] aKey, Callback<byte[]> aCallback) {
+        return pickleObject(aSession, aKey, OlmException.EXCEPTION_CODE_INBOUND_GROUP_SESSION_SERIALIZATION, aCallback);
+    }
+
+    /**
+     * Tell the number of operations submitted for a session which have not completed yet.
+     * @param aSession the session
+     * @return the number of pending operations, including the running one
+     */
+    public int pendingCount(Object aSession) {
+        synchronized (mLanes) {
+            Lane lane = mLanes.get(aSession);
+            return (null != lane) ? lane.mOperations.size() : 0;
+        }
+    }
+
+    /**
+     * Stop accepting operations. The submitted ones still run.
+     */
+    public void shutdown() {
+        synchronized (mLanes) {
+            mExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Wait for the submitted operations to complete after {@link #shutdown()}.
+     * @param aTimeout the max time to wait
+     * @param aUnit the timeout unit
+     * @return true if all the operations completed, false if the timeout elapsed
+     * @exception InterruptedException if the wait has been interrupted
+     */
+    public boolean awaitTermination(long aTimeout, TimeUnit aUnit) throws InterruptedException {
+        return mExecutor.awaitTermination(aTimeout, aUnit);
+    }
+
+    private Future<byte[]> pickleObject(final CommonSerializeUtils aObject, final byte[] aKey, final int aExceptionCode, Callback<byte[]> aCallback) {
+        return submit(aObject, new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                StringBuffer errorMsg = new StringBuffer();
+                byte[] pickle = aObject.serialize(aKey, errorMsg);
+
+                if (null == pickle) {
+                    throw new OlmException(aExceptionCode, String.valueOf(errorMsg));
+                }
+
+                return pickle;
+            }
+        }, aCallback);
+    }
+
+    /**
+     * The pending operations of a session.<br>
+     * A lane is scheduled on the pool while it has operations, and runs one of them each time
+     * it is scheduled so that busy sessions do not starve the others.
+     */
+    private class Lane implements Runnable {
+        final Object mSession;
+        final ArrayDeque<Operation<?>> mOperations = new ArrayDeque<>();
+        boolean mScheduled;
+
+        Lane(Object aSession) {
+            mSession = aSession;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Operation<?> operation;
+                boolean runNext;
+
+                synchronized (mLanes) {
+                    operation = mOperations.peek();
+                }
+
+                // the operation stays in the queue while it runs, so that it is counted as pending
+                try {
+                    operation.run();
+                } finally {
+                    // whatever happened, the lane must move on or its session would be stuck
+                    runNext = completeOperation();
+                }
+
+                if (!runNext) {
+                    return;
+                }
+
+                // the pool doesn't take new work after a shutdown, the remaining operations run here
+            }
+        }
+
+        /**
+         * Remove the completed operation, and schedule the lane again if it has more.
+         * @return true if the next operation must run on this thread
+         */
+        private boolean completeOperation() {
+            synchronized (mLanes) {
+                mOperations.poll();
+
+                if (mOperations.isEmpty()) {
+                    mScheduled = false;
+                    mLanes.remove(mSession);
+                    return false;
+                }
+
+                if (!mExecutor.isShutdown()) {
+                    mExecutor.execute(this);
+                    return false;
+                }
+
+                return true;
+            }
+        }
+    }
+
+    /**
+     * A submitted task, which reports its outcome to its callback.
+     */
+    private class Operation<T> extends FutureTask<T> {
+        private final Callback<T> mCallback;
+
+        Operation(Callable<T> aTask, Callback<T> aCallback) {
+            super(aTask);
+            mCallback = aCallback;
+        }
+
+        @Override
+        protected void done() {
+            if ((null == mCallback) || isCancelled()) {
+                return;
+            }
+
+            Runnable delivery;
+
+            try {
+                final T result = get();
+
+                delivery = new Runnable() {
+                    @Override
+                    public void run() {
+                        mCallback.onSuccess(result);
+                    }
+                };
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                final Exception exception = (cause instanceof Exception) ? (Exception) cause : new Exception(cause);
+
+                delivery = new Runnable() {
+                    @Override
+                    public void run() {
+                        mCallback.onFailure(exception);
+                    }
+                };
+            } catch (Exception e) {
+                Log.e(LOG_TAG, "## done(): failed " + e.getMessage());
+                return;
+            }
+
+            // a failing callback or callback executor must not escape into the lane
+            try {
+                if (null != mCallbackExecutor) {
+                    mCallbackExecutor.execute(delivery);
+                } else {
+                    delivery.run();
+                }
+            } catch (Throwable e) {
+                Log.e(LOG_TAG, "## done(): callback failed " + e.getMessage());
+            }
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable aRunnable) {
+            Thread thread = new Thread(aRunnable, "olm-async-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ * Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.selfid.olm;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Streaming cipher for encrypted attachments.<br>
+ * The data is encrypted or decrypted with AES-256 in CTR mode, and the SHA-256 digest of the
+ * ciphertext is computed in the same pass, in native code. The counter is the low 64 bits of the IV,
+ * as for Matrix encrypted attachments.<br>
+ * The data can be supplied as byte arrays, as byte buffers, through channels or as whole files,
+ * which are streamed through a single direct buffer. Direct buffers are processed in place,
+ * without copying the data to the Java heap. Byte arrays are pinned in bounded chunks, so that
+ * a large array doesn't hold the garbage collector back for the whole pass.
+ */
+public class OlmAttachmentCipher {
+    private static final String LOG_TAG = OlmAttachmentCipher.class.getName();
+
+    /** length of the AES key **/
+    public static final int KEY_LENGTH = 32;
+
+    /** length of the IV **/
+    public static final int IV_LENGTH = 16;
+
+    /** length of the SHA-256 digest **/
+    public static final int DIGEST_LENGTH = 32;
+
+    /** size of the direct buffer used by {@link #transfer(ReadableByteChannel, WritableByteChannel)} **/
+    private static final int TRANSFER_BUFFER_SIZE = 1 << 20;
+
+    /** largest range of a byte array pinned by a single native update **/
+    private static final int ARRAY_CHUNK_SIZE = 256 << 10;
+
+    /**
+     * Cipher Id returned by JNI.
+     * This value uniquely identifies the native attachment cipher instance.
+     **/
+    private transient long mNativeId;
+
+    /** direct buffer reused by the channel transfers, allocated on first use **/
+    private ByteBuffer mTransferBuffer;
+
+    /**
+     * Create a cipher for a new attachment.
+     * @param aEncrypt true to encrypt, false to decrypt
+     * @param aKey the AES key, {@link #KEY_LENGTH} bytes
+     * @param aIv the IV, {@link #IV_LENGTH} bytes
+     * @throws OlmException the failure reason
+     */
+    public OlmAttachmentCipher(boolean aEncrypt, byte[] aKey, byte[] aIv) throws OlmException {
+        try {
+            mNativeId = createNewAttachmentCipherJni(aEncrypt, aKey, aIv);
+        } catch (Exception e) {
+            throw new OlmException(OlmException.EXCEPTION_CODE_ATTACHMENT_CIPHER_CREATION, e.getMessage());
+        }
+    }
+
+    /**
+     * Create and initialise the native attachment cipher.<br>
+     * Do not forget to call {@link #releaseAttachmentCipherJni()} when JAVA side is done.
+     * @param aEncrypt true to encrypt, false to decrypt
+     * @param aKey the AES key
+     * @param aIv the IV
+     * @return native attachment cipher instance identifier or throw an exception.
+     */
+    private native long createNewAttachmentCipherJni(boolean aEncrypt, byte[] aKey, byte[] aIv);
+
+    /**
+     * Destroy the corresponding native attachment cipher.<br>
+     * This method must ALWAYS be called when this JAVA instance
+     * is destroyed (ie. garbage collected) to prevent memory leak in native side.
+     * See {@link #createNewAttachmentCipherJni(boolean, byte[], byte[])}.
+     */
+    private native void releaseAttachmentCipherJni();
+
+    /**
+     * Release native cipher and invalid its JAVA reference counter part.<br>
+     * Public API for {@link #releaseAttachmentCipherJni()}.
+     */
+    public void releaseCipher() {
+        if (0 != mNativeId) {
+            releaseAttachmentCipherJni();
+        }
+        mNativeId = 0;
+        mTransferBuffer = null;
+    }
+
+    /**
+     * Return true the object resources have been released.<br>
+     * @return true the object resources have been released
+     */
+    public boolean isReleased() {
+        return (0 == mNativeId);
+    }
+
+    /**
+     * Encrypt or decrypt the next chunk of the attachment.<br>
+     * The output array can be the input array, to process the data in place.
+     * @param aInput the input array
+     * @param aInputOffset the offset of the chunk in the input array
+     * @param aLength the length of the chunk
+     * @param aOutput the output array
+     * @param aOutputOffset the offset at which the result is written
+     * @throws OlmException the failure reason
+     */
+    public void update(byte[] aInput, int aInputOffset, int aLength, byte[] aOutput, int aOutputOffset) throws OlmException {
+        try {
+            updateArray(aInput, aInputOffset, aOutput, aOutputOffset, aLength);
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "## update(): failed " + e.getMessage());
+            throw new OlmException(OlmException.EXCEPTION_CODE_ATTACHMENT_CIPHER_UPDATE, e.getMessage());
+        }
+    }
+
+    /**
+     * Encrypt or decrypt the remaining bytes of the input buffer into the output buffer.<br>
+     * The positions of both buffers are advanced. The output buffer can be the input buffer,
+     * to process the data in place. Both buffers must either be direct or be backed by an array.
+     * @param aInput the input buffer
+     * @param aOutput the output buffer
+     * @return the number of bytes processed
+     * @throws OlmException the failure reason
+     */
+    public int update(ByteBuffer aInput, ByteBuffer aOutput) throws OlmException {
+        int length = aInput.remaining();
+
+        if (aOutput.isReadOnly()) {
+            throw new OlmException(OlmException.EXCEPTION_CODE_ATTACHMENT_CIPHER_UPDATE, "read-only output buffer");
+        } else if (aOutput.remaining() < length) {
+            throw new OlmException(OlmException.EXCEPTION_CODE_ATTACHMENT_CIPHER_UPDATE, "output buffer too small");
+        }
+
+        try {
+            if (aInput.isDirect() && aOutput.isDirect()) {
+                updateDirectJni(aInput, aInput.position(), aOutput, aOutput.position(), length);
+            } else if (aInput.hasArray() && aOutput.hasArray()) {
+                updateArray(aInput.array(), aInput.arrayOffset() + aInput.position(),
+                        aOutput.array(), aOutput.arrayOffset() + aOutput.position(), length);
+            } else {
+                throw new IllegalArgumentException("unsupported buffer types");
+            }
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "## update(): failed " + e.getMessage());
+            throw new OlmException(OlmException.EXCEPTION_CODE_ATTACHMENT_CIPHER_UPDATE, e.getMessage());
+        }
+
+        aInput.position(aInput.position() + length);
+        if (aOutput != aInput) {
+            aOutput.position(aOutput.position() + length);
+        }
+
+        return length;
+    }
+
+    /**
+     * Encrypt or decrypt all the data of a channel into another channel.<br>
+     * The data is processed in place in a single direct buffer, reused between the calls.
+     * @param aSource the channel to read from, until its end
+     * @param aSink the channel to write to
+     * @return the number of bytes processed
+     * @throws OlmException the failure reason
+     */
+    public long transfer(ReadableByteChannel aSource, WritableByteChannel aSink) throws OlmException {
+        if (null == mTransferBuffer) {
+            mTransferBuffer = ByteBuffer.allocateDirect(TRANSFER_BUFFER_SIZE);
+        }
+
+        ByteBuffer buffer = mTransferBuffer;
+        long total = 0;
+
+        try {
+            buffer.clear();
+            while (aSource.read(buffer) >= 0 || buffer.position() > 0) {
+                buffer.flip();
+                updateInPlace(buffer);
+                while (buffer.hasRemaining()) {
+                    aSink.write(buffer);
+                }
+                total += buffer.limit();
+                buffer.clear();
+            }
+        } catch (OlmException e) {
+            throw e;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "## transfer(): failed " + e.getMessage());
+            throw new OlmException(OlmException.EXCEPTION_CODE_ATTACHMENT_CIPHER_IO, e.getMessage());
+        }
+
+        return total;
+    }
+
+    /**
+     * Encrypt or decrypt a range of a byte array, {@link #ARRAY_CHUNK_SIZE} bytes at a time.
+     * An exception is thrown if the operation fails.
+     */
+    private void updateArray(byte[] aInput, int aInputOffset, byte[] aOutput, int aOutputOffset, int aLength) {
+        if (aLength <= ARRAY_CHUNK_SIZE) {
+            updateArrayJni(aInput, aInputOffset, aOutput, aOutputOffset, aLength);
+            return;
+        }
+
+        if ((null == aInput) || (null == aOutput) || (aInputOffset < 0) || (aOutputOffset < 0)
+                || (aInputOffset > aInput.length - aLength) || (aOutputOffset > aOutput.length - aLength)) {
+            // no chunk is processed if the whole range is invalid
+            throw new IllegalArgumentException("range out of the array bounds");
+        }
+
+        for (int done = 0; done < aLength; done += ARRAY_CHUNK_SIZE) {
+            updateArrayJni(aInput, aInputOffset + done, aOutput, aOutputOffset + done, Math.min(ARRAY_CHUNK_SIZE, aLength - done));
+        }
+    }
+
+    /**
+     * Encrypt or decrypt the content of a direct buffer in place, without moving its position.
+     * @param aBuffer the direct buffer
+     * @throws OlmException the failure reason
+     */
+    private void updateInPlace(ByteBuffer aBuffer) throws OlmException {
+        try {
+            updateDirectJni(aBuffer, aBuffer.position(), aBuffer, aBuffer.position(), aBuffer.remaining());
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "## updateInPlace(): failed " + e.getMessage());
+            throw new OlmException(OlmException.EXCEPTION_CODE_ATTACHMENT_CIPHER_UPDATE, e.getMessage());
+        }
+    }
+
+    /**
+     * Get the SHA-256 digest of the ciphertext processed so far.<br>
+     * The cipher can still be updated afterwards.
+     * @return the raw digest, {@link #DIGEST_LENGTH} bytes
+     * @throws OlmException the failure reason
+     */
+    public byte[] digest() throws OlmException {
+        try {
+            return digestJni();
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "## digest(): failed " + e.getMessage());
+            throw new OlmException(OlmException.EXCEPTION_CODE_ATTACHMENT_CIPHER_DIGEST, e.getMessage());
+        }
+    }
+
+    /**
+     * Get the number of bytes processed since the cipher was created.
+     * @return the number of bytes processed
+     * @throws OlmException the failure reason
+     */
+    public long getProcessedLength() throws OlmException {
+        try {
+            return processedLengthJni();
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "## getProcessedLength(): failed " + e.getMessage());
+            throw new OlmException(OlmException.EXCEPTION_CODE_ATTACHMENT_CIPHER_DIGEST, e.getMessage());
+        }
+    }
+
+    /**
+     * Encrypt a file into another file.<br>
+     * The data is streamed through the direct buffer of {@link #transfer(ReadableByteChannel, WritableByteChannel)},
+     * so the memory use doesn't depend on the file size.
+     * @param aSource the plain file
+     * @param aDestination the encrypted file, created or overwritten
+     * @param aKey the AES key, {@link #KEY_LENGTH} bytes
+     * @param aIv the IV, {@link #IV_LENGTH} bytes
+     * @return the SHA-256 digest of the encrypted file
+     * @throws OlmException the failure reason
+     */
+    public static byte[] encryptFile(File aSource, File aDestination, byte[] aKey, byte[] aIv) throws OlmException {
+        return processFile(true, aSource, aDestination, aKey, aIv);
+    }
+
+    /**
+     * Decrypt a file into another file.<br>
+     * The returned digest must be compared with the expected one before the plain file is used.
+     * See {@link #encryptFile(File, File, byte[], byte[])}.
+     * @param aSource the encrypted file
+     * @param aDestination the plain file, created or overwritten
+     * @param aKey the AES key, {@link #KEY_LENGTH} bytes
+     * @param aIv the IV, {@link #IV_LENGTH} bytes
+     * @return the SHA-256 digest of the encrypted file
+     * @throws OlmException the failure reason
+     */
+    public static byte[] decryptFile(File aSource, File aDestination, byte[] aKey, byte[] aIv) throws OlmException {
+        return processFile(false, aSource, aDestination, aKey, aIv);
+    }
+
+    private static byte[] processFile(boolean aEncrypt, File aSource, File aDestination, byte[] aKey, byte[] aIv) throws OlmException {
+        OlmAttachmentCipher cipher = new OlmAttachmentCipher(aEncrypt, aKey, aIv);
+        FileInputStream sourceStream = null;
+        FileOutputStream destinationStream = null;
+
+        try {
+            sourceStream = new FileInputStream(aSource);
+            destinationStream = new FileOutputStream(aDestination);
+
+            cipher.transfer(sourceStream.getChannel(), destinationStream.getChannel());
+            return cipher.digest();
+        } catch (OlmException e) {
+            throw e;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "## processFile(): failed " + e.getMessage());
+            throw new OlmException(OlmException.EXCEPTION_CODE_ATTACHMENT_CIPHER_IO, e.getMessage());
+        } finally {
+            cipher.releaseCipher();
+            closeQuietly(sourceStream);
+            closeQuietly(destinationStream);
+        }
+    }
+
+    private static void closeQuietly(Closeable aCloseable) {
+        if (null != aCloseable) {
+            try {
+                aCloseable.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "## closeQuietly(): failed " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Encrypt or decrypt a range of a direct buffer.
+     * An exception is thrown if the operation fails.
+     * @param aInput the input direct buffer
+     * @param aInputOffset the offset of the data in the input buffer
+     * @param aOutput the output direct buffer
+     * @param aOutputOffset the offset of the data in the output buffer
+     * @param aLength the number of bytes to process
+     * @return the number of bytes processed
+     */
+    private native int updateDirectJni(ByteBuffer aInput, int aInputOffset, ByteBuffer aOutput, int aOutputOffset, int aLength);
+
+    /**
+     * Encrypt or decrypt a range of a byte array.
+     * An exception is thrown if the operation fails.
+     * @param aInput the input array
+     * @param aInputOffset the offset of the data in the input array
+     * @param aOutput the output array
+     * @param aOutputOffset the offset of the data in the output array
+     * @param aLength the number of bytes to process
+     * @return the number of bytes processed
+     */
+    private native int updateArrayJni(byte[] aInput, int aInputOffset, byte[] aOutput, int aOutputOffset, int aLength);
+
+    /**
+     * Get the SHA-256 digest of the ciphertext processed so far.
+     * An exception is thrown if the operation fails.
+     * @return the raw digest
+     */
+    private native byte[] digestJni();
+
+    /**
+     * Get the number of bytes processed since the cipher was created.
+     * An exception is thrown if the operation fails.
+     * @return the number of bytes processed
+     */
+    private native long processedLengthJni();
+}
@@ -0,0 +1,403 @@
+/*
+ * Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.selfid.olm;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Decrypts the encrypted events of a sync response in one call.<br>
+ * The to-device Olm messages are decrypted first, in order, so that the room keys they carry
+ * can be imported before the room events are decrypted. The room events are then grouped by
+ * inbound group session and sorted by message index, so that each session ratchet only moves
+ * forward, and the groups are decrypted in parallel on an {@link OlmAsync} instance.<br>
+ * The results are returned in the order of the events, each with its own error.
+ */
+public class OlmBatchDecryptor {
+    private static final String LOG_TAG = "OlmBatchDecryptor";
+
+    /**
+     * Gives access to the sessions of the account, and receives the decrypted to-device messages.
+     * The methods are called on the thread calling {@link #decrypt(List, Store)}.
+     */
+    public interface Store {
+        /**
+         * @return the account receiving the to-device messages
+         */
+        OlmAccount getAccount();
+
+        /**
+         * @param aSenderKey the Curve25519 identity key of a sender
+         * @return the Olm sessions established with this sender, the most recently used first
+         */
+        List<OlmSession> getSessions(String aSenderKey);
+
+        /**
+         * An inbound Olm session has been created from a pre-key message.
+         * The one time key it used has already been removed from the account.
+         * @param aSenderKey the Curve25519 identity key of the sender
+         * @param aSession the new session
+         */
+        void onNewSession(String aSenderKey, OlmSession aSession);
+
+        /**
+         * A to-device message has been decrypted.<br>
+         * The room keys it carries must be made available to {@link #getInboundGroupSession(String)}
+         * before returning.
+         * @param aSenderKey the Curve25519 identity key of the sender
+         * @param aPlaintext the decrypted message
+         */
+        void onToDeviceMessage(String aSenderKey, String aPlaintext);
+
+        /**
+         * @param aSessionId a megolm session identifier
+         * @return the inbound group session, null if it is unknown
+         */
+        OlmInboundGroupSession getInboundGroupSession(String aSessionId);
+    }
+
+    /**
+     * An encrypted event, created by {@link #toDevice(String, OlmMessage)} or {@link #room(String, String)}.
+     */
+    public static class Event {
+        /** the Curve25519 identity key of the sender of a to-device message, null for a room event **/
+        public String mSenderKey;
+
+        /** the to-device Olm message, null for a room event **/
+        public OlmMessage mOlmMessage;
+
+        /** the megolm session identifier of a room event **/
+        public String mSessionId;
+
+        /** the megolm message of a room event **/
+        public String mCipherText;
+    }
+
+    /**
+     * The outcome of the decryption of an event.
+     */
+    public static class Result {
+        /** the decrypted message, null if the decryption failed **/
+        public String mPlaintext;
+
+        /** the megolm message index, -1 for a to-device message **/
+        public long mMessageIndex = -1;
+
+        /** true if the message index had already been decrypted, when the session tracks it **/
+        public boolean mAlreadySeen;
+
+        /** the failure reason, null if the decryption succeeded **/
+        public OlmException mError;
+    }
+
+    private final OlmAsync mOlmAsync;
+
+    /**
+     * Create a decryptor.
+     * @param aOlmAsync the executor of the room event decryptions
+     */
+    public OlmBatchDecryptor(OlmAsync aOlmAsync) {
+        mOlmAsync = aOlmAsync;
+    }
+
+    /**
+     * Create a to-device event.
+     * @param aSenderKey the Curve25519 identity key of the sender
+     * @param aMessage the Olm message
+     * @return the event
+     */
+    public static Event toDevice(String aSenderKey, OlmMessage aMessage) {
+        Event event = new Event();
+        event.mSenderKey = aSenderKey;
+        event.mOlmMessage = aMessage;
+        return event;
+    }
+
+    /**
+     * Create a room event.
+     * @param aSessionId the megolm session identifier
+     * @param aCipherText the megolm message
+     * @return the event
+     */
+    public static Event room(String aSessionId, String aCipherText) {
+        Event event = new Event();
+        event.mSessionId = aSessionId;
+        event.mCipherText = aCipherText;
+        return event;
+    }
+
+    /**
+     * Decrypt a batch of events.<br>
+     * This call blocks until all the events have been processed. If the calling thread is
+     * interrupted, the room events not decrypted yet fail, the call returns once the decryptions
+     * in progress have stopped, and the interrupt status is kept.
+     * @param aEvents the events, in arrival order
+     * @param aStore the sessions
+     * @return the results, in the order of the events
+     */
+    public List<Result> decrypt(List<Event> aEvents, Store aStore) {
+        List<Result> results = new ArrayList<>(aEvents.size());
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+
+        for (int i = 0; i < aEvents.size(); i++) {
+            Event event = aEvents.get(i);
+            Result result = new Result();
+            results.add(result);
+
+            if (null != event.mOlmMessage) {
+                decryptToDevice(event, result, aStore);
+            } else if ((null != event.mSessionId) && (null != event.mCipherText)) {
+                List<Integer> group = groups.get(event.mSessionId);
+
+                if (null == group) {
+                    group = new ArrayList<>();
+                    groups.put(event.mSessionId, group);
+                }
+
+                group.add(i);
+            } else {
+                result.mError = new OlmException(OlmException.EXCEPTION_CODE_INBOUND_GROUP_SESSION_DECRYPT_SESSION, "invalid event");
+            }
+        }
+
+        List<Future<Void>> futures = new ArrayList<>();
+        AtomicBoolean cancelled = new AtomicBoolean();
+
+        for (Map.Entry<String, List<Integer>> group : groups.entrySet()) {
+            OlmInboundGroupSession session = aStore.getInboundGroupSession(group.getKey());
+
+            if (null == session) {
+                for (int index : group.getValue()) {
+                    results.get(index).mError = new OlmException(OlmException.EXCEPTION_CODE_INBOUND_GROUP_SESSION_DECRYPT_SESSION,
+                            "unknown session " + group.getKey());
+                }
+            } else {
+                futures.add(decryptRoomEvents(session, group.getValue(), aEvents, results, cancelled));
+            }
+        }
+
+        boolean interrupted = false;
+
+        // the results are not returned while a worker may still write them
+        for (Future<Void> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    if (!interrupted) {
+                        Log.e(LOG_TAG, "## decrypt(): interrupted");
+                        interrupted = true;
+                        cancelled.set(true);
+                    }
+                } catch (ExecutionException e) {
+                    Log.e(LOG_TAG, "## decrypt(): failed " + e.getMessage());
+                    break;
+                }
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        return results;
+    }
+
+    /**
+     * Decrypt a to-device message with the sessions of its sender, or with a new inbound
+     * session if it is a pre-key message that none of them matches.<br>
+     * A pre-key message matching an existing session which fails to decrypt it is reported as
+     * a failure, as {@link OlmSession} does, and doesn't create a new session.
+     */
+    private void decryptToDevice(Event aEvent, Result aResult, Store aStore) {
+        OlmMessage message = aEvent.mOlmMessage;
+        boolean isPreKey = (OlmMessage.MESSAGE_TYPE_PRE_KEY == message.mType);
+        OlmParsedMessage parsed;
+
+        try {
+            // decoded once for all the candidate sessions
+            parsed = new OlmParsedMessage(message);
+        } catch (OlmException e) {
+            aResult.mError = e;
+            return;
+        }
+
+        List<OlmSession> sessions = aStore.getSessions(aEvent.mSenderKey);
+        // a pre-key message matching an existing session
+        boolean matched = false;
+
+        if ((null != sessions) && !sessions.isEmpty()) {
+            // trial decryption: the failures are expected, so they don't build exceptions
+            OlmDecryptResult decrypted = new OlmDecryptResult();
+
+            if (isPreKey) {
+                for (OlmSession session : sessions) {
+                    if (session.matchesInboundParsedSessionFrom(aEvent.mSenderKey, parsed)) {
+                        matched = true;
+
+                        if (OlmErrorCode.SUCCESS == session.tryDecryptParsed(parsed, decrypted)) {
+                            aResult.mPlaintext = decrypted.mPlaintext;
+                        }
+                        break;
+                    }
+                }
+            } else if (OlmErrorCode.SUCCESS == OlmSession.tryDecryptWithSessions(sessions, parsed, decrypted)) {
+                // the session holding the ratchet key of the message is tried first
+                aResult.mPlaintext = decrypted.mPlaintext;
+            }
+
+            if ((null == aResult.mPlaintext) && !decrypted.isSuccess()) {
+                aResult.mError = OlmException.stackless(OlmException.EXCEPTION_CODE_SESSION_DECRYPT_MESSAGE, OlmErrorCode.name(decrypted.mStatus));
+            }
+        }
+
+        if ((null == aResult.mPlaintext) && isPreKey && !matched) {
+            aResult.mError = null;
+            OlmSession session = null;
+
+            try {
+                OlmAccount account = aStore.getAccount();
+                session = new OlmSession();
+                session.initInboundSessionFrom(account, aEvent.mSenderKey, message.mCipherText);
+                aResult.mPlaintext = session.decryptParsedMessage(parsed);
+                account.removeOneTimeKeys(session);
+                aStore.onNewSession(aEvent.mSenderKey, session);
+            } catch (OlmException e) {
+                aResult.mPlaintext = null;
+                aResult.mError = e;
+
+                if (null != session) {
+                    session.releaseSession();
+                }
+            }
+        }
+
+        parsed.releaseMessage();
+
+        if (null != aResult.mPlaintext) {
+            aResult.mError = null;
+            aStore.onToDeviceMessage(aEvent.mSenderKey, aResult.mPlaintext);
+        } else if (null == aResult.mError) {
+            aResult.mError = new OlmException(OlmException.EXCEPTION_CODE_SESSION_DECRYPT_MESSAGE, "no session with " + aEvent.mSenderKey);
+        }
+    }
+
+    /**
+     * Queue the decryption of the events of a session, by increasing message index.
+     */
+    private Future<Void> decryptRoomEvents(final OlmInboundGroupSession aSession, final List<Integer> aIndexes,
+                                           final List<Event> aEvents, final List<Result> aResults, final AtomicBoolean aCancelled) {
+        final long[] messageIndexes = new long[aEvents.size()];
+
+        for (int index : aIndexes) {
+            messageIndexes[index] = messageIndex(aEvents.get(index).mCipherText);
+        }
+
+        // stable: events with the same or an unreadable index keep their order
+        Collections.sort(aIndexes, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer aLeft, Integer aRight) {
+                long left = messageIndexes[aLeft];
+                long right = messageIndexes[aRight];
+                return (left < right) ? -1 : ((left == right) ? 0 : 1);
+            }
+        });
+
+        return mOlmAsync.submit(aSession, new Callable<Void>() {
+            @Override
+            public Void call() {
+                for (int index : aIndexes) {
+                    Result result = aResults.get(index);
+
+                    if (aCancelled.get()) {
+                        result.mError = new OlmException(OlmException.EXCEPTION_CODE_INBOUND_GROUP_SESSION_DECRYPT_SESSION, "interrupted");
+                        continue;
+                    }
+
+                    try {
+                        OlmInboundGroupSession.DecryptMessageResult decrypted = aSession.decryptMessage(aEvents.get(index).mCipherText);
+                        result.mPlaintext = decrypted.mDecryptedMessage;
+                        result.mMessageIndex = decrypted.mIndex;
+                        result.mAlreadySeen = decrypted.mAlreadySeen;
+                    } catch (OlmException e) {
+                        result.mError = e;
+                    }
+                }
+                return null;
+            }
+        }, null);
+    }
+
+    private static final String BASE64_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    /**
+     * Read the message index from the header of a base64 megolm message
+     * (version byte, then the index as a protobuf varint field with tag 0x08).
+     * @param aCipherText the megolm message
+     * @return the message index, Long.MAX_VALUE if it can't be read
+     */
+    static long messageIndex(String aCipherText) {
+        // 16 characters hold the version, the tag and a varint of up to 10 bytes
+        int length = Math.min(aCipherText.length(), 16) & ~3;
+        byte[] header = new byte[length / 4 * 3];
+
+        for (int i = 0; i < length; i += 4) {
+            int bits = 0;
+
+            for (int j = 0; j < 4; j++) {
+                int value = BASE64_ALPHABET.indexOf(aCipherText.charAt(i + j));
+
+                if (value < 0) {
+                    return Long.MAX_VALUE;
+                }
+
+                bits = (bits << 6) | value;
+            }
+
+            header[i / 4 * 3] = (byte) (bits >> 16);
+            header[i / 4 * 3 + 1] = (byte) (bits >> 8);
+            header[i / 4 * 3 + 2] = (byte) bits;
+        }
+
+        if ((header.length < 3) || (0x08 != header[1])) {
+            return Long.MAX_VALUE;
+        }
+
+        long index = 0;
+
+        for (int i = 2, shift = 0; (i < header.length) && (shift < 35); i++, shift += 7) {
+            index |= (long) (header[i] & 0x7f) << shift;
+
+            if (0 == (header[i] & 0x80)) {
+                return index;
+            }
+        }
+
+        return Long.MAX_VALUE;
+    }
+}
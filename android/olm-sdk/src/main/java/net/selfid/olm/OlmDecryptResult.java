@@ -0,0 +1,89 @@
+/*
+ * Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.selfid.olm;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Outcome of a non-throwing decryption, such as {@link OlmSession#tryDecrypt(OlmMessage, OlmDecryptResult)}.<br>
+ * An instance can be reused across calls: every field is overwritten by each decryption.
+ */
+public class OlmDecryptResult {
+    /** the status code, see {@link OlmErrorCode} **/
+    public int mStatus = OlmErrorCode.SUCCESS;
+
+    /** the decrypted message, null if the decryption failed **/
+    public String mPlaintext;
+
+    /** the message index for a group message, -1 otherwise or if the decryption failed **/
+    public long mIndex = -1;
+
+    /** true if the group message index had already been decrypted, see {@link OlmInboundGroupSession#setTrackSeenIndices(boolean)} **/
+    public boolean mAlreadySeen;
+
+    /** the position of the session which decrypted the message, see {@link OlmSession#tryDecryptWithSessions(java.util.List, OlmParsedMessage, OlmDecryptResult)}, -1 otherwise **/
+    public int mSessionIndex = -1;
+
+    /**
+     * Tells if the decryption succeeded.
+     * @return true if {@link #mPlaintext} holds the decrypted message
+     */
+    public boolean isSuccess() {
+        return OlmErrorCode.SUCCESS == mStatus;
+    }
+
+    /**
+     * Clear the fields before a new decryption.
+     */
+    void reset() {
+        mStatus = OlmErrorCode.SUCCESS;
+        mPlaintext = null;
+        mIndex = -1;
+        mAlreadySeen = false;
+        mSessionIndex = -1;
+    }
+
+    /**
+     * Set a failure status.
+     * @param aStatus the status code
+     * @return the status code
+     */
+    int fail(int aStatus) {
+        mStatus = aStatus;
+        mPlaintext = null;
+        mIndex = -1;
+        mAlreadySeen = false;
+        mSessionIndex = -1;
+        return aStatus;
+    }
+
+    /**
+     * Set the outcome of a native decryption, and wipe the native plaintext.
+     * @param aPlaintextBuffer the decrypted message, null if the decryption failed
+     * @return null if the decryption succeeded, the failure reason otherwise
+     */
+    String complete(byte[] aPlaintextBuffer) {
+        if (null == aPlaintextBuffer) {
+            return OlmErrorCode.name(fail((OlmErrorCode.SUCCESS == mStatus) ? OlmErrorCode.JNI_ERROR : mStatus));
+        }
+
+        mPlaintext = new String(aPlaintextBuffer, StandardCharsets.UTF_8);
+        Arrays.fill(aPlaintextBuffer, (byte) 0);
+        return null;
+    }
+}
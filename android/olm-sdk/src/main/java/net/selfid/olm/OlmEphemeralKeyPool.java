@@ -0,0 +1,174 @@
+/*
+ * Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.selfid.olm;
+
+import android.util.Log;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Process wide pool of pre-generated Curve25519 key pairs.<br>
+ * Sending a message after a reply, or creating an outbound session, needs new ratchet
+ * keys. Generating a key is a scalar multiplication which otherwise runs on the caller
+ * thread, inside {@link OlmSession#encryptMessage(String)} and
+ * {@link OlmSession#initOutboundSession(OlmAccount, String, String)}.<br>
+ * Once {@link #enable(int)} is called, the pool is kept filled by a single low priority
+ * daemon thread and the sessions take their key pairs from it. When the pool is empty
+ * the keys are generated inline as before, so the pool never blocks the send path.<br>
+ * The key pairs are secret: they stay in native memory and are wiped when taken or
+ * when the pool is disabled.
+ */
+public class OlmEphemeralKeyPool {
+    private static final String LOG_TAG = "OlmEphemeralKeyPool";
+
+    /** max number of key pairs kept by the pool **/
+    public static final int MAX_SIZE = 64;
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static final Object sLock = new Object();
+    private static final AtomicBoolean sRefillPending = new AtomicBoolean();
+    private static volatile int sTargetSize;
+    private static ThreadPoolExecutor sExecutor;
+
+    private static final Runnable sRefill = new Runnable() {
+        @Override
+        public void run() {
+            sRefillPending.set(false);
+
+            int targetSize = sTargetSize;
+            if (targetSize > 0 && fillJni(targetSize) < 0) {
+                Log.e(LOG_TAG, "## refill(): failed to generate the key pairs");
+            }
+
+            // the pool may have been disabled while it was filled
+            if (0 == sTargetSize) {
+                clearJni();
+            }
+        }
+    };
+
+    private OlmEphemeralKeyPool() {
+    }
+
+    /**
+     * Start keeping aTargetSize key pairs ready.<br>
+     * The pool is filled in the background; it can be called again to change the size.
+     * The native library must have been loaded, by creating an {@link OlmManager}, first.
+     * @param aTargetSize number of key pairs, capped to {@link #MAX_SIZE}
+     */
+    public static void enable(int aTargetSize) {
+        if (aTargetSize <= 0) {
+            disable();
+            return;
+        }
+
+        synchronized (sLock) {
+            sTargetSize = Math.min(aTargetSize, MAX_SIZE);
+
+            if (null == sExecutor) {
+                sExecutor = new ThreadPoolExecutor(0, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<Runnable>(), new RefillThreadFactory());
+            }
+        }
+
+        refill();
+    }
+
+    /**
+     * Stop filling the pool and wipe the key pairs it holds.
+     */
+    public static void disable() {
+        synchronized (sLock) {
+            sTargetSize = 0;
+
+            if (null != sExecutor) {
+                sExecutor.shutdown();
+                sExecutor = null;
+            }
+        }
+
+        clearJni();
+    }
+
+    /**
+     * @return true if the pool is filled in the background
+     */
+    public static boolean isEnabled() {
+        return sTargetSize > 0;
+    }
+
+    /**
+     * @return the number of key pairs ready to be used
+     */
+    public static int size() {
+        return sizeJni();
+    }
+
+    /**
+     * Schedule a refill, if the pool is enabled and no refill is pending yet.<br>
+     * Called by the sessions after they took key pairs.
+     */
+    static void refill() {
+        if ((sTargetSize > 0) && sRefillPending.compareAndSet(false, true)) {
+            synchronized (sLock) {
+                try {
+                    if (null != sExecutor) {
+                        sExecutor.execute(sRefill);
+                        return;
+                    }
+                } catch (RejectedExecutionException e) {
+                    Log.e(LOG_TAG, "## refill(): failed " + e.getMessage());
+                }
+            }
+
+            sRefillPending.set(false);
+        }
+    }
+
+    /**
+     * Generate key pairs until the pool holds aTargetSize of them.
+     * @param aTargetSize wanted number of key pairs
+     * @return the pool size, -1 if the key pairs can't be generated
+     */
+    private static native int fillJni(int aTargetSize);
+
+    /**
+     * @return the number of key pairs in the pool
+     */
+    private static native int sizeJni();
+
+    /**
+     * Wipe the key pairs of the pool.
+     */
+    private static native void clearJni();
+
+    private static class RefillThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable aRunnable) {
+            Thread thread = new Thread(aRunnable, "olm-key-pool");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    }
+}
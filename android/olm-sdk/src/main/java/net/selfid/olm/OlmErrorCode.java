@@ -0,0 +1,108 @@
+/*
+ * Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.selfid.olm;
+
+/**
+ * Status codes reported by the non-throwing decryption methods, such as
+ * {@link OlmSession#tryDecrypt(OlmMessage, OlmDecryptResult)}.<br>
+ * The positive values mirror the native <code>OlmErrorCode</code> enum, the negative
+ * values are failures detected before reaching the Olm library.
+ */
+public final class OlmErrorCode {
+    public static final int SUCCESS = 0;
+    public static final int NOT_ENOUGH_RANDOM = 1;
+    public static final int OUTPUT_BUFFER_TOO_SMALL = 2;
+    public static final int BAD_MESSAGE_VERSION = 3;
+    public static final int BAD_MESSAGE_FORMAT = 4;
+    public static final int BAD_MESSAGE_MAC = 5;
+    public static final int BAD_MESSAGE_KEY_ID = 6;
+    public static final int INVALID_BASE64 = 7;
+    public static final int BAD_ACCOUNT_KEY = 8;
+    public static final int UNKNOWN_PICKLE_VERSION = 9;
+    public static final int CORRUPTED_PICKLE = 10;
+    public static final int BAD_SESSION_KEY = 11;
+    public static final int UNKNOWN_MESSAGE_INDEX = 12;
+    public static final int BAD_LEGACY_ACCOUNT_PICKLE = 13;
+    public static final int BAD_SIGNATURE = 14;
+    public static final int INPUT_BUFFER_TOO_SMALL = 15;
+    public static final int BAD_STATE = 16;
+
+    /** the JNI layer failed: released object, missing field or allocation failure **/
+    public static final int JNI_ERROR = -1;
+    /** the message to decrypt is null **/
+    public static final int INVALID_INPUT = -2;
+
+    // same strings as _olm_error_to_string(), so that the exception messages are unchanged
+    private static final String[] NAMES = {
+        "SUCCESS",
+        "NOT_ENOUGH_RANDOM",
+        "OUTPUT_BUFFER_TOO_SMALL",
+        "BAD_MESSAGE_VERSION",
+        "BAD_MESSAGE_FORMAT",
+        "BAD_MESSAGE_MAC",
+        "BAD_MESSAGE_KEY_ID",
+        "INVALID_BASE64",
+        "BAD_ACCOUNT_KEY",
+        "UNKNOWN_PICKLE_VERSION",
+        "CORRUPTED_PICKLE",
+        "BAD_SESSION_KEY",
+        "UNKNOWN_MESSAGE_INDEX",
+        "BAD_LEGACY_ACCOUNT_PICKLE",
+        "BAD_SIGNATURE",
+        "OLM_INPUT_BUFFER_TOO_SMALL",
+        "BAD_STATE",
+    };
+
+    private OlmErrorCode() {
+    }
+
+    /**
+     * Provides the name of a status code.
+     * @param aCode the status code
+     * @return the name, "UNKNOWN_ERROR" for an unknown code
+     */
+    public static String name(int aCode) {
+        if ((aCode >= 0) && (aCode < NAMES.length)) {
+            return NAMES[aCode];
+        } else if (JNI_ERROR == aCode) {
+            return "JNI_ERROR";
+        } else if (INVALID_INPUT == aCode) {
+            return "INVALID_INPUT";
+        }
+
+        return "UNKNOWN_ERROR";
+    }
+
+    /**
+     * Tell if a string is the name of a status code.
+     * @param aName the name
+     * @return true if {@link #name(int)} can return it
+     */
+    static boolean isName(String aName) {
+        if ("JNI_ERROR".equals(aName) || "INVALID_INPUT".equals(aName) || "UNKNOWN_ERROR".equals(aName)) {
+            return true;
+        }
+
+        for (String name : NAMES) {
+            if (name.equals(aName)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -43,12 +43,15 @@ public class OlmException extends IOException {
     public static final int EXCEPTION_CODE_INBOUND_GROUP_SESSION_FIRST_KNOWN_INDEX = 204;
     public static final int EXCEPTION_CODE_INBOUND_GROUP_SESSION_IS_VERIFIED = 205;
     public static final int EXCEPTION_CODE_INBOUND_GROUP_SESSION_EXPORT = 206;
+    public static final int EXCEPTION_CODE_INBOUND_GROUP_SESSION_SEEN_INDICES = 207;
+    public static final int EXCEPTION_CODE_INBOUND_GROUP_SESSION_SERIALIZATION = 208;
 
     public static final int EXCEPTION_CODE_CREATE_OUTBOUND_GROUP_SESSION = 300;
     public static final int EXCEPTION_CODE_INIT_OUTBOUND_GROUP_SESSION = 301;
     public static final int EXCEPTION_CODE_OUTBOUND_GROUP_SESSION_IDENTIFIER = 302;
     public static final int EXCEPTION_CODE_OUTBOUND_GROUP_SESSION_KEY = 303;
     public static final int EXCEPTION_CODE_OUTBOUND_GROUP_ENCRYPT_MESSAGE = 304;
+    public static final int EXCEPTION_CODE_OUTBOUND_GROUP_SESSION_SERIALIZATION = 305;
 
     public static final int EXCEPTION_CODE_INIT_SESSION_CREATION = 400;
     public static final int EXCEPTION_CODE_SESSION_INIT_OUTBOUND_SESSION = 401;
@@ -57,6 +60,7 @@ public class OlmException extends IOException {
     public static final int EXCEPTION_CODE_SESSION_ENCRYPT_MESSAGE = 404;
     public static final int EXCEPTION_CODE_SESSION_DECRYPT_MESSAGE = 405;
     public static final int EXCEPTION_CODE_SESSION_SESSION_IDENTIFIER = 406;
+    public static final int EXCEPTION_CODE_SESSION_SERIALIZATION = 407;
 
     public static final int EXCEPTION_CODE_UTILITY_CREATION = 500;
     public static final int EXCEPTION_CODE_UTILITY_VERIFY_SIGNATURE = 501;
@@ -81,6 +85,13 @@ public class OlmException extends IOException {
     public static final int EXCEPTION_CODE_SAS_MISSING_THEIR_PKEY = 902;
     public static final int EXCEPTION_CODE_SAS_GENERATE_SHORT_CODE = 903;
 
+    public static final int EXCEPTION_CODE_ATTACHMENT_CIPHER_CREATION = 1000;
+    public static final int EXCEPTION_CODE_ATTACHMENT_CIPHER_UPDATE = 1001;
+    public static final int EXCEPTION_CODE_ATTACHMENT_CIPHER_DIGEST = 1002;
+    public static final int EXCEPTION_CODE_ATTACHMENT_CIPHER_IO = 1003;
+
+    public static final int EXCEPTION_CODE_PARSED_MESSAGE_CREATION = 1100;
+
     // exception human readable messages
     public static final String EXCEPTION_MSG_INVALID_PARAMS_DESERIALIZATION = "invalid de-serialized parameters";
 
@@ -105,4 +116,32 @@ public class OlmException extends IOException {
     public String getMessage() {
         return mMessage;
     }
+
+    /**
+     * Create an exception which does not capture the stack trace.<br>
+     * Used for the failures that callers routinely expect and handle, such as a failed trial decryption,
+     * so that they cost as little as the success path.
+     * @param aExceptionCode the exception code
+     * @param aExceptionMessage the exception message
+     * @return the exception
+     */
+    static OlmException stackless(int aExceptionCode, String aExceptionMessage) {
+        return new StacklessOlmException(aExceptionCode, aExceptionMessage);
+    }
+
+    /**
+     * The Throwable constructor disabling the stack trace is not available before API 24.
+     */
+    private static final class StacklessOlmException extends OlmException {
+        private static final long serialVersionUID = 388776625927264104L;
+
+        StacklessOlmException(int aExceptionCode, String aExceptionMessage) {
+            super(aExceptionCode, aExceptionMessage);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
 }
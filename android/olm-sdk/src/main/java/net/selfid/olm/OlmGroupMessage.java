@@ -0,0 +1,124 @@
+/*
+ * Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.selfid.olm;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A group message decoded once in native code.<br>
+ * The base64 and the headers are decoded when the object is created, so the message index can
+ * be read to order the messages, and the message can then be decrypted without decoding it again.
+ * See {@link OlmInboundGroupSession#tryDecryptParsed(OlmGroupMessage, OlmDecryptResult)}.
+ */
+public class OlmGroupMessage {
+    /**
+     * Parsed message Id returned by JNI.
+     * This value uniquely identifies the native parsed group message instance.
+     **/
+    private transient long mNativeId;
+
+    /** length of the base64 message **/
+    private final int mLength;
+
+    /**
+     * Decode a group message.
+     * @param aCipherText the base64 message
+     * @throws OlmException the failure reason
+     */
+    public OlmGroupMessage(String aCipherText) throws OlmException {
+        if (null == aCipherText) {
+            throw new OlmException(OlmException.EXCEPTION_CODE_PARSED_MESSAGE_CREATION, "invalid message");
+        }
+
+        mLength = aCipherText.length();
+
+        try {
+            mNativeId = createNewGroupMessageJni(aCipherText.getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            throw new OlmException(OlmException.EXCEPTION_CODE_PARSED_MESSAGE_CREATION, e.getMessage());
+        }
+    }
+
+    /**
+     * Decode a group message into a native parsed group message.<br>
+     * Do not forget to call {@link #releaseGroupMessageJni()} when JAVA side is done.
+     * @param aCipherText the base64 message
+     * @return native parsed group message instance identifier or throw an exception.
+     */
+    private native long createNewGroupMessageJni(byte[] aCipherText);
+
+    /**
+     * Destroy the corresponding native parsed group message.<br>
+     * This method must ALWAYS be called when this JAVA instance
+     * is destroyed (ie. garbage collected) to prevent memory leak in native side.
+     * See {@link #createNewGroupMessageJni(byte[])}.
+     */
+    private native void releaseGroupMessageJni();
+
+    /**
+     * Release native parsed group message and invalid its JAVA reference counter part.<br>
+     * Public API for {@link #releaseGroupMessageJni()}.
+     */
+    public void releaseMessage() {
+        if (0 != mNativeId) {
+            releaseGroupMessageJni();
+        }
+        mNativeId = 0;
+    }
+
+    /**
+     * Return true the object resources have been released.<br>
+     * @return true the object resources have been released
+     */
+    public boolean isReleased() {
+        return (0 == mNativeId);
+    }
+
+    /**
+     * Getter on the native parsed group message id.
+     * @return native parsed group message id
+     */
+    long getOlmGroupMessageId() {
+        return mNativeId;
+    }
+
+    /**
+     * @return the length of the base64 message
+     */
+    int getLength() {
+        return mLength;
+    }
+
+    /**
+     * @return the index of the message in the group session
+     * @throws OlmException the failure reason
+     */
+    public long getMessageIndex() throws OlmException {
+        try {
+            return messageIndexJni();
+        } catch (Exception e) {
+            throw new OlmException(OlmException.EXCEPTION_CODE_PARSED_MESSAGE_CREATION, e.getMessage());
+        }
+    }
+
+    /**
+     * Provide the message index.
+     * An exception is thrown if the operation fails.
+     * @return the message index
+     */
+    private native long messageIndexJni();
+}
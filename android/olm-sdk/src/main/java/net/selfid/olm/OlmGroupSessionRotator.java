@@ -0,0 +1,369 @@
+/*
+ * Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.selfid.olm;
+
+import android.util.Log;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Rotates an {@link OlmOutboundGroupSession} according to a {@link Policy}, with its successor
+ * generated ahead of time.<br>
+ * A session is rotated once it has encrypted {@link Policy#mMaxMessages} messages or once it is
+ * {@link Policy#mMaxAgeMillis} old. When it gets within {@link Policy#mLeadMessages} messages or
+ * {@link Policy#mLeadMillis} of its rotation, the successor session is created on a single low
+ * priority daemon thread and reported to the {@link Listener}, so that its key can be shared with
+ * the room devices while the current session is still in use. The rotation itself then only swaps
+ * the sessions, instead of creating a session and sharing it before the next message can be sent.
+ * A rotation due before the listener has returned creates the new session on the spot.
+ * <br><br>Before each message, {@link #prepareForSend()} returns the session to encrypt it with.
+ * The rotator owns the current and the successor sessions; a rotated session is handed to
+ * {@link Listener#onRotated(OlmOutboundGroupSession, OlmOutboundGroupSession)} and is owned by the
+ * listener from then on, or released if there is no listener.
+ */
+public class OlmGroupSessionRotator {
+    private static final String LOG_TAG = "OlmGroupSessionRotator";
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * When to rotate a session, and how early to generate its successor.<br>
+     * The defaults are the usual room settings: 100 messages or a week.
+     */
+    public static class Policy {
+        /** number of messages encrypted by a session before it is rotated, 0 for unbounded **/
+        public int mMaxMessages = 100;
+
+        /** age of a session at which it is rotated, in milliseconds, 0 for unbounded **/
+        public long mMaxAgeMillis = 7 * 24 * 3600 * 1000L;
+
+        /** number of messages before the rotation at which the successor is generated **/
+        public int mLeadMessages = 10;
+
+        /** time before the rotation at which the successor is generated, in milliseconds **/
+        public long mLeadMillis = 3600 * 1000L;
+    }
+
+    /**
+     * Rotation events.
+     */
+    public interface Listener {
+        /**
+         * The successor session has been generated and its key can be shared with the room devices.<br>
+         * Called on the background thread. The successor is only used by a rotation once this method
+         * has returned, so the key should be shared before returning.
+         * @param aSessionId the successor session identifier
+         * @param aSessionKey the successor session key, at message index 0
+         */
+        void onSuccessorReady(String aSessionId, String aSessionKey);
+
+        /**
+         * The session has been rotated.<br>
+         * Called on the thread calling {@link #prepareForSend()}, before the new session is returned.
+         * @param aPrevious the rotated session, now owned by the listener
+         * @param aCurrent the new current session
+         * @param aPregenerated false if the new session had to be created on the spot
+         */
+        void onRotated(OlmOutboundGroupSession aPrevious, OlmOutboundGroupSession aCurrent, boolean aPregenerated);
+    }
+
+    private final Policy mPolicy;
+    private final Listener mListener;
+    private final ThreadPoolExecutor mExecutor;
+    private final AtomicBoolean mGenerationPending = new AtomicBoolean();
+
+    // guarded by this
+    private OlmOutboundGroupSession mCurrent;
+    private long mCurrentCreationTime;
+    private OlmOutboundGroupSession mSuccessor;
+    private long mSuccessorCreationTime;
+    private boolean mRotationRequested;
+    private int mRotationCount;
+    private int mInlineCreationCount;
+    // incremented when the successor is discarded, so that a generation started before is dropped
+    private int mSuccessorGeneration;
+
+    private final Runnable mGenerate = new Runnable() {
+        @Override
+        public void run() {
+            mGenerationPending.set(false);
+            generateSuccessor();
+        }
+    };
+
+    /**
+     * Constructor.
+     * @param aSession the current session, null to create one
+     * @param aCreationTime the creation time of aSession, as returned by {@link System#currentTimeMillis()}
+     * @param aPolicy the rotation policy, null for the defaults
+     * @param aListener the listener, null if not needed
+     * @exception OlmException if the session can't be created
+     */
+    public OlmGroupSessionRotator(OlmOutboundGroupSession aSession, long aCreationTime, Policy aPolicy, Listener aListener) throws OlmException {
+        if ((null != aSession) && aSession.isReleased()) {
+            Log.e(LOG_TAG, "## OlmGroupSessionRotator(): invalid input parameters");
+            throw new OlmException(OlmException.EXCEPTION_CODE_CREATE_OUTBOUND_GROUP_SESSION, "invalid input parameters");
+        }
+
+        mPolicy = (null != aPolicy) ? aPolicy : new Policy();
+        mListener = aListener;
+        mCurrent = (null != aSession) ? aSession : new OlmOutboundGroupSession();
+        mCurrentCreationTime = (null != aSession) ? aCreationTime : System.currentTimeMillis();
+        mExecutor = new ThreadPoolExecutor(0, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new RotatorThreadFactory());
+
+        checkLead();
+    }
+
+    /**
+     * Return the session to encrypt the next message with, rotating the current one if it is due.<br>
+     * The caller must share the key of a new session before sending messages encrypted with it,
+     * unless it was already shared from {@link Listener#onSuccessorReady(String, String)}.
+     * @return the session
+     * @exception OlmException if a session had to be created on the spot and the creation failed
+     */
+    public OlmOutboundGroupSession prepareForSend() throws OlmException {
+        OlmOutboundGroupSession previous = null;
+        OlmOutboundGroupSession current;
+        boolean pregenerated = false;
+
+        synchronized (this) {
+            if (null == mCurrent) {
+                Log.e(LOG_TAG, "## prepareForSend(): the rotator has been shut down");
+                throw new OlmException(OlmException.EXCEPTION_CODE_OUTBOUND_GROUP_ENCRYPT_MESSAGE, "shut down");
+            }
+
+            if (isRotationDue(0, 0)) {
+                previous = mCurrent;
+                pregenerated = (null != mSuccessor);
+
+                if (pregenerated) {
+                    mCurrent = mSuccessor;
+                    mCurrentCreationTime = mSuccessorCreationTime;
+                    mSuccessor = null;
+                } else {
+                    mCurrent = new OlmOutboundGroupSession();
+                    mCurrentCreationTime = System.currentTimeMillis();
+                    mInlineCreationCount++;
+                }
+
+                mRotationRequested = false;
+                mRotationCount++;
+            }
+
+            current = mCurrent;
+        }
+
+        if (null != previous) {
+            Log.d(LOG_TAG, "## prepareForSend(): rotated, pregenerated=" + pregenerated);
+
+            if (null != mListener) {
+                mListener.onRotated(previous, current, pregenerated);
+            } else {
+                previous.releaseSession();
+            }
+        }
+
+        // this message counts towards the lead
+        checkLead();
+        return current;
+    }
+
+    /**
+     * Rotate the session before the next message, e.g. because a device left the room.<br>
+     * The successor is discarded too, since its key may have been shared with that device,
+     * and a new one is generated in the background.
+     */
+    public void rotateNow() {
+        OlmOutboundGroupSession successor;
+
+        synchronized (this) {
+            mRotationRequested = true;
+            successor = mSuccessor;
+            mSuccessor = null;
+            mSuccessorGeneration++;
+        }
+
+        if (null != successor) {
+            successor.releaseSession();
+        }
+
+        generate();
+    }
+
+    /**
+     * @return the current session, null once shut down
+     */
+    public synchronized OlmOutboundGroupSession getCurrentSession() {
+        return mCurrent;
+    }
+
+    /**
+     * @return the creation time of the current session
+     */
+    public synchronized long getCurrentCreationTime() {
+        return mCurrentCreationTime;
+    }
+
+    /**
+     * @return the successor session once generated, null otherwise
+     */
+    public synchronized OlmOutboundGroupSession getSuccessorSession() {
+        return mSuccessor;
+    }
+
+    /**
+     * @return the number of rotations
+     */
+    public synchronized int getRotationCount() {
+        return mRotationCount;
+    }
+
+    /**
+     * @return the number of rotations whose session had to be created on the spot
+     */
+    public synchronized int getInlineCreationCount() {
+        return mInlineCreationCount;
+    }
+
+    /**
+     * Stop the background generation and release the successor.<br>
+     * The current session is not released: it is returned to the caller, who owns it from then on.
+     * @return the current session
+     */
+    public OlmOutboundGroupSession shutdown() {
+        OlmOutboundGroupSession current;
+        OlmOutboundGroupSession successor;
+
+        mExecutor.shutdown();
+
+        synchronized (this) {
+            current = mCurrent;
+            successor = mSuccessor;
+            mCurrent = null;
+            mSuccessor = null;
+            mSuccessorGeneration++;
+        }
+
+        if (null != successor) {
+            successor.releaseSession();
+        }
+
+        return current;
+    }
+
+    /**
+     * Tell whether the current session is due for a rotation, or will be within the given lead.
+     */
+    private boolean isRotationDue(int aLeadMessages, long aLeadMillis) {
+        if (mRotationRequested) {
+            return true;
+        }
+        if ((mPolicy.mMaxMessages > 0) && (mCurrent.messageIndex() >= mPolicy.mMaxMessages - aLeadMessages)) {
+            return true;
+        }
+        return (mPolicy.mMaxAgeMillis > 0)
+                && (System.currentTimeMillis() - mCurrentCreationTime >= mPolicy.mMaxAgeMillis - aLeadMillis);
+    }
+
+    /**
+     * Generate the successor if the current session is within the lead of its rotation.
+     */
+    private void checkLead() {
+        boolean needed;
+
+        synchronized (this) {
+            // the message about to be sent is counted
+            needed = (null != mCurrent) && (null == mSuccessor) && isRotationDue(mPolicy.mLeadMessages + 1, mPolicy.mLeadMillis);
+        }
+
+        if (needed) {
+            generate();
+        }
+    }
+
+    private void generate() {
+        if (mGenerationPending.compareAndSet(false, true)) {
+            try {
+                mExecutor.execute(mGenerate);
+            } catch (RejectedExecutionException e) {
+                mGenerationPending.set(false);
+            }
+        }
+    }
+
+    /**
+     * Create the successor, outside of the rotator lock, and report it.
+     */
+    private void generateSuccessor() {
+        int generation;
+
+        synchronized (this) {
+            if ((null == mCurrent) || (null != mSuccessor)) {
+                return;
+            }
+            generation = mSuccessorGeneration;
+        }
+
+        OlmOutboundGroupSession successor;
+        long creationTime = System.currentTimeMillis();
+
+        try {
+            successor = new OlmOutboundGroupSession();
+        } catch (OlmException e) {
+            Log.e(LOG_TAG, "## generateSuccessor(): failed " + e.getMessage());
+            return;
+        }
+
+        // the successor is not published before its key has been shared
+        try {
+            if (null != mListener) {
+                mListener.onSuccessorReady(successor.sessionIdentifier(), successor.sessionKey());
+            }
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "## generateSuccessor(): not shared " + e.getMessage());
+            successor.releaseSession();
+            return;
+        }
+
+        synchronized (this) {
+            if ((null == mCurrent) || (null != mSuccessor) || (generation != mSuccessorGeneration)) {
+                // shut down or discarded in the meantime
+                successor.releaseSession();
+                return;
+            }
+
+            mSuccessor = successor;
+            mSuccessorCreationTime = creationTime;
+        }
+    }
+
+    private static class RotatorThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable aRunnable) {
+            Thread thread = new Thread(aRunnable, "olm-group-session-rotation");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    }
+}
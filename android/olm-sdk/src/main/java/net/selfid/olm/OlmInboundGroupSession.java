@@ -20,12 +20,18 @@ package net.selfid.olm;
 import android.text.TextUtils;
 import android.util.Log;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * Class used to create an inbound <a href="http://matrix.org/docs/guides/e2e_implementation.html#handling-an-m-room-key-event">Megolm session</a>.<br>
@@ -42,6 +48,12 @@ public class OlmInboundGroupSession extends CommonSerializeUtils implements Seri
      */
     private transient long mNativeId;
 
+    /** hash of the session identifier for the trace sections, 0 until computed **/
+    private transient int mTraceHash;
+
+    /** index following the last decrypted message, for the trace sections, 0 until a message is decrypted **/
+    private transient volatile long mTraceNextIndex;
+
     /**
      * Result in {@link #decryptMessage(String)}
      */
@@ -51,6 +63,63 @@ public class OlmInboundGroupSession extends CommonSerializeUtils implements Seri
 
         /** decrypt index **/
         public long mIndex;
+
+        /** true if this message index had already been decrypted, see {@link #setTrackSeenIndices(boolean)} **/
+        public boolean mAlreadySeen;
+    }
+
+    /** max number of sessions given to the native side at once by the bulk export and import **/
+    private static final int BULK_CHUNK_SIZE = 256;
+
+    // native decryptions run by tryDecrypt(int, byte[], long, long, OlmDecryptResult)
+    private static final int DECRYPT_MESSAGE = 0;
+    private static final int DECRYPT_RAW = 1;
+    private static final int DECRYPT_CONCURRENTLY = 2;
+    private static final int DECRYPT_PARSED = 3;
+
+    /**
+     * Progress of a bulk export or import, reported on the calling thread after each chunk of sessions.
+     */
+    public interface BulkProgressListener {
+        /**
+         * @param aDone number of sessions processed so far
+         * @param aTotal total number of sessions, -1 if unknown, as when importing a stream
+         */
+        void onProgress(int aDone, int aTotal);
+    }
+
+    /**
+     * Result of a bulk export.<br>
+     * Each export is followed by a new line, so that the exports can be read back by
+     * {@link #importSessions(InputStream, int, BulkProgressListener)}. The export of the session i is at
+     * [mOffsets[i], mOffsets[i + 1]) in mExported, or in the stream, and is empty if the session failed.
+     */
+    public static class BulkExportResult {
+        /** the packed exports, null if they were written to a stream **/
+        public byte[] mExported;
+
+        /** the count + 1 offsets of the exports **/
+        public int[] mOffsets;
+
+        /** the status of each session, {@link OlmErrorCode#SUCCESS} or the failure reason **/
+        public int[] mStatuses;
+
+        /** number of sessions exported **/
+        public int mSuccessCount;
+    }
+
+    /**
+     * Result of a bulk import, indexed as the exported sessions of the stream.
+     */
+    public static class BulkImportResult {
+        /** the imported sessions, null for the exported sessions which failed **/
+        public List<OlmInboundGroupSession> mSessions = new ArrayList<>();
+
+        /** the status of each exported session, {@link OlmErrorCode#SUCCESS} or the failure reason **/
+        public List<Integer> mStatuses = new ArrayList<>();
+
+        /** number of sessions imported **/
+        public int mSuccessCount;
     }
 
     /**
@@ -78,16 +147,37 @@ public class OlmInboundGroupSession extends CommonSerializeUtils implements Seri
             throw new OlmException(OlmException.EXCEPTION_CODE_INIT_INBOUND_GROUP_SESSION, "invalid session key");
         } else {
             byte[] sessionBuffer = null;
+            long traceStart = OlmTrace.begin(OlmTrace.EVENT_SESSION_CREATE);
             try {
                 sessionBuffer = aSessionKey.getBytes("UTF-8");
                 mNativeId = createNewSessionJni(aSessionKey.getBytes("UTF-8"), isImported);
             } catch (Exception e) {
+                OlmTrace.end(traceStart, null, aSessionKey.length(), -1, e.getMessage());
                 throw new OlmException(OlmException.EXCEPTION_CODE_INIT_INBOUND_GROUP_SESSION, e.getMessage());
             } finally {
                 if (null != sessionBuffer) {
                     Arrays.fill(sessionBuffer, (byte) 0);
                 }
             }
+
+            OlmTrace.end(traceStart, this, aSessionKey.length(), -1, null);
+        }
+    }
+
+    /**
+     * Create a session from a pickled buffer, without allocating an empty native session first.<br>
+     * See {@link #serialize(byte[], StringBuffer)}.
+     * @param aSerializedData pickled session
+     * @param aKey key used to encrypt the pickled session
+     * @throws OlmException the failure reason
+     */
+    OlmInboundGroupSession(byte[] aSerializedData, byte[] aKey) throws OlmException {
+        try {
+            deserialize(aSerializedData, aKey);
+        } catch (OlmException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new OlmException(OlmException.EXCEPTION_CODE_ACCOUNT_DESERIALIZATION, e.getMessage());
         }
     }
 
@@ -101,6 +191,14 @@ public class OlmInboundGroupSession extends CommonSerializeUtils implements Seri
      **/
     private native long createNewSessionJni(byte[] aSessionKeyBuffer, boolean isImported);
 
+    /**
+     * Wrap a native session created by {@link #importSessionsJni(byte[], int[], int, int[])}.
+     * @param aNativeId the native session
+     */
+    private OlmInboundGroupSession(long aNativeId) {
+        mNativeId = aNativeId;
+    }
+
     /**
      * Create an OlmInboundGroupSession from its exported session data.
      * @param exported the exported data
@@ -111,6 +209,16 @@ public class OlmInboundGroupSession extends CommonSerializeUtils implements Seri
         return new OlmInboundGroupSession(exported, true);
     }
 
+    /**
+     * Return the size of the native memory backing an inbound group session, in bytes.
+     * @return native session size
+     */
+    static long nativeSize() {
+        return nativeSizeJni();
+    }
+
+    private static native long nativeSizeJni();
+
     /**
      * Release native session and invalid its JAVA reference counter part.<br>
      * Public API for {@link #releaseSessionJni()}.
@@ -152,6 +260,33 @@ public class OlmInboundGroupSession extends CommonSerializeUtils implements Seri
         }
     }
 
+    /**
+     * @return the hash of the session identifier, computed once, 0 if it is not available
+     */
+    int traceHash() {
+        if ((0 == mTraceHash) && !isReleased()) {
+            try {
+                String sessionId = sessionIdentifier();
+                mTraceHash = (null == sessionId) ? 0 : sessionId.hashCode();
+            } catch (Exception e) {
+                return 0;
+            }
+        }
+
+        return mTraceHash;
+    }
+
+    /**
+     * Record a decrypted message index, without any JNI call so that the decryption stays non-throwing.
+     * @param aIndex the message index
+     * @return the gap from the message decrypted before, -1 for the first message
+     */
+    private long traceIndexGap(long aIndex) {
+        long nextIndex = mTraceNextIndex;
+        mTraceNextIndex = aIndex + 1;
+        return (0 == nextIndex) ? -1 : aIndex - (nextIndex - 1);
+    }
+
     /**
      * Get a base64-encoded identifier for this inbound group session.
      * An exception is thrown if the operation fails.
@@ -208,6 +343,75 @@ public class OlmInboundGroupSession extends CommonSerializeUtils implements Seri
      */
     private native boolean isVerifiedJni();
 
+    /**
+     * Enable or disable the recording of the decrypted message indices.<br>
+     * When enabled, {@link DecryptMessageResult#mAlreadySeen} reports replayed message indices
+     * and {@link #hasSeenIndex(long)} can be queried. The record is saved with the session.
+     * Disabling it forgets the indices recorded so far.
+     * @param aEnabled true to record the decrypted message indices
+     * @throws OlmException the failure reason
+     */
+    public void setTrackSeenIndices(boolean aEnabled) throws OlmException {
+        try {
+            setTrackSeenIndicesJni(aEnabled);
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "## setTrackSeenIndices() failed " + e.getMessage());
+            throw new OlmException(OlmException.EXCEPTION_CODE_INBOUND_GROUP_SESSION_SEEN_INDICES, e.getMessage());
+        }
+    }
+
+    /**
+     * Enable or disable the recording of the decrypted message indices.
+     * An exception is thrown if the operation fails.
+     * @param aEnabled true to record the decrypted message indices
+     */
+    private native void setTrackSeenIndicesJni(boolean aEnabled);
+
+    /**
+     * Tells if the session records the decrypted message indices.
+     * @return true if the decrypted message indices are recorded
+     * @throws OlmException the failure reason
+     */
+    public boolean isTrackingSeenIndices() throws OlmException {
+        try {
+            return isTrackingSeenIndicesJni();
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "## isTrackingSeenIndices() failed " + e.getMessage());
+            throw new OlmException(OlmException.EXCEPTION_CODE_INBOUND_GROUP_SESSION_SEEN_INDICES, e.getMessage());
+        }
+    }
+
+    /**
+     * Tells if the session records the decrypted message indices.
+     * An exception is thrown if the operation fails.
+     * @return true if the decrypted message indices are recorded
+     */
+    private native boolean isTrackingSeenIndicesJni();
+
+    /**
+     * Tells if a message with this index has already been decrypted by the session.<br>
+     * Always false if the session does not record the decrypted message indices.
+     * @param aMessageIndex the message index
+     * @return true if the message index has already been decrypted
+     * @throws OlmException the failure reason
+     */
+    public boolean hasSeenIndex(long aMessageIndex) throws OlmException {
+        try {
+            return hasSeenIndexJni(aMessageIndex);
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "## hasSeenIndex() failed " + e.getMessage());
+            throw new OlmException(OlmException.EXCEPTION_CODE_INBOUND_GROUP_SESSION_SEEN_INDICES, e.getMessage());
+        }
+    }
+
+    /**
+     * Tells if a message with this index has already been decrypted by the session.
+     * An exception is thrown if the operation fails.
+     * @param aMessageIndex the message index
+     * @return true if the message index has already been decrypted
+     */
+    private native boolean hasSeenIndexJni(long aMessageIndex);
+
     /**
      * Export the session from a message index as String.
      * @param messageIndex the message index
@@ -240,6 +444,254 @@ public class OlmInboundGroupSession extends CommonSerializeUtils implements Seri
      */
     private native byte[] exportJni(long messageIndex);
 
+    /**
+     * Export several sessions into a single packed buffer, on several threads.<br>
+     * A session which can't be exported doesn't stop the batch: its status holds the failure reason,
+     * {@link OlmErrorCode#INVALID_INPUT} if it is null or released.
+     * @param aSessions the sessions, each one at most once
+     * @param aMessageIndexes the message index of each export, -1 for the first known index of the session, null to use it for all of them
+     * @param aThreads number of threads, 0 to use one per available processor
+     * @param aListener the progress listener, null if not needed
+     * @return the packed exports and the statuses
+     * @throws OlmException if the parameters are invalid or the native side fails
+     */
+    public static BulkExportResult exportSessions(List<OlmInboundGroupSession> aSessions, long[] aMessageIndexes, int aThreads, BulkProgressListener aListener) throws OlmException {
+        List<byte[]> chunks = new ArrayList<>();
+        BulkExportResult result = exportSessions(aSessions, aMessageIndexes, aThreads, null, chunks, aListener);
+
+        result.mExported = new byte[result.mOffsets[result.mOffsets.length - 1]];
+        int offset = 0;
+        for (byte[] chunk : chunks) {
+            System.arraycopy(chunk, 0, result.mExported, offset, chunk.length);
+            offset += chunk.length;
+            Arrays.fill(chunk, (byte) 0);
+        }
+
+        return result;
+    }
+
+    /**
+     * Export several sessions to a stream, on several threads.<br>
+     * Same as {@link #exportSessions(List, long[], int, BulkProgressListener)}, except that the exports are
+     * written to aOutput chunk by chunk instead of being kept in memory.
+     * @param aSessions the sessions, each one at most once
+     * @param aMessageIndexes the message index of each export, -1 for the first known index of the session, null to use it for all of them
+     * @param aThreads number of threads, 0 to use one per available processor
+     * @param aOutput the stream receiving the exports, it is not closed
+     * @param aListener the progress listener, null if not needed
+     * @return the offsets of the exports in the stream and the statuses
+     * @throws OlmException if the parameters are invalid, the stream or the native side fails
+     */
+    public static BulkExportResult exportSessions(List<OlmInboundGroupSession> aSessions, long[] aMessageIndexes, int aThreads, OutputStream aOutput, BulkProgressListener aListener) throws OlmException {
+        if (null == aOutput) {
+            Log.e(LOG_TAG, "## exportSessions(): invalid output stream");
+            throw new OlmException(OlmException.EXCEPTION_CODE_INBOUND_GROUP_SESSION_EXPORT, "invalid output stream");
+        }
+
+        return exportSessions(aSessions, aMessageIndexes, aThreads, aOutput, null, aListener);
+    }
+
+    /**
+     * Export several sessions chunk by chunk, to aOutput or to aChunks.
+     */
+    private static BulkExportResult exportSessions(List<OlmInboundGroupSession> aSessions, long[] aMessageIndexes, int aThreads,
+                                                   OutputStream aOutput, List<byte[]> aChunks, BulkProgressListener aListener) throws OlmException {
+        if ((null == aSessions) || ((null != aMessageIndexes) && (aMessageIndexes.length != aSessions.size()))) {
+            Log.e(LOG_TAG, "## exportSessions(): invalid input parameters");
+            throw new OlmException(OlmException.EXCEPTION_CODE_INBOUND_GROUP_SESSION_EXPORT, "invalid input parameters");
+        }
+
+        int count = aSessions.size();
+        int threads = (aThreads > 0) ? aThreads : Runtime.getRuntime().availableProcessors();
+
+        BulkExportResult result = new BulkExportResult();
+        result.mOffsets = new int[count + 1];
+        result.mStatuses = new int[count];
+
+        for (int chunkStart = 0; chunkStart < count; chunkStart += BULK_CHUNK_SIZE) {
+            int chunkSize = Math.min(BULK_CHUNK_SIZE, count - chunkStart);
+            long[] sessionIds = new long[chunkSize];
+            long[] messageIndexes = new long[chunkSize];
+            int[] offsets = new int[chunkSize + 1];
+            int[] statuses = new int[chunkSize];
+
+            for (int i = 0; i < chunkSize; i++) {
+                OlmInboundGroupSession session = aSessions.get(chunkStart + i);
+                sessionIds[i] = (null == session) ? 0 : session.mNativeId;
+                messageIndexes[i] = (null == aMessageIndexes) ? -1 : aMessageIndexes[chunkStart + i];
+            }
+
+            byte[] exported = null;
+            try {
+                exported = exportSessionsJni(sessionIds, messageIndexes, threads, offsets, statuses);
+
+                if (null != aOutput) {
+                    aOutput.write(exported);
+                }
+            } catch (Exception e) {
+                Log.e(LOG_TAG, "## exportSessions(): failed " + e.getMessage());
+                throw new OlmException(OlmException.EXCEPTION_CODE_INBOUND_GROUP_SESSION_EXPORT, e.getMessage());
+            } finally {
+                if ((null != exported) && (null == aChunks)) {
+                    Arrays.fill(exported, (byte) 0);
+                }
+            }
+
+            if (null != aChunks) {
+                aChunks.add(exported);
+            }
+
+            int base = result.mOffsets[chunkStart];
+            for (int i = 0; i < chunkSize; i++) {
+                result.mOffsets[chunkStart + i + 1] = base + offsets[i + 1];
+                result.mStatuses[chunkStart + i] = statuses[i];
+
+                if (OlmErrorCode.SUCCESS == statuses[i]) {
+                    result.mSuccessCount++;
+                }
+            }
+
+            if (null != aListener) {
+                aListener.onProgress(chunkStart + chunkSize, count);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Export several sessions on several threads.<br>
+     * An exception is thrown if the batch is invalid, not if a session fails.
+     * @param aSessionIds the native ids of the sessions
+     * @param aMessageIndexes the message index of each export, -1 for the first known index
+     * @param aThreads number of threads
+     * @param aOffsets receives the offsets of the exports
+     * @param aStatuses receives the status of each session
+     * @return the packed exports
+     */
+    private static native byte[] exportSessionsJni(long[] aSessionIds, long[] aMessageIndexes, int aThreads, int[] aOffsets, int[] aStatuses);
+
+    /**
+     * Import a stream of exported sessions, on several threads.<br>
+     * The stream holds one exported session per line, as written by
+     * {@link #exportSessions(List, long[], int, OutputStream, BulkProgressListener)}; empty lines are skipped.
+     * An exported session which can't be imported doesn't stop the import: its status holds the failure reason.
+     * @param aInput the stream of exported sessions, read until its end and not closed
+     * @param aThreads number of threads, 0 to use one per available processor
+     * @param aListener the progress listener, null if not needed
+     * @return the new sessions and the statuses
+     * @throws OlmException if the stream or the native side fails, no session is returned then
+     */
+    public static BulkImportResult importSessions(InputStream aInput, int aThreads, BulkProgressListener aListener) throws OlmException {
+        if (null == aInput) {
+            Log.e(LOG_TAG, "## importSessions(): invalid input stream");
+            throw new OlmException(OlmException.EXCEPTION_CODE_INIT_INBOUND_GROUP_SESSION, "invalid input stream");
+        }
+
+        int threads = (aThreads > 0) ? aThreads : Runtime.getRuntime().availableProcessors();
+        ExportedSessionReader reader = new ExportedSessionReader(aInput);
+        BulkImportResult result = new BulkImportResult();
+
+        try {
+            while (reader.readChunk()) {
+                int[] statuses = new int[reader.mCount];
+                long[] sessionIds = importSessionsJni(reader.mBuffer, Arrays.copyOf(reader.mOffsets, reader.mCount + 1), threads, statuses);
+
+                for (int i = 0; i < reader.mCount; i++) {
+                    result.mStatuses.add(statuses[i]);
+
+                    if (0 != sessionIds[i]) {
+                        result.mSessions.add(new OlmInboundGroupSession(sessionIds[i]));
+                        result.mSuccessCount++;
+                    } else {
+                        result.mSessions.add(null);
+                    }
+                }
+
+                if (null != aListener) {
+                    aListener.onProgress(result.mStatuses.size(), -1);
+                }
+            }
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "## importSessions(): failed " + e.getMessage());
+            for (OlmInboundGroupSession session : result.mSessions) {
+                if (null != session) {
+                    session.releaseSession();
+                }
+            }
+            throw new OlmException(OlmException.EXCEPTION_CODE_INIT_INBOUND_GROUP_SESSION, e.getMessage());
+        } finally {
+            reader.clear();
+        }
+
+        return result;
+    }
+
+    /**
+     * Import several exported sessions on several threads.<br>
+     * An exception is thrown if the batch is invalid, not if a session fails.
+     * @param aExported the packed exported sessions
+     * @param aOffsets the offsets of the exported sessions
+     * @param aThreads number of threads
+     * @param aStatuses receives the status of each session
+     * @return the native ids of the new sessions, 0 for the failed ones
+     */
+    private static native long[] importSessionsJni(byte[] aExported, int[] aOffsets, int aThreads, int[] aStatuses);
+
+    /**
+     * Split a stream of exported sessions into chunks of up to {@link #BULK_CHUNK_SIZE} lines,
+     * without going through Strings.
+     */
+    private static class ExportedSessionReader {
+        private final InputStream mInput;
+        /** the lines of the chunk, without their line breaks **/
+        byte[] mBuffer = new byte[BULK_CHUNK_SIZE * 256];
+        /** the offsets of the lines in mBuffer **/
+        final int[] mOffsets = new int[BULK_CHUNK_SIZE + 1];
+        /** number of lines in the chunk **/
+        int mCount;
+        private boolean mEnded;
+
+        ExportedSessionReader(InputStream aInput) {
+            mInput = new BufferedInputStream(aInput);
+        }
+
+        /**
+         * Read the next chunk.
+         * @return false at the end of the stream
+         * @throws IOException the stream failure
+         */
+        boolean readChunk() throws IOException {
+            int length = 0;
+            mCount = 0;
+
+            while (!mEnded && (mCount < BULK_CHUNK_SIZE)) {
+                int value = mInput.read();
+
+                if ((-1 == value) || ('\n' == value) || ('\r' == value)) {
+                    mEnded = (-1 == value);
+
+                    if (length > mOffsets[mCount]) {
+                        mOffsets[++mCount] = length;
+                    }
+                } else {
+                    if (length == mBuffer.length) {
+                        byte[] buffer = Arrays.copyOf(mBuffer, 2 * length);
+                        Arrays.fill(mBuffer, (byte) 0);
+                        mBuffer = buffer;
+                    }
+                    mBuffer[length++] = (byte) value;
+                }
+            }
+
+            return mCount > 0;
+        }
+
+        void clear() {
+            Arrays.fill(mBuffer, (byte) 0);
+        }
+    }
+
     /**
      * Decrypt the message passed in parameter.<br>
      * In case of error, null is returned and an error message description is provided in aErrorMsg.
@@ -248,31 +700,205 @@ public class OlmInboundGroupSession extends CommonSerializeUtils implements Seri
      * @exception OlmException the failure reason
      */
     public DecryptMessageResult decryptMessage(String aEncryptedMsg) throws OlmException {
-        DecryptMessageResult result = new DecryptMessageResult();
+        OlmDecryptResult decrypted = new OlmDecryptResult();
+        tryDecrypt(aEncryptedMsg, decrypted);
+        return toDecryptMessageResult(decrypted, "decryptMessage");
+    }
 
-        try {
-            byte[] decryptedMessageBuffer = decryptMessageJni(aEncryptedMsg.getBytes("UTF-8"), result);
+    /**
+     * Decrypt the message passed in parameter, without throwing on failure.<br>
+     * Meant for trial decryption: a failure costs no exception and no error log.
+     * @param aEncryptedMsg the message to be decrypted
+     * @param aResult the result to fill with the message and its index, it can be reused across calls
+     * @return the status, {@link OlmErrorCode#SUCCESS} if aResult holds the decrypted message
+     */
+    public int tryDecrypt(String aEncryptedMsg, OlmDecryptResult aResult) {
+        aResult.reset();
 
-            if (null != decryptedMessageBuffer) {
-                result.mDecryptedMessage = new String(decryptedMessageBuffer, "UTF-8");
-                Arrays.fill(decryptedMessageBuffer, (byte) 0);
-            }
-        } catch (Exception e) {
-            Log.e(LOG_TAG, "## decryptMessage() failed " + e.getMessage());
-            throw new OlmException(OlmException.EXCEPTION_CODE_INBOUND_GROUP_SESSION_DECRYPT_SESSION, e.getMessage());
+        if (null == aEncryptedMsg) {
+            return aResult.fail(OlmErrorCode.INVALID_INPUT);
         }
 
-        return result;
+        return tryDecrypt(DECRYPT_MESSAGE, aEncryptedMsg.getBytes(StandardCharsets.UTF_8), 0, aEncryptedMsg.length(), aResult);
     }
 
     /**
      * Decrypt a message.
-     * An exception is thrown if the operation fails.
+     * No exception is thrown, the status, the message index and the already seen flag are set in aResult.
+     * @param aEncryptedMsg the encrypted message
+     * @param aResult the result receiving the decryption information
+     * @return the decrypted message, null if the operation failed
+     */
+    private native byte[] tryDecryptMessageJni(byte[] aEncryptedMsg, OlmDecryptResult aResult);
+
+    /**
+     * Decrypt a message written by {@link OlmOutboundGroupSession#encryptMessageRaw(String)}.
+     * @param aEncryptedMsg the raw message to be decrypted
+     * @return the decrypted message information
+     * @exception OlmException the failure reason
+     */
+    public DecryptMessageResult decryptMessageRaw(byte[] aEncryptedMsg) throws OlmException {
+        OlmDecryptResult decrypted = new OlmDecryptResult();
+        tryDecryptRaw(aEncryptedMsg, decrypted);
+        return toDecryptMessageResult(decrypted, "decryptMessageRaw");
+    }
+
+    /**
+     * Decrypt a message written by {@link OlmOutboundGroupSession#encryptMessageRaw(String)},
+     * without throwing on failure.<br>
+     * The message is left untouched, so it can be tried with several sessions.
+     * @param aEncryptedMsg the raw message to be decrypted
+     * @param aResult the result to fill with the message and its index, it can be reused across calls
+     * @return the status, {@link OlmErrorCode#SUCCESS} if aResult holds the decrypted message
+     */
+    public int tryDecryptRaw(byte[] aEncryptedMsg, OlmDecryptResult aResult) {
+        aResult.reset();
+
+        if (null == aEncryptedMsg) {
+            return aResult.fail(OlmErrorCode.INVALID_INPUT);
+        }
+
+        return tryDecrypt(DECRYPT_RAW, aEncryptedMsg, 0, aEncryptedMsg.length, aResult);
+    }
+
+    /**
+     * Decrypt a raw message.
+     * No exception is thrown, the status, the message index and the already seen flag are set in aResult.
+     * @param aEncryptedMsg the raw encrypted message
+     * @param aResult the result receiving the decryption information
+     * @return the decrypted message, null if the operation failed
+     */
+    private native byte[] tryDecryptMessageRawJni(byte[] aEncryptedMsg, OlmDecryptResult aResult);
+
+    /**
+     * Decrypt the message passed in parameter, concurrently with the other calls of this method.<br>
+     * Several threads can decrypt the backlog of one session at the same time: each decryption works on a private
+     * copy of the session ratchets, and the session itself is only locked to copy them in and out.<br>
+     * This method must not run at the same time as the other methods of this session, such as
+     * {@link #decryptMessage(String)} or {@link #tryDecrypt(String, OlmDecryptResult)}.
+     * @param aEncryptedMsg the message to be decrypted
+     * @return the decrypted message information
+     * @exception OlmException the failure reason
+     */
+    public DecryptMessageResult decryptMessageConcurrently(String aEncryptedMsg) throws OlmException {
+        OlmDecryptResult decrypted = new OlmDecryptResult();
+        tryDecryptConcurrently(aEncryptedMsg, decrypted);
+        return toDecryptMessageResult(decrypted, "decryptMessageConcurrently");
+    }
+
+    /**
+     * Decrypt the message passed in parameter without throwing on failure, concurrently with the other calls of
+     * this method, see {@link #decryptMessageConcurrently(String)}.
+     * @param aEncryptedMsg the message to be decrypted
+     * @param aResult the result to fill with the message and its index, it can be reused across calls
+     * @return the status, {@link OlmErrorCode#SUCCESS} if aResult holds the decrypted message
+     */
+    public int tryDecryptConcurrently(String aEncryptedMsg, OlmDecryptResult aResult) {
+        aResult.reset();
+
+        if (null == aEncryptedMsg) {
+            return aResult.fail(OlmErrorCode.INVALID_INPUT);
+        }
+
+        return tryDecrypt(DECRYPT_CONCURRENTLY, aEncryptedMsg.getBytes(StandardCharsets.UTF_8), 0, aEncryptedMsg.length(), aResult);
+    }
+
+    /**
+     * Decrypt a message with a private copy of the session ratchets.
+     * No exception is thrown, the status, the message index and the already seen flag are set in aResult.
      * @param aEncryptedMsg the encrypted message
-     * @param aDecryptMessageResult the decryptMessage information
-     * @return the decrypted message
+     * @param aResult the result receiving the decryption information
+     * @return the decrypted message, null if the operation failed
      */
-    private native byte[] decryptMessageJni(byte[] aEncryptedMsg, DecryptMessageResult aDecryptMessageResult);
+    private native byte[] tryDecryptMessageConcurrentlyJni(byte[] aEncryptedMsg, OlmDecryptResult aResult);
+
+    /**
+     * Decrypt a parsed message, without throwing on failure.<br>
+     * The message is not decoded again: its index can be read first, to order the messages of a session.
+     * @param aParsedMessage the message to be decrypted
+     * @param aResult the result to fill with the message and its index, it can be reused across calls
+     * @return the status, {@link OlmErrorCode#SUCCESS} if aResult holds the decrypted message
+     */
+    public int tryDecryptParsed(OlmGroupMessage aParsedMessage, OlmDecryptResult aResult) {
+        aResult.reset();
+
+        if ((null == aParsedMessage) || aParsedMessage.isReleased()) {
+            return aResult.fail(OlmErrorCode.INVALID_INPUT);
+        }
+
+        return tryDecrypt(DECRYPT_PARSED, null, aParsedMessage.getOlmGroupMessageId(), aParsedMessage.getLength(), aResult);
+    }
+
+    /**
+     * Decrypt a parsed message.
+     * No exception is thrown, the status, the message index and the already seen flag are set in aResult.
+     * @param aParsedMessageId the native parsed group message id
+     * @param aResult the result receiving the decryption information
+     * @return the decrypted message, null if the operation failed
+     */
+    private native byte[] tryDecryptParsedMessageJni(long aParsedMessageId, OlmDecryptResult aResult);
+
+    /**
+     * Run one of the native decryptions, with its metrics and trace.
+     * @param aMode the decryption, one of the DECRYPT_* values
+     * @param aEncryptedMsg the encrypted message, null for {@link #DECRYPT_PARSED}
+     * @param aParsedMessageId the native parsed group message id for {@link #DECRYPT_PARSED}
+     * @param aLength the message length, for the trace
+     * @param aResult the result to fill
+     * @return the status
+     */
+    private int tryDecrypt(int aMode, byte[] aEncryptedMsg, long aParsedMessageId, long aLength, OlmDecryptResult aResult) {
+        long start = OlmMetrics.start();
+        long traceStart = OlmTrace.begin(OlmTrace.EVENT_GROUP_DECRYPT);
+        byte[] decryptedMessageBuffer;
+
+        switch (aMode) {
+            case DECRYPT_RAW:
+                decryptedMessageBuffer = tryDecryptMessageRawJni(aEncryptedMsg, aResult);
+                break;
+            case DECRYPT_CONCURRENTLY:
+                decryptedMessageBuffer = tryDecryptMessageConcurrentlyJni(aEncryptedMsg, aResult);
+                break;
+            case DECRYPT_PARSED:
+                decryptedMessageBuffer = tryDecryptParsedMessageJni(aParsedMessageId, aResult);
+                break;
+            default:
+                decryptedMessageBuffer = tryDecryptMessageJni(aEncryptedMsg, aResult);
+                break;
+        }
+
+        String error = aResult.complete(decryptedMessageBuffer);
+
+        if (null != error) {
+            OlmMetrics.fail(OlmMetrics.OPERATION_GROUP_DECRYPT, start, error);
+            OlmTrace.end(traceStart, this, aLength, -1, error);
+        } else {
+            OlmMetrics.end(OlmMetrics.OPERATION_GROUP_DECRYPT, start);
+            OlmTrace.end(traceStart, this, aLength, traceIndexGap(aResult.mIndex), null);
+        }
+
+        return aResult.mStatus;
+    }
+
+    /**
+     * Convert the outcome of a decryption for the throwing methods.
+     * @param aDecrypted the decryption outcome
+     * @param aMethod the calling method name, for the log
+     * @return the decrypted message information
+     * @exception OlmException the failure reason
+     */
+    private static DecryptMessageResult toDecryptMessageResult(OlmDecryptResult aDecrypted, String aMethod) throws OlmException {
+        if (!aDecrypted.isSuccess()) {
+            Log.e(LOG_TAG, "## " + aMethod + "() failed " + OlmErrorCode.name(aDecrypted.mStatus));
+            throw OlmException.stackless(OlmException.EXCEPTION_CODE_INBOUND_GROUP_SESSION_DECRYPT_SESSION, OlmErrorCode.name(aDecrypted.mStatus));
+        }
+
+        DecryptMessageResult result = new DecryptMessageResult();
+        result.mDecryptedMessage = aDecrypted.mPlaintext;
+        result.mIndex = aDecrypted.mIndex;
+        result.mAlreadySeen = aDecrypted.mAlreadySeen;
+        return result;
+    }
 
     //==============================================================================================================
     // Serialization management
@@ -316,12 +942,20 @@ public class OlmInboundGroupSession extends CommonSerializeUtils implements Seri
             aErrorMsg.append("Invalid input parameters in serialize()");
         } else {
             aErrorMsg.setLength(0);
+            long start = OlmMetrics.start();
+            long traceStart = OlmTrace.begin(OlmTrace.EVENT_PICKLE);
             try {
                 pickleRetValue = serializeJni(aKey);
             } catch (Exception e) {
+                OlmMetrics.fail(OlmMetrics.OPERATION_PICKLE, start, e.getMessage());
+                OlmTrace.end(traceStart, this, -1, -1, e.getMessage());
                 Log.e(LOG_TAG, "## serialize() failed " + e.getMessage());
                 aErrorMsg.append(e.getMessage());
+                return null;
             }
+
+            OlmMetrics.end(OlmMetrics.OPERATION_PICKLE, start);
+            OlmTrace.end(traceStart, this, (null == pickleRetValue) ? -1 : pickleRetValue.length, -1, null);
         }
 
         return pickleRetValue;
@@ -342,6 +976,8 @@ public class OlmInboundGroupSession extends CommonSerializeUtils implements Seri
     @Override
     protected void deserialize(byte[] aSerializedData, byte[] aKey) throws Exception {
         String errorMsg = null;
+        long start = OlmMetrics.start();
+        long traceStart = OlmTrace.begin(OlmTrace.EVENT_PICKLE);
 
         try {
             if ((null == aSerializedData) || (null == aKey)) {
@@ -356,9 +992,14 @@ public class OlmInboundGroupSession extends CommonSerializeUtils implements Seri
         }
 
         if (!TextUtils.isEmpty(errorMsg)) {
+            OlmMetrics.fail(OlmMetrics.OPERATION_UNPICKLE, start, errorMsg);
+            OlmTrace.end(traceStart, null, (null == aSerializedData) ? -1 : aSerializedData.length, -1, errorMsg);
             releaseSession();
             throw new OlmException(OlmException.EXCEPTION_CODE_ACCOUNT_DESERIALIZATION, errorMsg);
         }
+
+        OlmMetrics.end(OlmMetrics.OPERATION_UNPICKLE, start);
+        OlmTrace.end(traceStart, this, aSerializedData.length, -1, null);
     }
 
     /**
@@ -31,6 +31,9 @@ public class OlmMessage {
     /** the encrypted message **/
     public String mCipherText;
 
+    /** the encrypted message without the base64 encoding, see {@link OlmSession#encryptMessageRaw(String)} **/
+    public byte[] mRawCipherText;
+
     /** defined by {@link #MESSAGE_TYPE_MESSAGE} or {@link #MESSAGE_TYPE_PRE_KEY}**/
     public long mType;
 }
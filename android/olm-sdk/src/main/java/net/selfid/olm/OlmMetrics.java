@@ -0,0 +1,343 @@
+/*
+ * Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.selfid.olm;
+
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process wide counters and latency histograms of the crypto operations.<br>
+ * Metrics are off by default. While they are off, an instrumented operation only reads a
+ * volatile flag, so they can be left in production builds and turned on when needed
+ * with {@link #setEnabled(boolean)}.<br>
+ * The figures are pulled with {@link #snapshot()}, or pushed to a {@link Listener} as each
+ * operation completes.<br>
+ * The native library must have been loaded, by creating an {@link OlmManager}, before
+ * metrics are turned on.
+ */
+public class OlmMetrics {
+    private static final String LOG_TAG = "OlmMetrics";
+
+    // instrumented operations
+    public static final int OPERATION_SESSION_ENCRYPT = 0;
+    public static final int OPERATION_SESSION_DECRYPT = 1;
+    public static final int OPERATION_GROUP_ENCRYPT = 2;
+    public static final int OPERATION_GROUP_DECRYPT = 3;
+    public static final int OPERATION_PICKLE = 4;
+    public static final int OPERATION_UNPICKLE = 5;
+    public static final int OPERATION_GENERATE_ONE_TIME_KEYS = 6;
+    public static final int OPERATION_VERIFY_SIGNATURE = 7;
+    public static final int OPERATION_PK_ENCRYPT = 8;
+    public static final int OPERATION_PK_DECRYPT = 9;
+    public static final int OPERATION_PK_SIGN = 10;
+    public static final int OPERATION_COUNT = 11;
+
+    private static final String[] OPERATION_NAMES = {
+            "session_encrypt",
+            "session_decrypt",
+            "group_encrypt",
+            "group_decrypt",
+            "pickle",
+            "unpickle",
+            "generate_one_time_keys",
+            "verify_signature",
+            "pk_encrypt",
+            "pk_decrypt",
+            "pk_sign"
+    };
+
+    // native counters, in the order of the native OlmMetricsCounter enum
+    /** Olm chain key advances, one HMAC-SHA-256 each **/
+    public static final int NATIVE_CHAIN_KEY_ADVANCES = 0;
+    /** Olm root key ratchet steps, one ECDH and one HKDF each **/
+    public static final int NATIVE_ROOT_KEY_RATCHETS = 1;
+    /** Megolm ratchet part rehashes, one HMAC-SHA-256 each **/
+    public static final int NATIVE_MEGOLM_HASHES = 2;
+    /** Plaintext bytes encrypted by the native objects **/
+    public static final int NATIVE_BYTES_ENCRYPTED = 3;
+    /** Plaintext bytes decrypted by the native objects **/
+    public static final int NATIVE_BYTES_DECRYPTED = 4;
+    public static final int NATIVE_COUNTER_COUNT = 5;
+
+    /**
+     * Number of latency histogram buckets.<br>
+     * Bucket 0 counts the operations that took less than 1 microsecond, bucket i the ones
+     * that took from 2^(i-1) to 2^i microseconds, and the last bucket everything slower.
+     */
+    public static final int HISTOGRAM_BUCKETS = 24;
+
+    /**
+     * Receives each instrumented operation as it completes.<br>
+     * It is called on the thread that ran the operation, so it must return quickly.
+     */
+    public interface Listener {
+        /**
+         * An operation completed.
+         * @param aOperation the operation, one of the OPERATION_* values
+         * @param aDurationNanos the operation duration
+         * @param aError null if the operation succeeded, the failure reason otherwise: an
+         * {@link OlmErrorCode} name, "UNKNOWN_ERROR" when the failure has no status code
+         */
+        void onOperation(int aOperation, long aDurationNanos, String aError);
+    }
+
+    /**
+     * Point in time copy of the metrics, returned by {@link #snapshot()}.<br>
+     * The arrays are indexed by the OPERATION_* values, and {@link #mNativeCounters} by the NATIVE_* values.
+     */
+    public static class Snapshot {
+        /** number of calls, failed ones included **/
+        public long[] mCounts;
+
+        /** number of failed calls **/
+        public long[] mFailures;
+
+        /** cumulated duration of the calls **/
+        public long[] mTotalNanos;
+
+        /** latency histograms, see {@link #HISTOGRAM_BUCKETS} **/
+        public long[][] mHistograms;
+
+        /** number of failures of any operation, by failure reason: the {@link OlmErrorCode} name
+         (e.g. "BAD_MESSAGE_MAC"), "UNKNOWN_ERROR" for the failures without a status code **/
+        public Map<String, Long> mFailuresByError;
+
+        /** native counter values **/
+        public long[] mNativeCounters;
+
+        /**
+         * Return an upper bound of a latency percentile, from the histogram of an operation.
+         * @param aOperation the operation
+         * @param aPercentile the percentile, between 0 and 100
+         * @return the upper bound in microseconds, 0 if the operation was never called,
+         * Long.MAX_VALUE if the percentile falls in the last bucket
+         */
+        public long percentileMicros(int aOperation, double aPercentile) {
+            long[] histogram = mHistograms[aOperation];
+            long threshold = (long) Math.ceil(mCounts[aOperation] * aPercentile / 100);
+            long cumulated = 0;
+
+            if (0 == mCounts[aOperation]) {
+                return 0;
+            }
+
+            for (int i = 0; i < HISTOGRAM_BUCKETS - 1; i++) {
+                cumulated += histogram[i];
+                if (cumulated >= threshold) {
+                    return 1L << i;
+                }
+            }
+
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static volatile boolean mEnabled;
+    private static volatile Listener mListener;
+
+    private static final AtomicLongArray mCounts = new AtomicLongArray(OPERATION_COUNT);
+    private static final AtomicLongArray mFailures = new AtomicLongArray(OPERATION_COUNT);
+    private static final AtomicLongArray mTotalNanos = new AtomicLongArray(OPERATION_COUNT);
+    private static final AtomicLongArray mHistograms = new AtomicLongArray(OPERATION_COUNT * HISTOGRAM_BUCKETS);
+    private static final ConcurrentHashMap<String, AtomicLong> mFailuresByError = new ConcurrentHashMap<>();
+
+    private OlmMetrics() {
+    }
+
+    /**
+     * Turn the metrics on or off, both the Java and the native ones.<br>
+     * The collected figures are kept when the metrics are turned off.
+     * @param aEnabled true to collect metrics
+     */
+    public static void setEnabled(boolean aEnabled) {
+        mEnabled = aEnabled;
+        setNativeEnabledJni(aEnabled);
+    }
+
+    /**
+     * @return true if the metrics are on
+     */
+    public static boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Set the listener told about each operation while the metrics are on.
+     * @param aListener the listener, null to remove it
+     */
+    public static void setListener(Listener aListener) {
+        mListener = aListener;
+    }
+
+    /**
+     * Return the name of an operation, for logs and exported metrics.
+     * @param aOperation the operation
+     * @return the operation name
+     */
+    public static String operationName(int aOperation) {
+        return OPERATION_NAMES[aOperation];
+    }
+
+    /**
+     * Copy the current figures.
+     * @return the snapshot
+     */
+    public static Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot();
+
+        snapshot.mCounts = new long[OPERATION_COUNT];
+        snapshot.mFailures = new long[OPERATION_COUNT];
+        snapshot.mTotalNanos = new long[OPERATION_COUNT];
+        snapshot.mHistograms = new long[OPERATION_COUNT][HISTOGRAM_BUCKETS];
+
+        for (int operation = 0; operation < OPERATION_COUNT; operation++) {
+            snapshot.mCounts[operation] = mCounts.get(operation);
+            snapshot.mFailures[operation] = mFailures.get(operation);
+            snapshot.mTotalNanos[operation] = mTotalNanos.get(operation);
+
+            for (int bucket = 0; bucket < HISTOGRAM_BUCKETS; bucket++) {
+                snapshot.mHistograms[operation][bucket] = mHistograms.get(operation * HISTOGRAM_BUCKETS + bucket);
+            }
+        }
+
+        snapshot.mFailuresByError = new HashMap<>();
+        for (Map.Entry<String, AtomicLong> entry : mFailuresByError.entrySet()) {
+            snapshot.mFailuresByError.put(entry.getKey(), entry.getValue().get());
+        }
+
+        try {
+            snapshot.mNativeCounters = nativeCountersJni();
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "## snapshot(): failed " + e.getMessage());
+        }
+
+        if (null == snapshot.mNativeCounters) {
+            snapshot.mNativeCounters = new long[NATIVE_COUNTER_COUNT];
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Set all the figures, Java and native, back to zero.
+     */
+    public static void reset() {
+        for (int i = 0; i < OPERATION_COUNT; i++) {
+            mCounts.set(i, 0);
+            mFailures.set(i, 0);
+            mTotalNanos.set(i, 0);
+        }
+
+        for (int i = 0; i < mHistograms.length(); i++) {
+            mHistograms.set(i, 0);
+        }
+
+        mFailuresByError.clear();
+        resetNativeCountersJni();
+    }
+
+    /**
+     * Start timing an operation.
+     * @return the start time to give to {@link #end(int, long)} or {@link #fail(int, long, String)},
+     * 0 if the metrics are off
+     */
+    static long start() {
+        return mEnabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Record a successful operation.
+     * @param aOperation the operation
+     * @param aStart the value returned by {@link #start()}
+     */
+    static void end(int aOperation, long aStart) {
+        if (0 != aStart) {
+            record(aOperation, System.nanoTime() - aStart, null);
+        }
+    }
+
+    /**
+     * Record a failed operation.
+     * @param aOperation the operation
+     * @param aStart the value returned by {@link #start()}
+     * @param aError the failure reason, counted under "UNKNOWN_ERROR" if it is not an
+     * {@link OlmErrorCode} name so that free-form messages do not grow the failure table
+     */
+    static void fail(int aOperation, long aStart, String aError) {
+        if (0 != aStart) {
+            record(aOperation, System.nanoTime() - aStart, OlmErrorCode.isName(aError) ? aError : "UNKNOWN_ERROR");
+        }
+    }
+
+    private static void record(int aOperation, long aDurationNanos, String aError) {
+        mCounts.incrementAndGet(aOperation);
+        mTotalNanos.addAndGet(aOperation, aDurationNanos);
+        mHistograms.incrementAndGet(aOperation * HISTOGRAM_BUCKETS + bucket(aDurationNanos));
+
+        if (null != aError) {
+            mFailures.incrementAndGet(aOperation);
+
+            AtomicLong failures = mFailuresByError.get(aError);
+            if (null == failures) {
+                AtomicLong newFailures = new AtomicLong();
+                failures = mFailuresByError.putIfAbsent(aError, newFailures);
+                if (null == failures) {
+                    failures = newFailures;
+                }
+            }
+            failures.incrementAndGet();
+        }
+
+        Listener listener = mListener;
+        if (null != listener) {
+            try {
+                listener.onOperation(aOperation, aDurationNanos, aError);
+            } catch (Exception e) {
+                Log.e(LOG_TAG, "## record(): listener failed " + e.getMessage());
+            }
+        }
+    }
+
+    private static int bucket(long aDurationNanos) {
+        long micros = aDurationNanos / 1000;
+        int bucket = (micros <= 0) ? 0 : 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, HISTOGRAM_BUCKETS - 1);
+    }
+
+    /**
+     * Turn the native counters on or off.
+     * @param aEnabled true to count
+     */
+    private static native void setNativeEnabledJni(boolean aEnabled);
+
+    /**
+     * Read the native counters.
+     * @return the counter values, indexed by the NATIVE_* values
+     */
+    private static native long[] nativeCountersJni();
+
+    /**
+     * Set the native counters back to zero.
+     */
+    private static native void resetNativeCountersJni();
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.selfid.olm;
+
+import android.util.Log;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the one time keys of an {@link OlmAccount} generated ahead of time.<br>
+ * The server is expected to hold a target number of one time keys. The replenisher is told
+ * how many it holds, by {@link #setServerKeyCount(int)} after each sync and by
+ * {@link #removeOneTimeKeys(OlmSession)} when a claimed key is used, and it generates the
+ * missing keys on a single low priority daemon thread. Key generation is therefore never
+ * on the path of a sync.<br>
+ * The upload is done in three steps:
+ * <ol>
+ * <li>{@link #takeUploadBatch()} returns all the unpublished keys and pauses the generation,
+ * so that no key is created in the meantime;</li>
+ * <li>the caller uploads the batch;</li>
+ * <li>{@link #onUploadSucceeded(OlmAccount.OneTimeKeys, int)} marks the keys as published,
+ * or {@link #onUploadFailed(OlmAccount.OneTimeKeys)} keeps them for the next batch.
+ * Either call resumes the generation.</li>
+ * </ol>
+ * The replenisher uses the account on its own thread: every access to the account is made
+ * while holding the account monitor, and other threads using the account must synchronize on
+ * it as well.
+ */
+public class OlmOneTimeKeyReplenisher {
+    private static final String LOG_TAG = "OlmOneTimeKeyReplenisher";
+
+    // number of keys generated per account lock
+    private static final int GENERATION_CHUNK = 10;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final OlmAccount mAccount;
+    private final int mTargetCount;
+    private final ThreadPoolExecutor mExecutor;
+    private final AtomicBoolean mRefillPending = new AtomicBoolean();
+
+    // guarded by mAccount
+    private int mServerCount;
+    private OlmAccount.OneTimeKeys mPendingBatch;
+
+    private final Runnable mRefill = new Runnable() {
+        @Override
+        public void run() {
+            mRefillPending.set(false);
+
+            try {
+                while (generateChunk()) {
+                    // release the account between the chunks
+                }
+            } catch (OlmException e) {
+                Log.e(LOG_TAG, "## refill(): failed " + e.getMessage());
+            }
+        }
+    };
+
+    /**
+     * Constructor.<br>
+     * The first keys are generated in the background; the server is assumed to hold no key
+     * until {@link #setServerKeyCount(int)} is called.
+     * @param aAccount the account, which must outlive the replenisher
+     * @param aTargetCount number of keys the server should hold, capped to half of
+     *                     {@link OlmAccount#maxOneTimeKeys()} so that generating keys never
+     *                     discards the published keys that haven't been claimed yet
+     * @exception OlmException if the account is invalid
+     */
+    public OlmOneTimeKeyReplenisher(OlmAccount aAccount, int aTargetCount) throws OlmException {
+        if ((null == aAccount) || aAccount.isReleased() || (aTargetCount <= 0)) {
+            Log.e(LOG_TAG, "## OlmOneTimeKeyReplenisher(): invalid input parameters");
+            throw new OlmException(OlmException.EXCEPTION_CODE_ACCOUNT_GENERATE_ONE_TIME_KEYS, "invalid input parameters");
+        }
+
+        mAccount = aAccount;
+        mTargetCount = (int) Math.min(aTargetCount, aAccount.maxOneTimeKeys() / 2);
+        mExecutor = new ThreadPoolExecutor(0, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ReplenisherThreadFactory());
+
+        refill();
+    }
+
+    /**
+     * @return the number of keys the server should hold
+     */
+    public int getTargetCount() {
+        return mTargetCount;
+    }
+
+    /**
+     * @return the number of unpublished keys, ready to be uploaded
+     */
+    public int getReadyKeyCount() {
+        synchronized (mAccount) {
+            return Math.max(0, mAccount.oneTimeKeysCount(true));
+        }
+    }
+
+    /**
+     * Update the number of one time keys held by the server, as reported by the last sync.
+     * The missing keys are generated in the background.
+     * @param aServerCount number of keys on the server
+     */
+    public void setServerKeyCount(int aServerCount) {
+        synchronized (mAccount) {
+            mServerCount = Math.max(0, aServerCount);
+        }
+
+        refill();
+    }
+
+    /**
+     * Remove the one time key used by an inbound session, see {@link OlmAccount#removeOneTimeKeys(OlmSession)}.<br>
+     * The key has been claimed from the server, so a replacement is generated in the background.
+     * @param aSession the inbound session
+     * @exception OlmException the failure reason
+     */
+    public void removeOneTimeKeys(OlmSession aSession) throws OlmException {
+        synchronized (mAccount) {
+            mAccount.removeOneTimeKeys(aSession);
+            mServerCount = Math.max(0, mServerCount - 1);
+        }
+
+        refill();
+    }
+
+    /**
+     * Return the unpublished keys to upload, and pause the generation until the upload
+     * result is reported.
+     * @return the keys, null if there is nothing to upload or if a batch is already being uploaded
+     * @exception OlmException the failure reason
+     */
+    public OlmAccount.OneTimeKeys takeUploadBatch() throws OlmException {
+        synchronized (mAccount) {
+            if (null != mPendingBatch) {
+                return null;
+            }
+
+            int count = mAccount.oneTimeKeysCount(true);
+
+            if (count <= 0) {
+                return null;
+            }
+
+            mPendingBatch = mAccount.oneTimeKeys(0, count, true);
+            return mPendingBatch;
+        }
+    }
+
+    /**
+     * Report that a batch has been uploaded: its keys are marked as published and the
+     * generation resumes.
+     * @param aBatch the batch returned by {@link #takeUploadBatch()}
+     * @param aServerCount number of keys on the server after the upload
+     * @exception OlmException the failure reason
+     */
+    public void onUploadSucceeded(OlmAccount.OneTimeKeys aBatch, int aServerCount) throws OlmException {
+        synchronized (mAccount) {
+            if (!isPendingBatch(aBatch)) {
+                return;
+            }
+
+            try {
+                mAccount.markOneTimeKeysAsPublished();
+                mServerCount = Math.max(0, aServerCount);
+            } finally {
+                mPendingBatch = null;
+            }
+        }
+
+        refill();
+    }
+
+    /**
+     * Report that a batch couldn't be uploaded: its keys stay unpublished, they are part
+     * of the next batch, and the generation resumes.
+     * @param aBatch the batch returned by {@link #takeUploadBatch()}
+     */
+    public void onUploadFailed(OlmAccount.OneTimeKeys aBatch) {
+        synchronized (mAccount) {
+            if (!isPendingBatch(aBatch)) {
+                return;
+            }
+
+            mPendingBatch = null;
+        }
+
+        refill();
+    }
+
+    /**
+     * Stop the background generation.<br>
+     * The generated keys stay in the account.
+     */
+    public void shutdown() {
+        mExecutor.shutdown();
+    }
+
+    private boolean isPendingBatch(OlmAccount.OneTimeKeys aBatch) {
+        if ((null == aBatch) || (aBatch != mPendingBatch)) {
+            Log.e(LOG_TAG, "## isPendingBatch(): unknown batch");
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Generate up to {@link #GENERATION_CHUNK} of the missing keys.
+     * @return true if more keys are missing
+     * @exception OlmException the failure reason
+     */
+    private boolean generateChunk() throws OlmException {
+        synchronized (mAccount) {
+            if ((null != mPendingBatch) || mAccount.isReleased() || mExecutor.isShutdown()) {
+                return false;
+            }
+
+            int missing = mTargetCount - mServerCount - mAccount.oneTimeKeysCount(true);
+
+            if (missing <= 0) {
+                return false;
+            }
+
+            int count = Math.min(missing, GENERATION_CHUNK);
+            mAccount.generateOneTimeKeys(count);
+            return missing > count;
+        }
+    }
+
+    private void refill() {
+        if (mRefillPending.compareAndSet(false, true)) {
+            try {
+                mExecutor.execute(mRefill);
+            } catch (RejectedExecutionException e) {
+                mRefillPending.set(false);
+            }
+        }
+    }
+
+    private static class ReplenisherThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable aRunnable) {
+            Thread thread = new Thread(aRunnable, "olm-one-time-keys");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    }
+}
@@ -44,6 +44,9 @@ public class OlmOutboundGroupSession extends CommonSerializeUtils implements Ser
      */
     private transient long mNativeId;
 
+    /** hash of the session identifier for the trace sections, 0 until computed **/
+    private transient int mTraceHash;
+
     /**
      * Constructor.<br>
      * Create and save a new session native instance ID and
@@ -51,11 +54,15 @@ public class OlmOutboundGroupSession extends CommonSerializeUtils implements Ser
      * @throws OlmException constructor failure
      */
     public OlmOutboundGroupSession() throws OlmException {
+        long traceStart = OlmTrace.begin(OlmTrace.EVENT_SESSION_CREATE);
         try {
             mNativeId = createNewSessionJni();
         } catch (Exception e) {
+            OlmTrace.end(traceStart, null, -1, -1, e.getMessage());
             throw new OlmException(OlmException.EXCEPTION_CODE_CREATE_OUTBOUND_GROUP_SESSION, e.getMessage());
         }
+
+        OlmTrace.end(traceStart, this, -1, -1, null);
     }
 
     /**
@@ -107,6 +114,22 @@ public class OlmOutboundGroupSession extends CommonSerializeUtils implements Ser
         }
     }
 
+    /**
+     * @return the hash of the session identifier, computed once, 0 if it is not available
+     */
+    int traceHash() {
+        if ((0 == mTraceHash) && !isReleased()) {
+            try {
+                String sessionId = sessionIdentifier();
+                mTraceHash = (null == sessionId) ? 0 : sessionId.hashCode();
+            } catch (Exception e) {
+                return 0;
+            }
+        }
+
+        return mTraceHash;
+    }
+
     /**
      * Return the session identifier.
      * An exception is thrown if the operation fails.
@@ -170,6 +193,8 @@ public class OlmOutboundGroupSession extends CommonSerializeUtils implements Ser
         String retValue = null;
 
         if (!TextUtils.isEmpty(aClearMsg)) {
+            long start = OlmMetrics.start();
+
             try {
                 byte[] clearMsgBuffer = aClearMsg.getBytes("UTF-8");
                 byte[] encryptedBuffer = encryptMessageJni(clearMsgBuffer);
@@ -178,7 +203,9 @@ public class OlmOutboundGroupSession extends CommonSerializeUtils implements Ser
                 if (null != encryptedBuffer) {
                     retValue = new String(encryptedBuffer , "UTF-8");
                 }
+                OlmMetrics.end(OlmMetrics.OPERATION_GROUP_ENCRYPT, start);
             } catch (Exception e) {
+                OlmMetrics.fail(OlmMetrics.OPERATION_GROUP_ENCRYPT, start, e.getMessage());
                 Log.e(LOG_TAG, "## encryptMessage() failed " + e.getMessage());
                 throw new OlmException(OlmException.EXCEPTION_CODE_OUTBOUND_GROUP_ENCRYPT_MESSAGE, e.getMessage());
             }
@@ -195,6 +222,44 @@ public class OlmOutboundGroupSession extends CommonSerializeUtils implements Ser
      */
     private native byte[] encryptMessageJni(byte[] aClearMsgBuffer);
 
+    /**
+     * Encrypt some plain-text message, without the base64 encoding.<br>
+     * Meant for transports which carry bytes: the message is a quarter smaller (3/4 of the size) than
+     * the one of {@link #encryptMessage(String)}, and it is decrypted by
+     * {@link OlmInboundGroupSession#decryptMessageRaw(byte[])}.
+     * @param aClearMsg message to be encrypted
+     * @return the raw encrypted message
+     * @exception OlmException the encryption failure reason
+     */
+    public byte[] encryptMessageRaw(String aClearMsg) throws OlmException {
+        byte[] retValue = null;
+
+        if (!TextUtils.isEmpty(aClearMsg)) {
+            long start = OlmMetrics.start();
+
+            try {
+                byte[] clearMsgBuffer = aClearMsg.getBytes("UTF-8");
+                retValue = encryptMessageRawJni(clearMsgBuffer);
+                Arrays.fill(clearMsgBuffer, (byte) 0);
+                OlmMetrics.end(OlmMetrics.OPERATION_GROUP_ENCRYPT, start);
+            } catch (Exception e) {
+                OlmMetrics.fail(OlmMetrics.OPERATION_GROUP_ENCRYPT, start, e.getMessage());
+                Log.e(LOG_TAG, "## encryptMessageRaw() failed " + e.getMessage());
+                throw new OlmException(OlmException.EXCEPTION_CODE_OUTBOUND_GROUP_ENCRYPT_MESSAGE, e.getMessage());
+            }
+        }
+
+        return retValue;
+    }
+
+    /**
+     * Encrypt a bytes buffer message, without the base64 encoding.
+     * An exception is thrown if the operation fails.
+     * @param aClearMsgBuffer  the message to encode
+     * @return the raw encrypted message
+     */
+    private native byte[] encryptMessageRawJni(byte[] aClearMsgBuffer);
+
     //==============================================================================================================
     // Serialization management
     //==============================================================================================================
@@ -236,12 +301,20 @@ public class OlmOutboundGroupSession extends CommonSerializeUtils implements Ser
         } else if (null == aKey) {
             aErrorMsg.append("Invalid input parameters in serialize()");
         } else {
+            long start = OlmMetrics.start();
+            long traceStart = OlmTrace.begin(OlmTrace.EVENT_PICKLE);
             try {
                 pickleRetValue = serializeJni(aKey);
             } catch (Exception e) {
+                OlmMetrics.fail(OlmMetrics.OPERATION_PICKLE, start, e.getMessage());
+                OlmTrace.end(traceStart, this, -1, -1, e.getMessage());
                 Log.e(LOG_TAG,"## serialize(): failed " + e.getMessage());
                 aErrorMsg.append(e.getMessage());
+                return null;
             }
+
+            OlmMetrics.end(OlmMetrics.OPERATION_PICKLE, start);
+            OlmTrace.end(traceStart, this, (null == pickleRetValue) ? -1 : pickleRetValue.length, -1, null);
         }
 
         return pickleRetValue;
@@ -265,6 +338,8 @@ public class OlmOutboundGroupSession extends CommonSerializeUtils implements Ser
     @Override
     protected void deserialize(byte[] aSerializedData, byte[] aKey) throws Exception {
         String errorMsg = null;
+        long start = OlmMetrics.start();
+        long traceStart = OlmTrace.begin(OlmTrace.EVENT_PICKLE);
 
         try {
             if ((null == aSerializedData) || (null == aKey)) {
@@ -279,9 +354,14 @@ public class OlmOutboundGroupSession extends CommonSerializeUtils implements Ser
         }
 
         if (!TextUtils.isEmpty(errorMsg)) {
+            OlmMetrics.fail(OlmMetrics.OPERATION_UNPICKLE, start, errorMsg);
+            OlmTrace.end(traceStart, null, (null == aSerializedData) ? -1 : aSerializedData.length, -1, errorMsg);
             releaseSession();
             throw new OlmException(OlmException.EXCEPTION_CODE_ACCOUNT_DESERIALIZATION, errorMsg);
         }
+
+        OlmMetrics.end(OlmMetrics.OPERATION_UNPICKLE, start);
+        OlmTrace.end(traceStart, this, aSerializedData.length, -1, null);
     }
 
     /**
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.selfid.olm;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An Olm message decoded once in native code.<br>
+ * The base64 and the headers are decoded when the object is created, so the keys and the
+ * counter of the message can be read to route it, and the message can be matched against
+ * and decrypted by several sessions, without decoding it again each time.
+ * See {@link OlmSession#matchesInboundParsedSessionFrom(String, OlmParsedMessage)} and
+ * {@link OlmSession#tryDecryptParsed(OlmParsedMessage, OlmDecryptResult)}.
+ */
+public class OlmParsedMessage {
+    private static final int KEY_RATCHET = 0;
+    private static final int KEY_BASE = 1;
+    private static final int KEY_ONE_TIME = 2;
+    private static final int KEY_IDENTITY = 3;
+
+    /**
+     * Parsed message Id returned by JNI.
+     * This value uniquely identifies the native parsed message instance.
+     **/
+    private transient long mNativeId;
+
+    /** defined by {@link OlmMessage#MESSAGE_TYPE_MESSAGE} or {@link OlmMessage#MESSAGE_TYPE_PRE_KEY} **/
+    private final long mType;
+
+    /** length of the base64 message **/
+    private final int mLength;
+
+    /**
+     * Decode a message.
+     * @param aMessage the message
+     * @throws OlmException the failure reason
+     */
+    public OlmParsedMessage(OlmMessage aMessage) throws OlmException {
+        if ((null == aMessage) || (null == aMessage.mCipherText)) {
+            throw new OlmException(OlmException.EXCEPTION_CODE_PARSED_MESSAGE_CREATION, "invalid message");
+        }
+
+        mType = aMessage.mType;
+        mLength = aMessage.mCipherText.length();
+
+        try {
+            mNativeId = createNewParsedMessageJni(aMessage.mCipherText.getBytes(StandardCharsets.UTF_8), aMessage.mType);
+        } catch (Exception e) {
+            throw new OlmException(OlmException.EXCEPTION_CODE_PARSED_MESSAGE_CREATION, e.getMessage());
+        }
+    }
+
+    /**
+     * Decode a message into a native parsed message.<br>
+     * Do not forget to call {@link #releaseParsedMessageJni()} when JAVA side is done.
+     * @param aCipherText the base64 message
+     * @param aType the message type
+     * @return native parsed message instance identifier or throw an exception.
+     */
+    private native long createNewParsedMessageJni(byte[] aCipherText, long aType);
+
+    /**
+     * Destroy the corresponding native parsed message.<br>
+     * This method must ALWAYS be called when this JAVA instance
+     * is destroyed (ie. garbage collected) to prevent memory leak in native side.
+     * See {@link #createNewParsedMessageJni(byte[], long)}.
+     */
+    private native void releaseParsedMessageJni();
+
+    /**
+     * Release native parsed message and invalid its JAVA reference counter part.<br>
+     * Public API for {@link #releaseParsedMessageJni()}.
+     */
+    public void releaseMessage() {
+        if (0 != mNativeId) {
+            releaseParsedMessageJni();
+        }
+        mNativeId = 0;
+    }
+
+    /**
+     * Return true the object resources have been released.<br>
+     * @return true the object resources have been released
+     */
+    public boolean isReleased() {
+        return (0 == mNativeId);
+    }
+
+    /**
+     * Getter on the native parsed message id.
+     * @return native parsed message id
+     */
+    long getOlmParsedMessageId() {
+        return mNativeId;
+    }
+
+    /**
+     * @return the length of the base64 message
+     */
+    int getLength() {
+        return mLength;
+    }
+
+    /**
+     * @return {@link OlmMessage#MESSAGE_TYPE_MESSAGE} or {@link OlmMessage#MESSAGE_TYPE_PRE_KEY}
+     */
+    public long getType() {
+        return mType;
+    }
+
+    /**
+     * @return the position of the message in its sending chain
+     * @throws OlmException the failure reason
+     */
+    public long getCounter() throws OlmException {
+        try {
+            return counterJni();
+        } catch (Exception e) {
+            throw new OlmException(OlmException.EXCEPTION_CODE_PARSED_MESSAGE_CREATION, e.getMessage());
+        }
+    }
+
+    /**
+     * Provide the chain counter.
+     * An exception is thrown if the operation fails.
+     * @return the chain counter
+     */
+    private native long counterJni();
+
+    /**
+     * @return the Curve25519 ratchet key of the sender, base64 encoded
+     */
+    public String getRatchetKey() {
+        return key(KEY_RATCHET);
+    }
+
+    /**
+     * @return the Curve25519 base key of a pre-key message, base64 encoded, null for a normal message
+     */
+    public String getBaseKey() {
+        return key(KEY_BASE);
+    }
+
+    /**
+     * @return the public one time key of the receiving account used by a pre-key message,
+     * base64 encoded, null for a normal message
+     */
+    public String getOneTimeKey() {
+        return key(KEY_ONE_TIME);
+    }
+
+    /**
+     * @return the Curve25519 identity key of the sender of a pre-key message,
+     * base64 encoded, null for a normal message
+     */
+    public String getIdentityKey() {
+        return key(KEY_IDENTITY);
+    }
+
+    private String key(int aKey) {
+        byte[] key = keyJni(aKey);
+        return (null == key) ? null : new String(key, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Provide a key of the message.<br>
+     * No exception is thrown.
+     * @param aKey the key identifier
+     * @return the base64 key, null if the message doesn't carry it
+     */
+    private native byte[] keyJni(int aKey);
+}
@@ -18,11 +18,30 @@ package net.selfid.olm;
 
 import android.util.Log;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 public class OlmPkDecryption {
     private static final String LOG_TAG = "OlmPkDecryption";
 
+    /** max number of messages given to the native side at once by {@link #decryptBatch(String[], String[], String[], int)} **/
+    private static final int BATCH_CHUNK_SIZE = 1024;
+
+    /**
+     * Result of {@link #decryptBatch(String[], String[], String[], int)}.<br>
+     * The arrays are indexed as the messages of the batch.
+     */
+    public static class BatchResult {
+        /** the plaintexts, null for the messages which failed **/
+        public String[] mPlaintexts;
+
+        /** the status of each message, {@link OlmErrorCode#SUCCESS} or the failure reason **/
+        public int[] mStatuses;
+
+        /** number of messages decrypted **/
+        public int mSuccessCount;
+    }
+
     /** Session Id returned by JNI.
      * This value uniquely identifies the native session instance.
      **/
@@ -93,17 +112,118 @@ public class OlmPkDecryption {
             return null;
         }
 
-        byte[] plaintextBuffer = decryptJni(aMessage);
-        try {
-            String plaintext = new String(plaintextBuffer, "UTF-8");
-            return plaintext;
-        } catch (Exception e) {
-            Log.e(LOG_TAG, "## pkDecrypt(): failed " + e.getMessage());
-            throw new OlmException(OlmException.EXCEPTION_CODE_PK_DECRYPTION_DECRYPT, e.getMessage());
-        } finally {
-            Arrays.fill(plaintextBuffer, (byte) 0);
+        OlmDecryptResult result = new OlmDecryptResult();
+
+        if (OlmErrorCode.SUCCESS != tryDecrypt(aMessage, result)) {
+            Log.e(LOG_TAG, "## pkDecrypt(): failed " + OlmErrorCode.name(result.mStatus));
+            throw OlmException.stackless(OlmException.EXCEPTION_CODE_PK_DECRYPTION_DECRYPT, OlmErrorCode.name(result.mStatus));
+        }
+
+        return result.mPlaintext;
+    }
+
+    /**
+     * Decrypt a message, without throwing on failure.<br>
+     * Meant for trial decryption with several keys: a failure costs no exception and no error log.
+     * @param aMessage the message to decrypt
+     * @param aResult the result to fill, it can be reused across calls
+     * @return the status, {@link OlmErrorCode#SUCCESS} if aResult holds the decrypted message
+     */
+    public int tryDecrypt(OlmPkMessage aMessage, OlmDecryptResult aResult) {
+        aResult.reset();
+
+        if (null == aMessage) {
+            return aResult.fail(OlmErrorCode.INVALID_INPUT);
+        }
+
+        long start = OlmMetrics.start();
+        String error = aResult.complete(tryDecryptJni(aMessage, aResult));
+
+        if (null != error) {
+            OlmMetrics.fail(OlmMetrics.OPERATION_PK_DECRYPT, start, error);
+        } else {
+            OlmMetrics.end(OlmMetrics.OPERATION_PK_DECRYPT, start);
         }
+
+        return aResult.mStatus;
+    }
+
+    private native byte[] tryDecryptJni(OlmPkMessage aMessage, OlmDecryptResult aResult);
+
+    /**
+     * Decrypt a batch of messages, such as the room keys of a key backup, on several threads.<br>
+     * The message at index i is made of aCipherTexts[i], aMacs[i] and aEphemeralKeys[i].
+     * A message which can't be decrypted doesn't stop the batch: its status holds the
+     * failure reason, {@link OlmErrorCode#INVALID_INPUT} if one of its parts is null.
+     * @param aCipherTexts the ciphertexts, as in {@link OlmPkMessage#mCipherText}
+     * @param aMacs the MACs, as in {@link OlmPkMessage#mMac}
+     * @param aEphemeralKeys the ephemeral keys, as in {@link OlmPkMessage#mEphemeralKey}
+     * @param aThreads number of threads, 0 to use one per available processor
+     * @return the plaintexts and statuses
+     * @exception OlmException if the arrays are invalid or the native side fails
+     */
+    public BatchResult decryptBatch(String[] aCipherTexts, String[] aMacs, String[] aEphemeralKeys, int aThreads) throws OlmException {
+        if ((null == aCipherTexts) || (null == aMacs) || (null == aEphemeralKeys)
+                || (aCipherTexts.length != aMacs.length) || (aCipherTexts.length != aEphemeralKeys.length)) {
+            Log.e(LOG_TAG, "## decryptBatch(): invalid input parameters");
+            throw new OlmException(OlmException.EXCEPTION_CODE_PK_DECRYPTION_DECRYPT, "invalid input parameters");
+        }
+
+        int count = aCipherTexts.length;
+        int threads = (aThreads > 0) ? aThreads : Runtime.getRuntime().availableProcessors();
+
+        BatchResult result = new BatchResult();
+        result.mPlaintexts = new String[count];
+        result.mStatuses = new int[count];
+
+        for (int chunkStart = 0; chunkStart < count; chunkStart += BATCH_CHUNK_SIZE) {
+            int chunkSize = Math.min(BATCH_CHUNK_SIZE, count - chunkStart);
+            byte[][] cipherTexts = new byte[chunkSize][];
+            byte[][] macs = new byte[chunkSize][];
+            byte[][] ephemeralKeys = new byte[chunkSize][];
+            int[] statuses = new int[chunkSize];
+
+            for (int i = 0; i < chunkSize; i++) {
+                cipherTexts[i] = toUtf8(aCipherTexts[chunkStart + i]);
+                macs[i] = toUtf8(aMacs[chunkStart + i]);
+                ephemeralKeys[i] = toUtf8(aEphemeralKeys[chunkStart + i]);
+            }
+
+            byte[][] plaintexts;
+            try {
+                plaintexts = decryptBatchJni(cipherTexts, macs, ephemeralKeys, threads, statuses);
+            } catch (Exception e) {
+                Log.e(LOG_TAG, "## decryptBatch(): failed " + e.getMessage());
+                throw new OlmException(OlmException.EXCEPTION_CODE_PK_DECRYPTION_DECRYPT, e.getMessage());
+            }
+
+            for (int i = 0; i < chunkSize; i++) {
+                result.mStatuses[chunkStart + i] = statuses[i];
+
+                if (null != plaintexts[i]) {
+                    result.mPlaintexts[chunkStart + i] = new String(plaintexts[i], StandardCharsets.UTF_8);
+                    Arrays.fill(plaintexts[i], (byte) 0);
+                    result.mSuccessCount++;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private static byte[] toUtf8(String aString) {
+        return (null == aString) ? null : aString.getBytes(StandardCharsets.UTF_8);
     }
 
-    private native byte[] decryptJni(OlmPkMessage aMessage);
+    /**
+     * Decrypt a batch of messages on several threads.<br>
+     * An exception is thrown if the batch is invalid, not if a message fails.
+     * @param aCipherTexts the ciphertexts
+     * @param aMacs the MACs
+     * @param aEphemeralKeys the ephemeral keys
+     * @param aThreads number of threads
+     * @param aStatuses receives the status of each message
+     * @return the plaintexts, null for the failed messages
+     */
+    private native byte[][] decryptBatchJni(byte[][] aCipherTexts, byte[][] aMacs, byte[][] aEphemeralKeys, int aThreads, int[] aStatuses);
 }
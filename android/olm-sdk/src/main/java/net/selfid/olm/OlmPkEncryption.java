@@ -18,11 +18,60 @@ package net.selfid.olm;
 
 import android.util.Log;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 public class OlmPkEncryption {
     private static final String LOG_TAG = "OlmPkEncryption";
 
+    /** length of a base64 MAC **/
+    public static final int MAC_LENGTH = 11;
+
+    /** length of a base64 ephemeral key **/
+    public static final int EPHEMERAL_KEY_LENGTH = 43;
+
+    /**
+     * Result of {@link #encryptBatch(String[], int)}.<br>
+     * The messages are packed rather than held as one {@link OlmPkMessage} per plaintext:
+     * the ciphertext of the message i is mCipherTexts[mCipherTextOffsets[i], mCipherTextOffsets[i + 1]),
+     * its MAC and ephemeral key are at i * {@link #MAC_LENGTH} in mMacs and
+     * i * {@link #EPHEMERAL_KEY_LENGTH} in mEphemeralKeys. All of them are UTF-8 base64.
+     */
+    public static class EncryptedBatch {
+        /** the ciphertexts, one after the other **/
+        public byte[] mCipherTexts;
+
+        /** the count + 1 offsets of the ciphertexts in mCipherTexts **/
+        public int[] mCipherTextOffsets;
+
+        /** the MACs, one after the other **/
+        public byte[] mMacs;
+
+        /** the ephemeral keys, one after the other **/
+        public byte[] mEphemeralKeys;
+
+        /**
+         * @return the number of messages
+         */
+        public int size() {
+            return mCipherTextOffsets.length - 1;
+        }
+
+        /**
+         * Unpack a message of the batch.
+         * @param aIndex the index of the plaintext it encrypts
+         * @return the message
+         */
+        public OlmPkMessage getMessage(int aIndex) {
+            OlmPkMessage message = new OlmPkMessage();
+            message.mCipherText = new String(mCipherTexts, mCipherTextOffsets[aIndex],
+                    mCipherTextOffsets[aIndex + 1] - mCipherTextOffsets[aIndex], StandardCharsets.UTF_8);
+            message.mMac = new String(mMacs, aIndex * MAC_LENGTH, MAC_LENGTH, StandardCharsets.UTF_8);
+            message.mEphemeralKey = new String(mEphemeralKeys, aIndex * EPHEMERAL_KEY_LENGTH, EPHEMERAL_KEY_LENGTH, StandardCharsets.UTF_8);
+            return message;
+        }
+    }
+
     /** Session Id returned by JNI.
      * This value uniquely identifies the native session instance.
      **/
@@ -74,6 +123,7 @@ public class OlmPkEncryption {
         OlmPkMessage encryptedMsgRetValue = new OlmPkMessage();
 
         byte[] plaintextBuffer = null;
+        long start = OlmMetrics.start();
         try {
             plaintextBuffer = aPlaintext.getBytes("UTF-8");
             byte[] ciphertextBuffer = encryptJni(plaintextBuffer, encryptedMsgRetValue);
@@ -81,7 +131,9 @@ public class OlmPkEncryption {
             if (null != ciphertextBuffer) {
                 encryptedMsgRetValue.mCipherText = new String(ciphertextBuffer, "UTF-8");
             }
+            OlmMetrics.end(OlmMetrics.OPERATION_PK_ENCRYPT, start);
         } catch (Exception e) {
+            OlmMetrics.fail(OlmMetrics.OPERATION_PK_ENCRYPT, start, e.getMessage());
             Log.e(LOG_TAG, "## pkEncrypt(): failed " + e.getMessage());
             throw new OlmException(OlmException.EXCEPTION_CODE_PK_ENCRYPTION_ENCRYPT, e.getMessage());
         } finally {
@@ -94,4 +146,65 @@ public class OlmPkEncryption {
     }
 
     private native byte[] encryptJni(byte[] plaintext, OlmPkMessage aMessage);
+
+    /**
+     * Encrypt a batch of plaintexts for the recipient key, such as the room keys of a key backup, on several threads.<br>
+     * Each message gets its own ephemeral key, as with {@link #encrypt(String)}; the random bytes
+     * of the whole batch are drawn at once on the native side.
+     * @param aPlaintexts the plaintexts, none of them null
+     * @param aThreads number of threads, 0 to use one per available processor
+     * @return the packed messages, in the order of the plaintexts
+     * @exception OlmException if a plaintext is null or the encryption fails
+     */
+    public EncryptedBatch encryptBatch(String[] aPlaintexts, int aThreads) throws OlmException {
+        if (null == aPlaintexts) {
+            Log.e(LOG_TAG, "## encryptBatch(): invalid input parameters");
+            throw new OlmException(OlmException.EXCEPTION_CODE_PK_ENCRYPTION_ENCRYPT, "invalid input parameters");
+        }
+
+        int count = aPlaintexts.length;
+        int threads = (aThreads > 0) ? aThreads : Runtime.getRuntime().availableProcessors();
+        byte[][] plaintexts = new byte[count][];
+
+        EncryptedBatch result = new EncryptedBatch();
+        result.mCipherTextOffsets = new int[count + 1];
+        result.mMacs = new byte[count * MAC_LENGTH];
+        result.mEphemeralKeys = new byte[count * EPHEMERAL_KEY_LENGTH];
+
+        long start = OlmMetrics.start();
+        try {
+            for (int i = 0; i < count; i++) {
+                if (null == aPlaintexts[i]) {
+                    throw new IllegalArgumentException("null plaintext at " + i);
+                }
+                plaintexts[i] = aPlaintexts[i].getBytes(StandardCharsets.UTF_8);
+            }
+
+            result.mCipherTexts = encryptBatchJni(plaintexts, threads, result.mCipherTextOffsets, result.mMacs, result.mEphemeralKeys);
+            OlmMetrics.end(OlmMetrics.OPERATION_PK_ENCRYPT, start);
+        } catch (Exception e) {
+            OlmMetrics.fail(OlmMetrics.OPERATION_PK_ENCRYPT, start, e.getMessage());
+            Log.e(LOG_TAG, "## encryptBatch(): failed " + e.getMessage());
+            throw new OlmException(OlmException.EXCEPTION_CODE_PK_ENCRYPTION_ENCRYPT, e.getMessage());
+        } finally {
+            for (byte[] plaintext : plaintexts) {
+                if (null != plaintext) {
+                    Arrays.fill(plaintext, (byte) 0);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Encrypt a batch of plaintexts on several threads.
+     * @param aPlaintexts the plaintexts
+     * @param aThreads number of threads
+     * @param aCipherTextOffsets receives the offsets of the ciphertexts
+     * @param aMacs receives the MACs
+     * @param aEphemeralKeys receives the ephemeral keys
+     * @return the ciphertexts
+     */
+    private native byte[] encryptBatchJni(byte[][] aPlaintexts, int aThreads, int[] aCipherTextOffsets, byte[] aMacs, byte[] aEphemeralKeys);
 }
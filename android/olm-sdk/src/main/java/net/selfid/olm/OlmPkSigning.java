@@ -82,11 +82,14 @@ public class OlmPkSigning {
         }
 
         byte[] messageBuffer = null;
+        long start = OlmMetrics.start();
         try {
             messageBuffer = aMessage.getBytes("UTF-8");
             byte[] signature = pkSignJni(messageBuffer);
+            OlmMetrics.end(OlmMetrics.OPERATION_PK_SIGN, start);
             return new String(signature, "UTF-8");
         } catch (Exception e) {
+            OlmMetrics.fail(OlmMetrics.OPERATION_PK_SIGN, start, e.getMessage());
             Log.e(LOG_TAG, "## pkSign(): failed " + e.getMessage());
             throw new OlmException(OlmException.EXCEPTION_CODE_PK_SIGNING_SIGN, e.getMessage());
         } finally {
@@ -97,4 +100,44 @@ public class OlmPkSigning {
     }
 
     private native byte[] pkSignJni(byte[] message);
+
+    /**
+     * Sign a batch of messages in a single native call.
+     * @param aMessages messages to sign, typically canonical JSON payloads
+     * @return the signatures, in the order of the messages
+     * @exception OlmException the failure reason
+     */
+    public String[] signMessages(String[] aMessages) throws OlmException {
+        if (null == aMessages) {
+            return null;
+        }
+
+        byte[][] messageBuffers = new byte[aMessages.length][];
+        long start = OlmMetrics.start();
+        try {
+            for (int i = 0; i < aMessages.length; i++) {
+                messageBuffers[i] = aMessages[i].getBytes("UTF-8");
+            }
+
+            byte[][] signatures = pkSignMessagesJni(messageBuffers);
+            String[] result = new String[signatures.length];
+            for (int i = 0; i < signatures.length; i++) {
+                result[i] = new String(signatures[i], "UTF-8");
+            }
+            OlmMetrics.end(OlmMetrics.OPERATION_PK_SIGN, start);
+            return result;
+        } catch (Exception e) {
+            OlmMetrics.fail(OlmMetrics.OPERATION_PK_SIGN, start, e.getMessage());
+            Log.e(LOG_TAG, "## signMessages(): failed " + e.getMessage());
+            throw new OlmException(OlmException.EXCEPTION_CODE_PK_SIGNING_SIGN, e.getMessage());
+        } finally {
+            for (byte[] messageBuffer : messageBuffers) {
+                if (null != messageBuffer) {
+                    Arrays.fill(messageBuffer, (byte) 0);
+                }
+            }
+        }
+    }
+
+    private native byte[][] pkSignMessagesJni(byte[][] aMessages);
 }
@@ -25,7 +25,9 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * Session class used to create Olm sessions in conjunction with {@link OlmAccount} class.<br>
@@ -39,11 +41,19 @@ public class OlmSession extends CommonSerializeUtils implements Serializable {
     private static final long serialVersionUID = -8975488639186976419L;
     private static final String LOG_TAG = "OlmSession";
 
+    // native decryptions run by tryDecrypt(int, OlmMessage, long, long, OlmDecryptResult)
+    private static final int DECRYPT_MESSAGE = 0;
+    private static final int DECRYPT_RAW = 1;
+    private static final int DECRYPT_PARSED = 2;
+
     /** Session Id returned by JNI.
      * This value uniquely identifies the native session instance.
      **/
     private transient long mNativeId;
 
+    /** hash of the session identifier for the trace sections, 0 until computed **/
+    private transient int mTraceHash;
+
     public OlmSession() throws OlmException {
         try {
             mNativeId = createNewSessionJni();
@@ -52,6 +62,23 @@ public class OlmSession extends CommonSerializeUtils implements Serializable {
         }
     }
 
+    /**
+     * Create a session from a pickled buffer, without allocating an empty native session first.<br>
+     * See {@link #serialize(byte[], StringBuffer)}.
+     * @param aSerializedData pickled session
+     * @param aKey key used to encrypt the pickled session
+     * @exception OlmException the failure reason
+     */
+    OlmSession(byte[] aSerializedData, byte[] aKey) throws OlmException {
+        try {
+            deserialize(aSerializedData, aKey);
+        } catch (OlmException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new OlmException(OlmException.EXCEPTION_CODE_ACCOUNT_DESERIALIZATION, e.getMessage());
+        }
+    }
+
     /**
      * Create an OLM session in native side.<br>
      * Do not forget to call {@link #releaseSession()} when JAVA side is done.
@@ -67,6 +94,16 @@ public class OlmSession extends CommonSerializeUtils implements Serializable {
         return mNativeId;
     }
 
+    /**
+     * Return the size of the native memory backing a session, in bytes.
+     * @return native session size
+     */
+    static long nativeSize() {
+        return nativeSizeJni();
+    }
+
+    private static native long nativeSizeJni();
+
     /**
      * Destroy the corresponding OLM session native object.<br>
      * This method must ALWAYS be called when this JAVA instance
@@ -107,12 +144,17 @@ public class OlmSession extends CommonSerializeUtils implements Serializable {
             Log.e(LOG_TAG, "## initOutboundSession(): invalid input parameters");
             throw new OlmException(OlmException.EXCEPTION_CODE_SESSION_INIT_OUTBOUND_SESSION, "invalid input parameters");
         } else {
+            long traceStart = OlmTrace.begin(OlmTrace.EVENT_SESSION_CREATE);
             try {
                 initOutboundSessionJni(aAccount.getOlmAccountId(), aTheirIdentityKey.getBytes("UTF-8"), aTheirOneTimeKey.getBytes("UTF-8"));
+                OlmEphemeralKeyPool.refill();
             } catch (Exception e) {
+                OlmTrace.end(traceStart, null, -1, -1, e.getMessage());
                 Log.e(LOG_TAG, "## initOutboundSession(): " + e.getMessage());
                 throw new OlmException(OlmException.EXCEPTION_CODE_SESSION_INIT_OUTBOUND_SESSION, e.getMessage());
             }
+
+            OlmTrace.end(traceStart, this, -1, -1, null);
         }
     }
 
@@ -140,12 +182,16 @@ public class OlmSession extends CommonSerializeUtils implements Serializable {
             Log.e(LOG_TAG, "## initInboundSession(): invalid input parameters");
             throw new OlmException(OlmException.EXCEPTION_CODE_SESSION_INIT_INBOUND_SESSION, "invalid input parameters");
         } else {
+            long traceStart = OlmTrace.begin(OlmTrace.EVENT_SESSION_CREATE);
             try {
                 initInboundSessionJni(aAccount.getOlmAccountId(), aPreKeyMsg.getBytes("UTF-8"));
             } catch (Exception e) {
+                OlmTrace.end(traceStart, null, aPreKeyMsg.length(), -1, e.getMessage());
                 Log.e(LOG_TAG, "## initInboundSession(): " + e.getMessage());
                 throw new OlmException(OlmException.EXCEPTION_CODE_SESSION_INIT_INBOUND_SESSION, e.getMessage());
             }
+
+            OlmTrace.end(traceStart, this, aPreKeyMsg.length(), -1, null);
         }
     }
 
@@ -158,6 +204,39 @@ public class OlmSession extends CommonSerializeUtils implements Serializable {
      */
     private native void initInboundSessionJni(long aOlmAccountId, byte[] aOneTimeKeyMsg);
 
+    /**
+     * Create a new in-bound session for sending/receiving messages from an
+     * incoming PRE_KEY message written by {@link #encryptMessageRaw(String)}.
+     * @param aAccount the account to associate with this session
+     * @param aPreKeyMsg raw PRE KEY message, see {@link OlmMessage#mRawCipherText}
+     * @exception OlmException the failure reason
+     */
+    public void initInboundSessionRaw(OlmAccount aAccount, byte[] aPreKeyMsg) throws OlmException {
+        if ((null == aAccount) || (null == aPreKeyMsg) || (0 == aPreKeyMsg.length)) {
+            Log.e(LOG_TAG, "## initInboundSessionRaw(): invalid input parameters");
+            throw new OlmException(OlmException.EXCEPTION_CODE_SESSION_INIT_INBOUND_SESSION, "invalid input parameters");
+        } else {
+            long traceStart = OlmTrace.begin(OlmTrace.EVENT_SESSION_CREATE);
+            try {
+                initInboundSessionRawJni(aAccount.getOlmAccountId(), aPreKeyMsg);
+            } catch (Exception e) {
+                OlmTrace.end(traceStart, null, aPreKeyMsg.length, -1, e.getMessage());
+                Log.e(LOG_TAG, "## initInboundSessionRaw(): " + e.getMessage());
+                throw new OlmException(OlmException.EXCEPTION_CODE_SESSION_INIT_INBOUND_SESSION, e.getMessage());
+            }
+
+            OlmTrace.end(traceStart, this, aPreKeyMsg.length, -1, null);
+        }
+    }
+
+    /**
+     * Create a new in-bound session from a raw PRE_KEY message.<br>
+     * An exception is thrown if the operation fails.
+     * @param aOlmAccountId account instance
+     * @param aOneTimeKeyMsg raw PRE_KEY message
+     */
+    private native void initInboundSessionRawJni(long aOlmAccountId, byte[] aOneTimeKeyMsg);
+
     /**
      * Create a new in-bound session for sending/receiving messages from an
      * incoming PRE_KEY({@link OlmMessage#MESSAGE_TYPE_PRE_KEY}) message based on the sender identity key.<br>
@@ -174,12 +253,16 @@ public class OlmSession extends CommonSerializeUtils implements Serializable {
             Log.e(LOG_TAG, "## initInboundSessionFrom(): invalid input parameters");
             throw new OlmException(OlmException.EXCEPTION_CODE_SESSION_INIT_INBOUND_SESSION_FROM, "invalid input parameters");
         } else {
+            long traceStart = OlmTrace.begin(OlmTrace.EVENT_SESSION_CREATE);
             try {
                 initInboundSessionFromIdKeyJni(aAccount.getOlmAccountId(), aTheirIdentityKey.getBytes("UTF-8"), aPreKeyMsg.getBytes("UTF-8"));
             } catch (Exception e) {
+                OlmTrace.end(traceStart, null, aPreKeyMsg.length(), -1, e.getMessage());
                 Log.e(LOG_TAG, "## initInboundSessionFrom(): " + e.getMessage());
                 throw new OlmException(OlmException.EXCEPTION_CODE_SESSION_INIT_INBOUND_SESSION_FROM, e.getMessage());
             }
+
+            OlmTrace.end(traceStart, this, aPreKeyMsg.length(), -1, null);
         }
     }
 
@@ -216,6 +299,22 @@ public class OlmSession extends CommonSerializeUtils implements Serializable {
         return null;
     }
 
+    /**
+     * @return the hash of the session identifier, computed once, 0 if it is not available
+     */
+    int traceHash() {
+        if ((0 == mTraceHash) && !isReleased()) {
+            try {
+                String sessionId = sessionIdentifier();
+                mTraceHash = (null == sessionId) ? 0 : sessionId.hashCode();
+            } catch (Exception e) {
+                return 0;
+            }
+        }
+
+        return mTraceHash;
+    }
+
     /**
      * Get the session identifier for this session.
      * An exception is thrown if the operation fails.
@@ -281,6 +380,52 @@ public class OlmSession extends CommonSerializeUtils implements Serializable {
      */
     private native boolean matchesInboundSessionFromIdKeyJni(byte[] aTheirIdentityKey, byte[] aOneTimeKeyMsg);
 
+    /**
+     * Checks if a parsed PRE_KEY message is for this in-bound session.<br>
+     * The message is not decoded again, so it can be matched against all the sessions of a sender cheaply.
+     * @param aParsedMessage the parsed PRE KEY message
+     * @return true if the one time key matches.
+     */
+    public boolean matchesInboundParsedSession(OlmParsedMessage aParsedMessage) {
+        if ((null == aParsedMessage) || aParsedMessage.isReleased()) {
+            return false;
+        }
+
+        return matchesInboundParsedSessionJni(aParsedMessage.getOlmParsedMessageId());
+    }
+
+    /**
+     * Checks if a parsed PRE_KEY message is for this in-bound session.<br>
+     * No exception is thrown.
+     * @param aParsedMessageId the native parsed message id
+     * @return true if the PRE_KEY message matches
+     */
+    private native boolean matchesInboundParsedSessionJni(long aParsedMessageId);
+
+    /**
+     * Checks if a parsed PRE_KEY message is for this in-bound session based on the sender identity key.<br>
+     * The message is not decoded again, so it can be matched against all the sessions of a sender cheaply.
+     * @param aTheirIdentityKey the sender identity key
+     * @param aParsedMessage the parsed PRE KEY message
+     * @return true if the PRE_KEY message matches
+     */
+    public boolean matchesInboundParsedSessionFrom(String aTheirIdentityKey, OlmParsedMessage aParsedMessage) {
+        if ((null == aTheirIdentityKey) || (null == aParsedMessage) || aParsedMessage.isReleased()) {
+            return false;
+        }
+
+        return matchesInboundParsedSessionFromIdKeyJni(aTheirIdentityKey.getBytes(StandardCharsets.UTF_8), aParsedMessage.getOlmParsedMessageId());
+    }
+
+    /**
+     * Checks if a parsed PRE_KEY message is for this in-bound session based on the sender identity key.<br>
+     * No exception is thrown.
+     * @param aTheirIdentityKey the identity key of the sender
+     * @param aParsedMessageId the native parsed message id
+     * @return true if the PRE_KEY message matches.
+     */
+    private native boolean matchesInboundParsedSessionFromIdKeyJni(byte[] aTheirIdentityKey, long aParsedMessageId);
+
     /**
      * Encrypt a message using the session.<br>
      * The encrypted message is returned in a OlmMessage object.
@@ -295,16 +440,20 @@ public class OlmSession extends CommonSerializeUtils implements Serializable {
         }
 
         OlmMessage encryptedMsgRetValue = new OlmMessage();
+        long start = OlmMetrics.start();
 
         try {
             byte[] clearMsgBuffer = aClearMsg.getBytes("UTF-8");
             byte[] encryptedMessageBuffer = encryptMessageJni(clearMsgBuffer, encryptedMsgRetValue);
             Arrays.fill(clearMsgBuffer, (byte) 0);
+            OlmEphemeralKeyPool.refill();
 
             if (null != encryptedMessageBuffer) {
                 encryptedMsgRetValue.mCipherText = new String(encryptedMessageBuffer, "UTF-8");
             }
+            OlmMetrics.end(OlmMetrics.OPERATION_SESSION_ENCRYPT, start);
         } catch (Exception e) {
+            OlmMetrics.fail(OlmMetrics.OPERATION_SESSION_ENCRYPT, start, e.getMessage());
             Log.e(LOG_TAG, "## encryptMessage(): failed " + e.getMessage());
             throw new OlmException(OlmException.EXCEPTION_CODE_SESSION_ENCRYPT_MESSAGE, e.getMessage());
         }
@@ -321,6 +470,47 @@ public class OlmSession extends CommonSerializeUtils implements Serializable {
      */
     private native byte[] encryptMessageJni(byte[] aClearMsg, OlmMessage aEncryptedMsg);
 
+    /**
+     * Encrypt a message using the session, without the base64 encoding.<br>
+     * Meant for transports which carry bytes: the message, returned in
+     * {@link OlmMessage#mRawCipherText}, is a quarter smaller (3/4 of the size) than the one of
+     * {@link #encryptMessage(String)}, and it is decrypted by {@link #decryptMessageRaw(OlmMessage)}.
+     * @param aClearMsg message to encrypted
+     * @return the encrypted message
+     * @exception OlmException the failure reason
+     */
+    public OlmMessage encryptMessageRaw(String aClearMsg) throws OlmException {
+        if (null == aClearMsg) {
+            return null;
+        }
+
+        OlmMessage encryptedMsgRetValue = new OlmMessage();
+        long start = OlmMetrics.start();
+
+        try {
+            byte[] clearMsgBuffer = aClearMsg.getBytes("UTF-8");
+            encryptedMsgRetValue.mRawCipherText = encryptMessageRawJni(clearMsgBuffer, encryptedMsgRetValue);
+            Arrays.fill(clearMsgBuffer, (byte) 0);
+            OlmEphemeralKeyPool.refill();
+            OlmMetrics.end(OlmMetrics.OPERATION_SESSION_ENCRYPT, start);
+        } catch (Exception e) {
+            OlmMetrics.fail(OlmMetrics.OPERATION_SESSION_ENCRYPT, start, e.getMessage());
+            Log.e(LOG_TAG, "## encryptMessageRaw(): failed " + e.getMessage());
+            throw new OlmException(OlmException.EXCEPTION_CODE_SESSION_ENCRYPT_MESSAGE, e.getMessage());
+        }
+
+        return encryptedMsgRetValue;
+    }
+
+    /**
+     * Encrypt a message using the session, without the base64 encoding.<br>
+     * An exception is thrown if the operation fails.
+     * @param aClearMsg clear text message
+     * @param aEncryptedMsg ciphered message, receiving the message type
+     * @return the raw encrypted message
+     */
+    private native byte[] encryptMessageRawJni(byte[] aClearMsg, OlmMessage aEncryptedMsg);
+
     /**
      * Decrypt a message using the session.<br>
      * The encrypted message is given as a OlmMessage object.
@@ -333,23 +523,223 @@ public class OlmSession extends CommonSerializeUtils implements Serializable {
             return null;
         }
 
-        try {
-            byte[] plaintextBuffer = decryptMessageJni(aEncryptedMsg);
-            String plaintext = new String(plaintextBuffer, "UTF-8");
-            Arrays.fill(plaintextBuffer, (byte) 0);
-            return plaintext;
-        } catch (Exception e) {
-            Log.e(LOG_TAG, "## decryptMessage(): failed " + e.getMessage());
-            throw new OlmException(OlmException.EXCEPTION_CODE_SESSION_DECRYPT_MESSAGE, e.getMessage());
+        OlmDecryptResult result = new OlmDecryptResult();
+        tryDecrypt(aEncryptedMsg, result);
+        return toPlaintext(result, "decryptMessage");
+    }
+
+    /**
+     * Decrypt a message using the session, without throwing on failure.<br>
+     * Meant for trial decryption across the candidate sessions of a sender: a failure
+     * costs no exception and no error log.
+     * @param aEncryptedMsg message to decrypt
+     * @param aResult the result to fill, it can be reused across calls
+     * @return the status, {@link OlmErrorCode#SUCCESS} if aResult holds the decrypted message
+     */
+    public int tryDecrypt(OlmMessage aEncryptedMsg, OlmDecryptResult aResult) {
+        aResult.reset();
+
+        if (null == aEncryptedMsg) {
+            return aResult.fail(OlmErrorCode.INVALID_INPUT);
         }
+
+        return tryDecrypt(DECRYPT_MESSAGE, aEncryptedMsg, 0, OlmTrace.length(aEncryptedMsg.mCipherText), aResult);
     }
+
     /**
      * Decrypt a message using the session.<br>
-     * An exception is thrown if the operation fails.
+     * No exception is thrown, the status is set in aResult.
+     * @param aEncryptedMsg message to decrypt
+     * @param aResult the result receiving the status
+     * @return the decrypted message, null if the operation failed
+     */
+    private native byte[] tryDecryptMessageJni(OlmMessage aEncryptedMsg, OlmDecryptResult aResult);
+
+    /**
+     * Decrypt a message written by {@link #encryptMessageRaw(String)}.
+     * @param aEncryptedMsg message to decrypt, with its {@link OlmMessage#mRawCipherText}
+     * @return the decrypted message
+     * @exception OlmException the failure reason
+     */
+    public String decryptMessageRaw(OlmMessage aEncryptedMsg) throws OlmException {
+        if (null == aEncryptedMsg) {
+            return null;
+        }
+
+        OlmDecryptResult result = new OlmDecryptResult();
+        tryDecryptRaw(aEncryptedMsg, result);
+        return toPlaintext(result, "decryptMessageRaw");
+    }
+
+    /**
+     * Decrypt a message written by {@link #encryptMessageRaw(String)}, without throwing on failure.<br>
+     * The message is left untouched, so it can be tried with the candidate sessions of a sender.
+     * @param aEncryptedMsg message to decrypt, with its {@link OlmMessage#mRawCipherText}
+     * @param aResult the result to fill, it can be reused across calls
+     * @return the status, {@link OlmErrorCode#SUCCESS} if aResult holds the decrypted message
+     */
+    public int tryDecryptRaw(OlmMessage aEncryptedMsg, OlmDecryptResult aResult) {
+        aResult.reset();
+
+        if ((null == aEncryptedMsg) || (null == aEncryptedMsg.mRawCipherText)) {
+            return aResult.fail(OlmErrorCode.INVALID_INPUT);
+        }
+
+        return tryDecrypt(DECRYPT_RAW, aEncryptedMsg, 0, aEncryptedMsg.mRawCipherText.length, aResult);
+    }
+
+    /**
+     * Decrypt a raw message using the session.<br>
+     * No exception is thrown, the status is set in aResult.
      * @param aEncryptedMsg message to decrypt
+     * @param aResult the result receiving the status
+     * @return the decrypted message, null if the operation failed
+     */
+    private native byte[] tryDecryptMessageRawJni(OlmMessage aEncryptedMsg, OlmDecryptResult aResult);
+
+    /**
+     * Decrypt a parsed message using the session.
+     * @param aParsedMessage message to decrypt
+     * @return the decrypted message
+     * @exception OlmException the failure reason
+     */
+    public String decryptParsedMessage(OlmParsedMessage aParsedMessage) throws OlmException {
+        OlmDecryptResult result = new OlmDecryptResult();
+        tryDecryptParsed(aParsedMessage, result);
+        return toPlaintext(result, "decryptParsedMessage");
+    }
+
+    /**
+     * Decrypt a parsed message using the session, without throwing on failure.<br>
+     * The message is left untouched, so the same parsed message can be tried with each candidate
+     * session of a sender without being decoded again.
+     * @param aParsedMessage message to decrypt
+     * @param aResult the result to fill, it can be reused across calls
+     * @return the status, {@link OlmErrorCode#SUCCESS} if aResult holds the decrypted message
+     */
+    public int tryDecryptParsed(OlmParsedMessage aParsedMessage, OlmDecryptResult aResult) {
+        aResult.reset();
+
+        if ((null == aParsedMessage) || aParsedMessage.isReleased()) {
+            return aResult.fail(OlmErrorCode.INVALID_INPUT);
+        }
+
+        return tryDecrypt(DECRYPT_PARSED, null, aParsedMessage.getOlmParsedMessageId(), aParsedMessage.getLength(), aResult);
+    }
+
+    /**
+     * Decrypt a parsed message using the session.<br>
+     * No exception is thrown, the status is set in aResult.
+     * @param aParsedMessageId the native parsed message id
+     * @param aResult the result receiving the status
+     * @return the decrypted message, null if the operation failed
+     */
+    private native byte[] tryDecryptParsedMessageJni(long aParsedMessageId, OlmDecryptResult aResult);
+
+    /**
+     * Run one of the native decryptions, with its metrics and trace.
+     * @param aMode the decryption, one of the DECRYPT_* values
+     * @param aEncryptedMsg the encrypted message, null for {@link #DECRYPT_PARSED}
+     * @param aParsedMessageId the native parsed message id for {@link #DECRYPT_PARSED}
+     * @param aLength the message length, for the trace
+     * @param aResult the result to fill
+     * @return the status
+     */
+    private int tryDecrypt(int aMode, OlmMessage aEncryptedMsg, long aParsedMessageId, long aLength, OlmDecryptResult aResult) {
+        long start = OlmMetrics.start();
+        long traceStart = OlmTrace.begin(OlmTrace.EVENT_DECRYPT);
+        byte[] plaintextBuffer;
+
+        switch (aMode) {
+            case DECRYPT_RAW:
+                plaintextBuffer = tryDecryptMessageRawJni(aEncryptedMsg, aResult);
+                break;
+            case DECRYPT_PARSED:
+                plaintextBuffer = tryDecryptParsedMessageJni(aParsedMessageId, aResult);
+                break;
+            default:
+                plaintextBuffer = tryDecryptMessageJni(aEncryptedMsg, aResult);
+                break;
+        }
+
+        String error = aResult.complete(plaintextBuffer);
+
+        if (null != error) {
+            OlmMetrics.fail(OlmMetrics.OPERATION_SESSION_DECRYPT, start, error);
+        } else {
+            OlmMetrics.end(OlmMetrics.OPERATION_SESSION_DECRYPT, start);
+        }
+
+        OlmTrace.end(traceStart, this, aLength, -1, error);
+        return aResult.mStatus;
+    }
+
+    /**
+     * Convert the outcome of a decryption for the throwing methods.
+     * @param aResult the decryption outcome
+     * @param aMethod the calling method name, for the log
      * @return the decrypted message
+     * @exception OlmException the failure reason
+     */
+    private static String toPlaintext(OlmDecryptResult aResult, String aMethod) throws OlmException {
+        if (!aResult.isSuccess()) {
+            Log.e(LOG_TAG, "## " + aMethod + "(): failed " + OlmErrorCode.name(aResult.mStatus));
+            throw OlmException.stackless(OlmException.EXCEPTION_CODE_SESSION_DECRYPT_MESSAGE, OlmErrorCode.name(aResult.mStatus));
+        }
+
+        return aResult.mPlaintext;
+    }
+
+    /**
+     * Decrypt a parsed message with the first of several candidate sessions able to decrypt it,
+     * such as the sessions established with its sender.<br>
+     * The sessions which already hold the ratchet key of the message are found by comparing the keys
+     * and are tried first, so that usually a single session attempts the decryption. The other sessions
+     * are only tried afterwards, in order, since the message may start a new chain on one of them.
+     * @param aSessions the candidate sessions, the most likely first
+     * @param aParsedMessage message to decrypt
+     * @param aResult the result to fill with the message and {@link OlmDecryptResult#mSessionIndex}, it can be reused across calls
+     * @return the status, {@link OlmErrorCode#SUCCESS} if aResult holds the decrypted message
      */
-    private native byte[] decryptMessageJni(OlmMessage aEncryptedMsg);
+    public static int tryDecryptWithSessions(List<OlmSession> aSessions, OlmParsedMessage aParsedMessage, OlmDecryptResult aResult) {
+        aResult.reset();
+
+        if ((null == aSessions) || aSessions.isEmpty() || (null == aParsedMessage) || aParsedMessage.isReleased()) {
+            return aResult.fail(OlmErrorCode.INVALID_INPUT);
+        }
+
+        long[] sessionIds = new long[aSessions.size()];
+
+        for (int i = 0; i < sessionIds.length; i++) {
+            OlmSession session = aSessions.get(i);
+            sessionIds[i] = (null != session) ? session.getOlmSessionId() : 0;
+
+            if (0 == sessionIds[i]) {
+                return aResult.fail(OlmErrorCode.INVALID_INPUT);
+            }
+        }
+
+        long start = OlmMetrics.start();
+        String error = aResult.complete(tryDecryptWithSessionsJni(sessionIds, aParsedMessage.getOlmParsedMessageId(), aResult));
+
+        if (null != error) {
+            OlmMetrics.fail(OlmMetrics.OPERATION_SESSION_DECRYPT, start, error);
+        } else {
+            OlmMetrics.end(OlmMetrics.OPERATION_SESSION_DECRYPT, start);
+        }
+
+        return aResult.mStatus;
+    }
+
+    /**
+     * Decrypt a parsed message with the first of several sessions able to decrypt it.<br>
+     * No exception is thrown, the status and the session index are set in aResult.
+     * @param aSessionIds the native ids of the candidate sessions
+     * @param aParsedMessageId the native parsed message id
+     * @param aResult the result receiving the status
+     * @return the decrypted message, null if the operation failed
+     */
+    private static native byte[] tryDecryptWithSessionsJni(long[] aSessionIds, long aParsedMessageId, OlmDecryptResult aResult);
 
     //==============================================================================================================
     // Serialization management
@@ -394,12 +784,20 @@ public class OlmSession extends CommonSerializeUtils implements Serializable {
             aErrorMsg.append("Invalid input parameters in serializeDataWithKey()");
         } else {
             aErrorMsg.setLength(0);
+            long start = OlmMetrics.start();
+            long traceStart = OlmTrace.begin(OlmTrace.EVENT_PICKLE);
             try {
                 pickleRetValue = serializeJni(aKey);
             } catch (Exception e) {
+                OlmMetrics.fail(OlmMetrics.OPERATION_PICKLE, start, e.getMessage());
+                OlmTrace.end(traceStart, this, -1, -1, e.getMessage());
                 Log.e(LOG_TAG,"## serializeDataWithKey(): failed " + e.getMessage());
                 aErrorMsg.append(e.getMessage());
+                return null;
             }
+
+            OlmMetrics.end(OlmMetrics.OPERATION_PICKLE, start);
+            OlmTrace.end(traceStart, this, (null == pickleRetValue) ? -1 : pickleRetValue.length, -1, null);
         }
 
         return pickleRetValue;
@@ -422,6 +820,8 @@ public class OlmSession extends CommonSerializeUtils implements Serializable {
     @Override
     protected void deserialize(byte[] aSerializedData, byte[] aKey) throws Exception {
         String errorMsg = null;
+        long start = OlmMetrics.start();
+        long traceStart = OlmTrace.begin(OlmTrace.EVENT_PICKLE);
 
         try {
             if ((null == aSerializedData) || (null == aKey)) {
@@ -436,9 +836,14 @@ public class OlmSession extends CommonSerializeUtils implements Serializable {
         }
 
         if (!TextUtils.isEmpty(errorMsg)) {
+            OlmMetrics.fail(OlmMetrics.OPERATION_UNPICKLE, start, errorMsg);
+            OlmTrace.end(traceStart, null, (null == aSerializedData) ? -1 : aSerializedData.length, -1, errorMsg);
             releaseSession();
             throw new OlmException(OlmException.EXCEPTION_CODE_ACCOUNT_DESERIALIZATION, errorMsg);
         }
+
+        OlmMetrics.end(OlmMetrics.OPERATION_UNPICKLE, start);
+        OlmTrace.end(traceStart, this, aSerializedData.length, -1, null);
     }
     /**
      * Allocate a new session and initialize it with the serialisation data.<br>
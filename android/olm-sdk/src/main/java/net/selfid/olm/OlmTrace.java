@@ -0,0 +1,173 @@
+/*
+ * Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.selfid.olm;
+
+import android.os.Build;
+import android.os.Trace;
+import android.util.Log;
+
+import java.lang.reflect.Method;
+
+/**
+ * Trace sections around the crypto operations, for system traces (Perfetto, systrace).<br>
+ * The sections are recorded when application tracing is turned on in the trace
+ * configuration (the "app" atrace category, or the application package). When tracing is
+ * off, or before Android Q, an instrumented operation only pays for the enabled check, whose
+ * result is refreshed every {@link #ENABLED_CHECK_INTERVAL_NANOS} nanoseconds.<br>
+ * Each operation is an outer section named after the event type, so it lines up with
+ * GC and scheduling activity in the trace. When it completes, a nested section carries its
+ * attributes: <tt>session</tt> the hash of the session identifier, <tt>size</tt> the
+ * payload size in bytes, <tt>gap</tt> the message index gap from the previous message the
+ * session decrypted, <tt>native_us</tt> the duration of the operation and <tt>error</tt> its
+ * failure reason.
+ */
+final class OlmTrace {
+    private static final String LOG_TAG = "OlmTrace";
+
+    // event types
+    static final String EVENT_DECRYPT = "OlmDecrypt";
+    static final String EVENT_GROUP_DECRYPT = "OlmGroupDecrypt";
+    static final String EVENT_PICKLE = "OlmPickle";
+    static final String EVENT_KEY_GENERATION = "OlmKeyGeneration";
+    static final String EVENT_SESSION_CREATE = "OlmSessionCreate";
+
+    /** how long the result of Trace.isEnabled() is reused, 100 ms */
+    static final long ENABLED_CHECK_INTERVAL_NANOS = 100 * 1000 * 1000L;
+
+    /** Trace.isEnabled(), public from Android Q but above the SDK this library is compiled against */
+    private static final Method mIsEnabledMethod = resolveIsEnabled();
+
+    // last result of Trace.isEnabled(), and when it was checked
+    private static volatile boolean mIsEnabledChecked;
+    private static volatile boolean mIsEnabled;
+    private static volatile long mIsEnabledCheckTime;
+
+    private OlmTrace() {
+    }
+
+    private static Method resolveIsEnabled() {
+        if (Build.VERSION.SDK_INT > Build.VERSION_CODES.P) {
+            try {
+                return Trace.class.getMethod("isEnabled");
+            } catch (Exception e) {
+                Log.e(LOG_TAG, "## resolveIsEnabled(): failed " + e.getMessage());
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return true if the sections are recorded
+     */
+    static boolean isEnabled() {
+        if (null == mIsEnabledMethod) {
+            return false;
+        }
+
+        long now = System.nanoTime();
+
+        if (!mIsEnabledChecked || (now - mIsEnabledCheckTime >= ENABLED_CHECK_INTERVAL_NANOS)) {
+            boolean isEnabled;
+
+            try {
+                isEnabled = (Boolean) mIsEnabledMethod.invoke(null);
+            } catch (Exception e) {
+                isEnabled = false;
+            }
+
+            mIsEnabled = isEnabled;
+            mIsEnabledCheckTime = now;
+            mIsEnabledChecked = true;
+        }
+
+        return mIsEnabled;
+    }
+
+    /**
+     * Open the section of an operation.<br>
+     * Must be followed by a call to {@link #end(long, Object, long, long, String)} on the same thread.
+     * @param aEvent the event type
+     * @return the start time to give to end(), 0 if tracing is off
+     */
+    static long begin(String aEvent) {
+        if (!isEnabled()) {
+            return 0;
+        }
+
+        Trace.beginSection(aEvent);
+        return System.nanoTime();
+    }
+
+    /**
+     * Record the attributes of an operation and close its section.
+     * @param aStart the value returned by {@link #begin(String)}
+     * @param aSession the session the operation ran on, null if none
+     * @param aPayloadSize the payload size in bytes, -1 if unknown
+     * @param aIndexGap the message index gap, -1 if unknown
+     * @param aError the failure reason, null if the operation succeeded
+     */
+    static void end(long aStart, Object aSession, long aPayloadSize, long aIndexGap, String aError) {
+        if (0 == aStart) {
+            return;
+        }
+
+        long nativeMicros = (System.nanoTime() - aStart) / 1000;
+        StringBuilder attributes = new StringBuilder(96);
+
+        attributes.append("session=").append(Integer.toHexString(sessionHash(aSession)));
+        attributes.append(" size=").append(aPayloadSize);
+        attributes.append(" gap=").append(aIndexGap);
+        attributes.append(" native_us=").append(nativeMicros);
+        if (null != aError) {
+            attributes.append(" error=").append(aError);
+        }
+
+        Trace.beginSection(attributes.toString());
+        Trace.endSection();
+        Trace.endSection();
+    }
+
+    /**
+     * @param aPayload a payload
+     * @return the payload length, -1 if it is null
+     */
+    static long length(String aPayload) {
+        return (null == aPayload) ? -1 : aPayload.length();
+    }
+
+    /**
+     * @param aPayload a raw payload
+     * @return the payload length, -1 if it is null
+     */
+    static long length(byte[] aPayload) {
+        return (null == aPayload) ? -1 : aPayload.length;
+    }
+
+    private static int sessionHash(Object aSession) {
+        if (aSession instanceof OlmSession) {
+            return ((OlmSession) aSession).traceHash();
+        } else if (aSession instanceof OlmInboundGroupSession) {
+            return ((OlmInboundGroupSession) aSession).traceHash();
+        } else if (aSession instanceof OlmOutboundGroupSession) {
+            return ((OlmOutboundGroupSession) aSession).traceHash();
+        }
+
+        return 0;
+    }
+}
@@ -22,6 +22,7 @@ import android.util.Log;
 
 import org.json.JSONObject;
 
+import java.nio.ByteBuffer;
 import java.security.SecureRandom;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -36,6 +37,12 @@ public class OlmUtility {
 
     public static final int RANDOM_KEY_SIZE = 32;
 
+    /** the verified signatures memo, null when disabled **/
+    private static volatile SignatureCache sSignatureCache;
+
+    /** the utility of each thread, see {@link #forCurrentThread()} **/
+    private static final ThreadLocal<OlmUtility> sThreadUtility = new ThreadLocal<>();
+
     /** Instance Id returned by JNI.
      * This value uniquely identifies this utility instance.
      **/
@@ -72,9 +79,71 @@ public class OlmUtility {
     }
     private native void releaseUtilityJni();
 
+    /**
+     * Return the utility of the calling thread, created on first use.<br>
+     * It must not be released by the caller, see {@link #releaseForCurrentThread()}.<br>
+     * The native utility is only released by {@link #releaseForCurrentThread()}: a pooled thread,
+     * which outlives the task using the utility, must call it when the task ends, otherwise the
+     * native memory stays allocated for the life of the thread.
+     * @return the utility
+     * @exception OlmException the creation failure reason
+     */
+    public static OlmUtility forCurrentThread() throws OlmException {
+        OlmUtility utility = sThreadUtility.get();
+
+        if ((null == utility) || utility.isReleased()) {
+            utility = new OlmUtility();
+            sThreadUtility.set(utility);
+        }
+
+        return utility;
+    }
+
+    /**
+     * Release the utility of the calling thread, if any.<br>
+     * To be called by the threads which stop using the utility before they end, such as the
+     * threads of an executor, in a finally block of the task which used {@link #forCurrentThread()}.
+     */
+    public static void releaseForCurrentThread() {
+        OlmUtility utility = sThreadUtility.get();
+
+        if (null != utility) {
+            utility.releaseUtility();
+            sThreadUtility.remove();
+        }
+    }
+
+    /**
+     * Install the memo of verified signatures used by all the utilities.
+     * @param aCache the cache, null to verify every signature
+     */
+    public static void setSignatureCache(SignatureCache aCache) {
+        sSignatureCache = aCache;
+    }
+
+    /**
+     * @return the memo of verified signatures, null if none is installed
+     */
+    public static SignatureCache getSignatureCache() {
+        return sSignatureCache;
+    }
+
+    /**
+     * Verify an ed25519 signature with the utility of the calling thread.<br>
+     * Same as {@link #verifyEd25519Signature(String, String, String)}, without creating and releasing a utility.
+     * @param aSignature the base64-encoded message signature to be checked.
+     * @param aFingerprintKey the ed25519 key (fingerprint key)
+     * @param aMessage the signed message
+     * @exception OlmException the failure reason
+     */
+    public static void verifySignature(String aSignature, String aFingerprintKey, String aMessage) throws OlmException {
+        forCurrentThread().verifyEd25519Signature(aSignature, aFingerprintKey, aMessage);
+    }
+
     /**
      * Verify an ed25519 signature.<br>
      * An exception is thrown if the operation fails.
+     * When a {@link SignatureCache} is installed, a signature which has already been verified is not verified again.
      * @param aSignature the base64-encoded message signature to be checked.
      * @param aFingerprintKey the ed25519 key (fingerprint key)
      * @param aMessage the signed message
@@ -83,11 +152,18 @@ public class OlmUtility {
     public void verifyEd25519Signature(String aSignature, String aFingerprintKey, String aMessage) throws OlmException {
         String errorMessage;
         byte[] messageBuffer = null;
+        long start = OlmMetrics.start();
+        SignatureCache cache = sSignatureCache;
+        ByteBuffer cacheKey = null;
 
         try {
             if (TextUtils.isEmpty(aSignature) || TextUtils.isEmpty(aFingerprintKey) || TextUtils.isEmpty(aMessage)) {
                 Log.e(LOG_TAG, "## verifyEd25519Signature(): invalid input parameters");
                 errorMessage = "JAVA sanity check failure - invalid input parameters";
+            } else if ((null != cache) && cache.contains(cacheKey = SignatureCache.key(aSignature, aFingerprintKey, aMessage))) {
+                // already verified, nothing new to remember
+                errorMessage = null;
+                cacheKey = null;
             } else {
                 messageBuffer = aMessage.getBytes("UTF-8");
                 errorMessage =  verifyEd25519SignatureJni(aSignature.getBytes("UTF-8"), aFingerprintKey.getBytes("UTF-8"), messageBuffer);
@@ -102,8 +178,15 @@ public class OlmUtility {
         }
 
         if (!TextUtils.isEmpty(errorMessage)) {
+            OlmMetrics.fail(OlmMetrics.OPERATION_VERIFY_SIGNATURE, start, errorMessage);
             throw new OlmException(OlmException.EXCEPTION_CODE_UTILITY_VERIFY_SIGNATURE, errorMessage);
         }
+
+        if (null != cacheKey) {
+            cache.put(cacheKey);
+        }
+
+        OlmMetrics.end(OlmMetrics.OPERATION_VERIFY_SIGNATURE, start);
     }
 
     /**
@@ -0,0 +1,539 @@
+/*
+ * Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.selfid.olm;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded cache of live native sessions ({@link OlmSession} or {@link OlmInboundGroupSession}).<br>
+ * The least recently used sessions are pickled into a {@link PickleStore} and their native
+ * memory is released once the cache exceeds its capacity. Evicted sessions are transparently
+ * unpickled again by {@link #get(String)}.<br>
+ * The capacity can be expressed as a number of sessions, as a number of native bytes, or both
+ * (0 means unbounded).
+ * <br><br>A session returned by {@link #get(String)} may be evicted (and released) by any later
+ * call on the cache. Callers sharing the cache between threads should use {@link #acquire(String)}
+ * and {@link #release(String, Object)} to pin the session while it is used. A pinned session which is
+ * removed from the cache is only released once it is unpinned.
+ * @param <T> the cached session type
+ */
+public class SessionCache<T> {
+    private static final String LOG_TAG = "SessionCache";
+
+    /**
+     * Storage for the pickles of evicted sessions.<br>
+     * The cache removes a pickle as soon as the session is resident again,
+     * so that a stale pickle is never reloaded.
+     */
+    public interface PickleStore {
+        void put(String aSessionId, byte[] aPickle);
+        byte[] get(String aSessionId);
+        void remove(String aSessionId);
+    }
+
+    /**
+     * Snapshot of the cache metrics returned by {@link #getStats()}.
+     */
+    public static class Stats {
+        /** number of lookups served by a resident session **/
+        public long mHits;
+
+        /** number of lookups which did not find a resident session **/
+        public long mMisses;
+
+        /** number of sessions unpickled after an eviction **/
+        public long mLoads;
+
+        /** number of sessions pickled and released **/
+        public long mEvictions;
+
+        /** number of resident sessions **/
+        public int mResidentCount;
+
+        /** native bytes held by the resident sessions **/
+        public long mResidentBytes;
+    }
+
+    /**
+     * Bridge between the cache and a session type.
+     */
+    abstract static class Adapter<T> {
+        abstract long nativeSize();
+        abstract byte[] pickle(T aSession, byte[] aKey, StringBuffer aErrorMsg);
+        abstract T unpickle(byte[] aPickle, byte[] aKey) throws OlmException;
+        abstract void release(T aSession);
+    }
+
+    private static class Entry<T> {
+        T mSession;
+        int mPins;
+
+        Entry(T aSession) {
+            mSession = aSession;
+        }
+    }
+
+    private final Adapter<T> mAdapter;
+    private final PickleStore mPickleStore;
+    private final byte[] mPickleKey;
+    private final int mMaxEntries;
+    private final long mMaxNativeBytes;
+    private final long mEntrySize;
+
+    // access ordered: the eldest entry is the least recently used one
+    private final LinkedHashMap<String, Entry<T>> mResident = new LinkedHashMap<>(16, 0.75f, true);
+
+    // pinned sessions removed from the cache, released when they are unpinned
+    private final HashMap<String, List<Entry<T>>> mDetached = new HashMap<>();
+
+    private long mHits;
+    private long mMisses;
+    private long mLoads;
+    private long mEvictions;
+
+    SessionCache(Adapter<T> aAdapter, int aMaxEntries, long aMaxNativeBytes, PickleStore aPickleStore, byte[] aPickleKey) {
+        mAdapter = aAdapter;
+        mMaxEntries = Math.max(0, aMaxEntries);
+        mMaxNativeBytes = Math.max(0, aMaxNativeBytes);
+        mPickleStore = (null != aPickleStore) ? aPickleStore : new MemoryPickleStore();
+        mPickleKey = (null != aPickleKey) ? aPickleKey.clone() : OlmUtility.getRandomKey();
+        mEntrySize = aAdapter.nativeSize();
+    }
+
+    /**
+     * Create a cache of Olm sessions whose evicted pickles are kept in memory.
+     * @param aMaxEntries max number of resident sessions, 0 for unbounded
+     * @param aMaxNativeBytes max native bytes held by resident sessions, 0 for unbounded
+     * @return the cache
+     */
+    public static SessionCache<OlmSession> forSessions(int aMaxEntries, long aMaxNativeBytes) {
+        return forSessions(aMaxEntries, aMaxNativeBytes, null, null);
+    }
+
+    /**
+     * Create a cache of Olm sessions.
+     * @param aMaxEntries max number of resident sessions, 0 for unbounded
+     * @param aMaxNativeBytes max native bytes held by resident sessions, 0 for unbounded
+     * @param aPickleStore the evicted pickles storage, null to keep them in memory
+     * @param aPickleKey the key used to encrypt the pickles, null to use a random key
+     * @return the cache
+     */
+    public static SessionCache<OlmSession> forSessions(int aMaxEntries, long aMaxNativeBytes, PickleStore aPickleStore, byte[] aPickleKey) {
+        return new SessionCache<>(new SessionAdapter(), aMaxEntries, aMaxNativeBytes, aPickleStore, aPickleKey);
+    }
+
+    /**
+     * Create a cache of inbound group sessions whose evicted pickles are kept in memory.
+     * @param aMaxEntries max number of resident sessions, 0 for unbounded
+     * @param aMaxNativeBytes max native bytes held by resident sessions, 0 for unbounded
+     * @return the cache
+     */
+    public static SessionCache<OlmInboundGroupSession> forInboundGroupSessions(int aMaxEntries, long aMaxNativeBytes) {
+        return forInboundGroupSessions(aMaxEntries, aMaxNativeBytes, null, null);
+    }
+
+    /**
+     * Create a cache of inbound group sessions.
+     * @param aMaxEntries max number of resident sessions, 0 for unbounded
+     * @param aMaxNativeBytes max native bytes held by resident sessions, 0 for unbounded
+     * @param aPickleStore the evicted pickles storage, null to keep them in memory
+     * @param aPickleKey the key used to encrypt the pickles, null to use a random key
+     * @return the cache
+     */
+    public static SessionCache<OlmInboundGroupSession> forInboundGroupSessions(int aMaxEntries, long aMaxNativeBytes, PickleStore aPickleStore, byte[] aPickleKey) {
+        return new SessionCache<>(new InboundGroupSessionAdapter(), aMaxEntries, aMaxNativeBytes, aPickleStore, aPickleKey);
+    }
+
+    /**
+     * Add a live session to the cache.<br>
+     * The cache takes ownership of the session: it is released when evicted or removed.
+     * @param aSessionId the session identifier
+     * @param aSession the session
+     */
+    public synchronized void put(String aSessionId, T aSession) {
+        if ((null == aSessionId) || (null == aSession)) {
+            Log.e(LOG_TAG, "## put(): invalid input parameters");
+            return;
+        }
+
+        Entry<T> previous = mResident.get(aSessionId);
+
+        // putting a resident session again must keep its pins
+        if ((null == previous) || (previous.mSession != aSession)) {
+            Entry<T> entry = takeDetached(aSessionId, aSession);
+            mResident.put(aSessionId, (null != entry) ? entry : new Entry<>(aSession));
+
+            if (null != previous) {
+                discard(aSessionId, previous);
+            }
+        }
+
+        mPickleStore.remove(aSessionId);
+        trim(null);
+    }
+
+    /**
+     * Return the session, unpickling it if it has been evicted.
+     * @param aSessionId the session identifier
+     * @return the live session, null if the session is unknown
+     * @exception OlmException the unpickling failure reason
+     */
+    public synchronized T get(String aSessionId) throws OlmException {
+        Entry<T> entry = lookup(aSessionId);
+        T session = (null != entry) ? entry.mSession : null;
+
+        // the returned session must not be the one evicted to make room
+        trim(entry);
+        return session;
+    }
+
+    /**
+     * Return the session and pin it so it cannot be evicted before {@link #release(String, Object)} is called.
+     * @param aSessionId the session identifier
+     * @return the live session, null if the session is unknown
+     * @exception OlmException the unpickling failure reason
+     */
+    public synchronized T acquire(String aSessionId) throws OlmException {
+        Entry<T> entry = lookup(aSessionId);
+
+        if (null == entry) {
+            return null;
+        }
+
+        entry.mPins++;
+        trim(entry);
+        return entry.mSession;
+    }
+
+    /**
+     * Unpin a session pinned by {@link #acquire(String)}.<br>
+     * The session is matched by identity, so releasing a session which has since been
+     * replaced under the same identifier does not unpin its replacement.
+     * @param aSessionId the session identifier
+     * @param aSession the session returned by {@link #acquire(String)}
+     */
+    public synchronized void release(String aSessionId, T aSession) {
+        if ((null == aSessionId) || (null == aSession)) {
+            Log.e(LOG_TAG, "## release(): invalid input parameters");
+            return;
+        }
+
+        Entry<T> entry = mResident.get(aSessionId);
+
+        if ((null != entry) && (entry.mSession == aSession)) {
+            if (entry.mPins > 0) {
+                entry.mPins--;
+            }
+        } else {
+            releaseDetached(aSessionId, aSession);
+        }
+
+        trim(null);
+    }
+
+    /**
+     * Tell if the session is currently resident.
+     * @param aSessionId the session identifier
+     * @return true if the native session is live
+     */
+    public synchronized boolean isResident(String aSessionId) {
+        return mResident.containsKey(aSessionId);
+    }
+
+    /**
+     * Remove a session from the cache, releasing it and forgetting its pickle.
+     * @param aSessionId the session identifier
+     */
+    public synchronized void remove(String aSessionId) {
+        Entry<T> entry = mResident.remove(aSessionId);
+
+        if (null != entry) {
+            discard(aSessionId, entry);
+        }
+
+        mPickleStore.remove(aSessionId);
+    }
+
+    /**
+     * Pickle and release all the resident sessions which are not pinned.
+     */
+    public synchronized void evictAll() {
+        Iterator<Map.Entry<String, Entry<T>>> it = mResident.entrySet().iterator();
+
+        while (it.hasNext()) {
+            Map.Entry<String, Entry<T>> entry = it.next();
+
+            if ((0 == entry.getValue().mPins) && evict(entry.getKey(), entry.getValue())) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Release all the resident sessions and forget their pickles.<br>
+     * The pinned sessions are released when they are unpinned.
+     */
+    public synchronized void clear() {
+        for (Map.Entry<String, Entry<T>> entry : mResident.entrySet()) {
+            discard(entry.getKey(), entry.getValue());
+            mPickleStore.remove(entry.getKey());
+        }
+
+        mResident.clear();
+
+        if (mPickleStore instanceof MemoryPickleStore) {
+            ((MemoryPickleStore) mPickleStore).clear();
+        }
+    }
+
+    /**
+     * Return a snapshot of the cache metrics.
+     * @return the metrics
+     */
+    public synchronized Stats getStats() {
+        Stats stats = new Stats();
+        stats.mHits = mHits;
+        stats.mMisses = mMisses;
+        stats.mLoads = mLoads;
+        stats.mEvictions = mEvictions;
+        stats.mResidentCount = mResident.size();
+        stats.mResidentBytes = mResident.size() * mEntrySize;
+        return stats;
+    }
+
+    /**
+     * Find the resident entry, reloading it from its pickle if needed.
+     */
+    private Entry<T> lookup(String aSessionId) throws OlmException {
+        if (null == aSessionId) {
+            return null;
+        }
+
+        Entry<T> entry = mResident.get(aSessionId);
+
+        if (null != entry) {
+            mHits++;
+            return entry;
+        }
+
+        mMisses++;
+
+        byte[] pickle = mPickleStore.get(aSessionId);
+
+        if (null == pickle) {
+            return null;
+        }
+
+        T session = mAdapter.unpickle(pickle, mPickleKey);
+        mLoads++;
+
+        entry = new Entry<>(session);
+        mResident.put(aSessionId, entry);
+        mPickleStore.remove(aSessionId);
+
+        return entry;
+    }
+
+    /**
+     * Evict the least recently used sessions until the cache fits in its capacity.
+     * @param aKeep an entry which must stay resident, null if none
+     */
+    private void trim(Entry<T> aKeep) {
+        Iterator<Map.Entry<String, Entry<T>>> it = mResident.entrySet().iterator();
+
+        while (isOverCapacity() && it.hasNext()) {
+            Map.Entry<String, Entry<T>> entry = it.next();
+
+            if ((entry.getValue() != aKeep) && (0 == entry.getValue().mPins) && evict(entry.getKey(), entry.getValue())) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Release an entry removed from the cache, or keep it aside until it is unpinned.
+     */
+    private void discard(String aSessionId, Entry<T> aEntry) {
+        if (0 == aEntry.mPins) {
+            mAdapter.release(aEntry.mSession);
+            return;
+        }
+
+        List<Entry<T>> entries = mDetached.get(aSessionId);
+
+        if (null == entries) {
+            entries = new ArrayList<>();
+            mDetached.put(aSessionId, entries);
+        }
+
+        entries.add(aEntry);
+    }
+
+    /**
+     * Unpin a removed entry, and release it once it is no longer pinned.
+     */
+    private void releaseDetached(String aSessionId, T aSession) {
+        List<Entry<T>> entries = mDetached.get(aSessionId);
+
+        if (null == entries) {
+            return;
+        }
+
+        for (int i = 0; i < entries.size(); i++) {
+            Entry<T> entry = entries.get(i);
+
+            if (entry.mSession == aSession) {
+                if (--entry.mPins == 0) {
+                    mAdapter.release(entry.mSession);
+                    removeDetached(aSessionId, entries, i);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Take back a removed entry which is put in the cache again.
+     * @return the entry, null if the session is not a removed one
+     */
+    private Entry<T> takeDetached(String aSessionId, T aSession) {
+        List<Entry<T>> entries = mDetached.get(aSessionId);
+
+        if (null == entries) {
+            return null;
+        }
+
+        for (int i = 0; i < entries.size(); i++) {
+            Entry<T> entry = entries.get(i);
+
+            if (entry.mSession == aSession) {
+                removeDetached(aSessionId, entries, i);
+                return entry;
+            }
+        }
+
+        return null;
+    }
+
+    private void removeDetached(String aSessionId, List<Entry<T>> aEntries, int aIndex) {
+        aEntries.remove(aIndex);
+
+        if (aEntries.isEmpty()) {
+            mDetached.remove(aSessionId);
+        }
+    }
+
+    private boolean isOverCapacity() {
+        int count = mResident.size();
+
+        return ((mMaxEntries > 0) && (count > mMaxEntries))
+                || ((mMaxNativeBytes > 0) && (count * mEntrySize > mMaxNativeBytes));
+    }
+
+    /**
+     * Pickle and release a session.
+     * @return true if the session has been evicted, false if it must stay resident
+     */
+    private boolean evict(String aSessionId, Entry<T> aEntry) {
+        StringBuffer errorMsg = new StringBuffer();
+        byte[] pickle = mAdapter.pickle(aEntry.mSession, mPickleKey, errorMsg);
+
+        if (null == pickle) {
+            Log.e(LOG_TAG, "## evict(): failed to pickle " + aSessionId + " " + errorMsg);
+            return false;
+        }
+
+        mPickleStore.put(aSessionId, pickle);
+        mAdapter.release(aEntry.mSession);
+        mEvictions++;
+        return true;
+    }
+
+    private static class MemoryPickleStore implements PickleStore {
+        private final HashMap<String, byte[]> mPickles = new HashMap<>();
+
+        @Override
+        public void put(String aSessionId, byte[] aPickle) {
+            mPickles.put(aSessionId, aPickle);
+        }
+
+        @Override
+        public byte[] get(String aSessionId) {
+            return mPickles.get(aSessionId);
+        }
+
+        @Override
+        public void remove(String aSessionId) {
+            mPickles.remove(aSessionId);
+        }
+
+        void clear() {
+            mPickles.clear();
+        }
+    }
+
+    private static class SessionAdapter extends Adapter<OlmSession> {
+        @Override
+        long nativeSize() {
+            return OlmSession.nativeSize();
+        }
+
+        @Override
+        byte[] pickle(OlmSession aSession, byte[] aKey, StringBuffer aErrorMsg) {
+            return aSession.serialize(aKey, aErrorMsg);
+        }
+
+        @Override
+        OlmSession unpickle(byte[] aPickle, byte[] aKey) throws OlmException {
+            return new OlmSession(aPickle, aKey);
+        }
+
+        @Override
+        void release(OlmSession aSession) {
+            aSession.releaseSession();
+        }
+    }
+
+    private static class InboundGroupSessionAdapter extends Adapter<OlmInboundGroupSession> {
+        @Override
+        long nativeSize() {
+            return OlmInboundGroupSession.nativeSize();
+        }
+
+        @Override
+        byte[] pickle(OlmInboundGroupSession aSession, byte[] aKey, StringBuffer aErrorMsg) {
+            return aSession.serialize(aKey, aErrorMsg);
+        }
+
+        @Override
+        OlmInboundGroupSession unpickle(byte[] aPickle, byte[] aKey) throws OlmException {
+            return new OlmInboundGroupSession(aPickle, aKey);
+        }
+
+        @Override
+        void release(OlmInboundGroupSession aSession) {
+            aSession.releaseSession();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.selfid.olm;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded memo of the Ed25519 signatures already verified by {@link OlmUtility}.<br>
+ * An entry is the SHA-256 of the (public key, signature, message) triple, so a hit means that
+ * this exact signature of this exact message by this exact key has been verified before,
+ * and the Ed25519 verification can be skipped. Only successful verifications are remembered.
+ * <br><br>The cache is installed with {@link OlmUtility#setSignatureCache(SignatureCache)}.
+ * It is thread safe.
+ */
+public class SignatureCache {
+    /** evict the least recently verified entries first **/
+    public static final int EVICTION_LRU = 0;
+
+    /** evict the oldest entries first, whether they are still hit or not **/
+    public static final int EVICTION_FIFO = 1;
+
+    /**
+     * Snapshot of the cache metrics returned by {@link #getStats()}.
+     */
+    public static class Stats {
+        /** number of verifications served by the cache **/
+        public long mHits;
+
+        /** number of verifications which were not in the cache **/
+        public long mMisses;
+
+        /** number of entries dropped to stay within the capacity **/
+        public long mEvictions;
+
+        /** number of cached entries **/
+        public int mSize;
+
+        /**
+         * @return the ratio of the verifications served by the cache, 0 if there was none
+         */
+        public double getHitRate() {
+            long total = mHits + mMisses;
+            return (0 == total) ? 0 : (double) mHits / total;
+        }
+    }
+
+    private final int mCapacity;
+    private final LinkedHashMap<ByteBuffer, Boolean> mEntries;
+
+    private long mHits;
+    private long mMisses;
+    private long mEvictions;
+
+    /**
+     * Create a cache evicting the least recently verified entries.
+     * @param aCapacity max number of entries, at least 1
+     */
+    public SignatureCache(int aCapacity) {
+        this(aCapacity, EVICTION_LRU);
+    }
+
+    /**
+     * Create a cache.
+     * @param aCapacity max number of entries, at least 1
+     * @param aEviction {@link #EVICTION_LRU} or {@link #EVICTION_FIFO}
+     */
+    public SignatureCache(int aCapacity, int aEviction) {
+        mCapacity = Math.max(1, aCapacity);
+        mEntries = new LinkedHashMap<ByteBuffer, Boolean>(16, 0.75f, EVICTION_LRU == aEviction) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Boolean> aEldest) {
+                if (size() > mCapacity) {
+                    mEvictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return the max number of entries
+     */
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * Tell whether a signature has already been verified, and count the lookup in the metrics.
+     * @param aKey the entry returned by {@link #key(String, String, String)}
+     * @return true if the signature is known to be valid
+     */
+    synchronized boolean contains(ByteBuffer aKey) {
+        if (null != mEntries.get(aKey)) {
+            mHits++;
+            return true;
+        }
+
+        mMisses++;
+        return false;
+    }
+
+    /**
+     * Remember a verified signature.
+     * @param aKey the entry returned by {@link #key(String, String, String)}
+     */
+    synchronized void put(ByteBuffer aKey) {
+        mEntries.put(aKey, Boolean.TRUE);
+    }
+
+    /**
+     * Forget all the verified signatures, the metrics are kept.
+     */
+    public synchronized void clear() {
+        mEntries.clear();
+    }
+
+    /**
+     * Return a snapshot of the cache metrics.
+     * @return the metrics
+     */
+    public synchronized Stats getStats() {
+        Stats stats = new Stats();
+        stats.mHits = mHits;
+        stats.mMisses = mMisses;
+        stats.mEvictions = mEvictions;
+        stats.mSize = mEntries.size();
+        return stats;
+    }
+
+    /**
+     * Compute the cache entry of a signature.<br>
+     * The parts are separated by a NUL byte, which can't appear in the base64 key and signature.
+     * @param aSignature the base64 signature
+     * @param aFingerprintKey the base64 ed25519 key
+     * @param aMessage the signed message
+     * @return the entry
+     */
+    static ByteBuffer key(String aSignature, String aFingerprintKey, String aMessage) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(aFingerprintKey.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(aSignature.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(aMessage.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is always available
+            throw new IllegalStateException(e);
+        }
+    }
+}
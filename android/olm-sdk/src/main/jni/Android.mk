@@ -49,10 +49,12 @@ $(SRC_ROOT_DIR)/src/session.cpp \
 $(SRC_ROOT_DIR)/src/utility.cpp \
 $(SRC_ROOT_DIR)/src/pk.cpp \
 $(SRC_ROOT_DIR)/src/sas.c \
+$(SRC_ROOT_DIR)/src/attachment.c \
 $(SRC_ROOT_DIR)/src/ed25519.c \
 $(SRC_ROOT_DIR)/src/error.c \
 $(SRC_ROOT_DIR)/src/inbound_group_session.c \
 $(SRC_ROOT_DIR)/src/megolm.c \
+$(SRC_ROOT_DIR)/src/metrics.c \
 $(SRC_ROOT_DIR)/src/outbound_group_session.c \
 $(SRC_ROOT_DIR)/src/pickle_encoding.c \
 $(SRC_ROOT_DIR)/lib/crypto-algorithms/sha256.c \
@@ -66,7 +68,11 @@ olm_outbound_group_session.cpp \
 olm_utility.cpp \
 olm_manager.cpp \
 olm_pk.cpp \
-olm_sas.cpp
+olm_sas.cpp \
+olm_attachment_cipher.cpp \
+olm_parsed_message.cpp \
+olm_ephemeral_key_pool.cpp \
+olm_metrics.cpp
 
 LOCAL_LDLIBS := -llog
 
@@ -208,6 +208,59 @@ JNIEXPORT jbyteArray OLM_ACCOUNT_FUNC_DEF(identityKeysJni)(JNIEnv *env, jobject
     return byteArrayRetValue;
 }
 
+/**
+ * Get the identity keys without any JSON framing: the 43 characters of the
+ * base64 Curve25519 identity key followed by the 43 characters of the base64
+ * Ed25519 fingerprint key.
+ * @return the packed identity keys or throw an exception if it fails
+ **/
+JNIEXPORT jbyteArray OLM_ACCOUNT_FUNC_DEF(identityKeysPackedJni)(JNIEnv *env, jobject thiz)
+{
+    const char* errorMessage = NULL;
+    jbyteArray byteArrayRetValue = NULL;
+    OlmAccount* accountPtr = getAccountInstanceId(env, thiz);
+
+    if (!accountPtr)
+    {
+        LOGE("## identityKeysPacked(): failure - invalid Account ptr=NULL");
+        errorMessage = "invalid Account ptr";
+    }
+    else
+    {
+        // the packed keys are small enough to live on the stack
+        uint8_t identityKeysBytes[128];
+        size_t identityKeysLength = olm_account_identity_keys_packed_length(accountPtr);
+        size_t keysResult = olm_account_identity_keys_packed(accountPtr, identityKeysBytes, sizeof(identityKeysBytes));
+
+        if (keysResult == olm_error())
+        {
+            errorMessage = (const char *)olm_account_last_error(accountPtr);
+            LOGE("## identityKeysPacked(): failure - error getting identity keys Msg=%s", errorMessage);
+        }
+        else
+        {
+            byteArrayRetValue = env->NewByteArray(identityKeysLength);
+
+            if (!byteArrayRetValue)
+            {
+                LOGE("## identityKeysPacked(): failure - return byte array OOM");
+                errorMessage = "byte array OOM";
+            }
+            else
+            {
+                env->SetByteArrayRegion(byteArrayRetValue, 0/*offset*/, identityKeysLength, (const jbyte*)identityKeysBytes);
+            }
+        }
+    }
+
+    if (errorMessage)
+    {
+        env->ThrowNew(env->FindClass("java/lang/Exception"), errorMessage);
+    }
+
+    return byteArrayRetValue;
+}
+
 // *********************************************************************
 // ************************* ONE TIME KEYS API *************************
 // *********************************************************************
@@ -365,6 +418,110 @@ JNIEXPORT jbyteArray OLM_ACCOUNT_FUNC_DEF(oneTimeKeysJni)(JNIEnv *env, jobject t
     return byteArrayRetValue;
 }
 
+/**
+ * Get the number of "one time keys" held by the account.
+ * @param aUnpublishedOnly true to only count the keys that haven't been published yet
+ * @return the number of keys, -1 if the account is invalid
+ **/
+JNIEXPORT jint OLM_ACCOUNT_FUNC_DEF(oneTimeKeysCountJni)(JNIEnv *env, jobject thiz, jboolean aUnpublishedOnly)
+{
+    OlmAccount* accountPtr = getAccountInstanceId(env, thiz);
+    jint count = -1;
+
+    if (!accountPtr)
+    {
+        LOGE("## oneTimeKeysCountJni(): failure - invalid Account ptr=NULL");
+    }
+    else
+    {
+        count = (jint)olm_account_one_time_keys_count(accountPtr, aUnpublishedOnly ? 1 : 0);
+    }
+
+    return count;
+}
+
+/**
+ * Get a page of "one time keys" without any JSON framing.<br>
+ * Each key is a record made of the 6 characters of the base64 key id
+ * followed by the 43 characters of the base64 Curve25519 key.
+ * An exception is thrown if the operation fails.
+ * @param aOffset number of keys to skip
+ * @param aLimit maximum number of keys to return
+ * @param aUnpublishedOnly true to skip the keys that have already been published
+ * @return the packed records
+ **/
+JNIEXPORT jbyteArray OLM_ACCOUNT_FUNC_DEF(oneTimeKeysPackedJni)(JNIEnv *env, jobject thiz, jint aOffset, jint aLimit, jboolean aUnpublishedOnly)
+{
+    const char* errorMessage = NULL;
+    jbyteArray byteArrayRetValue = NULL;
+    OlmAccount* accountPtr = getAccountInstanceId(env, thiz);
+
+    if (!accountPtr)
+    {
+        LOGE("## oneTimeKeysPackedJni(): failure - invalid Account ptr");
+        errorMessage = "invalid Account ptr";
+    }
+    else if ((aOffset < 0) || (aLimit < 0))
+    {
+        LOGE("## oneTimeKeysPackedJni(): failure - invalid offset or limit");
+        errorMessage = "invalid offset or limit";
+    }
+    else
+    {
+        size_t available = olm_account_one_time_keys_count(accountPtr, aUnpublishedOnly ? 1 : 0);
+        size_t count = ((size_t)aOffset < available) ? available - aOffset : 0;
+
+        if (count > (size_t)aLimit)
+        {
+            count = aLimit;
+        }
+
+        size_t recordLength = olm_account_one_time_key_packed_length(accountPtr);
+        size_t keysLength = count * recordLength;
+        uint8_t *keysBytesPtr = (uint8_t *)malloc(keysLength ? keysLength : 1);
+
+        if (!keysBytesPtr)
+        {
+            LOGE("## oneTimeKeysPackedJni(): failure - one time keys array OOM");
+            errorMessage = "one time keys array OOM";
+        }
+        else
+        {
+            size_t keysResult = olm_account_one_time_keys_packed(accountPtr, aOffset, aLimit, aUnpublishedOnly ? 1 : 0, keysBytesPtr, keysLength);
+
+            if (keysResult == olm_error())
+            {
+                errorMessage = (const char *)olm_account_last_error(accountPtr);
+                LOGE("## oneTimeKeysPackedJni(): failure - error getting one time keys Msg=%s", errorMessage);
+            }
+            else
+            {
+                byteArrayRetValue = env->NewByteArray(keysResult * recordLength);
+
+                if (!byteArrayRetValue)
+                {
+                    LOGE("## oneTimeKeysPackedJni(): failure - return byte array OOM");
+                    errorMessage = "byte array OOM";
+                }
+                else
+                {
+                    env->SetByteArrayRegion(byteArrayRetValue, 0 /*offset*/, keysResult * recordLength, (const jbyte*)keysBytesPtr);
+                    LOGD("## oneTimeKeysPackedJni(): success - count=%lu", static_cast<long unsigned int>(keysResult));
+                }
+            }
+
+            free(keysBytesPtr);
+        }
+    }
+
+    if (errorMessage)
+    {
+        env->ThrowNew(env->FindClass("java/lang/Exception"), errorMessage);
+    }
+
+    return byteArrayRetValue;
+}
+
 /**
  * Remove the "one time keys"  that the session used from the account.
  * An exception is thrown if the operation fails.
@@ -518,6 +675,213 @@ JNIEXPORT jbyteArray OLM_ACCOUNT_FUNC_DEF(signMessageJni)(JNIEnv *env, jobject t
     return signedMsgRetValueBuffer;
 }
 
+/**
+ * Sign a batch of messages with the ed25519 fingerprint key for this account.<br>
+ * The messages are signed in a single call, reusing the same native buffers.
+ * An exception is thrown if a message can't be signed.
+ * @param aMessages the messages to sign
+ * @return the signatures, in the order of the messages
+ */
+JNIEXPORT jobjectArray OLM_ACCOUNT_FUNC_DEF(signMessagesJni)(JNIEnv *env, jobject thiz, jobjectArray aMessages)
+{
+    const char* errorMessage = NULL;
+    OlmAccount* accountPtr = NULL;
+    jobjectArray signaturesRetValue = NULL;
+    jclass byteArrayClass = NULL;
+
+    if (!aMessages)
+    {
+        LOGE("## signMessagesJni(): failure - invalid aMessages param");
+        errorMessage = "invalid aMessages param";
+    }
+    else if (!(accountPtr = getAccountInstanceId(env, thiz)))
+    {
+        LOGE("## signMessagesJni(): failure - invalid account ptr");
+        errorMessage = "invalid account ptr";
+    }
+    else if (!(byteArrayClass = env->FindClass("[B")))
+    {
+        LOGE("## signMessagesJni(): failure - byte array class");
+        errorMessage = "byte array class";
+    }
+    else
+    {
+        jsize count = env->GetArrayLength(aMessages);
+        size_t signatureLength = olm_account_signature_length(accountPtr);
+        uint8_t *signaturePtr = (uint8_t*)malloc(signatureLength);
+        uint8_t *messagePtr = NULL;
+        size_t messageCapacity = 0;
+
+        if (!signaturePtr)
+        {
+            LOGE("## signMessagesJni(): failure - signature allocation OOM");
+            errorMessage = "signature allocation OOM";
+        }
+        else if (!(signaturesRetValue = env->NewObjectArray(count, byteArrayClass, NULL)))
+        {
+            LOGE("## signMessagesJni(): failure - signatures array OOM");
+            errorMessage = "signatures array OOM";
+        }
+
+        for (jsize i = 0; !errorMessage && (i < count); i++)
+        {
+            jbyteArray message = (jbyteArray)env->GetObjectArrayElement(aMessages, i);
+            size_t messageLength = message ? (size_t)env->GetArrayLength(message) : 0;
+
+            // the message buffer only grows
+            if (messageLength > messageCapacity)
+            {
+                uint8_t *biggerPtr = (uint8_t*)malloc(messageLength);
+
+                if (messagePtr)
+                {
+                    memset(messagePtr, 0, messageCapacity);
+                    free(messagePtr);
+                }
+
+                messagePtr = biggerPtr;
+                messageCapacity = biggerPtr ? messageLength : 0;
+            }
+
+            if (!message)
+            {
+                LOGE("## signMessagesJni(): failure - invalid message %d", i);
+                errorMessage = "invalid message";
+            }
+            else if (messageLength && !messagePtr)
+            {
+                LOGE("## signMessagesJni(): failure - message allocation OOM");
+                errorMessage = "message allocation OOM";
+            }
+            else
+            {
+                env->GetByteArrayRegion(message, 0, messageLength, (jbyte*)messagePtr);
+
+                if (olm_account_sign(accountPtr, messagePtr, messageLength, signaturePtr, signatureLength) == olm_error())
+                {
+                    errorMessage = (const char *)olm_account_last_error(accountPtr);
+                    LOGE("## signMessagesJni(): failure - error signing message Msg=%s", errorMessage);
+                }
+                else
+                {
+                    jbyteArray signature = env->NewByteArray(signatureLength);
+
+                    if (!signature)
+                    {
+                        LOGE("## signMessagesJni(): failure - signature array OOM");
+                        errorMessage = "signature array OOM";
+                    }
+                    else
+                    {
+                        env->SetByteArrayRegion(signature, 0, signatureLength, (jbyte*)signaturePtr);
+                        env->SetObjectArrayElement(signaturesRetValue, i, signature);
+                        env->DeleteLocalRef(signature);
+                    }
+                }
+            }
+
+            if (message)
+            {
+                env->DeleteLocalRef(message);
+            }
+        }
+
+        LOGD("## signMessagesJni(): count=%d", count);
+
+        if (messagePtr)
+        {
+            memset(messagePtr, 0, messageCapacity);
+            free(messagePtr);
+        }
+
+        free(signaturePtr);
+    }
+
+    if (errorMessage)
+    {
+        env->ThrowNew(env->FindClass("java/lang/Exception"), errorMessage);
+    }
+
+    return signaturesRetValue;
+}
+
+/**
+ * Sign a page of "one time keys" for a signed key upload.<br>
+ * Each key is a record made of the packed key (see oneTimeKeysPackedJni()) followed by
+ * the base64 signature of its canonical JSON object {"key":"..."}.
+ * An exception is thrown if the operation fails.
+ * @param aOffset number of keys to skip
+ * @param aLimit maximum number of keys to sign
+ * @param aUnpublishedOnly true to skip the keys that have already been published
+ * @return the signed records
+ */
+JNIEXPORT jbyteArray OLM_ACCOUNT_FUNC_DEF(signOneTimeKeysJni)(JNIEnv *env, jobject thiz, jint aOffset, jint aLimit, jboolean aUnpublishedOnly)
+{
+    const char* errorMessage = NULL;
+    jbyteArray byteArrayRetValue = NULL;
+    OlmAccount* accountPtr = getAccountInstanceId(env, thiz);
+
+    if (!accountPtr)
+    {
+        LOGE("## signOneTimeKeysJni(): failure - invalid Account ptr");
+        errorMessage = "invalid Account ptr";
+    }
+    else if ((aOffset < 0) || (aLimit < 0))
+    {
+        LOGE("## signOneTimeKeysJni(): failure - invalid offset or limit");
+        errorMessage = "invalid offset or limit";
+    }
+    else
+    {
+        size_t available = olm_account_one_time_keys_count(accountPtr, aUnpublishedOnly ? 1 : 0);
+        size_t count = ((size_t)aOffset < available) ? available - aOffset : 0;
+
+        if (count > (size_t)aLimit)
+        {
+            count = aLimit;
+        }
+
+        size_t recordLength = olm_account_signed_one_time_key_length(accountPtr);
+        size_t keysLength = count * recordLength;
+        uint8_t *keysBytesPtr = (uint8_t *)malloc(keysLength ? keysLength : 1);
+
+        if (!keysBytesPtr)
+        {
+            LOGE("## signOneTimeKeysJni(): failure - signed keys array OOM");
+            errorMessage = "signed keys array OOM";
+        }
+        else
+        {
+            size_t keysResult = olm_account_sign_one_time_keys(accountPtr, aOffset, aLimit, aUnpublishedOnly ? 1 : 0, keysBytesPtr, keysLength);
+
+            if (keysResult == olm_error())
+            {
+                errorMessage = (const char *)olm_account_last_error(accountPtr);
+                LOGE("## signOneTimeKeysJni(): failure - error signing one time keys Msg=%s", errorMessage);
+            }
+            else if (!(byteArrayRetValue = env->NewByteArray(keysResult * recordLength)))
+            {
+                LOGE("## signOneTimeKeysJni(): failure - return byte array OOM");
+                errorMessage = "byte array OOM";
+            }
+            else
+            {
+                env->SetByteArrayRegion(byteArrayRetValue, 0 /*offset*/, keysResult * recordLength, (const jbyte*)keysBytesPtr);
+                LOGD("## signOneTimeKeysJni(): success - count=%lu", static_cast<long unsigned int>(keysResult));
+            }
+
+            free(keysBytesPtr);
+        }
+    }
+
+    if (errorMessage)
+    {
+        env->ThrowNew(env->FindClass("java/lang/Exception"), errorMessage);
+    }
+
+    return byteArrayRetValue;
+}
+
 /**
  * Serialize and encrypt account instance.<br>
  * @param aKeyBuffer key used to encrypt the serialized account data
@@ -34,9 +34,12 @@ JNIEXPORT jlong OLM_ACCOUNT_FUNC_DEF(createNewAccountJni)(JNIEnv *env, jobject t
 
 // identity keys
 JNIEXPORT jbyteArray OLM_ACCOUNT_FUNC_DEF(identityKeysJni)(JNIEnv *env, jobject thiz);
+JNIEXPORT jbyteArray OLM_ACCOUNT_FUNC_DEF(identityKeysPackedJni)(JNIEnv *env, jobject thiz);
 
 // one time keys
 JNIEXPORT jbyteArray OLM_ACCOUNT_FUNC_DEF(oneTimeKeysJni)(JNIEnv *env, jobject thiz);
+JNIEXPORT jint OLM_ACCOUNT_FUNC_DEF(oneTimeKeysCountJni)(JNIEnv *env, jobject thiz, jboolean aUnpublishedOnly);
+JNIEXPORT jbyteArray OLM_ACCOUNT_FUNC_DEF(oneTimeKeysPackedJni)(JNIEnv *env, jobject thiz, jint aOffset, jint aLimit, jboolean aUnpublishedOnly);
 JNIEXPORT jlong OLM_ACCOUNT_FUNC_DEF(maxOneTimeKeysJni)(JNIEnv *env, jobject thiz);
 JNIEXPORT void OLM_ACCOUNT_FUNC_DEF(generateOneTimeKeysJni)(JNIEnv *env, jobject thiz, jint aNumberOfKeys);
 JNIEXPORT void OLM_ACCOUNT_FUNC_DEF(removeOneTimeKeysJni)(JNIEnv *env, jobject thiz, jlong aNativeOlmSessionId);
@@ -44,6 +47,8 @@ JNIEXPORT void OLM_ACCOUNT_FUNC_DEF(markOneTimeKeysAsPublishedJni)(JNIEnv *env,
 
 // signing
 JNIEXPORT jbyteArray OLM_ACCOUNT_FUNC_DEF(signMessageJni)(JNIEnv *env, jobject thiz, jbyteArray aMessage);
+JNIEXPORT jobjectArray OLM_ACCOUNT_FUNC_DEF(signMessagesJni)(JNIEnv *env, jobject thiz, jobjectArray aMessages);
+JNIEXPORT jbyteArray OLM_ACCOUNT_FUNC_DEF(signOneTimeKeysJni)(JNIEnv *env, jobject thiz, jint aOffset, jint aLimit, jboolean aUnpublishedOnly);
 
 // serialization
 JNIEXPORT jbyteArray OLM_ACCOUNT_FUNC_DEF(serializeJni)(JNIEnv *env, jobject thiz, jbyteArray aKeyBuffer);
@@ -0,0 +1,351 @@
+/*
+ * Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include "olm_attachment_cipher.h"
+
+#include "self_olm/olm.h"
+
+using namespace AndroidOlmSdk;
+
+/**
+ * Create and initialise a native attachment cipher.<br>
+ * An exception is thrown if the operation fails.
+ * @param aEncrypt true to encrypt, false to decrypt
+ * @param aKeyBuffer the AES key
+ * @param aIvBuffer the IV
+ * @return the native attachment cipher instance identifier
+ */
+JNIEXPORT jlong OLM_ATTACHMENT_CIPHER_FUNC_DEF(createNewAttachmentCipherJni)(JNIEnv *env, jobject thiz, jboolean aEncrypt, jbyteArray aKeyBuffer, jbyteArray aIvBuffer)
+{
+    const char* errorMessage = NULL;
+    OlmAttachment *attachmentPtr = NULL;
+    jbyte *keyPtr = NULL;
+    jbyte *ivPtr = NULL;
+    jboolean keyWasCopied = JNI_FALSE;
+
+    if (!aKeyBuffer || !aIvBuffer)
+    {
+        LOGE("## createNewAttachmentCipherJni(): failure - invalid key or iv");
+        errorMessage = "invalid key or iv";
+    }
+    else if (!(attachmentPtr = (OlmAttachment *)malloc(olm_attachment_size())))
+    {
+        LOGE("## createNewAttachmentCipherJni(): failure - init attachment cipher OOM");
+        errorMessage = "init attachment cipher OOM";
+    }
+    else if (!(keyPtr = env->GetByteArrayElements(aKeyBuffer, &keyWasCopied)))
+    {
+        LOGE("## createNewAttachmentCipherJni(): failure - key JNI allocation OOM");
+        errorMessage = "key JNI allocation OOM";
+    }
+    else if (!(ivPtr = env->GetByteArrayElements(aIvBuffer, NULL)))
+    {
+        LOGE("## createNewAttachmentCipherJni(): failure - iv JNI allocation OOM");
+        errorMessage = "iv JNI allocation OOM";
+    }
+    else
+    {
+        size_t keyLength = (size_t)env->GetArrayLength(aKeyBuffer);
+        size_t ivLength = (size_t)env->GetArrayLength(aIvBuffer);
+        size_t result;
+
+        attachmentPtr = olm_attachment(attachmentPtr);
+
+        if (JNI_FALSE != aEncrypt)
+        {
+            result = olm_attachment_init_encryption(attachmentPtr, keyPtr, keyLength, ivPtr, ivLength);
+        }
+        else
+        {
+            result = olm_attachment_init_decryption(attachmentPtr, keyPtr, keyLength, ivPtr, ivLength);
+        }
+
+        if (result == olm_error())
+        {
+            errorMessage = olm_attachment_last_error(attachmentPtr);
+            LOGE("## createNewAttachmentCipherJni(): failure - init Msg=%s", errorMessage);
+        }
+        else
+        {
+            LOGD("## createNewAttachmentCipherJni(): success - attachmentPtr=%p", attachmentPtr);
+        }
+    }
+
+    if (keyPtr)
+    {
+        if (keyWasCopied)
+        {
+            memset(keyPtr, 0, (size_t)env->GetArrayLength(aKeyBuffer));
+        }
+        env->ReleaseByteArrayElements(aKeyBuffer, keyPtr, JNI_ABORT);
+    }
+
+    if (ivPtr)
+    {
+        env->ReleaseByteArrayElements(aIvBuffer, ivPtr, JNI_ABORT);
+    }
+
+    if (errorMessage)
+    {
+        if (attachmentPtr)
+        {
+            olm_clear_attachment(attachmentPtr);
+            free(attachmentPtr);
+            attachmentPtr = NULL;
+        }
+        env->ThrowNew(env->FindClass("java/lang/Exception"), errorMessage);
+    }
+
+    return (jlong)(intptr_t)attachmentPtr;
+}
+
+/**
+ * Release the native attachment cipher, wiping the key and the state.
+ */
+JNIEXPORT void OLM_ATTACHMENT_CIPHER_FUNC_DEF(releaseAttachmentCipherJni)(JNIEnv *env, jobject thiz)
+{
+    LOGD("## releaseAttachmentCipherJni(): IN");
+    OlmAttachment* attachmentPtr = getAttachmentCipherInstanceId(env, thiz);
+
+    if (!attachmentPtr)
+    {
+        LOGE("## releaseAttachmentCipherJni(): failure - invalid attachment cipher ptr=NULL");
+    }
+    else
+    {
+        olm_clear_attachment(attachmentPtr);
+        free(attachmentPtr);
+    }
+}
+
+/**
+ * Encrypt or decrypt a range of a direct byte buffer into another one, or into the same one.<br>
+ * The buffers are accessed in place, so no data is copied across JNI.
+ * An exception is thrown if the operation fails.
+ * @param aInput the input direct buffer
+ * @param aInputOffset the offset of the data in the input buffer
+ * @param aOutput the output direct buffer
+ * @param aOutputOffset the offset of the data in the output buffer
+ * @param aLength the number of bytes to process
+ * @return the number of bytes processed
+ */
+JNIEXPORT jint OLM_ATTACHMENT_CIPHER_FUNC_DEF(updateDirectJni)(JNIEnv *env, jobject thiz, jobject aInput, jint aInputOffset, jobject aOutput, jint aOutputOffset, jint aLength)
+{
+    const char* errorMessage = NULL;
+    jint returnValue = 0;
+    OlmAttachment* attachmentPtr = getAttachmentCipherInstanceId(env, thiz);
+    uint8_t *inputPtr = NULL;
+    uint8_t *outputPtr = NULL;
+
+    if (!attachmentPtr)
+    {
+        LOGE("## updateDirectJni(): failure - invalid attachment cipher ptr=NULL");
+        errorMessage = "invalid attachment cipher ptr=NULL";
+    }
+    else if (!aInput || !aOutput || (aInputOffset < 0) || (aOutputOffset < 0) || (aLength < 0))
+    {
+        LOGE("## updateDirectJni(): failure - invalid parameters");
+        errorMessage = "invalid parameters";
+    }
+    else if (!(inputPtr = (uint8_t *)env->GetDirectBufferAddress(aInput))
+             || !(outputPtr = (uint8_t *)env->GetDirectBufferAddress(aOutput)))
+    {
+        LOGE("## updateDirectJni(): failure - not a direct buffer");
+        errorMessage = "not a direct buffer";
+    }
+    else if (((jlong)aInputOffset + aLength > env->GetDirectBufferCapacity(aInput))
+             || ((jlong)aOutputOffset + aLength > env->GetDirectBufferCapacity(aOutput)))
+    {
+        LOGE("## updateDirectJni(): failure - range out of the buffer bounds");
+        errorMessage = "range out of the buffer bounds";
+    }
+    else
+    {
+        size_t result = olm_attachment_update(attachmentPtr,
+                                              inputPtr + aInputOffset,
+                                              (size_t)aLength,
+                                              outputPtr + aOutputOffset,
+                                              (size_t)aLength);
+
+        if (result == olm_error())
+        {
+            errorMessage = olm_attachment_last_error(attachmentPtr);
+            LOGE("## updateDirectJni(): failure - update Msg=%s", errorMessage);
+        }
+        else
+        {
+            returnValue = (jint)result;
+        }
+    }
+
+    if (errorMessage)
+    {
+        env->ThrowNew(env->FindClass("java/lang/Exception"), errorMessage);
+    }
+
+    return returnValue;
+}
+
+/**
+ * Encrypt or decrypt a range of a byte array into another one, or into the same one.<br>
+ * The arrays are pinned while they are processed, so no data is copied across JNI when the VM allows it.
+ * The garbage collector may be held back meanwhile: the Java side keeps the ranges to a bounded chunk size.
+ * An exception is thrown if the operation fails.
+ * @param aInput the input array
+ * @param aInputOffset the offset of the data in the input array
+ * @param aOutput the output array
+ * @param aOutputOffset the offset of the data in the output array
+ * @param aLength the number of bytes to process
+ * @return the number of bytes processed
+ */
+JNIEXPORT jint OLM_ATTACHMENT_CIPHER_FUNC_DEF(updateArrayJni)(JNIEnv *env, jobject thiz, jbyteArray aInput, jint aInputOffset, jbyteArray aOutput, jint aOutputOffset, jint aLength)
+{
+    const char* errorMessage = NULL;
+    jint returnValue = 0;
+    OlmAttachment* attachmentPtr = getAttachmentCipherInstanceId(env, thiz);
+    bool inPlace = false;
+    uint8_t *inputPtr = NULL;
+    uint8_t *outputPtr = NULL;
+
+    if (!attachmentPtr)
+    {
+        LOGE("## updateArrayJni(): failure - invalid attachment cipher ptr=NULL");
+        errorMessage = "invalid attachment cipher ptr=NULL";
+    }
+    else if (!aInput || !aOutput || (aInputOffset < 0) || (aOutputOffset < 0) || (aLength < 0))
+    {
+        LOGE("## updateArrayJni(): failure - invalid parameters");
+        errorMessage = "invalid parameters";
+    }
+    else if (((jlong)aInputOffset + aLength > env->GetArrayLength(aInput))
+             || ((jlong)aOutputOffset + aLength > env->GetArrayLength(aOutput)))
+    {
+        LOGE("## updateArrayJni(): failure - range out of the array bounds");
+        errorMessage = "range out of the array bounds";
+    }
+    else
+    {
+        inPlace = env->IsSameObject(aInput, aOutput);
+
+        // no JNI call is allowed until the arrays are released
+        inputPtr = (uint8_t *)env->GetPrimitiveArrayCritical(aInput, NULL);
+        outputPtr = inPlace ? inputPtr : (uint8_t *)env->GetPrimitiveArrayCritical(aOutput, NULL);
+
+        if (!inputPtr || !outputPtr)
+        {
+            errorMessage = "array JNI allocation OOM";
+        }
+        else
+        {
+            size_t result = olm_attachment_update(attachmentPtr,
+                                                  inputPtr + aInputOffset,
+                                                  (size_t)aLength,
+                                                  outputPtr + aOutputOffset,
+                                                  (size_t)aLength);
+
+            if (result == olm_error())
+            {
+                errorMessage = olm_attachment_last_error(attachmentPtr);
+            }
+            else
+            {
+                returnValue = (jint)result;
+            }
+        }
+
+        if (outputPtr && !inPlace)
+        {
+            env->ReleasePrimitiveArrayCritical(aOutput, outputPtr, 0);
+        }
+        if (inputPtr)
+        {
+            env->ReleasePrimitiveArrayCritical(aInput, inputPtr, inPlace ? 0 : JNI_ABORT);
+        }
+
+        if (errorMessage)
+        {
+            LOGE("## updateArrayJni(): failure - update Msg=%s", errorMessage);
+        }
+    }
+
+    if (errorMessage)
+    {
+        env->ThrowNew(env->FindClass("java/lang/Exception"), errorMessage);
+    }
+
+    return returnValue;
+}
+
+/**
+ * Get the SHA-256 digest of the ciphertext processed so far.<br>
+ * An exception is thrown if the operation fails.
+ * @return the raw digest
+ */
+JNIEXPORT jbyteArray OLM_ATTACHMENT_CIPHER_FUNC_DEF(digestJni)(JNIEnv *env, jobject thiz)
+{
+    const char* errorMessage = NULL;
+    jbyteArray returnValue = 0;
+    OlmAttachment* attachmentPtr = getAttachmentCipherInstanceId(env, thiz);
+
+    if (!attachmentPtr)
+    {
+        LOGE("## digestJni(): failure - invalid attachment cipher ptr=NULL");
+        errorMessage = "invalid attachment cipher ptr=NULL";
+    }
+    else
+    {
+        size_t digestLength = olm_attachment_digest_length();
+        uint8_t digest[32];
+        size_t result = olm_attachment_digest(attachmentPtr, digest, sizeof(digest));
+
+        if (result == olm_error())
+        {
+            errorMessage = olm_attachment_last_error(attachmentPtr);
+            LOGE("## digestJni(): failure - digest Msg=%s", errorMessage);
+        }
+        else
+        {
+            returnValue = env->NewByteArray(digestLength);
+            env->SetByteArrayRegion(returnValue, 0, digestLength, (jbyte*)digest);
+        }
+    }
+
+    if (errorMessage)
+    {
+        env->ThrowNew(env->FindClass("java/lang/Exception"), errorMessage);
+    }
+
+    return returnValue;
+}
+
+/**
+ * Get the number of bytes processed since the cipher was created.<br>
+ * An exception is thrown if the operation fails.
+ * @return the number of bytes processed
+ */
+JNIEXPORT jlong OLM_ATTACHMENT_CIPHER_FUNC_DEF(processedLengthJni)(JNIEnv *env, jobject thiz)
+{
+    OlmAttachment* attachmentPtr = getAttachmentCipherInstanceId(env, thiz);
+
+    if (!attachmentPtr)
+    {
+        LOGE("## processedLengthJni(): failure - invalid attachment cipher ptr=NULL");
+        env->ThrowNew(env->FindClass("java/lang/Exception"), "invalid attachment cipher ptr=NULL");
+        return 0;
+    }
+
+    return (jlong)olm_attachment_processed_length(attachmentPtr);
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef _OMLATTACHMENTCIPHER_H
+#define _OMLATTACHMENTCIPHER_H
+
+#include "olm_jni.h"
+#include "self_olm/attachment.h"
+
+#define OLM_ATTACHMENT_CIPHER_FUNC_DEF(func_name) FUNC_DEF(OlmAttachmentCipher,func_name)
+
+#ifdef __cplusplus
+extern "C" {
+#endif
+
+JNIEXPORT jlong OLM_ATTACHMENT_CIPHER_FUNC_DEF(createNewAttachmentCipherJni)(JNIEnv *env, jobject thiz, jboolean aEncrypt, jbyteArray aKeyBuffer, jbyteArray aIvBuffer);
+JNIEXPORT void OLM_ATTACHMENT_CIPHER_FUNC_DEF(releaseAttachmentCipherJni)(JNIEnv *env, jobject thiz);
+JNIEXPORT jint OLM_ATTACHMENT_CIPHER_FUNC_DEF(updateDirectJni)(JNIEnv *env, jobject thiz, jobject aInput, jint aInputOffset, jobject aOutput, jint aOutputOffset, jint aLength);
+JNIEXPORT jint OLM_ATTACHMENT_CIPHER_FUNC_DEF(updateArrayJni)(JNIEnv *env, jobject thiz, jbyteArray aInput, jint aInputOffset, jbyteArray aOutput, jint aOutputOffset, jint aLength);
+JNIEXPORT jbyteArray OLM_ATTACHMENT_CIPHER_FUNC_DEF(digestJni)(JNIEnv *env, jobject thiz);
+JNIEXPORT jlong OLM_ATTACHMENT_CIPHER_FUNC_DEF(processedLengthJni)(JNIEnv *env, jobject thiz);
+
+#ifdef __cplusplus
+}
+#endif
+
+#endif
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include "olm_ephemeral_key_pool.h"
+
+#include <pthread.h>
+
+using namespace AndroidOlmSdk;
+
+/*
+ * Process wide pool of Curve25519 key pairs, generated ahead of time by
+ * OlmEphemeralKeyPool so that the send path doesn't have to.
+ * The key pairs are generated outside the lock: only the copies are serialised.
+ */
+static pthread_mutex_t sPoolMutex = PTHREAD_MUTEX_INITIALIZER;
+static uint8_t *sPool = NULL;
+static size_t sPoolSize = 0;
+
+/**
+ * Take key pairs from the pool.<br>
+ * Either all the requested key pairs are taken or none is.
+ * @param aKeyPairs output buffer, aCount * olm_ephemeral_key_pair_length() bytes
+ * @param aCount number of key pairs
+ * @return true if the key pairs were taken
+ */
+bool takeEphemeralKeyPairs(uint8_t *aKeyPairs, size_t aCount)
+{
+    bool retCode = false;
+    size_t keyPairLength = olm_ephemeral_key_pair_length();
+
+    pthread_mutex_lock(&sPoolMutex);
+
+    if (sPoolSize >= aCount)
+    {
+        sPoolSize -= aCount;
+        memcpy(aKeyPairs, sPool + sPoolSize * keyPairLength, aCount * keyPairLength);
+        memset(sPool + sPoolSize * keyPairLength, 0, aCount * keyPairLength);
+        retCode = true;
+    }
+
+    pthread_mutex_unlock(&sPoolMutex);
+
+    return retCode;
+}
+
+/**
+ * Generate key pairs until the pool holds aTargetSize of them.<br>
+ * The target is capped to EPHEMERAL_KEY_POOL_CAPACITY.
+ * @param aTargetSize wanted number of key pairs
+ * @return the pool size, -1 if the random data can't be drawn
+ */
+JNIEXPORT jint OLM_EPHEMERAL_KEY_POOL_FUNC_DEF(fillJni)(JNIEnv *env, jclass clazz, jint aTargetSize)
+{
+    size_t targetSize = (aTargetSize < 0) ? 0 : (size_t)aTargetSize;
+    size_t keyPairLength = olm_ephemeral_key_pair_length();
+    size_t randomLength = olm_ephemeral_key_pair_random_length();
+    size_t missing = 0;
+    jint poolSize = -1;
+
+    if (targetSize > EPHEMERAL_KEY_POOL_CAPACITY)
+    {
+        targetSize = EPHEMERAL_KEY_POOL_CAPACITY;
+    }
+
+    pthread_mutex_lock(&sPoolMutex);
+    if (!sPool)
+    {
+        sPool = (uint8_t *)calloc(EPHEMERAL_KEY_POOL_CAPACITY, keyPairLength);
+    }
+    missing = (targetSize > sPoolSize) ? targetSize - sPoolSize : 0;
+    poolSize = (jint)sPoolSize;
+    pthread_mutex_unlock(&sPoolMutex);
+
+    if (!sPool)
+    {
+        LOGE("## fillJni(): failure - pool OOM");
+        return -1;
+    }
+    else if (!missing)
+    {
+        return poolSize;
+    }
+
+    uint8_t *randomBuffPtr = NULL;
+    uint8_t *keyPairsPtr = (uint8_t *)malloc(missing * keyPairLength);
+
+    poolSize = -1;
+
+    if (!keyPairsPtr)
+    {
+        LOGE("## fillJni(): failure - key pairs OOM");
+    }
+    else if (!setRandomInBuffer(env, &randomBuffPtr, missing * randomLength))
+    {
+        LOGE("## fillJni(): failure - random buffer init");
+    }
+    else
+    {
+        size_t generated = 0;
+
+        for (; generated < missing; generated++)
+        {
+            size_t result = olm_generate_ephemeral_key_pair(randomBuffPtr + generated * randomLength, randomLength,
+                                                            keyPairsPtr + generated * keyPairLength, keyPairLength);
+            if (result == olm_error())
+            {
+                LOGE("## fillJni(): failure - key pair generation");
+                break;
+            }
+        }
+
+        pthread_mutex_lock(&sPoolMutex);
+
+        // the pool may have been filled concurrently, the extra key pairs are dropped
+        size_t stored = EPHEMERAL_KEY_POOL_CAPACITY - sPoolSize;
+
+        if (stored > generated)
+        {
+            stored = generated;
+        }
+
+        memcpy(sPool + sPoolSize * keyPairLength, keyPairsPtr, stored * keyPairLength);
+        sPoolSize += stored;
+        poolSize = (jint)sPoolSize;
+
+        pthread_mutex_unlock(&sPoolMutex);
+
+        LOGD("## fillJni(): generated=%lu poolSize=%d", static_cast<long unsigned int>(generated), poolSize);
+    }
+
+    if (randomBuffPtr)
+    {
+        memset(randomBuffPtr, 0, missing * randomLength);
+        free(randomBuffPtr);
+    }
+
+    if (keyPairsPtr)
+    {
+        memset(keyPairsPtr, 0, missing * keyPairLength);
+        free(keyPairsPtr);
+    }
+
+    return poolSize;
+}
+
+/**
+ * @return the number of key pairs in the pool
+ */
+JNIEXPORT jint OLM_EPHEMERAL_KEY_POOL_FUNC_DEF(sizeJni)(JNIEnv *env, jclass clazz)
+{
+    pthread_mutex_lock(&sPoolMutex);
+    jint poolSize = (jint)sPoolSize;
+    pthread_mutex_unlock(&sPoolMutex);
+
+    return poolSize;
+}
+
+/**
+ * Wipe the key pairs of the pool.
+ */
+JNIEXPORT void OLM_EPHEMERAL_KEY_POOL_FUNC_DEF(clearJni)(JNIEnv *env, jclass clazz)
+{
+    pthread_mutex_lock(&sPoolMutex);
+    if (sPool)
+    {
+        memset(sPool, 0, EPHEMERAL_KEY_POOL_CAPACITY * olm_ephemeral_key_pair_length());
+    }
+    sPoolSize = 0;
+    pthread_mutex_unlock(&sPoolMutex);
+}
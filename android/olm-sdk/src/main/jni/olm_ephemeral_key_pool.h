@@ -0,0 +1,43 @@
+/*
+ * Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef _OMLEPHEMERALKEYPOOL_H
+#define _OMLEPHEMERALKEYPOOL_H
+
+#include "olm_jni.h"
+#include "self_olm/olm.h"
+
+#define OLM_EPHEMERAL_KEY_POOL_FUNC_DEF(func_name) FUNC_DEF(OlmEphemeralKeyPool,func_name)
+
+// max number of key pairs kept by the pool
+#define EPHEMERAL_KEY_POOL_CAPACITY 64
+
+#ifdef __cplusplus
+extern "C" {
+#endif
+
+JNIEXPORT jint OLM_EPHEMERAL_KEY_POOL_FUNC_DEF(fillJni)(JNIEnv *env, jclass clazz, jint aTargetSize);
+JNIEXPORT jint OLM_EPHEMERAL_KEY_POOL_FUNC_DEF(sizeJni)(JNIEnv *env, jclass clazz);
+JNIEXPORT void OLM_EPHEMERAL_KEY_POOL_FUNC_DEF(clearJni)(JNIEnv *env, jclass clazz);
+
+// internal helper function
+bool takeEphemeralKeyPairs(uint8_t *aKeyPairs, size_t aCount);
+
+#ifdef __cplusplus
+}
+#endif
+
+#endif
@@ -17,6 +17,9 @@
 
 #include "olm_inbound_group_session.h"
 
+#include <atomic>
+#include <mutex>
+
 using namespace AndroidOlmSdk;
 
 /**
@@ -140,6 +143,15 @@ JNIEXPORT jlong OLM_INBOUND_GROUP_SESSION_FUNC_DEF(createNewSessionJni)(JNIEnv *
     return (jlong)(intptr_t)sessionPtr;
 }
 
+/**
+ * Return the size of the native memory backing an inbound group session.
+ * @return the session size in bytes
+ **/
+JNIEXPORT jlong OLM_INBOUND_GROUP_SESSION_FUNC_DEF(nativeSizeJni)(JNIEnv *env, jclass clazz)
+{
+    return (jlong)olm_inbound_group_session_size();
+}
+
 /**
  * Get a base64-encoded identifier for this inbound group session.
  * An exception is thrown if the operation fails.
@@ -202,52 +214,41 @@ JNIEXPORT jbyteArray OLM_INBOUND_GROUP_SESSION_FUNC_DEF(sessionIdentifierJni)(JN
 
 /**
  * Decrypt a message.
- * An exception is thrown if the operation fails.
+ * No exception is thrown: the status is set in aDecryptResult.mStatus, with the
+ * OlmErrorCode of the failure or -1 (JNI_ERROR) if the JNI layer failed.
  * @param aEncryptedMsg the encrypted message
- * @param aDecryptMessageResult the decryptMessage information
- * @return the decrypted message
+ * @param aDecryptResult the OlmDecryptResult receiving the status and the message index
+ * @return the decrypted message, null if the operation failed
  */
-JNIEXPORT jbyteArray OLM_INBOUND_GROUP_SESSION_FUNC_DEF(decryptMessageJni)(JNIEnv *env, jobject thiz, jbyteArray aEncryptedMsgBuffer, jobject aDecryptionResult)
+JNIEXPORT jbyteArray OLM_INBOUND_GROUP_SESSION_FUNC_DEF(tryDecryptMessageJni)(JNIEnv *env, jobject thiz, jbyteArray aEncryptedMsgBuffer, jobject aDecryptResult)
 {
     jbyteArray decryptedMsgBuffer = 0;
-    const char* errorMessage = NULL;
+    jint status = -1;
 
     OlmInboundGroupSession *sessionPtr = getInboundGroupSessionInstanceId(env, thiz);
     jbyte *encryptedMsgPtr = NULL;
-    jclass indexObjJClass = 0;
-    jfieldID indexMsgFieldId;
+    DecryptResultFields resultFields;
+    jlong resultIndex = -1;
+    bool resultAlreadySeen = false;
 
-    LOGD("## decryptMessageJni(): inbound group session IN");
+    LOGD("## tryDecryptMessageJni(): inbound group session IN");
 
-    if (!sessionPtr)
+    if (!getDecryptResultFields(env, aDecryptResult, &resultFields))
     {
-        LOGE(" ## decryptMessageJni(): failure - invalid inbound group session ptr=NULL");
-        errorMessage = "invalid inbound group session ptr=NULL";
+        LOGE(" ## tryDecryptMessageJni(): failure - invalid result object");
+        return 0;
     }
-    else if (!aEncryptedMsgBuffer)
+    else if (!sessionPtr)
     {
-        LOGE(" ## decryptMessageJni(): failure - invalid encrypted message");
-        errorMessage = "invalid encrypted message";
+        LOGE(" ## tryDecryptMessageJni(): failure - invalid inbound group session ptr=NULL");
     }
-    else if (!aDecryptionResult)
+    else if (!aEncryptedMsgBuffer)
     {
-        LOGE(" ## decryptMessageJni(): failure - invalid index object");
-        errorMessage = "invalid index object";
+        LOGE(" ## tryDecryptMessageJni(): failure - invalid encrypted message");
     }
     else if (!(encryptedMsgPtr = env->GetByteArrayElements(aEncryptedMsgBuffer, 0)))
     {
-        LOGE(" ## decryptMessageJni(): failure - encrypted message JNI allocation OOM");
-        errorMessage = "encrypted message JNI allocation OOM";
-    }
-    else if (!(indexObjJClass = env->GetObjectClass(aDecryptionResult)))
-    {
-        LOGE("## decryptMessageJni(): failure - unable to get index class");
-        errorMessage = "unable to get index class";
-    }
-    else if (!(indexMsgFieldId = env->GetFieldID(indexObjJClass,"mIndex","J")))
-    {
-        LOGE("## decryptMessageJni(): failure - unable to get index type field");
-        errorMessage = "unable to get index type field";
+        LOGE(" ## tryDecryptMessageJni(): failure - encrypted message JNI allocation OOM");
     }
     else
     {
@@ -258,13 +259,12 @@ JNIEXPORT jbyteArray OLM_INBOUND_GROUP_SESSION_FUNC_DEF(decryptMessageJni)(JNIEn
         // create a dedicated temp buffer to be used in next Olm API calls
         if (!tempEncryptedPtr)
         {
-            LOGE(" ## decryptMessageJni(): failure - tempEncryptedPtr allocation OOM");
-            errorMessage = "tempEncryptedPtr allocation OOM";
+            LOGE(" ## tryDecryptMessageJni(): failure - tempEncryptedPtr allocation OOM");
         }
         else
         {
             memcpy(tempEncryptedPtr, encryptedMsgPtr, encryptedMsgLength);
-            LOGD(" ## decryptMessageJni(): encryptedMsgLength=%lu encryptedMsg=%.*s",static_cast<long unsigned int>(encryptedMsgLength), static_cast<int>(encryptedMsgLength), encryptedMsgPtr);
+            LOGD(" ## tryDecryptMessageJni(): encryptedMsgLength=%lu encryptedMsg=%.*s",static_cast<long unsigned int>(encryptedMsgLength), static_cast<int>(encryptedMsgLength), encryptedMsgPtr);
 
             // get max plaintext length
             size_t maxPlainTextLength = olm_group_decrypt_max_plaintext_length(sessionPtr,
@@ -272,52 +272,161 @@ JNIEXPORT jbyteArray OLM_INBOUND_GROUP_SESSION_FUNC_DEF(decryptMessageJni)(JNIEn
                                                                                encryptedMsgLength);
             if (maxPlainTextLength == olm_error())
             {
-                errorMessage = olm_inbound_group_session_last_error(sessionPtr);
-                LOGE(" ## decryptMessageJni(): failure - olm_group_decrypt_max_plaintext_length Msg=%s", errorMessage);
+                // an expected outcome of trial decryption: not logged as an error
+                status = olm_inbound_group_session_last_error_code(sessionPtr);
+                LOGD(" ## tryDecryptMessageJni(): failure - olm_group_decrypt_max_plaintext_length Msg=%s", olm_inbound_group_session_last_error(sessionPtr));
             }
             else
             {
-                LOGD(" ## decryptMessageJni(): maxPlaintextLength=%lu",static_cast<long unsigned int>(maxPlainTextLength));
+                LOGD(" ## tryDecryptMessageJni(): maxPlaintextLength=%lu",static_cast<long unsigned int>(maxPlainTextLength));
 
                 uint32_t messageIndex = 0;
+                int alreadySeen = 0;
 
                 // allocate output decrypted message
                 uint8_t *plainTextMsgPtr = static_cast<uint8_t*>(malloc(maxPlainTextLength*sizeof(uint8_t)));
 
-                // decrypt, but before reload encrypted buffer (previous one was destroyed)
-                memcpy(tempEncryptedPtr, encryptedMsgPtr, encryptedMsgLength);
-                size_t plaintextLength = olm_group_decrypt(sessionPtr,
-                                                           tempEncryptedPtr,
-                                                           encryptedMsgLength,
-                                                           plainTextMsgPtr,
-                                                           maxPlainTextLength,
-                                                           &messageIndex);
-                if (plaintextLength == olm_error())
+                if (!plainTextMsgPtr)
                 {
-                    errorMessage = olm_inbound_group_session_last_error(sessionPtr);
-                    LOGE(" ## decryptMessageJni(): failure - olm_group_decrypt Msg=%s", errorMessage);
+                    LOGE(" ## tryDecryptMessageJni(): failure - plainTextMsgPtr allocation OOM");
                 }
                 else
                 {
-                    // update index
-                    env->SetLongField(aDecryptionResult, indexMsgFieldId, (jlong)messageIndex);
-
-                    decryptedMsgBuffer = env->NewByteArray(plaintextLength);
-                    env->SetByteArrayRegion(decryptedMsgBuffer, 0 , plaintextLength, (jbyte*)plainTextMsgPtr);
+                    // decrypt, but before reload encrypted buffer (previous one was destroyed)
+                    memcpy(tempEncryptedPtr, encryptedMsgPtr, encryptedMsgLength);
+                    size_t plaintextLength = olm_group_decrypt_check_seen(sessionPtr,
+                                                                          tempEncryptedPtr,
+                                                                          encryptedMsgLength,
+                                                                          plainTextMsgPtr,
+                                                                          maxPlainTextLength,
+                                                                          &messageIndex,
+                                                                          &alreadySeen);
+                    if (plaintextLength == olm_error())
+                    {
+                        status = olm_inbound_group_session_last_error_code(sessionPtr);
+                        LOGD(" ## tryDecryptMessageJni(): failure - olm_group_decrypt Msg=%s", olm_inbound_group_session_last_error(sessionPtr));
+                    }
+                    else if ((decryptedMsgBuffer = env->NewByteArray(plaintextLength)))
+                    {
+                        // update index
+                        resultIndex = (jlong)messageIndex;
+                        resultAlreadySeen = (0 != alreadySeen);
+
+                        env->SetByteArrayRegion(decryptedMsgBuffer, 0 , plaintextLength, (jbyte*)plainTextMsgPtr);
+                        status = OLM_SUCCESS;
+
+                        LOGD(" ## tryDecryptMessageJni(): UTF-8 Conversion - decrypted returnedLg=%lu OK",static_cast<long unsigned int>(plaintextLength));
+                    }
 
-                    LOGD(" ## decryptMessageJni(): UTF-8 Conversion - decrypted returnedLg=%lu OK",static_cast<long unsigned int>(plaintextLength));
-                }
-
-                if (plainTextMsgPtr)
-                {
                     memset(plainTextMsgPtr, 0, maxPlainTextLength*sizeof(uint8_t));
                     free(plainTextMsgPtr);
                 }
             }
 
-            if (tempEncryptedPtr)
+            free(tempEncryptedPtr);
+        }
+    }
+
+    // free alloc
+    if (encryptedMsgPtr)
+    {
+        env->ReleaseByteArrayElements(aEncryptedMsgBuffer, encryptedMsgPtr, JNI_ABORT);
+    }
+
+    setDecryptResult(env, aDecryptResult, &resultFields, status, resultIndex, resultAlreadySeen, -1);
+
+    return decryptedMsgBuffer;
+}
+
+/**
+ * Decrypt a message written without the base64 encoding.
+ * The message is read in place, no copy of it is needed.
+ * No exception is thrown: the status is set in aDecryptResult.mStatus, with the
+ * OlmErrorCode of the failure or -1 (JNI_ERROR) if the JNI layer failed.
+ * @param aEncryptedMsg the raw encrypted message
+ * @param aDecryptResult the OlmDecryptResult receiving the status and the message index
+ * @return the decrypted message, null if the operation failed
+ */
+JNIEXPORT jbyteArray OLM_INBOUND_GROUP_SESSION_FUNC_DEF(tryDecryptMessageRawJni)(JNIEnv *env, jobject thiz, jbyteArray aEncryptedMsgBuffer, jobject aDecryptResult)
+{
+    jbyteArray decryptedMsgBuffer = 0;
+    jint status = -1;
+
+    OlmInboundGroupSession *sessionPtr = getInboundGroupSessionInstanceId(env, thiz);
+    jbyte *encryptedMsgPtr = NULL;
+    DecryptResultFields resultFields;
+    jlong resultIndex = -1;
+    bool resultAlreadySeen = false;
+
+    LOGD("## tryDecryptMessageRawJni(): inbound group session IN");
+
+    if (!getDecryptResultFields(env, aDecryptResult, &resultFields))
+    {
+        LOGE(" ## tryDecryptMessageRawJni(): failure - invalid result object");
+        return 0;
+    }
+    else if (!sessionPtr)
+    {
+        LOGE(" ## tryDecryptMessageRawJni(): failure - invalid inbound group session ptr=NULL");
+    }
+    else if (!aEncryptedMsgBuffer)
+    {
+        LOGE(" ## tryDecryptMessageRawJni(): failure - invalid encrypted message");
+    }
+    else if (!(encryptedMsgPtr = env->GetByteArrayElements(aEncryptedMsgBuffer, 0)))
+    {
+        LOGE(" ## tryDecryptMessageRawJni(): failure - encrypted message JNI allocation OOM");
+    }
+    else
+    {
+        size_t encryptedMsgLength = (size_t)env->GetArrayLength(aEncryptedMsgBuffer);
+
+        // the raw message is left untouched by the Olm API calls
+        size_t maxPlainTextLength = olm_group_decrypt_raw_max_plaintext_length(sessionPtr,
+                                                                               (const uint8_t*)encryptedMsgPtr,
+                                                                               encryptedMsgLength);
+        if (maxPlainTextLength == olm_error())
+        {
+            // an expected outcome of trial decryption: not logged as an error
+            status = olm_inbound_group_session_last_error_code(sessionPtr);
+            LOGD(" ## tryDecryptMessageRawJni(): failure - olm_group_decrypt_raw_max_plaintext_length Msg=%s", olm_inbound_group_session_last_error(sessionPtr));
+        }
+        else
+        {
+            uint32_t messageIndex = 0;
+            int alreadySeen = 0;
+
+            uint8_t *plainTextMsgPtr = static_cast<uint8_t*>(malloc(maxPlainTextLength*sizeof(uint8_t)));
+
+            if (!plainTextMsgPtr)
             {
-                free(tempEncryptedPtr);
+                LOGE(" ## tryDecryptMessageRawJni(): failure - plainTextMsgPtr allocation OOM");
+            }
+            else
+            {
+                size_t plaintextLength = olm_group_decrypt_raw(sessionPtr,
+                                                               (const uint8_t*)encryptedMsgPtr,
+                                                               encryptedMsgLength,
+                                                               plainTextMsgPtr,
+                                                               maxPlainTextLength,
+                                                               &messageIndex,
+                                                               &alreadySeen);
+                if (plaintextLength == olm_error())
+                {
+                    status = olm_inbound_group_session_last_error_code(sessionPtr);
+                    LOGD(" ## tryDecryptMessageRawJni(): failure - olm_group_decrypt_raw Msg=%s", olm_inbound_group_session_last_error(sessionPtr));
+                }
+                else if ((decryptedMsgBuffer = env->NewByteArray(plaintextLength)))
+                {
+                    resultIndex = (jlong)messageIndex;
+                    resultAlreadySeen = (0 != alreadySeen);
+
+                    env->SetByteArrayRegion(decryptedMsgBuffer, 0 , plaintextLength, (jbyte*)plainTextMsgPtr);
+                    status = OLM_SUCCESS;
+                }
+
+                memset(plainTextMsgPtr, 0, maxPlainTextLength*sizeof(uint8_t));
+                free(plainTextMsgPtr);
             }
         }
     }
@@ -328,10 +437,238 @@ JNIEXPORT jbyteArray OLM_INBOUND_GROUP_SESSION_FUNC_DEF(decryptMessageJni)(JNIEn
         env->ReleaseByteArrayElements(aEncryptedMsgBuffer, encryptedMsgPtr, JNI_ABORT);
     }
 
-    if (errorMessage)
+    setDecryptResult(env, aDecryptResult, &resultFields, status, resultIndex, resultAlreadySeen, -1);
+
+    return decryptedMsgBuffer;
+}
+
+namespace {
+
+// number of locks shared by the sessions decrypted concurrently
+const size_t SNAPSHOT_LOCK_STRIPES = 64;
+
+std::mutex snapshotLocks[SNAPSHOT_LOCK_STRIPES];
+
+/**
+ * Get the lock guarding the snapshots of a session.<br>
+ * It is only held to copy the ratchets in and out, never during the decryption.
+ */
+std::mutex &getSnapshotLock(const OlmInboundGroupSession *aSession)
+{
+    uintptr_t address = reinterpret_cast<uintptr_t>(aSession);
+    return snapshotLocks[(address >> 4) % SNAPSHOT_LOCK_STRIPES];
+}
+
+}
+
+/**
+ * Decrypt a message, concurrently with the other calls of this method on the same session.<br>
+ * The message is decrypted with a private copy of the session ratchets, and the
+ * advanced ratchet is published back afterwards: the session lock is only held
+ * for these copies.
+ * No exception is thrown: the status is set in aDecryptResult.mStatus, with the
+ * OlmErrorCode of the failure or -1 (JNI_ERROR) if the JNI layer failed.
+ * @param aEncryptedMsg the encrypted message
+ * @param aDecryptResult the OlmDecryptResult receiving the status and the message index
+ * @return the decrypted message, null if the operation failed
+ */
+JNIEXPORT jbyteArray OLM_INBOUND_GROUP_SESSION_FUNC_DEF(tryDecryptMessageConcurrentlyJni)(JNIEnv *env, jobject thiz, jbyteArray aEncryptedMsgBuffer, jobject aDecryptResult)
+{
+    jbyteArray decryptedMsgBuffer = 0;
+    jint status = -1;
+
+    OlmInboundGroupSession *sessionPtr = getInboundGroupSessionInstanceId(env, thiz);
+    DecryptResultFields resultFields;
+    jlong resultIndex = -1;
+    bool resultAlreadySeen = false;
+    size_t snapshotLength = olm_inbound_group_session_snapshot_length();
+    uint8_t *snapshotPtr = NULL;
+    uint8_t *tempEncryptedPtr = NULL;
+    uint8_t *plainTextMsgPtr = NULL;
+    size_t encryptedMsgLength = 0;
+
+    if (!getDecryptResultFields(env, aDecryptResult, &resultFields))
     {
-        env->ThrowNew(env->FindClass("java/lang/Exception"), errorMessage);
+        LOGE(" ## tryDecryptMessageConcurrentlyJni(): failure - invalid result object");
+        return 0;
     }
+    else if (!sessionPtr)
+    {
+        LOGE(" ## tryDecryptMessageConcurrentlyJni(): failure - invalid inbound group session ptr=NULL");
+    }
+    else if (!aEncryptedMsgBuffer)
+    {
+        LOGE(" ## tryDecryptMessageConcurrentlyJni(): failure - invalid encrypted message");
+    }
+    else if (!(encryptedMsgLength = (size_t)env->GetArrayLength(aEncryptedMsgBuffer)))
+    {
+        // an empty message can't be decoded
+        status = OLM_INVALID_BASE64;
+    }
+    else if (!(snapshotPtr = static_cast<uint8_t*>(malloc(snapshotLength))))
+    {
+        LOGE(" ## tryDecryptMessageConcurrentlyJni(): failure - snapshot allocation OOM");
+    }
+    else if (!(tempEncryptedPtr = static_cast<uint8_t*>(malloc(encryptedMsgLength*sizeof(uint8_t)))))
+    {
+        LOGE(" ## tryDecryptMessageConcurrentlyJni(): failure - tempEncryptedPtr allocation OOM");
+    }
+    // the base64 decoded message is longer than its plaintext
+    else if (!(plainTextMsgPtr = static_cast<uint8_t*>(malloc(encryptedMsgLength*sizeof(uint8_t)))))
+    {
+        LOGE(" ## tryDecryptMessageConcurrentlyJni(): failure - plainTextMsgPtr allocation OOM");
+    }
+    else
+    {
+        env->GetByteArrayRegion(aEncryptedMsgBuffer, 0, encryptedMsgLength, (jbyte*)tempEncryptedPtr);
+
+        std::mutex &lock = getSnapshotLock(sessionPtr);
+        {
+            std::lock_guard<std::mutex> guard(lock);
+            olm_inbound_group_session_snapshot(sessionPtr, snapshotPtr, snapshotLength);
+        }
+
+        uint32_t messageIndex = 0;
+        int alreadySeen = 0;
+        OlmErrorCode error = OLM_SUCCESS;
+        size_t plaintextLength = olm_group_decrypt_snapshot(snapshotPtr,
+                                                            snapshotLength,
+                                                            tempEncryptedPtr,
+                                                            encryptedMsgLength,
+                                                            plainTextMsgPtr,
+                                                            encryptedMsgLength,
+                                                            &messageIndex,
+                                                            &error);
+        if (plaintextLength == olm_error())
+        {
+            // an expected outcome of trial decryption: not logged as an error
+            status = error;
+            LOGD(" ## tryDecryptMessageConcurrentlyJni(): failure - olm_group_decrypt_snapshot Msg=%s", _olm_error_to_string(error));
+        }
+        else
+        {
+            {
+                std::lock_guard<std::mutex> guard(lock);
+                olm_inbound_group_session_publish_snapshot(sessionPtr, snapshotPtr, snapshotLength, messageIndex, &alreadySeen);
+            }
+
+            if ((decryptedMsgBuffer = env->NewByteArray(plaintextLength)))
+            {
+                resultIndex = (jlong)messageIndex;
+                resultAlreadySeen = (0 != alreadySeen);
+
+                env->SetByteArrayRegion(decryptedMsgBuffer, 0 , plaintextLength, (jbyte*)plainTextMsgPtr);
+                status = OLM_SUCCESS;
+            }
+        }
+    }
+
+    // free alloc
+    if (plainTextMsgPtr)
+    {
+        memset(plainTextMsgPtr, 0, encryptedMsgLength*sizeof(uint8_t));
+        free(plainTextMsgPtr);
+    }
+
+    if (tempEncryptedPtr)
+    {
+        free(tempEncryptedPtr);
+    }
+
+    if (snapshotPtr)
+    {
+        memset(snapshotPtr, 0, snapshotLength);
+        free(snapshotPtr);
+    }
+
+    setDecryptResult(env, aDecryptResult, &resultFields, status, resultIndex, resultAlreadySeen, -1);
+
+    return decryptedMsgBuffer;
+}
+
+/**
+ * Decrypt a parsed message.<br>
+ * The parsed message is left untouched, so its index can be read and the message decrypted without decoding it again.
+ * No exception is thrown, the status, the message index and the already seen flag are set in aDecryptResult.
+ * @param aParsedMessageId the native parsed group message instance identifier
+ * @param aDecryptResult the result receiving the decryption information
+ * @return the decrypted message, null if the operation failed
+ */
+JNIEXPORT jbyteArray OLM_INBOUND_GROUP_SESSION_FUNC_DEF(tryDecryptParsedMessageJni)(JNIEnv *env, jobject thiz, jlong aParsedMessageId, jobject aDecryptResult)
+{
+    jbyteArray decryptedMsgBuffer = 0;
+    jint status = -1;
+
+    OlmInboundGroupSession *sessionPtr = getInboundGroupSessionInstanceId(env, thiz);
+    OlmParsedGroupMessage *parsedPtr = (OlmParsedGroupMessage *)aParsedMessageId;
+    DecryptResultFields resultFields;
+    jlong resultIndex = -1;
+    bool resultAlreadySeen = false;
+
+    LOGD("## tryDecryptParsedMessageJni(): inbound group session IN");
+
+    if (!getDecryptResultFields(env, aDecryptResult, &resultFields))
+    {
+        LOGE(" ## tryDecryptParsedMessageJni(): failure - invalid result object");
+        return 0;
+    }
+    else if (!sessionPtr)
+    {
+        LOGE(" ## tryDecryptParsedMessageJni(): failure - invalid inbound group session ptr=NULL");
+    }
+    else if (!parsedPtr)
+    {
+        LOGE(" ## tryDecryptParsedMessageJni(): failure - invalid parsed message ptr=NULL");
+    }
+    else
+    {
+        size_t maxPlainTextLength = olm_group_decrypt_parsed_max_plaintext_length(sessionPtr, parsedPtr);
+
+        if (maxPlainTextLength == olm_error())
+        {
+            // an expected outcome of trial decryption: not logged as an error
+            status = olm_inbound_group_session_last_error_code(sessionPtr);
+            LOGD(" ## tryDecryptParsedMessageJni(): failure - olm_group_decrypt_parsed_max_plaintext_length Msg=%s", olm_inbound_group_session_last_error(sessionPtr));
+        }
+        else
+        {
+            uint32_t messageIndex = 0;
+            int alreadySeen = 0;
+            uint8_t *plainTextMsgPtr = static_cast<uint8_t*>(malloc(maxPlainTextLength*sizeof(uint8_t)));
+
+            if (!plainTextMsgPtr)
+            {
+                LOGE(" ## tryDecryptParsedMessageJni(): failure - plainTextMsgPtr allocation OOM");
+            }
+            else
+            {
+                size_t plaintextLength = olm_group_decrypt_parsed(sessionPtr,
+                                                                  parsedPtr,
+                                                                  plainTextMsgPtr,
+                                                                  maxPlainTextLength,
+                                                                  &messageIndex,
+                                                                  &alreadySeen);
+                if (plaintextLength == olm_error())
+                {
+                    status = olm_inbound_group_session_last_error_code(sessionPtr);
+                    LOGD(" ## tryDecryptParsedMessageJni(): failure - olm_group_decrypt_parsed Msg=%s", olm_inbound_group_session_last_error(sessionPtr));
+                }
+                else if ((decryptedMsgBuffer = env->NewByteArray(plaintextLength)))
+                {
+                    resultIndex = (jlong)messageIndex;
+                    resultAlreadySeen = (0 != alreadySeen);
+
+                    env->SetByteArrayRegion(decryptedMsgBuffer, 0 , plaintextLength, (jbyte*)plainTextMsgPtr);
+                    status = OLM_SUCCESS;
+                }
+
+                memset(plainTextMsgPtr, 0, maxPlainTextLength*sizeof(uint8_t));
+                free(plainTextMsgPtr);
+            }
+        }
+    }
+
+    setDecryptResult(env, aDecryptResult, &resultFields, status, resultIndex, resultAlreadySeen, -1);
 
     return decryptedMsgBuffer;
 }
@@ -400,6 +737,77 @@ JNIEXPORT jboolean OLM_INBOUND_GROUP_SESSION_FUNC_DEF(isVerifiedJni)(JNIEnv *env
     return returnValue;
 }
 
+/**
+ * Enable or disable the recording of the decrypted message indices.
+ * An exception is thrown if the operation fails.
+ * @param aEnabled true to record the decrypted message indices
+ */
+JNIEXPORT void OLM_INBOUND_GROUP_SESSION_FUNC_DEF(setTrackSeenIndicesJni)(JNIEnv *env, jobject thiz, jboolean aEnabled)
+{
+    OlmInboundGroupSession *sessionPtr = getInboundGroupSessionInstanceId(env, thiz);
+
+    LOGD("## setTrackSeenIndicesJni(): inbound group session IN");
+
+    if (!sessionPtr)
+    {
+        LOGE(" ## setTrackSeenIndicesJni(): failure - invalid inbound group session instance");
+        env->ThrowNew(env->FindClass("java/lang/Exception"), "invalid inbound group session instance");
+    }
+    else
+    {
+        olm_inbound_group_session_track_seen_indices(sessionPtr, (JNI_FALSE != aEnabled) ? 1 : 0);
+    }
+}
+
+/**
+ * Tells if the session records the decrypted message indices.
+ * An exception is thrown if the operation fails.
+ * @return true if the decrypted message indices are recorded
+ */
+JNIEXPORT jboolean OLM_INBOUND_GROUP_SESSION_FUNC_DEF(isTrackingSeenIndicesJni)(JNIEnv *env, jobject thiz)
+{
+    OlmInboundGroupSession *sessionPtr = getInboundGroupSessionInstanceId(env, thiz);
+    jboolean returnValue = JNI_FALSE;
+
+    LOGD("## isTrackingSeenIndicesJni(): inbound group session IN");
+
+    if (!sessionPtr)
+    {
+        LOGE(" ## isTrackingSeenIndicesJni(): failure - invalid inbound group session instance");
+        env->ThrowNew(env->FindClass("java/lang/Exception"), "invalid inbound group session instance");
+    }
+    else
+    {
+        returnValue = (0 != olm_inbound_group_session_is_tracking_seen_indices(sessionPtr)) ? JNI_TRUE : JNI_FALSE;
+    }
+
+    return returnValue;
+}
+
+/**
+ * Tells if a message with this index has already been decrypted by the session.
+ * An exception is thrown if the operation fails.
+ * @param aMessageIndex the message index
+ * @return true if the message index has already been decrypted
+ */
+JNIEXPORT jboolean OLM_INBOUND_GROUP_SESSION_FUNC_DEF(hasSeenIndexJni)(JNIEnv *env, jobject thiz, jlong aMessageIndex)
+{
+    OlmInboundGroupSession *sessionPtr = getInboundGroupSessionInstanceId(env, thiz);
+    jboolean returnValue = JNI_FALSE;
+
+    if (!sessionPtr)
+    {
+        LOGE(" ## hasSeenIndexJni(): failure - invalid inbound group session instance");
+        env->ThrowNew(env->FindClass("java/lang/Exception"), "invalid inbound group session instance");
+    }
+    else if ((aMessageIndex >= 0) && (aMessageIndex <= (jlong)UINT32_MAX))
+    {
+        returnValue = (0 != olm_inbound_group_session_has_seen_index(sessionPtr, (uint32_t)aMessageIndex)) ? JNI_TRUE : JNI_FALSE;
+    }
+
+    return returnValue;
+}
+
 /**
  * Exports the session as byte array from a message index
  * An exception is thrown if the operation fails.
@@ -466,6 +874,362 @@ JNIEXPORT jbyteArray OLM_INBOUND_GROUP_SESSION_FUNC_DEF(exportJni)(JNIEnv *env,
     return exportedByteArray;
 }
 
+namespace {
+
+// a session of an export batch
+struct InboundExportItem
+{
+    OlmInboundGroupSession *session;
+    jlong messageIndex;
+    size_t offset;
+    size_t length;
+    jint status;
+};
+
+struct InboundExportBatch
+{
+    InboundExportItem *items;
+    size_t count;
+    uint8_t *output;
+    std::atomic<size_t> next;
+};
+
+/**
+ * Export the sessions of a batch until there is none left.<br>
+ * Each export is followed by a new line, so that the batch output can be read back as a stream.
+ */
+void *exportInboundBatchItems(void *aBatch)
+{
+    InboundExportBatch *batch = (InboundExportBatch *)aBatch;
+    size_t index;
+
+    while ((index = batch->next.fetch_add(1)) < batch->count)
+    {
+        InboundExportItem *item = batch->items + index;
+
+        if (item->status != OLM_SUCCESS)
+        {
+            continue;
+        }
+
+        uint32_t messageIndex = (item->messageIndex < 0)
+            ? olm_inbound_group_session_first_known_index(item->session)
+            : (uint32_t)item->messageIndex;
+        uint8_t *outputPtr = batch->output + item->offset;
+        size_t result = olm_export_inbound_group_session(item->session, outputPtr, item->length - 1, messageIndex);
+
+        if (result == olm_error())
+        {
+            item->status = olm_inbound_group_session_last_error_code(item->session);
+            item->length = 0;
+        }
+        else
+        {
+            outputPtr[result] = '\n';
+            item->length = result + 1;
+        }
+    }
+
+    return NULL;
+}
+
+// an exported session of an import batch
+struct InboundImportItem
+{
+    size_t offset;
+    size_t length;
+    OlmInboundGroupSession *session;
+    jint status;
+};
+
+struct InboundImportBatch
+{
+    InboundImportItem *items;
+    size_t count;
+    uint8_t *input;
+    std::atomic<size_t> next;
+};
+
+/**
+ * Import the sessions of a batch until there is none left.<br>
+ * A session which fails to import is released and left NULL.
+ */
+void *importInboundBatchItems(void *aBatch)
+{
+    InboundImportBatch *batch = (InboundImportBatch *)aBatch;
+    size_t index;
+
+    while ((index = batch->next.fetch_add(1)) < batch->count)
+    {
+        InboundImportItem *item = batch->items + index;
+        OlmInboundGroupSession *sessionPtr = (OlmInboundGroupSession *)malloc(olm_inbound_group_session_size());
+
+        if (!sessionPtr)
+        {
+            item->status = -1;
+            continue;
+        }
+
+        sessionPtr = olm_inbound_group_session(sessionPtr);
+
+        if (olm_import_inbound_group_session(sessionPtr, batch->input + item->offset, item->length) == olm_error())
+        {
+            item->status = olm_inbound_group_session_last_error_code(sessionPtr);
+            olm_clear_inbound_group_session(sessionPtr);
+            free(sessionPtr);
+        }
+        else
+        {
+            item->status = OLM_SUCCESS;
+            item->session = sessionPtr;
+        }
+    }
+
+    return NULL;
+}
+
+}
+
+/**
+ * Export several sessions at once, on several threads.<br>
+ * The exports are packed one after the other, each one followed by a new line:
+ * the export i is at [aOffsets[i], aOffsets[i + 1]) in the returned array, and is empty if it failed.
+ * A failed session doesn't stop the batch, an exception is thrown if the batch itself is invalid.
+ * @param aSessionIds the native ids of the sessions, each one at most once
+ * @param aMessageIndexes the message index of each export, -1 for the first known index of the session
+ * @param aThreads number of threads, capped to BATCH_MAX_THREADS
+ * @param aOffsets receives the count + 1 offsets of the exports
+ * @param aStatuses receives the OlmErrorCode of each session, -2 (INVALID_INPUT) for a null session or an invalid index
+ * @return the packed exports
+ */
+JNIEXPORT jbyteArray OLM_INBOUND_GROUP_SESSION_FUNC_DEF(exportSessionsJni)(JNIEnv *env, jclass clazz, jlongArray aSessionIds, jlongArray aMessageIndexes, jint aThreads, jintArray aOffsets, jintArray aStatuses)
+{
+    const char* errorMessage = NULL;
+    jbyteArray exportedRet = NULL;
+    jsize count = 0;
+
+    if (!aSessionIds || !aMessageIndexes || !aOffsets || !aStatuses)
+    {
+        errorMessage = "invalid batch";
+        LOGE(" ## exportSessionsJni(): failure - %s", errorMessage);
+    }
+    else if (((count = env->GetArrayLength(aSessionIds)) != env->GetArrayLength(aMessageIndexes))
+             || (count + 1 != env->GetArrayLength(aOffsets))
+             || (count != env->GetArrayLength(aStatuses)))
+    {
+        errorMessage = "batch arrays lengths differ";
+        LOGE(" ## exportSessionsJni(): failure - %s", errorMessage);
+    }
+    else
+    {
+        InboundExportBatch batch;
+        batch.count = count;
+        batch.output = NULL;
+        batch.next = 0;
+        batch.items = (InboundExportItem *)calloc(count ? count : 1, sizeof(InboundExportItem));
+
+        size_t outputLength = 0;
+
+        if (!batch.items)
+        {
+            errorMessage = "batch items JNI allocation OOM";
+            LOGE(" ## exportSessionsJni(): failure - %s", errorMessage);
+        }
+
+        for (jsize i = 0; !errorMessage && (i < count); i++)
+        {
+            InboundExportItem *item = batch.items + i;
+            jlong sessionId;
+
+            env->GetLongArrayRegion(aSessionIds, i, 1, &sessionId);
+            env->GetLongArrayRegion(aMessageIndexes, i, 1, &item->messageIndex);
+            item->session = (OlmInboundGroupSession *)(intptr_t)sessionId;
+
+            if (!item->session || (item->messageIndex > 0xffffffffLL))
+            {
+                item->status = -2;
+            }
+            else
+            {
+                item->status = OLM_SUCCESS;
+                item->offset = outputLength;
+                item->length = olm_export_inbound_group_session_length(item->session) + 1;
+                outputLength += item->length;
+            }
+        }
+
+        if (!errorMessage && (outputLength > 0x7fffffff))
+        {
+            errorMessage = "batch too large";
+            LOGE(" ## exportSessionsJni(): failure - %s", errorMessage);
+        }
+        else if (!errorMessage && !(batch.output = (uint8_t *)malloc(outputLength ? outputLength : 1)))
+        {
+            errorMessage = "batch output JNI allocation OOM";
+            LOGE(" ## exportSessionsJni(): failure - %s", errorMessage);
+        }
+
+        if (!errorMessage)
+        {
+            runBatchWorkers(exportInboundBatchItems, &batch, batch.count, aThreads);
+
+            // the failed exports have no length, and leave gaps which are skipped here
+            size_t exportedLength = 0;
+
+            for (jsize i = 0; i < count; i++)
+            {
+                exportedLength += batch.items[i].length;
+            }
+
+            if (!(exportedRet = env->NewByteArray(exportedLength)))
+            {
+                errorMessage = "exported sessions JNI allocation OOM";
+                LOGE(" ## exportSessionsJni(): failure - %s", errorMessage);
+            }
+            else
+            {
+                jint offset = 0;
+
+                for (jsize i = 0; i < count; i++)
+                {
+                    InboundExportItem *item = batch.items + i;
+
+                    env->SetIntArrayRegion(aOffsets, i, 1, &offset);
+                    env->SetIntArrayRegion(aStatuses, i, 1, &item->status);
+
+                    if (item->status == OLM_SUCCESS)
+                    {
+                        env->SetByteArrayRegion(exportedRet, offset, item->length, (jbyte *)batch.output + item->offset);
+                        offset += item->length;
+                    }
+                }
+
+                env->SetIntArrayRegion(aOffsets, count, 1, &offset);
+            }
+
+            memset(batch.output, 0, outputLength);
+        }
+
+        free(batch.output);
+        free(batch.items);
+    }
+
+    if (errorMessage)
+    {
+        env->ThrowNew(env->FindClass("java/lang/Exception"), errorMessage);
+    }
+
+    return exportedRet;
+}
+
+/**
+ * Import several exported sessions at once, on several threads.<br>
+ * The exported session i is at [aOffsets[i], aOffsets[i + 1]) in aExported.
+ * A failed session doesn't stop the batch, an exception is thrown if the batch itself is invalid.
+ * @param aExported the packed exported sessions
+ * @param aOffsets the count + 1 offsets of the exported sessions
+ * @param aThreads number of threads, capped to BATCH_MAX_THREADS
+ * @param aStatuses receives the OlmErrorCode of each session, -1 (JNI_ERROR) if it could not be allocated
+ * @return the native ids of the new sessions, 0 for the failed ones
+ */
+JNIEXPORT jlongArray OLM_INBOUND_GROUP_SESSION_FUNC_DEF(importSessionsJni)(JNIEnv *env, jclass clazz, jbyteArray aExported, jintArray aOffsets, jint aThreads, jintArray aStatuses)
+{
+    const char* errorMessage = NULL;
+    jlongArray sessionIdsRet = NULL;
+    jsize count = 0;
+    jsize exportedLength = 0;
+
+    if (!aExported || !aOffsets || !aStatuses)
+    {
+        errorMessage = "invalid batch";
+        LOGE(" ## importSessionsJni(): failure - %s", errorMessage);
+    }
+    else if (((count = env->GetArrayLength(aStatuses)) + 1 != env->GetArrayLength(aOffsets)))
+    {
+        errorMessage = "batch arrays lengths differ";
+        LOGE(" ## importSessionsJni(): failure - %s", errorMessage);
+    }
+    else
+    {
+        InboundImportBatch batch;
+        batch.count = count;
+        batch.next = 0;
+        batch.items = (InboundImportItem *)calloc(count ? count : 1, sizeof(InboundImportItem));
+        exportedLength = env->GetArrayLength(aExported);
+        batch.input = (uint8_t *)malloc(exportedLength ? exportedLength : 1);
+
+        if (!batch.items || !batch.input)
+        {
+            errorMessage = "batch JNI allocation OOM";
+            LOGE(" ## importSessionsJni(): failure - %s", errorMessage);
+        }
+
+        for (jsize i = 0; !errorMessage && (i < count); i++)
+        {
+            jint offsets[2];
+
+            env->GetIntArrayRegion(aOffsets, i, 2, offsets);
+
+            if ((offsets[0] < 0) || (offsets[1] < offsets[0]) || (offsets[1] > exportedLength))
+            {
+                errorMessage = "invalid offsets";
+                LOGE(" ## importSessionsJni(): failure - %s", errorMessage);
+            }
+            else
+            {
+                batch.items[i].offset = offsets[0];
+                batch.items[i].length = offsets[1] - offsets[0];
+            }
+        }
+
+        if (!errorMessage)
+        {
+            // the import decodes the exported sessions in place
+            env->GetByteArrayRegion(aExported, 0, exportedLength, (jbyte *)batch.input);
+
+            runBatchWorkers(importInboundBatchItems, &batch, batch.count, aThreads);
+
+            if (!(sessionIdsRet = env->NewLongArray(count)))
+            {
+                errorMessage = "session ids JNI allocation OOM";
+                LOGE(" ## importSessionsJni(): failure - %s", errorMessage);
+            }
+
+            for (jsize i = 0; i < count; i++)
+            {
+                InboundImportItem *item = batch.items + i;
+
+                if (!sessionIdsRet)
+                {
+                    if (item->session)
+                    {
+                        olm_clear_inbound_group_session(item->session);
+                        free(item->session);
+                    }
+                }
+                else
+                {
+                    jlong sessionId = (jlong)(intptr_t)item->session;
+                    env->SetLongArrayRegion(sessionIdsRet, i, 1, &sessionId);
+                    env->SetIntArrayRegion(aStatuses, i, 1, &item->status);
+                }
+            }
+
+            memset(batch.input, 0, exportedLength);
+        }
+
+        free(batch.input);
+        free(batch.items);
+    }
+
+    if (errorMessage)
+    {
+        env->ThrowNew(env->FindClass("java/lang/Exception"), errorMessage);
+    }
+
+    return sessionIdsRet;
+}
+
 /**
  * Serialize and encrypt session instance into a base64 string.<br>
  * An exception is thrown if the operation fails.
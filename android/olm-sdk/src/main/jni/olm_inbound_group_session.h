@@ -31,14 +31,24 @@ extern "C" {
 // session creation/destruction
 JNIEXPORT void OLM_INBOUND_GROUP_SESSION_FUNC_DEF(releaseSessionJni)(JNIEnv *env, jobject thiz);
 JNIEXPORT jlong OLM_INBOUND_GROUP_SESSION_FUNC_DEF(createNewSessionJni)(JNIEnv *env, jobject thiz, jbyteArray aSessionKeyBuffer, jboolean isImported);
+JNIEXPORT jlong OLM_INBOUND_GROUP_SESSION_FUNC_DEF(nativeSizeJni)(JNIEnv *env, jclass clazz);
 
 JNIEXPORT jbyteArray OLM_INBOUND_GROUP_SESSION_FUNC_DEF(sessionIdentifierJni)(JNIEnv *env, jobject thiz);
-JNIEXPORT jbyteArray OLM_INBOUND_GROUP_SESSION_FUNC_DEF(decryptMessageJni)(JNIEnv *env, jobject thiz, jbyteArray aEncryptedMsg, jobject aDecryptIndex);
+JNIEXPORT jbyteArray OLM_INBOUND_GROUP_SESSION_FUNC_DEF(tryDecryptMessageJni)(JNIEnv *env, jobject thiz, jbyteArray aEncryptedMsg, jobject aDecryptResult);
+JNIEXPORT jbyteArray OLM_INBOUND_GROUP_SESSION_FUNC_DEF(tryDecryptMessageRawJni)(JNIEnv *env, jobject thiz, jbyteArray aEncryptedMsg, jobject aDecryptResult);
+JNIEXPORT jbyteArray OLM_INBOUND_GROUP_SESSION_FUNC_DEF(tryDecryptMessageConcurrentlyJni)(JNIEnv *env, jobject thiz, jbyteArray aEncryptedMsg, jobject aDecryptResult);
+JNIEXPORT jbyteArray OLM_INBOUND_GROUP_SESSION_FUNC_DEF(tryDecryptParsedMessageJni)(JNIEnv *env, jobject thiz, jlong aParsedMessageId, jobject aDecryptResult);
 
 JNIEXPORT jlong OLM_INBOUND_GROUP_SESSION_FUNC_DEF(firstKnownIndexJni)(JNIEnv *env, jobject thiz);
 JNIEXPORT jboolean OLM_INBOUND_GROUP_SESSION_FUNC_DEF(isVerifiedJni)(JNIEnv *env, jobject thiz);
 
+JNIEXPORT void OLM_INBOUND_GROUP_SESSION_FUNC_DEF(setTrackSeenIndicesJni)(JNIEnv *env, jobject thiz, jboolean aEnabled);
+JNIEXPORT jboolean OLM_INBOUND_GROUP_SESSION_FUNC_DEF(isTrackingSeenIndicesJni)(JNIEnv *env, jobject thiz);
+JNIEXPORT jboolean OLM_INBOUND_GROUP_SESSION_FUNC_DEF(hasSeenIndexJni)(JNIEnv *env, jobject thiz, jlong aMessageIndex);
+
 JNIEXPORT jbyteArray OLM_INBOUND_GROUP_SESSION_FUNC_DEF(exportJni)(JNIEnv *env, jobject thiz, jlong messageIndex);
+JNIEXPORT jbyteArray OLM_INBOUND_GROUP_SESSION_FUNC_DEF(exportSessionsJni)(JNIEnv *env, jclass clazz, jlongArray aSessionIds, jlongArray aMessageIndexes, jint aThreads, jintArray aOffsets, jintArray aStatuses);
+JNIEXPORT jlongArray OLM_INBOUND_GROUP_SESSION_FUNC_DEF(importSessionsJni)(JNIEnv *env, jclass clazz, jbyteArray aExported, jintArray aOffsets, jint aThreads, jintArray aStatuses);
 
 // serialization
 JNIEXPORT jbyteArray OLM_INBOUND_GROUP_SESSION_FUNC_DEF(serializeJni)(JNIEnv *env, jobject thiz, jbyteArray aKey);
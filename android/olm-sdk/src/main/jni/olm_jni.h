@@ -52,6 +52,18 @@
 
 #define FUNC_DEF(class_name,func_name) JNICALL Java_org_matrix_olm_##class_name##_##func_name
 
+// max number of threads processing a batch, see runBatchWorkers()
+#define BATCH_MAX_THREADS 16
+
+// field ids of a Java OlmDecryptResult, see getDecryptResultFields()
+struct DecryptResultFields
+{
+    jfieldID statusFieldId;
+    jfieldID indexFieldId;
+    jfieldID alreadySeenFieldId;
+    jfieldID sessionIndexFieldId;
+};
+
 namespace AndroidOlmSdk
 {
 
@@ -64,6 +76,9 @@ extern "C" {
 
 // internal helper functions
 bool setRandomInBuffer(JNIEnv *env, uint8_t **aBuffer2Ptr, size_t aRandomSize);
+void runBatchWorkers(void *(*aWorker)(void *), void *aBatch, size_t aCount, jint aThreads);
+bool getDecryptResultFields(JNIEnv *env, jobject aDecryptResult, struct DecryptResultFields *aFields);
+void setDecryptResult(JNIEnv *env, jobject aDecryptResult, const struct DecryptResultFields *aFields, jint aStatus, jlong aIndex, bool aAlreadySeen, jint aSessionIndex);
 
 struct OlmSession* getSessionInstanceId(JNIEnv* aJniEnv, jobject aJavaObject);
 struct OlmAccount* getAccountInstanceId(JNIEnv* aJniEnv, jobject aJavaObject);
@@ -74,6 +89,9 @@ struct OlmPkDecryption* getPkDecryptionInstanceId(JNIEnv* aJniEnv, jobject aJava
 struct OlmPkEncryption* getPkEncryptionInstanceId(JNIEnv* aJniEnv, jobject aJavaObject);
 struct OlmPkSigning* getPkSigningInstanceId(JNIEnv* aJniEnv, jobject aJavaObject);
 struct OlmSAS* getOlmSasInstanceId(JNIEnv* aJniEnv, jobject aJavaObject);
+struct OlmAttachment* getAttachmentCipherInstanceId(JNIEnv* aJniEnv, jobject aJavaObject);
+struct OlmParsedMessage* getParsedMessageInstanceId(JNIEnv* aJniEnv, jobject aJavaObject);
+struct OlmParsedGroupMessage* getGroupMessageInstanceId(JNIEnv* aJniEnv, jobject aJavaObject);
 
 #ifdef __cplusplus
 }
@@ -18,6 +18,7 @@
 #include "olm_jni_helper.h"
 #include "self_olm/olm.h"
 #include <sys/time.h>
+#include <pthread.h>
 
 using namespace AndroidOlmSdk;
 
@@ -232,3 +233,119 @@ struct OlmSAS* getOlmSasInstanceId(JNIEnv* aJniEnv, jobject aJavaObject)
 {
     return (struct OlmSAS*)getInstanceId(aJniEnv, aJavaObject, CLASS_OLM_SAS);
 }
+
+struct OlmAttachment* getAttachmentCipherInstanceId(JNIEnv* aJniEnv, jobject aJavaObject)
+{
+    return (struct OlmAttachment*)getInstanceId(aJniEnv, aJavaObject, CLASS_OLM_ATTACHMENT_CIPHER);
+}
+
+struct OlmParsedMessage* getParsedMessageInstanceId(JNIEnv* aJniEnv, jobject aJavaObject)
+{
+    return (struct OlmParsedMessage*)getInstanceId(aJniEnv, aJavaObject, CLASS_OLM_PARSED_MESSAGE);
+}
+
+struct OlmParsedGroupMessage* getGroupMessageInstanceId(JNIEnv* aJniEnv, jobject aJavaObject)
+{
+    return (struct OlmParsedGroupMessage*)getInstanceId(aJniEnv, aJavaObject, CLASS_OLM_GROUP_MESSAGE);
+}
+
+/**
+ * Look up the fields of a Java OlmDecryptResult, before a non-throwing decryption.
+ * @param aDecryptResult the OlmDecryptResult object
+ * @param aFields receives the field ids
+ * @return false if the object is invalid
+ */
+bool getDecryptResultFields(JNIEnv *env, jobject aDecryptResult, struct DecryptResultFields *aFields)
+{
+    jclass resultJClass = 0;
+
+    if (!aDecryptResult)
+    {
+        LOGE("## getDecryptResultFields(): failure - invalid result object");
+        return false;
+    }
+    else if (!(resultJClass = env->GetObjectClass(aDecryptResult)))
+    {
+        LOGE("## getDecryptResultFields(): failure - unable to get result class");
+        return false;
+    }
+    else if (!(aFields->statusFieldId = env->GetFieldID(resultJClass,"mStatus","I")))
+    {
+        LOGE("## getDecryptResultFields(): failure - unable to get status field");
+        return false;
+    }
+    else if (!(aFields->indexFieldId = env->GetFieldID(resultJClass,"mIndex","J")))
+    {
+        LOGE("## getDecryptResultFields(): failure - unable to get index field");
+        return false;
+    }
+    else if (!(aFields->alreadySeenFieldId = env->GetFieldID(resultJClass,"mAlreadySeen","Z")))
+    {
+        LOGE("## getDecryptResultFields(): failure - unable to get already seen field");
+        return false;
+    }
+    else if (!(aFields->sessionIndexFieldId = env->GetFieldID(resultJClass,"mSessionIndex","I")))
+    {
+        LOGE("## getDecryptResultFields(): failure - unable to get session index field");
+        return false;
+    }
+
+    return true;
+}
+
+/**
+ * Write the outcome of a non-throwing decryption to a Java OlmDecryptResult.
+ * @param aDecryptResult the OlmDecryptResult object
+ * @param aFields the field ids given by getDecryptResultFields()
+ * @param aStatus the status, OLM_SUCCESS or the error code
+ * @param aIndex the group message index, -1 if there is none
+ * @param aAlreadySeen true if the group message index had already been decrypted
+ * @param aSessionIndex the position of the session which decrypted the message, -1 if there is none
+ */
+void setDecryptResult(JNIEnv *env, jobject aDecryptResult, const struct DecryptResultFields *aFields, jint aStatus, jlong aIndex, bool aAlreadySeen, jint aSessionIndex)
+{
+    env->SetLongField(aDecryptResult, aFields->indexFieldId, aIndex);
+    env->SetBooleanField(aDecryptResult, aFields->alreadySeenFieldId, aAlreadySeen ? JNI_TRUE : JNI_FALSE);
+    env->SetIntField(aDecryptResult, aFields->sessionIndexFieldId, aSessionIndex);
+    env->SetIntField(aDecryptResult, aFields->statusFieldId, aStatus);
+}
+
+/**
+ * Run a batch worker on up to aThreads threads, the calling thread included,
+ * and wait for all of them.
+ */
+void runBatchWorkers(void *(*aWorker)(void *), void *aBatch, size_t aCount, jint aThreads)
+{
+    pthread_t threads[BATCH_MAX_THREADS];
+    size_t threadCount = (aThreads < 1) ? 1 : (size_t)aThreads;
+    size_t started = 0;
+
+    if (threadCount > BATCH_MAX_THREADS)
+    {
+        threadCount = BATCH_MAX_THREADS;
+    }
+    if (threadCount > aCount)
+    {
+        threadCount = aCount ? aCount : 1;
+    }
+
+    // the calling thread is one of the workers
+    for (size_t i = 1; i < threadCount; i++)
+    {
+        if (pthread_create(&threads[started], NULL, aWorker, aBatch) != 0)
+        {
+            LOGW("## runBatchWorkers(): only %lu threads started", static_cast<long unsigned int>(started + 1));
+            break;
+        }
+        started++;
+    }
+
+    aWorker(aBatch);
+
+    for (size_t i = 0; i < started; i++)
+    {
+        pthread_join(threads[i], NULL);
+    }
+
+    LOGD("## runBatchWorkers(): count=%lu threads=%lu", static_cast<long unsigned int>(aCount), static_cast<long unsigned int>(started + 1));
+}
@@ -29,4 +29,7 @@ namespace AndroidOlmSdk
     static const char *CLASS_OLM_PK_DECRYPTION = "org/matrix/olm/OlmPkDecryption";
     static const char *CLASS_OLM_PK_SIGNING = "org/matrix/olm/OlmPkSigning";
     static const char *CLASS_OLM_SAS = "org/matrix/olm/OlmSAS";
+    static const char *CLASS_OLM_ATTACHMENT_CIPHER = "org/matrix/olm/OlmAttachmentCipher";
+    static const char *CLASS_OLM_PARSED_MESSAGE = "org/matrix/olm/OlmParsedMessage";
+    static const char *CLASS_OLM_GROUP_MESSAGE = "org/matrix/olm/OlmGroupMessage";
 }
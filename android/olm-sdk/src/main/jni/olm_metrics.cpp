@@ -0,0 +1,64 @@
+/*
+ * Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include "olm_metrics.h"
+
+using namespace AndroidOlmSdk;
+
+/**
+ * Turn the native counters on or off.
+ * @param aEnabled true to count
+ */
+JNIEXPORT void OLM_METRICS_FUNC_DEF(setNativeEnabledJni)(JNIEnv *env, jclass clazz, jboolean aEnabled)
+{
+    olm_metrics_set_enabled(aEnabled ? 1 : 0);
+}
+
+/**
+ * Read the native counters.
+ * @return the counter values indexed by OlmMetricsCounter, null if the array can't be allocated
+ */
+JNIEXPORT jlongArray OLM_METRICS_FUNC_DEF(nativeCountersJni)(JNIEnv *env, jclass clazz)
+{
+    uint64_t counters[OLM_METRICS_COUNTER_COUNT];
+    jlong values[OLM_METRICS_COUNTER_COUNT];
+    size_t count = olm_metrics_counters(counters, OLM_METRICS_COUNTER_COUNT);
+    jlongArray countersArray = env->NewLongArray(count);
+
+    if (!countersArray)
+    {
+        LOGE("## nativeCountersJni(): failure - return array OOM");
+    }
+    else
+    {
+        for (size_t i = 0; i < count; i++)
+        {
+            values[i] = (jlong)counters[i];
+        }
+
+        env->SetLongArrayRegion(countersArray, 0, count, values);
+    }
+
+    return countersArray;
+}
+
+/**
+ * Set the native counters back to zero.
+ */
+JNIEXPORT void OLM_METRICS_FUNC_DEF(resetNativeCountersJni)(JNIEnv *env, jclass clazz)
+{
+    olm_metrics_reset();
+}
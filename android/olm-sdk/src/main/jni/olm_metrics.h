@@ -0,0 +1,37 @@
+/*
+ * Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef _OMLMETRICS_H
+#define _OMLMETRICS_H
+
+#include "olm_jni.h"
+#include "self_olm/metrics.h"
+
+#define OLM_METRICS_FUNC_DEF(func_name) FUNC_DEF(OlmMetrics,func_name)
+
+#ifdef __cplusplus
+extern "C" {
+#endif
+
+JNIEXPORT void OLM_METRICS_FUNC_DEF(setNativeEnabledJni)(JNIEnv *env, jclass clazz, jboolean aEnabled);
+JNIEXPORT jlongArray OLM_METRICS_FUNC_DEF(nativeCountersJni)(JNIEnv *env, jclass clazz);
+JNIEXPORT void OLM_METRICS_FUNC_DEF(resetNativeCountersJni)(JNIEnv *env, jclass clazz);
+
+#ifdef __cplusplus
+}
+#endif
+
+#endif
@@ -375,6 +375,92 @@ JNIEXPORT jbyteArray OLM_OUTBOUND_GROUP_SESSION_FUNC_DEF(encryptMessageJni)(JNIE
     return encryptedMsgRet;
 }
 
+/**
+ * Encrypt a bytes buffer message, without the base64 encoding.<br>
+ * An exception is thrown if the operation fails.
+ * @param aClearMsgBuffer the message to encode
+ * @return the raw encrypted message
+ */
+JNIEXPORT jbyteArray OLM_OUTBOUND_GROUP_SESSION_FUNC_DEF(encryptMessageRawJni)(JNIEnv *env, jobject thiz, jbyteArray aClearMsgBuffer)
+{
+    LOGD("## encryptMessageRawJni(): IN");
+
+    const char* errorMessage = NULL;
+    jbyteArray encryptedMsgRet = 0;
+
+    OlmOutboundGroupSession *sessionPtr = NULL;
+    jbyte* clearMsgPtr = NULL;
+    jboolean clearMsgIsCopied = JNI_FALSE;
+
+    if (!(sessionPtr = (OlmOutboundGroupSession*)getOutboundGroupSessionInstanceId(env,thiz)))
+    {
+        LOGE(" ## encryptMessageRawJni(): failure - invalid outbound group session ptr=NULL");
+        errorMessage = "invalid outbound group session ptr=NULL";
+    }
+    else if (!aClearMsgBuffer)
+    {
+        LOGE(" ## encryptMessageRawJni(): failure - invalid clear message");
+        errorMessage = "invalid clear message";
+    }
+    else if (!(clearMsgPtr = env->GetByteArrayElements(aClearMsgBuffer, &clearMsgIsCopied)))
+    {
+        LOGE(" ## encryptMessageRawJni(): failure - clear message JNI allocation OOM");
+        errorMessage = "clear message JNI allocation OOM";
+    }
+    else
+    {
+        size_t clearMsgLength = (size_t)env->GetArrayLength(aClearMsgBuffer);
+        size_t encryptedMsgLength = olm_group_encrypt_raw_message_length(sessionPtr, clearMsgLength);
+        uint8_t *encryptedMsgPtr = (uint8_t*)malloc(encryptedMsgLength*sizeof(uint8_t));
+
+        if (!encryptedMsgPtr)
+        {
+            LOGE(" ## encryptMessageRawJni(): failure - encryptedMsgPtr buffer OOM");
+            errorMessage = "encryptedMsgPtr buffer OOM";
+        }
+        else
+        {
+            size_t encryptedLength = olm_group_encrypt_raw(sessionPtr,
+                                                           (uint8_t*)clearMsgPtr,
+                                                           clearMsgLength,
+                                                           encryptedMsgPtr,
+                                                           encryptedMsgLength);
+
+            if (encryptedLength == olm_error())
+            {
+                errorMessage = olm_outbound_group_session_last_error(sessionPtr);
+                LOGE(" ## encryptMessageRawJni(): failure - olm_group_encrypt_raw Msg=%s", errorMessage);
+            }
+            else
+            {
+                LOGD(" ## encryptMessageRawJni(): encrypted returnedLg=%lu",static_cast<long unsigned int>(encryptedLength));
+
+                encryptedMsgRet = env->NewByteArray(encryptedLength);
+                env->SetByteArrayRegion(encryptedMsgRet, 0 , encryptedLength, (jbyte*)encryptedMsgPtr);
+            }
+
+            free(encryptedMsgPtr);
+        }
+    }
+
+    // free alloc
+    if (clearMsgPtr)
+    {
+        if (clearMsgIsCopied)
+        {
+            memset(clearMsgPtr, 0, (size_t)env->GetArrayLength(aClearMsgBuffer));
+        }
+        env->ReleaseByteArrayElements(aClearMsgBuffer, clearMsgPtr, JNI_ABORT);
+    }
+
+    if (errorMessage)
+    {
+        env->ThrowNew(env->FindClass("java/lang/Exception"), errorMessage);
+    }
+
+    return encryptedMsgRet;
+}
+
 /**
  * Serialize and encrypt session instance into a base64 string.<br>
  * An exception is thrown if the operation fails.
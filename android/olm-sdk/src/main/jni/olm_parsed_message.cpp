@@ -0,0 +1,281 @@
+/*
+ * Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+#include "olm_parsed_message.h"
+
+using namespace AndroidOlmSdk;
+
+/**
+ * Identifiers of the keys returned by keyJni(), as defined in OlmParsedMessage.
+ */
+enum
+{
+    PARSED_MESSAGE_RATCHET_KEY = 0,
+    PARSED_MESSAGE_BASE_KEY = 1,
+    PARSED_MESSAGE_ONE_TIME_KEY = 2,
+    PARSED_MESSAGE_IDENTITY_KEY = 3
+};
+
+/**
+ * Decode an Olm message once into a native parsed message.<br>
+ * The parsed message and the decoded message share a single allocation,
+ * the message being kept right after the parsed message.
+ * An exception is thrown if the operation fails.
+ * @param aCipherText the base64 encoded message
+ * @param aType the message type
+ * @return the native parsed message instance identifier
+ */
+JNIEXPORT jlong OLM_PARSED_MESSAGE_FUNC_DEF(createNewParsedMessageJni)(JNIEnv *env, jobject thiz, jbyteArray aCipherText, jlong aType)
+{
+    const char* errorMessage = NULL;
+    OlmParsedMessage *parsedPtr = NULL;
+    size_t cipherTextLength = 0;
+
+    if (!aCipherText)
+    {
+        LOGE("## createNewParsedMessageJni(): failure - invalid message");
+        errorMessage = "invalid message";
+    }
+    else if (!(cipherTextLength = (size_t)env->GetArrayLength(aCipherText)))
+    {
+        LOGE("## createNewParsedMessageJni(): failure - empty message");
+        errorMessage = "empty message";
+    }
+    else if (!(parsedPtr = (OlmParsedMessage *)malloc(olm_parsed_message_size() + cipherTextLength)))
+    {
+        LOGE("## createNewParsedMessageJni(): failure - parsed message OOM");
+        errorMessage = "parsed message OOM";
+    }
+    else
+    {
+        uint8_t *messagePtr = (uint8_t *)parsedPtr + olm_parsed_message_size();
+        parsedPtr = olm_parsed_message(parsedPtr);
+        env->GetByteArrayRegion(aCipherText, 0, cipherTextLength, (jbyte *)messagePtr);
+
+        if (olm_parse_message(parsedPtr, (size_t)aType, messagePtr, cipherTextLength) == olm_error())
+        {
+            errorMessage = olm_parsed_message_last_error(parsedPtr);
+            LOGE("## createNewParsedMessageJni(): failure - olm_parse_message Msg=%s", errorMessage);
+        }
+        else
+        {
+            LOGD("## createNewParsedMessageJni(): success - parsedPtr=%p", parsedPtr);
+        }
+    }
+
+    if (errorMessage)
+    {
+        if (parsedPtr)
+        {
+            olm_clear_parsed_message(parsedPtr);
+            free(parsedPtr);
+            parsedPtr = NULL;
+        }
+        env->ThrowNew(env->FindClass("java/lang/Exception"), errorMessage);
+    }
+
+    return (jlong)(intptr_t)parsedPtr;
+}
+
+/**
+ * Release the native parsed message and the decoded message.
+ */
+JNIEXPORT void OLM_PARSED_MESSAGE_FUNC_DEF(releaseParsedMessageJni)(JNIEnv *env, jobject thiz)
+{
+    LOGD("## releaseParsedMessageJni(): IN");
+    OlmParsedMessage* parsedPtr = getParsedMessageInstanceId(env, thiz);
+
+    if (!parsedPtr)
+    {
+        LOGE("## releaseParsedMessageJni(): failure - invalid parsed message ptr=NULL");
+    }
+    else
+    {
+        olm_clear_parsed_message(parsedPtr);
+        free(parsedPtr);
+    }
+}
+
+/**
+ * Provide the chain counter of the parsed message.
+ * An exception is thrown if the operation fails.
+ * @return the chain counter
+ */
+JNIEXPORT jlong OLM_PARSED_MESSAGE_FUNC_DEF(counterJni)(JNIEnv *env, jobject thiz)
+{
+    OlmParsedMessage* parsedPtr = getParsedMessageInstanceId(env, thiz);
+
+    if (!parsedPtr)
+    {
+        LOGE("## counterJni(): failure - invalid parsed message ptr=NULL");
+        env->ThrowNew(env->FindClass("java/lang/Exception"), "invalid parsed message");
+        return 0;
+    }
+
+    return (jlong)olm_parsed_message_counter(parsedPtr);
+}
+
+/**
+ * Provide one of the keys carried by the parsed message, base64 encoded.<br>
+ * No exception is thrown when the message doesn't carry the key.
+ * @param aKey the key identifier
+ * @return the key, null if the message doesn't carry it
+ */
+JNIEXPORT jbyteArray OLM_PARSED_MESSAGE_FUNC_DEF(keyJni)(JNIEnv *env, jobject thiz, jint aKey)
+{
+    jbyteArray keyRet = 0;
+    OlmParsedMessage* parsedPtr = getParsedMessageInstanceId(env, thiz);
+
+    if (!parsedPtr)
+    {
+        LOGE("## keyJni(): failure - invalid parsed message ptr=NULL");
+    }
+    else
+    {
+        uint8_t keyBuffer[64];
+        size_t keyLength = olm_parsed_message_key_length(parsedPtr);
+        size_t result = olm_error();
+
+        switch (aKey)
+        {
+            case PARSED_MESSAGE_RATCHET_KEY:
+                result = olm_parsed_message_ratchet_key(parsedPtr, keyBuffer, keyLength);
+                break;
+            case PARSED_MESSAGE_BASE_KEY:
+                result = olm_parsed_message_base_key(parsedPtr, keyBuffer, keyLength);
+                break;
+            case PARSED_MESSAGE_ONE_TIME_KEY:
+                result = olm_parsed_message_one_time_key(parsedPtr, keyBuffer, keyLength);
+                break;
+            case PARSED_MESSAGE_IDENTITY_KEY:
+                result = olm_parsed_message_identity_key(parsedPtr, keyBuffer, keyLength);
+                break;
+            default:
+                LOGE("## keyJni(): failure - unknown key %d", aKey);
+                break;
+        }
+
+        if (result == olm_error())
+        {
+            LOGD("## keyJni(): failure - key %d Msg=%s", aKey, olm_parsed_message_last_error(parsedPtr));
+        }
+        else if ((keyRet = env->NewByteArray(result)))
+        {
+            env->SetByteArrayRegion(keyRet, 0, result, (jbyte*)keyBuffer);
+        }
+    }
+
+    return keyRet;
+}
+
+/**
+ * Decode a group message once into a native parsed group message.<br>
+ * The parsed message and the decoded message share a single allocation,
+ * the message being kept right after the parsed message.
+ * An exception is thrown if the operation fails.
+ * @param aCipherText the base64 encoded message
+ * @return the native parsed group message instance identifier
+ */
+JNIEXPORT jlong OLM_GROUP_MESSAGE_FUNC_DEF(createNewGroupMessageJni)(JNIEnv *env, jobject thiz, jbyteArray aCipherText)
+{
+    const char* errorMessage = NULL;
+    OlmParsedGroupMessage *parsedPtr = NULL;
+    size_t cipherTextLength = 0;
+
+    if (!aCipherText)
+    {
+        LOGE("## createNewGroupMessageJni(): failure - invalid message");
+        errorMessage = "invalid message";
+    }
+    else if (!(cipherTextLength = (size_t)env->GetArrayLength(aCipherText)))
+    {
+        LOGE("## createNewGroupMessageJni(): failure - empty message");
+        errorMessage = "empty message";
+    }
+    else if (!(parsedPtr = (OlmParsedGroupMessage *)malloc(olm_parsed_group_message_size() + cipherTextLength)))
+    {
+        LOGE("## createNewGroupMessageJni(): failure - parsed message OOM");
+        errorMessage = "parsed message OOM";
+    }
+    else
+    {
+        uint8_t *messagePtr = (uint8_t *)parsedPtr + olm_parsed_group_message_size();
+        parsedPtr = olm_parsed_group_message(parsedPtr);
+        env->GetByteArrayRegion(aCipherText, 0, cipherTextLength, (jbyte *)messagePtr);
+
+        if (olm_parse_group_message(parsedPtr, messagePtr, cipherTextLength) == olm_error())
+        {
+            errorMessage = olm_parsed_group_message_last_error(parsedPtr);
+            LOGE("## createNewGroupMessageJni(): failure - olm_parse_group_message Msg=%s", errorMessage);
+        }
+        else
+        {
+            LOGD("## createNewGroupMessageJni(): success - parsedPtr=%p", parsedPtr);
+        }
+    }
+
+    if (errorMessage)
+    {
+        if (parsedPtr)
+        {
+            olm_clear_parsed_group_message(parsedPtr);
+            free(parsedPtr);
+            parsedPtr = NULL;
+        }
+        env->ThrowNew(env->FindClass("java/lang/Exception"), errorMessage);
+    }
+
+    return (jlong)(intptr_t)parsedPtr;
+}
+
+/**
+ * Release the native parsed group message and the decoded message.
+ */
+JNIEXPORT void OLM_GROUP_MESSAGE_FUNC_DEF(releaseGroupMessageJni)(JNIEnv *env, jobject thiz)
+{
+    LOGD("## releaseGroupMessageJni(): IN");
+    OlmParsedGroupMessage* parsedPtr = getGroupMessageInstanceId(env, thiz);
+
+    if (!parsedPtr)
+    {
+        LOGE("## releaseGroupMessageJni(): failure - invalid parsed message ptr=NULL");
+    }
+    else
+    {
+        olm_clear_parsed_group_message(parsedPtr);
+        free(parsedPtr);
+    }
+}
+
+/**
+ * Provide the message index of the parsed group message.
+ * An exception is thrown if the operation fails.
+ * @return the message index
+ */
+JNIEXPORT jlong OLM_GROUP_MESSAGE_FUNC_DEF(messageIndexJni)(JNIEnv *env, jobject thiz)
+{
+    OlmParsedGroupMessage* parsedPtr = getGroupMessageInstanceId(env, thiz);
+
+    if (!parsedPtr)
+    {
+        LOGE("## messageIndexJni(): failure - invalid parsed message ptr=NULL");
+        env->ThrowNew(env->FindClass("java/lang/Exception"), "invalid parsed message");
+        return 0;
+    }
+
+    return (jlong)olm_parsed_group_message_index(parsedPtr);
+}
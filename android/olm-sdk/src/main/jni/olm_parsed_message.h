@@ -0,0 +1,47 @@
+/*
+ * Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+#ifndef _OMLPARSEDMESSAGE_H
+#define _OMLPARSEDMESSAGE_H
+
+#include "olm_jni.h"
+#include "self_olm/olm.h"
+#include "self_olm/inbound_group_session.h"
+
+#define OLM_PARSED_MESSAGE_FUNC_DEF(func_name) FUNC_DEF(OlmParsedMessage,func_name)
+#define OLM_GROUP_MESSAGE_FUNC_DEF(func_name) FUNC_DEF(OlmGroupMessage,func_name)
+
+#ifdef __cplusplus
+extern "C" {
+#endif
+
+// Olm messages
+JNIEXPORT jlong OLM_PARSED_MESSAGE_FUNC_DEF(createNewParsedMessageJni)(JNIEnv *env, jobject thiz, jbyteArray aCipherText, jlong aType);
+JNIEXPORT void OLM_PARSED_MESSAGE_FUNC_DEF(releaseParsedMessageJni)(JNIEnv *env, jobject thiz);
+JNIEXPORT jlong OLM_PARSED_MESSAGE_FUNC_DEF(counterJni)(JNIEnv *env, jobject thiz);
+JNIEXPORT jbyteArray OLM_PARSED_MESSAGE_FUNC_DEF(keyJni)(JNIEnv *env, jobject thiz, jint aKey);
+
+// group messages
+JNIEXPORT jlong OLM_GROUP_MESSAGE_FUNC_DEF(createNewGroupMessageJni)(JNIEnv *env, jobject thiz, jbyteArray aCipherText);
+JNIEXPORT void OLM_GROUP_MESSAGE_FUNC_DEF(releaseGroupMessageJni)(JNIEnv *env, jobject thiz);
+JNIEXPORT jlong OLM_GROUP_MESSAGE_FUNC_DEF(messageIndexJni)(JNIEnv *env, jobject thiz);
+
+#ifdef __cplusplus
+}
+#endif
+
+#endif
@@ -18,6 +18,8 @@
 
 #include "self_olm/olm.h"
 
+#include <atomic>
+
 using namespace AndroidOlmSdk;
 
 OlmPkEncryption * initializePkEncryptionMemory()
@@ -549,12 +551,21 @@ JNIEXPORT jbyteArray OLM_PK_DECRYPTION_FUNC_DEF(privateKeyJni)(JNIEnv *env, jobj
     return privateKeyRet;
 }
 
-JNIEXPORT jbyteArray OLM_PK_DECRYPTION_FUNC_DEF(decryptJni)(
-    JNIEnv *env, jobject thiz, jobject aEncryptedMsg
+/**
+ * Decrypt a message.
+ * No exception is thrown: the status is set in aDecryptResult.mStatus, with the
+ * OlmErrorCode of the failure or -1 (JNI_ERROR) if the JNI layer failed.
+ * @param aEncryptedMsg the OlmPkMessage to decrypt
+ * @param aDecryptResult the OlmDecryptResult receiving the status
+ * @return the decrypted message, null if the operation failed
+ */
+JNIEXPORT jbyteArray OLM_PK_DECRYPTION_FUNC_DEF(tryDecryptJni)(
+    JNIEnv *env, jobject thiz, jobject aEncryptedMsg, jobject aDecryptResult
 ) {
-    const char* errorMessage = NULL;
+    jint status = -1;
     OlmPkDecryption *decryptionPtr = getPkDecryptionInstanceId(env, thiz);
 
+    DecryptResultFields resultFields;
     jclass encryptedMsgJClass = 0;
     jstring ciphertextJstring = 0;
     jstring macJstring = 0;
@@ -569,75 +580,58 @@ JNIEXPORT jbyteArray OLM_PK_DECRYPTION_FUNC_DEF(decryptJni)(
 
     jbyteArray decryptedMsgRet = 0;
 
-    if (!decryptionPtr)
+    if (!getDecryptResultFields(env, aDecryptResult, &resultFields))
     {
-        LOGE(" ## pkDecryptJni(): failure - invalid Decryption ptr=NULL");
-        errorMessage = "invalid Decryption ptr=NULL";
+        LOGE(" ## pkTryDecryptJni(): failure - invalid result object");
+        return 0;
+    }
+    else if (!decryptionPtr)
+    {
+        LOGE(" ## pkTryDecryptJni(): failure - invalid Decryption ptr=NULL");
     }
     else if (!aEncryptedMsg)
     {
-        LOGE(" ## pkDecryptJni(): failure - invalid encrypted message");
-        errorMessage = "invalid encrypted message";
+        LOGE(" ## pkTryDecryptJni(): failure - invalid encrypted message");
     }
     else if (!(encryptedMsgJClass = env->GetObjectClass(aEncryptedMsg)))
     {
-        LOGE("## pkDecryptJni(): failure - unable to get encrypted message class");
-        errorMessage = "unable to get encrypted message class";
+        LOGE("## pkTryDecryptJni(): failure - unable to get encrypted message class");
     }
     else if (!(ciphertextFieldId = env->GetFieldID(encryptedMsgJClass,"mCipherText","Ljava/lang/String;")))
     {
-        LOGE("## pkDecryptJni(): failure - unable to get message field");
-        errorMessage = "unable to get message field";
+        LOGE("## pkTryDecryptJni(): failure - unable to get message field");
     }
     else if (!(ciphertextJstring = (jstring)env->GetObjectField(aEncryptedMsg, ciphertextFieldId)))
     {
-        LOGE("## pkDecryptJni(): failure - no ciphertext");
-        errorMessage = "no ciphertext";
+        LOGE("## pkTryDecryptJni(): failure - no ciphertext");
     }
     else if (!(ciphertextPtr = env->GetStringUTFChars(ciphertextJstring, 0)))
     {
-        LOGE("## pkDecryptJni(): failure - ciphertext JNI allocation OOM");
-        errorMessage = "ciphertext JNI allocation OOM";
-    }
-    else if (!(ciphertextJstring = (jstring)env->GetObjectField(aEncryptedMsg, ciphertextFieldId)))
-    {
-        LOGE("## pkDecryptJni(): failure - no ciphertext");
-        errorMessage = "no ciphertext";
-    }
-    else if (!(ciphertextPtr = env->GetStringUTFChars(ciphertextJstring, 0)))
-    {
-        LOGE("## decryptMessageJni(): failure - ciphertext JNI allocation OOM");
-        errorMessage = "ciphertext JNI allocation OOM";
+        LOGE("## pkTryDecryptJni(): failure - ciphertext JNI allocation OOM");
     }
     else if (!(macFieldId = env->GetFieldID(encryptedMsgJClass,"mMac","Ljava/lang/String;")))
     {
-        LOGE("## pkDecryptJni(): failure - unable to get MAC field");
-        errorMessage = "unable to get MAC field";
+        LOGE("## pkTryDecryptJni(): failure - unable to get MAC field");
     }
     else if (!(macJstring = (jstring)env->GetObjectField(aEncryptedMsg, macFieldId)))
     {
-        LOGE("## pkDecryptJni(): failure - no MAC");
-        errorMessage = "no MAC";
+        LOGE("## pkTryDecryptJni(): failure - no MAC");
     }
     else if (!(macPtr = env->GetStringUTFChars(macJstring, 0)))
     {
-        LOGE("## pkDecryptJni(): failure - MAC JNI allocation OOM");
-        errorMessage = "ciphertext JNI allocation OOM";
+        LOGE("## pkTryDecryptJni(): failure - MAC JNI allocation OOM");
     }
     else if (!(ephemeralKeyFieldId = env->GetFieldID(encryptedMsgJClass,"mEphemeralKey","Ljava/lang/String;")))
     {
-        LOGE("## pkDecryptJni(): failure - unable to get ephemeral key field");
-        errorMessage = "unable to get ephemeral key field";
+        LOGE("## pkTryDecryptJni(): failure - unable to get ephemeral key field");
     }
     else if (!(ephemeralKeyJstring = (jstring)env->GetObjectField(aEncryptedMsg, ephemeralKeyFieldId)))
     {
-        LOGE("## pkDecryptJni(): failure - no ephemeral key");
-        errorMessage = "no ephemeral key";
+        LOGE("## pkTryDecryptJni(): failure - no ephemeral key");
     }
     else if (!(ephemeralKeyPtr = env->GetStringUTFChars(ephemeralKeyJstring, 0)))
     {
-        LOGE("## pkDecryptJni(): failure - ephemeral key JNI allocation OOM");
-        errorMessage = "ephemeral key JNI allocation OOM";
+        LOGE("## pkTryDecryptJni(): failure - ephemeral key JNI allocation OOM");
     }
     else
     {
@@ -650,12 +644,11 @@ JNIEXPORT jbyteArray OLM_PK_DECRYPTION_FUNC_DEF(decryptJni)(
         size_t ciphertextLength = (size_t)env->GetStringUTFLength(ciphertextJstring);
         if (!(plaintextPtr = (uint8_t*)malloc(maxPlaintextLength)))
         {
-            LOGE("## pkDecryptJni(): failure - plaintext JNI allocation OOM");
-            errorMessage = "plaintext JNI allocation OOM";
+            LOGE("## pkTryDecryptJni(): failure - plaintext JNI allocation OOM");
         }
         else if (!(tempCiphertextPtr = (uint8_t*)malloc(ciphertextLength)))
         {
-            LOGE("## pkDecryptJni(): failure - temp ciphertext JNI allocation OOM");
+            LOGE("## pkTryDecryptJni(): failure - temp ciphertext JNI allocation OOM");
         }
         else
         {
@@ -669,15 +662,16 @@ JNIEXPORT jbyteArray OLM_PK_DECRYPTION_FUNC_DEF(decryptJni)(
             );
             if (plaintextLength == olm_error())
             {
-                errorMessage = olm_pk_decryption_last_error(decryptionPtr);
-                LOGE("## pkDecryptJni(): failure - olm_pk_decrypt Msg=%s", errorMessage);
+                // an expected outcome of trial decryption: not logged as an error
+                status = olm_pk_decryption_last_error_code(decryptionPtr);
+                LOGD("## pkTryDecryptJni(): failure - olm_pk_decrypt Msg=%s", olm_pk_decryption_last_error(decryptionPtr));
             }
-            else
+            else if ((decryptedMsgRet = env->NewByteArray(plaintextLength)))
             {
-                decryptedMsgRet = env->NewByteArray(plaintextLength);
                 env->SetByteArrayRegion(decryptedMsgRet, 0, plaintextLength, (jbyte*)plaintextPtr);
+                status = OLM_SUCCESS;
                 LOGD(
-                    "## pkDecryptJni(): success returnedLg=%lu OK",
+                    "## pkTryDecryptJni(): success returnedLg=%lu OK",
                     static_cast<long unsigned int>(plaintextLength)
                 );
             }
@@ -707,12 +701,503 @@ JNIEXPORT jbyteArray OLM_PK_DECRYPTION_FUNC_DEF(decryptJni)(
         env->ReleaseStringUTFChars(ephemeralKeyJstring, ephemeralKeyPtr);
     }
 
+    setDecryptResult(env, aDecryptResult, &resultFields, status, -1, false, -1);
+
+    return decryptedMsgRet;
+}
+
+namespace {
+
+// an item of a batch, as offsets in the native copy of the batch
+struct PkBatchItem
+{
+    size_t inputOffset;
+    size_t ciphertextLength;
+    size_t macLength;
+    size_t ephemeralKeyLength;
+    size_t plaintextOffset;
+    size_t plaintextLength;
+    jint status;
+};
+
+struct PkBatch
+{
+    OlmPkDecryption const *decryption;
+    PkBatchItem *items;
+    size_t count;
+    uint8_t *input;
+    uint8_t *plaintexts;
+    std::atomic<size_t> next;
+};
+
+/**
+ * Decrypt the items of a batch until there is none left.<br>
+ * Run by every thread of the batch: the items are handed out one at a time, so that
+ * the threads stay busy whatever the size of the items.
+ */
+void *decryptPkBatchItems(void *aBatch)
+{
+    PkBatch *batch = (PkBatch *)aBatch;
+    size_t index;
+
+    while ((index = batch->next.fetch_add(1)) < batch->count)
+    {
+        PkBatchItem *item = batch->items + index;
+
+        if (item->status != OLM_SUCCESS)
+        {
+            continue;
+        }
+
+        uint8_t *ciphertextPtr = batch->input + item->inputOffset;
+        uint8_t *macPtr = ciphertextPtr + item->ciphertextLength;
+        uint8_t *ephemeralKeyPtr = macPtr + item->macLength;
+        enum OlmErrorCode error = OLM_SUCCESS;
+
+        size_t plaintextLength = olm_pk_decrypt_concurrent(
+            batch->decryption,
+            ephemeralKeyPtr, item->ephemeralKeyLength,
+            macPtr, item->macLength,
+            ciphertextPtr, item->ciphertextLength,
+            batch->plaintexts + item->plaintextOffset, item->plaintextLength,
+            &error
+        );
+
+        item->status = error;
+        item->plaintextLength = (plaintextLength == olm_error()) ? 0 : plaintextLength;
+    }
+
+    return NULL;
+}
+
+}
+
+/**
+ * Decrypt a batch of messages encrypted to this key, on several threads.<br>
+ * The batch is copied to native memory first, so that the threads don't use JNI.
+ * A failed item doesn't stop the batch: its status is set and its plaintext is null.
+ * An exception is thrown if the batch itself is invalid.
+ * @param aCipherTexts the base64 ciphertexts
+ * @param aMacs the base64 MACs
+ * @param aEphemeralKeys the base64 ephemeral keys
+ * @param aThreads number of threads, capped to BATCH_MAX_THREADS
+ * @param aStatuses receives the OlmErrorCode of each item, -2 (INVALID_INPUT) for a null item
+ * @return the plaintexts, null for the failed items
+ */
+JNIEXPORT jobjectArray OLM_PK_DECRYPTION_FUNC_DEF(decryptBatchJni)(
+    JNIEnv *env, jobject thiz, jobjectArray aCipherTexts, jobjectArray aMacs, jobjectArray aEphemeralKeys, jint aThreads, jintArray aStatuses
+) {
+    const char* errorMessage = NULL;
+    OlmPkDecryption *decryptionPtr = getPkDecryptionInstanceId(env, thiz);
+    jobjectArray plaintextsRet = NULL;
+    jclass byteArrayClass = NULL;
+    jsize count = 0;
+
+    if (!decryptionPtr)
+    {
+        errorMessage = "invalid Decryption ptr=NULL";
+        LOGE(" ## decryptBatchJni(): failure - %s", errorMessage);
+    }
+    else if (!aCipherTexts || !aMacs || !aEphemeralKeys || !aStatuses)
+    {
+        errorMessage = "invalid batch";
+        LOGE(" ## decryptBatchJni(): failure - %s", errorMessage);
+    }
+    else if (((count = env->GetArrayLength(aCipherTexts)) != env->GetArrayLength(aMacs))
+             || (count != env->GetArrayLength(aEphemeralKeys))
+             || (count != env->GetArrayLength(aStatuses)))
+    {
+        errorMessage = "batch arrays lengths differ";
+        LOGE(" ## decryptBatchJni(): failure - %s", errorMessage);
+    }
+    else if (!(byteArrayClass = env->FindClass("[B")))
+    {
+        errorMessage = "byte array class";
+        LOGE(" ## decryptBatchJni(): failure - %s", errorMessage);
+    }
+    else
+    {
+        PkBatch batch;
+        batch.decryption = decryptionPtr;
+        batch.count = count;
+        batch.input = NULL;
+        batch.plaintexts = NULL;
+        batch.next = 0;
+        batch.items = (PkBatchItem *)calloc(count ? count : 1, sizeof(PkBatchItem));
+
+        size_t inputLength = 0;
+        size_t plaintextsLength = 0;
+
+        if (!batch.items)
+        {
+            errorMessage = "batch items JNI allocation OOM";
+            LOGE(" ## decryptBatchJni(): failure - %s", errorMessage);
+        }
+
+        // first pass: the lengths
+        for (jsize i = 0; !errorMessage && (i < count); i++)
+        {
+            PkBatchItem *item = batch.items + i;
+            jbyteArray ciphertext = (jbyteArray)env->GetObjectArrayElement(aCipherTexts, i);
+            jbyteArray mac = (jbyteArray)env->GetObjectArrayElement(aMacs, i);
+            jbyteArray ephemeralKey = (jbyteArray)env->GetObjectArrayElement(aEphemeralKeys, i);
+
+            if (!ciphertext || !mac || !ephemeralKey)
+            {
+                item->status = -2;
+            }
+            else
+            {
+                item->status = OLM_SUCCESS;
+                item->inputOffset = inputLength;
+                item->ciphertextLength = (size_t)env->GetArrayLength(ciphertext);
+                item->macLength = (size_t)env->GetArrayLength(mac);
+                item->ephemeralKeyLength = (size_t)env->GetArrayLength(ephemeralKey);
+                inputLength += item->ciphertextLength + item->macLength + item->ephemeralKeyLength;
+                item->plaintextOffset = plaintextsLength;
+                item->plaintextLength = olm_pk_max_plaintext_length(decryptionPtr, item->ciphertextLength);
+                plaintextsLength += item->plaintextLength;
+            }
+
+            env->DeleteLocalRef(ciphertext);
+            env->DeleteLocalRef(mac);
+            env->DeleteLocalRef(ephemeralKey);
+        }
+
+        if (!errorMessage && !(batch.input = (uint8_t *)malloc(inputLength ? inputLength : 1)))
+        {
+            errorMessage = "batch input JNI allocation OOM";
+            LOGE(" ## decryptBatchJni(): failure - %s", errorMessage);
+        }
+        else if (!errorMessage && !(batch.plaintexts = (uint8_t *)malloc(plaintextsLength ? plaintextsLength : 1)))
+        {
+            errorMessage = "batch plaintexts JNI allocation OOM";
+            LOGE(" ## decryptBatchJni(): failure - %s", errorMessage);
+        }
+
+        // second pass: the copy
+        for (jsize i = 0; !errorMessage && (i < count); i++)
+        {
+            PkBatchItem *item = batch.items + i;
+
+            if (item->status == OLM_SUCCESS)
+            {
+                jbyteArray ciphertext = (jbyteArray)env->GetObjectArrayElement(aCipherTexts, i);
+                jbyteArray mac = (jbyteArray)env->GetObjectArrayElement(aMacs, i);
+                jbyteArray ephemeralKey = (jbyteArray)env->GetObjectArrayElement(aEphemeralKeys, i);
+                jbyte *inputPtr = (jbyte *)batch.input + item->inputOffset;
+
+                env->GetByteArrayRegion(ciphertext, 0, item->ciphertextLength, inputPtr);
+                env->GetByteArrayRegion(mac, 0, item->macLength, inputPtr + item->ciphertextLength);
+                env->GetByteArrayRegion(ephemeralKey, 0, item->ephemeralKeyLength, inputPtr + item->ciphertextLength + item->macLength);
+
+                env->DeleteLocalRef(ciphertext);
+                env->DeleteLocalRef(mac);
+                env->DeleteLocalRef(ephemeralKey);
+            }
+        }
+
+        if (!errorMessage)
+        {
+            runBatchWorkers(decryptPkBatchItems, &batch, batch.count, aThreads);
+
+            if (!(plaintextsRet = env->NewObjectArray(count, byteArrayClass, NULL)))
+            {
+                errorMessage = "plaintexts JNI allocation OOM";
+                LOGE(" ## decryptBatchJni(): failure - %s", errorMessage);
+            }
+
+            for (jsize i = 0; !errorMessage && (i < count); i++)
+            {
+                PkBatchItem *item = batch.items + i;
+
+                env->SetIntArrayRegion(aStatuses, i, 1, &item->status);
+
+                if (item->status == OLM_SUCCESS)
+                {
+                    jbyteArray plaintext = env->NewByteArray(item->plaintextLength);
+
+                    if (!plaintext)
+                    {
+                        errorMessage = "plaintext JNI allocation OOM";
+                        LOGE(" ## decryptBatchJni(): failure - %s", errorMessage);
+                    }
+                    else
+                    {
+                        env->SetByteArrayRegion(plaintext, 0, item->plaintextLength, (jbyte *)batch.plaintexts + item->plaintextOffset);
+                        env->SetObjectArrayElement(plaintextsRet, i, plaintext);
+                        env->DeleteLocalRef(plaintext);
+                    }
+                }
+            }
+        }
+
+        if (batch.plaintexts)
+        {
+            memset(batch.plaintexts, 0, plaintextsLength);
+            free(batch.plaintexts);
+        }
+
+        free(batch.input);
+        free(batch.items);
+    }
+
     if (errorMessage)
     {
         env->ThrowNew(env->FindClass("java/lang/Exception"), errorMessage);
     }
 
-    return decryptedMsgRet;
+    return plaintextsRet;
+}
+
+namespace {
+
+// an item of an encryption batch, as offsets in the native buffers of the batch
+struct PkEncryptBatchItem
+{
+    size_t plaintextOffset;
+    size_t plaintextLength;
+    size_t ciphertextOffset;
+    size_t ciphertextLength;
+    enum OlmErrorCode status;
+};
+
+struct PkEncryptBatch
+{
+    OlmPkEncryption const *encryption;
+    PkEncryptBatchItem *items;
+    size_t count;
+    uint8_t *plaintexts;
+    uint8_t *ciphertexts;
+    uint8_t *macs;
+    size_t macLength;
+    uint8_t *ephemeralKeys;
+    size_t ephemeralKeyLength;
+    uint8_t *random;
+    size_t randomLength;
+    std::atomic<size_t> next;
+};
+
+/**
+ * Encrypt the items of a batch until there is none left.<br>
+ * Each item uses its own slice of the random buffer of the batch.
+ */
+void *encryptPkBatchItems(void *aBatch)
+{
+    PkEncryptBatch *batch = (PkEncryptBatch *)aBatch;
+    size_t index;
+
+    while ((index = batch->next.fetch_add(1)) < batch->count)
+    {
+        PkEncryptBatchItem *item = batch->items + index;
+
+        olm_pk_encrypt_concurrent(
+            batch->encryption,
+            batch->plaintexts + item->plaintextOffset, item->plaintextLength,
+            batch->ciphertexts + item->ciphertextOffset, item->ciphertextLength,
+            batch->macs + index * batch->macLength, batch->macLength,
+            batch->ephemeralKeys + index * batch->ephemeralKeyLength, batch->ephemeralKeyLength,
+            batch->random + index * batch->randomLength, batch->randomLength,
+            &item->status
+        );
+    }
+
+    return NULL;
+}
+
+}
+
+/**
+ * Encrypt a batch of plaintexts for the recipient key, on several threads.<br>
+ * The random bytes of the whole batch are drawn at once, and the results are packed:
+ * the ciphertext i is at [aCipherTextOffsets[i], aCipherTextOffsets[i + 1]) in the
+ * returned array, its MAC and ephemeral key at i * their length in aMacs and aEphemeralKeys.
+ * @param aPlaintexts the plaintexts, none of them null
+ * @param aThreads number of threads, capped to BATCH_MAX_THREADS
+ * @param aCipherTextOffsets receives the count + 1 offsets of the ciphertexts
+ * @param aMacs receives the MACs, count * olm_pk_mac_length() bytes
+ * @param aEphemeralKeys receives the ephemeral keys, count * olm_pk_key_length() bytes
+ * @return the packed ciphertexts
+ */
+JNIEXPORT jbyteArray OLM_PK_ENCRYPTION_FUNC_DEF(encryptBatchJni)(
+    JNIEnv *env, jobject thiz, jobjectArray aPlaintexts, jint aThreads, jintArray aCipherTextOffsets, jbyteArray aMacs, jbyteArray aEphemeralKeys
+) {
+    const char* errorMessage = NULL;
+    OlmPkEncryption *encryptionPtr = getPkEncryptionInstanceId(env, thiz);
+    jbyteArray ciphertextsRet = NULL;
+    jsize count = 0;
+    size_t macLength = 0;
+    size_t ephemeralKeyLength = olm_pk_key_length();
+
+    if (!encryptionPtr)
+    {
+        errorMessage = "invalid Encryption ptr=NULL";
+        LOGE(" ## encryptBatchJni(): failure - %s", errorMessage);
+    }
+    else if (!aPlaintexts || !aCipherTextOffsets || !aMacs || !aEphemeralKeys)
+    {
+        errorMessage = "invalid batch";
+        LOGE(" ## encryptBatchJni(): failure - %s", errorMessage);
+    }
+    else if (((count = env->GetArrayLength(aPlaintexts)) + 1 != env->GetArrayLength(aCipherTextOffsets))
+             || ((size_t)env->GetArrayLength(aMacs) != count * (macLength = olm_pk_mac_length(encryptionPtr)))
+             || ((size_t)env->GetArrayLength(aEphemeralKeys) != count * ephemeralKeyLength))
+    {
+        errorMessage = "batch arrays lengths differ";
+        LOGE(" ## encryptBatchJni(): failure - %s", errorMessage);
+    }
+    else
+    {
+        PkEncryptBatch batch;
+        batch.encryption = encryptionPtr;
+        batch.count = count;
+        batch.plaintexts = NULL;
+        batch.ciphertexts = NULL;
+        batch.macs = NULL;
+        batch.macLength = macLength;
+        batch.ephemeralKeys = NULL;
+        batch.ephemeralKeyLength = ephemeralKeyLength;
+        batch.random = NULL;
+        batch.randomLength = olm_pk_encrypt_random_length(encryptionPtr);
+        batch.next = 0;
+        batch.items = (PkEncryptBatchItem *)calloc(count ? count : 1, sizeof(PkEncryptBatchItem));
+
+        size_t plaintextsLength = 0;
+        size_t ciphertextsLength = 0;
+
+        if (!batch.items)
+        {
+            errorMessage = "batch items JNI allocation OOM";
+            LOGE(" ## encryptBatchJni(): failure - %s", errorMessage);
+        }
+
+        // first pass: the lengths
+        for (jsize i = 0; !errorMessage && (i < count); i++)
+        {
+            PkEncryptBatchItem *item = batch.items + i;
+            jbyteArray plaintext = (jbyteArray)env->GetObjectArrayElement(aPlaintexts, i);
+
+            if (!plaintext)
+            {
+                errorMessage = "invalid plaintext";
+                LOGE(" ## encryptBatchJni(): failure - %s", errorMessage);
+            }
+            else
+            {
+                item->plaintextOffset = plaintextsLength;
+                item->plaintextLength = (size_t)env->GetArrayLength(plaintext);
+                plaintextsLength += item->plaintextLength;
+                item->ciphertextOffset = ciphertextsLength;
+                item->ciphertextLength = olm_pk_ciphertext_length(encryptionPtr, item->plaintextLength);
+                ciphertextsLength += item->ciphertextLength;
+            }
+
+            env->DeleteLocalRef(plaintext);
+        }
+
+        if (!errorMessage && (ciphertextsLength > 0x7fffffff))
+        {
+            errorMessage = "batch too large";
+            LOGE(" ## encryptBatchJni(): failure - %s", errorMessage);
+        }
+        else if (!errorMessage && !(batch.plaintexts = (uint8_t *)malloc(plaintextsLength ? plaintextsLength : 1)))
+        {
+            errorMessage = "batch plaintexts JNI allocation OOM";
+            LOGE(" ## encryptBatchJni(): failure - %s", errorMessage);
+        }
+        else if (!errorMessage && !(batch.ciphertexts = (uint8_t *)malloc(ciphertextsLength ? ciphertextsLength : 1)))
+        {
+            errorMessage = "batch ciphertexts JNI allocation OOM";
+            LOGE(" ## encryptBatchJni(): failure - %s", errorMessage);
+        }
+        else if (!errorMessage && !(batch.macs = (uint8_t *)malloc(count * macLength + 1)))
+        {
+            errorMessage = "batch MACs JNI allocation OOM";
+            LOGE(" ## encryptBatchJni(): failure - %s", errorMessage);
+        }
+        else if (!errorMessage && !(batch.ephemeralKeys = (uint8_t *)malloc(count * ephemeralKeyLength + 1)))
+        {
+            errorMessage = "batch ephemeral keys JNI allocation OOM";
+            LOGE(" ## encryptBatchJni(): failure - %s", errorMessage);
+        }
+        // one call to the random source for the whole batch
+        else if (!errorMessage && !setRandomInBuffer(env, &batch.random, (count ? count : 1) * batch.randomLength))
+        {
+            errorMessage = "random buffer init";
+            LOGE(" ## encryptBatchJni(): failure - %s", errorMessage);
+        }
+
+        // second pass: the copy
+        for (jsize i = 0; !errorMessage && (i < count); i++)
+        {
+            PkEncryptBatchItem *item = batch.items + i;
+            jbyteArray plaintext = (jbyteArray)env->GetObjectArrayElement(aPlaintexts, i);
+
+            env->GetByteArrayRegion(plaintext, 0, item->plaintextLength, (jbyte *)batch.plaintexts + item->plaintextOffset);
+            env->DeleteLocalRef(plaintext);
+        }
+
+        if (!errorMessage)
+        {
+            runBatchWorkers(encryptPkBatchItems, &batch, batch.count, aThreads);
+
+            for (jsize i = 0; !errorMessage && (i < count); i++)
+            {
+                if (batch.items[i].status != OLM_SUCCESS)
+                {
+                    errorMessage = _olm_error_to_string(batch.items[i].status);
+                    LOGE(" ## encryptBatchJni(): failure - item %d %s", i, errorMessage);
+                }
+            }
+        }
+
+        if (!errorMessage)
+        {
+            if (!(ciphertextsRet = env->NewByteArray(ciphertextsLength)))
+            {
+                errorMessage = "ciphertexts JNI allocation OOM";
+                LOGE(" ## encryptBatchJni(): failure - %s", errorMessage);
+            }
+            else
+            {
+                env->SetByteArrayRegion(ciphertextsRet, 0, ciphertextsLength, (jbyte *)batch.ciphertexts);
+                env->SetByteArrayRegion(aMacs, 0, count * macLength, (jbyte *)batch.macs);
+                env->SetByteArrayRegion(aEphemeralKeys, 0, count * ephemeralKeyLength, (jbyte *)batch.ephemeralKeys);
+
+                for (jsize i = 0; i < count; i++)
+                {
+                    jint offset = (jint)batch.items[i].ciphertextOffset;
+                    env->SetIntArrayRegion(aCipherTextOffsets, i, 1, &offset);
+                }
+
+                jint end = (jint)ciphertextsLength;
+                env->SetIntArrayRegion(aCipherTextOffsets, count, 1, &end);
+            }
+        }
+
+        if (batch.random)
+        {
+            memset(batch.random, 0, (count ? count : 1) * batch.randomLength);
+            free(batch.random);
+        }
+        if (batch.plaintexts)
+        {
+            memset(batch.plaintexts, 0, plaintextsLength);
+            free(batch.plaintexts);
+        }
+
+        free(batch.ephemeralKeys);
+        free(batch.macs);
+        free(batch.ciphertexts);
+        free(batch.items);
+    }
+
+    if (errorMessage)
+    {
+        env->ThrowNew(env->FindClass("java/lang/Exception"), errorMessage);
+    }
+
+    return ciphertextsRet;
 }
 
 OlmPkSigning * initializePkSigningMemory()
@@ -990,3 +1475,130 @@ JNIEXPORT jbyteArray OLM_PK_SIGNING_FUNC_DEF(pkSignJni)(JNIEnv *env, jobject thi
 
     return signatureRet;
 }
+
+/**
+ * Sign a batch of messages in a single call, reusing the same native buffers.<br>
+ * An exception is thrown if a message can't be signed.
+ * @param aMessages the messages to sign
+ * @return the signatures, in the order of the messages
+ */
+JNIEXPORT jobjectArray OLM_PK_SIGNING_FUNC_DEF(pkSignMessagesJni)(JNIEnv *env, jobject thiz, jobjectArray aMessages)
+{
+    const char* errorMessage = NULL;
+    OlmPkSigning *signingPtr = getPkSigningInstanceId(env, thiz);
+    jobjectArray signaturesRet = NULL;
+    jclass byteArrayClass = NULL;
+
+    if (!signingPtr)
+    {
+        errorMessage = "invalid Siging ptr=NULL";
+        LOGE(" ## pkSignMessagesJni(): failure - %s", errorMessage);
+    }
+    else if (!aMessages)
+    {
+        errorMessage = "invalid messages";
+        LOGE(" ## pkSignMessagesJni(): failure - %s", errorMessage);
+    }
+    else if (!(byteArrayClass = env->FindClass("[B")))
+    {
+        errorMessage = "byte array class";
+        LOGE(" ## pkSignMessagesJni(): failure - %s", errorMessage);
+    }
+    else
+    {
+        jsize count = env->GetArrayLength(aMessages);
+        size_t signatureLength = olm_pk_signature_length();
+        uint8_t *signaturePtr = (uint8_t*)malloc(signatureLength);
+        uint8_t *messagePtr = NULL;
+        size_t messageCapacity = 0;
+
+        if (!signaturePtr)
+        {
+            errorMessage = "signature JNI allocation OOM";
+            LOGE(" ## pkSignMessagesJni(): failure - %s", errorMessage);
+        }
+        else if (!(signaturesRet = env->NewObjectArray(count, byteArrayClass, NULL)))
+        {
+            errorMessage = "signatures JNI allocation OOM";
+            LOGE(" ## pkSignMessagesJni(): failure - %s", errorMessage);
+        }
+
+        for (jsize i = 0; !errorMessage && (i < count); i++)
+        {
+            jbyteArray message = (jbyteArray)env->GetObjectArrayElement(aMessages, i);
+            size_t messageLength = message ? (size_t)env->GetArrayLength(message) : 0;
+
+            // the message buffer only grows
+            if (messageLength > messageCapacity)
+            {
+                uint8_t *biggerPtr = (uint8_t*)malloc(messageLength);
+
+                if (messagePtr)
+                {
+                    memset(messagePtr, 0, messageCapacity);
+                    free(messagePtr);
+                }
+
+                messagePtr = biggerPtr;
+                messageCapacity = biggerPtr ? messageLength : 0;
+            }
+
+            if (!message)
+            {
+                errorMessage = "invalid message";
+                LOGE(" ## pkSignMessagesJni(): failure - %s %d", errorMessage, i);
+            }
+            else if (messageLength && !messagePtr)
+            {
+                errorMessage = "message JNI allocation OOM";
+                LOGE(" ## pkSignMessagesJni(): failure - %s", errorMessage);
+            }
+            else
+            {
+                env->GetByteArrayRegion(message, 0, messageLength, (jbyte*)messagePtr);
+
+                if (olm_pk_sign(signingPtr, messagePtr, messageLength, signaturePtr, signatureLength) == olm_error())
+                {
+                    errorMessage = olm_pk_signing_last_error(signingPtr);
+                    LOGE(" ## pkSignMessagesJni(): failure - olm_pk_sign Msg=%s", errorMessage);
+                }
+                else
+                {
+                    jbyteArray signature = env->NewByteArray(signatureLength);
+
+                    if (!signature)
+                    {
+                        errorMessage = "signature JNI allocation OOM";
+                        LOGE(" ## pkSignMessagesJni(): failure - %s", errorMessage);
+                    }
+                    else
+                    {
+                        env->SetByteArrayRegion(signature, 0, signatureLength, (jbyte*)signaturePtr);
+                        env->SetObjectArrayElement(signaturesRet, i, signature);
+                        env->DeleteLocalRef(signature);
+                    }
+                }
+            }
+
+            if (message)
+            {
+                env->DeleteLocalRef(message);
+            }
+        }
+
+        if (messagePtr)
+        {
+            memset(messagePtr, 0, messageCapacity);
+            free(messagePtr);
+        }
+
+        free(signaturePtr);
+    }
+
+    if (errorMessage)
+    {
+        env->ThrowNew(env->FindClass("java/lang/Exception"), errorMessage);
+    }
+
+    return signaturesRet;
+}
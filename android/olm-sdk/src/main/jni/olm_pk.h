@@ -33,6 +33,7 @@ JNIEXPORT void OLM_PK_ENCRYPTION_FUNC_DEF(releasePkEncryptionJni)(JNIEnv *env, j
 JNIEXPORT void OLM_PK_ENCRYPTION_FUNC_DEF(setRecipientKeyJni)(JNIEnv *env, jobject thiz, jbyteArray aKeyBuffer);
 
 JNIEXPORT jbyteArray OLM_PK_ENCRYPTION_FUNC_DEF(encryptJni)(JNIEnv *env, jobject thiz, jbyteArray aPlaintextBuffer, jobject aEncryptedMsg);
+JNIEXPORT jbyteArray OLM_PK_ENCRYPTION_FUNC_DEF(encryptBatchJni)(JNIEnv *env, jobject thiz, jobjectArray aPlaintexts, jint aThreads, jintArray aCipherTextOffsets, jbyteArray aMacs, jbyteArray aEphemeralKeys);
 
 JNIEXPORT jlong OLM_PK_DECRYPTION_FUNC_DEF(createNewPkDecryptionJni)(JNIEnv *env, jobject thiz);
 JNIEXPORT void OLM_PK_DECRYPTION_FUNC_DEF(releasePkDecryptionJni)(JNIEnv *env, jobject thiz);
@@ -40,7 +41,8 @@ JNIEXPORT jint OLM_PK_DECRYPTION_FUNC_DEF(privateKeyLength)(JNIEnv *env, jobject
 JNIEXPORT jbyteArray OLM_PK_DECRYPTION_FUNC_DEF(setPrivateKeyJni)(JNIEnv *env, jobject thiz, jbyteArray key);
 JNIEXPORT jbyteArray OLM_PK_DECRYPTION_FUNC_DEF(generateKeyJni)(JNIEnv *env, jobject thiz);
 JNIEXPORT jbyteArray OLM_PK_DECRYPTION_FUNC_DEF(privateKeyJni)(JNIEnv *env, jobject thiz);
-JNIEXPORT jbyteArray OLM_PK_DECRYPTION_FUNC_DEF(decryptJni)(JNIEnv *env, jobject thiz, jobject aEncryptedMsg);
+JNIEXPORT jbyteArray OLM_PK_DECRYPTION_FUNC_DEF(tryDecryptJni)(JNIEnv *env, jobject thiz, jobject aEncryptedMsg, jobject aDecryptResult);
+JNIEXPORT jobjectArray OLM_PK_DECRYPTION_FUNC_DEF(decryptBatchJni)(JNIEnv *env, jobject thiz, jobjectArray aCipherTexts, jobjectArray aMacs, jobjectArray aEphemeralKeys, jint aThreads, jintArray aStatuses);
 
 JNIEXPORT jlong OLM_PK_SIGNING_FUNC_DEF(createNewPkSigningJni)(JNIEnv *env, jobject thiz);
 JNIEXPORT void OLM_PK_SIGNING_FUNC_DEF(releasePkSigningJni)(JNIEnv *env, jobject thiz);
@@ -48,6 +50,7 @@ JNIEXPORT jint OLM_PK_SIGNING_FUNC_DEF(seedLength)(JNIEnv *env, jobject thiz);
 JNIEXPORT jbyteArray OLM_PK_SIGNING_FUNC_DEF(generateSeedJni)(JNIEnv *env, jobject thiz);
 JNIEXPORT jbyteArray OLM_PK_SIGNING_FUNC_DEF(setKeyFromSeedJni)(JNIEnv *env, jobject thiz, jbyteArray seed);
 JNIEXPORT jbyteArray OLM_PK_SIGNING_FUNC_DEF(pkSignJni)(JNIEnv *env, jobject thiz, jbyteArray aMessage);
+JNIEXPORT jobjectArray OLM_PK_SIGNING_FUNC_DEF(pkSignMessagesJni)(JNIEnv *env, jobject thiz, jobjectArray aMessages);
 
 #ifdef __cplusplus
 }
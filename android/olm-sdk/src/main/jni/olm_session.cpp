@@ -16,6 +16,7 @@
  */
 
 #include "olm_session.h"
+#include "olm_ephemeral_key_pool.h"
 
 using namespace AndroidOlmSdk;
 
@@ -61,6 +62,15 @@ JNIEXPORT jlong OLM_SESSION_FUNC_DEF(createNewSessionJni)(JNIEnv *env, jobject t
     return (jlong)(intptr_t)accountPtr;
 }
 
+/**
+ * Return the size of the native memory backing a session.
+ * @return the session size in bytes
+ **/
+JNIEXPORT jlong OLM_SESSION_FUNC_DEF(nativeSizeJni)(JNIEnv *env, jclass clazz)
+{
+    return (jlong)olm_session_size();
+}
+
 JNIEXPORT void OLM_SESSION_FUNC_DEF(releaseSessionJni)(JNIEnv *env, jobject thiz)
 {
     LOGD("## releaseSessionJni(): IN");
@@ -115,10 +125,25 @@ JNIEXPORT void OLM_SESSION_FUNC_DEF(initOutboundSessionJni)(JNIEnv *env, jobject
     {
         size_t randomSize = olm_create_outbound_session_random_length(sessionPtr);
         uint8_t *randomBuffPtr = NULL;
+        bool pooledKeyPairs = false;
 
         LOGD("## initOutboundSessionJni(): randomSize=%lu",static_cast<long unsigned int>(randomSize));
 
-        if ( (0 != randomSize) && !setRandomInBuffer(env, &randomBuffPtr, randomSize))
+        // the base key and the ratchet key can come from OlmEphemeralKeyPool
+        size_t keyPairsLength = 2 * olm_ephemeral_key_pair_length();
+
+        if ((randomBuffPtr = (uint8_t*)malloc(keyPairsLength)) && takeEphemeralKeyPairs(randomBuffPtr, 2))
+        {
+            pooledKeyPairs = true;
+            randomSize = keyPairsLength;
+        }
+        else
+        {
+            free(randomBuffPtr);
+            randomBuffPtr = NULL;
+        }
+
+        if ((0 != randomSize) && !pooledKeyPairs && !setRandomInBuffer(env, &randomBuffPtr, randomSize))
         {
             LOGE("## initOutboundSessionJni(): failure - random buffer init");
             errorMessage = "random buffer init";
@@ -145,7 +170,11 @@ JNIEXPORT void OLM_SESSION_FUNC_DEF(initOutboundSessionJni)(JNIEnv *env, jobject
                 size_t theirOneTimeKeyLength  = (size_t)env->GetArrayLength(aTheirOneTimeKeyBuffer);
                 LOGD("## initOutboundSessionJni(): identityKey=%.*s oneTimeKey=%.*s", static_cast<int>(theirIdentityKeyLength), theirIdentityKeyPtr, static_cast<int>(theirOneTimeKeyLength), theirOneTimeKeyPtr);
 
-                size_t sessionResult = olm_create_outbound_session(sessionPtr,
+                size_t sessionResult;
+
+                if (pooledKeyPairs)
+                {
+                    sessionResult = olm_create_outbound_session_with_key_pairs(sessionPtr,
                                                             accountPtr,
                                                             theirIdentityKeyPtr,
                                                             theirIdentityKeyLength,
@@ -153,6 +182,18 @@ JNIEXPORT void OLM_SESSION_FUNC_DEF(initOutboundSessionJni)(JNIEnv *env, jobject
                                                             theirOneTimeKeyLength,
                                                             (void*)randomBuffPtr,
                                                             randomSize);
+                }
+                else
+                {
+                    sessionResult = olm_create_outbound_session(sessionPtr,
+                                                            accountPtr,
+                                                            theirIdentityKeyPtr,
+                                                            theirIdentityKeyLength,
+                                                            theirOneTimeKeyPtr,
+                                                            theirOneTimeKeyLength,
+                                                            (void*)randomBuffPtr,
+                                                            randomSize);
+                }
                 if (sessionResult == olm_error()) {
                     errorMessage = (const char *)olm_session_last_error(sessionPtr);
                     LOGE("## initOutboundSessionJni(): failure - session creation  Msg=%s", errorMessage);
@@ -257,6 +298,70 @@ JNIEXPORT void OLM_SESSION_FUNC_DEF(initInboundSessionJni)(JNIEnv *env, jobject
     }
 }
 
+/**
+ * Create a new in-bound session for sending/receiving messages from an
+ * incoming PRE_KEY message written without the base64 encoding.<br>
+ * An exception is thrown if the operation fails.
+ * @param aOlmAccountId account instance
+ * @param aOneTimeKeyMsg raw PRE_KEY message
+ */
+JNIEXPORT void OLM_SESSION_FUNC_DEF(initInboundSessionRawJni)(JNIEnv *env, jobject thiz, jlong aOlmAccountId, jbyteArray aOneTimeKeyMsgBuffer)
+{
+    const char* errorMessage = NULL;
+    OlmSession *sessionPtr = getSessionInstanceId(env,thiz);
+    OlmAccount *accountPtr = NULL;
+    size_t sessionResult;
+
+    if (!sessionPtr)
+    {
+        LOGE("## initInboundSessionRawJni(): failure - invalid Session ptr=NULL");
+        errorMessage = "invalid Session ptr=NULL";
+    }
+    else if (!(accountPtr = (OlmAccount*)aOlmAccountId))
+    {
+        LOGE("## initInboundSessionRawJni(): failure - invalid Account ptr=NULL");
+        errorMessage = "invalid Account ptr=NULL";
+    }
+    else if (!aOneTimeKeyMsgBuffer)
+    {
+        LOGE("## initInboundSessionRawJni(): failure - invalid message");
+        errorMessage = "invalid message";
+    }
+    else
+    {
+        jbyte* messagePtr = env->GetByteArrayElements(aOneTimeKeyMsgBuffer, 0);
+
+        if (!messagePtr)
+        {
+            LOGE("## initInboundSessionRawJni(): failure - message JNI allocation OOM");
+            errorMessage = "message JNI allocation OOM";
+        }
+        else
+        {
+            size_t messageLength = (size_t)env->GetArrayLength(aOneTimeKeyMsgBuffer);
+
+            sessionResult = olm_create_inbound_session_raw(sessionPtr, accountPtr, (const void*)messagePtr, messageLength);
+
+            if (sessionResult == olm_error())
+            {
+                errorMessage = olm_session_last_error(sessionPtr);
+                LOGE("## initInboundSessionRawJni(): failure - init inbound session creation  Msg=%s", errorMessage);
+            }
+            else
+            {
+                LOGD("## initInboundSessionRawJni(): success - result=%lu", static_cast<long unsigned int>(sessionResult));
+            }
+
+            env->ReleaseByteArrayElements(aOneTimeKeyMsgBuffer, messagePtr, JNI_ABORT);
+        }
+    }
+
+    if (errorMessage)
+    {
+        env->ThrowNew(env->FindClass("java/lang/Exception"), errorMessage);
+    }
+}
+
 /**
  * Create a new in-bound session for sending/receiving messages from an
  * incoming PRE_KEY message based on the recipient identity key.<br>
@@ -458,6 +563,92 @@ JNIEXPORT jboolean JNICALL OLM_SESSION_FUNC_DEF(matchesInboundSessionFromIdKeyJn
     return retCode;
 }
 
+/**
+ * Checks if a parsed PRE_KEY message is for this in-bound session.<br>
+ * The parsed message is left untouched, so it can be matched against several sessions.
+ * @param aParsedMessageId the native parsed message instance identifier
+ * @return true if the PRE_KEY message matches.
+ */
+JNIEXPORT jboolean OLM_SESSION_FUNC_DEF(matchesInboundParsedSessionJni)(JNIEnv *env, jobject thiz, jlong aParsedMessageId)
+{
+    jboolean retCode = JNI_FALSE;
+    OlmSession *sessionPtr = getSessionInstanceId(env, thiz);
+    OlmParsedMessage *parsedPtr = (OlmParsedMessage *)aParsedMessageId;
+
+    if (!sessionPtr)
+    {
+        LOGE("## matchesInboundParsedSessionJni(): failure - invalid Session ptr=NULL");
+    }
+    else if (!parsedPtr)
+    {
+        LOGE("## matchesInboundParsedSessionJni(): failure - invalid parsed message ptr=NULL");
+    }
+    else if (olm_matches_inbound_parsed_session(sessionPtr, parsedPtr) != 1)
+    {
+        // routing a message tries several sessions: not logged as an error
+        LOGD("## matchesInboundParsedSessionJni(): no match Msg=%s", olm_session_last_error(sessionPtr));
+    }
+    else
+    {
+        retCode = JNI_TRUE;
+    }
+
+    return retCode;
+}
+
+/**
+ * Checks if a parsed PRE_KEY message is for this in-bound session based on the sender identity key.<br>
+ * The parsed message is left untouched, so it can be matched against several sessions.
+ * @param aTheirIdentityKey the identity key of the sender
+ * @param aParsedMessageId the native parsed message instance identifier
+ * @return true if the PRE_KEY message matches.
+ */
+JNIEXPORT jboolean OLM_SESSION_FUNC_DEF(matchesInboundParsedSessionFromIdKeyJni)(JNIEnv *env, jobject thiz, jbyteArray aTheirIdentityKeyBuffer, jlong aParsedMessageId)
+{
+    jboolean retCode = JNI_FALSE;
+    OlmSession *sessionPtr = getSessionInstanceId(env, thiz);
+    OlmParsedMessage *parsedPtr = (OlmParsedMessage *)aParsedMessageId;
+    jbyte *theirIdentityKeyPtr = NULL;
+
+    if (!sessionPtr)
+    {
+        LOGE("## matchesInboundParsedSessionFromIdKeyJni(): failure - invalid Session ptr=NULL");
+    }
+    else if (!parsedPtr)
+    {
+        LOGE("## matchesInboundParsedSessionFromIdKeyJni(): failure - invalid parsed message ptr=NULL");
+    }
+    else if (!aTheirIdentityKeyBuffer)
+    {
+        LOGE("## matchesInboundParsedSessionFromIdKeyJni(): failure - invalid theirIdentityKey");
+    }
+    else if (!(theirIdentityKeyPtr = env->GetByteArrayElements(aTheirIdentityKeyBuffer, 0)))
+    {
+        LOGE("## matchesInboundParsedSessionFromIdKeyJni(): failure - theirIdentityKey JNI allocation OOM");
+    }
+    else
+    {
+        size_t identityKeyLength = (size_t)env->GetArrayLength(aTheirIdentityKeyBuffer);
+
+        if (olm_matches_inbound_parsed_session_from(sessionPtr, (void const *)theirIdentityKeyPtr, identityKeyLength, parsedPtr) != 1)
+        {
+            // routing a message tries several sessions: not logged as an error
+            LOGD("## matchesInboundParsedSessionFromIdKeyJni(): no match Msg=%s", olm_session_last_error(sessionPtr));
+        }
+        else
+        {
+            retCode = JNI_TRUE;
+        }
+    }
+
+    if (theirIdentityKeyPtr)
+    {
+        env->ReleaseByteArrayElements(aTheirIdentityKeyBuffer, theirIdentityKeyPtr, JNI_ABORT);
+    }
+
+    return retCode;
+}
+
 /**
  * Encrypt a message using the session.<br>
  * An exception is thrown if the operation fails.
@@ -518,10 +709,28 @@ JNIEXPORT jbyteArray OLM_SESSION_FUNC_DEF(encryptMessageJni)(JNIEnv *env, jobjec
         // Note: olm_encrypt_random_length() can return 0, which means
         // it just does not need new random data to encrypt a new message
         size_t randomLength = olm_encrypt_random_length(sessionPtr);
+        bool pooledKeyPair = false;
 
         LOGD("## encryptMessageJni(): randomLength=%lu", static_cast<long unsigned int>(randomLength));
 
-        if ((0 != randomLength) && !setRandomInBuffer(env, &randomBuffPtr, randomLength))
+        // a key pair from OlmEphemeralKeyPool saves the key generation
+        if (0 != randomLength)
+        {
+            size_t keyPairLength = olm_ephemeral_key_pair_length();
+
+            if ((randomBuffPtr = (uint8_t*)malloc(keyPairLength)) && takeEphemeralKeyPairs(randomBuffPtr, 1))
+            {
+                pooledKeyPair = true;
+                randomLength = keyPairLength;
+            }
+            else
+            {
+                free(randomBuffPtr);
+                randomBuffPtr = NULL;
+            }
+        }
+
+        if ((0 != randomLength) && !pooledKeyPair && !setRandomInBuffer(env, &randomBuffPtr, randomLength))
         {
             LOGE("## encryptMessageJni(): failure - random buffer init");
             errorMessage = "random buffer init";
@@ -548,13 +757,28 @@ JNIEXPORT jbyteArray OLM_SESSION_FUNC_DEF(encryptMessageJni)(JNIEnv *env, jobjec
 
                 LOGD("## encryptMessageJni(): messageType=%lu randomLength=%lu clearMsgLength=%lu encryptedMsgLength=%lu",static_cast<long unsigned int>(messageType),static_cast<long unsigned int>(randomLength), static_cast<long unsigned int>(clearMsgLength), static_cast<long unsigned int>(encryptedMsgLength));
                 // encrypt message
-                size_t result = olm_encrypt(sessionPtr,
-                                            (void const *)clearMsgPtr,
-                                            clearMsgLength,
-                                            randomBuffPtr,
-                                            randomLength,
-                                            encryptedMsgPtr,
-                                            encryptedMsgLength);
+                size_t result;
+
+                if (pooledKeyPair)
+                {
+                    result = olm_encrypt_with_key_pair(sessionPtr,
+                                                       (void const *)clearMsgPtr,
+                                                       clearMsgLength,
+                                                       randomBuffPtr,
+                                                       randomLength,
+                                                       encryptedMsgPtr,
+                                                       encryptedMsgLength);
+                }
+                else
+                {
+                    result = olm_encrypt(sessionPtr,
+                                         (void const *)clearMsgPtr,
+                                         clearMsgLength,
+                                         randomBuffPtr,
+                                         randomLength,
+                                         encryptedMsgPtr,
+                                         encryptedMsgLength);
+                }
                 if (result == olm_error())
                 {
                     errorMessage = (const char *)olm_session_last_error(sessionPtr);
@@ -598,18 +822,193 @@ JNIEXPORT jbyteArray OLM_SESSION_FUNC_DEF(encryptMessageJni)(JNIEnv *env, jobjec
 }
 
 /**
- * Decrypt a message using the session.<br>
+ * Encrypt a message using the session, without the base64 encoding.<br>
  * An exception is thrown if the operation fails.
- * @param aEncryptedMsg message to decrypt
- * @return decrypted message if operation succeed
+ * @param aClearMsg clear text message
+ * @param [out] aEncryptedMsg ciphered message
+ * @return the raw encrypted message
  */
-JNIEXPORT jbyteArray OLM_SESSION_FUNC_DEF(decryptMessageJni)(JNIEnv *env, jobject thiz, jobject aEncryptedMsg)
+JNIEXPORT jbyteArray OLM_SESSION_FUNC_DEF(encryptMessageRawJni)(JNIEnv *env, jobject thiz, jbyteArray aClearMsgBuffer, jobject aEncryptedMsg)
 {
+    jbyteArray encryptedMsgRet = 0;
     const char* errorMessage = NULL;
 
+    OlmSession *sessionPtr = getSessionInstanceId(env, thiz);
+    jbyte *clearMsgPtr = NULL;
+    jboolean clearMsgIsCopied = JNI_FALSE;
+    jclass encryptedMsgJClass = 0;
+    jfieldID typeMsgFieldId;
+
+    LOGD("## encryptMessageRawJni(): IN ");
+
+    if (!sessionPtr)
+    {
+        LOGE("## encryptMessageRawJni(): failure - invalid Session ptr=NULL");
+        errorMessage = "invalid Session ptr=NULL";
+    }
+    else if (!aClearMsgBuffer)
+    {
+        LOGE("## encryptMessageRawJni(): failure - invalid clear message");
+        errorMessage = "invalid clear message";
+    }
+    else if (!aEncryptedMsg)
+    {
+        LOGE("## encryptMessageRawJni(): failure - invalid encrypted message");
+        errorMessage = "invalid encrypted message";
+    }
+    else if (!(clearMsgPtr = env->GetByteArrayElements(aClearMsgBuffer, &clearMsgIsCopied)))
+    {
+        LOGE("## encryptMessageRawJni(): failure - clear message JNI allocation OOM");
+        errorMessage = "clear message JNI allocation OOM";
+    }
+    else if (!(encryptedMsgJClass = env->GetObjectClass(aEncryptedMsg)))
+    {
+        LOGE("## encryptMessageRawJni(): failure - unable to get crypted message class");
+        errorMessage = "unable to get crypted message class";
+    }
+    else if (!(typeMsgFieldId = env->GetFieldID(encryptedMsgJClass,"mType","J")))
+    {
+        LOGE("## encryptMessageRawJni(): failure - unable to get message type field");
+        errorMessage = "unable to get message type field";
+    }
+    else
+    {
+        // get message type
+        size_t messageType = olm_encrypt_message_type(sessionPtr);
+        uint8_t *randomBuffPtr = NULL;
+
+        // compute random buffer
+        // Note: olm_encrypt_random_length() can return 0, which means
+        // it just does not need new random data to encrypt a new message
+        size_t randomLength = olm_encrypt_random_length(sessionPtr);
+        bool pooledKeyPair = false;
+
+        LOGD("## encryptMessageRawJni(): randomLength=%lu", static_cast<long unsigned int>(randomLength));
+
+        // a key pair from OlmEphemeralKeyPool saves the key generation
+        if (0 != randomLength)
+        {
+            size_t keyPairLength = olm_ephemeral_key_pair_length();
+
+            if ((randomBuffPtr = (uint8_t*)malloc(keyPairLength)) && takeEphemeralKeyPairs(randomBuffPtr, 1))
+            {
+                pooledKeyPair = true;
+                randomLength = keyPairLength;
+            }
+            else
+            {
+                free(randomBuffPtr);
+                randomBuffPtr = NULL;
+            }
+        }
+
+        if ((0 != randomLength) && !pooledKeyPair && !setRandomInBuffer(env, &randomBuffPtr, randomLength))
+        {
+            LOGE("## encryptMessageRawJni(): failure - random buffer init");
+            errorMessage = "random buffer init";
+        }
+        else
+        {
+            // alloc buffer for encrypted message
+            size_t clearMsgLength = (size_t)env->GetArrayLength(aClearMsgBuffer);
+            size_t encryptedMsgLength = olm_encrypt_raw_message_length(sessionPtr, clearMsgLength);
+
+            void *encryptedMsgPtr = malloc(encryptedMsgLength*sizeof(uint8_t));
+
+            if (!encryptedMsgPtr)
+            {
+                LOGE("## encryptMessageRawJni(): failure - encryptedMsgPtr buffer OOM");
+                errorMessage = "encryptedMsgPtr buffer OOM";
+            }
+            else
+            {
+                if (0 == randomLength)
+                {
+                    LOGW("## encryptMessageRawJni(): random buffer is not required");
+                }
+
+                LOGD("## encryptMessageRawJni(): messageType=%lu randomLength=%lu clearMsgLength=%lu encryptedMsgLength=%lu",static_cast<long unsigned int>(messageType),static_cast<long unsigned int>(randomLength), static_cast<long unsigned int>(clearMsgLength), static_cast<long unsigned int>(encryptedMsgLength));
+                // encrypt message
+                size_t result;
+
+                if (pooledKeyPair)
+                {
+                    result = olm_encrypt_raw_with_key_pair(sessionPtr,
+                                                               (void const *)clearMsgPtr,
+                                                           clearMsgLength,
+                                                           randomBuffPtr,
+                                                           randomLength,
+                                                           encryptedMsgPtr,
+                                                           encryptedMsgLength);
+                }
+                else
+                {
+                    result = olm_encrypt_raw(sessionPtr,
+                                             (void const *)clearMsgPtr,
+                                             clearMsgLength,
+                                             randomBuffPtr,
+                                             randomLength,
+                                             encryptedMsgPtr,
+                                             encryptedMsgLength);
+                }
+                if (result == olm_error())
+                {
+                    errorMessage = (const char *)olm_session_last_error(sessionPtr);
+                    LOGE("## encryptMessageRawJni(): failure - Msg=%s", errorMessage);
+                }
+                else
+                {
+                    // update message type: PRE KEY or normal
+                    env->SetLongField(aEncryptedMsg, typeMsgFieldId, (jlong)messageType);
+
+                    encryptedMsgRet = env->NewByteArray(encryptedMsgLength);
+                    env->SetByteArrayRegion(encryptedMsgRet, 0 , encryptedMsgLength, (jbyte*)encryptedMsgPtr);
+
+                    LOGD("## encryptMessageRawJni(): success - result=%lu Type=%lu", static_cast<long unsigned int>(result), static_cast<unsigned long int>(messageType));
+                }
+
+                free(encryptedMsgPtr);
+            }
+
+            memset(randomBuffPtr, 0, randomLength);
+            free(randomBuffPtr);
+        }
+    }
+
+    // free alloc
+    if (clearMsgPtr)
+    {
+        if (clearMsgIsCopied)
+        {
+            memset(clearMsgPtr, 0, (size_t)env->GetArrayLength(aClearMsgBuffer));
+        }
+        env->ReleaseByteArrayElements(aClearMsgBuffer, clearMsgPtr, JNI_ABORT);
+    }
+
+    if (errorMessage)
+    {
+        env->ThrowNew(env->FindClass("java/lang/Exception"), errorMessage);
+    }
+
+    return encryptedMsgRet;
+}
+
+/**
+ * Decrypt a message using the session.<br>
+ * No exception is thrown: the status is set in aDecryptResult.mStatus, with the
+ * OlmErrorCode of the failure or -1 (JNI_ERROR) if the JNI layer failed.
+ * @param aEncryptedMsg message to decrypt
+ * @param aDecryptResult the OlmDecryptResult receiving the status
+ * @return decrypted message if operation succeed, null otherwise
+ */
+JNIEXPORT jbyteArray OLM_SESSION_FUNC_DEF(tryDecryptMessageJni)(JNIEnv *env, jobject thiz, jobject aEncryptedMsg, jobject aDecryptResult)
+{
+    jint status = -1;
+
     jbyteArray decryptedMsgRet = 0;
 
     jclass encryptedMsgJClass = 0;
+    DecryptResultFields resultFields;
     jstring encryptedMsgJstring = 0; // <= obtained from encryptedMsgFieldId
     // field IDs
     jfieldID encryptedMsgFieldId;
@@ -620,42 +1019,40 @@ JNIEXPORT jbyteArray OLM_SESSION_FUNC_DEF(decryptMessageJni)(JNIEnv *env, jobjec
     uint8_t *plainTextMsgPtr = NULL;
     char *tempEncryptedPtr = NULL;
 
-    LOGD("## decryptMessageJni(): IN - OlmSession");
+    LOGD("## tryDecryptMessageJni(): IN - OlmSession");
 
-    if (!sessionPtr)
+    if (!getDecryptResultFields(env, aDecryptResult, &resultFields))
     {
-        LOGE("## decryptMessageJni(): failure - invalid Session ptr=NULL");
-        errorMessage = "invalid Session ptr=NULL";
+        LOGE("## tryDecryptMessageJni(): failure - invalid result object");
+        return 0;
+    }
+    else if (!sessionPtr)
+    {
+        LOGE("## tryDecryptMessageJni(): failure - invalid Session ptr=NULL");
     }
     else if (!aEncryptedMsg)
     {
-        LOGE("## decryptMessageJni(): failure - invalid encrypted message");
-        errorMessage = "invalid encrypted message";
+        LOGE("## tryDecryptMessageJni(): failure - invalid encrypted message");
     }
     else if (!(encryptedMsgJClass = env->GetObjectClass(aEncryptedMsg)))
     {
-        LOGE("## decryptMessageJni(): failure - unable to get encrypted message class");
-        errorMessage = "unable to get encrypted message class";
+        LOGE("## tryDecryptMessageJni(): failure - unable to get encrypted message class");
     }
     else if (!(encryptedMsgFieldId = env->GetFieldID(encryptedMsgJClass,"mCipherText","Ljava/lang/String;")))
     {
-        LOGE("## decryptMessageJni(): failure - unable to get message field");
-        errorMessage = "unable to get message field";
+        LOGE("## tryDecryptMessageJni(): failure - unable to get message field");
     }
     else if (!(typeMsgFieldId = env->GetFieldID(encryptedMsgJClass,"mType","J")))
     {
-        LOGE("## decryptMessageJni(): failure - unable to get message type field");
-        errorMessage = "unable to get message type field";
+        LOGE("## tryDecryptMessageJni(): failure - unable to get message type field");
     }
     else if (!(encryptedMsgJstring = (jstring)env->GetObjectField(aEncryptedMsg, encryptedMsgFieldId)))
     {
-        LOGE("## decryptMessageJni(): failure - JNI encrypted object ");
-        errorMessage = "JNI encrypted object";
+        LOGE("## tryDecryptMessageJni(): failure - JNI encrypted object ");
     }
     else if (!(encryptedMsgPtr = env->GetStringUTFChars(encryptedMsgJstring, 0)))
     {
-        LOGE("## decryptMessageJni(): failure - encrypted message JNI allocation OOM");
-        errorMessage = "encrypted message JNI allocation OOM";
+        LOGE("## tryDecryptMessageJni(): failure - encrypted message JNI allocation OOM");
     }
     else
     {
@@ -665,51 +1062,59 @@ JNIEXPORT jbyteArray OLM_SESSION_FUNC_DEF(decryptMessageJni)(JNIEnv *env, jobjec
         size_t encryptedMsgLength = (size_t)env->GetStringUTFLength(encryptedMsgJstring);
 
         // create a dedicated temp buffer to be used in next Olm API calls
-        tempEncryptedPtr = static_cast<char*>(malloc(encryptedMsgLength*sizeof(uint8_t)));
-        memcpy(tempEncryptedPtr, encryptedMsgPtr, encryptedMsgLength);
-        LOGD("## decryptMessageJni(): MsgType=%lu encryptedMsgLength=%lu encryptedMsg=%.*s",static_cast<long unsigned int>(encryptedMsgType),static_cast<long unsigned int>(encryptedMsgLength), static_cast<int>(encryptedMsgLength), encryptedMsgPtr);
-
-        // get max plaintext length
-        size_t maxPlainTextLength = olm_decrypt_max_plaintext_length(sessionPtr,
-                                                                     static_cast<size_t>(encryptedMsgType),
-                                                                     static_cast<void*>(tempEncryptedPtr),
-                                                                     encryptedMsgLength);
-        // Note: tempEncryptedPtr is destroyed by olm_decrypt_max_plaintext_length()
-
-        if (maxPlainTextLength == olm_error())
+        if (!(tempEncryptedPtr = static_cast<char*>(malloc(encryptedMsgLength*sizeof(uint8_t)))))
         {
-            errorMessage = (const char *)olm_session_last_error(sessionPtr);
-            LOGE("## decryptMessageJni(): failure - olm_decrypt_max_plaintext_length Msg=%s", errorMessage);
+            LOGE("## tryDecryptMessageJni(): failure - tempEncryptedPtr allocation OOM");
         }
         else
         {
-            LOGD("## decryptMessageJni(): maxPlaintextLength=%lu",static_cast<long unsigned int>(maxPlainTextLength));
+            memcpy(tempEncryptedPtr, encryptedMsgPtr, encryptedMsgLength);
+            LOGD("## tryDecryptMessageJni(): MsgType=%lu encryptedMsgLength=%lu encryptedMsg=%.*s",static_cast<long unsigned int>(encryptedMsgType),static_cast<long unsigned int>(encryptedMsgLength), static_cast<int>(encryptedMsgLength), encryptedMsgPtr);
 
-            // allocate output decrypted message
-            plainTextMsgPtr = static_cast<uint8_t*>(malloc(maxPlainTextLength*sizeof(uint8_t)));
+            // get max plaintext length
+            size_t maxPlainTextLength = olm_decrypt_max_plaintext_length(sessionPtr,
+                                                                         static_cast<size_t>(encryptedMsgType),
+                                                                         static_cast<void*>(tempEncryptedPtr),
+                                                                         encryptedMsgLength);
+            // Note: tempEncryptedPtr is destroyed by olm_decrypt_max_plaintext_length()
 
-            // decrypt, but before reload encrypted buffer (previous one was destroyed)
-            memcpy(tempEncryptedPtr, encryptedMsgPtr, encryptedMsgLength);
-            size_t plaintextLength = olm_decrypt(sessionPtr,
-                                                 encryptedMsgType,
-                                                 (void*)tempEncryptedPtr,
-                                                 encryptedMsgLength,
-                                                 plainTextMsgPtr,
-                                                 maxPlainTextLength);
-            if (plaintextLength == olm_error())
+            if (maxPlainTextLength == olm_error())
             {
-                errorMessage = (const char *)olm_session_last_error(sessionPtr);
-                LOGE("## decryptMessageJni(): failure - olm_decrypt Msg=%s", errorMessage);
+                // an expected outcome of trial decryption: not logged as an error
+                status = olm_session_last_error_code(sessionPtr);
+                LOGD("## tryDecryptMessageJni(): failure - olm_decrypt_max_plaintext_length Msg=%s", olm_session_last_error(sessionPtr));
+            }
+            else if (!(plainTextMsgPtr = static_cast<uint8_t*>(malloc(maxPlainTextLength*sizeof(uint8_t)))))
+            {
+                LOGE("## tryDecryptMessageJni(): failure - plainTextMsgPtr allocation OOM");
             }
             else
             {
-                decryptedMsgRet = env->NewByteArray(plaintextLength);
-                env->SetByteArrayRegion(decryptedMsgRet, 0 , plaintextLength, (jbyte*)plainTextMsgPtr);
+                LOGD("## tryDecryptMessageJni(): maxPlaintextLength=%lu",static_cast<long unsigned int>(maxPlainTextLength));
+
+                // decrypt, but before reload encrypted buffer (previous one was destroyed)
+                memcpy(tempEncryptedPtr, encryptedMsgPtr, encryptedMsgLength);
+                size_t plaintextLength = olm_decrypt(sessionPtr,
+                                                     encryptedMsgType,
+                                                     (void*)tempEncryptedPtr,
+                                                     encryptedMsgLength,
+                                                     plainTextMsgPtr,
+                                                     maxPlainTextLength);
+                if (plaintextLength == olm_error())
+                {
+                    status = olm_session_last_error_code(sessionPtr);
+                    LOGD("## tryDecryptMessageJni(): failure - olm_decrypt Msg=%s", olm_session_last_error(sessionPtr));
+                }
+                else if ((decryptedMsgRet = env->NewByteArray(plaintextLength)))
+                {
+                    env->SetByteArrayRegion(decryptedMsgRet, 0 , plaintextLength, (jbyte*)plainTextMsgPtr);
+                    status = OLM_SUCCESS;
 
-                LOGD(" ## decryptMessageJni(): UTF-8 Conversion - decrypted returnedLg=%lu OK",static_cast<long unsigned int>(plaintextLength));
-            }
+                    LOGD(" ## tryDecryptMessageJni(): UTF-8 Conversion - decrypted returnedLg=%lu OK",static_cast<long unsigned int>(plaintextLength));
+                }
 
-            memset(plainTextMsgPtr, 0, maxPlainTextLength);
+                memset(plainTextMsgPtr, 0, maxPlainTextLength);
+            }
         }
     }
 
@@ -729,10 +1134,300 @@ JNIEXPORT jbyteArray OLM_SESSION_FUNC_DEF(decryptMessageJni)(JNIEnv *env, jobjec
         free(plainTextMsgPtr);
     }
 
-    if (errorMessage)
+    setDecryptResult(env, aDecryptResult, &resultFields, status, -1, false, -1);
+
+    return decryptedMsgRet;
+}
+
+/**
+ * Decrypt a message written without the base64 encoding, read from
+ * aEncryptedMsg.mRawCipherText.<br>
+ * The message is read in place, no copy of it is needed.
+ * No exception is thrown: the status is set in aDecryptResult.mStatus, with the
+ * OlmErrorCode of the failure or -1 (JNI_ERROR) if the JNI layer failed.
+ * @param aEncryptedMsg message to decrypt
+ * @param aDecryptResult the OlmDecryptResult receiving the status
+ * @return decrypted message if operation succeed, null otherwise
+ */
+JNIEXPORT jbyteArray OLM_SESSION_FUNC_DEF(tryDecryptMessageRawJni)(JNIEnv *env, jobject thiz, jobject aEncryptedMsg, jobject aDecryptResult)
+{
+    jint status = -1;
+
+    jbyteArray decryptedMsgRet = 0;
+
+    jclass encryptedMsgJClass = 0;
+    DecryptResultFields resultFields;
+    jbyteArray encryptedMsgBuffer = 0; // <= obtained from encryptedMsgFieldId
+    // field IDs
+    jfieldID encryptedMsgFieldId;
+    jfieldID typeMsgFieldId;
+    // ptrs
+    OlmSession *sessionPtr = getSessionInstanceId(env, thiz);
+    jbyte *encryptedMsgPtr = NULL; // <= obtained from encryptedMsgBuffer
+    uint8_t *plainTextMsgPtr = NULL;
+    size_t maxPlainTextLength = 0;
+
+    LOGD("## tryDecryptMessageRawJni(): IN - OlmSession");
+
+    if (!getDecryptResultFields(env, aDecryptResult, &resultFields))
     {
-        env->ThrowNew(env->FindClass("java/lang/Exception"), errorMessage);
+        LOGE("## tryDecryptMessageRawJni(): failure - invalid result object");
+        return 0;
+    }
+    else if (!sessionPtr)
+    {
+        LOGE("## tryDecryptMessageRawJni(): failure - invalid Session ptr=NULL");
     }
+    else if (!aEncryptedMsg)
+    {
+        LOGE("## tryDecryptMessageRawJni(): failure - invalid encrypted message");
+    }
+    else if (!(encryptedMsgJClass = env->GetObjectClass(aEncryptedMsg)))
+    {
+        LOGE("## tryDecryptMessageRawJni(): failure - unable to get encrypted message class");
+    }
+    else if (!(encryptedMsgFieldId = env->GetFieldID(encryptedMsgJClass,"mRawCipherText","[B")))
+    {
+        LOGE("## tryDecryptMessageRawJni(): failure - unable to get message field");
+    }
+    else if (!(typeMsgFieldId = env->GetFieldID(encryptedMsgJClass,"mType","J")))
+    {
+        LOGE("## tryDecryptMessageRawJni(): failure - unable to get message type field");
+    }
+    else if (!(encryptedMsgBuffer = (jbyteArray)env->GetObjectField(aEncryptedMsg, encryptedMsgFieldId)))
+    {
+        LOGE("## tryDecryptMessageRawJni(): failure - JNI encrypted object ");
+    }
+    else if (!(encryptedMsgPtr = env->GetByteArrayElements(encryptedMsgBuffer, 0)))
+    {
+        LOGE("## tryDecryptMessageRawJni(): failure - encrypted message JNI allocation OOM");
+    }
+    else
+    {
+        size_t encryptedMsgType = (size_t)env->GetLongField(aEncryptedMsg, typeMsgFieldId);
+        size_t encryptedMsgLength = (size_t)env->GetArrayLength(encryptedMsgBuffer);
+
+        // the raw message is left untouched by the Olm API calls
+        maxPlainTextLength = olm_decrypt_raw_max_plaintext_length(sessionPtr,
+                                                                  encryptedMsgType,
+                                                                  (const void*)encryptedMsgPtr,
+                                                                  encryptedMsgLength);
+
+        if (maxPlainTextLength == olm_error())
+        {
+            // an expected outcome of trial decryption: not logged as an error
+            status = olm_session_last_error_code(sessionPtr);
+            LOGD("## tryDecryptMessageRawJni(): failure - olm_decrypt_raw_max_plaintext_length Msg=%s", olm_session_last_error(sessionPtr));
+        }
+        else if (!(plainTextMsgPtr = static_cast<uint8_t*>(malloc(maxPlainTextLength*sizeof(uint8_t)))))
+        {
+            LOGE("## tryDecryptMessageRawJni(): failure - plainTextMsgPtr allocation OOM");
+        }
+        else
+        {
+            size_t plaintextLength = olm_decrypt_raw(sessionPtr,
+                                                     encryptedMsgType,
+                                                     (const void*)encryptedMsgPtr,
+                                                     encryptedMsgLength,
+                                                     plainTextMsgPtr,
+                                                     maxPlainTextLength);
+            if (plaintextLength == olm_error())
+            {
+                status = olm_session_last_error_code(sessionPtr);
+                LOGD("## tryDecryptMessageRawJni(): failure - olm_decrypt_raw Msg=%s", olm_session_last_error(sessionPtr));
+            }
+            else if ((decryptedMsgRet = env->NewByteArray(plaintextLength)))
+            {
+                env->SetByteArrayRegion(decryptedMsgRet, 0 , plaintextLength, (jbyte*)plainTextMsgPtr);
+                status = OLM_SUCCESS;
+            }
+
+            memset(plainTextMsgPtr, 0, maxPlainTextLength);
+        }
+    }
+
+    // free alloc
+    if (encryptedMsgPtr)
+    {
+        env->ReleaseByteArrayElements(encryptedMsgBuffer, encryptedMsgPtr, JNI_ABORT);
+    }
+
+    if (plainTextMsgPtr)
+    {
+        free(plainTextMsgPtr);
+    }
+
+    setDecryptResult(env, aDecryptResult, &resultFields, status, -1, false, -1);
+
+    return decryptedMsgRet;
+}
+
+/**
+ * Decrypt a parsed message using the session.<br>
+ * The parsed message is left untouched, so it can be tried with several sessions.
+ * No exception is thrown, the status is set in aDecryptResult.
+ * @param aParsedMessageId the native parsed message instance identifier
+ * @param aDecryptResult the result receiving the status
+ * @return the decrypted message, null if the operation failed
+ */
+JNIEXPORT jbyteArray OLM_SESSION_FUNC_DEF(tryDecryptParsedMessageJni)(JNIEnv *env, jobject thiz, jlong aParsedMessageId, jobject aDecryptResult)
+{
+    jint status = -1;
+    jbyteArray decryptedMsgRet = 0;
+    DecryptResultFields resultFields;
+    OlmSession *sessionPtr = getSessionInstanceId(env, thiz);
+    OlmParsedMessage *parsedPtr = (OlmParsedMessage *)aParsedMessageId;
+    uint8_t *plainTextMsgPtr = NULL;
+
+    LOGD("## tryDecryptParsedMessageJni(): IN - OlmSession");
+
+    if (!getDecryptResultFields(env, aDecryptResult, &resultFields))
+    {
+        LOGE("## tryDecryptParsedMessageJni(): failure - invalid result object");
+        return 0;
+    }
+    else if (!sessionPtr)
+    {
+        LOGE("## tryDecryptParsedMessageJni(): failure - invalid Session ptr=NULL");
+    }
+    else if (!parsedPtr)
+    {
+        LOGE("## tryDecryptParsedMessageJni(): failure - invalid parsed message ptr=NULL");
+    }
+    else
+    {
+        // no copy of the message: the parsed message is not modified by the decryption
+        size_t maxPlainTextLength = olm_decrypt_parsed_max_plaintext_length(sessionPtr, parsedPtr);
+
+        if (maxPlainTextLength == olm_error())
+        {
+            // an expected outcome of trial decryption: not logged as an error
+            status = olm_session_last_error_code(sessionPtr);
+            LOGD("## tryDecryptParsedMessageJni(): failure - olm_decrypt_parsed_max_plaintext_length Msg=%s", olm_session_last_error(sessionPtr));
+        }
+        else if (!(plainTextMsgPtr = static_cast<uint8_t*>(malloc(maxPlainTextLength*sizeof(uint8_t)))))
+        {
+            LOGE("## tryDecryptParsedMessageJni(): failure - plainTextMsgPtr allocation OOM");
+        }
+        else
+        {
+            size_t plaintextLength = olm_decrypt_parsed(sessionPtr, parsedPtr, plainTextMsgPtr, maxPlainTextLength);
+
+            if (plaintextLength == olm_error())
+            {
+                status = olm_session_last_error_code(sessionPtr);
+                LOGD("## tryDecryptParsedMessageJni(): failure - olm_decrypt_parsed Msg=%s", olm_session_last_error(sessionPtr));
+            }
+            else if ((decryptedMsgRet = env->NewByteArray(plaintextLength)))
+            {
+                env->SetByteArrayRegion(decryptedMsgRet, 0 , plaintextLength, (jbyte*)plainTextMsgPtr);
+                status = OLM_SUCCESS;
+            }
+
+            memset(plainTextMsgPtr, 0, maxPlainTextLength);
+            free(plainTextMsgPtr);
+        }
+    }
+
+    setDecryptResult(env, aDecryptResult, &resultFields, status, -1, false, -1);
+
+    return decryptedMsgRet;
+}
+
+/**
+ * Decrypt a parsed message with the first of several sessions able to decrypt it.<br>
+ * The sessions which know the ratchet key of the message are tried first.
+ * No exception is thrown, the status and the index of the session are set in aDecryptResult.
+ * @param aSessionIds the native ids of the candidate sessions
+ * @param aParsedMessageId the native parsed message instance identifier
+ * @param aDecryptResult the result receiving the status and the session index
+ * @return the decrypted message, null if the operation failed
+ */
+JNIEXPORT jbyteArray OLM_SESSION_FUNC_DEF(tryDecryptWithSessionsJni)(JNIEnv *env, jclass clazz, jlongArray aSessionIds, jlong aParsedMessageId, jobject aDecryptResult)
+{
+    jint status = -1;
+    jbyteArray decryptedMsgRet = 0;
+    DecryptResultFields resultFields;
+    jint resultSessionIndex = -1;
+    OlmParsedMessage *parsedPtr = (OlmParsedMessage *)aParsedMessageId;
+    jlong *sessionIdsPtr = NULL;
+    OlmSession **sessionsPtr = NULL;
+    uint8_t *plainTextMsgPtr = NULL;
+
+    if (!getDecryptResultFields(env, aDecryptResult, &resultFields))
+    {
+        LOGE("## tryDecryptWithSessionsJni(): failure - invalid result object");
+        return 0;
+    }
+    else if (!parsedPtr)
+    {
+        LOGE("## tryDecryptWithSessionsJni(): failure - invalid parsed message ptr=NULL");
+    }
+    else if (!aSessionIds || !env->GetArrayLength(aSessionIds))
+    {
+        LOGE("## tryDecryptWithSessionsJni(): failure - no sessions");
+    }
+    else if (!(sessionIdsPtr = env->GetLongArrayElements(aSessionIds, NULL)))
+    {
+        LOGE("## tryDecryptWithSessionsJni(): failure - session ids JNI allocation OOM");
+    }
+    else
+    {
+        size_t sessionCount = (size_t)env->GetArrayLength(aSessionIds);
+
+        if (!(sessionsPtr = static_cast<OlmSession**>(malloc(sessionCount * sizeof(OlmSession*)))))
+        {
+            LOGE("## tryDecryptWithSessionsJni(): failure - sessions allocation OOM");
+        }
+        else
+        {
+            for (size_t i = 0; i < sessionCount; i++)
+            {
+                sessionsPtr[i] = (OlmSession *)sessionIdsPtr[i];
+            }
+
+            size_t maxPlainTextLength = olm_decrypt_parsed_max_plaintext_length(sessionsPtr[0], parsedPtr);
+
+            if (maxPlainTextLength == olm_error())
+            {
+                status = olm_session_last_error_code(sessionsPtr[0]);
+                LOGD("## tryDecryptWithSessionsJni(): failure - olm_decrypt_parsed_max_plaintext_length Msg=%s", olm_session_last_error(sessionsPtr[0]));
+            }
+            else if (!(plainTextMsgPtr = static_cast<uint8_t*>(malloc(maxPlainTextLength*sizeof(uint8_t)))))
+            {
+                LOGE("## tryDecryptWithSessionsJni(): failure - plainTextMsgPtr allocation OOM");
+            }
+            else
+            {
+                size_t sessionIndex = 0;
+                size_t plaintextLength = olm_decrypt_parsed_with_sessions(sessionsPtr, sessionCount, parsedPtr,
+                                                                          plainTextMsgPtr, maxPlainTextLength,
+                                                                          &sessionIndex);
+
+                if (plaintextLength == olm_error())
+                {
+                    // an expected outcome of trial decryption: not logged as an error
+                    status = olm_parsed_message_last_error_code(parsedPtr);
+                    LOGD("## tryDecryptWithSessionsJni(): failure - olm_decrypt_parsed_with_sessions Msg=%s", olm_parsed_message_last_error(parsedPtr));
+                }
+                else if ((decryptedMsgRet = env->NewByteArray(plaintextLength)))
+                {
+                    env->SetByteArrayRegion(decryptedMsgRet, 0 , plaintextLength, (jbyte*)plainTextMsgPtr);
+                    resultSessionIndex = (jint)sessionIndex;
+                    status = OLM_SUCCESS;
+                }
+
+                memset(plainTextMsgPtr, 0, maxPlainTextLength);
+                free(plainTextMsgPtr);
+            }
+
+            free(sessionsPtr);
+        }
+
+        env->ReleaseLongArrayElements(aSessionIds, sessionIdsPtr, JNI_ABORT);
+    }
+
+    setDecryptResult(env, aDecryptResult, &resultFields, status, -1, false, resultSessionIndex);
 
     return decryptedMsgRet;
 }
@@ -111,6 +111,63 @@ struct Account {
         std::uint8_t * one_time_json, std::size_t one_time_json_length
     );
 
+    /** Number of bytes needed to output the packed identity keys */
+    std::size_t get_identity_keys_packed_length();
+
+    /** Output the identity keys for this account without any JSON framing:
+     * the 43 base64 characters of the curve25519 key followed by the 43
+     * base64 characters of the ed25519 key.
+     *
+     * Returns the number of bytes written or std::size_t(-1) on error.
+     * If the buffer is too small last_error will be OUTPUT_BUFFER_TOO_SMALL. */
+    std::size_t get_identity_keys_packed(
+        std::uint8_t * identity_keys, std::size_t identity_keys_length
+    );
+
+    /** Number of one time keys held by the account, or only the ones that
+     * haven't been published yet if unpublished_only is true. */
+    std::size_t count_one_time_keys(
+        bool unpublished_only
+    );
+
+    /** Number of bytes needed to output a single packed one time key */
+    std::size_t get_one_time_key_packed_length();
+
+    /** Output up to limit one time keys, skipping the first offset ones, as
+     * fixed size records with no separator:
+     *
+     *  <6 byte base64 key id><43 base64 characters>
+     *
+     * The keys are listed newest first. If unpublished_only is true, the
+     * published keys are skipped and don't count towards offset.
+     *
+     * Returns the number of keys written or std::size_t(-1) on error.
+     * If the buffer can't hold all of them last_error will be
+     * OUTPUT_BUFFER_TOO_SMALL. */
+    std::size_t get_one_time_keys_packed(
+        std::size_t offset, std::size_t limit, bool unpublished_only,
+        std::uint8_t * one_time_keys, std::size_t one_time_keys_length
+    );
+
+    /** Number of bytes needed to output a single signed one time key */
+    std::size_t get_signed_one_time_key_length();
+
+    /** Output up to limit one time keys, skipping the first offset ones, in
+     * the same order as get_one_time_keys_packed(), each followed by the
+     * signature of its canonical JSON object:
+     *
+     *  <6 byte base64 key id><43 base64 characters><86 base64 signature>
+     *
+     * where the signed payload is {"key":"<43 base64 characters>"}.
+     *
+     * Returns the number of keys written or std::size_t(-1) on error.
+     * If the buffer can't hold all of them last_error will be
+     * OUTPUT_BUFFER_TOO_SMALL. */
+    std::size_t sign_one_time_keys(
+        std::size_t offset, std::size_t limit, bool unpublished_only,
+        std::uint8_t * signed_keys, std::size_t signed_keys_length
+    );
+
     /** Mark the current list of one_time_keys as being published. They
      * will no longer be returned by get_one_time_keys_json_length(). */
     std::size_t mark_keys_as_published();
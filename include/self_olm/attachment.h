@@ -0,0 +1,138 @@
+/* Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef OLM_ATTACHMENT_H_
+#define OLM_ATTACHMENT_H_
+
+#include <stddef.h>
+#include <stdint.h>
+
+#ifdef __cplusplus
+extern "C" {
+#endif
+
+/** @defgroup attachment Streaming attachment encryption
+ * These functions encrypt or decrypt attachments of any size with AES-256 in
+ * CTR mode, while computing the SHA-256 digest of the ciphertext in the same
+ * pass. The counter is the low 64 bits of the IV, as for Matrix encrypted
+ * attachments. The input can be supplied in chunks of any length.
+ * @{
+ */
+
+typedef struct OlmAttachment OlmAttachment;
+
+/** A null terminated string describing the most recent error to happen to an
+ * attachment object. */
+const char * olm_attachment_last_error(
+    OlmAttachment * attachment
+);
+
+/** The size of an attachment object in bytes. */
+size_t olm_attachment_size(void);
+
+/** Initialize an attachment object using the supplied memory.
+ * The supplied memory must be at least `olm_attachment_size()` bytes. */
+OlmAttachment * olm_attachment(
+    void * memory
+);
+
+/** Clears the memory used to back an attachment object. */
+size_t olm_clear_attachment(
+    OlmAttachment * attachment
+);
+
+/** The length of the AES key used by an attachment object. */
+size_t olm_attachment_key_length(void);
+
+/** The length of the IV used by an attachment object. */
+size_t olm_attachment_iv_length(void);
+
+/** The length of the SHA-256 digest returned by `olm_attachment_digest()`. */
+size_t olm_attachment_digest_length(void);
+
+/** Prepares the attachment object to encrypt a new attachment. The digest is
+ * computed over the encrypted output.
+ *
+ * @param[in] attachment the attachment object, initialized by
+ *     `olm_attachment()`.
+ * @param[in] key the AES key. Must be `olm_attachment_key_length()` bytes.
+ * @param[in] key_length the length of the key.
+ * @param[in] iv the initial counter block. Must be `olm_attachment_iv_length()`
+ *     bytes.
+ * @param[in] iv_length the length of the IV.
+ *
+ * @return `olm_error()` on failure. If the key or the IV is too small then
+ * `olm_attachment_last_error()` will be `INPUT_BUFFER_TOO_SMALL`.
+ */
+size_t olm_attachment_init_encryption(
+    OlmAttachment * attachment,
+    const void * key, size_t key_length,
+    const void * iv, size_t iv_length
+);
+
+/** Prepares the attachment object to decrypt an attachment. The digest is
+ * computed over the encrypted input. See `olm_attachment_init_encryption()`
+ * for the parameters. */
+size_t olm_attachment_init_decryption(
+    OlmAttachment * attachment,
+    const void * key, size_t key_length,
+    const void * iv, size_t iv_length
+);
+
+/** Encrypts or decrypts the next chunk of the attachment. The input and output
+ * buffers may be the same buffer, but must not otherwise overlap.
+ *
+ * @param[in] attachment the attachment object.
+ * @param[in] input the next chunk of the attachment.
+ * @param[in] input_length the length of the chunk.
+ * @param[out] output the buffer in which to store the result.
+ * @param[in] output_length the size of the `output` buffer. Must be at least
+ *     `input_length`.
+ *
+ * @return the number of bytes written, or `olm_error()` on failure. If the
+ * `output` buffer is too small, then `olm_attachment_last_error()` will be
+ * `OUTPUT_BUFFER_TOO_SMALL`. If the object was not initialised for encryption
+ * or decryption, then `olm_attachment_last_error()` will be `BAD_STATE`.
+ */
+size_t olm_attachment_update(
+    OlmAttachment * attachment,
+    const void * input, size_t input_length,
+    void * output, size_t output_length
+);
+
+/** The total number of bytes processed since the attachment object was
+ * initialised. */
+uint64_t olm_attachment_processed_length(
+    OlmAttachment * attachment
+);
+
+/** Writes the SHA-256 digest of the ciphertext processed so far. The
+ * attachment object can still be updated afterwards.
+ *
+ * @return `olm_error()` on failure. If the `digest` buffer is too small, then
+ * `olm_attachment_last_error()` will be `OUTPUT_BUFFER_TOO_SMALL`.
+ */
+size_t olm_attachment_digest(
+    OlmAttachment * attachment,
+    void * digest, size_t digest_length
+);
+
+/** @} */ // end of attachment group
+
+#ifdef __cplusplus
+} // extern "C"
+#endif
+
+#endif /* OLM_ATTACHMENT_H_ */
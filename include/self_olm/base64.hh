@@ -57,6 +57,49 @@ std::uint8_t const * decode_base64(
     std::uint8_t * output
 );
 
+/**
+ * The implementations of encode_base64() and decode_base64(). The vector
+ * engines handle the bulk of the input and leave the tail, any invalid
+ * characters and any unsafe overlap of the buffers to the scalar code, so
+ * every engine writes exactly the same output.
+ */
+enum Base64Engine {
+    BASE64_SCALAR = 0,
+    BASE64_SSSE3 = 1,
+    BASE64_AVX2 = 2,
+};
+
+/**
+ * The engine used by encode_base64() and decode_base64(): the fastest one
+ * this build and CPU support, selected at the first call.
+ */
+Base64Engine base64_engine();
+
+/**
+ * Whether this build and CPU can run an engine.
+ */
+bool base64_engine_supported(
+    Base64Engine engine
+);
+
+/**
+ * encode_base64() with the given engine, which must be supported.
+ */
+std::uint8_t * encode_base64(
+    Base64Engine engine,
+    std::uint8_t const * input, std::size_t input_length,
+    std::uint8_t * output
+);
+
+/**
+ * decode_base64() with the given engine, which must be supported.
+ */
+std::uint8_t const * decode_base64(
+    Base64Engine engine,
+    std::uint8_t const * input, std::size_t input_length,
+    std::uint8_t * output
+);
+
 } // namespace olm
 
 
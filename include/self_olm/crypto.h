@@ -51,6 +51,10 @@ extern "C" {
 /** length of an Ed25519 signature */
 #define ED25519_SIGNATURE_LENGTH 64
 
+/** length of a decompressed Ed25519 public key: the four field elements of
+ * a point in extended coordinates */
+#define ED25519_POINT_LENGTH 160
+
 /** length of an aes256 key */
 #define AES256_KEY_LENGTH 32
 
@@ -83,6 +87,13 @@ struct _olm_ed25519_public_key {
     uint8_t public_key[ED25519_PUBLIC_KEY_LENGTH];
 };
 
+/** an Ed25519 public key decompressed once for repeated verifications */
+struct _olm_ed25519_public_key_point {
+    /** 0 until it is computed, 1 if the key is a valid point, -1 if not */
+    int32_t state;
+    int32_t point[ED25519_POINT_LENGTH / 4];
+};
+
 struct _olm_ed25519_private_key {
     uint8_t private_key[ED25519_PRIVATE_KEY_LENGTH];
 };
@@ -193,6 +204,26 @@ int _olm_crypto_ed25519_verify(
     const uint8_t * signature
 );
 
+/** Decompress an ed25519 public key, for _olm_crypto_ed25519_verify_point().
+ * Sets the state of the point to -1 if the key isn't a valid point. */
+void _olm_crypto_ed25519_decompress(
+    const struct _olm_ed25519_public_key *their_key,
+    struct _olm_ed25519_public_key_point *their_point
+);
+
+/** Verify an ed25519 signature, as _olm_crypto_ed25519_verify(), with the
+ * decompressed form of the key. The decompression is most of the cost of a
+ * verification which doesn't depend on the message, so it can be kept
+ * across verifications with the same key. The point is decompressed here if
+ * its state is 0.
+ * Returns non-zero if the signature is valid. */
+int _olm_crypto_ed25519_verify_point(
+    const struct _olm_ed25519_public_key *their_key,
+    struct _olm_ed25519_public_key_point *their_point,
+    const uint8_t * message, size_t message_length,
+    const uint8_t * signature
+);
+
 
 
 #ifdef __cplusplus
@@ -18,11 +18,14 @@
 #include <stddef.h>
 #include <stdint.h>
 
+#include "self_olm/error.h"
+
 #ifdef __cplusplus
 extern "C" {
 #endif
 
 typedef struct OlmInboundGroupSession OlmInboundGroupSession;
+typedef struct OlmParsedGroupMessage OlmParsedGroupMessage;
 
 /** get the size of an inbound group session, in bytes. */
 size_t olm_inbound_group_session_size(void);
@@ -43,6 +46,11 @@ const char *olm_inbound_group_session_last_error(
     const OlmInboundGroupSession *session
 );
 
+/** The most recent error to happen to a group session */
+enum OlmErrorCode olm_inbound_group_session_last_error_code(
+    const OlmInboundGroupSession *session
+);
+
 /** Clears the memory used to back this group session */
 size_t olm_clear_inbound_group_session(
     OlmInboundGroupSession *session
@@ -163,6 +171,210 @@ size_t olm_group_decrypt(
 );
 
 
+/**
+ * Decrypt a message, as olm_group_decrypt(), and report whether its message
+ * index had already been decrypted by this session.
+ *
+ * seen_before is set to 1 if the session is tracking seen indices (see
+ * olm_inbound_group_session_track_seen_indices()) and the message index had
+ * already been decrypted successfully, 0 otherwise.
+ *
+ * Returns the length of the decrypted plain-text, or olm_error() on failure,
+ * with the same error codes as olm_group_decrypt().
+ */
+size_t olm_group_decrypt_check_seen(
+    OlmInboundGroupSession *session,
+
+    /* input; note that it will be overwritten with the base64-decoded
+       message. */
+    uint8_t * message, size_t message_length,
+
+    /* output */
+    uint8_t * plaintext, size_t max_plaintext_length,
+    uint32_t * message_index, int * seen_before
+);
+
+/**
+ * Same as olm_group_decrypt_max_plaintext_length() for a message written by
+ * olm_group_encrypt_raw(). The message isn't base64 and is left untouched.
+ */
+size_t olm_group_decrypt_raw_max_plaintext_length(
+    OlmInboundGroupSession *session,
+    uint8_t const * message, size_t message_length
+);
+
+/**
+ * Same as olm_group_decrypt_check_seen() for a message written by
+ * olm_group_encrypt_raw(). The message isn't base64 and is left untouched, so
+ * there is no OLM_INVALID_BASE64 error. message_index and seen_before can be
+ * NULL.
+ */
+size_t olm_group_decrypt_raw(
+    OlmInboundGroupSession *session,
+    uint8_t const * message, size_t message_length,
+    uint8_t * plaintext, size_t max_plaintext_length,
+    uint32_t * message_index, int * seen_before
+);
+
+
+/** get the size of a parsed group message, in bytes. */
+size_t olm_parsed_group_message_size(void);
+
+/**
+ * Initialise a parsed group message object using the supplied memory
+ * The supplied memory should be at least olm_parsed_group_message_size()
+ * bytes.
+ */
+OlmParsedGroupMessage * olm_parsed_group_message(
+    void *memory
+);
+
+/**
+ * A null terminated string describing the most recent error to happen to a
+ * parsed group message
+ */
+const char *olm_parsed_group_message_last_error(
+    const OlmParsedGroupMessage *parsed
+);
+
+/**
+ * An error code describing the most recent error to happen to a parsed group
+ * message
+ */
+enum OlmErrorCode olm_parsed_group_message_last_error_code(
+    const OlmParsedGroupMessage *parsed
+);
+
+/** Clears the memory used to back this parsed group message */
+size_t olm_clear_parsed_group_message(
+    OlmParsedGroupMessage *parsed
+);
+
+/**
+ * Decode the base64 and the headers of a group message once, so that its
+ * message index can be read and the message decrypted by
+ * olm_group_decrypt_parsed() without being decoded again.
+ *
+ * The message buffer is decoded in place and must stay valid and unmodified
+ * while the parsed message is used.
+ *
+ * Returns olm_error() on failure. On failure last_error will be set with an
+ * error code. The last_error will be:
+ *  * OLM_INVALID_BASE64 if the message is not valid base-64
+ *  * OLM_BAD_MESSAGE_VERSION if the message was encrypted with an unsupported
+ *    version of the protocol
+ *  * OLM_BAD_MESSAGE_FORMAT if the message headers could not be decoded
+ */
+size_t olm_parse_group_message(
+    OlmParsedGroupMessage *parsed,
+
+    /* input; note that it will be overwritten with the base64-decoded
+       message. */
+    uint8_t * message, size_t message_length
+);
+
+/**
+ * The message index of a parsed group message.
+ */
+uint32_t olm_parsed_group_message_index(
+    const OlmParsedGroupMessage *parsed
+);
+
+/**
+ * Same as olm_group_decrypt_max_plaintext_length() for a parsed group message.
+ * The parsed message is left untouched.
+ */
+size_t olm_group_decrypt_parsed_max_plaintext_length(
+    OlmInboundGroupSession *session,
+    const OlmParsedGroupMessage *parsed
+);
+
+/**
+ * Same as olm_group_decrypt_check_seen() for a parsed group message.
+ * The parsed message is left untouched. message_index and seen_before can be
+ * NULL. If the message was not parsed successfully then last_error will be
+ * OLM_BAD_STATE.
+ */
+size_t olm_group_decrypt_parsed(
+    OlmInboundGroupSession *session,
+    const OlmParsedGroupMessage *parsed,
+
+    /* output */
+    uint8_t * plaintext, size_t max_plaintext_length,
+    uint32_t * message_index, int * seen_before
+);
+
+
+/**
+ * Concurrent decryption.
+ *
+ * olm_group_decrypt() advances the latest ratchet of the session in place,
+ * so the decryptions with one session can't run at the same time. Instead, a
+ * decryption can work on a private copy of the ratchets, a snapshot:
+ *
+ * 1. olm_inbound_group_session_snapshot() copies the ratchets and the signing
+ *    key of the session into the snapshot;
+ * 2. olm_group_decrypt_snapshot() decrypts a message with the snapshot,
+ *    advancing the copy of the latest ratchet when the message is beyond it;
+ * 3. olm_inbound_group_session_publish_snapshot() installs the advanced
+ *    ratchet back into the session if it is ahead of the session's own, marks
+ *    the session as verified and records the message index.
+ *
+ * Only the first and last steps, which are copies, access the session, and
+ * they must be serialised with any other use of the session by the caller.
+ * The second step, which holds the Ed25519, HMAC and AES work, only touches
+ * the snapshot and can run on any number of threads. The snapshot holds key
+ * material: it should be wiped after use.
+ */
+
+/** get the size of a snapshot, in bytes. */
+size_t olm_inbound_group_session_snapshot_length(void);
+
+/**
+ * Copy the ratchets of a session into a snapshot.
+ *
+ * Returns the length of the snapshot, or olm_error() if the snapshot buffer
+ * is too small.
+ */
+size_t olm_inbound_group_session_snapshot(
+    const OlmInboundGroupSession *session,
+    void * snapshot, size_t snapshot_length
+);
+
+/**
+ * Decrypt a message with a snapshot, as olm_group_decrypt() would with the
+ * session. The message is overwritten with the base64-decoded message.
+ *
+ * Returns the length of the decrypted plain-text, or olm_error() on failure,
+ * with the error code written to error. The error codes are those of
+ * olm_group_decrypt(), or OLM_BAD_STATE if the snapshot buffer is too small.
+ */
+size_t olm_group_decrypt_snapshot(
+    void * snapshot, size_t snapshot_length,
+
+    /* input; note that it will be overwritten with the base64-decoded
+       message. */
+    uint8_t * message, size_t message_length,
+
+    /* output */
+    uint8_t * plaintext, size_t max_plaintext_length,
+    uint32_t * message_index, enum OlmErrorCode * error
+);
+
+/**
+ * Publish a snapshot which decrypted the message at message_index back into
+ * its session. seen_before can be NULL, see olm_group_decrypt_check_seen().
+ *
+ * Returns 0, or olm_error() if the snapshot buffer is too small. On failure
+ * last_error will be OLM_BAD_STATE.
+ */
+size_t olm_inbound_group_session_publish_snapshot(
+    OlmInboundGroupSession *session,
+    const void * snapshot, size_t snapshot_length,
+    uint32_t message_index, int * seen_before
+);
+
+
 /**
  * Get the number of bytes returned by olm_inbound_group_session_id()
  */
@@ -203,6 +415,32 @@ int olm_inbound_group_session_is_verified(
     const OlmInboundGroupSession *session
 );
 
+/**
+ * Enable or disable the recording of the message indices decrypted by this
+ * session. The record is kept in the pickle, as runs of consecutive indices;
+ * only the 32 highest runs are remembered, and every index below them is then
+ * reported as seen. Disabling the tracking forgets the indices recorded so
+ * far.
+ */
+void olm_inbound_group_session_track_seen_indices(
+    OlmInboundGroupSession *session, int enabled
+);
+
+/**
+ * Check if the session is recording the message indices it decrypts.
+ */
+int olm_inbound_group_session_is_tracking_seen_indices(
+    const OlmInboundGroupSession *session
+);
+
+/**
+ * Check if a message with the given index has already been decrypted by this
+ * session. Always returns 0 if the session is not tracking seen indices.
+ */
+int olm_inbound_group_session_has_seen_index(
+    const OlmInboundGroupSession *session, uint32_t message_index
+);
+
 /**
  * Get the number of bytes returned by olm_export_inbound_group_session()
  */
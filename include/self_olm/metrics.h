@@ -0,0 +1,96 @@
+/* Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef OLM_METRICS_H_
+#define OLM_METRICS_H_
+
+#include <stddef.h>
+#include <stdint.h>
+
+#ifdef __cplusplus
+extern "C" {
+#endif
+
+/** @defgroup metrics Process wide metrics
+ * Counters of the work done by the library, shared by every object in the
+ * process. Counting is off by default; while it is off, the only cost is a
+ * test of a global flag at each counting site.
+ * @{
+ */
+
+enum OlmMetricsCounter {
+    /** Olm chain key advances, one HMAC-SHA-256 each */
+    OLM_METRICS_CHAIN_KEY_ADVANCES = 0,
+    /** Olm root key ratchet steps, one ECDH and one HKDF each */
+    OLM_METRICS_ROOT_KEY_RATCHETS = 1,
+    /** Megolm ratchet part rehashes, one HMAC-SHA-256 each */
+    OLM_METRICS_MEGOLM_HASHES = 2,
+    /** Plaintext bytes encrypted by Olm, Megolm, PK and attachment objects */
+    OLM_METRICS_BYTES_ENCRYPTED = 3,
+    /** Plaintext bytes decrypted by Olm, Megolm, PK and attachment objects */
+    OLM_METRICS_BYTES_DECRYPTED = 4,
+
+    /* Not a counter, the number of counters */
+    OLM_METRICS_COUNTER_COUNT
+};
+
+/** Turns counting on if enabled is non-zero, off otherwise. The counters
+ * keep their values when counting is turned off. */
+void olm_metrics_set_enabled(
+    int enabled
+);
+
+/** Returns non-zero if counting is on. */
+int olm_metrics_is_enabled(void);
+
+/** Copies up to counters_length counter values into counters, indexed by
+ * OlmMetricsCounter. Returns the number of values written. */
+size_t olm_metrics_counters(
+    uint64_t * counters, size_t counters_length
+);
+
+/** Sets every counter back to zero. */
+void olm_metrics_reset(void);
+
+/** @} */ // end of metrics group
+
+/** Non-zero while counting is on; only read through OLM_METRICS_ADD. */
+extern int _olm_metrics_enabled;
+
+/** Adds value to a counter. Only called through OLM_METRICS_ADD. */
+void _olm_metrics_add(
+    enum OlmMetricsCounter counter, uint64_t value
+);
+
+#if defined(__GNUC__) || defined(__clang__)
+#define _OLM_METRICS_IS_ENABLED() \
+    __atomic_load_n(&_olm_metrics_enabled, __ATOMIC_RELAXED)
+#else
+#define _OLM_METRICS_IS_ENABLED() (_olm_metrics_enabled)
+#endif
+
+/** Adds value to a counter if counting is on. */
+#define OLM_METRICS_ADD(counter, value) \
+    do { \
+        if (_OLM_METRICS_IS_ENABLED()) { \
+            _olm_metrics_add((counter), (uint64_t)(value)); \
+        } \
+    } while (0)
+
+#ifdef __cplusplus
+} // extern "C"
+#endif
+
+#endif /* OLM_METRICS_H_ */
@@ -19,6 +19,7 @@
 #include <stddef.h>
 #include <stdint.h>
 
+#include "self_olm/error.h"
 #include "self_olm/inbound_group_session.h"
 #include "self_olm/outbound_group_session.h"
 
@@ -32,6 +33,7 @@ static const size_t OLM_MESSAGE_TYPE_MESSAGE = 1;
 typedef struct OlmAccount OlmAccount;
 typedef struct OlmSession OlmSession;
 typedef struct OlmUtility OlmUtility;
+typedef struct OlmParsedMessage OlmParsedMessage;
 
 /** Get the version number of the library.
  * Arguments will be updated if non-null.
@@ -86,6 +88,21 @@ const char * olm_utility_last_error(
     OlmUtility * utility
 );
 
+/** The most recent error to happen to an account */
+enum OlmErrorCode olm_account_last_error_code(
+    OlmAccount * account
+);
+
+/** The most recent error to happen to a session */
+enum OlmErrorCode olm_session_last_error_code(
+    OlmSession * session
+);
+
+/** The most recent error to happen to a utility */
+enum OlmErrorCode olm_utility_last_error_code(
+    OlmUtility * utility
+);
+
 /** Clears the memory used to back this account */
 size_t olm_clear_account(
     OlmAccount * account
@@ -233,6 +250,74 @@ size_t olm_account_one_time_keys(
     void * one_time_keys, size_t one_time_keys_length
 );
 
+/** The size of the output buffer needed to hold the packed identity keys */
+size_t olm_account_identity_keys_packed_length(
+    OlmAccount * account
+);
+
+/** Writes the public parts of the identity keys for the account into the
+ * identity_keys output buffer, without any JSON framing: the base64-encoded
+ * Curve25519 key immediately followed by the base64-encoded Ed25519 key.
+ * Returns olm_error() on failure. If the identity_keys buffer was too small
+ * then olm_account_last_error() will be "OUTPUT_BUFFER_TOO_SMALL". */
+size_t olm_account_identity_keys_packed(
+    OlmAccount * account,
+    void * identity_keys, size_t identity_key_length
+);
+
+/** The number of one time keys held by the account. If unpublished_only is
+ * non-zero, only the keys that haven't been published yet are counted. */
+size_t olm_account_one_time_keys_count(
+    OlmAccount * account,
+    int unpublished_only
+);
+
+/** The size of a single packed one time key record. */
+size_t olm_account_one_time_key_packed_length(
+    OlmAccount * account
+);
+
+/** Writes the public parts of up to limit one time keys into the
+ * one_time_keys output buffer, skipping the first offset keys.
+ * <p>
+ * Unlike olm_account_one_time_keys(), no JSON is produced: each key is a
+ * record of olm_account_one_time_key_packed_length() bytes made of the
+ * base64-encoded key id immediately followed by the base64-encoded
+ * Curve25519 key. The keys are listed newest first. If unpublished_only is
+ * non-zero, the published keys are skipped and don't count towards offset.
+ * <p>
+ * Returns the number of keys written, or olm_error() on failure. If the
+ * one_time_keys buffer can't hold all of them then olm_account_last_error()
+ * will be "OUTPUT_BUFFER_TOO_SMALL". */
+size_t olm_account_one_time_keys_packed(
+    OlmAccount * account,
+    size_t offset, size_t limit, int unpublished_only,
+    void * one_time_keys, size_t one_time_keys_length
+);
+
+/** The size of a single signed one time key record. */
+size_t olm_account_signed_one_time_key_length(
+    OlmAccount * account
+);
+
+/** Signs up to limit one time keys in one call, skipping the first offset
+ * keys, for a signed key upload.
+ * <p>
+ * Each key is a record of olm_account_signed_one_time_key_length() bytes:
+ * the record written by olm_account_one_time_keys_packed() followed by the
+ * base64-encoded Ed25519 signature of the canonical JSON object
+ * <tt>{"key":"&lt;base64 Curve25519 key&gt;"}</tt>. The keys are listed in
+ * the same order as olm_account_one_time_keys_packed().
+ * <p>
+ * Returns the number of keys written, or olm_error() on failure. If the
+ * signed_keys buffer can't hold all of them then olm_account_last_error()
+ * will be "OUTPUT_BUFFER_TOO_SMALL". */
+size_t olm_account_sign_one_time_keys(
+    OlmAccount * account,
+    size_t offset, size_t limit, int unpublished_only,
+    void * signed_keys, size_t signed_keys_length
+);
+
 /** Marks the current set of one time keys as being published. */
 size_t olm_account_mark_keys_as_published(
     OlmAccount * account
@@ -278,6 +363,19 @@ size_t olm_create_outbound_session(
     void * random, size_t random_length
 );
 
+/** Same as olm_create_outbound_session(), with two key pairs from
+ * olm_generate_ephemeral_key_pair(), the base key then the ratchet key,
+ * instead of random bytes. The key pairs are wiped. If key_pairs_length is
+ * less than twice olm_ephemeral_key_pair_length() then
+ * olm_session_last_error() will be "NOT_ENOUGH_RANDOM". */
+size_t olm_create_outbound_session_with_key_pairs(
+    OlmSession * session,
+    OlmAccount * account,
+    void const * their_identity_key, size_t their_identity_key_length,
+    void const * their_one_time_key, size_t their_one_time_key_length,
+    void * key_pairs, size_t key_pairs_length
+);
+
 /** Create a new in-bound session for sending/receiving messages from an
  * incoming PRE_KEY message. Returns olm_error() on failure. If the base64
  * couldn't be decoded then olm_session_last_error will be "INVALID_BASE64".
@@ -292,6 +390,14 @@ size_t olm_create_inbound_session(
     void * one_time_key_message, size_t message_length
 );
 
+/** Same as olm_create_inbound_session() for a PRE_KEY message written by
+ * olm_encrypt_raw(). The message isn't base64 and is left untouched. */
+size_t olm_create_inbound_session_raw(
+    OlmSession * session,
+    OlmAccount * account,
+    void const * one_time_key_message, size_t message_length
+);
+
 /** Create a new in-bound session for sending/receiving messages from an
  * incoming PRE_KEY message. Returns olm_error() on failure. If the base64
  * couldn't be decoded then olm_session_last_error will be "INVALID_BASE64".
@@ -400,6 +506,65 @@ size_t olm_encrypt(
     void * message, size_t message_length
 );
 
+/** The size of the next message in bytes for the given number of plain-text
+ * bytes, without the base64 encoding. */
+size_t olm_encrypt_raw_message_length(
+    OlmSession * session,
+    size_t plaintext_length
+);
+
+/** Same as olm_encrypt(), but writes the message bytes unencoded, for
+ * transports which carry binary data. The message buffer must be at least
+ * olm_encrypt_raw_message_length() bytes. */
+size_t olm_encrypt_raw(
+    OlmSession * session,
+    void const * plaintext, size_t plaintext_length,
+    void * random, size_t random_length,
+    void * message, size_t message_length
+);
+
+/** The length of an ephemeral key pair generated by
+ * olm_generate_ephemeral_key_pair(). */
+size_t olm_ephemeral_key_pair_length(void);
+
+/** The number of random bytes needed to generate an ephemeral key pair. */
+size_t olm_ephemeral_key_pair_random_length(void);
+
+/** Generates a Curve25519 key pair ahead of time, to be used later by
+ * olm_encrypt_with_key_pair() or olm_create_outbound_session_with_key_pairs()
+ * instead of random bytes. This moves the generation of the key, a scalar
+ * multiplication, out of the encryption. The key pair holds a private key: it
+ * must be kept as secret as random bytes and wiped if it is discarded. The
+ * random bytes are wiped. Returns olm_ephemeral_key_pair_length() on success,
+ * or olm_error() if there weren't enough random bytes or if the key pair
+ * buffer is too small. */
+size_t olm_generate_ephemeral_key_pair(
+    void * random, size_t random_length,
+    void * key_pair, size_t key_pair_length
+);
+
+/** Same as olm_encrypt(), with a key pair from
+ * olm_generate_ephemeral_key_pair() instead of random bytes. A key pair is
+ * only needed if olm_encrypt_random_length() isn't 0: otherwise key_pair can
+ * be NULL, and it is left untouched. A key pair which is used is wiped. If a
+ * key pair is needed and missing then olm_session_last_error() will be
+ * "NOT_ENOUGH_RANDOM". */
+size_t olm_encrypt_with_key_pair(
+    OlmSession * session,
+    void const * plaintext, size_t plaintext_length,
+    void * key_pair, size_t key_pair_length,
+    void * message, size_t message_length
+);
+
+/** Same as olm_encrypt_with_key_pair(), but writes the message bytes
+ * unencoded, as olm_encrypt_raw() does. */
+size_t olm_encrypt_raw_with_key_pair(
+    OlmSession * session,
+    void const * plaintext, size_t plaintext_length,
+    void * key_pair, size_t key_pair_length,
+    void * message, size_t message_length
+);
+
 /** The maximum number of bytes of plain-text a given message could decode to.
  * The actual size could be different due to padding. The input message buffer
  * is destroyed. Returns olm_error() on failure. If the message base64
@@ -432,6 +597,180 @@ size_t olm_decrypt(
     void * plaintext, size_t max_plaintext_length
 );
 
+/** Same as olm_decrypt_max_plaintext_length() for a message written by
+ * olm_encrypt_raw(). The message isn't base64 and is left untouched. */
+size_t olm_decrypt_raw_max_plaintext_length(
+    OlmSession * session,
+    size_t message_type,
+    void const * message, size_t message_length
+);
+
+/** Same as olm_decrypt() for a message written by olm_encrypt_raw(). The
+ * message isn't base64 and is left untouched, so there is no
+ * "INVALID_BASE64" error. */
+size_t olm_decrypt_raw(
+    OlmSession * session,
+    size_t message_type,
+    void const * message, size_t message_length,
+    void * plaintext, size_t max_plaintext_length
+);
+
+/** The size of a parsed message object in bytes */
+size_t olm_parsed_message_size(void);
+
+/** Initialise a parsed message object using the supplied memory
+ *  The supplied memory must be at least olm_parsed_message_size() bytes */
+OlmParsedMessage * olm_parsed_message(
+    void * memory
+);
+
+/** A null terminated string describing the most recent error to happen to a
+ * parsed message */
+const char * olm_parsed_message_last_error(
+    const OlmParsedMessage * parsed
+);
+
+/** The most recent error to happen to a parsed message */
+enum OlmErrorCode olm_parsed_message_last_error_code(
+    const OlmParsedMessage * parsed
+);
+
+/** Clears the memory used to back this parsed message */
+size_t olm_clear_parsed_message(
+    OlmParsedMessage * parsed
+);
+
+/** Decodes the base64 and the headers of a message once, so that the message
+ * can be inspected, matched and decrypted by several sessions without being
+ * decoded again. The message buffer is decoded in place and must stay valid
+ * and unmodified while the parsed message is used. Returns olm_error() on
+ * failure. If the base64 couldn't be decoded then
+ * olm_parsed_message_last_error() will be "INVALID_BASE64". If the message is
+ * for an unsupported version of the protocol then
+ * olm_parsed_message_last_error() will be "BAD_MESSAGE_VERSION". If the
+ * message couldn't be decoded then olm_parsed_message_last_error() will be
+ * "BAD_MESSAGE_FORMAT". */
+size_t olm_parse_message(
+    OlmParsedMessage * parsed,
+    size_t message_type,
+    void * message, size_t message_length
+);
+
+/** The type of the parsed message: OLM_MESSAGE_TYPE_PRE_KEY or
+ * OLM_MESSAGE_TYPE_MESSAGE. */
+size_t olm_parsed_message_type(
+    const OlmParsedMessage * parsed
+);
+
+/** The chain counter of the parsed message. */
+uint32_t olm_parsed_message_counter(
+    const OlmParsedMessage * parsed
+);
+
+/** The length of the buffer needed to hold a key of the parsed message. */
+size_t olm_parsed_message_key_length(
+    const OlmParsedMessage * parsed
+);
+
+/** Writes the ratchet key of the parsed message as base64 into the key
+ * buffer. Returns the length of the key on success or olm_error() on failure.
+ * If the key buffer is too small then olm_parsed_message_last_error() will be
+ * "OUTPUT_BUFFER_TOO_SMALL". */
+size_t olm_parsed_message_ratchet_key(
+    OlmParsedMessage * parsed,
+    void * key, size_t key_length
+);
+
+/** Writes the base key of a PRE_KEY message as base64 into the key buffer.
+ * Returns the length of the key on success or olm_error() on failure. If the
+ * message isn't a PRE_KEY message then olm_parsed_message_last_error() will be
+ * "BAD_STATE". If the key buffer is too small then
+ * olm_parsed_message_last_error() will be "OUTPUT_BUFFER_TOO_SMALL". */
+size_t olm_parsed_message_base_key(
+    OlmParsedMessage * parsed,
+    void * key, size_t key_length
+);
+
+/** Writes the one time key used by a PRE_KEY message as base64 into the key
+ * buffer. The key is the public one time key of the receiving account, as
+ * listed by olm_account_one_time_keys(). Returns the length of the key on
+ * success or olm_error() on failure, with the same errors as
+ * olm_parsed_message_base_key(). */
+size_t olm_parsed_message_one_time_key(
+    OlmParsedMessage * parsed,
+    void * key, size_t key_length
+);
+
+/** Writes the sender identity key of a PRE_KEY message as base64 into the key
+ * buffer. Returns the length of the key on success or olm_error() on failure,
+ * with the same errors as olm_parsed_message_base_key(). If the message
+ * doesn't carry the identity key then olm_parsed_message_last_error() will be
+ * "BAD_MESSAGE_FORMAT". */
+size_t olm_parsed_message_identity_key(
+    OlmParsedMessage * parsed,
+    void * key, size_t key_length
+);
+
+/** Same as olm_matches_inbound_session() for a parsed PRE_KEY message. The
+ * parsed message is left untouched. If the message isn't a PRE_KEY message
+ * then olm_session_last_error() will be "BAD_MESSAGE_FORMAT". */
+size_t olm_matches_inbound_parsed_session(
+    OlmSession * session,
+    const OlmParsedMessage * parsed
+);
+
+/** Same as olm_matches_inbound_session_from() for a parsed PRE_KEY message.
+ * The parsed message is left untouched. */
+size_t olm_matches_inbound_parsed_session_from(
+    OlmSession * session,
+    void const * their_identity_key, size_t their_identity_key_length,
+    const OlmParsedMessage * parsed
+);
+
+/** Same as olm_decrypt_max_plaintext_length() for a parsed message. The parsed
+ * message is left untouched. */
+size_t olm_decrypt_parsed_max_plaintext_length(
+    OlmSession * session,
+    const OlmParsedMessage * parsed
+);
+
+/** Same as olm_decrypt() for a parsed message. The parsed message is left
+ * untouched, so it can be passed to several sessions in turn. */
+size_t olm_decrypt_parsed(
+    OlmSession * session,
+    const OlmParsedMessage * parsed,
+    void * plaintext, size_t max_plaintext_length
+);
+
+/** Whether the session already has a receiver chain, or a skipped message
+ * key, for the ratchet key of the parsed message. If it doesn't then the
+ * session can only decrypt the message by starting a new receiver chain.
+ * Returns 1 if it does, 0 if it doesn't, or olm_error() if the message wasn't
+ * parsed, in which case olm_session_last_error() will be "BAD_STATE". */
+size_t olm_session_has_ratchet_key(
+    OlmSession * session,
+    const OlmParsedMessage * parsed
+);
+
+/** Decrypts a parsed message with the first of several candidate sessions
+ * able to decrypt it, such as the sessions established with its sender. The
+ * sessions which already know the ratchet key of the message, as told by
+ * olm_session_has_ratchet_key(), are tried first, in order. The other sessions
+ * are only tried afterwards, in order, since each of those attempts derives a
+ * new chain before checking the MAC. The index of the session which decrypted
+ * the message is written to session_index, which can be NULL. Returns the
+ * length of the plain-text or olm_error() on failure. If no session could
+ * decrypt the message then olm_parsed_message_last_error() will be the error
+ * of the last session tried, or "BAD_MESSAGE_KEY_ID" if there were no
+ * sessions. If the message wasn't parsed then olm_parsed_message_last_error()
+ * will be "BAD_STATE". */
+size_t olm_decrypt_parsed_with_sessions(
+    OlmSession * const * sessions, size_t session_count,
+    OlmParsedMessage * parsed,
+    void * plaintext, size_t max_plaintext_length,
+    size_t * session_index
+);
+
 /** The length of the buffer needed to hold the SHA-256 hash. */
 size_t olm_sha256_length(
    OlmUtility * utility
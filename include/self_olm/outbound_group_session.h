@@ -18,6 +18,8 @@
 #include <stddef.h>
 #include <stdint.h>
 
+#include "self_olm/error.h"
+
 #ifdef __cplusplus
 extern "C" {
 #endif
@@ -43,6 +45,11 @@ const char *olm_outbound_group_session_last_error(
     const OlmOutboundGroupSession *session
 );
 
+/** The most recent error to happen to a group session */
+enum OlmErrorCode olm_outbound_group_session_last_error_code(
+    const OlmOutboundGroupSession *session
+);
+
 /** Clears the memory used to back this group session */
 size_t olm_clear_outbound_group_session(
     OlmOutboundGroupSession *session
@@ -119,6 +126,24 @@ size_t olm_group_encrypt(
     uint8_t * message, size_t message_length
 );
 
+/**
+ * The number of bytes that will be created by olm_group_encrypt_raw()
+ */
+size_t olm_group_encrypt_raw_message_length(
+    OlmOutboundGroupSession *session,
+    size_t plaintext_length
+);
+
+/**
+ * Same as olm_group_encrypt(), but writes the message bytes unencoded, for
+ * transports which carry binary data.
+ */
+size_t olm_group_encrypt_raw(
+    OlmOutboundGroupSession *session,
+    uint8_t const * plaintext, size_t plaintext_length,
+    uint8_t * message, size_t message_length
+);
+
 
 /**
  * Get the number of bytes returned by olm_outbound_group_session_id()
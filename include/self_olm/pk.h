@@ -19,6 +19,8 @@
 #include <stddef.h>
 #include <stdint.h>
 
+#include "self_olm/error.h"
+
 #ifdef __cplusplus
 extern "C" {
 #endif
@@ -40,6 +42,11 @@ const char * olm_pk_encryption_last_error(
     OlmPkEncryption * encryption
 );
 
+/** The most recent error to happen to a encryption object */
+enum OlmErrorCode olm_pk_encryption_last_error_code(
+    OlmPkEncryption * encryption
+);
+
 /** Clears the memory used to back this encryption object */
 size_t olm_clear_pk_encryption(
     OlmPkEncryption *encryption
@@ -90,6 +97,22 @@ size_t olm_pk_encrypt(
     const void * random, size_t random_length
 );
 
+/** Same as olm_pk_encrypt(), but the encryption object is only read: the
+ * failure reason is written to error instead of being kept as the last error
+ * of the object. Several threads can therefore encrypt for the same recipient
+ * at the same time, e.g. to upload a key backup in parallel. Each call still
+ * needs its own olm_pk_encrypt_random_length() random bytes. error is set to
+ * OLM_SUCCESS on success. Returns olm_error() on failure. */
+size_t olm_pk_encrypt_concurrent(
+    OlmPkEncryption const * encryption,
+    void const * plaintext, size_t plaintext_length,
+    void * ciphertext, size_t ciphertext_length,
+    void * mac, size_t mac_length,
+    void * ephemeral_key, size_t ephemeral_key_size,
+    const void * random, size_t random_length,
+    enum OlmErrorCode * error
+);
+
 typedef struct OlmPkDecryption OlmPkDecryption;
 
 /* The size of a decryption object in bytes */
@@ -107,6 +130,11 @@ const char * olm_pk_decryption_last_error(
     OlmPkDecryption * decryption
 );
 
+/** The most recent error to happen to a decryption object */
+enum OlmErrorCode olm_pk_decryption_last_error_code(
+    OlmPkDecryption * decryption
+);
+
 /** Clears the memory used to back this decryption object */
 size_t olm_clear_pk_decryption(
     OlmPkDecryption *decryption
@@ -185,7 +213,9 @@ size_t olm_pk_max_plaintext_length(
  * olm_pk_encrypt function for descriptions of the ephemeral_key and mac
  * arguments. Returns the length of the plaintext on success. Returns
  * olm_error() on failure. If the plaintext buffer is too small then
- * olm_pk_encryption_last_error() will be "OUTPUT_BUFFER_TOO_SMALL". */
+ * olm_pk_encryption_last_error() will be "OUTPUT_BUFFER_TOO_SMALL". If the
+ * ephemeral key or the MAC don't have the length of a base64 encoded key or
+ * MAC then it will be "BAD_MESSAGE_FORMAT". */
 size_t olm_pk_decrypt(
     OlmPkDecryption * decryption,
     void const * ephemeral_key, size_t ephemeral_key_length,
@@ -194,6 +224,23 @@ size_t olm_pk_decrypt(
     void * plaintext, size_t max_plaintext_length
 );
 
+/** Same as olm_pk_decrypt(), but the decryption object is only read: the
+ * failure reason is written to error instead of being kept as the last error
+ * of the object. Several threads can therefore decrypt with the same object
+ * at the same time, e.g. to restore a key backup in parallel. error is set to
+ * OLM_SUCCESS on success. Returns the length of the plaintext on success, or
+ * olm_error() on failure. If the ephemeral key or the MAC don't have the
+ * length of a base64 encoded key or MAC then error will be
+ * "BAD_MESSAGE_FORMAT". */
+size_t olm_pk_decrypt_concurrent(
+    OlmPkDecryption const * decryption,
+    void const * ephemeral_key, size_t ephemeral_key_length,
+    void const * mac, size_t mac_length,
+    void * ciphertext, size_t ciphertext_length,
+    void * plaintext, size_t max_plaintext_length,
+    enum OlmErrorCode * error
+);
+
 /**
  * Get the private key for an OlmDecryption object as an unencoded byte array
  * private_key must be a pointer to a buffer of at least
@@ -224,6 +271,11 @@ const char * olm_pk_signing_last_error(
     OlmPkSigning * sign
 );
 
+/** The most recent error to happen to a signing object */
+enum OlmErrorCode olm_pk_signing_last_error_code(
+    OlmPkSigning * sign
+);
+
 /** Clears the memory used to back this signing object */
 size_t olm_clear_pk_signing(
     OlmPkSigning *sign
@@ -0,0 +1,61 @@
+/* Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* Static tracepoints (USDT) in the library, under the "self_olm" provider.
+ *
+ * When the library is built with OLM_USDT defined, each probe is a single
+ * NOP instruction plus an ELF note describing where its arguments live, so
+ * they cost nothing until perf, bpftrace or systemtap attach to them.
+ * Otherwise the probes compile to nothing. See tracing/README.rst for the
+ * list of probes and their arguments.
+ */
+
+#ifndef OLM_PROBES_H_
+#define OLM_PROBES_H_
+
+#ifdef OLM_USDT
+
+#include <sys/sdt.h>
+
+#define OLM_PROBE1(name, a1) \
+    DTRACE_PROBE1(self_olm, name, a1)
+#define OLM_PROBE2(name, a1, a2) \
+    DTRACE_PROBE2(self_olm, name, a1, a2)
+#define OLM_PROBE3(name, a1, a2, a3) \
+    DTRACE_PROBE3(self_olm, name, a1, a2, a3)
+#define OLM_PROBE4(name, a1, a2, a3, a4) \
+    DTRACE_PROBE4(self_olm, name, a1, a2, a3, a4)
+
+#else
+
+#define OLM_PROBE1(name, a1) do {} while (0)
+#define OLM_PROBE2(name, a1, a2) do {} while (0)
+#define OLM_PROBE3(name, a1, a2, a3) do {} while (0)
+#define OLM_PROBE4(name, a1, a2, a3, a4) do {} while (0)
+
+#endif
+
+/* The kind of object given to the pickle and unpickle probes */
+#define OLM_PROBE_ACCOUNT 0
+#define OLM_PROBE_SESSION 1
+#define OLM_PROBE_OUTBOUND_GROUP_SESSION 2
+#define OLM_PROBE_INBOUND_GROUP_SESSION 3
+
+/* The error code given to the *_done probes: the object's last error if the
+ * call failed, OLM_SUCCESS otherwise */
+#define OLM_PROBE_ERROR(result, last_error) \
+    ((result) == (size_t)-1 ? (int)(last_error) : 0)
+
+#endif /* OLM_PROBES_H_ */
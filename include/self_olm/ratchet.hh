@@ -142,6 +142,15 @@ struct Ratchet {
         std::uint8_t * output, std::size_t max_output_length
     );
 
+    /** Same as encrypt(), but a new sender chain is started with a key pair
+     * generated beforehand rather than from random bytes. The key pair is
+     * only used, and can only be NULL, if encrypt_random_length() is 0. */
+    std::size_t encrypt(
+        std::uint8_t const * plaintext, std::size_t plaintext_length,
+        _olm_curve25519_key_pair const * ratchet_key,
+        std::uint8_t * output, std::size_t max_output_length
+    );
+
     /** An upper bound on the number of bytes of plain-text the decrypt method
      * will write for a given input message length. */
     std::size_t decrypt_max_plaintext_length(
@@ -160,6 +169,13 @@ struct Ratchet {
         std::uint8_t const * input, std::size_t input_length,
         std::uint8_t * plaintext, std::size_t max_plaintext_length
     );
+
+    /** Whether a receiver chain or a skipped message key belongs to the
+     * given remote ratchet key. A message with any other ratchet key can only
+     * be decrypted by starting a new receiver chain. */
+    bool has_ratchet_key(
+        std::uint8_t const * ratchet_key
+    ) const;
 };
 
 
@@ -53,6 +53,16 @@ struct Session {
         std::uint8_t const * random, std::size_t random_length
     );
 
+    /** Same as new_outbound_session(), with the base key and the ratchet key
+     * generated beforehand rather than from random bytes. */
+    std::size_t new_outbound_session(
+        Account const & local_account,
+        _olm_curve25519_public_key const & identity_key,
+        _olm_curve25519_public_key const & one_time_key,
+        _olm_curve25519_key_pair const & base_key,
+        _olm_curve25519_key_pair const & ratchet_key
+    );
+
     /** Start a new inbound session from a pre-key message.
      * Returns std::size_t(-1) on failure. On failure last_error will be set
      * with an error code. The last_error will be BAD_MESSAGE_FORMAT if
@@ -111,6 +121,15 @@ struct Session {
         std::uint8_t * message, std::size_t message_length
     );
 
+    /** Same as encrypt(), with the ratchet key of a new sender chain
+     * generated beforehand rather than from random bytes. The key pair is
+     * only used, and can only be NULL, if encrypt_random_length() is 0. */
+    std::size_t encrypt(
+        std::uint8_t const * plaintext, std::size_t plaintext_length,
+        _olm_curve25519_key_pair const * ratchet_key,
+        std::uint8_t * message, std::size_t message_length
+    );
+
     /** An upper bound on the number of bytes of plain-text the decrypt method
      * will write for a given input message length. */
     std::size_t decrypt_max_plaintext_length(
@@ -142,6 +161,33 @@ struct Session {
 };
 
 
+/** The headers of an Olm message, decoded once by parse_message() so that the
+ * message can be matched and decrypted by several sessions. The pointers
+ * point into the decoded message. */
+struct ParsedMessage {
+    MessageType type;
+    std::uint8_t const * input; std::size_t input_length;
+    std::uint32_t counter;
+    std::uint8_t const * ratchet_key;
+    /** the PRE_KEY fields, null for a normal message. The identity key is
+     * optional in a PRE_KEY message */
+    std::uint8_t const * identity_key;
+    std::uint8_t const * base_key;
+    std::uint8_t const * one_time_key;
+    OlmErrorCode last_error;
+};
+
+
+/** Decodes the headers of a raw message, with the checks that a session makes
+ * before decrypting it. Returns std::size_t(-1) on failure and sets
+ * parsed.last_error: "BAD_MESSAGE_VERSION" or "BAD_MESSAGE_FORMAT". */
+std::size_t parse_message(
+    ParsedMessage & parsed,
+    MessageType message_type,
+    std::uint8_t const * input, std::size_t input_length
+);
+
+
 std::size_t pickle_length(
     Session const & value
 );
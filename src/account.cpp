@@ -168,6 +168,39 @@ std::size_t olm::Account::get_identity_json(
 }
 
 
+std::size_t olm::Account::get_identity_keys_packed_length() {
+    return olm::encode_base64_length(
+        sizeof(identity_keys.curve25519_key.public_key)
+    ) + olm::encode_base64_length(
+        sizeof(identity_keys.ed25519_key.public_key)
+    );
+}
+
+
+std::size_t olm::Account::get_identity_keys_packed(
+    std::uint8_t * identity_keys_packed, std::size_t identity_keys_length
+) {
+    std::uint8_t * pos = identity_keys_packed;
+
+    if (identity_keys_length < get_identity_keys_packed_length()) {
+        last_error = OlmErrorCode::OLM_OUTPUT_BUFFER_TOO_SMALL;
+        return std::size_t(-1);
+    }
+
+    pos = olm::encode_base64(
+        identity_keys.curve25519_key.public_key.public_key,
+        sizeof(identity_keys.curve25519_key.public_key.public_key),
+        pos
+    );
+    pos = olm::encode_base64(
+        identity_keys.ed25519_key.public_key.public_key,
+        sizeof(identity_keys.ed25519_key.public_key.public_key),
+        pos
+    );
+    return pos - identity_keys_packed;
+}
+
+
 std::size_t olm::Account::signature_length(
 ) {
     return ED25519_SIGNATURE_LENGTH;
@@ -183,10 +216,10 @@ std::size_t olm::Account::sign(
         return std::size_t(-1);
     }
 
-    unsigned long long *smlen_p = (unsigned long long *)&signature_length;
     uint8_t *sk = (uint8_t *)&identity_keys.ed25519_key.private_key.private_key;
 
-    if (crypto_sign(signature, smlen_p, message, message_length, sk) != 0) {
+    /* the detached form only writes the signature, not the signed message */
+    if (crypto_sign_detached(signature, NULL, message, message_length, sk) != 0) {
         last_error = OlmErrorCode::OLM_OUTPUT_BUFFER_TOO_SMALL;
         return std::size_t(-1);
     }
@@ -256,6 +289,145 @@ std::size_t olm::Account::get_one_time_keys_json(
 }
 
 
+std::size_t olm::Account::count_one_time_keys(
+    bool unpublished_only
+) {
+    if (!unpublished_only) {
+        return one_time_keys.size();
+    }
+    std::size_t count = 0;
+    for (auto const & key : one_time_keys) {
+        if (!key.published) {
+            count++;
+        }
+    }
+    return count;
+}
+
+
+std::size_t olm::Account::get_one_time_key_packed_length(
+) {
+    return olm::encode_base64_length(_olm_pickle_uint32_length(0))
+        + olm::encode_base64_length(CURVE25519_KEY_LENGTH);
+}
+
+
+std::size_t olm::Account::get_one_time_keys_packed(
+    std::size_t offset, std::size_t limit, bool unpublished_only,
+    std::uint8_t * one_time_keys_packed, std::size_t one_time_keys_length
+) {
+    std::size_t available = count_one_time_keys(unpublished_only);
+    std::size_t count = offset < available ? available - offset : 0;
+    if (count > limit) {
+        count = limit;
+    }
+    if (one_time_keys_length / get_one_time_key_packed_length() < count) {
+        last_error = OlmErrorCode::OLM_OUTPUT_BUFFER_TOO_SMALL;
+        return std::size_t(-1);
+    }
+
+    std::uint8_t * pos = one_time_keys_packed;
+    std::size_t written = 0;
+    for (auto const & key : one_time_keys) {
+        if (written == count) {
+            break;
+        }
+        if (unpublished_only && key.published) {
+            continue;
+        }
+        if (offset > 0) {
+            offset--;
+            continue;
+        }
+        std::uint8_t key_id[_olm_pickle_uint32_length(key.id)];
+        _olm_pickle_uint32(key_id, key.id);
+        pos = olm::encode_base64(key_id, sizeof(key_id), pos);
+        pos = olm::encode_base64(
+            key.key.public_key.public_key, sizeof(key.key.public_key.public_key), pos
+        );
+        written++;
+    }
+    return written;
+}
+
+
+namespace {
+static const std::uint8_t SIGNED_KEY_JSON_START[] = "{\"key\":\"";
+static const std::uint8_t SIGNED_KEY_JSON_END[] = "\"}";
+}
+
+
+std::size_t olm::Account::get_signed_one_time_key_length(
+) {
+    return get_one_time_key_packed_length()
+        + olm::encode_base64_length(signature_length());
+}
+
+
+std::size_t olm::Account::sign_one_time_keys(
+    std::size_t offset, std::size_t limit, bool unpublished_only,
+    std::uint8_t * signed_keys, std::size_t signed_keys_length
+) {
+    std::size_t available = count_one_time_keys(unpublished_only);
+    std::size_t count = offset < available ? available - offset : 0;
+    if (count > limit) {
+        count = limit;
+    }
+    if (signed_keys_length / get_signed_one_time_key_length() < count) {
+        last_error = OlmErrorCode::OLM_OUTPUT_BUFFER_TOO_SMALL;
+        return std::size_t(-1);
+    }
+
+    /* the payload and signature buffers are reused for every key */
+    const std::size_t start_length = sizeof(SIGNED_KEY_JSON_START) - 1;
+    const std::size_t key_length = olm::encode_base64_length(CURVE25519_KEY_LENGTH);
+    std::uint8_t payload[
+        sizeof(SIGNED_KEY_JSON_START) - 1
+        + (4 * CURVE25519_KEY_LENGTH + 2) / 3 /* unpadded base64 */
+        + sizeof(SIGNED_KEY_JSON_END) - 1
+    ];
+    std::uint8_t signature[ED25519_SIGNATURE_LENGTH];
+    std::memcpy(payload, SIGNED_KEY_JSON_START, start_length);
+
+    std::uint8_t * pos = signed_keys;
+    std::size_t written = 0;
+    for (auto const & key : one_time_keys) {
+        if (written == count) {
+            break;
+        }
+        if (unpublished_only && key.published) {
+            continue;
+        }
+        if (offset > 0) {
+            offset--;
+            continue;
+        }
+        std::uint8_t key_id[_olm_pickle_uint32_length(key.id)];
+        _olm_pickle_uint32(key_id, key.id);
+        pos = olm::encode_base64(key_id, sizeof(key_id), pos);
+        std::uint8_t * encoded_key = pos;
+        pos = olm::encode_base64(
+            key.key.public_key.public_key, sizeof(key.key.public_key.public_key), pos
+        );
+        std::size_t payload_length = start_length;
+        std::memcpy(payload + payload_length, encoded_key, key_length);
+        payload_length += key_length;
+        std::memcpy(
+            payload + payload_length, SIGNED_KEY_JSON_END,
+            sizeof(SIGNED_KEY_JSON_END) - 1
+        );
+        payload_length += sizeof(SIGNED_KEY_JSON_END) - 1;
+        if (sign(payload, payload_length, signature, sizeof(signature))
+                == std::size_t(-1)) {
+            return std::size_t(-1);
+        }
+        pos = olm::encode_base64(signature, sizeof(signature), pos);
+        written++;
+    }
+    return written;
+}
+
+
 std::size_t olm::Account::mark_keys_as_published(
 ) {
     std::size_t count = 0;
@@ -0,0 +1,638 @@
+/* Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include "self_olm/attachment.h"
+#include "self_olm/crypto.h"
+#include "self_olm/error.h"
+#include "self_olm/memory.h"
+#include "self_olm/metrics.h"
+
+#include <string.h>
+
+#include "crypto-algorithms/aes.h"
+#include "crypto-algorithms/sha256.h"
+
+/* AES and SHA-256 instructions are used when the CPU has them, as the
+ * portable implementations are far slower than memory. Only the block
+ * functions differ, so the output is identical either way. */
+#if defined(__GNUC__) && (defined(__x86_64__) || defined(__i386__))
+#define OLM_ATTACHMENT_X86
+#include <cpuid.h>
+#include <immintrin.h>
+#elif defined(__aarch64__) && (defined(__ARM_FEATURE_CRYPTO) \
+    || (defined(__ARM_FEATURE_AES) && defined(__ARM_FEATURE_SHA2)) \
+    || (defined(__clang__) && __clang_major__ >= 16) \
+    || (defined(__GNUC__) && !defined(__clang__)))
+/* only the block functions are built for the cryptography extension, so
+ * that the compiler doesn't use it in code which runs before the check */
+#define OLM_ATTACHMENT_ARMV8
+#define OLM_ARMV8_CRYPTO __attribute__((target("+crypto")))
+#include <arm_neon.h>
+#if defined(__linux__)
+#include <sys/auxv.h>
+#include <asm/hwcap.h>
+#endif
+#endif
+
+#define AES_KEY_SCHEDULE_LENGTH 60
+#define AES_KEY_BITS (8 * AES256_KEY_LENGTH)
+#define AES_ROUND_KEYS 15
+#define SHA256_BLOCK_LENGTH 64
+
+/* number of AES blocks of keystream generated at once. The input is
+ * processed in strides of this size so that the keystream, the data and the
+ * hash input stay in the L1 cache. */
+#define KEYSTREAM_BLOCKS 64
+#define KEYSTREAM_LENGTH (KEYSTREAM_BLOCKS * AES_BLOCK_SIZE)
+
+enum _olm_attachment_mode {
+    OLM_ATTACHMENT_NONE = 0,
+    OLM_ATTACHMENT_ENCRYPT = 1,
+    OLM_ATTACHMENT_DECRYPT = 2,
+};
+
+struct OlmAttachment {
+    enum OlmErrorCode last_error;
+    enum _olm_attachment_mode mode;
+    int aes_instructions;
+    int sha256_instructions;
+    WORD key_schedule[AES_KEY_SCHEDULE_LENGTH];
+    /* the key schedule as bytes, for the AES instructions */
+    uint8_t round_keys[AES_ROUND_KEYS][AES_BLOCK_SIZE];
+    uint8_t counter[AES256_IV_LENGTH];
+    /* keystream not yet used by the previous update */
+    uint8_t keystream[KEYSTREAM_LENGTH];
+    size_t keystream_position;
+    size_t keystream_length;
+    SHA256_CTX sha256;
+    uint64_t processed_length;
+};
+
+const char * olm_attachment_last_error(
+    OlmAttachment * attachment
+) {
+    return _olm_error_to_string(attachment->last_error);
+}
+
+size_t olm_attachment_size(void) {
+    return sizeof(OlmAttachment);
+}
+
+OlmAttachment * olm_attachment(
+    void * memory
+) {
+    _olm_unset(memory, sizeof(OlmAttachment));
+    return (OlmAttachment *) memory;
+}
+
+size_t olm_clear_attachment(
+    OlmAttachment * attachment
+) {
+    _olm_unset(attachment, sizeof(OlmAttachment));
+    return sizeof(OlmAttachment);
+}
+
+size_t olm_attachment_key_length(void) {
+    return AES256_KEY_LENGTH;
+}
+
+size_t olm_attachment_iv_length(void) {
+    return AES256_IV_LENGTH;
+}
+
+size_t olm_attachment_digest_length(void) {
+    return SHA256_OUTPUT_LENGTH;
+}
+
+static const uint32_t SHA256_K[64] = {
+    0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5,
+    0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+    0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3,
+    0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+    0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc,
+    0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+    0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7,
+    0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+    0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13,
+    0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+    0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3,
+    0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+    0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5,
+    0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+    0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208,
+    0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2,
+};
+
+#if defined(OLM_ATTACHMENT_X86)
+
+static void _detect_instructions(
+    OlmAttachment * attachment
+) {
+    unsigned int eax, ebx, ecx, edx;
+    int ssse3 = 0, sse41 = 0;
+
+    if (__get_cpuid(1, &eax, &ebx, &ecx, &edx)) {
+        attachment->aes_instructions = (ecx & bit_AES) != 0;
+        ssse3 = (ecx & bit_SSSE3) != 0;
+        sse41 = (ecx & bit_SSE4_1) != 0;
+    }
+    if (__get_cpuid_max(0, NULL) >= 7) {
+        __cpuid_count(7, 0, eax, ebx, ecx, edx);
+        attachment->sha256_instructions = ssse3 && sse41 && (ebx & (1 << 29));
+    }
+}
+
+/** Writes `count` keystream blocks for the counter blocks starting at
+ * `counter`. The counter blocks are built in registers: storing them to memory
+ * first stalls the loads on store forwarding. */
+__attribute__((target("aes,sse2")))
+static void _aes_ctr_blocks(
+    const OlmAttachment * attachment,
+    uint8_t * output, size_t count, uint64_t counter
+) {
+    __m128i keys[AES_ROUND_KEYS];
+    uint64_t high;
+    size_t i;
+    int round;
+
+    for (round = 0; round < AES_ROUND_KEYS; round++) {
+        keys[round] = _mm_loadu_si128(
+            (const __m128i *) attachment->round_keys[round]
+        );
+    }
+    memcpy(&high, attachment->counter, sizeof(high));
+
+#define COUNTER_BLOCK(n) _mm_xor_si128(_mm_set_epi64x( \
+        (long long) __builtin_bswap64(counter + (n)), (long long) high \
+    ), keys[0])
+
+    /* four blocks at a time to keep the AES unit busy */
+    for (i = 0; i + 4 <= count; i += 4) {
+        __m128i b0 = COUNTER_BLOCK(0);
+        __m128i b1 = COUNTER_BLOCK(1);
+        __m128i b2 = COUNTER_BLOCK(2);
+        __m128i b3 = COUNTER_BLOCK(3);
+        for (round = 1; round < AES_ROUND_KEYS - 1; round++) {
+            b0 = _mm_aesenc_si128(b0, keys[round]);
+            b1 = _mm_aesenc_si128(b1, keys[round]);
+            b2 = _mm_aesenc_si128(b2, keys[round]);
+            b3 = _mm_aesenc_si128(b3, keys[round]);
+        }
+        b0 = _mm_aesenclast_si128(b0, keys[AES_ROUND_KEYS - 1]);
+        b1 = _mm_aesenclast_si128(b1, keys[AES_ROUND_KEYS - 1]);
+        b2 = _mm_aesenclast_si128(b2, keys[AES_ROUND_KEYS - 1]);
+        b3 = _mm_aesenclast_si128(b3, keys[AES_ROUND_KEYS - 1]);
+        _mm_storeu_si128((__m128i *) (output + 0 * AES_BLOCK_SIZE), b0);
+        _mm_storeu_si128((__m128i *) (output + 1 * AES_BLOCK_SIZE), b1);
+        _mm_storeu_si128((__m128i *) (output + 2 * AES_BLOCK_SIZE), b2);
+        _mm_storeu_si128((__m128i *) (output + 3 * AES_BLOCK_SIZE), b3);
+        output += 4 * AES_BLOCK_SIZE;
+        counter += 4;
+    }
+    for (; i < count; i++) {
+        __m128i b = COUNTER_BLOCK(0);
+        for (round = 1; round < AES_ROUND_KEYS - 1; round++) {
+            b = _mm_aesenc_si128(b, keys[round]);
+        }
+        b = _mm_aesenclast_si128(b, keys[AES_ROUND_KEYS - 1]);
+        _mm_storeu_si128((__m128i *) output, b);
+        output += AES_BLOCK_SIZE;
+        counter++;
+    }
+
+#undef COUNTER_BLOCK
+}
+
+__attribute__((target("sha,sse4.1,ssse3")))
+static void _sha256_blocks(
+    WORD * state,
+    const uint8_t * data, size_t count
+) {
+    const __m128i byteswap = _mm_set_epi64x(
+        0x0c0d0e0f08090a0bULL, 0x0405060700010203ULL
+    );
+    __m128i state0, state1, tmp, abef, cdgh, message;
+    __m128i w[4];
+    int group;
+
+    /* the instructions want the state as ABEF and CDGH */
+    tmp = _mm_shuffle_epi32(_mm_loadu_si128((const __m128i *) &state[0]), 0xB1);
+    state1 = _mm_shuffle_epi32(_mm_loadu_si128((const __m128i *) &state[4]), 0x1B);
+    state0 = _mm_alignr_epi8(tmp, state1, 8);
+    state1 = _mm_blend_epi16(state1, tmp, 0xF0);
+
+    while (count--) {
+        abef = state0;
+        cdgh = state1;
+
+        for (group = 0; group < 16; group++) {
+            if (group < 4) {
+                w[group] = _mm_shuffle_epi8(
+                    _mm_loadu_si128((const __m128i *) (data + 16 * group)),
+                    byteswap
+                );
+            } else {
+                /* w[group % 4] holds the words of group - 4 */
+                tmp = _mm_add_epi32(
+                    _mm_sha256msg1_epu32(w[group % 4], w[(group + 1) % 4]),
+                    _mm_alignr_epi8(w[(group + 3) % 4], w[(group + 2) % 4], 4)
+                );
+                w[group % 4] = _mm_sha256msg2_epu32(tmp, w[(group + 3) % 4]);
+            }
+            message = _mm_add_epi32(
+                w[group % 4],
+                _mm_loadu_si128((const __m128i *) &SHA256_K[4 * group])
+            );
+            state1 = _mm_sha256rnds2_epu32(state1, state0, message);
+            message = _mm_shuffle_epi32(message, 0x0E);
+            state0 = _mm_sha256rnds2_epu32(state0, state1, message);
+        }
+
+        state0 = _mm_add_epi32(state0, abef);
+        state1 = _mm_add_epi32(state1, cdgh);
+        data += SHA256_BLOCK_LENGTH;
+    }
+
+    tmp = _mm_shuffle_epi32(state0, 0x1B);
+    state1 = _mm_shuffle_epi32(state1, 0xB1);
+    state0 = _mm_blend_epi16(tmp, state1, 0xF0);
+    state1 = _mm_alignr_epi8(state1, tmp, 8);
+    _mm_storeu_si128((__m128i *) &state[0], state0);
+    _mm_storeu_si128((__m128i *) &state[4], state1);
+}
+
+#elif defined(OLM_ATTACHMENT_ARMV8)
+
+static void _detect_instructions(
+    OlmAttachment * attachment
+) {
+#if defined(__linux__)
+    unsigned long hwcap = getauxval(AT_HWCAP);
+    attachment->aes_instructions = (hwcap & HWCAP_AES) != 0;
+    attachment->sha256_instructions = (hwcap & HWCAP_SHA2) != 0;
+#else
+    /* every ARMv8 CPU Apple ships has the cryptography extension */
+    attachment->aes_instructions = 1;
+    attachment->sha256_instructions = 1;
+#endif
+}
+
+OLM_ARMV8_CRYPTO
+static void _aes_ctr_blocks(
+    const OlmAttachment * attachment,
+    uint8_t * output, size_t count, uint64_t counter
+) {
+    uint8x16_t keys[AES_ROUND_KEYS];
+    uint8x8_t high = vld1_u8(attachment->counter);
+    size_t i;
+    int round;
+
+    for (round = 0; round < AES_ROUND_KEYS; round++) {
+        keys[round] = vld1q_u8(attachment->round_keys[round]);
+    }
+
+    for (i = 0; i < count; i++) {
+        uint8x16_t b = vcombine_u8(high, vrev64_u8(vcreate_u8(counter++)));
+        for (round = 0; round < AES_ROUND_KEYS - 2; round++) {
+            b = vaesmcq_u8(vaeseq_u8(b, keys[round]));
+        }
+        b = vaeseq_u8(b, keys[AES_ROUND_KEYS - 2]);
+        b = veorq_u8(b, keys[AES_ROUND_KEYS - 1]);
+        vst1q_u8(output, b);
+        output += AES_BLOCK_SIZE;
+    }
+}
+
+OLM_ARMV8_CRYPTO
+static void _sha256_blocks(
+    WORD * state,
+    const uint8_t * data, size_t count
+) {
+    uint32x4_t state0 = vld1q_u32((const uint32_t *) &state[0]);
+    uint32x4_t state1 = vld1q_u32((const uint32_t *) &state[4]);
+    uint32x4_t abcd, efgh, message, tmp;
+    uint32x4_t w[4];
+    int group;
+
+    while (count--) {
+        abcd = state0;
+        efgh = state1;
+
+        for (group = 0; group < 16; group++) {
+            if (group < 4) {
+                w[group] = vreinterpretq_u32_u8(
+                    vrev32q_u8(vld1q_u8(data + 16 * group))
+                );
+            } else {
+                /* w[group % 4] holds the words of group - 4 */
+                w[group % 4] = vsha256su1q_u32(
+                    vsha256su0q_u32(w[group % 4], w[(group + 1) % 4]),
+                    w[(group + 2) % 4], w[(group + 3) % 4]
+                );
+            }
+            message = vaddq_u32(w[group % 4], vld1q_u32(&SHA256_K[4 * group]));
+            tmp = state0;
+            state0 = vsha256hq_u32(state0, state1, message);
+            state1 = vsha256h2q_u32(state1, tmp, message);
+        }
+
+        state0 = vaddq_u32(state0, abcd);
+        state1 = vaddq_u32(state1, efgh);
+        data += SHA256_BLOCK_LENGTH;
+    }
+
+    vst1q_u32((uint32_t *) &state[0], state0);
+    vst1q_u32((uint32_t *) &state[4], state1);
+}
+
+#else
+
+static void _detect_instructions(
+    OlmAttachment * attachment
+) {
+    attachment->aes_instructions = 0;
+    attachment->sha256_instructions = 0;
+}
+
+static void _aes_ctr_blocks(
+    const OlmAttachment * attachment,
+    uint8_t * output, size_t count, uint64_t counter
+) {
+}
+
+static void _sha256_blocks(
+    WORD * state,
+    const uint8_t * data, size_t count
+) {
+}
+
+#endif
+
+static size_t _init(
+    OlmAttachment * attachment,
+    enum _olm_attachment_mode mode,
+    const void * key, size_t key_length,
+    const void * iv, size_t iv_length
+) {
+    size_t i;
+
+    if (key_length < AES256_KEY_LENGTH || iv_length < AES256_IV_LENGTH) {
+        attachment->last_error = OLM_INPUT_BUFFER_TOO_SMALL;
+        return (size_t)-1;
+    }
+
+    olm_clear_attachment(attachment);
+    _detect_instructions(attachment);
+    aes_key_setup((const BYTE *) key, attachment->key_schedule, AES_KEY_BITS);
+    for (i = 0; i < AES_KEY_SCHEDULE_LENGTH; i++) {
+        WORD word = attachment->key_schedule[i];
+        uint8_t * round_key = attachment->round_keys[i / 4] + 4 * (i % 4);
+        round_key[0] = (uint8_t)(word >> 24);
+        round_key[1] = (uint8_t)(word >> 16);
+        round_key[2] = (uint8_t)(word >> 8);
+        round_key[3] = (uint8_t)(word);
+    }
+    memcpy(attachment->counter, iv, AES256_IV_LENGTH);
+    sha256_init(&attachment->sha256);
+    attachment->mode = mode;
+    return 0;
+}
+
+size_t olm_attachment_init_encryption(
+    OlmAttachment * attachment,
+    const void * key, size_t key_length,
+    const void * iv, size_t iv_length
+) {
+    return _init(
+        attachment, OLM_ATTACHMENT_ENCRYPT, key, key_length, iv, iv_length
+    );
+}
+
+size_t olm_attachment_init_decryption(
+    OlmAttachment * attachment,
+    const void * key, size_t key_length,
+    const void * iv, size_t iv_length
+) {
+    return _init(
+        attachment, OLM_ATTACHMENT_DECRYPT, key, key_length, iv, iv_length
+    );
+}
+
+static uint64_t _load_be64(
+    const uint8_t * input
+) {
+    uint64_t value = 0;
+    int i;
+    for (i = 0; i < 8; i++) {
+        value = (value << 8) | input[i];
+    }
+    return value;
+}
+
+static void _store_be64(
+    uint8_t * output, uint64_t value
+) {
+    int i;
+    for (i = 7; i >= 0; i--) {
+        output[i] = (uint8_t) value;
+        value >>= 8;
+    }
+}
+
+/** Fills the keystream buffer with the next `blocks` AES blocks. The counter
+ * is the big-endian low half of the counter block; the high half is left
+ * untouched when it wraps. */
+static void _generate_keystream(
+    OlmAttachment * attachment,
+    size_t blocks
+) {
+    uint8_t * keystream = attachment->keystream;
+    uint8_t * counter_low = attachment->counter + AES256_IV_LENGTH / 2;
+    uint64_t counter = _load_be64(counter_low);
+    size_t i;
+
+    if (attachment->aes_instructions) {
+        _aes_ctr_blocks(attachment, keystream, blocks, counter);
+    } else {
+        for (i = 0; i < blocks; i++) {
+            uint8_t * block = keystream + i * AES_BLOCK_SIZE;
+            memcpy(block, attachment->counter, AES256_IV_LENGTH / 2);
+            _store_be64(block + AES256_IV_LENGTH / 2, counter + i);
+            aes_encrypt(block, block, attachment->key_schedule, AES_KEY_BITS);
+        }
+    }
+    _store_be64(counter_low, counter + blocks);
+    attachment->keystream_position = 0;
+    attachment->keystream_length = blocks * AES_BLOCK_SIZE;
+}
+
+/** XORs `length` bytes of input with the keystream. The bulk of the work is
+ * done on 64-bit words; memcpy keeps the accesses alignment-safe and compiles
+ * to plain loads and stores. */
+static void _xor_keystream(
+    const uint8_t * input, const uint8_t * keystream,
+    uint8_t * output, size_t length
+) {
+    size_t i = 0;
+    for (; i + sizeof(uint64_t) <= length; i += sizeof(uint64_t)) {
+        uint64_t data, key;
+        memcpy(&data, input + i, sizeof(data));
+        memcpy(&key, keystream + i, sizeof(key));
+        data ^= key;
+        memcpy(output + i, &data, sizeof(data));
+    }
+    for (; i < length; i++) {
+        output[i] = input[i] ^ keystream[i];
+    }
+}
+
+/** Adds data to the digest. With the SHA-256 instructions, whole blocks are
+ * hashed straight from the input, and the context is left exactly as
+ * sha256_update() would leave it so that sha256_final() can finish it. */
+static void _digest_update(
+    OlmAttachment * attachment,
+    const uint8_t * data, size_t length
+) {
+    SHA256_CTX * context = &attachment->sha256;
+    size_t blocks;
+
+    if (!attachment->sha256_instructions) {
+        sha256_update(context, data, length);
+        return;
+    }
+
+    if (context->datalen > 0) {
+        size_t needed = SHA256_BLOCK_LENGTH - context->datalen;
+        if (length < needed) {
+            memcpy(context->data + context->datalen, data, length);
+            context->datalen += length;
+            return;
+        }
+        memcpy(context->data + context->datalen, data, needed);
+        _sha256_blocks(context->state, context->data, 1);
+        context->bitlen += 8 * SHA256_BLOCK_LENGTH;
+        context->datalen = 0;
+        data += needed;
+        length -= needed;
+    }
+
+    blocks = length / SHA256_BLOCK_LENGTH;
+    if (blocks > 0) {
+        _sha256_blocks(context->state, data, blocks);
+        context->bitlen += (unsigned long long) blocks * 8 * SHA256_BLOCK_LENGTH;
+        data += blocks * SHA256_BLOCK_LENGTH;
+        length -= blocks * SHA256_BLOCK_LENGTH;
+    }
+
+    memcpy(context->data, data, length);
+    context->datalen = length;
+}
+
+/** Processes a run of data that fits in the buffered keystream. The digest
+ * always covers the ciphertext, so it is taken from the input before
+ * decrypting and from the output after encrypting. This keeps in-place
+ * operation correct. */
+static void _process(
+    OlmAttachment * attachment,
+    const uint8_t * input, uint8_t * output, size_t length
+) {
+    const uint8_t * keystream =
+        attachment->keystream + attachment->keystream_position;
+
+    if (attachment->mode == OLM_ATTACHMENT_DECRYPT) {
+        _digest_update(attachment, input, length);
+    }
+    _xor_keystream(input, keystream, output, length);
+    if (attachment->mode == OLM_ATTACHMENT_ENCRYPT) {
+        _digest_update(attachment, output, length);
+    }
+    attachment->keystream_position += length;
+}
+
+size_t olm_attachment_update(
+    OlmAttachment * attachment,
+    const void * input, size_t input_length,
+    void * output, size_t output_length
+) {
+    const uint8_t * in = (const uint8_t *) input;
+    uint8_t * out = (uint8_t *) output;
+    size_t remaining = input_length;
+
+    if (attachment->mode == OLM_ATTACHMENT_NONE) {
+        attachment->last_error = OLM_BAD_STATE;
+        return (size_t)-1;
+    }
+    if (output_length < input_length) {
+        attachment->last_error = OLM_OUTPUT_BUFFER_TOO_SMALL;
+        return (size_t)-1;
+    }
+
+    while (remaining > 0) {
+        size_t available =
+            attachment->keystream_length - attachment->keystream_position;
+        size_t length;
+
+        if (available == 0) {
+            size_t blocks = (remaining + AES_BLOCK_SIZE - 1) / AES_BLOCK_SIZE;
+            if (blocks > KEYSTREAM_BLOCKS) {
+                blocks = KEYSTREAM_BLOCKS;
+            }
+            _generate_keystream(attachment, blocks);
+            available = attachment->keystream_length;
+        }
+
+        length = remaining < available ? remaining : available;
+        _process(attachment, in, out, length);
+        in += length;
+        out += length;
+        remaining -= length;
+    }
+
+    attachment->processed_length += input_length;
+    OLM_METRICS_ADD(
+        attachment->mode == OLM_ATTACHMENT_ENCRYPT
+            ? OLM_METRICS_BYTES_ENCRYPTED : OLM_METRICS_BYTES_DECRYPTED,
+        input_length
+    );
+    return input_length;
+}
+
+uint64_t olm_attachment_processed_length(
+    OlmAttachment * attachment
+) {
+    return attachment->processed_length;
+}
+
+size_t olm_attachment_digest(
+    OlmAttachment * attachment,
+    void * digest, size_t digest_length
+) {
+    SHA256_CTX context;
+
+    if (attachment->mode == OLM_ATTACHMENT_NONE) {
+        attachment->last_error = OLM_BAD_STATE;
+        return (size_t)-1;
+    }
+    if (digest_length < SHA256_OUTPUT_LENGTH) {
+        attachment->last_error = OLM_OUTPUT_BUFFER_TOO_SMALL;
+        return (size_t)-1;
+    }
+
+    /* finalise a copy, so that the attachment can still be updated */
+    context = attachment->sha256;
+    sha256_final(&context, (BYTE *) digest);
+    _olm_unset(&context, sizeof(context));
+    return SHA256_OUTPUT_LENGTH;
+}
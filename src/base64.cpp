@@ -15,6 +15,17 @@
 #include "self_olm/base64.h"
 #include "self_olm/base64.hh"
 
+/* The bulk of the input is encoded and decoded with vector instructions when
+ * the CPU has them: SSSE3 or AVX2 on x86. They go through the input in
+ * blocks, and give the rest to the scalar code: the tail, a block with a
+ * character which isn't base64 (decoded the scalar way, so the output stays
+ * the same), and any block whose output would overwrite input not read yet. */
+#if defined(__GNUC__) && (defined(__x86_64__) || defined(__i386__))
+#define OLM_BASE64_X86
+#include <cpuid.h>
+#include <immintrin.h>
+#endif
+
 namespace {
 
 static const std::uint8_t ENCODE_BASE64[64] = {
@@ -42,16 +53,30 @@ static const std::uint8_t DECODE_BASE64[128] = {
     41, 42, 43, 44, 45, 46, 47, 48, 49, 50, 51,  E,  E,  E,  E,  E,
 };
 
-} // namespace
 
+/** true if the output bytes don't overlap the input from pos to end */
+inline bool disjoint(
+    std::uint8_t const * output, std::size_t output_length,
+    std::uint8_t const * pos, std::uint8_t const * end
+) {
+    std::uintptr_t out = reinterpret_cast<std::uintptr_t>(output);
+    return out + output_length <= reinterpret_cast<std::uintptr_t>(pos)
+        || out >= reinterpret_cast<std::uintptr_t>(end);
+}
 
-std::size_t olm::encode_base64_length(
-    std::size_t input_length
+/** true if the decoded output can be written in whole blocks: either it is
+ * behind the input, so a block never reaches input not read yet, or the
+ * buffers are apart */
+inline bool can_decode_blocks(
+    std::uint8_t const * input, std::size_t input_length,
+    std::uint8_t const * output
 ) {
-    return 4 * ((input_length + 2) / 3) + (input_length + 2) % 3 - 2;
+    return reinterpret_cast<std::uintptr_t>(output)
+            <= reinterpret_cast<std::uintptr_t>(input)
+        || disjoint(output, 0, input, input + input_length);
 }
 
-std::uint8_t * olm::encode_base64(
+std::uint8_t * encode_scalar(
     std::uint8_t const * input, std::size_t input_length,
     std::uint8_t * output
 ) {
@@ -89,19 +114,7 @@ std::uint8_t * olm::encode_base64(
     return result;
 }
 
-
-std::size_t olm::decode_base64_length(
-    std::size_t input_length
-) {
-    if (input_length % 4 == 1) {
-        return std::size_t(-1);
-    } else {
-        return 3 * ((input_length + 2) / 4) + (input_length + 2) % 4 - 2;
-    }
-}
-
-
-std::uint8_t const * olm::decode_base64(
+void decode_scalar(
     std::uint8_t const * input, std::size_t input_length,
     std::uint8_t * output
 ) {
@@ -132,9 +145,376 @@ std::uint8_t const * olm::decode_base64(
         }
         output[0] = value;
     }
+}
+
+#if defined(OLM_BASE64_X86)
+
+/* The x86 engines follow "Faster Base64 Encoding and Decoding Using AVX2
+ * Instructions" (Muła, Lemire): each group of three bytes is spread over a
+ * 32-bit lane and cut into four 6-bit indices with multiplications, and the
+ * characters are mapped from and to their values by adding an offset looked
+ * up from the high nibble. */
+
+__attribute__((target("ssse3")))
+inline __m128i encode_block_ssse3(__m128i input) {
+    const __m128i spread = _mm_set_epi8(
+        10, 11, 9, 10, 7, 8, 6, 7, 4, 5, 3, 4, 1, 2, 0, 1
+    );
+    /* reduce 0..51 to 0, 52..61 to 1..10, 62 to 11, 63 to 12, then 0..25
+     * to 13: the index of the offset from the index to the character */
+    const __m128i offsets = _mm_setr_epi8(
+        'a' - 26, '0' - 52, '0' - 52, '0' - 52, '0' - 52, '0' - 52,
+        '0' - 52, '0' - 52, '0' - 52, '0' - 52, '0' - 52, '+' - 62,
+        '/' - 63, 'A', 0, 0
+    );
+
+    __m128i in = _mm_shuffle_epi8(input, spread);
+    __m128i high = _mm_mulhi_epu16(
+        _mm_and_si128(in, _mm_set1_epi32(0x0fc0fc00)),
+        _mm_set1_epi32(0x04000040)
+    );
+    __m128i low = _mm_mullo_epi16(
+        _mm_and_si128(in, _mm_set1_epi32(0x003f03f0)),
+        _mm_set1_epi32(0x01000010)
+    );
+    __m128i indices = _mm_or_si128(high, low);
+
+    __m128i offset = _mm_subs_epu8(indices, _mm_set1_epi8(51));
+    __m128i upper = _mm_cmpgt_epi8(_mm_set1_epi8(26), indices);
+    offset = _mm_or_si128(offset, _mm_and_si128(upper, _mm_set1_epi8(13)));
+    return _mm_add_epi8(_mm_shuffle_epi8(offsets, offset), indices);
+}
+
+__attribute__((target("ssse3")))
+std::size_t encode_ssse3(
+    std::uint8_t const * input, std::size_t input_length,
+    std::uint8_t * output
+) {
+    std::uint8_t const * end = input + input_length;
+    std::uint8_t const * pos = input;
+    /* 12 bytes are encoded out of each 16 bytes load */
+    while (end - pos >= 16 && disjoint(output, 16, pos, end)) {
+        __m128i in = _mm_loadu_si128(reinterpret_cast<__m128i const *>(pos));
+        _mm_storeu_si128(
+            reinterpret_cast<__m128i *>(output), encode_block_ssse3(in)
+        );
+        pos += 12;
+        output += 16;
+    }
+    return pos - input;
+}
+
+__attribute__((target("avx2")))
+std::size_t encode_avx2(
+    std::uint8_t const * input, std::size_t input_length,
+    std::uint8_t * output
+) {
+    const __m256i spread = _mm256_broadcastsi128_si256(_mm_set_epi8(
+        10, 11, 9, 10, 7, 8, 6, 7, 4, 5, 3, 4, 1, 2, 0, 1
+    ));
+    const __m256i offsets = _mm256_broadcastsi128_si256(_mm_setr_epi8(
+        'a' - 26, '0' - 52, '0' - 52, '0' - 52, '0' - 52, '0' - 52,
+        '0' - 52, '0' - 52, '0' - 52, '0' - 52, '0' - 52, '+' - 62,
+        '/' - 63, 'A', 0, 0
+    ));
+
+    std::uint8_t const * end = input + input_length;
+    std::uint8_t const * pos = input;
+    /* each 128-bit lane encodes 12 bytes, the second lane is loaded from 12
+     * bytes in */
+    while (end - pos >= 28 && disjoint(output, 32, pos, end)) {
+        __m256i in = _mm256_inserti128_si256(
+            _mm256_castsi128_si256(
+                _mm_loadu_si128(reinterpret_cast<__m128i const *>(pos))
+            ),
+            _mm_loadu_si128(reinterpret_cast<__m128i const *>(pos + 12)),
+            1
+        );
+        in = _mm256_shuffle_epi8(in, spread);
+        __m256i high = _mm256_mulhi_epu16(
+            _mm256_and_si256(in, _mm256_set1_epi32(0x0fc0fc00)),
+            _mm256_set1_epi32(0x04000040)
+        );
+        __m256i low = _mm256_mullo_epi16(
+            _mm256_and_si256(in, _mm256_set1_epi32(0x003f03f0)),
+            _mm256_set1_epi32(0x01000010)
+        );
+        __m256i indices = _mm256_or_si256(high, low);
+
+        __m256i offset = _mm256_subs_epu8(indices, _mm256_set1_epi8(51));
+        __m256i upper = _mm256_cmpgt_epi8(_mm256_set1_epi8(26), indices);
+        offset = _mm256_or_si256(
+            offset, _mm256_and_si256(upper, _mm256_set1_epi8(13))
+        );
+        _mm256_storeu_si256(
+            reinterpret_cast<__m256i *>(output),
+            _mm256_add_epi8(_mm256_shuffle_epi8(offsets, offset), indices)
+        );
+        pos += 24;
+        output += 32;
+    }
+    return pos - input;
+}
+
+/* A character is valid if the bits looked up from its low and high nibbles
+ * have none in common. Its value is the character plus an offset looked up
+ * from the high nibble, with '/' moved to a nibble of its own. */
+#define OLM_BASE64_LUT_LOW \
+    0x15, 0x11, 0x11, 0x11, 0x11, 0x11, 0x11, 0x11, \
+    0x11, 0x11, 0x13, 0x1A, 0x1B, 0x1B, 0x1B, 0x1A
+#define OLM_BASE64_LUT_HIGH \
+    0x10, 0x10, 0x01, 0x02, 0x04, 0x08, 0x04, 0x08, \
+    0x10, 0x10, 0x10, 0x10, 0x10, 0x10, 0x10, 0x10
+#define OLM_BASE64_DECODE_OFFSETS \
+    0, 16, 19, 4, -65, -65, -71, -71, 0, 0, 0, 0, 0, 0, 0, 0
+
+__attribute__((target("ssse3")))
+std::size_t decode_ssse3(
+    std::uint8_t const * input, std::size_t input_length,
+    std::uint8_t * output
+) {
+    const __m128i lut_low = _mm_setr_epi8(OLM_BASE64_LUT_LOW);
+    const __m128i lut_high = _mm_setr_epi8(OLM_BASE64_LUT_HIGH);
+    const __m128i offsets = _mm_setr_epi8(OLM_BASE64_DECODE_OFFSETS);
+    const __m128i pack = _mm_setr_epi8(
+        2, 1, 0, 6, 5, 4, 10, 9, 8, 14, 13, 12, -1, -1, -1, -1
+    );
+    const __m128i nibble = _mm_set1_epi8(0x0F);
+
+    std::uint8_t const * end = input + (input_length / 4) * 4;
+    std::uint8_t const * output_end = output + (input_length / 4) * 3;
+    std::uint8_t const * pos = input;
+    /* 16 characters are decoded to 12 bytes, out of a 16 bytes store */
+    while (end - pos >= 16 && output_end - output >= 16) {
+        __m128i in = _mm_loadu_si128(reinterpret_cast<__m128i const *>(pos));
+        __m128i high = _mm_and_si128(_mm_srli_epi32(in, 4), nibble);
+        __m128i low = _mm_and_si128(in, nibble);
+        __m128i invalid = _mm_and_si128(
+            _mm_shuffle_epi8(lut_low, low), _mm_shuffle_epi8(lut_high, high)
+        );
+        if (_mm_movemask_epi8(
+                _mm_cmpgt_epi8(invalid, _mm_setzero_si128())
+        )) {
+            break;
+        }
+        __m128i slash = _mm_cmpeq_epi8(in, _mm_set1_epi8('/'));
+        __m128i values = _mm_add_epi8(
+            in, _mm_shuffle_epi8(offsets, _mm_add_epi8(slash, high))
+        );
+        /* merge the 6-bit values into 24-bit lanes, then pack the lanes */
+        values = _mm_maddubs_epi16(values, _mm_set1_epi32(0x01400140));
+        values = _mm_madd_epi16(values, _mm_set1_epi32(0x00011000));
+        _mm_storeu_si128(
+            reinterpret_cast<__m128i *>(output),
+            _mm_shuffle_epi8(values, pack)
+        );
+        pos += 16;
+        output += 12;
+    }
+    return pos - input;
+}
+
+__attribute__((target("avx2")))
+std::size_t decode_avx2(
+    std::uint8_t const * input, std::size_t input_length,
+    std::uint8_t * output
+) {
+    const __m256i lut_low = _mm256_broadcastsi128_si256(
+        _mm_setr_epi8(OLM_BASE64_LUT_LOW)
+    );
+    const __m256i lut_high = _mm256_broadcastsi128_si256(
+        _mm_setr_epi8(OLM_BASE64_LUT_HIGH)
+    );
+    const __m256i offsets = _mm256_broadcastsi128_si256(
+        _mm_setr_epi8(OLM_BASE64_DECODE_OFFSETS)
+    );
+    const __m256i pack = _mm256_broadcastsi128_si256(_mm_setr_epi8(
+        2, 1, 0, 6, 5, 4, 10, 9, 8, 14, 13, 12, -1, -1, -1, -1
+    ));
+    const __m256i lanes = _mm256_setr_epi32(0, 1, 2, 4, 5, 6, 7, 7);
+    const __m256i nibble = _mm256_set1_epi8(0x0F);
+
+    std::uint8_t const * end = input + (input_length / 4) * 4;
+    std::uint8_t const * output_end = output + (input_length / 4) * 3;
+    std::uint8_t const * pos = input;
+    /* 32 characters are decoded to 24 bytes, out of a 32 bytes store */
+    while (end - pos >= 32 && output_end - output >= 32) {
+        __m256i in = _mm256_loadu_si256(
+            reinterpret_cast<__m256i const *>(pos)
+        );
+        __m256i high = _mm256_and_si256(_mm256_srli_epi32(in, 4), nibble);
+        __m256i low = _mm256_and_si256(in, nibble);
+        __m256i invalid = _mm256_and_si256(
+            _mm256_shuffle_epi8(lut_low, low),
+            _mm256_shuffle_epi8(lut_high, high)
+        );
+        if (_mm256_movemask_epi8(
+                _mm256_cmpgt_epi8(invalid, _mm256_setzero_si256())
+        )) {
+            break;
+        }
+        __m256i slash = _mm256_cmpeq_epi8(in, _mm256_set1_epi8('/'));
+        __m256i values = _mm256_add_epi8(
+            in, _mm256_shuffle_epi8(offsets, _mm256_add_epi8(slash, high))
+        );
+        values = _mm256_maddubs_epi16(values, _mm256_set1_epi32(0x01400140));
+        values = _mm256_madd_epi16(values, _mm256_set1_epi32(0x00011000));
+        values = _mm256_shuffle_epi8(values, pack);
+        _mm256_storeu_si256(
+            reinterpret_cast<__m256i *>(output),
+            _mm256_permutevar8x32_epi32(values, lanes)
+        );
+        pos += 32;
+        output += 24;
+    }
+    return pos - input;
+}
+
+#undef OLM_BASE64_LUT_LOW
+#undef OLM_BASE64_LUT_HIGH
+#undef OLM_BASE64_DECODE_OFFSETS
+
+unsigned detect_engines() {
+    unsigned engines = 1u << olm::BASE64_SCALAR;
+    unsigned int eax, ebx, ecx, edx;
+
+    if (!__get_cpuid(1, &eax, &ebx, &ecx, &edx)) {
+        return engines;
+    }
+    if (ecx & bit_SSSE3) {
+        engines |= 1u << olm::BASE64_SSSE3;
+    }
+    /* AVX2 also needs the OS to save the YMM registers */
+    if ((ecx & bit_OSXSAVE) && (ecx & bit_AVX)
+            && __get_cpuid_max(0, NULL) >= 7) {
+        unsigned int xcr0, xcr0_high;
+        __asm__ ("xgetbv" : "=a" (xcr0), "=d" (xcr0_high) : "c" (0));
+        __cpuid_count(7, 0, eax, ebx, ecx, edx);
+        if ((xcr0 & 6) == 6 && (ebx & bit_AVX2)) {
+            engines |= 1u << olm::BASE64_AVX2;
+        }
+    }
+    return engines;
+}
+
+#else
+
+unsigned detect_engines() {
+    return 1u << olm::BASE64_SCALAR;
+}
+
+#endif
+
+unsigned supported_engines() {
+    static const unsigned engines = detect_engines();
+    return engines;
+}
+
+} // namespace
+
+
+olm::Base64Engine olm::base64_engine() {
+    static const Base64Engine engine =
+        base64_engine_supported(BASE64_AVX2) ? BASE64_AVX2
+        : base64_engine_supported(BASE64_SSSE3) ? BASE64_SSSE3
+        : BASE64_SCALAR;
+    return engine;
+}
+
+bool olm::base64_engine_supported(
+    Base64Engine engine
+) {
+    return (supported_engines() >> engine) & 1;
+}
+
+
+std::size_t olm::encode_base64_length(
+    std::size_t input_length
+) {
+    return 4 * ((input_length + 2) / 3) + (input_length + 2) % 3 - 2;
+}
+
+std::uint8_t * olm::encode_base64(
+    Base64Engine engine,
+    std::uint8_t const * input, std::size_t input_length,
+    std::uint8_t * output
+) {
+    std::size_t done = 0;
+    switch (engine) {
+#if defined(OLM_BASE64_X86)
+    case BASE64_SSSE3:
+        done = encode_ssse3(input, input_length, output);
+        break;
+    case BASE64_AVX2:
+        /* the blocks left are smaller than an AVX2 block, but can still be
+         * worth a SSSE3 one */
+        done = encode_avx2(input, input_length, output);
+        done += encode_ssse3(
+            input + done, input_length - done, output + done / 3 * 4
+        );
+        break;
+#endif
+    default:
+        break;
+    }
+    return encode_scalar(
+        input + done, input_length - done, output + done / 3 * 4
+    );
+}
+
+std::uint8_t * olm::encode_base64(
+    std::uint8_t const * input, std::size_t input_length,
+    std::uint8_t * output
+) {
+    return encode_base64(base64_engine(), input, input_length, output);
+}
+
+
+std::size_t olm::decode_base64_length(
+    std::size_t input_length
+) {
+    if (input_length % 4 == 1) {
+        return std::size_t(-1);
+    } else {
+        return 3 * ((input_length + 2) / 4) + (input_length + 2) % 4 - 2;
+    }
+}
+
+
+std::uint8_t const * olm::decode_base64(
+    Base64Engine engine,
+    std::uint8_t const * input, std::size_t input_length,
+    std::uint8_t * output
+) {
+    std::size_t done = 0;
+    if (can_decode_blocks(input, input_length, output)) {
+        switch (engine) {
+#if defined(OLM_BASE64_X86)
+        case BASE64_SSSE3:
+            done = decode_ssse3(input, input_length, output);
+            break;
+        case BASE64_AVX2:
+            done = decode_avx2(input, input_length, output);
+            done += decode_ssse3(
+                input + done, input_length - done, output + done / 4 * 3
+            );
+            break;
+#endif
+        default:
+            break;
+        }
+    }
+    decode_scalar(input + done, input_length - done, output + done / 4 * 3);
     return input + input_length;
 }
 
+std::uint8_t const * olm::decode_base64(
+    std::uint8_t const * input, std::size_t input_length,
+    std::uint8_t * output
+) {
+    return decode_base64(base64_engine(), input, input_length, output);
+}
+
 
 // implementations of base64.h
 
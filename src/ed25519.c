@@ -20,3 +20,65 @@
 #include "ed25519/src/sha512.c"
 #include "ed25519/src/verify.c"
 #include "ed25519/src/sign.c"
+
+#include "self_olm/crypto.h"
+
+#include <string.h>
+
+/* the decompressed point is stored as the ge_p3 of the library */
+typedef char ed25519_point_length_check[
+    (sizeof(ge_p3) == ED25519_POINT_LENGTH) ? 1 : -1
+];
+
+void _olm_crypto_ed25519_decompress(
+    const struct _olm_ed25519_public_key *their_key,
+    struct _olm_ed25519_public_key_point *their_point
+) {
+    ge_p3 A;
+
+    /* as ed25519_verify(), which works with the negated point */
+    if (ge_frombytes_negate_vartime(&A, their_key->public_key) != 0) {
+        memset(their_point->point, 0, sizeof(their_point->point));
+        their_point->state = -1;
+        return;
+    }
+
+    memcpy(their_point->point, &A, sizeof(A));
+    their_point->state = 1;
+}
+
+int _olm_crypto_ed25519_verify_point(
+    const struct _olm_ed25519_public_key *their_key,
+    struct _olm_ed25519_public_key_point *their_point,
+    const uint8_t * message, size_t message_length,
+    const uint8_t * signature
+) {
+    unsigned char h[64];
+    unsigned char checker[32];
+    sha512_context hash;
+    ge_p3 A;
+    ge_p2 R;
+
+    if (their_point->state == 0) {
+        _olm_crypto_ed25519_decompress(their_key, their_point);
+    }
+
+    if (their_point->state != 1 || (signature[63] & 224)) {
+        return 0;
+    }
+
+    memcpy(&A, their_point->point, sizeof(A));
+
+    /* the rest of ed25519_verify() */
+    sha512_init(&hash);
+    sha512_update(&hash, signature, 32);
+    sha512_update(&hash, their_key->public_key, 32);
+    sha512_update(&hash, message, message_length);
+    sha512_final(&hash, h);
+
+    sc_reduce(h);
+    ge_double_scalarmult_vartime(&R, h, &A, signature + 32);
+    ge_tobytes(checker, &R);
+
+    return consttime_equal(checker, signature);
+}
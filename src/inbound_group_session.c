@@ -24,15 +24,26 @@
 #include "self_olm/megolm.h"
 #include "self_olm/memory.h"
 #include "self_olm/message.h"
+#include "self_olm/metrics.h"
+#include "self_olm/probes.h"
 #include "self_olm/pickle.h"
 #include "self_olm/pickle_encoding.h"
 
 
 #define OLM_PROTOCOL_VERSION     3
 #define GROUP_SESSION_ID_LENGTH  ED25519_PUBLIC_KEY_LENGTH
-#define PICKLE_VERSION           2
+#define PICKLE_VERSION           3
+/** the pickle version written when the seen indices aren't tracked */
+#define PICKLE_VERSION_UNTRACKED 2
 #define SESSION_KEY_VERSION      2
 #define SESSION_EXPORT_VERSION   1
+#define MAX_SEEN_INDEX_RANGES    32
+
+/** an inclusive run of message indices */
+struct _OlmIndexRange {
+    uint32_t first;
+    uint32_t last;
+};
 
 struct OlmInboundGroupSession {
     /** our earliest known ratchet value */
@@ -44,6 +55,12 @@ struct OlmInboundGroupSession {
     /** The ed25519 signing key */
     struct _olm_ed25519_public_key signing_key;
 
+    /**
+     * The signing key decompressed for the signature checks. It isn't
+     * pickled: it is rebuilt by the first check after the key is set.
+     */
+    struct _olm_ed25519_public_key_point signing_key_point;
+
     /**
      * Have we ever seen any evidence that this is a valid session?
      * (either because the original session share was signed, or because we
@@ -55,6 +72,33 @@ struct OlmInboundGroupSession {
      */
     int signing_key_verified;
 
+    /** Should we record the message indices we have decrypted? */
+    int track_seen_indices;
+
+    /**
+     * The message indices we have decrypted, as sorted, disjoint and
+     * non-adjacent runs. When the table is full the lowest run is dropped
+     * and folded into seen_floor.
+     */
+    struct _OlmIndexRange seen_ranges[MAX_SEEN_INDEX_RANGES];
+    uint32_t num_seen_ranges;
+
+    /**
+     * Every index below this one is reported as seen, whether it was
+     * decrypted or not: the runs covering them have been forgotten.
+     */
+    uint32_t seen_floor;
+
+    enum OlmErrorCode last_error;
+};
+
+struct OlmParsedGroupMessage {
+    /** the base64-decoded message, NULL if it couldn't be parsed */
+    const uint8_t *input;
+    size_t input_length;
+
+    uint32_t message_index;
+
     enum OlmErrorCode last_error;
 };
 
@@ -76,6 +120,12 @@ const char *olm_inbound_group_session_last_error(
     return _olm_error_to_string(session->last_error);
 }
 
+enum OlmErrorCode olm_inbound_group_session_last_error_code(
+    const OlmInboundGroupSession *session
+) {
+    return session->last_error;
+}
+
 size_t olm_clear_inbound_group_session(
     OlmInboundGroupSession *session
 ) {
@@ -118,11 +168,13 @@ static size_t _init_group_session_keys(
     memcpy(
         session->signing_key.public_key, ptr, ED25519_PUBLIC_KEY_LENGTH
     );
+    session->signing_key_point.state = 0;
     ptr += ED25519_PUBLIC_KEY_LENGTH;
 
     if (!export_format) {
-        if (!_olm_crypto_ed25519_verify(&session->signing_key, key_buf,
-                                        ptr - key_buf, ptr)) {
+        if (!_olm_crypto_ed25519_verify_point(&session->signing_key,
+                                              &session->signing_key_point,
+                                              key_buf, ptr - key_buf, ptr)) {
             session->last_error = OLM_BAD_SIGNATURE;
             return (size_t)-1;
         }
@@ -190,6 +242,12 @@ static size_t raw_pickle_length(
     length += megolm_pickle_length(&session->latest_ratchet);
     length += _olm_pickle_ed25519_public_key_length(&session->signing_key);
     length += _olm_pickle_bool_length(session->signing_key_verified);
+    if (session->track_seen_indices) {
+        length += _olm_pickle_bool_length(session->track_seen_indices);
+        length += _olm_pickle_uint32_length(session->seen_floor);
+        length += _olm_pickle_uint32_length(session->num_seen_ranges);
+        length += session->num_seen_ranges * 2 * _olm_pickle_uint32_length(0);
+    }
     return length;
 }
 
@@ -199,7 +257,7 @@ size_t olm_pickle_inbound_group_session_length(
     return _olm_enc_output_length(raw_pickle_length(session));
 }
 
-size_t olm_pickle_inbound_group_session(
+static size_t _pickle(
     OlmInboundGroupSession *session,
     void const * key, size_t key_length,
     void * pickled, size_t pickled_length
@@ -213,16 +271,70 @@ size_t olm_pickle_inbound_group_session(
     }
 
     pos = _olm_enc_output_pos(pickled, raw_length);
-    pos = _olm_pickle_uint32(pos, PICKLE_VERSION);
+    /* sessions which don't track the seen indices stay readable by
+     * versions which don't know about them */
+    pos = _olm_pickle_uint32(
+        pos, session->track_seen_indices ? PICKLE_VERSION : PICKLE_VERSION_UNTRACKED
+    );
     pos = megolm_pickle(&session->initial_ratchet, pos);
     pos = megolm_pickle(&session->latest_ratchet, pos);
     pos = _olm_pickle_ed25519_public_key(pos, &session->signing_key);
     pos = _olm_pickle_bool(pos, session->signing_key_verified);
+    if (session->track_seen_indices) {
+        pos = _olm_pickle_bool(pos, session->track_seen_indices);
+        pos = _olm_pickle_uint32(pos, session->seen_floor);
+        pos = _olm_pickle_uint32(pos, session->num_seen_ranges);
+        for (uint32_t i = 0; i < session->num_seen_ranges; i++) {
+            pos = _olm_pickle_uint32(pos, session->seen_ranges[i].first);
+            pos = _olm_pickle_uint32(pos, session->seen_ranges[i].last);
+        }
+    }
 
     return _olm_enc_output(key, key_length, pickled, raw_length);
 }
 
-size_t olm_unpickle_inbound_group_session(
+size_t olm_pickle_inbound_group_session(
+    OlmInboundGroupSession *session,
+    void const * key, size_t key_length,
+    void * pickled, size_t pickled_length
+) {
+    size_t result;
+    OLM_PROBE3(
+        pickle_start, OLM_PROBE_INBOUND_GROUP_SESSION, session, pickled_length
+    );
+    result = _pickle(session, key, key_length, pickled, pickled_length);
+    OLM_PROBE4(
+        pickle_done, OLM_PROBE_INBOUND_GROUP_SESSION, session, result,
+        OLM_PROBE_ERROR(result, session->last_error)
+    );
+    return result;
+}
+
+/**
+ * check that the seen runs are sorted, disjoint, non-adjacent and above the
+ * floor, as _record_seen_index() keeps them
+ */
+static int _are_seen_ranges_valid(
+    const OlmInboundGroupSession *session
+) {
+    const struct _OlmIndexRange *ranges = session->seen_ranges;
+
+    for (uint32_t i = 0; i < session->num_seen_ranges; i++) {
+        if (ranges[i].first > ranges[i].last) {
+            return 0;
+        }
+        if (i == 0 && ranges[i].first < session->seen_floor) {
+            return 0;
+        }
+        if (i > 0 && (ranges[i].first <= ranges[i - 1].last
+                      || ranges[i].first - ranges[i - 1].last == 1)) {
+            return 0;
+        }
+    }
+    return 1;
+}
+
+static size_t _unpickle(
     OlmInboundGroupSession *session,
     void const * key, size_t key_length,
     void * pickled, size_t pickled_length
@@ -248,6 +360,7 @@ size_t olm_unpickle_inbound_group_session(
     pos = megolm_unpickle(&session->initial_ratchet, pos, end);
     pos = megolm_unpickle(&session->latest_ratchet, pos, end);
     pos = _olm_unpickle_ed25519_public_key(pos, end, &session->signing_key);
+    session->signing_key_point.state = 0;
 
     if (pickle_version == 1) {
         /* pickle v1 had no signing_key_verified field (all keyshares were
@@ -257,6 +370,27 @@ size_t olm_unpickle_inbound_group_session(
         pos = _olm_unpickle_bool(pos, end, &(session->signing_key_verified));
     }
 
+    session->track_seen_indices = 0;
+    session->seen_floor = 0;
+    session->num_seen_ranges = 0;
+    if (pickle_version >= 3) {
+        pos = _olm_unpickle_bool(pos, end, &(session->track_seen_indices));
+        pos = _olm_unpickle_uint32(pos, end, &(session->seen_floor));
+        pos = _olm_unpickle_uint32(pos, end, &(session->num_seen_ranges));
+        if (session->num_seen_ranges > MAX_SEEN_INDEX_RANGES) {
+            session->last_error = OLM_CORRUPTED_PICKLE;
+            return (size_t)-1;
+        }
+        for (uint32_t i = 0; i < session->num_seen_ranges; i++) {
+            pos = _olm_unpickle_uint32(pos, end, &(session->seen_ranges[i].first));
+            pos = _olm_unpickle_uint32(pos, end, &(session->seen_ranges[i].last));
+        }
+        if (!_are_seen_ranges_valid(session)) {
+            session->last_error = OLM_CORRUPTED_PICKLE;
+            return (size_t)-1;
+        }
+    }
+
     if (end != pos) {
         /* We had the wrong number of bytes in the input. */
         session->last_error = OLM_CORRUPTED_PICKLE;
@@ -266,6 +400,23 @@ size_t olm_unpickle_inbound_group_session(
     return pickled_length;
 }
 
+size_t olm_unpickle_inbound_group_session(
+    OlmInboundGroupSession *session,
+    void const * key, size_t key_length,
+    void * pickled, size_t pickled_length
+) {
+    size_t result;
+    OLM_PROBE3(
+        unpickle_start, OLM_PROBE_INBOUND_GROUP_SESSION, session, pickled_length
+    );
+    result = _unpickle(session, key, key_length, pickled, pickled_length);
+    OLM_PROBE4(
+        unpickle_done, OLM_PROBE_INBOUND_GROUP_SESSION, session, result,
+        OLM_PROBE_ERROR(result, session->last_error)
+    );
+    return result;
+}
+
 /**
  * get the max plaintext length in an un-base64-ed message
  */
@@ -317,35 +468,115 @@ size_t olm_group_decrypt_max_plaintext_length(
  * to the relevant index. Returns 0 on success, -1 on error
  */
 static size_t _get_megolm(
-    OlmInboundGroupSession *session, uint32_t message_index, Megolm *result
+    const Megolm *initial_ratchet, Megolm *latest_ratchet,
+    uint32_t message_index, Megolm *result, enum OlmErrorCode *error
 ) {
     /* pick a megolm instance to use. If we're at or beyond the latest ratchet
      * value, use that */
-    if ((message_index - session->latest_ratchet.counter) < (1U << 31)) {
-        megolm_advance_to(&session->latest_ratchet, message_index);
-        *result = session->latest_ratchet;
+    if ((message_index - latest_ratchet->counter) < (1U << 31)) {
+        megolm_advance_to(latest_ratchet, message_index);
+        *result = *latest_ratchet;
         return 0;
-    } else if ((message_index - session->initial_ratchet.counter) >= (1U << 31)) {
+    } else if ((message_index - initial_ratchet->counter) >= (1U << 31)) {
         /* the counter is before our intial ratchet - we can't decode this. */
-        session->last_error = OLM_UNKNOWN_MESSAGE_INDEX;
+        *error = OLM_UNKNOWN_MESSAGE_INDEX;
         return (size_t)-1;
     } else {
         /* otherwise, start from the initial megolm. Take a copy so that we
          * don't overwrite the initial megolm */
-        *result = session->initial_ratchet;
+        *result = *initial_ratchet;
         megolm_advance_to(result, message_index);
         return 0;
     }
 }
 
+static int _has_seen_index(
+    const OlmInboundGroupSession *session, uint32_t message_index
+) {
+    if (message_index < session->seen_floor) {
+        return 1;
+    }
+    for (uint32_t i = 0; i < session->num_seen_ranges; i++) {
+        if (message_index < session->seen_ranges[i].first) {
+            return 0;
+        }
+        if (message_index <= session->seen_ranges[i].last) {
+            return 1;
+        }
+    }
+    return 0;
+}
+
 /**
- * decrypt an un-base64-ed message
+ * add an index to the seen runs, merging it with its neighbours
  */
-static size_t _decrypt(
-    OlmInboundGroupSession *session,
+static void _record_seen_index(
+    OlmInboundGroupSession *session, uint32_t message_index
+) {
+    struct _OlmIndexRange *ranges = session->seen_ranges;
+    uint32_t count = session->num_seen_ranges;
+    uint32_t i = 0;
+
+    if (message_index < session->seen_floor) {
+        return;
+    }
+
+    /* find the first run which ends at, after, or just before this index */
+    while (i < count && ranges[i].last < message_index
+           && message_index - ranges[i].last > 1) {
+        i++;
+    }
+
+    if (i < count && ranges[i].last >= message_index) {
+        if (ranges[i].first <= message_index) {
+            return;
+        }
+        if (ranges[i].first - message_index == 1) {
+            ranges[i].first = message_index;
+            return;
+        }
+    } else if (i < count) {
+        /* the index extends run i; it may now touch the next run */
+        ranges[i].last = message_index;
+        if (i + 1 < count && ranges[i + 1].first - message_index == 1) {
+            ranges[i].last = ranges[i + 1].last;
+            memmove(&ranges[i + 1], &ranges[i + 2],
+                    (count - i - 2) * sizeof(ranges[0]));
+            session->num_seen_ranges--;
+        }
+        return;
+    }
+
+    /* insert a new run at position i */
+    if (count == MAX_SEEN_INDEX_RANGES) {
+        /* the table is full: raise the floor rather than forget an index,
+         * so that a replay is never reported as unseen */
+        if (i == 0) {
+            session->seen_floor = message_index + 1;
+            return;
+        }
+        session->seen_floor = ranges[0].last + 1;
+        memmove(&ranges[0], &ranges[1], (i - 1) * sizeof(ranges[0]));
+        i--;
+    } else {
+        memmove(&ranges[i + 1], &ranges[i], (count - i) * sizeof(ranges[0]));
+        session->num_seen_ranges++;
+    }
+    ranges[i].first = message_index;
+    ranges[i].last = message_index;
+}
+
+/**
+ * check and decrypt an un-base64-ed message with the given ratchets. The
+ * latest ratchet is advanced if the message is at or beyond it.
+ */
+static size_t _decrypt_with_ratchets(
+    const Megolm *initial_ratchet, Megolm *latest_ratchet,
+    const struct _olm_ed25519_public_key *signing_key,
+    struct _olm_ed25519_public_key_point *signing_key_point,
     uint8_t * message, size_t message_length,
     uint8_t * plaintext, size_t max_plaintext_length,
-    uint32_t * message_index
+    uint32_t * message_index, enum OlmErrorCode *error
 ) {
     struct _OlmDecodeGroupMessageResults decoded_results;
     size_t max_length, r;
@@ -358,12 +589,12 @@ static size_t _decrypt(
         &decoded_results);
 
     if (decoded_results.version != OLM_PROTOCOL_VERSION) {
-        session->last_error = OLM_BAD_MESSAGE_VERSION;
+        *error = OLM_BAD_MESSAGE_VERSION;
         return (size_t)-1;
     }
 
     if (!decoded_results.has_message_index || !decoded_results.ciphertext) {
-        session->last_error = OLM_BAD_MESSAGE_FORMAT;
+        *error = OLM_BAD_MESSAGE_FORMAT;
         return (size_t)-1;
     }
 
@@ -377,13 +608,13 @@ static size_t _decrypt(
      * than "BAD_SIGNATURE" in this case.
      */
     message_length -= ED25519_SIGNATURE_LENGTH;
-    r = _olm_crypto_ed25519_verify(
-        &session->signing_key,
+    r = _olm_crypto_ed25519_verify_point(
+        signing_key, signing_key_point,
         message, message_length,
         message + message_length
     );
     if (!r) {
-        session->last_error = OLM_BAD_SIGNATURE;
+        *error = OLM_BAD_SIGNATURE;
         return (size_t)-1;
     }
 
@@ -392,11 +623,14 @@ static size_t _decrypt(
         decoded_results.ciphertext_length
     );
     if (max_plaintext_length < max_length) {
-        session->last_error = OLM_OUTPUT_BUFFER_TOO_SMALL;
+        *error = OLM_OUTPUT_BUFFER_TOO_SMALL;
         return (size_t)-1;
     }
 
-    r = _get_megolm(session, decoded_results.message_index, &megolm);
+    r = _get_megolm(
+        initial_ratchet, latest_ratchet, decoded_results.message_index,
+        &megolm, error
+    );
     if (r == (size_t)-1) {
         return r;
     }
@@ -412,7 +646,34 @@ static size_t _decrypt(
 
     _olm_unset(&megolm, sizeof(megolm));
     if (r == (size_t)-1) {
-        session->last_error = OLM_BAD_MESSAGE_MAC;
+        *error = OLM_BAD_MESSAGE_MAC;
+        return r;
+    }
+
+    OLM_METRICS_ADD(OLM_METRICS_BYTES_DECRYPTED, r);
+    return r;
+}
+
+/**
+ * decrypt an un-base64-ed message
+ */
+static size_t _decrypt_message(
+    OlmInboundGroupSession *session,
+    uint8_t * message, size_t message_length,
+    uint8_t * plaintext, size_t max_plaintext_length,
+    uint32_t * message_index, int * seen_before
+) {
+    uint32_t local_index;
+    uint32_t *index = (message_index != NULL) ? message_index : &local_index;
+    size_t r = _decrypt_with_ratchets(
+        &session->initial_ratchet, &session->latest_ratchet,
+        &session->signing_key, &session->signing_key_point,
+        message, message_length,
+        plaintext, max_plaintext_length,
+        index, &session->last_error
+    );
+
+    if (r == (size_t)-1) {
         return r;
     }
 
@@ -420,9 +681,36 @@ static size_t _decrypt(
      * session appears valid. */
     session->signing_key_verified = 1;
 
+    if (session->track_seen_indices) {
+        if (seen_before != NULL) {
+            *seen_before = _has_seen_index(session, *index);
+        }
+        _record_seen_index(session, *index);
+    }
+
     return r;
 }
 
+static size_t _decrypt(
+    OlmInboundGroupSession *session,
+    uint8_t * message, size_t message_length,
+    uint8_t * plaintext, size_t max_plaintext_length,
+    uint32_t * message_index, int * seen_before
+) {
+    size_t result;
+    OLM_PROBE2(group_decrypt_start, session, message_length);
+    result = _decrypt_message(
+        session, message, message_length,
+        plaintext, max_plaintext_length,
+        message_index, seen_before
+    );
+    OLM_PROBE3(
+        group_decrypt_done, session, result,
+        OLM_PROBE_ERROR(result, session->last_error)
+    );
+    return result;
+}
+
 size_t olm_group_decrypt(
     OlmInboundGroupSession *session,
     uint8_t * message, size_t message_length,
@@ -440,7 +728,293 @@ size_t olm_group_decrypt(
     return _decrypt(
         session, message, raw_message_length,
         plaintext, max_plaintext_length,
-        message_index
+        message_index, NULL
+    );
+}
+
+size_t olm_group_decrypt_check_seen(
+    OlmInboundGroupSession *session,
+    uint8_t * message, size_t message_length,
+    uint8_t * plaintext, size_t max_plaintext_length,
+    uint32_t * message_index, int * seen_before
+) {
+    size_t raw_message_length;
+
+    if (seen_before != NULL) {
+        *seen_before = 0;
+    }
+
+    raw_message_length = _olm_decode_base64(message, message_length, message);
+    if (raw_message_length == (size_t)-1) {
+        session->last_error = OLM_INVALID_BASE64;
+        return (size_t)-1;
+    }
+
+    return _decrypt(
+        session, message, raw_message_length,
+        plaintext, max_plaintext_length,
+        message_index, seen_before
+    );
+}
+
+size_t olm_group_decrypt_raw_max_plaintext_length(
+    OlmInboundGroupSession *session,
+    uint8_t const * message, size_t message_length
+) {
+    /* the decoding only reads the message */
+    return _decrypt_max_plaintext_length(
+        session, (uint8_t *)message, message_length
+    );
+}
+
+size_t olm_group_decrypt_raw(
+    OlmInboundGroupSession *session,
+    uint8_t const * message, size_t message_length,
+    uint8_t * plaintext, size_t max_plaintext_length,
+    uint32_t * message_index, int * seen_before
+) {
+    if (seen_before != NULL) {
+        *seen_before = 0;
+    }
+
+    /* the signature check and the decryption only read the message */
+    return _decrypt(
+        session, (uint8_t *)message, message_length,
+        plaintext, max_plaintext_length,
+        message_index, seen_before
+    );
+}
+
+/** a private copy of the ratchets of a session */
+struct _OlmGroupSessionSnapshot {
+    Megolm initial_ratchet;
+    Megolm latest_ratchet;
+    struct _olm_ed25519_public_key signing_key;
+    struct _olm_ed25519_public_key_point signing_key_point;
+};
+
+size_t olm_inbound_group_session_snapshot_length(void) {
+    return sizeof(struct _OlmGroupSessionSnapshot);
+}
+
+size_t olm_inbound_group_session_snapshot(
+    const OlmInboundGroupSession *session,
+    void * snapshot, size_t snapshot_length
+) {
+    struct _OlmGroupSessionSnapshot *copy = snapshot;
+
+    if (snapshot_length < sizeof(struct _OlmGroupSessionSnapshot)) {
+        return (size_t)-1;
+    }
+
+    copy->initial_ratchet = session->initial_ratchet;
+    copy->latest_ratchet = session->latest_ratchet;
+    copy->signing_key = session->signing_key;
+    copy->signing_key_point = session->signing_key_point;
+    return sizeof(struct _OlmGroupSessionSnapshot);
+}
+
+static size_t _decrypt_snapshot(
+    void * snapshot, size_t snapshot_length,
+    uint8_t * message, size_t message_length,
+    uint8_t * plaintext, size_t max_plaintext_length,
+    uint32_t * message_index, enum OlmErrorCode * error
+) {
+    struct _OlmGroupSessionSnapshot *copy = snapshot;
+    size_t raw_message_length;
+
+    if (snapshot_length < sizeof(struct _OlmGroupSessionSnapshot)) {
+        *error = OLM_BAD_STATE;
+        return (size_t)-1;
+    }
+
+    raw_message_length = _olm_decode_base64(message, message_length, message);
+    if (raw_message_length == (size_t)-1) {
+        *error = OLM_INVALID_BASE64;
+        return (size_t)-1;
+    }
+
+    *error = OLM_SUCCESS;
+    return _decrypt_with_ratchets(
+        &copy->initial_ratchet, &copy->latest_ratchet,
+        &copy->signing_key, &copy->signing_key_point,
+        message, raw_message_length,
+        plaintext, max_plaintext_length,
+        message_index, error
+    );
+}
+
+size_t olm_group_decrypt_snapshot(
+    void * snapshot, size_t snapshot_length,
+    uint8_t * message, size_t message_length,
+    uint8_t * plaintext, size_t max_plaintext_length,
+    uint32_t * message_index, enum OlmErrorCode * error
+) {
+    size_t result;
+    OLM_PROBE2(group_decrypt_start, snapshot, message_length);
+    result = _decrypt_snapshot(
+        snapshot, snapshot_length, message, message_length,
+        plaintext, max_plaintext_length, message_index, error
+    );
+    OLM_PROBE3(
+        group_decrypt_done, snapshot, result,
+        OLM_PROBE_ERROR(result, *error)
+    );
+    return result;
+}
+
+size_t olm_inbound_group_session_publish_snapshot(
+    OlmInboundGroupSession *session,
+    const void * snapshot, size_t snapshot_length,
+    uint32_t message_index, int * seen_before
+) {
+    const struct _OlmGroupSessionSnapshot *copy = snapshot;
+    uint32_t ahead;
+
+    if (seen_before != NULL) {
+        *seen_before = 0;
+    }
+
+    if (snapshot_length < sizeof(struct _OlmGroupSessionSnapshot)) {
+        session->last_error = OLM_BAD_STATE;
+        return (size_t)-1;
+    }
+
+    /* another decryption may have advanced the session further meanwhile:
+     * only move forward, with the same wrap-around rule as _get_megolm() */
+    ahead = copy->latest_ratchet.counter - session->latest_ratchet.counter;
+    if (ahead != 0 && ahead < (1U << 31)) {
+        session->latest_ratchet = copy->latest_ratchet;
+    }
+
+    /* keep the point the snapshot decompressed, if the session has none */
+    if (session->signing_key_point.state == 0
+            && !memcmp(&session->signing_key, &copy->signing_key,
+                       sizeof(session->signing_key))) {
+        session->signing_key_point = copy->signing_key_point;
+    }
+
+    session->signing_key_verified = 1;
+
+    if (session->track_seen_indices) {
+        if (seen_before != NULL) {
+            *seen_before = _has_seen_index(session, message_index);
+        }
+        _record_seen_index(session, message_index);
+    }
+
+    return 0;
+}
+
+size_t olm_parsed_group_message_size(void) {
+    return sizeof(OlmParsedGroupMessage);
+}
+
+OlmParsedGroupMessage * olm_parsed_group_message(
+    void *memory
+) {
+    OlmParsedGroupMessage *parsed = memory;
+    olm_clear_parsed_group_message(parsed);
+    return parsed;
+}
+
+const char *olm_parsed_group_message_last_error(
+    const OlmParsedGroupMessage *parsed
+) {
+    return _olm_error_to_string(parsed->last_error);
+}
+
+enum OlmErrorCode olm_parsed_group_message_last_error_code(
+    const OlmParsedGroupMessage *parsed
+) {
+    return parsed->last_error;
+}
+
+size_t olm_clear_parsed_group_message(
+    OlmParsedGroupMessage *parsed
+) {
+    _olm_unset(parsed, sizeof(OlmParsedGroupMessage));
+    return sizeof(OlmParsedGroupMessage);
+}
+
+size_t olm_parse_group_message(
+    OlmParsedGroupMessage *parsed,
+    uint8_t * message, size_t message_length
+) {
+    struct _OlmDecodeGroupMessageResults decoded_results;
+    size_t raw_length;
+
+    parsed->input = NULL;
+
+    raw_length = _olm_decode_base64(message, message_length, message);
+    if (raw_length == (size_t)-1) {
+        parsed->last_error = OLM_INVALID_BASE64;
+        return (size_t)-1;
+    }
+
+    _olm_decode_group_message(
+        message, raw_length,
+        megolm_cipher->ops->mac_length(megolm_cipher),
+        ED25519_SIGNATURE_LENGTH,
+        &decoded_results);
+
+    if (decoded_results.version != OLM_PROTOCOL_VERSION) {
+        parsed->last_error = OLM_BAD_MESSAGE_VERSION;
+        return (size_t)-1;
+    }
+
+    if (!decoded_results.has_message_index || !decoded_results.ciphertext) {
+        parsed->last_error = OLM_BAD_MESSAGE_FORMAT;
+        return (size_t)-1;
+    }
+
+    parsed->input = message;
+    parsed->input_length = raw_length;
+    parsed->message_index = decoded_results.message_index;
+    return 0;
+}
+
+uint32_t olm_parsed_group_message_index(
+    const OlmParsedGroupMessage *parsed
+) {
+    return parsed->message_index;
+}
+
+size_t olm_group_decrypt_parsed_max_plaintext_length(
+    OlmInboundGroupSession *session,
+    const OlmParsedGroupMessage *parsed
+) {
+    if (!parsed->input) {
+        session->last_error = OLM_BAD_STATE;
+        return (size_t)-1;
+    }
+
+    /* the decoding only reads the message */
+    return _decrypt_max_plaintext_length(
+        session, (uint8_t *)parsed->input, parsed->input_length
+    );
+}
+
+size_t olm_group_decrypt_parsed(
+    OlmInboundGroupSession *session,
+    const OlmParsedGroupMessage *parsed,
+    uint8_t * plaintext, size_t max_plaintext_length,
+    uint32_t * message_index, int * seen_before
+) {
+    if (seen_before != NULL) {
+        *seen_before = 0;
+    }
+
+    if (!parsed->input) {
+        session->last_error = OLM_BAD_STATE;
+        return (size_t)-1;
+    }
+
+    /* the signature check and the decryption only read the message */
+    return _decrypt(
+        session, (uint8_t *)parsed->input, parsed->input_length,
+        plaintext, max_plaintext_length,
+        message_index, seen_before
     );
 }
 
@@ -476,6 +1050,29 @@ int olm_inbound_group_session_is_verified(
     return session->signing_key_verified;
 }
 
+void olm_inbound_group_session_track_seen_indices(
+    OlmInboundGroupSession *session, int enabled
+) {
+    session->track_seen_indices = enabled ? 1 : 0;
+    if (!enabled) {
+        _olm_unset(session->seen_ranges, sizeof(session->seen_ranges));
+        session->num_seen_ranges = 0;
+        session->seen_floor = 0;
+    }
+}
+
+int olm_inbound_group_session_is_tracking_seen_indices(
+    const OlmInboundGroupSession *session
+) {
+    return session->track_seen_indices;
+}
+
+int olm_inbound_group_session_has_seen_index(
+    const OlmInboundGroupSession *session, uint32_t message_index
+) {
+    return _has_seen_index(session, message_index);
+}
+
 size_t olm_export_inbound_group_session_length(
     const OlmInboundGroupSession *session
 ) {
@@ -497,7 +1094,10 @@ size_t olm_export_inbound_group_session(
         return (size_t)-1;
     }
 
-    r = _get_megolm(session, message_index, &megolm);
+    r = _get_megolm(
+        &session->initial_ratchet, &session->latest_ratchet, message_index,
+        &megolm, &session->last_error
+    );
     if (r == (size_t)-1) {
         return r;
     }
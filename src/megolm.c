@@ -20,6 +20,8 @@
 
 #include "self_olm/cipher.h"
 #include "self_olm/crypto.h"
+#include "self_olm/metrics.h"
+#include "self_olm/probes.h"
 #include "self_olm/pickle.h"
 
 static const struct _olm_cipher_aes_sha_256 MEGOLM_CIPHER =
@@ -46,6 +48,7 @@ static void rehash_part(
         HASH_KEY_SEEDS[rehash_to_part], HASH_KEY_SEED_LENGTH,
         data[rehash_to_part]
     );
+    OLM_METRICS_ADD(OLM_METRICS_MEGOLM_HASHES, 1);
 }
 
 
@@ -102,6 +105,8 @@ void megolm_advance(Megolm *megolm) {
 void megolm_advance_to(Megolm *megolm, uint32_t advance_to) {
     int j;
 
+    OLM_PROBE3(megolm_advance, megolm, megolm->counter, advance_to);
+
     /* starting with R0, see if we need to update each part of the hash */
     for (j = 0; j < (int)MEGOLM_RATCHET_PARTS; j++) {
         int shift = (MEGOLM_RATCHET_PARTS-j-1) * 8;
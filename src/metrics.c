@@ -0,0 +1,68 @@
+/* Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include "self_olm/metrics.h"
+
+int _olm_metrics_enabled = 0;
+
+static uint64_t counters[OLM_METRICS_COUNTER_COUNT];
+
+#if defined(__GNUC__) || defined(__clang__)
+#define ATOMIC_LOAD(p) __atomic_load_n((p), __ATOMIC_RELAXED)
+#define ATOMIC_STORE(p, v) __atomic_store_n((p), (v), __ATOMIC_RELAXED)
+#define ATOMIC_ADD(p, v) __atomic_fetch_add((p), (v), __ATOMIC_RELAXED)
+#else
+#define ATOMIC_LOAD(p) (*(p))
+#define ATOMIC_STORE(p, v) (*(p) = (v))
+#define ATOMIC_ADD(p, v) (*(p) += (v))
+#endif
+
+void olm_metrics_set_enabled(
+    int enabled
+) {
+    ATOMIC_STORE(&_olm_metrics_enabled, enabled ? 1 : 0);
+}
+
+int olm_metrics_is_enabled(void) {
+    return ATOMIC_LOAD(&_olm_metrics_enabled);
+}
+
+size_t olm_metrics_counters(
+    uint64_t * output, size_t output_length
+) {
+    size_t i;
+    if (output_length > OLM_METRICS_COUNTER_COUNT) {
+        output_length = OLM_METRICS_COUNTER_COUNT;
+    }
+    for (i = 0; i < output_length; i++) {
+        output[i] = ATOMIC_LOAD(&counters[i]);
+    }
+    return output_length;
+}
+
+void olm_metrics_reset(void) {
+    size_t i;
+    for (i = 0; i < OLM_METRICS_COUNTER_COUNT; i++) {
+        ATOMIC_STORE(&counters[i], 0);
+    }
+}
+
+void _olm_metrics_add(
+    enum OlmMetricsCounter counter, uint64_t value
+) {
+    if ((unsigned)counter < OLM_METRICS_COUNTER_COUNT) {
+        ATOMIC_ADD(&counters[counter], value);
+    }
+}
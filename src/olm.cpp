@@ -20,6 +20,8 @@
 #include "self_olm/utility.hh"
 #include "self_olm/base64.hh"
 #include "self_olm/memory.hh"
+#include "self_olm/metrics.h"
+#include "self_olm/probes.h"
 
 #include <new>
 #include <cstring>
@@ -50,6 +52,14 @@ static olm::Utility * from_c(OlmUtility * utility) {
     return reinterpret_cast<olm::Utility *>(utility);
 }
 
+static olm::ParsedMessage * from_c(OlmParsedMessage * parsed) {
+    return reinterpret_cast<olm::ParsedMessage *>(parsed);
+}
+
+static olm::ParsedMessage const * from_c(OlmParsedMessage const * parsed) {
+    return reinterpret_cast<olm::ParsedMessage const *>(parsed);
+}
+
 static std::uint8_t * from_c(void * bytes) {
     return reinterpret_cast<std::uint8_t *>(bytes);
 }
@@ -131,6 +141,24 @@ const char * olm_utility_last_error(
     return _olm_error_to_string(error);
 }
 
+enum OlmErrorCode olm_account_last_error_code(
+    OlmAccount * account
+) {
+    return from_c(account)->last_error;
+}
+
+enum OlmErrorCode olm_session_last_error_code(
+    OlmSession * session
+) {
+    return from_c(session)->last_error;
+}
+
+enum OlmErrorCode olm_utility_last_error_code(
+    OlmUtility * utility
+) {
+    return from_c(utility)->last_error;
+}
+
 size_t olm_account_size(void) {
     return sizeof(olm::Account);
 }
@@ -215,7 +243,7 @@ size_t olm_pickle_session_length(
 }
 
 
-size_t olm_pickle_account(
+static size_t pickle_account(
     OlmAccount * account,
     void const * key, size_t key_length,
     void * pickled, size_t pickled_length
@@ -230,8 +258,23 @@ size_t olm_pickle_account(
     return _olm_enc_output(from_c(key), key_length, from_c(pickled), raw_length);
 }
 
+size_t olm_pickle_account(
+    OlmAccount * account,
+    void const * key, size_t key_length,
+    void * pickled, size_t pickled_length
+) {
+    size_t result;
+    OLM_PROBE3(pickle_start, OLM_PROBE_ACCOUNT, account, pickled_length);
+    result = pickle_account(account, key, key_length, pickled, pickled_length);
+    OLM_PROBE4(
+        pickle_done, OLM_PROBE_ACCOUNT, account, result,
+        OLM_PROBE_ERROR(result, from_c(account)->last_error)
+    );
+    return result;
+}
 
-size_t olm_pickle_session(
+
+static size_t pickle_session(
     OlmSession * session,
     void const * key, size_t key_length,
     void * pickled, size_t pickled_length
@@ -246,8 +289,23 @@ size_t olm_pickle_session(
     return _olm_enc_output(from_c(key), key_length, from_c(pickled), raw_length);
 }
 
+size_t olm_pickle_session(
+    OlmSession * session,
+    void const * key, size_t key_length,
+    void * pickled, size_t pickled_length
+) {
+    size_t result;
+    OLM_PROBE3(pickle_start, OLM_PROBE_SESSION, session, pickled_length);
+    result = pickle_session(session, key, key_length, pickled, pickled_length);
+    OLM_PROBE4(
+        pickle_done, OLM_PROBE_SESSION, session, result,
+        OLM_PROBE_ERROR(result, from_c(session)->last_error)
+    );
+    return result;
+}
 
-size_t olm_unpickle_account(
+
+static size_t unpickle_account(
     OlmAccount * account,
     void const * key, size_t key_length,
     void * pickled, size_t pickled_length
@@ -274,8 +332,23 @@ size_t olm_unpickle_account(
     return pickled_length;
 }
 
+size_t olm_unpickle_account(
+    OlmAccount * account,
+    void const * key, size_t key_length,
+    void * pickled, size_t pickled_length
+) {
+    size_t result;
+    OLM_PROBE3(unpickle_start, OLM_PROBE_ACCOUNT, account, pickled_length);
+    result = unpickle_account(account, key, key_length, pickled, pickled_length);
+    OLM_PROBE4(
+        unpickle_done, OLM_PROBE_ACCOUNT, account, result,
+        OLM_PROBE_ERROR(result, from_c(account)->last_error)
+    );
+    return result;
+}
+
 
-size_t olm_unpickle_session(
+static size_t unpickle_session(
     OlmSession * session,
     void const * key, size_t key_length,
     void * pickled, size_t pickled_length
@@ -303,6 +376,21 @@ size_t olm_unpickle_session(
     return pickled_length;
 }
 
+size_t olm_unpickle_session(
+    OlmSession * session,
+    void const * key, size_t key_length,
+    void * pickled, size_t pickled_length
+) {
+    size_t result;
+    OLM_PROBE3(unpickle_start, OLM_PROBE_SESSION, session, pickled_length);
+    result = unpickle_session(session, key, key_length, pickled, pickled_length);
+    OLM_PROBE4(
+        unpickle_done, OLM_PROBE_SESSION, session, result,
+        OLM_PROBE_ERROR(result, from_c(session)->last_error)
+    );
+    return result;
+}
+
 
 size_t olm_create_account_random_length(
     OlmAccount * account
@@ -391,6 +479,69 @@ size_t olm_account_one_time_keys(
 }
 
 
+size_t olm_account_identity_keys_packed_length(
+    OlmAccount * account
+) {
+    return from_c(account)->get_identity_keys_packed_length();
+}
+
+
+size_t olm_account_identity_keys_packed(
+    OlmAccount * account,
+    void * identity_keys, size_t identity_key_length
+) {
+    return from_c(account)->get_identity_keys_packed(
+        from_c(identity_keys), identity_key_length
+    );
+}
+
+
+size_t olm_account_one_time_keys_count(
+    OlmAccount * account,
+    int unpublished_only
+) {
+    return from_c(account)->count_one_time_keys(unpublished_only != 0);
+}
+
+
+size_t olm_account_one_time_key_packed_length(
+    OlmAccount * account
+) {
+    return from_c(account)->get_one_time_key_packed_length();
+}
+
+
+size_t olm_account_one_time_keys_packed(
+    OlmAccount * account,
+    size_t offset, size_t limit, int unpublished_only,
+    void * one_time_keys, size_t one_time_keys_length
+) {
+    return from_c(account)->get_one_time_keys_packed(
+        offset, limit, unpublished_only != 0,
+        from_c(one_time_keys), one_time_keys_length
+    );
+}
+
+
+size_t olm_account_signed_one_time_key_length(
+    OlmAccount * account
+) {
+    return from_c(account)->get_signed_one_time_key_length();
+}
+
+
+size_t olm_account_sign_one_time_keys(
+    OlmAccount * account,
+    size_t offset, size_t limit, int unpublished_only,
+    void * signed_keys, size_t signed_keys_length
+) {
+    return from_c(account)->sign_one_time_keys(
+        offset, limit, unpublished_only != 0,
+        from_c(signed_keys), signed_keys_length
+    );
+}
+
+
 size_t olm_account_mark_keys_as_published(
     OlmAccount * account
 ) {
@@ -434,12 +585,13 @@ size_t olm_create_outbound_session_random_length(
 }
 
 
-size_t olm_create_outbound_session(
+/** decodes the base64 keys of the recipient of an outbound session */
+static bool decode_outbound_keys(
     OlmSession * session,
-    OlmAccount * account,
     void const * their_identity_key, size_t their_identity_key_length,
     void const * their_one_time_key, size_t their_one_time_key_length,
-    void * random, size_t random_length
+    _olm_curve25519_public_key & identity_key,
+    _olm_curve25519_public_key & one_time_key
 ) {
     std::uint8_t const * id_key = from_c(their_identity_key);
     std::uint8_t const * ot_key = from_c(their_one_time_key);
@@ -450,13 +602,42 @@ size_t olm_create_outbound_session(
             || olm::decode_base64_length(ot_key_length) != CURVE25519_KEY_LENGTH
     ) {
         from_c(session)->last_error = OlmErrorCode::OLM_INVALID_BASE64;
-        return std::size_t(-1);
+        return false;
     }
-    _olm_curve25519_public_key identity_key;
-    _olm_curve25519_public_key one_time_key;
 
     olm::decode_base64(id_key, id_key_length, identity_key.public_key);
     olm::decode_base64(ot_key, ot_key_length, one_time_key.public_key);
+    return true;
+}
+
+
+/** reads a key pair written by olm_generate_ephemeral_key_pair() */
+static std::uint8_t const * load_key_pair(
+    std::uint8_t const * pos, _olm_curve25519_key_pair & key_pair
+) {
+    pos = olm::load_array(key_pair.public_key.public_key, pos);
+    pos = olm::load_array(key_pair.private_key.private_key, pos);
+    return pos;
+}
+
+
+size_t olm_create_outbound_session(
+    OlmSession * session,
+    OlmAccount * account,
+    void const * their_identity_key, size_t their_identity_key_length,
+    void const * their_one_time_key, size_t their_one_time_key_length,
+    void * random, size_t random_length
+) {
+    _olm_curve25519_public_key identity_key;
+    _olm_curve25519_public_key one_time_key;
+
+    if (!decode_outbound_keys(
+            session, their_identity_key, their_identity_key_length,
+            their_one_time_key, their_one_time_key_length,
+            identity_key, one_time_key
+    )) {
+        return std::size_t(-1);
+    }
 
     size_t result = from_c(session)->new_outbound_session(
         *from_c(account), identity_key, one_time_key,
@@ -467,6 +648,44 @@ size_t olm_create_outbound_session(
 }
 
 
+size_t olm_create_outbound_session_with_key_pairs(
+    OlmSession * session,
+    OlmAccount * account,
+    void const * their_identity_key, size_t their_identity_key_length,
+    void const * their_one_time_key, size_t their_one_time_key_length,
+    void * key_pairs, size_t key_pairs_length
+) {
+    _olm_curve25519_public_key identity_key;
+    _olm_curve25519_public_key one_time_key;
+
+    if (!decode_outbound_keys(
+            session, their_identity_key, their_identity_key_length,
+            their_one_time_key, their_one_time_key_length,
+            identity_key, one_time_key
+    )) {
+        return std::size_t(-1);
+    }
+    if (key_pairs_length < 2 * olm_ephemeral_key_pair_length()) {
+        from_c(session)->last_error = OlmErrorCode::OLM_NOT_ENOUGH_RANDOM;
+        return std::size_t(-1);
+    }
+
+    _olm_curve25519_key_pair base_key;
+    _olm_curve25519_key_pair ratchet_key;
+    std::uint8_t const * pos = from_c(key_pairs);
+    pos = load_key_pair(pos, base_key);
+    pos = load_key_pair(pos, ratchet_key);
+
+    size_t result = from_c(session)->new_outbound_session(
+        *from_c(account), identity_key, one_time_key, base_key, ratchet_key
+    );
+    olm::unset(base_key);
+    olm::unset(ratchet_key);
+    olm::unset(key_pairs, key_pairs_length);
+    return result;
+}
+
+
 size_t olm_create_inbound_session(
     OlmSession * session,
     OlmAccount * account,
@@ -484,6 +703,17 @@ size_t olm_create_inbound_session(
 }
 
 
+size_t olm_create_inbound_session_raw(
+    OlmSession * session,
+    OlmAccount * account,
+    void const * one_time_key_message, size_t message_length
+) {
+    return from_c(session)->new_inbound_session(
+        *from_c(account), nullptr, from_c(one_time_key_message), message_length
+    );
+}
+
+
 size_t olm_create_inbound_session_from(
     OlmSession * session,
     OlmAccount * account,
@@ -634,16 +864,25 @@ size_t olm_encrypt_message_length(
 }
 
 
-size_t olm_encrypt(
+size_t olm_encrypt_raw_message_length(
+    OlmSession * session,
+    size_t plaintext_length
+) {
+    return from_c(session)->encrypt_message_length(plaintext_length);
+}
+
+
+static size_t encrypt_message(
     OlmSession * session,
     void const * plaintext, size_t plaintext_length,
     void * random, size_t random_length,
-    void * message, size_t message_length
+    void * message, size_t message_length,
+    bool base64
 ) {
     std::size_t raw_length = from_c(session)->encrypt_message_length(
         plaintext_length
     );
-    if (message_length < b64_output_length(raw_length)) {
+    if (message_length < (base64 ? b64_output_length(raw_length) : raw_length)) {
         from_c(session)->last_error =
             OlmErrorCode::OLM_OUTPUT_BUFFER_TOO_SMALL;
         return std::size_t(-1);
@@ -651,13 +890,162 @@ size_t olm_encrypt(
     std::size_t result = from_c(session)->encrypt(
         from_c(plaintext), plaintext_length,
         from_c(random), random_length,
-        b64_output_pos(from_c(message), raw_length), raw_length
+        base64 ? b64_output_pos(from_c(message), raw_length) : from_c(message),
+        raw_length
     );
     olm::unset(random, random_length);
     if (result == std::size_t(-1)) {
         return result;
     }
-    return b64_output(from_c(message), raw_length);
+    OLM_METRICS_ADD(OLM_METRICS_BYTES_ENCRYPTED, plaintext_length);
+    return base64 ? b64_output(from_c(message), raw_length) : raw_length;
+}
+
+size_t olm_encrypt(
+    OlmSession * session,
+    void const * plaintext, size_t plaintext_length,
+    void * random, size_t random_length,
+    void * message, size_t message_length
+) {
+    size_t result;
+    OLM_PROBE2(encrypt_start, session, plaintext_length);
+    result = encrypt_message(
+        session, plaintext, plaintext_length, random, random_length,
+        message, message_length, true
+    );
+    OLM_PROBE3(
+        encrypt_done, session, result,
+        OLM_PROBE_ERROR(result, from_c(session)->last_error)
+    );
+    return result;
+}
+
+
+size_t olm_encrypt_raw(
+    OlmSession * session,
+    void const * plaintext, size_t plaintext_length,
+    void * random, size_t random_length,
+    void * message, size_t message_length
+) {
+    size_t result;
+    OLM_PROBE2(encrypt_start, session, plaintext_length);
+    result = encrypt_message(
+        session, plaintext, plaintext_length, random, random_length,
+        message, message_length, false
+    );
+    OLM_PROBE3(
+        encrypt_done, session, result,
+        OLM_PROBE_ERROR(result, from_c(session)->last_error)
+    );
+    return result;
+}
+
+
+size_t olm_ephemeral_key_pair_length(void) {
+    return CURVE25519_KEY_LENGTH * 2;
+}
+
+
+size_t olm_ephemeral_key_pair_random_length(void) {
+    return CURVE25519_RANDOM_LENGTH;
+}
+
+
+size_t olm_generate_ephemeral_key_pair(
+    void * random, size_t random_length,
+    void * key_pair, size_t key_pair_length
+) {
+    if (random_length < olm_ephemeral_key_pair_random_length()
+            || key_pair_length < olm_ephemeral_key_pair_length()) {
+        olm::unset(random, random_length);
+        return std::size_t(-1);
+    }
+    _olm_curve25519_key_pair generated;
+    _olm_crypto_curve25519_generate_key(from_c(random), &generated);
+    std::uint8_t * pos = from_c(key_pair);
+    pos = olm::store_array(pos, generated.public_key.public_key);
+    pos = olm::store_array(pos, generated.private_key.private_key);
+    olm::unset(generated);
+    olm::unset(random, random_length);
+    return olm_ephemeral_key_pair_length();
+}
+
+
+static size_t encrypt_with_key_pair(
+    OlmSession * session,
+    void const * plaintext, size_t plaintext_length,
+    void * key_pair, size_t key_pair_length,
+    void * message, size_t message_length,
+    bool base64
+) {
+    olm::Session * olm_session = from_c(session);
+    std::size_t raw_length = olm_session->encrypt_message_length(
+        plaintext_length
+    );
+    if (message_length < (base64 ? b64_output_length(raw_length) : raw_length)) {
+        olm_session->last_error = OlmErrorCode::OLM_OUTPUT_BUFFER_TOO_SMALL;
+        return std::size_t(-1);
+    }
+
+    bool needs_key_pair = olm_session->encrypt_random_length() != 0;
+    if (needs_key_pair
+            && (!key_pair || key_pair_length < olm_ephemeral_key_pair_length())) {
+        olm_session->last_error = OlmErrorCode::OLM_NOT_ENOUGH_RANDOM;
+        return std::size_t(-1);
+    }
+
+    _olm_curve25519_key_pair ratchet_key;
+    if (needs_key_pair) {
+        load_key_pair(from_c(key_pair), ratchet_key);
+    }
+
+    size_t result;
+    OLM_PROBE2(encrypt_start, session, plaintext_length);
+    result = olm_session->encrypt(
+        from_c(plaintext), plaintext_length,
+        needs_key_pair ? &ratchet_key : nullptr,
+        base64 ? b64_output_pos(from_c(message), raw_length) : from_c(message),
+        raw_length
+    );
+    if (needs_key_pair) {
+        olm::unset(ratchet_key);
+        olm::unset(key_pair, key_pair_length);
+    }
+    if (result != std::size_t(-1)) {
+        OLM_METRICS_ADD(OLM_METRICS_BYTES_ENCRYPTED, plaintext_length);
+        result = base64 ? b64_output(from_c(message), raw_length) : raw_length;
+    }
+    OLM_PROBE3(
+        encrypt_done, session, result,
+        OLM_PROBE_ERROR(result, olm_session->last_error)
+    );
+    return result;
+}
+
+
+size_t olm_encrypt_with_key_pair(
+    OlmSession * session,
+    void const * plaintext, size_t plaintext_length,
+    void * key_pair, size_t key_pair_length,
+    void * message, size_t message_length
+) {
+    return encrypt_with_key_pair(
+        session, plaintext, plaintext_length, key_pair, key_pair_length,
+        message, message_length, true
+    );
+}
+
+
+size_t olm_encrypt_raw_with_key_pair(
+    OlmSession * session,
+    void const * plaintext, size_t plaintext_length,
+    void * key_pair, size_t key_pair_length,
+    void * message, size_t message_length
+) {
+    return encrypt_with_key_pair(
+        session, plaintext, plaintext_length, key_pair, key_pair_length,
+        message, message_length, false
+    );
 }
 
 
@@ -678,22 +1066,381 @@ size_t olm_decrypt_max_plaintext_length(
 }
 
 
+size_t olm_decrypt_raw_max_plaintext_length(
+    OlmSession * session,
+    size_t message_type,
+    void const * message, size_t message_length
+) {
+    return from_c(session)->decrypt_max_plaintext_length(
+        olm::MessageType(message_type), from_c(message), message_length
+    );
+}
+
+
+static size_t decrypt_message(
+    OlmSession * session,
+    size_t message_type,
+    std::uint8_t const * message, std::size_t raw_length,
+    void * plaintext, size_t max_plaintext_length
+) {
+    std::size_t result = from_c(session)->decrypt(
+        olm::MessageType(message_type), message, raw_length,
+        from_c(plaintext), max_plaintext_length
+    );
+    if (result != std::size_t(-1)) {
+        OLM_METRICS_ADD(OLM_METRICS_BYTES_DECRYPTED, result);
+    }
+    return result;
+}
+
 size_t olm_decrypt(
     OlmSession * session,
     size_t message_type,
     void * message, size_t message_length,
     void * plaintext, size_t max_plaintext_length
 ) {
-    std::size_t raw_length = b64_input(
+    size_t result;
+    OLM_PROBE3(decrypt_start, session, message_type, message_length);
+    result = b64_input(
         from_c(message), message_length, from_c(session)->last_error
     );
+    if (result != std::size_t(-1)) {
+        result = decrypt_message(
+            session, message_type, from_c(message), result,
+            plaintext, max_plaintext_length
+        );
+    }
+    OLM_PROBE3(
+        decrypt_done, session, result,
+        OLM_PROBE_ERROR(result, from_c(session)->last_error)
+    );
+    return result;
+}
+
+
+size_t olm_decrypt_raw(
+    OlmSession * session,
+    size_t message_type,
+    void const * message, size_t message_length,
+    void * plaintext, size_t max_plaintext_length
+) {
+    size_t result;
+    OLM_PROBE3(decrypt_start, session, message_type, message_length);
+    result = decrypt_message(
+        session, message_type, from_c(message), message_length,
+        plaintext, max_plaintext_length
+    );
+    OLM_PROBE3(
+        decrypt_done, session, result,
+        OLM_PROBE_ERROR(result, from_c(session)->last_error)
+    );
+    return result;
+}
+
+
+size_t olm_parsed_message_size(void) {
+    return sizeof(olm::ParsedMessage);
+}
+
+
+OlmParsedMessage * olm_parsed_message(
+    void * memory
+) {
+    olm::unset(memory, sizeof(olm::ParsedMessage));
+    return reinterpret_cast<OlmParsedMessage *>(memory);
+}
+
+
+const char * olm_parsed_message_last_error(
+    const OlmParsedMessage * parsed
+) {
+    return _olm_error_to_string(from_c(parsed)->last_error);
+}
+
+
+enum OlmErrorCode olm_parsed_message_last_error_code(
+    const OlmParsedMessage * parsed
+) {
+    return from_c(parsed)->last_error;
+}
+
+
+size_t olm_clear_parsed_message(
+    OlmParsedMessage * parsed
+) {
+    olm::unset(parsed, sizeof(olm::ParsedMessage));
+    return sizeof(olm::ParsedMessage);
+}
+
+
+size_t olm_parse_message(
+    OlmParsedMessage * parsed,
+    size_t message_type,
+    void * message, size_t message_length
+) {
+    olm::ParsedMessage * result = from_c(parsed);
+    std::size_t raw_length = b64_input(
+        from_c(message), message_length, result->last_error
+    );
     if (raw_length == std::size_t(-1)) {
+        result->input = nullptr;
+        return std::size_t(-1);
+    }
+    std::size_t status = olm::parse_message(
+        *result, olm::MessageType(message_type), from_c(message), raw_length
+    );
+    if (status == std::size_t(-1)) {
+        result->input = nullptr;
+    }
+    return status;
+}
+
+
+size_t olm_parsed_message_type(
+    const OlmParsedMessage * parsed
+) {
+    return size_t(from_c(parsed)->type);
+}
+
+
+uint32_t olm_parsed_message_counter(
+    const OlmParsedMessage * parsed
+) {
+    return from_c(parsed)->counter;
+}
+
+
+size_t olm_parsed_message_key_length(
+    const OlmParsedMessage * parsed
+) {
+    return b64_output_length(CURVE25519_KEY_LENGTH);
+}
+
+
+static size_t parsed_message_key(
+    olm::ParsedMessage * parsed, std::uint8_t const * raw_key,
+    void * key, size_t key_length
+) {
+    if (!parsed->input) {
+        parsed->last_error = OlmErrorCode::OLM_BAD_STATE;
         return std::size_t(-1);
     }
-    return from_c(session)->decrypt(
-        olm::MessageType(message_type), from_c(message), raw_length,
+    if (key_length < b64_output_length(CURVE25519_KEY_LENGTH)) {
+        parsed->last_error = OlmErrorCode::OLM_OUTPUT_BUFFER_TOO_SMALL;
+        return std::size_t(-1);
+    }
+    return olm::encode_base64(raw_key, CURVE25519_KEY_LENGTH, from_c(key))
+        - from_c(key);
+}
+
+
+static size_t parsed_pre_key_message_key(
+    olm::ParsedMessage * parsed, std::uint8_t const * raw_key,
+    void * key, size_t key_length
+) {
+    if (parsed->input && parsed->type != olm::MessageType::PRE_KEY) {
+        parsed->last_error = OlmErrorCode::OLM_BAD_STATE;
+        return std::size_t(-1);
+    }
+    if (parsed->input && !raw_key) {
+        parsed->last_error = OlmErrorCode::OLM_BAD_MESSAGE_FORMAT;
+        return std::size_t(-1);
+    }
+    return parsed_message_key(parsed, raw_key, key, key_length);
+}
+
+
+size_t olm_parsed_message_ratchet_key(
+    OlmParsedMessage * parsed,
+    void * key, size_t key_length
+) {
+    return parsed_message_key(
+        from_c(parsed), from_c(parsed)->ratchet_key, key, key_length
+    );
+}
+
+
+size_t olm_parsed_message_base_key(
+    OlmParsedMessage * parsed,
+    void * key, size_t key_length
+) {
+    return parsed_pre_key_message_key(
+        from_c(parsed), from_c(parsed)->base_key, key, key_length
+    );
+}
+
+
+size_t olm_parsed_message_one_time_key(
+    OlmParsedMessage * parsed,
+    void * key, size_t key_length
+) {
+    return parsed_pre_key_message_key(
+        from_c(parsed), from_c(parsed)->one_time_key, key, key_length
+    );
+}
+
+
+size_t olm_parsed_message_identity_key(
+    OlmParsedMessage * parsed,
+    void * key, size_t key_length
+) {
+    return parsed_pre_key_message_key(
+        from_c(parsed), from_c(parsed)->identity_key, key, key_length
+    );
+}
+
+
+/** checks that a parsed message can be used by a session */
+static bool check_parsed_message(
+    OlmSession * session, olm::ParsedMessage const * parsed
+) {
+    if (!parsed->input) {
+        from_c(session)->last_error = OlmErrorCode::OLM_BAD_STATE;
+        return false;
+    }
+    return true;
+}
+
+
+size_t olm_matches_inbound_parsed_session(
+    OlmSession * session,
+    const OlmParsedMessage * parsed
+) {
+    olm::ParsedMessage const * message = from_c(parsed);
+    if (!check_parsed_message(session, message)) {
+        return std::size_t(-1);
+    }
+    if (message->type != olm::MessageType::PRE_KEY) {
+        from_c(session)->last_error = OlmErrorCode::OLM_BAD_MESSAGE_FORMAT;
+        return std::size_t(-1);
+    }
+    bool matches = from_c(session)->matches_inbound_session(
+        nullptr, message->input, message->input_length
+    );
+    return matches ? 1 : 0;
+}
+
+
+size_t olm_matches_inbound_parsed_session_from(
+    OlmSession * session,
+    void const * their_identity_key, size_t their_identity_key_length,
+    const OlmParsedMessage * parsed
+) {
+    olm::ParsedMessage const * message = from_c(parsed);
+    if (!check_parsed_message(session, message)) {
+        return std::size_t(-1);
+    }
+    if (message->type != olm::MessageType::PRE_KEY) {
+        from_c(session)->last_error = OlmErrorCode::OLM_BAD_MESSAGE_FORMAT;
+        return std::size_t(-1);
+    }
+
+    std::uint8_t const * id_key = from_c(their_identity_key);
+    std::size_t id_key_length = their_identity_key_length;
+
+    if (olm::decode_base64_length(id_key_length) != CURVE25519_KEY_LENGTH) {
+        from_c(session)->last_error = OlmErrorCode::OLM_INVALID_BASE64;
+        return std::size_t(-1);
+    }
+    _olm_curve25519_public_key identity_key;
+    olm::decode_base64(id_key, id_key_length, identity_key.public_key);
+
+    bool matches = from_c(session)->matches_inbound_session(
+        &identity_key, message->input, message->input_length
+    );
+    return matches ? 1 : 0;
+}
+
+
+size_t olm_decrypt_parsed_max_plaintext_length(
+    OlmSession * session,
+    const OlmParsedMessage * parsed
+) {
+    olm::ParsedMessage const * message = from_c(parsed);
+    if (!check_parsed_message(session, message)) {
+        return std::size_t(-1);
+    }
+    return from_c(session)->decrypt_max_plaintext_length(
+        message->type, message->input, message->input_length
+    );
+}
+
+
+size_t olm_decrypt_parsed(
+    OlmSession * session,
+    const OlmParsedMessage * parsed,
+    void * plaintext, size_t max_plaintext_length
+) {
+    olm::ParsedMessage const * message = from_c(parsed);
+    if (!check_parsed_message(session, message)) {
+        return std::size_t(-1);
+    }
+
+    size_t result;
+    OLM_PROBE3(decrypt_start, session, size_t(message->type), message->input_length);
+    result = from_c(session)->decrypt(
+        message->type, message->input, message->input_length,
         from_c(plaintext), max_plaintext_length
     );
+    if (result != std::size_t(-1)) {
+        OLM_METRICS_ADD(OLM_METRICS_BYTES_DECRYPTED, result);
+    }
+    OLM_PROBE3(
+        decrypt_done, session, result,
+        OLM_PROBE_ERROR(result, from_c(session)->last_error)
+    );
+    return result;
+}
+
+
+size_t olm_session_has_ratchet_key(
+    OlmSession * session,
+    const OlmParsedMessage * parsed
+) {
+    olm::ParsedMessage const * message = from_c(parsed);
+    if (!check_parsed_message(session, message)) {
+        return std::size_t(-1);
+    }
+    return from_c(session)->ratchet.has_ratchet_key(message->ratchet_key)
+        ? 1 : 0;
+}
+
+
+size_t olm_decrypt_parsed_with_sessions(
+    OlmSession * const * sessions, size_t session_count,
+    OlmParsedMessage * parsed,
+    void * plaintext, size_t max_plaintext_length,
+    size_t * session_index
+) {
+    olm::ParsedMessage * message = from_c(parsed);
+    if (!message->input) {
+        message->last_error = OlmErrorCode::OLM_BAD_STATE;
+        return std::size_t(-1);
+    }
+    message->last_error = OlmErrorCode::OLM_BAD_MESSAGE_KEY_ID;
+
+    /* first pass: the sessions which know the ratchet key, found by comparing
+     * the keys. second pass: the others, which would start a new chain. */
+    for (int pass = 0; pass < 2; ++pass) {
+        bool known = (pass == 0);
+        for (std::size_t i = 0; i < session_count; ++i) {
+            olm::Session * session = from_c(sessions[i]);
+            if (session->ratchet.has_ratchet_key(message->ratchet_key) != known) {
+                continue;
+            }
+            std::size_t result = olm_decrypt_parsed(
+                sessions[i], parsed, plaintext, max_plaintext_length
+            );
+            if (result != std::size_t(-1)) {
+                if (session_index) {
+                    *session_index = i;
+                }
+                return result;
+            }
+            message->last_error = session->last_error;
+        }
+    }
+    return std::size_t(-1);
 }
 
 
@@ -24,6 +24,8 @@
 #include "self_olm/megolm.h"
 #include "self_olm/memory.h"
 #include "self_olm/message.h"
+#include "self_olm/metrics.h"
+#include "self_olm/probes.h"
 #include "self_olm/pickle.h"
 #include "self_olm/pickle_encoding.h"
 
@@ -61,6 +63,12 @@ const char *olm_outbound_group_session_last_error(
     return _olm_error_to_string(session->last_error);
 }
 
+enum OlmErrorCode olm_outbound_group_session_last_error_code(
+    const OlmOutboundGroupSession *session
+) {
+    return session->last_error;
+}
+
 size_t olm_clear_outbound_group_session(
     OlmOutboundGroupSession *session
 ) {
@@ -84,7 +92,7 @@ size_t olm_pickle_outbound_group_session_length(
     return _olm_enc_output_length(raw_pickle_length(session));
 }
 
-size_t olm_pickle_outbound_group_session(
+static size_t _pickle(
     OlmOutboundGroupSession *session,
     void const * key, size_t key_length,
     void * pickled, size_t pickled_length
@@ -105,7 +113,24 @@ size_t olm_pickle_outbound_group_session(
     return _olm_enc_output(key, key_length, pickled, raw_length);
 }
 
-size_t olm_unpickle_outbound_group_session(
+size_t olm_pickle_outbound_group_session(
+    OlmOutboundGroupSession *session,
+    void const * key, size_t key_length,
+    void * pickled, size_t pickled_length
+) {
+    size_t result;
+    OLM_PROBE3(
+        pickle_start, OLM_PROBE_OUTBOUND_GROUP_SESSION, session, pickled_length
+    );
+    result = _pickle(session, key, key_length, pickled, pickled_length);
+    OLM_PROBE4(
+        pickle_done, OLM_PROBE_OUTBOUND_GROUP_SESSION, session, result,
+        OLM_PROBE_ERROR(result, session->last_error)
+    );
+    return result;
+}
+
+static size_t _unpickle(
     OlmOutboundGroupSession *session,
     void const * key, size_t key_length,
     void * pickled, size_t pickled_length
@@ -140,6 +165,23 @@ size_t olm_unpickle_outbound_group_session(
     return pickled_length;
 }
 
+size_t olm_unpickle_outbound_group_session(
+    OlmOutboundGroupSession *session,
+    void const * key, size_t key_length,
+    void * pickled, size_t pickled_length
+) {
+    size_t result;
+    OLM_PROBE3(
+        unpickle_start, OLM_PROBE_OUTBOUND_GROUP_SESSION, session, pickled_length
+    );
+    result = _unpickle(session, key, key_length, pickled, pickled_length);
+    OLM_PROBE4(
+        unpickle_done, OLM_PROBE_OUTBOUND_GROUP_SESSION, session, result,
+        OLM_PROBE_ERROR(result, session->last_error)
+    );
+    return result;
+}
+
 
 size_t olm_init_outbound_group_session_random_length(
     const OlmOutboundGroupSession *session
@@ -199,6 +241,13 @@ size_t olm_group_encrypt_message_length(
     return _olm_encode_base64_length(message_length);
 }
 
+size_t olm_group_encrypt_raw_message_length(
+    OlmOutboundGroupSession *session,
+    size_t plaintext_length
+) {
+    return raw_message_length(session, plaintext_length);
+}
+
 /** write an un-base64-ed message to the buffer */
 static size_t _encrypt(
     OlmOutboundGroupSession *session, uint8_t const * plaintext, size_t plaintext_length,
@@ -240,6 +289,7 @@ static size_t _encrypt(
     }
 
     megolm_advance(&(session->ratchet));
+    OLM_METRICS_ADD(OLM_METRICS_BYTES_ENCRYPTED, plaintext_length);
 
     /* sign the whole thing with the ed25519 key. */
     _olm_crypto_ed25519_sign(
@@ -251,7 +301,7 @@ static size_t _encrypt(
     return result;
 }
 
-size_t olm_group_encrypt(
+static size_t _encrypt_base64(
     OlmOutboundGroupSession *session,
     uint8_t const * plaintext, size_t plaintext_length,
     uint8_t * message, size_t max_message_length
@@ -284,6 +334,51 @@ size_t olm_group_encrypt(
     );
 }
 
+size_t olm_group_encrypt(
+    OlmOutboundGroupSession *session,
+    uint8_t const * plaintext, size_t plaintext_length,
+    uint8_t * message, size_t max_message_length
+) {
+    size_t result;
+    OLM_PROBE3(
+        group_encrypt_start, session, plaintext_length, session->ratchet.counter
+    );
+    result = _encrypt_base64(session, plaintext, plaintext_length, message, max_message_length);
+    OLM_PROBE3(
+        group_encrypt_done, session, result,
+        OLM_PROBE_ERROR(result, session->last_error)
+    );
+    return result;
+}
+
+
+size_t olm_group_encrypt_raw(
+    OlmOutboundGroupSession *session,
+    uint8_t const * plaintext, size_t plaintext_length,
+    uint8_t * message, size_t max_message_length
+) {
+    size_t rawmsglen;
+    size_t result;
+    OLM_PROBE3(
+        group_encrypt_start, session, plaintext_length, session->ratchet.counter
+    );
+    rawmsglen = raw_message_length(session, plaintext_length);
+    if (max_message_length < rawmsglen) {
+        session->last_error = OLM_OUTPUT_BUFFER_TOO_SMALL;
+        result = (size_t)-1;
+    } else {
+        result = _encrypt(session, plaintext, plaintext_length, message);
+        if (result != (size_t)-1) {
+            result = rawmsglen;
+        }
+    }
+    OLM_PROBE3(
+        group_encrypt_done, session, result,
+        OLM_PROBE_ERROR(result, session->last_error)
+    );
+    return result;
+}
+
 
 size_t olm_outbound_group_session_id_length(
     const OlmOutboundGroupSession *session
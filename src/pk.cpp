@@ -18,6 +18,7 @@
 #include "self_olm/ratchet.hh"
 #include "self_olm/error.h"
 #include "self_olm/memory.hh"
+#include "self_olm/metrics.h"
 #include "self_olm/base64.hh"
 #include "self_olm/pickle_encoding.h"
 #include "self_olm/pickle.hh"
@@ -43,6 +44,12 @@ const char * olm_pk_encryption_last_error(
     return _olm_error_to_string(error);
 }
 
+OlmErrorCode olm_pk_encryption_last_error_code(
+    OlmPkEncryption * encryption
+) {
+    return encryption->last_error;
+}
+
 size_t olm_pk_encryption_size(void) {
     return sizeof(OlmPkEncryption);
 }
@@ -110,19 +117,44 @@ size_t olm_pk_encrypt(
     void * ephemeral_key, size_t ephemeral_key_size,
     const void * random, size_t random_length
 ) {
+    OlmErrorCode error;
+    size_t result = olm_pk_encrypt_concurrent(
+        encryption,
+        plaintext, plaintext_length,
+        ciphertext, ciphertext_length,
+        mac, mac_length,
+        ephemeral_key, ephemeral_key_size,
+        random, random_length,
+        &error
+    );
+    if (result == std::size_t(-1)) {
+        encryption->last_error = error;
+    }
+    return result;
+}
+
+size_t olm_pk_encrypt_concurrent(
+    OlmPkEncryption const * encryption,
+    void const * plaintext, size_t plaintext_length,
+    void * ciphertext, size_t ciphertext_length,
+    void * mac, size_t mac_length,
+    void * ephemeral_key, size_t ephemeral_key_size,
+    const void * random, size_t random_length,
+    OlmErrorCode * error
+) {
+    size_t raw_ciphertext_length =
+        _olm_cipher_aes_sha_256_ops.encrypt_ciphertext_length(olm_pk_cipher, plaintext_length);
     if (ciphertext_length
-            < olm_pk_ciphertext_length(encryption, plaintext_length)
+            < olm::encode_base64_length(raw_ciphertext_length)
         || mac_length
-            < _olm_cipher_aes_sha_256_ops.mac_length(olm_pk_cipher)
+            < olm::encode_base64_length(MAC_LENGTH)
         || ephemeral_key_size
             < olm_pk_key_length()) {
-        encryption->last_error =
-            OlmErrorCode::OLM_OUTPUT_BUFFER_TOO_SMALL;
+        *error = OlmErrorCode::OLM_OUTPUT_BUFFER_TOO_SMALL;
         return std::size_t(-1);
     }
-    if (random_length < olm_pk_encrypt_random_length(encryption)) {
-        encryption->last_error =
-            OlmErrorCode::OLM_NOT_ENOUGH_RANDOM;
+    if (random_length < CURVE25519_KEY_LENGTH) {
+        *error = OlmErrorCode::OLM_NOT_ENOUGH_RANDOM;
         return std::size_t(-1);
     }
 
@@ -136,8 +168,7 @@ size_t olm_pk_encrypt(
 
     olm::SharedKey secret;
     _olm_crypto_curve25519_shared_secret(&ephemeral_keypair, &encryption->recipient_key, secret);
-    size_t raw_ciphertext_length =
-        _olm_cipher_aes_sha_256_ops.encrypt_ciphertext_length(olm_pk_cipher, plaintext_length);
+    olm::unset(ephemeral_keypair);
     uint8_t *ciphertext_pos = (uint8_t *) ciphertext + ciphertext_length - raw_ciphertext_length;
     uint8_t raw_mac[MAC_LENGTH];
     size_t result = _olm_cipher_aes_sha_256_ops.encrypt(
@@ -147,10 +178,15 @@ size_t olm_pk_encrypt(
         (uint8_t *) ciphertext_pos, raw_ciphertext_length,
         (uint8_t *) raw_mac, MAC_LENGTH
     );
-    if (result != std::size_t(-1)) {
-        olm::encode_base64(raw_mac, MAC_LENGTH, (uint8_t *)mac);
-        olm::encode_base64(ciphertext_pos, raw_ciphertext_length, (uint8_t *)ciphertext);
+    olm::unset(secret);
+    if (result == std::size_t(-1)) {
+        *error = OlmErrorCode::OLM_OUTPUT_BUFFER_TOO_SMALL;
+        return std::size_t(-1);
     }
+    olm::encode_base64(raw_mac, MAC_LENGTH, (uint8_t *)mac);
+    olm::encode_base64(ciphertext_pos, raw_ciphertext_length, (uint8_t *)ciphertext);
+    OLM_METRICS_ADD(OLM_METRICS_BYTES_ENCRYPTED, plaintext_length);
+    *error = OlmErrorCode::OLM_SUCCESS;
     return result;
 }
 
@@ -166,6 +202,12 @@ const char * olm_pk_decryption_last_error(
     return _olm_error_to_string(error);
 }
 
+OlmErrorCode olm_pk_decryption_last_error_code(
+    OlmPkDecryption * decryption
+) {
+    return decryption->last_error;
+}
+
 size_t olm_pk_decryption_size(void) {
     return sizeof(OlmPkDecryption);
 }
@@ -356,10 +398,41 @@ size_t olm_pk_decrypt(
     void * ciphertext, size_t ciphertext_length,
     void * plaintext, size_t max_plaintext_length
 ) {
+    OlmErrorCode error;
+    size_t result = olm_pk_decrypt_concurrent(
+        decryption,
+        ephemeral_key, ephemeral_key_length,
+        mac, mac_length,
+        ciphertext, ciphertext_length,
+        plaintext, max_plaintext_length,
+        &error
+    );
+    if (result == std::size_t(-1)) {
+        decryption->last_error = error;
+    }
+    return result;
+}
+
+size_t olm_pk_decrypt_concurrent(
+    OlmPkDecryption const * decryption,
+    void const * ephemeral_key, size_t ephemeral_key_length,
+    void const * mac, size_t mac_length,
+    void * ciphertext, size_t ciphertext_length,
+    void * plaintext, size_t max_plaintext_length,
+    OlmErrorCode * error
+) {
+    size_t raw_ciphertext_length = olm::decode_base64_length(ciphertext_length);
+    if (ephemeral_key_length != olm::encode_base64_length(CURVE25519_KEY_LENGTH)
+            || mac_length != olm::encode_base64_length(MAC_LENGTH)
+            || raw_ciphertext_length == std::size_t(-1)) {
+        *error = OlmErrorCode::OLM_BAD_MESSAGE_FORMAT;
+        return std::size_t(-1);
+    }
     if (max_plaintext_length
-            < olm_pk_max_plaintext_length(decryption, ciphertext_length)) {
-        decryption->last_error =
-            OlmErrorCode::OLM_OUTPUT_BUFFER_TOO_SMALL;
+            < _olm_cipher_aes_sha_256_ops.decrypt_max_plaintext_length(
+                olm_pk_cipher, raw_ciphertext_length
+            )) {
+        *error = OlmErrorCode::OLM_OUTPUT_BUFFER_TOO_SMALL;
         return std::size_t(-1);
     }
 
@@ -371,8 +444,7 @@ size_t olm_pk_decrypt(
     olm::SharedKey secret;
     _olm_crypto_curve25519_shared_secret(&decryption->key_pair, &ephemeral, secret);
     uint8_t raw_mac[MAC_LENGTH];
-    olm::decode_base64((const uint8_t*)mac, olm::encode_base64_length(MAC_LENGTH), raw_mac);
-    size_t raw_ciphertext_length = olm::decode_base64_length(ciphertext_length);
+    olm::decode_base64((const uint8_t*)mac, mac_length, raw_mac);
     olm::decode_base64((const uint8_t *)ciphertext, ciphertext_length, (uint8_t *)ciphertext);
     size_t result = _olm_cipher_aes_sha_256_ops.decrypt(
         olm_pk_cipher,
@@ -381,15 +453,14 @@ size_t olm_pk_decrypt(
         (const uint8_t *) ciphertext, raw_ciphertext_length,
         (uint8_t *) plaintext, max_plaintext_length
     );
+    olm::unset(secret);
     if (result == std::size_t(-1)) {
-        // we already checked the buffer sizes, so the only error that decrypt
-        // will return is if the MAC is incorrect
-        decryption->last_error =
-            OlmErrorCode::OLM_BAD_MESSAGE_MAC;
+        *error = OlmErrorCode::OLM_BAD_MESSAGE_MAC;
         return std::size_t(-1);
-    } else {
-        return result;
     }
+    OLM_METRICS_ADD(OLM_METRICS_BYTES_DECRYPTED, result);
+    *error = OlmErrorCode::OLM_SUCCESS;
+    return result;
 }
 
 size_t olm_pk_get_private_key(
@@ -428,6 +499,10 @@ const char * olm_pk_signing_last_error(OlmPkSigning * sign) {
     return _olm_error_to_string(error);
 }
 
+OlmErrorCode olm_pk_signing_last_error_code(OlmPkSigning * sign) {
+    return sign->last_error;
+}
+
 size_t olm_clear_pk_signing(OlmPkSigning *sign) {
     /* Clear the memory backing the signing */
     olm::unset(sign, sizeof(OlmPkSigning));
@@ -16,7 +16,9 @@
 #include "self_olm/message.hh"
 #include "self_olm/memory.hh"
 #include "self_olm/cipher.h"
+#include "self_olm/metrics.h"
 #include "self_olm/pickle.hh"
+#include "self_olm/probes.h"
 
 #include <cstring>
 
@@ -62,6 +64,8 @@ static void create_chain_key(
     new_chain_key.index = 0;
     olm::unset(derived_secrets);
     olm::unset(secret);
+    OLM_METRICS_ADD(OLM_METRICS_ROOT_KEY_RATCHETS, 1);
+    OLM_PROBE1(ratchet_root_step, &new_root_key);
 }
 
 
@@ -75,6 +79,8 @@ static void advance_chain_key(
         new_chain_key.key
     );
     new_chain_key.index = chain_key.index + 1;
+    OLM_METRICS_ADD(OLM_METRICS_CHAIN_KEY_ADVANCES, 1);
+    OLM_PROBE2(ratchet_chain_advance, &new_chain_key, new_chain_key.index);
 }
 
 
@@ -423,10 +429,36 @@ std::size_t olm::Ratchet::encrypt(
     std::uint8_t const * plaintext, std::size_t plaintext_length,
     std::uint8_t const * random, std::size_t random_length,
     std::uint8_t * output, std::size_t max_output_length
+) {
+    if (random_length < encrypt_random_length()) {
+        last_error = OlmErrorCode::OLM_NOT_ENOUGH_RANDOM;
+        return std::size_t(-1);
+    }
+    if (max_output_length < encrypt_output_length(plaintext_length)) {
+        last_error = OlmErrorCode::OLM_OUTPUT_BUFFER_TOO_SMALL;
+        return std::size_t(-1);
+    }
+
+    _olm_curve25519_key_pair ratchet_key;
+    if (sender_chain.empty()) {
+        _olm_crypto_curve25519_generate_key(random, &ratchet_key);
+    }
+    std::size_t result = encrypt(
+        plaintext, plaintext_length, &ratchet_key, output, max_output_length
+    );
+    olm::unset(ratchet_key);
+    return result;
+}
+
+
+std::size_t olm::Ratchet::encrypt(
+    std::uint8_t const * plaintext, std::size_t plaintext_length,
+    _olm_curve25519_key_pair const * new_ratchet_key,
+    std::uint8_t * output, std::size_t max_output_length
 ) {
     std::size_t output_length = encrypt_output_length(plaintext_length);
 
-    if (random_length < encrypt_random_length()) {
+    if (sender_chain.empty() && !new_ratchet_key) {
         last_error = OlmErrorCode::OLM_NOT_ENOUGH_RANDOM;
         return std::size_t(-1);
     }
@@ -437,7 +469,7 @@ std::size_t olm::Ratchet::encrypt(
 
     if (sender_chain.empty()) {
         sender_chain.insert();
-        _olm_crypto_curve25519_generate_key(random, &sender_chain[0].ratchet_key);
+        sender_chain[0].ratchet_key = *new_ratchet_key;
         create_chain_key(
             root_key,
             sender_chain[0].ratchet_key,
@@ -623,3 +655,27 @@ std::size_t olm::Ratchet::decrypt(
 
     return result;
 }
+
+
+bool olm::Ratchet::has_ratchet_key(
+    std::uint8_t const * ratchet_key
+) const {
+    for (olm::ReceiverChain const & receiver_chain : receiver_chains) {
+        if (0 == std::memcmp(
+                receiver_chain.ratchet_key.public_key, ratchet_key,
+                CURVE25519_KEY_LENGTH
+        )) {
+            return true;
+        }
+    }
+    /* the skipped keys can outlive the chain they were skipped on */
+    for (olm::SkippedMessageKey const & skipped : skipped_message_keys) {
+        if (0 == std::memcmp(
+                skipped.ratchet_key.public_key, ratchet_key,
+                CURVE25519_KEY_LENGTH
+        )) {
+            return true;
+        }
+    }
+    return false;
+}
@@ -71,6 +71,24 @@ std::size_t olm::Session::new_outbound_session(
     _olm_curve25519_key_pair ratchet_key;
     _olm_crypto_curve25519_generate_key(random + CURVE25519_RANDOM_LENGTH, &ratchet_key);
 
+    std::size_t result = new_outbound_session(
+        local_account, identity_key, one_time_key, base_key, ratchet_key
+    );
+
+    olm::unset(base_key);
+    olm::unset(ratchet_key);
+
+    return result;
+}
+
+
+std::size_t olm::Session::new_outbound_session(
+    olm::Account const & local_account,
+    _olm_curve25519_public_key const & identity_key,
+    _olm_curve25519_public_key const & one_time_key,
+    _olm_curve25519_key_pair const & base_key,
+    _olm_curve25519_key_pair const & ratchet_key
+) {
     _olm_curve25519_key_pair const & alice_identity_key_pair = (
         local_account.identity_keys.curve25519_key
     );
@@ -92,8 +110,6 @@ std::size_t olm::Session::new_outbound_session(
 
     ratchet.initialise_as_alice(secret, sizeof(secret), ratchet_key);
 
-    olm::unset(base_key);
-    olm::unset(ratchet_key);
     olm::unset(secret);
 
     return std::size_t(0);
@@ -286,6 +302,32 @@ std::size_t olm::Session::encrypt(
     std::uint8_t const * plaintext, std::size_t plaintext_length,
     std::uint8_t const * random, std::size_t random_length,
     std::uint8_t * message, std::size_t message_length
+) {
+    if (message_length < encrypt_message_length(plaintext_length)) {
+        last_error = OlmErrorCode::OLM_OUTPUT_BUFFER_TOO_SMALL;
+        return std::size_t(-1);
+    }
+    if (random_length < encrypt_random_length()) {
+        last_error = OlmErrorCode::OLM_NOT_ENOUGH_RANDOM;
+        return std::size_t(-1);
+    }
+
+    _olm_curve25519_key_pair ratchet_key;
+    if (ratchet.sender_chain.empty()) {
+        _olm_crypto_curve25519_generate_key(random, &ratchet_key);
+    }
+    std::size_t result = encrypt(
+        plaintext, plaintext_length, &ratchet_key, message, message_length
+    );
+    olm::unset(ratchet_key);
+    return result;
+}
+
+
+std::size_t olm::Session::encrypt(
+    std::uint8_t const * plaintext, std::size_t plaintext_length,
+    _olm_curve25519_key_pair const * ratchet_key,
+    std::uint8_t * message, std::size_t message_length
 ) {
     if (message_length < encrypt_message_length(plaintext_length)) {
         last_error = OlmErrorCode::OLM_OUTPUT_BUFFER_TOO_SMALL;
@@ -317,7 +359,7 @@ std::size_t olm::Session::encrypt(
 
     std::size_t result = ratchet.encrypt(
         plaintext, plaintext_length,
-        random, random_length,
+        ratchet_key,
         message_body, message_body_length
     );
 
@@ -398,6 +440,57 @@ std::size_t olm::Session::decrypt(
     return result;
 }
 
+std::size_t olm::parse_message(
+    olm::ParsedMessage & parsed,
+    olm::MessageType message_type,
+    std::uint8_t const * input, std::size_t input_length
+) {
+    std::uint8_t const * message_body = input;
+    std::size_t message_body_length = input_length;
+
+    parsed.type = message_type;
+    parsed.input = input;
+    parsed.input_length = input_length;
+    parsed.identity_key = nullptr;
+    parsed.base_key = nullptr;
+    parsed.one_time_key = nullptr;
+
+    if (message_type == olm::MessageType::PRE_KEY) {
+        olm::PreKeyMessageReader reader;
+        decode_one_time_key_message(reader, input, input_length);
+        if (!check_message_fields(reader, true)) {
+            parsed.last_error = OlmErrorCode::OLM_BAD_MESSAGE_FORMAT;
+            return std::size_t(-1);
+        }
+        parsed.identity_key = reader.identity_key;
+        parsed.base_key = reader.base_key;
+        parsed.one_time_key = reader.one_time_key;
+        message_body = reader.message;
+        message_body_length = reader.message_length;
+    }
+
+    olm::MessageReader reader;
+    decode_message(
+        reader, message_body, message_body_length,
+        OLM_CIPHER.base_cipher.ops->mac_length(&OLM_CIPHER.base_cipher)
+    );
+
+    if (reader.version != PROTOCOL_VERSION) {
+        parsed.last_error = OlmErrorCode::OLM_BAD_MESSAGE_VERSION;
+        return std::size_t(-1);
+    }
+
+    if (!reader.has_counter || !reader.ratchet_key || !reader.ciphertext
+            || reader.ratchet_key_length != CURVE25519_KEY_LENGTH) {
+        parsed.last_error = OlmErrorCode::OLM_BAD_MESSAGE_FORMAT;
+        return std::size_t(-1);
+    }
+
+    parsed.counter = reader.counter;
+    parsed.ratchet_key = reader.ratchet_key;
+    return 0;
+}
+
 void olm::Session::describe(char *describe_buffer, size_t buflen) {
     if (buflen == 0) return;
 
@@ -0,0 +1,1158 @@
+/* Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+#include <cstring>
+
+/* Micro-benchmarks for the core C API.
+ *
+ * Every benchmark is run in batches of doubling size until it has been timed
+ * for at least --min-time milliseconds, and one CSV row is printed for it:
+ *
+ *     benchmark,iterations,ns_per_op,ops_per_sec,cycles_per_op
+ *
+ * Cycles are read from the time stamp counter (or the virtual counter on
+ * aarch64), so they are only comparable between runs on the same machine.
+ *
+ * Saving the output gives a baseline for later runs: with --compare, each
+ * row also gets the baseline time, the change in percent and whether it is
+ * a regression, and the exit status is 1 if any benchmark got slower than
+ * --threshold percent.
+ */
+
+#include "self_olm/olm.h"
+#include "self_olm/base64.hh"
+#include "self_olm/crypto.h"
+#include "self_olm/megolm.h"
+#include "self_olm/inbound_group_session.h"
+#include "self_olm/outbound_group_session.h"
+
+#include <chrono>
+#include <cstdint>
+#include <cstdio>
+#include <cstdlib>
+#include <cstring>
+#include <fstream>
+#include <functional>
+#include <iostream>
+#include <map>
+#include <memory>
+#include <sstream>
+#include <string>
+#include <vector>
+
+#if defined(_MSC_VER)
+#include <intrin.h>
+#elif defined(__x86_64__) || defined(__i386__)
+#include <x86intrin.h>
+#endif
+
+namespace {
+
+typedef std::vector<std::uint8_t> Buffer;
+
+std::uint64_t read_cycles() {
+#if defined(_MSC_VER) && (defined(_M_X64) || defined(_M_IX86))
+    return __rdtsc();
+#elif defined(__x86_64__) || defined(__i386__)
+    return __rdtsc();
+#elif defined(__aarch64__)
+    std::uint64_t value;
+    asm volatile("mrs %0, cntvct_el0" : "=r"(value));
+    return value;
+#else
+    return 0;
+#endif
+}
+
+std::uint64_t now_ns() {
+    return std::chrono::duration_cast<std::chrono::nanoseconds>(
+        std::chrono::steady_clock::now().time_since_epoch()
+    ).count();
+}
+
+/** Deterministic filler for random inputs; quality doesn't matter here. */
+void fill_random(std::uint8_t * bytes, std::size_t length) {
+    static std::uint32_t state = 0x2545F491;
+    for (std::size_t i = 0; i < length; i++) {
+        state ^= state << 13;
+        state ^= state >> 17;
+        state ^= state << 5;
+        bytes[i] = std::uint8_t(state);
+    }
+}
+
+Buffer random_buffer(std::size_t length) {
+    Buffer buffer(length);
+    fill_random(buffer.data(), buffer.size());
+    return buffer;
+}
+
+void check(std::size_t result, char const * what, char const * error) {
+    if (result == olm_error()) {
+        std::cerr << "olm_benchmark: " << what << " failed: " << error
+            << std::endl;
+        std::exit(2);
+    }
+}
+
+void check(std::size_t result, char const * what, OlmAccount * account) {
+    if (result == olm_error()) {
+        check(result, what, olm_account_last_error(account));
+    }
+}
+
+void check(std::size_t result, char const * what, OlmSession * session) {
+    if (result == olm_error()) {
+        check(result, what, olm_session_last_error(session));
+    }
+}
+
+void check(
+    std::size_t result, char const * what, OlmOutboundGroupSession * session
+) {
+    if (result == olm_error()) {
+        check(result, what, olm_outbound_group_session_last_error(session));
+    }
+}
+
+void check(
+    std::size_t result, char const * what, OlmInboundGroupSession * session
+) {
+    if (result == olm_error()) {
+        check(result, what, olm_inbound_group_session_last_error(session));
+    }
+}
+
+struct Benchmark {
+    std::string name;
+    /** Largest batch that setup can prepare, 0 if unlimited */
+    std::size_t max_batch;
+    /** Untimed: prepares the state for a batch of n operations */
+    std::function<void(std::size_t)> setup;
+    /** Timed: runs n operations */
+    std::function<void(std::size_t)> run;
+};
+
+struct Result {
+    std::uint64_t iterations;
+    double ns_per_op;
+    double ops_per_sec;
+    double cycles_per_op;
+};
+
+Result measure(Benchmark const & benchmark, std::uint64_t min_ns) {
+    std::uint64_t iterations = 0, elapsed_ns = 0, elapsed_cycles = 0;
+    std::size_t batch = 1;
+    bool warm = false;
+
+    while (elapsed_ns < min_ns) {
+        std::size_t n = batch;
+        if (benchmark.max_batch && n > benchmark.max_batch) {
+            n = benchmark.max_batch;
+        }
+        if (benchmark.setup) {
+            benchmark.setup(n);
+        }
+        std::uint64_t start_cycles = read_cycles();
+        std::uint64_t start = now_ns();
+        benchmark.run(n);
+        std::uint64_t end = now_ns();
+        std::uint64_t end_cycles = read_cycles();
+
+        if (!warm) {
+            /* the first batch warms the caches and is not counted */
+            warm = true;
+            continue;
+        }
+        iterations += n;
+        elapsed_ns += end - start;
+        elapsed_cycles += end_cycles - start_cycles;
+        if (batch < (std::size_t(1) << 20)) {
+            batch *= 2;
+        }
+    }
+
+    Result result;
+    result.iterations = iterations;
+    result.ns_per_op = double(elapsed_ns) / iterations;
+    result.ops_per_sec = 1e9 / result.ns_per_op;
+    result.cycles_per_op = double(elapsed_cycles) / iterations;
+    return result;
+}
+
+/* Crypto primitives */
+
+void add_crypto_benchmarks(std::vector<Benchmark> & benchmarks) {
+    std::shared_ptr<Buffer> input = std::make_shared<Buffer>(
+        random_buffer(1024)
+    );
+    std::shared_ptr<Buffer> output = std::make_shared<Buffer>(
+        _olm_crypto_aes_encrypt_cbc_length(1024)
+    );
+    std::shared_ptr<Buffer> decrypted = std::make_shared<Buffer>(
+        output->size()
+    );
+
+    benchmarks.push_back({"crypto/sha256/1024", 0, nullptr,
+        [input, output](std::size_t n) {
+            for (std::size_t i = 0; i < n; i++) {
+                _olm_crypto_sha256(input->data(), 1024, output->data());
+            }
+        }});
+
+    benchmarks.push_back({"crypto/hmac_sha256/1024", 0, nullptr,
+        [input, output](std::size_t n) {
+            for (std::size_t i = 0; i < n; i++) {
+                _olm_crypto_hmac_sha256(
+                    input->data(), 32, input->data(), 1024, output->data()
+                );
+            }
+        }});
+
+    benchmarks.push_back({"crypto/hkdf_sha256/80", 0, nullptr,
+        [input, output](std::size_t n) {
+            for (std::size_t i = 0; i < n; i++) {
+                _olm_crypto_hkdf_sha256(
+                    input->data(), 32, input->data() + 32, 16,
+                    input->data() + 64, 32, output->data(), 80
+                );
+            }
+        }});
+
+    std::shared_ptr<_olm_aes256_key> aes_key =
+        std::make_shared<_olm_aes256_key>();
+    std::shared_ptr<_olm_aes256_iv> aes_iv =
+        std::make_shared<_olm_aes256_iv>();
+    fill_random(aes_key->key, sizeof(aes_key->key));
+    fill_random(aes_iv->iv, sizeof(aes_iv->iv));
+    _olm_crypto_aes_encrypt_cbc(
+        aes_key.get(), aes_iv.get(), input->data(), 1024, output->data()
+    );
+
+    benchmarks.push_back({"crypto/aes_cbc_encrypt/1024", 0, nullptr,
+        [input, aes_key, aes_iv, decrypted](std::size_t n) {
+            for (std::size_t i = 0; i < n; i++) {
+                _olm_crypto_aes_encrypt_cbc(
+                    aes_key.get(), aes_iv.get(),
+                    input->data(), 1024, decrypted->data()
+                );
+            }
+        }});
+
+    benchmarks.push_back({"crypto/aes_cbc_decrypt/1024", 0, nullptr,
+        [output, aes_key, aes_iv, decrypted](std::size_t n) {
+            for (std::size_t i = 0; i < n; i++) {
+                _olm_crypto_aes_decrypt_cbc(
+                    aes_key.get(), aes_iv.get(),
+                    output->data(), output->size(), decrypted->data()
+                );
+            }
+        }});
+
+    std::shared_ptr<_olm_curve25519_key_pair> curve_ours =
+        std::make_shared<_olm_curve25519_key_pair>();
+    std::shared_ptr<_olm_curve25519_key_pair> curve_theirs =
+        std::make_shared<_olm_curve25519_key_pair>();
+    _olm_crypto_curve25519_generate_key(input->data(), curve_ours.get());
+    _olm_crypto_curve25519_generate_key(input->data() + 32, curve_theirs.get());
+
+    benchmarks.push_back({"crypto/curve25519_generate_key", 0, nullptr,
+        [input](std::size_t n) {
+            _olm_curve25519_key_pair key_pair;
+            for (std::size_t i = 0; i < n; i++) {
+                _olm_crypto_curve25519_generate_key(input->data(), &key_pair);
+            }
+        }});
+
+    benchmarks.push_back({"crypto/curve25519_shared_secret", 0, nullptr,
+        [curve_ours, curve_theirs, output](std::size_t n) {
+            for (std::size_t i = 0; i < n; i++) {
+                _olm_crypto_curve25519_shared_secret(
+                    curve_ours.get(), &curve_theirs->public_key, output->data()
+                );
+            }
+        }});
+
+    std::shared_ptr<_olm_ed25519_key_pair> ed_key =
+        std::make_shared<_olm_ed25519_key_pair>();
+    _olm_crypto_ed25519_generate_key(input->data(), ed_key.get());
+    std::shared_ptr<Buffer> signature = std::make_shared<Buffer>(
+        ED25519_SIGNATURE_LENGTH
+    );
+    _olm_crypto_ed25519_sign(
+        ed_key.get(), input->data(), 256, signature->data()
+    );
+
+    benchmarks.push_back({"crypto/ed25519_generate_key", 0, nullptr,
+        [input](std::size_t n) {
+            _olm_ed25519_key_pair key_pair;
+            for (std::size_t i = 0; i < n; i++) {
+                _olm_crypto_ed25519_generate_key(input->data(), &key_pair);
+            }
+        }});
+
+    benchmarks.push_back({"crypto/ed25519_sign/256", 0, nullptr,
+        [input, ed_key, output](std::size_t n) {
+            for (std::size_t i = 0; i < n; i++) {
+                _olm_crypto_ed25519_sign(
+                    ed_key.get(), input->data(), 256, output->data()
+                );
+            }
+        }});
+
+    benchmarks.push_back({"crypto/ed25519_verify/256", 0, nullptr,
+        [input, ed_key, signature](std::size_t n) {
+            for (std::size_t i = 0; i < n; i++) {
+                _olm_crypto_ed25519_verify(
+                    &ed_key->public_key, input->data(), 256, signature->data()
+                );
+            }
+        }});
+
+    benchmarks.push_back({"crypto/ed25519_decompress", 0, nullptr,
+        [ed_key](std::size_t n) {
+            _olm_ed25519_public_key_point point;
+            for (std::size_t i = 0; i < n; i++) {
+                _olm_crypto_ed25519_decompress(&ed_key->public_key, &point);
+            }
+        }});
+
+    /* the key is decompressed once, as an inbound group session does */
+    std::shared_ptr<_olm_ed25519_public_key_point> ed_point =
+        std::make_shared<_olm_ed25519_public_key_point>();
+    _olm_crypto_ed25519_decompress(&ed_key->public_key, ed_point.get());
+
+    benchmarks.push_back({"crypto/ed25519_verify_point/256", 0, nullptr,
+        [input, ed_key, ed_point, signature](std::size_t n) {
+            for (std::size_t i = 0; i < n; i++) {
+                _olm_crypto_ed25519_verify_point(
+                    &ed_key->public_key, ed_point.get(),
+                    input->data(), 256, signature->data()
+                );
+            }
+        }});
+}
+
+/* Base64, with each engine this CPU supports */
+
+void add_base64_benchmarks(std::vector<Benchmark> & benchmarks) {
+    static struct {
+        olm::Base64Engine engine;
+        char const * name;
+    } const engines[] = {
+        {olm::BASE64_SCALAR, "scalar"},
+        {olm::BASE64_SSSE3, "ssse3"},
+        {olm::BASE64_AVX2, "avx2"},
+    };
+    static std::size_t const sizes[] = {32, 1024, 65536};
+
+    for (auto const & engine : engines) {
+        if (!olm::base64_engine_supported(engine.engine)) {
+            continue;
+        }
+        for (std::size_t size : sizes) {
+            std::string suffix =
+                std::string("/") + engine.name + "/" + std::to_string(size);
+            std::shared_ptr<Buffer> raw = std::make_shared<Buffer>(
+                random_buffer(size)
+            );
+            std::shared_ptr<Buffer> encoded = std::make_shared<Buffer>(
+                olm::encode_base64_length(size)
+            );
+            olm::encode_base64(raw->data(), raw->size(), encoded->data());
+            std::shared_ptr<Buffer> decoded = std::make_shared<Buffer>(size);
+            olm::Base64Engine id = engine.engine;
+
+            benchmarks.push_back({"base64/encode" + suffix, 0, nullptr,
+                [id, raw, encoded](std::size_t n) {
+                    for (std::size_t i = 0; i < n; i++) {
+                        olm::encode_base64(
+                            id, raw->data(), raw->size(), encoded->data()
+                        );
+                    }
+                }});
+
+            benchmarks.push_back({"base64/decode" + suffix, 0, nullptr,
+                [id, encoded, decoded](std::size_t n) {
+                    for (std::size_t i = 0; i < n; i++) {
+                        olm::decode_base64(
+                            id, encoded->data(), encoded->size(),
+                            decoded->data()
+                        );
+                    }
+                }});
+        }
+    }
+}
+
+/* Accounts and sessions */
+
+struct Account {
+    Account() : buffer(olm_account_size()), account(olm_account(buffer.data())) {
+        Buffer random = random_buffer(olm_create_account_random_length(account));
+        check(
+            olm_create_account(account, random.data(), random.size()),
+            "olm_create_account", account
+        );
+    }
+
+    void generate_one_time_keys(std::size_t count) {
+        Buffer random = random_buffer(
+            olm_account_generate_one_time_keys_random_length(account, count)
+        );
+        check(
+            olm_account_generate_one_time_keys(
+                account, count, random.data(), random.size()
+            ),
+            "olm_account_generate_one_time_keys",
+            account
+        );
+    }
+
+    /** The base64 Curve25519 identity key */
+    std::string identity_key() {
+        Buffer keys(olm_account_identity_keys_packed_length(account));
+        olm_account_identity_keys_packed(account, keys.data(), keys.size());
+        return std::string(keys.begin(), keys.begin() + keys.size() / 2);
+    }
+
+    /** The base64 key of the newest one time key */
+    std::string one_time_key() {
+        Buffer key(olm_account_one_time_key_packed_length(account));
+        check(
+            olm_account_one_time_keys_packed(
+                account, 0, 1, 0, key.data(), key.size()
+            ),
+            "olm_account_one_time_keys_packed", account
+        );
+        return std::string(key.end() - 43, key.end());
+    }
+
+    Buffer buffer;
+    OlmAccount * account;
+};
+
+struct Session {
+    Session() : buffer(olm_session_size()), session(olm_session(buffer.data())) {}
+
+    void create_outbound(Account & from, Account & to) {
+        std::string identity_key = to.identity_key();
+        std::string one_time_key = to.one_time_key();
+        Buffer random = random_buffer(
+            olm_create_outbound_session_random_length(session)
+        );
+        check(
+            olm_create_outbound_session(
+                session, from.account,
+                identity_key.data(), identity_key.size(),
+                one_time_key.data(), one_time_key.size(),
+                random.data(), random.size()
+            ),
+            "olm_create_outbound_session", session
+        );
+    }
+
+    Buffer encrypt(Buffer const & plaintext, std::size_t & message_type) {
+        message_type = olm_encrypt_message_type(session);
+        Buffer random = random_buffer(olm_encrypt_random_length(session));
+        Buffer message(olm_encrypt_message_length(session, plaintext.size()));
+        check(
+            olm_encrypt(
+                session, plaintext.data(), plaintext.size(),
+                random.data(), random.size(), message.data(), message.size()
+            ),
+            "olm_encrypt", session
+        );
+        return message;
+    }
+
+    void decrypt(std::size_t message_type, Buffer message) {
+        Buffer plaintext(message.size());
+        check(
+            olm_decrypt(
+                session, message_type, message.data(), message.size(),
+                plaintext.data(), plaintext.size()
+            ),
+            "olm_decrypt", session
+        );
+    }
+
+    Buffer buffer;
+    OlmSession * session;
+};
+
+void add_account_benchmarks(std::vector<Benchmark> & benchmarks) {
+    std::shared_ptr<Account> account = std::make_shared<Account>();
+    std::shared_ptr<Buffer> random = std::make_shared<Buffer>(random_buffer(
+        olm_create_account_random_length(account->account)
+    ));
+
+    benchmarks.push_back({"account/create", 0, nullptr,
+        [account, random](std::size_t n) {
+            for (std::size_t i = 0; i < n; i++) {
+                check(
+                    olm_create_account(
+                        account->account, random->data(), random->size()
+                    ),
+                    "olm_create_account", account->account
+                );
+            }
+        }});
+
+    static std::size_t const pool_sizes[] = {1, 10, 100, 1000};
+    for (std::size_t count : pool_sizes) {
+        std::shared_ptr<Buffer> key_random = std::make_shared<Buffer>(
+            random_buffer(olm_account_generate_one_time_keys_random_length(
+                account->account, count
+            ))
+        );
+        benchmarks.push_back({
+            "account/generate_one_time_keys/" + std::to_string(count), 0,
+            nullptr,
+            [account, key_random, count](std::size_t n) {
+                for (std::size_t i = 0; i < n; i++) {
+                    check(
+                        olm_account_generate_one_time_keys(
+                            account->account, count,
+                            key_random->data(), key_random->size()
+                        ),
+                        "olm_account_generate_one_time_keys", account->account
+                    );
+                }
+            }});
+    }
+}
+
+void add_session_benchmarks(std::vector<Benchmark> & benchmarks) {
+    static std::size_t const BATCH = 256;
+
+    std::shared_ptr<Account> alice = std::make_shared<Account>();
+    std::shared_ptr<Account> bob = std::make_shared<Account>();
+    bob->generate_one_time_keys(1);
+
+    std::shared_ptr<Session> outbound = std::make_shared<Session>();
+    std::shared_ptr<std::string> identity_key = std::make_shared<std::string>(
+        bob->identity_key()
+    );
+    std::shared_ptr<std::string> one_time_key = std::make_shared<std::string>(
+        bob->one_time_key()
+    );
+    std::shared_ptr<Buffer> random = std::make_shared<Buffer>(random_buffer(
+        olm_create_outbound_session_random_length(outbound->session)
+    ));
+
+    std::shared_ptr<Session> created = std::make_shared<Session>();
+
+    benchmarks.push_back({"session/create_outbound", 0, nullptr,
+        [alice, created, identity_key, one_time_key, random](std::size_t n) {
+            for (std::size_t i = 0; i < n; i++) {
+                check(
+                    olm_create_outbound_session(
+                        olm_session(created->buffer.data()), alice->account,
+                        identity_key->data(), identity_key->size(),
+                        one_time_key->data(), one_time_key->size(),
+                        random->data(), random->size()
+                    ),
+                    "olm_create_outbound_session", created->session
+                );
+            }
+        }});
+
+    /* a pre-key message from alice, copied for each decoding */
+    std::size_t message_type;
+    outbound->create_outbound(*alice, *bob);
+    Buffer pre_key = outbound->encrypt(Buffer(16), message_type);
+    std::shared_ptr<std::vector<Buffer>> pre_keys =
+        std::make_shared<std::vector<Buffer>>();
+
+    benchmarks.push_back({"session/create_inbound", BATCH,
+        [pre_keys, pre_key](std::size_t n) {
+            pre_keys->assign(n, pre_key);
+        },
+        [bob, created, pre_keys](std::size_t n) {
+            for (std::size_t i = 0; i < n; i++) {
+                check(
+                    olm_create_inbound_session(
+                        olm_session(created->buffer.data()), bob->account,
+                        (*pre_keys)[i].data(), (*pre_keys)[i].size()
+                    ),
+                    "olm_create_inbound_session", created->session
+                );
+            }
+        }});
+
+    /* a session in both directions, so that alice sends normal messages */
+    std::shared_ptr<Session> inbound = std::make_shared<Session>();
+    check(
+        olm_create_inbound_session(
+            inbound->session, bob->account, Buffer(pre_key).data(),
+            pre_key.size()
+        ),
+        "olm_create_inbound_session", inbound->session
+    );
+    inbound->decrypt(message_type, pre_key);
+    Buffer reply = inbound->encrypt(Buffer(16), message_type);
+    outbound->decrypt(message_type, reply);
+
+    /* bob's state before any of the benchmark messages */
+    Buffer bob_pickle(olm_pickle_session_length(inbound->session));
+    olm_pickle_session(
+        inbound->session, "", 0, bob_pickle.data(), bob_pickle.size()
+    );
+
+    static std::size_t const payload_sizes[] = {16, 256, 4096, 65536};
+    for (std::size_t size : payload_sizes) {
+        std::string suffix = "/" + std::to_string(size);
+        std::shared_ptr<Buffer> plaintext = std::make_shared<Buffer>(
+            random_buffer(size)
+        );
+        std::shared_ptr<Buffer> encrypt_random = std::make_shared<Buffer>(
+            random_buffer(olm_encrypt_random_length(outbound->session))
+        );
+        /* leave room for the chain index to grow as the benchmark runs */
+        std::shared_ptr<Buffer> message = std::make_shared<Buffer>(
+            olm_encrypt_message_length(outbound->session, size) + 16
+        );
+
+        benchmarks.push_back({"session/encrypt" + suffix, 0, nullptr,
+            [outbound, plaintext, encrypt_random, message](std::size_t n) {
+                for (std::size_t i = 0; i < n; i++) {
+                    check(
+                        olm_encrypt(
+                            outbound->session,
+                            plaintext->data(), plaintext->size(),
+                            encrypt_random->data(), encrypt_random->size(),
+                            message->data(), message->size()
+                        ),
+                        "olm_encrypt", outbound->session
+                    );
+                }
+            }});
+
+        /* decrypting needs a fresh message for each operation: bob is
+         * restored from the pickle, and decrypts a run of messages from a
+         * copy of alice */
+        Session sender;
+        Buffer alice_pickle(olm_pickle_session_length(outbound->session));
+        olm_pickle_session(
+            outbound->session, "", 0, alice_pickle.data(), alice_pickle.size()
+        );
+        olm_unpickle_session(
+            sender.session, "", 0, alice_pickle.data(), alice_pickle.size()
+        );
+        std::shared_ptr<std::vector<Buffer>> messages =
+            std::make_shared<std::vector<Buffer>>();
+        for (std::size_t i = 0; i < BATCH; i++) {
+            messages->push_back(sender.encrypt(*plaintext, message_type));
+        }
+        std::shared_ptr<std::vector<Buffer>> batch =
+            std::make_shared<std::vector<Buffer>>();
+        std::shared_ptr<Buffer> decrypted = std::make_shared<Buffer>(
+            messages->front().size()
+        );
+        std::shared_ptr<Session> receiver = std::make_shared<Session>();
+
+        benchmarks.push_back({"session/decrypt" + suffix, BATCH,
+            [receiver, bob_pickle, messages, batch](std::size_t n) {
+                Buffer pickle(bob_pickle);
+                receiver->session = olm_session(receiver->buffer.data());
+                check(
+                    olm_unpickle_session(
+                        receiver->session, "", 0, pickle.data(), pickle.size()
+                    ),
+                    "olm_unpickle_session",
+                    receiver->session
+                );
+                batch->assign(messages->begin(), messages->begin() + n);
+            },
+            [receiver, batch, decrypted, message_type](std::size_t n) {
+                for (std::size_t i = 0; i < n; i++) {
+                    check(
+                        olm_decrypt(
+                            receiver->session, message_type,
+                            (*batch)[i].data(), (*batch)[i].size(),
+                            decrypted->data(), decrypted->size()
+                        ),
+                        "olm_decrypt",
+                        receiver->session
+                    );
+                }
+            }});
+    }
+}
+
+/* Megolm */
+
+void add_megolm_benchmarks(std::vector<Benchmark> & benchmarks) {
+    std::shared_ptr<Megolm> megolm = std::make_shared<Megolm>();
+    Buffer random = random_buffer(MEGOLM_RATCHET_LENGTH);
+    megolm_init(megolm.get(), random.data(), 0);
+
+    benchmarks.push_back({"megolm/advance", 0, nullptr,
+        [megolm](std::size_t n) {
+            for (std::size_t i = 0; i < n; i++) {
+                megolm_advance(megolm.get());
+            }
+        }});
+
+    static std::uint32_t const gaps[] = {1, 256, 65536, 16777216};
+    for (std::uint32_t gap : gaps) {
+        benchmarks.push_back({
+            "megolm/advance_to/" + std::to_string(gap), 0, nullptr,
+            [megolm, gap](std::size_t n) {
+                for (std::size_t i = 0; i < n; i++) {
+                    megolm_advance_to(megolm.get(), megolm->counter + gap);
+                }
+            }});
+    }
+}
+
+struct OutboundGroupSession {
+    OutboundGroupSession()
+        : buffer(olm_outbound_group_session_size()),
+          session(olm_outbound_group_session(buffer.data())) {
+        Buffer random = random_buffer(
+            olm_init_outbound_group_session_random_length(session)
+        );
+        check(
+            olm_init_outbound_group_session(
+                session, random.data(), random.size()
+            ),
+            "olm_init_outbound_group_session",
+            session
+        );
+    }
+
+    Buffer encrypt(Buffer const & plaintext) {
+        Buffer message(olm_group_encrypt_message_length(
+            session, plaintext.size()
+        ));
+        check(
+            olm_group_encrypt(
+                session, plaintext.data(), plaintext.size(),
+                message.data(), message.size()
+            ),
+            "olm_group_encrypt", session
+        );
+        return message;
+    }
+
+    Buffer key() {
+        Buffer key(olm_outbound_group_session_key_length(session));
+        olm_outbound_group_session_key(session, key.data(), key.size());
+        return key;
+    }
+
+    Buffer buffer;
+    OlmOutboundGroupSession * session;
+};
+
+struct InboundGroupSession {
+    InboundGroupSession()
+        : buffer(olm_inbound_group_session_size()),
+          session(olm_inbound_group_session(buffer.data())) {}
+
+    void init(Buffer const & key) {
+        check(
+            olm_init_inbound_group_session(session, key.data(), key.size()),
+            "olm_init_inbound_group_session",
+            session
+        );
+    }
+
+    Buffer buffer;
+    OlmInboundGroupSession * session;
+};
+
+void add_group_session_benchmarks(std::vector<Benchmark> & benchmarks) {
+    static std::size_t const BATCH = 256;
+
+    std::shared_ptr<OutboundGroupSession> outbound =
+        std::make_shared<OutboundGroupSession>();
+
+    static std::size_t const payload_sizes[] = {16, 256, 4096, 65536};
+    for (std::size_t size : payload_sizes) {
+        std::string suffix = "/" + std::to_string(size);
+        std::shared_ptr<Buffer> plaintext = std::make_shared<Buffer>(
+            random_buffer(size)
+        );
+        /* leave room for the message index to grow as the benchmark runs */
+        std::shared_ptr<Buffer> message = std::make_shared<Buffer>(
+            olm_group_encrypt_message_length(outbound->session, size) + 16
+        );
+
+        benchmarks.push_back({"group/encrypt" + suffix, 0, nullptr,
+            [outbound, plaintext, message](std::size_t n) {
+                for (std::size_t i = 0; i < n; i++) {
+                    check(
+                        olm_group_encrypt(
+                            outbound->session,
+                            plaintext->data(), plaintext->size(),
+                            message->data(), message->size()
+                        ),
+                        "olm_group_encrypt", outbound->session
+                    );
+                }
+            }});
+
+        /* the inbound session is imported at the first message of the run,
+         * which it then decrypts in order */
+        Buffer key = outbound->key();
+        std::shared_ptr<std::vector<Buffer>> messages =
+            std::make_shared<std::vector<Buffer>>();
+        for (std::size_t i = 0; i < BATCH; i++) {
+            messages->push_back(outbound->encrypt(*plaintext));
+        }
+        std::shared_ptr<std::vector<Buffer>> batch =
+            std::make_shared<std::vector<Buffer>>();
+        std::shared_ptr<Buffer> decrypted = std::make_shared<Buffer>(
+            messages->front().size()
+        );
+        std::shared_ptr<InboundGroupSession> inbound =
+            std::make_shared<InboundGroupSession>();
+
+        benchmarks.push_back({"group/decrypt" + suffix, BATCH,
+            [inbound, key, messages, batch](std::size_t n) {
+                inbound->session = olm_inbound_group_session(
+                    inbound->buffer.data()
+                );
+                inbound->init(key);
+                batch->assign(messages->begin(), messages->begin() + n);
+            },
+            [inbound, batch, decrypted](std::size_t n) {
+                std::uint32_t message_index;
+                for (std::size_t i = 0; i < n; i++) {
+                    check(
+                        olm_group_decrypt(
+                            inbound->session,
+                            (*batch)[i].data(), (*batch)[i].size(),
+                            decrypted->data(), decrypted->size(),
+                            &message_index
+                        ),
+                        "olm_group_decrypt",
+                        inbound->session
+                    );
+                }
+            }});
+
+        /* the same without the base64 encoding */
+        benchmarks.push_back({"group/encrypt_raw" + suffix, 0, nullptr,
+            [outbound, plaintext, message](std::size_t n) {
+                for (std::size_t i = 0; i < n; i++) {
+                    check(
+                        olm_group_encrypt_raw(
+                            outbound->session,
+                            plaintext->data(), plaintext->size(),
+                            message->data(), message->size()
+                        ),
+                        "olm_group_encrypt_raw", outbound->session
+                    );
+                }
+            }});
+
+        Buffer raw_key = outbound->key();
+        std::shared_ptr<std::vector<Buffer>> raw_messages =
+            std::make_shared<std::vector<Buffer>>();
+        for (std::size_t i = 0; i < BATCH; i++) {
+            Buffer raw(olm_group_encrypt_raw_message_length(
+                outbound->session, plaintext->size()
+            ));
+            check(
+                olm_group_encrypt_raw(
+                    outbound->session, plaintext->data(), plaintext->size(),
+                    raw.data(), raw.size()
+                ),
+                "olm_group_encrypt_raw", outbound->session
+            );
+            raw_messages->push_back(raw);
+        }
+        std::shared_ptr<InboundGroupSession> raw_inbound =
+            std::make_shared<InboundGroupSession>();
+
+        /* the raw messages are left untouched, so they aren't copied */
+        benchmarks.push_back({"group/decrypt_raw" + suffix, BATCH,
+            [raw_inbound, raw_key](std::size_t) {
+                raw_inbound->session = olm_inbound_group_session(
+                    raw_inbound->buffer.data()
+                );
+                raw_inbound->init(raw_key);
+            },
+            [raw_inbound, raw_messages, decrypted](std::size_t n) {
+                std::uint32_t message_index;
+                for (std::size_t i = 0; i < n; i++) {
+                    check(
+                        olm_group_decrypt_raw(
+                            raw_inbound->session,
+                            (*raw_messages)[i].data(), (*raw_messages)[i].size(),
+                            decrypted->data(), decrypted->size(),
+                            &message_index, nullptr
+                        ),
+                        "olm_group_decrypt_raw",
+                        raw_inbound->session
+                    );
+                }
+            }});
+    }
+}
+
+/* Pickling */
+
+/** Adds a pickle and an unpickle benchmark for an object, given functions
+ * that pickle it and unpickle into it */
+void add_pickle_benchmarks(
+    std::vector<Benchmark> & benchmarks, std::string const & name,
+    std::function<std::size_t(void *, std::size_t)> pickle,
+    std::function<std::size_t(void *, std::size_t)> unpickle,
+    std::size_t pickle_length
+) {
+    static std::size_t const BATCH = 64;
+
+    std::shared_ptr<Buffer> pickled = std::make_shared<Buffer>(pickle_length);
+    check(pickle(pickled->data(), pickled->size()), "pickle", name.c_str());
+
+    std::shared_ptr<Buffer> output = std::make_shared<Buffer>(pickle_length);
+
+    benchmarks.push_back({"pickle/" + name, 0, nullptr,
+        [pickle, output, name](std::size_t n) {
+            for (std::size_t i = 0; i < n; i++) {
+                check(
+                    pickle(output->data(), output->size()),
+                    "pickle", name.c_str()
+                );
+            }
+        }});
+
+    std::shared_ptr<std::vector<Buffer>> batch =
+        std::make_shared<std::vector<Buffer>>();
+
+    benchmarks.push_back({"unpickle/" + name, BATCH,
+        [pickled, batch](std::size_t n) {
+            batch->assign(n, *pickled);
+        },
+        [unpickle, batch, name](std::size_t n) {
+            for (std::size_t i = 0; i < n; i++) {
+                check(
+                    unpickle((*batch)[i].data(), (*batch)[i].size()),
+                    "unpickle", name.c_str()
+                );
+            }
+        }});
+}
+
+void add_pickle_benchmarks(std::vector<Benchmark> & benchmarks) {
+    static std::size_t const key_counts[] = {0, 100, 1000};
+    for (std::size_t count : key_counts) {
+        std::shared_ptr<Account> account = std::make_shared<Account>();
+        if (count) {
+            account->generate_one_time_keys(count);
+        }
+        std::shared_ptr<Account> target = std::make_shared<Account>();
+        add_pickle_benchmarks(
+            benchmarks, "account/" + std::to_string(count),
+            [account](void * pickled, std::size_t length) {
+                return olm_pickle_account(
+                    account->account, "key", 3, pickled, length
+                );
+            },
+            [target](void * pickled, std::size_t length) {
+                /* unpickling appends to the lists of a used object */
+                target->account = olm_account(target->buffer.data());
+                return olm_unpickle_account(
+                    target->account, "key", 3, pickled, length
+                );
+            },
+            olm_pickle_account_length(account->account)
+        );
+    }
+
+    Account alice, bob;
+    bob.generate_one_time_keys(1);
+    std::shared_ptr<Session> session = std::make_shared<Session>();
+    session->create_outbound(alice, bob);
+    std::shared_ptr<Session> session_target = std::make_shared<Session>();
+    add_pickle_benchmarks(
+        benchmarks, "session",
+        [session](void * pickled, std::size_t length) {
+            return olm_pickle_session(
+                session->session, "key", 3, pickled, length
+            );
+        },
+        [session_target](void * pickled, std::size_t length) {
+            session_target->session = olm_session(
+                session_target->buffer.data()
+            );
+            return olm_unpickle_session(
+                session_target->session, "key", 3, pickled, length
+            );
+        },
+        olm_pickle_session_length(session->session)
+    );
+
+    std::shared_ptr<OutboundGroupSession> outbound =
+        std::make_shared<OutboundGroupSession>();
+    std::shared_ptr<InboundGroupSession> inbound =
+        std::make_shared<InboundGroupSession>();
+    inbound->init(outbound->key());
+    std::shared_ptr<InboundGroupSession> inbound_target =
+        std::make_shared<InboundGroupSession>();
+    add_pickle_benchmarks(
+        benchmarks, "inbound_group_session",
+        [inbound](void * pickled, std::size_t length) {
+            return olm_pickle_inbound_group_session(
+                inbound->session, "key", 3, pickled, length
+            );
+        },
+        [inbound_target](void * pickled, std::size_t length) {
+            return olm_unpickle_inbound_group_session(
+                inbound_target->session, "key", 3, pickled, length
+            );
+        },
+        olm_pickle_inbound_group_session_length(inbound->session)
+    );
+}
+
+/* Baselines */
+
+std::map<std::string, double> load_baseline(char const * path) {
+    std::map<std::string, double> baseline;
+    std::ifstream file(path);
+    if (!file) {
+        std::cerr << "olm_benchmark: can't read " << path << std::endl;
+        std::exit(2);
+    }
+    std::string line;
+    while (std::getline(file, line)) {
+        std::istringstream row(line);
+        std::string name, iterations, ns_per_op;
+        if (!std::getline(row, name, ',')
+                || !std::getline(row, iterations, ',')
+                || !std::getline(row, ns_per_op, ',')
+                || name == "benchmark") {
+            continue;
+        }
+        baseline[name] = std::atof(ns_per_op.c_str());
+    }
+    return baseline;
+}
+
+void usage() {
+    std::cerr <<
+        "usage: olm_benchmark [options]\n"
+        "  --filter TEXT      only run benchmarks whose name contains TEXT\n"
+        "  --min-time MS      time each benchmark for at least MS ms"
+        " (default 500)\n"
+        "  --compare FILE     compare with the CSV output of an earlier run\n"
+        "  --threshold PCT    slowdown reported as a regression"
+        " (default 10)\n"
+        "  --list             list the benchmarks\n";
+}
+
+} // namespace
+
+
+int main(int argc, char * argv[]) {
+    std::string filter;
+    std::uint64_t min_ms = 500;
+    char const * baseline_path = NULL;
+    double threshold = 10;
+    bool list = false;
+
+    for (int i = 1; i < argc; i++) {
+        std::string arg(argv[i]);
+        if (arg == "--list") {
+            list = true;
+        } else if (i + 1 < argc && arg == "--filter") {
+            filter = argv[++i];
+        } else if (i + 1 < argc && arg == "--min-time") {
+            min_ms = std::strtoull(argv[++i], NULL, 10);
+        } else if (i + 1 < argc && arg == "--compare") {
+            baseline_path = argv[++i];
+        } else if (i + 1 < argc && arg == "--threshold") {
+            threshold = std::atof(argv[++i]);
+        } else {
+            usage();
+            return 2;
+        }
+    }
+
+    std::map<std::string, double> baseline;
+    if (baseline_path) {
+        baseline = load_baseline(baseline_path);
+    }
+
+    std::vector<Benchmark> benchmarks;
+    add_crypto_benchmarks(benchmarks);
+    add_base64_benchmarks(benchmarks);
+    add_account_benchmarks(benchmarks);
+    add_session_benchmarks(benchmarks);
+    add_megolm_benchmarks(benchmarks);
+    add_group_session_benchmarks(benchmarks);
+    add_pickle_benchmarks(benchmarks);
+
+    if (list) {
+        for (Benchmark const & benchmark : benchmarks) {
+            std::cout << benchmark.name << std::endl;
+        }
+        return 0;
+    }
+
+    std::cout << "benchmark,iterations,ns_per_op,ops_per_sec,cycles_per_op";
+    if (baseline_path) {
+        std::cout << ",baseline_ns_per_op,change_percent,status";
+    }
+    std::cout << std::endl;
+
+    int regressions = 0;
+    for (Benchmark const & benchmark : benchmarks) {
+        if (benchmark.name.find(filter) == std::string::npos) {
+            continue;
+        }
+        Result result = measure(benchmark, min_ms * 1000000);
+
+        char row[256];
+        std::snprintf(
+            row, sizeof(row), "%s,%llu,%.1f,%.1f,%.1f",
+            benchmark.name.c_str(), (unsigned long long) result.iterations,
+            result.ns_per_op, result.ops_per_sec, result.cycles_per_op
+        );
+        std::cout << row;
+
+        if (baseline_path) {
+            std::map<std::string, double>::const_iterator previous =
+                baseline.find(benchmark.name);
+            if (previous == baseline.end() || previous->second <= 0) {
+                std::cout << ",,,new";
+            } else {
+                double change =
+                    (result.ns_per_op - previous->second) * 100
+                        / previous->second;
+                char const * status = "ok";
+                if (change > threshold) {
+                    status = "regression";
+                    regressions++;
+                } else if (change < -threshold) {
+                    status = "improvement";
+                }
+                std::snprintf(
+                    row, sizeof(row), ",%.1f,%+.1f,%s",
+                    previous->second, change, status
+                );
+                std::cout << row;
+            }
+        }
+        std::cout << std::endl;
+    }
+
+    return regressions ? 1 : 0;
+}
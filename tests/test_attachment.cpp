@@ -0,0 +1,200 @@
+#include "self_olm/attachment.h"
+#include "self_olm/crypto.h"
+#include "self_olm/olm.h"
+
+#include "unittest.hh"
+
+#include <vector>
+
+int main() {
+
+{ /* NIST SP 800-38A F.5.5 CTR-AES256.Encrypt */
+
+TestCase test_case("Attachment AES-CTR test vector");
+
+std::uint8_t key[32] = {
+    0x60, 0x3d, 0xeb, 0x10, 0x15, 0xca, 0x71, 0xbe,
+    0x2b, 0x73, 0xae, 0xf0, 0x85, 0x7d, 0x77, 0x81,
+    0x1f, 0x35, 0x2c, 0x07, 0x3b, 0x61, 0x08, 0xd7,
+    0x2d, 0x98, 0x10, 0xa3, 0x09, 0x14, 0xdf, 0xf4
+};
+
+std::uint8_t iv[16] = {
+    0xf0, 0xf1, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7,
+    0xf8, 0xf9, 0xfa, 0xfb, 0xfc, 0xfd, 0xfe, 0xff
+};
+
+std::uint8_t plaintext[64] = {
+    0x6b, 0xc1, 0xbe, 0xe2, 0x2e, 0x40, 0x9f, 0x96,
+    0xe9, 0x3d, 0x7e, 0x11, 0x73, 0x93, 0x17, 0x2a,
+    0xae, 0x2d, 0x8a, 0x57, 0x1e, 0x03, 0xac, 0x9c,
+    0x9e, 0xb7, 0x6f, 0xac, 0x45, 0xaf, 0x8e, 0x51,
+    0x30, 0xc8, 0x1c, 0x46, 0xa3, 0x5c, 0xe4, 0x11,
+    0xe5, 0xfb, 0xc1, 0x19, 0x1a, 0x0a, 0x52, 0xef,
+    0xf6, 0x9f, 0x24, 0x45, 0xdf, 0x4f, 0x9b, 0x17,
+    0xad, 0x2b, 0x41, 0x7b, 0xe6, 0x6c, 0x37, 0x10
+};
+
+std::uint8_t expected[64] = {
+    0x60, 0x1e, 0xc3, 0x13, 0x77, 0x57, 0x89, 0xa5,
+    0xb7, 0xa7, 0xf5, 0x04, 0xbb, 0xf3, 0xd2, 0x28,
+    0xf4, 0x43, 0xe3, 0xca, 0x4d, 0x62, 0xb5, 0x9a,
+    0xca, 0x84, 0xe9, 0x90, 0xca, 0xca, 0xf5, 0xc5,
+    0x2b, 0x09, 0x30, 0xda, 0xa2, 0x3d, 0xe9, 0x4c,
+    0xe8, 0x70, 0x17, 0xba, 0x2d, 0x84, 0x98, 0x8d,
+    0xdf, 0xc9, 0xc5, 0x8d, 0xb6, 0x7a, 0xad, 0xa6,
+    0x13, 0xc2, 0xdd, 0x08, 0x45, 0x79, 0x41, 0xa6
+};
+
+std::vector<std::uint8_t> attachment_buffer(olm_attachment_size());
+OlmAttachment *attachment = olm_attachment(attachment_buffer.data());
+
+assert_equals(
+    std::size_t(0),
+    olm_attachment_init_encryption(attachment, key, sizeof(key), iv, sizeof(iv))
+);
+
+std::uint8_t ciphertext[64];
+assert_equals(
+    sizeof(plaintext),
+    olm_attachment_update(
+        attachment, plaintext, sizeof(plaintext), ciphertext, sizeof(ciphertext)
+    )
+);
+assert_equals(expected, ciphertext, sizeof(expected));
+
+std::uint8_t digest[SHA256_OUTPUT_LENGTH];
+std::uint8_t expected_digest[SHA256_OUTPUT_LENGTH];
+_olm_crypto_sha256(expected, sizeof(expected), expected_digest);
+assert_equals(
+    olm_attachment_digest_length(),
+    olm_attachment_digest(attachment, digest, sizeof(digest))
+);
+assert_equals(expected_digest, digest, sizeof(digest));
+
+/* decrypt in place, in uneven chunks */
+assert_equals(
+    std::size_t(0),
+    olm_attachment_init_decryption(attachment, key, sizeof(key), iv, sizeof(iv))
+);
+std::size_t chunks[] = {1, 7, 17, 39};
+std::size_t offset = 0;
+for (std::size_t chunk : chunks) {
+    olm_attachment_update(
+        attachment, ciphertext + offset, chunk, ciphertext + offset, chunk
+    );
+    offset += chunk;
+}
+assert_equals(std::uint64_t(64), olm_attachment_processed_length(attachment));
+assert_equals(plaintext, ciphertext, sizeof(plaintext));
+
+olm_attachment_digest(attachment, digest, sizeof(digest));
+assert_equals(expected_digest, digest, sizeof(digest));
+
+}
+
+{ /* Chunked and one-shot encryption agree */
+
+TestCase test_case("Attachment chunked encryption");
+
+std::uint8_t key[32] = {};
+std::uint8_t iv[16] = {};
+for (unsigned i = 0; i < sizeof(key); i++) {
+    key[i] = i;
+}
+/* start just below the wrap of the 64-bit counter */
+for (unsigned i = 8; i < sizeof(iv); i++) {
+    iv[i] = 0xff;
+}
+iv[15] = 0xf0;
+
+std::vector<std::uint8_t> plaintext(100000);
+for (std::size_t i = 0; i < plaintext.size(); i++) {
+    plaintext[i] = (std::uint8_t)(i * 31 + 7);
+}
+
+std::vector<std::uint8_t> attachment_buffer(olm_attachment_size());
+OlmAttachment *attachment = olm_attachment(attachment_buffer.data());
+
+std::vector<std::uint8_t> one_shot(plaintext.size());
+olm_attachment_init_encryption(attachment, key, sizeof(key), iv, sizeof(iv));
+olm_attachment_update(
+    attachment, plaintext.data(), plaintext.size(),
+    one_shot.data(), one_shot.size()
+);
+std::uint8_t one_shot_digest[SHA256_OUTPUT_LENGTH];
+olm_attachment_digest(attachment, one_shot_digest, sizeof(one_shot_digest));
+
+std::vector<std::uint8_t> chunked(plaintext);
+olm_attachment_init_encryption(attachment, key, sizeof(key), iv, sizeof(iv));
+std::size_t offset = 0, chunk = 1;
+while (offset < chunked.size()) {
+    std::size_t length = std::min(chunk, chunked.size() - offset);
+    olm_attachment_update(
+        attachment, chunked.data() + offset, length,
+        chunked.data() + offset, length
+    );
+    offset += length;
+    chunk = chunk * 3 + 1;
+}
+std::uint8_t chunked_digest[SHA256_OUTPUT_LENGTH];
+olm_attachment_digest(attachment, chunked_digest, sizeof(chunked_digest));
+
+assert_equals(one_shot.data(), chunked.data(), one_shot.size());
+assert_equals(one_shot_digest, chunked_digest, sizeof(chunked_digest));
+
+/* the high half of the counter block is not carried into */
+std::uint8_t zero[32] = {};
+std::uint8_t wrapped[32];
+std::uint8_t first_block[16];
+std::uint8_t iv_wrap[16];
+std::memcpy(iv_wrap, iv, sizeof(iv_wrap));
+iv_wrap[15] = 0xff;
+olm_attachment_init_encryption(attachment, key, sizeof(key), iv_wrap, sizeof(iv_wrap));
+olm_attachment_update(attachment, zero, sizeof(zero), wrapped, sizeof(wrapped));
+
+std::uint8_t iv_zero[16] = {};
+olm_attachment_init_encryption(attachment, key, sizeof(key), iv_zero, sizeof(iv_zero));
+olm_attachment_update(attachment, zero, 16, first_block, sizeof(first_block));
+assert_equals(first_block, wrapped + 16, 16);
+
+}
+
+{ /* Errors */
+
+TestCase test_case("Attachment errors");
+
+std::vector<std::uint8_t> attachment_buffer(olm_attachment_size());
+OlmAttachment *attachment = olm_attachment(attachment_buffer.data());
+
+std::uint8_t buffer[32] = {};
+assert_equals(
+    olm_error(),
+    olm_attachment_update(attachment, buffer, sizeof(buffer), buffer, sizeof(buffer))
+);
+assert_equals(
+    std::string("BAD_STATE"), std::string(olm_attachment_last_error(attachment))
+);
+
+assert_equals(
+    olm_error(),
+    olm_attachment_init_encryption(attachment, buffer, 16, buffer, 16)
+);
+assert_equals(
+    std::string("OLM_INPUT_BUFFER_TOO_SMALL"),
+    std::string(olm_attachment_last_error(attachment))
+);
+
+olm_attachment_init_encryption(attachment, buffer, 32, buffer, 16);
+assert_equals(
+    olm_error(),
+    olm_attachment_update(attachment, buffer, sizeof(buffer), buffer, 16)
+);
+assert_equals(
+    std::string("OUTPUT_BUFFER_TOO_SMALL"),
+    std::string(olm_attachment_last_error(attachment))
+);
+
+}
+
+}
@@ -2,6 +2,9 @@
 #include "self_olm/base64.h"
 #include "unittest.hh"
 
+#include <algorithm>
+#include <vector>
+
 int main() {
 
 { /* Base64 encode test */
@@ -66,5 +69,80 @@ assert_equals(std::size_t(11), output_length);
 assert_equals(expected_output, output, output_length);
 }
 
+{
+TestCase test_case("Base64 engines match the scalar code");
+
+const olm::Base64Engine engines[] = {
+    olm::BASE64_SSSE3, olm::BASE64_AVX2
+};
+assert_equals(true, olm::base64_engine_supported(olm::BASE64_SCALAR));
+assert_equals(true, olm::base64_engine_supported(olm::base64_engine()));
+
+std::vector<std::uint8_t> input(300);
+for (std::size_t i = 0; i < input.size(); i++) {
+    input[i] = std::uint8_t(i * 73 + 11);
+}
+
+for (olm::Base64Engine engine : engines) {
+    if (!olm::base64_engine_supported(engine)) {
+        continue;
+    }
+    for (std::size_t length = 0; length <= input.size(); length++) {
+        std::size_t encoded_length = olm::encode_base64_length(length);
+        std::vector<std::uint8_t> expected(encoded_length);
+        std::vector<std::uint8_t> encoded(encoded_length);
+        olm::encode_base64(
+            olm::BASE64_SCALAR, input.data(), length, expected.data()
+        );
+        olm::encode_base64(engine, input.data(), length, encoded.data());
+        assert_equals(expected.data(), encoded.data(), encoded_length);
+
+        /* in place, with the input at the end of the output */
+        std::vector<std::uint8_t> in_place(encoded_length);
+        std::uint8_t * raw = in_place.data() + encoded_length - length;
+        std::copy(input.begin(), input.begin() + length, raw);
+        olm::encode_base64(engine, raw, length, in_place.data());
+        assert_equals(expected.data(), in_place.data(), encoded_length);
+
+        std::vector<std::uint8_t> decoded(length);
+        olm::decode_base64(
+            engine, encoded.data(), encoded_length, decoded.data()
+        );
+        assert_equals(input.data(), decoded.data(), length);
+
+        /* in place */
+        olm::decode_base64(
+            engine, encoded.data(), encoded_length, encoded.data()
+        );
+        assert_equals(input.data(), encoded.data(), length);
+
+        /* a character which isn't base64 decodes as the scalar code does */
+        if (encoded_length) {
+            std::vector<std::uint8_t> corrupted(expected);
+            corrupted[length * 7 % encoded_length] = length % 2 ? '=' : 0xC3;
+            std::vector<std::uint8_t> scalar_decoded(length);
+            olm::decode_base64(
+                olm::BASE64_SCALAR, corrupted.data(), encoded_length,
+                scalar_decoded.data()
+            );
+            olm::decode_base64(
+                engine, corrupted.data(), encoded_length, decoded.data()
+            );
+            assert_equals(scalar_decoded.data(), decoded.data(), length);
+        }
+    }
+
+    /* encoding over the input itself clobbers input not encoded yet, and
+     * the engines do it the same way */
+    std::vector<std::uint8_t> expected(olm::encode_base64_length(64));
+    std::copy(input.begin(), input.begin() + 64, expected.begin());
+    std::vector<std::uint8_t> overlapped(expected);
+    olm::encode_base64(
+        olm::BASE64_SCALAR, expected.data(), 64, expected.data()
+    );
+    olm::encode_base64(engine, overlapped.data(), 64, overlapped.data());
+    assert_equals(expected.data(), overlapped.data(), expected.size());
+}
+}
 
 }
@@ -110,6 +110,54 @@ result = _olm_crypto_ed25519_verify(
 assert_equals(false, result);
 }
 
+{
+TestCase test_case("Ed25519 decompressed key");
+std::uint8_t private_key[33] = "This key is a string of 32 bytes";
+
+std::uint8_t message[] = "Hello, World";
+std::size_t message_length = sizeof(message) - 1;
+
+_olm_ed25519_key_pair key_pair;
+_olm_crypto_ed25519_generate_key(private_key, &key_pair);
+
+std::uint8_t signature[64];
+_olm_crypto_ed25519_sign(
+    &key_pair, message, message_length, signature
+);
+
+/* the point is decompressed by the first verification, and reused */
+_olm_ed25519_public_key_point point = {};
+bool result = _olm_crypto_ed25519_verify_point(
+    &key_pair.public_key, &point, message, message_length, signature
+);
+assert_equals(true, result);
+assert_equals(1, point.state);
+
+result = _olm_crypto_ed25519_verify_point(
+    &key_pair.public_key, &point, message, message_length, signature
+);
+assert_equals(true, result);
+
+message[0] = 'n';
+result = _olm_crypto_ed25519_verify_point(
+    &key_pair.public_key, &point, message, message_length, signature
+);
+assert_equals(false, result);
+
+/* a key which isn't on the curve never verifies */
+_olm_ed25519_public_key bad_key = {};
+_olm_ed25519_public_key_point bad_point = {};
+for (unsigned i = 2; i < 256 && bad_point.state != -1; i++) {
+    bad_key.public_key[0] = i;
+    _olm_crypto_ed25519_decompress(&bad_key, &bad_point);
+}
+assert_equals(-1, bad_point.state);
+result = _olm_crypto_ed25519_verify_point(
+    &bad_key, &bad_point, message, message_length, signature
+);
+assert_equals(false, result);
+}
+
 
 { /* AES Test Case 1 */
 
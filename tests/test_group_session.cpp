@@ -12,10 +12,17 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
+#include "self_olm/base64.h"
 #include "self_olm/inbound_group_session.h"
 #include "self_olm/outbound_group_session.h"
+#include "self_olm/pickle_encoding.h"
 #include "unittest.hh"
 
+#include <algorithm>
+#include <cstring>
+#include <mutex>
+#include <string>
+#include <thread>
 #include <vector>
 
 int main() {
@@ -252,6 +259,480 @@ int main() {
     assert_equals(1, olm_inbound_group_session_is_verified(session2));
 }
 
+{
+    TestCase test_case("Group session seen message indices");
+
+    uint8_t random_bytes[] =
+        "0123456789ABDEF0123456789ABCDEF"
+        "0123456789ABDEF0123456789ABCDEF"
+        "0123456789ABDEF0123456789ABCDEF"
+        "0123456789ABDEF0123456789ABCDEF"
+        "0123456789ABDEF0123456789ABCDEF"
+        "0123456789ABDEF0123456789ABCDEF";
+
+    std::vector<uint8_t> memory(olm_outbound_group_session_size());
+    OlmOutboundGroupSession *session = olm_outbound_group_session(memory.data());
+    size_t res = olm_init_outbound_group_session(
+        session, random_bytes, sizeof(random_bytes));
+    assert_equals((size_t)0, res);
+
+    size_t session_key_len = olm_outbound_group_session_key_length(session);
+    std::vector<uint8_t> session_key(session_key_len);
+    olm_outbound_group_session_key(session, session_key.data(), session_key_len);
+
+    uint8_t plaintext[] = "Message";
+    size_t plaintext_length = sizeof(plaintext) - 1;
+    std::vector<std::vector<uint8_t>> msgs;
+    for (unsigned i = 0; i < 4; i++) {
+        size_t msglen = olm_group_encrypt_message_length(
+            session, plaintext_length);
+        std::vector<uint8_t> msg(msglen);
+        res = olm_group_encrypt(session, plaintext, plaintext_length,
+                                msg.data(), msglen);
+        assert_equals(msglen, res);
+        msgs.push_back(msg);
+    }
+
+    std::vector<uint8_t> inbound_session_memory(olm_inbound_group_session_size());
+    OlmInboundGroupSession *inbound_session =
+        olm_inbound_group_session(inbound_session_memory.data());
+    res = olm_init_inbound_group_session(
+        inbound_session, session_key.data(), session_key_len);
+    assert_equals((size_t)0, res);
+    assert_equals(0, olm_inbound_group_session_is_tracking_seen_indices(inbound_session));
+    olm_inbound_group_session_track_seen_indices(inbound_session, 1);
+    assert_equals(1, olm_inbound_group_session_is_tracking_seen_indices(inbound_session));
+
+    /* decrypt out of order, then replay a message */
+    const unsigned order[] = {2, 0, 1, 1};
+    const int expected_seen[] = {0, 0, 0, 1};
+    for (unsigned i = 0; i < 4; i++) {
+        std::vector<uint8_t> msgcopy(msgs[order[i]]);
+        std::vector<uint8_t> plaintext_buf(msgcopy.size());
+        uint32_t message_index;
+        int seen_before = -1;
+        res = olm_group_decrypt_check_seen(
+            inbound_session, msgcopy.data(), msgcopy.size(),
+            plaintext_buf.data(), plaintext_buf.size(),
+            &message_index, &seen_before
+        );
+        assert_equals(plaintext_length, res);
+        assert_equals(uint32_t(order[i]), message_index);
+        assert_equals(expected_seen[i], seen_before);
+    }
+
+    assert_equals(1, olm_inbound_group_session_has_seen_index(inbound_session, 0));
+    assert_equals(1, olm_inbound_group_session_has_seen_index(inbound_session, 1));
+    assert_equals(1, olm_inbound_group_session_has_seen_index(inbound_session, 2));
+    assert_equals(0, olm_inbound_group_session_has_seen_index(inbound_session, 3));
+
+    /* the seen indices survive a pickle round trip */
+    size_t pickle_length = olm_pickle_inbound_group_session_length(inbound_session);
+    std::vector<uint8_t> pickle(pickle_length);
+    res = olm_pickle_inbound_group_session(
+        inbound_session, "secret_key", 10, pickle.data(), pickle_length
+    );
+    assert_equals(pickle_length, res);
+
+    std::vector<uint8_t> memory2(olm_inbound_group_session_size());
+    OlmInboundGroupSession *inbound_session2 =
+        olm_inbound_group_session(memory2.data());
+    res = olm_unpickle_inbound_group_session(
+        inbound_session2, "secret_key", 10, pickle.data(), pickle_length
+    );
+    assert_equals(pickle_length, res);
+    assert_equals(1, olm_inbound_group_session_is_tracking_seen_indices(inbound_session2));
+    assert_equals(1, olm_inbound_group_session_has_seen_index(inbound_session2, 1));
+    assert_equals(0, olm_inbound_group_session_has_seen_index(inbound_session2, 3));
+
+    /* disabling the tracking forgets the indices */
+    olm_inbound_group_session_track_seen_indices(inbound_session2, 0);
+    assert_equals(0, olm_inbound_group_session_has_seen_index(inbound_session2, 1));
+
+    /* a session which doesn't track the indices is pickled as version 2 */
+    size_t untracked_length = olm_pickle_inbound_group_session_length(inbound_session2);
+    std::vector<uint8_t> untracked(untracked_length);
+    res = olm_pickle_inbound_group_session(
+        inbound_session2, "secret_key", 10, untracked.data(), untracked_length
+    );
+    assert_equals(untracked_length, res);
+    OlmErrorCode error = OLM_SUCCESS;
+    size_t raw_length = _olm_enc_input(
+        (const uint8_t *)"secret_key", 10, untracked.data(), untracked_length, &error
+    );
+    assert_not_equals((size_t)-1, raw_length);
+    assert_equals(uint8_t(2), untracked[3]);
+
+    /* runs which aren't sorted are rejected */
+    std::vector<uint8_t> tracked(pickle_length);
+    olm_pickle_inbound_group_session(
+        inbound_session, "secret_key", 10, tracked.data(), pickle_length
+    );
+    raw_length = _olm_enc_input(
+        (const uint8_t *)"secret_key", 10, tracked.data(), pickle_length, &error
+    );
+    assert_not_equals((size_t)-1, raw_length);
+    assert_equals(uint8_t(3), tracked[3]);
+    olm_inbound_group_session_track_seen_indices(inbound_session, 0);
+    olm_inbound_group_session_track_seen_indices(inbound_session, 1);
+    for (unsigned i = 0; i < 2; i++) {
+        std::vector<uint8_t> msgcopy(msgs[i * 2]);
+        std::vector<uint8_t> plaintext_buf(msgcopy.size());
+        uint32_t message_index;
+        res = olm_group_decrypt(
+            inbound_session, msgcopy.data(), msgcopy.size(),
+            plaintext_buf.data(), plaintext_buf.size(), &message_index
+        );
+        assert_equals(plaintext_length, res);
+    }
+    pickle_length = olm_pickle_inbound_group_session_length(inbound_session);
+    tracked.resize(pickle_length);
+    olm_pickle_inbound_group_session(
+        inbound_session, "secret_key", 10, tracked.data(), pickle_length
+    );
+    raw_length = _olm_enc_input(
+        (const uint8_t *)"secret_key", 10, tracked.data(), pickle_length, &error
+    );
+    assert_not_equals((size_t)-1, raw_length);
+    std::vector<uint8_t> raw(tracked.begin(), tracked.begin() + raw_length);
+    std::swap_ranges(raw.end() - 16, raw.end() - 8, raw.end() - 8);
+    std::vector<uint8_t> corrupted(_olm_enc_output_length(raw_length));
+    memcpy(_olm_enc_output_pos(corrupted.data(), raw_length), raw.data(), raw_length);
+    _olm_enc_output(
+        (const uint8_t *)"secret_key", 10, corrupted.data(), raw_length
+    );
+    res = olm_unpickle_inbound_group_session(
+        inbound_session2, "secret_key", 10, corrupted.data(), corrupted.size()
+    );
+    assert_equals((size_t)-1, res);
+    assert_equals(
+        std::string("CORRUPTED_PICKLE"),
+        std::string(olm_inbound_group_session_last_error(inbound_session2))
+    );
+}
+
+{
+    TestCase test_case("Group session seen message indices overflow");
+
+    uint8_t random_bytes[] =
+        "0123456789ABDEF0123456789ABCDEF"
+        "0123456789ABDEF0123456789ABCDEF"
+        "0123456789ABDEF0123456789ABCDEF"
+        "0123456789ABDEF0123456789ABCDEF"
+        "0123456789ABDEF0123456789ABCDEF"
+        "0123456789ABDEF0123456789ABCDEF";
+
+    std::vector<uint8_t> memory(olm_outbound_group_session_size());
+    OlmOutboundGroupSession *session = olm_outbound_group_session(memory.data());
+    size_t res = olm_init_outbound_group_session(
+        session, random_bytes, sizeof(random_bytes));
+    assert_equals((size_t)0, res);
+
+    size_t session_key_len = olm_outbound_group_session_key_length(session);
+    std::vector<uint8_t> session_key(session_key_len);
+    olm_outbound_group_session_key(session, session_key.data(), session_key_len);
+
+    uint8_t plaintext[] = "Message";
+    size_t plaintext_length = sizeof(plaintext) - 1;
+    std::vector<std::vector<uint8_t>> msgs;
+    for (unsigned i = 0; i < 70; i++) {
+        size_t msglen = olm_group_encrypt_message_length(
+            session, plaintext_length);
+        std::vector<uint8_t> msg(msglen);
+        res = olm_group_encrypt(session, plaintext, plaintext_length,
+                                msg.data(), msglen);
+        assert_equals(msglen, res);
+        msgs.push_back(msg);
+    }
+
+    std::vector<uint8_t> inbound_session_memory(olm_inbound_group_session_size());
+    OlmInboundGroupSession *inbound_session =
+        olm_inbound_group_session(inbound_session_memory.data());
+    res = olm_init_inbound_group_session(
+        inbound_session, session_key.data(), session_key_len);
+    assert_equals((size_t)0, res);
+    olm_inbound_group_session_track_seen_indices(inbound_session, 1);
+
+    /* every even index is its own run: the 34 runs overflow the table */
+    for (unsigned i = 0; i < 68; i += 2) {
+        std::vector<uint8_t> msgcopy(msgs[i]);
+        std::vector<uint8_t> plaintext_buf(msgcopy.size());
+        uint32_t message_index;
+        int seen_before = -1;
+        res = olm_group_decrypt_check_seen(
+            inbound_session, msgcopy.data(), msgcopy.size(),
+            plaintext_buf.data(), plaintext_buf.size(),
+            &message_index, &seen_before
+        );
+        assert_equals(plaintext_length, res);
+        assert_equals(0, seen_before);
+    }
+
+    /* the forgotten runs, and the gaps below them, are reported as seen */
+    assert_equals(1, olm_inbound_group_session_has_seen_index(inbound_session, 0));
+    assert_equals(1, olm_inbound_group_session_has_seen_index(inbound_session, 1));
+    assert_equals(1, olm_inbound_group_session_has_seen_index(inbound_session, 2));
+    assert_equals(0, olm_inbound_group_session_has_seen_index(inbound_session, 5));
+    assert_equals(1, olm_inbound_group_session_has_seen_index(inbound_session, 66));
+    assert_equals(0, olm_inbound_group_session_has_seen_index(inbound_session, 67));
+
+    std::vector<uint8_t> msgcopy(msgs[0]);
+    std::vector<uint8_t> plaintext_buf(msgcopy.size());
+    uint32_t message_index;
+    int seen_before = -1;
+    res = olm_group_decrypt_check_seen(
+        inbound_session, msgcopy.data(), msgcopy.size(),
+        plaintext_buf.data(), plaintext_buf.size(),
+        &message_index, &seen_before
+    );
+    assert_equals(plaintext_length, res);
+    assert_equals(1, seen_before);
+
+    /* an index between two runs merges them */
+    msgcopy = msgs[5];
+    res = olm_group_decrypt_check_seen(
+        inbound_session, msgcopy.data(), msgcopy.size(),
+        plaintext_buf.data(), plaintext_buf.size(),
+        &message_index, &seen_before
+    );
+    assert_equals(plaintext_length, res);
+    assert_equals(0, seen_before);
+    assert_equals(1, olm_inbound_group_session_has_seen_index(inbound_session, 5));
+    assert_equals(0, olm_inbound_group_session_has_seen_index(inbound_session, 7));
+
+    /* the floor survives a pickle round trip */
+    size_t pickle_length = olm_pickle_inbound_group_session_length(inbound_session);
+    std::vector<uint8_t> pickle(pickle_length);
+    res = olm_pickle_inbound_group_session(
+        inbound_session, "secret_key", 10, pickle.data(), pickle_length
+    );
+    assert_equals(pickle_length, res);
+    std::vector<uint8_t> memory2(olm_inbound_group_session_size());
+    OlmInboundGroupSession *inbound_session2 =
+        olm_inbound_group_session(memory2.data());
+    res = olm_unpickle_inbound_group_session(
+        inbound_session2, "secret_key", 10, pickle.data(), pickle_length
+    );
+    assert_equals(pickle_length, res);
+    assert_equals(1, olm_inbound_group_session_has_seen_index(inbound_session2, 1));
+    assert_equals(0, olm_inbound_group_session_has_seen_index(inbound_session2, 7));
+}
+
+{
+    TestCase test_case("Group session concurrent decryption");
+
+    uint8_t random_bytes[] =
+        "0123456789ABDEF0123456789ABCDEF"
+        "0123456789ABDEF0123456789ABCDEF"
+        "0123456789ABDEF0123456789ABCDEF"
+        "0123456789ABDEF0123456789ABCDEF"
+        "0123456789ABDEF0123456789ABCDEF"
+        "0123456789ABDEF0123456789ABCDEF";
+
+    std::vector<uint8_t> memory(olm_outbound_group_session_size());
+    OlmOutboundGroupSession *session = olm_outbound_group_session(memory.data());
+    size_t res = olm_init_outbound_group_session(
+        session, random_bytes, sizeof(random_bytes));
+    assert_equals((size_t)0, res);
+
+    size_t session_key_len = olm_outbound_group_session_key_length(session);
+    std::vector<uint8_t> session_key(session_key_len);
+    olm_outbound_group_session_key(session, session_key.data(), session_key_len);
+
+    uint8_t plaintext[] = "Message";
+    size_t plaintext_length = sizeof(plaintext) - 1;
+    std::vector<std::vector<uint8_t>> msgs;
+    for (unsigned i = 0; i < 16; i++) {
+        size_t msglen = olm_group_encrypt_message_length(
+            session, plaintext_length);
+        std::vector<uint8_t> msg(msglen);
+        res = olm_group_encrypt(session, plaintext, plaintext_length,
+                                msg.data(), msglen);
+        assert_equals(msglen, res);
+        msgs.push_back(msg);
+    }
+
+    std::vector<uint8_t> inbound_session_memory(olm_inbound_group_session_size());
+    OlmInboundGroupSession *inbound_session =
+        olm_inbound_group_session(inbound_session_memory.data());
+    res = olm_init_inbound_group_session(
+        inbound_session, session_key.data(), session_key_len);
+    assert_equals((size_t)0, res);
+    olm_inbound_group_session_track_seen_indices(inbound_session, 1);
+
+    /* a too small snapshot is rejected */
+    size_t snapshot_length = olm_inbound_group_session_snapshot_length();
+    std::vector<uint8_t> small_snapshot(snapshot_length - 1);
+    assert_equals((size_t)-1, olm_inbound_group_session_snapshot(
+        inbound_session, small_snapshot.data(), small_snapshot.size()
+    ));
+
+    /* each thread decrypts every fourth message from its own snapshot; the
+       session is only locked to take and publish the snapshots */
+    std::mutex lock;
+    std::vector<std::thread> threads;
+    std::vector<int> successes(4, 0);
+    for (unsigned t = 0; t < successes.size(); t++) {
+        threads.push_back(std::thread([&, t]() {
+            for (unsigned i = t; i < msgs.size(); i += successes.size()) {
+                std::vector<uint8_t> snapshot(snapshot_length);
+                {
+                    std::lock_guard<std::mutex> guard(lock);
+                    olm_inbound_group_session_snapshot(
+                        inbound_session, snapshot.data(), snapshot.size()
+                    );
+                }
+                std::vector<uint8_t> msgcopy(msgs[i]);
+                std::vector<uint8_t> plaintext_buf(msgcopy.size());
+                uint32_t message_index = 0;
+                OlmErrorCode error = OLM_BAD_STATE;
+                size_t length = olm_group_decrypt_snapshot(
+                    snapshot.data(), snapshot.size(),
+                    msgcopy.data(), msgcopy.size(),
+                    plaintext_buf.data(), plaintext_buf.size(),
+                    &message_index, &error
+                );
+                if (length != plaintext_length || error != OLM_SUCCESS
+                        || message_index != i
+                        || memcmp(plaintext, plaintext_buf.data(), length)) {
+                    continue;
+                }
+                int seen_before = -1;
+                {
+                    std::lock_guard<std::mutex> guard(lock);
+                    olm_inbound_group_session_publish_snapshot(
+                        inbound_session, snapshot.data(), snapshot.size(),
+                        message_index, &seen_before
+                    );
+                }
+                if (seen_before == 0) {
+                    successes[t]++;
+                }
+            }
+        }));
+    }
+    for (std::thread & thread : threads) {
+        thread.join();
+    }
+    for (int success : successes) {
+        assert_equals(4, success);
+    }
+    for (uint32_t i = 0; i < msgs.size(); i++) {
+        assert_equals(1, olm_inbound_group_session_has_seen_index(inbound_session, i));
+    }
+
+    /* the published ratchets still decrypt both old and new messages, and a
+       replay through a snapshot is reported */
+    const unsigned order[] = {15, 0, 15};
+    const int expected_seen[] = {1, 1, 1};
+    for (unsigned i = 0; i < 3; i++) {
+        std::vector<uint8_t> msgcopy(msgs[order[i]]);
+        std::vector<uint8_t> plaintext_buf(msgcopy.size());
+        uint32_t message_index;
+        int seen_before = -1;
+        res = olm_group_decrypt_check_seen(
+            inbound_session, msgcopy.data(), msgcopy.size(),
+            plaintext_buf.data(), plaintext_buf.size(),
+            &message_index, &seen_before
+        );
+        assert_equals(plaintext_length, res);
+        assert_equals(uint32_t(order[i]), message_index);
+        assert_equals(expected_seen[i], seen_before);
+    }
+
+    /* a snapshot which fails to decrypt leaves the error to the caller */
+    std::vector<uint8_t> snapshot(snapshot_length);
+    olm_inbound_group_session_snapshot(
+        inbound_session, snapshot.data(), snapshot.size()
+    );
+    std::vector<uint8_t> msgcopy(msgs[3]);
+    msgcopy[msgcopy.size() - 1] = 'E';
+    std::vector<uint8_t> plaintext_buf(msgcopy.size());
+    OlmErrorCode error = OLM_SUCCESS;
+    res = olm_group_decrypt_snapshot(
+        snapshot.data(), snapshot.size(),
+        msgcopy.data(), msgcopy.size(),
+        plaintext_buf.data(), plaintext_buf.size(),
+        NULL, &error
+    );
+    assert_equals((size_t)-1, res);
+    assert_equals(OLM_BAD_SIGNATURE, error);
+}
+
+{
+    TestCase test_case("Parsed group message");
+
+    uint8_t session_key[] =
+        "AgAAAAAwMTIzNDU2Nzg5QUJERUYwMTIzNDU2Nzg5QUJDREVGMDEyMzQ1Njc4OUFCREVGM"
+        "DEyMzQ1Njc4OUFCQ0RFRjAxMjM0NTY3ODlBQkRFRjAxMjM0NTY3ODlBQkNERUYwMTIzND"
+        "U2Nzg5QUJERUYwMTIzNDU2Nzg5QUJDREVGMDEyMw0bdg1BDq4Px/slBow06q8n/B9WBfw"
+        "WYyNOB8DlUmXGGwrFmaSb9bR/eY8xgERrxmP07hFmD9uqA2p8PMHdnV5ysmgufE6oLZ5+"
+        "8/mWQOW3VVTnDIlnwd8oHUYRuk8TCQ";
+
+    uint8_t message[] =
+        "AwgAEhAcbh6UpbByoyZxufQ+h2B+8XHMjhR69G8F4+qjMaFlnIXusJZX3r8LnRORG9T3D"
+        "XFdbVuvIWrLyRfm4i8QRbe8VPwGRFG57B1CtmxanuP8bHtnnYqlwPsD";
+    const std::size_t msglen = sizeof(message)-1;
+
+    std::vector<uint8_t> session_memory(olm_inbound_group_session_size());
+    OlmInboundGroupSession *session =
+        olm_inbound_group_session(session_memory.data());
+    assert_equals((size_t)0, olm_init_inbound_group_session(
+        session, session_key, sizeof(session_key)-1
+    ));
+    olm_inbound_group_session_track_seen_indices(session, 1);
+
+    std::vector<uint8_t> parsed_memory(olm_parsed_group_message_size());
+    OlmParsedGroupMessage *parsed =
+        olm_parsed_group_message(parsed_memory.data());
+
+    /* an unparsed message can't be decrypted */
+    uint8_t plaintext[20];
+    assert_equals((size_t)-1, olm_group_decrypt_parsed(
+        session, parsed, plaintext, sizeof(plaintext), NULL, NULL
+    ));
+    assert_equals(OLM_BAD_STATE, olm_inbound_group_session_last_error_code(session));
+
+    assert_equals((size_t)0, olm_parse_group_message(parsed, message, msglen));
+    assert_equals(0U, olm_parsed_group_message_index(parsed));
+
+    /* the parsed message can be decrypted repeatedly */
+    size_t size = olm_group_decrypt_parsed_max_plaintext_length(session, parsed);
+    assert_not_equals((size_t)-1, size);
+    std::vector<uint8_t> plaintext_buf(size);
+    uint32_t message_index = 1;
+    int seen_before = 1;
+    size_t res = olm_group_decrypt_parsed(
+        session, parsed, plaintext_buf.data(), size,
+        &message_index, &seen_before
+    );
+    assert_equals((size_t)7, res);
+    assert_equals((const uint8_t *)"Message", plaintext_buf.data(), res);
+    assert_equals(0U, message_index);
+    assert_equals(0, seen_before);
+
+    res = olm_group_decrypt_parsed(
+        session, parsed, plaintext_buf.data(), size,
+        &message_index, &seen_before
+    );
+    assert_equals((size_t)7, res);
+    assert_equals(1, seen_before);
+
+    /* parsing errors */
+    uint8_t bad_base64[] = "AwgA*";
+    assert_equals((size_t)-1, olm_parse_group_message(
+        parsed, bad_base64, sizeof(bad_base64) - 1
+    ));
+    assert_equals(
+        std::string("INVALID_BASE64"),
+        std::string(olm_parsed_group_message_last_error(parsed))
+    );
+    assert_equals((size_t)-1, olm_group_decrypt_parsed(
+        session, parsed, plaintext_buf.data(), size, NULL, NULL
+    ));
+    assert_equals(OLM_BAD_STATE, olm_inbound_group_session_last_error_code(session));
+}
+
 {
     TestCase test_case("Invalid signature group message");
 
@@ -321,7 +802,108 @@ int main() {
         std::string("BAD_SIGNATURE"),
         std::string(olm_inbound_group_session_last_error(inbound_session))
     );
+    assert_equals(
+        OLM_BAD_SIGNATURE,
+        olm_inbound_group_session_last_error_code(inbound_session)
+    );
 }
 
 
+{
+    TestCase test_case("Raw group message");
+
+    uint8_t random_bytes[] =
+        "0123456789ABDEF0123456789ABCDEF"
+        "0123456789ABDEF0123456789ABCDEF"
+        "0123456789ABDEF0123456789ABCDEF"
+        "0123456789ABDEF0123456789ABCDEF"
+        "0123456789ABDEF0123456789ABCDEF"
+        "0123456789ABDEF0123456789ABCDEF";
+
+    std::vector<uint8_t> memory(olm_outbound_group_session_size());
+    OlmOutboundGroupSession *session = olm_outbound_group_session(memory.data());
+    size_t res = olm_init_outbound_group_session(
+        session, random_bytes, sizeof(random_bytes));
+    assert_equals((size_t)0, res);
+
+    size_t session_key_len = olm_outbound_group_session_key_length(session);
+    std::vector<uint8_t> session_key(session_key_len);
+    olm_outbound_group_session_key(session, session_key.data(), session_key_len);
+
+    std::vector<uint8_t> inbound_session_memory(olm_inbound_group_session_size());
+    OlmInboundGroupSession *inbound_session =
+        olm_inbound_group_session(inbound_session_memory.data());
+    res = olm_init_inbound_group_session(
+        inbound_session, session_key.data(), session_key_len);
+    assert_equals((size_t)0, res);
+    olm_inbound_group_session_track_seen_indices(inbound_session, 1);
+
+    uint8_t plaintext[] = "Message";
+    size_t plaintext_length = sizeof(plaintext) - 1;
+
+    /* the raw message is the base64 message, unencoded */
+    size_t rawlen = olm_group_encrypt_raw_message_length(
+        session, plaintext_length);
+    assert_equals(
+        olm_group_encrypt_message_length(session, plaintext_length),
+        _olm_encode_base64_length(rawlen)
+    );
+
+    std::vector<uint8_t> raw(rawlen);
+    assert_equals((size_t)-1, olm_group_encrypt_raw(
+        session, plaintext, plaintext_length, raw.data(), rawlen - 1));
+    assert_equals(
+        OLM_OUTPUT_BUFFER_TOO_SMALL,
+        olm_outbound_group_session_last_error_code(session)
+    );
+    res = olm_group_encrypt_raw(session, plaintext, plaintext_length,
+                                raw.data(), rawlen);
+    assert_equals(rawlen, res);
+    assert_equals(1U, olm_outbound_group_session_message_index(session));
+
+    /* the raw message is left untouched, so it can be decrypted twice */
+    std::vector<uint8_t> rawcopy(raw);
+    size_t size = olm_group_decrypt_raw_max_plaintext_length(
+        inbound_session, raw.data(), rawlen);
+    std::vector<uint8_t> plaintext_buf(size);
+    uint32_t message_index = 1;
+    int seen_before = 1;
+    res = olm_group_decrypt_raw(
+        inbound_session, raw.data(), rawlen,
+        plaintext_buf.data(), size, &message_index, &seen_before
+    );
+    assert_equals(plaintext_length, res);
+    assert_equals(plaintext, plaintext_buf.data(), res);
+    assert_equals(uint32_t(0), message_index);
+    assert_equals(0, seen_before);
+    assert_equals(rawcopy.data(), raw.data(), rawlen);
+
+    res = olm_group_decrypt_raw(
+        inbound_session, raw.data(), rawlen,
+        plaintext_buf.data(), size, NULL, &seen_before
+    );
+    assert_equals(plaintext_length, res);
+    assert_equals(1, seen_before);
+
+    /* and it decrypts once base64 encoded */
+    std::vector<uint8_t> msg(_olm_encode_base64_length(rawlen));
+    _olm_encode_base64(raw.data(), rawlen, msg.data());
+    res = olm_group_decrypt(inbound_session, msg.data(), msg.size(),
+                            plaintext_buf.data(), size, &message_index);
+    assert_equals(plaintext_length, res);
+    assert_equals(uint32_t(0), message_index);
+
+    /* a corrupted raw message fails the signature check */
+    raw[rawlen - 1] ^= 1;
+    res = olm_group_decrypt_raw(
+        inbound_session, raw.data(), rawlen,
+        plaintext_buf.data(), size, NULL, NULL
+    );
+    assert_equals((size_t)-1, res);
+    assert_equals(
+        OLM_BAD_SIGNATURE,
+        olm_inbound_group_session_last_error_code(inbound_session)
+    );
+}
+
 }
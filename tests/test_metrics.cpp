@@ -0,0 +1,114 @@
+/* Copyright 2026 Self Group Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+#include "self_olm/inbound_group_session.h"
+#include "self_olm/metrics.h"
+#include "self_olm/outbound_group_session.h"
+#include "unittest.hh"
+
+#include <vector>
+
+int main() {
+
+{
+    TestCase test_case("Metrics count group messages");
+
+    uint8_t random_bytes[] =
+        "0123456789ABDEF0123456789ABCDEF"
+        "0123456789ABDEF0123456789ABCDEF"
+        "0123456789ABDEF0123456789ABCDEF"
+        "0123456789ABDEF0123456789ABCDEF"
+        "0123456789ABDEF0123456789ABCDEF"
+        "0123456789ABDEF0123456789ABCDEF";
+
+    std::vector<uint8_t> memory(olm_outbound_group_session_size());
+    OlmOutboundGroupSession *session = olm_outbound_group_session(memory.data());
+    olm_init_outbound_group_session(session, random_bytes, sizeof(random_bytes));
+
+    size_t session_key_len = olm_outbound_group_session_key_length(session);
+    std::vector<uint8_t> session_key(session_key_len);
+    olm_outbound_group_session_key(session, session_key.data(), session_key_len);
+
+    std::vector<uint8_t> inbound_memory(olm_inbound_group_session_size());
+    OlmInboundGroupSession *inbound_session =
+        olm_inbound_group_session(inbound_memory.data());
+    olm_init_inbound_group_session(
+        inbound_session, session_key.data(), session_key_len
+    );
+
+    uint64_t counters[OLM_METRICS_COUNTER_COUNT];
+    uint8_t plaintext[] = "Message";
+    size_t plaintext_length = sizeof(plaintext) - 1;
+    size_t msglen = olm_group_encrypt_message_length(session, plaintext_length);
+    std::vector<uint8_t> msg(msglen);
+    std::vector<uint8_t> decrypted(msglen);
+
+    /* nothing is counted until counting is turned on */
+    assert_equals(0, olm_metrics_is_enabled());
+    olm_group_encrypt(session, plaintext, plaintext_length, msg.data(), msglen);
+    assert_equals(
+        size_t(OLM_METRICS_COUNTER_COUNT),
+        olm_metrics_counters(counters, OLM_METRICS_COUNTER_COUNT)
+    );
+    for (unsigned i = 0; i < OLM_METRICS_COUNTER_COUNT; i++) {
+        assert_equals(uint64_t(0), counters[i]);
+    }
+
+    olm_metrics_set_enabled(1);
+    assert_equals(1, olm_metrics_is_enabled());
+
+    /* message 1: one rehash to advance the outbound ratchet to index 2 */
+    olm_group_encrypt(session, plaintext, plaintext_length, msg.data(), msglen);
+    olm_metrics_counters(counters, OLM_METRICS_COUNTER_COUNT);
+    assert_equals(uint64_t(1), counters[OLM_METRICS_MEGOLM_HASHES]);
+    assert_equals(uint64_t(plaintext_length), counters[OLM_METRICS_BYTES_ENCRYPTED]);
+    assert_equals(uint64_t(0), counters[OLM_METRICS_BYTES_DECRYPTED]);
+
+    /* one more rehash to advance a copy of the inbound ratchet to index 1 */
+    assert_equals(plaintext_length, olm_group_decrypt(
+        inbound_session, msg.data(), msglen,
+        decrypted.data(), decrypted.size(), NULL
+    ));
+    olm_metrics_counters(counters, OLM_METRICS_COUNTER_COUNT);
+    assert_equals(uint64_t(2), counters[OLM_METRICS_MEGOLM_HASHES]);
+    assert_equals(uint64_t(plaintext_length), counters[OLM_METRICS_BYTES_DECRYPTED]);
+
+    /* failures are not counted as bytes processed */
+    std::vector<uint8_t> bad_msg(msglen, 'A');
+    assert_equals((size_t)-1, olm_group_decrypt(
+        inbound_session, bad_msg.data(), msglen,
+        decrypted.data(), decrypted.size(), NULL
+    ));
+    olm_metrics_counters(counters, OLM_METRICS_COUNTER_COUNT);
+    assert_equals(uint64_t(plaintext_length), counters[OLM_METRICS_BYTES_DECRYPTED]);
+
+    /* the counters keep their values when counting is turned off */
+    olm_metrics_set_enabled(0);
+    olm_group_encrypt(session, plaintext, plaintext_length, msg.data(), msglen);
+    olm_metrics_counters(counters, OLM_METRICS_COUNTER_COUNT);
+    assert_equals(uint64_t(2), counters[OLM_METRICS_MEGOLM_HASHES]);
+
+    /* a short output gets a prefix of the counters */
+    uint64_t first[2] = {7, 7};
+    assert_equals(size_t(1), olm_metrics_counters(first, 1));
+    assert_equals(uint64_t(7), first[1]);
+
+    olm_metrics_reset();
+    olm_metrics_counters(counters, OLM_METRICS_COUNTER_COUNT);
+    for (unsigned i = 0; i < OLM_METRICS_COUNTER_COUNT; i++) {
+        assert_equals(uint64_t(0), counters[i]);
+    }
+}
+
+}
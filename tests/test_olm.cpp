@@ -1,3 +1,4 @@
+#include "self_olm/base64.hh"
 #include "self_olm/olm.h"
 #include "unittest.hh"
 
@@ -94,6 +95,128 @@ assert_equals(pickle1.data(), pickle2.data(), pickle_length);
 }
 
 
+{ /** Packed account keys test */
+
+TestCase test_case("Packed account keys test");
+MockRandom mock_random('K');
+
+std::vector<std::uint8_t> account_buffer(::olm_account_size());
+::OlmAccount *account = ::olm_account(account_buffer.data());
+std::vector<std::uint8_t> random(::olm_create_account_random_length(account));
+mock_random(random.data(), random.size());
+::olm_create_account(account, random.data(), random.size());
+
+std::vector<std::uint8_t> identity_keys(::olm_account_identity_keys_length(account));
+::olm_account_identity_keys(account, identity_keys.data(), identity_keys.size());
+std::string identity_json(identity_keys.begin(), identity_keys.end());
+
+std::size_t packed_length = ::olm_account_identity_keys_packed_length(account);
+assert_equals(std::size_t(86), packed_length);
+std::vector<std::uint8_t> packed(packed_length);
+assert_equals(packed_length, ::olm_account_identity_keys_packed(
+    account, packed.data(), packed.size()
+));
+std::string curve25519((char *)packed.data(), 43);
+std::string ed25519((char *)packed.data() + 43, 43);
+assert_not_equals(std::string::npos, identity_json.find("\"curve25519\":\"" + curve25519 + "\""));
+assert_not_equals(std::string::npos, identity_json.find("\"ed25519\":\"" + ed25519 + "\""));
+
+assert_equals(std::size_t(-1), ::olm_account_identity_keys_packed(
+    account, packed.data(), packed.size() - 1
+));
+assert_equals(
+    std::string("OUTPUT_BUFFER_TOO_SMALL"),
+    std::string(::olm_account_last_error(account))
+);
+
+std::vector<std::uint8_t> ot_random(::olm_account_generate_one_time_keys_random_length(
+    account, 5
+));
+mock_random(ot_random.data(), ot_random.size());
+::olm_account_generate_one_time_keys(account, 5, ot_random.data(), ot_random.size());
+::olm_account_mark_keys_as_published(account);
+ot_random.resize(::olm_account_generate_one_time_keys_random_length(account, 3));
+mock_random(ot_random.data(), ot_random.size());
+::olm_account_generate_one_time_keys(account, 3, ot_random.data(), ot_random.size());
+
+assert_equals(std::size_t(8), ::olm_account_one_time_keys_count(account, 0));
+assert_equals(std::size_t(3), ::olm_account_one_time_keys_count(account, 1));
+
+std::size_t record_length = ::olm_account_one_time_key_packed_length(account);
+assert_equals(std::size_t(49), record_length);
+
+/* the unpublished keys are the ones listed in the JSON output */
+std::vector<std::uint8_t> ot_keys(::olm_account_one_time_keys_length(account));
+::olm_account_one_time_keys(account, ot_keys.data(), ot_keys.size());
+std::string ot_json(ot_keys.begin(), ot_keys.end());
+
+std::vector<std::uint8_t> records(8 * record_length);
+assert_equals(std::size_t(3), ::olm_account_one_time_keys_packed(
+    account, 0, 10, 1, records.data(), records.size()
+));
+for (unsigned i = 0; i < 3; i++) {
+    std::string key_id((char *)records.data() + i * record_length, 6);
+    std::string key((char *)records.data() + i * record_length + 6, 43);
+    assert_not_equals(std::string::npos, ot_json.find("\"" + key_id + "\":\"" + key + "\""));
+}
+
+/* paging through all the keys gives the same records as one call */
+std::vector<std::uint8_t> page(3 * record_length);
+assert_equals(std::size_t(8), ::olm_account_one_time_keys_packed(
+    account, 0, 8, 0, records.data(), records.size()
+));
+std::size_t offset = 0;
+while (offset < 8) {
+    std::size_t count = ::olm_account_one_time_keys_packed(
+        account, offset, 3, 0, page.data(), page.size()
+    );
+    assert_equals(std::min(std::size_t(3), 8 - offset), count);
+    assert_equals(records.data() + offset * record_length, page.data(), count * record_length);
+    offset += count;
+}
+assert_equals(std::size_t(0), ::olm_account_one_time_keys_packed(
+    account, 8, 3, 0, page.data(), page.size()
+));
+
+assert_equals(std::size_t(-1), ::olm_account_one_time_keys_packed(
+    account, 0, 3, 0, page.data(), page.size() - 1
+));
+assert_equals(
+    std::string("OUTPUT_BUFFER_TOO_SMALL"),
+    std::string(::olm_account_last_error(account))
+);
+
+/* the signed records are the packed ones followed by the key signature */
+std::size_t signed_length = ::olm_account_signed_one_time_key_length(account);
+assert_equals(std::size_t(49 + 86), signed_length);
+std::vector<std::uint8_t> signed_keys(3 * signed_length);
+assert_equals(std::size_t(3), ::olm_account_sign_one_time_keys(
+    account, 0, 10, 1, signed_keys.data(), signed_keys.size()
+));
+assert_equals(std::size_t(3), ::olm_account_one_time_keys_packed(
+    account, 0, 3, 1, records.data(), records.size()
+));
+std::vector<std::uint8_t> signature(::olm_account_signature_length(account));
+for (unsigned i = 0; i < 3; i++) {
+    std::uint8_t const * signed_key = signed_keys.data() + i * signed_length;
+    assert_equals(records.data() + i * record_length, signed_key, record_length);
+    std::string payload = "{\"key\":\"" + std::string((char *)signed_key + 6, 43) + "\"}";
+    ::olm_account_sign(
+        account, payload.data(), payload.size(), signature.data(), signature.size()
+    );
+    assert_equals(signature.data(), signed_key + record_length, signature.size());
+}
+
+assert_equals(std::size_t(-1), ::olm_account_sign_one_time_keys(
+    account, 0, 3, 1, signed_keys.data(), signed_keys.size() - 1
+));
+assert_equals(
+    std::string("OUTPUT_BUFFER_TOO_SMALL"),
+    std::string(::olm_account_last_error(account))
+);
+}
+
+
 { /** Pickle session test */
 
 TestCase test_case("Pickle session test");
@@ -287,6 +410,557 @@ assert_equals(a_session_id.data(), b_session_id.data(), b_session_id.size());
 
 }
 
+{ /** Parsed message test */
+
+TestCase test_case("Parsed message test");
+MockRandom mock_random_a('A', 0x00);
+MockRandom mock_random_b('B', 0x80);
+
+std::vector<std::uint8_t> a_account_buffer(::olm_account_size());
+::OlmAccount *a_account = ::olm_account(a_account_buffer.data());
+std::vector<std::uint8_t> a_random(::olm_create_account_random_length(a_account));
+mock_random_a(a_random.data(), a_random.size());
+::olm_create_account(a_account, a_random.data(), a_random.size());
+
+std::vector<std::uint8_t> b_account_buffer(::olm_account_size());
+::OlmAccount *b_account = ::olm_account(b_account_buffer.data());
+std::vector<std::uint8_t> b_random(::olm_create_account_random_length(b_account));
+mock_random_b(b_random.data(), b_random.size());
+::olm_create_account(b_account, b_random.data(), b_random.size());
+std::vector<std::uint8_t> o_random(::olm_account_generate_one_time_keys_random_length(
+        b_account, 1
+));
+mock_random_b(o_random.data(), o_random.size());
+::olm_account_generate_one_time_keys(b_account, 1, o_random.data(), o_random.size());
+
+std::vector<std::uint8_t> a_id_keys(::olm_account_identity_keys_length(a_account));
+::olm_account_identity_keys(a_account, a_id_keys.data(), a_id_keys.size());
+
+std::vector<std::uint8_t> b_id_keys(::olm_account_identity_keys_length(b_account));
+std::vector<std::uint8_t> b_ot_keys(::olm_account_one_time_keys_length(b_account));
+::olm_account_identity_keys(b_account, b_id_keys.data(), b_id_keys.size());
+::olm_account_one_time_keys(b_account, b_ot_keys.data(), b_ot_keys.size());
+
+std::vector<std::uint8_t> a_session_buffer(::olm_session_size());
+::OlmSession *a_session = ::olm_session(a_session_buffer.data());
+std::vector<std::uint8_t> a_rand(::olm_create_outbound_session_random_length(a_session));
+mock_random_a(a_rand.data(), a_rand.size());
+assert_not_equals(std::size_t(-1), ::olm_create_outbound_session(
+    a_session, a_account,
+    b_id_keys.data() + 15, 43, // B's curve25519 identity key
+    b_ot_keys.data() + 25, 43, // B's curve25519 one time key
+    a_rand.data(), a_rand.size()
+));
+
+std::uint8_t plaintext[] = "Hello, World";
+std::vector<std::uint8_t> message_1(::olm_encrypt_message_length(a_session, 12));
+std::vector<std::uint8_t> a_message_random(::olm_encrypt_random_length(a_session));
+mock_random_a(a_message_random.data(), a_message_random.size());
+assert_not_equals(std::size_t(-1), ::olm_encrypt(
+    a_session,
+    plaintext, 12,
+    a_message_random.data(), a_message_random.size(),
+    message_1.data(), message_1.size()
+));
+
+std::vector<std::uint8_t> tmp_message_1(message_1);
+std::vector<std::uint8_t> b_session_buffer(::olm_session_size());
+::OlmSession *b_session = ::olm_session(b_session_buffer.data());
+::olm_create_inbound_session(
+    b_session, b_account, tmp_message_1.data(), message_1.size()
+);
+
+// Parse the message once
+std::vector<std::uint8_t> parsed_buffer(::olm_parsed_message_size());
+::OlmParsedMessage *parsed = ::olm_parsed_message(parsed_buffer.data());
+std::memcpy(tmp_message_1.data(), message_1.data(), message_1.size());
+assert_equals(std::size_t(0), ::olm_parse_message(
+    parsed, OLM_MESSAGE_TYPE_PRE_KEY, tmp_message_1.data(), message_1.size()
+));
+assert_equals(OLM_MESSAGE_TYPE_PRE_KEY, ::olm_parsed_message_type(parsed));
+assert_equals(std::uint32_t(0), ::olm_parsed_message_counter(parsed));
+
+std::size_t key_length = ::olm_parsed_message_key_length(parsed);
+assert_equals(std::size_t(43), key_length);
+std::vector<std::uint8_t> key(key_length);
+assert_equals(key_length, ::olm_parsed_message_one_time_key(
+    parsed, key.data(), key.size()
+));
+assert_equals(b_ot_keys.data() + 25, key.data(), key_length);
+assert_equals(key_length, ::olm_parsed_message_identity_key(
+    parsed, key.data(), key.size()
+));
+assert_equals(a_id_keys.data() + 15, key.data(), key_length);
+assert_equals(key_length, ::olm_parsed_message_base_key(
+    parsed, key.data(), key.size()
+));
+assert_equals(key_length, ::olm_parsed_message_ratchet_key(
+    parsed, key.data(), key.size()
+));
+assert_equals(std::size_t(-1), ::olm_parsed_message_ratchet_key(
+    parsed, key.data(), key.size() - 1
+));
+assert_equals(OLM_OUTPUT_BUFFER_TOO_SMALL, ::olm_parsed_message_last_error_code(parsed));
+
+// Match and decrypt with the parsed message, several times
+assert_equals(std::size_t(1), ::olm_matches_inbound_parsed_session(b_session, parsed));
+assert_equals(std::size_t(1), ::olm_matches_inbound_parsed_session_from(
+    b_session, a_id_keys.data() + 15, 43, parsed
+));
+assert_equals(std::size_t(0), ::olm_matches_inbound_parsed_session_from(
+    b_session, b_id_keys.data() + 15, 43, parsed
+));
+
+std::vector<std::uint8_t> plaintext_1(::olm_decrypt_parsed_max_plaintext_length(
+    b_session, parsed
+));
+assert_equals(std::size_t(-1), ::olm_decrypt_parsed(
+    a_session, parsed, plaintext_1.data(), plaintext_1.size()
+));
+assert_equals(std::size_t(12), ::olm_decrypt_parsed(
+    b_session, parsed, plaintext_1.data(), plaintext_1.size()
+));
+assert_equals(plaintext, plaintext_1.data(), 12);
+
+// A normal message has no pre-key fields
+std::vector<std::uint8_t> message_2(::olm_encrypt_message_length(b_session, 12));
+std::vector<std::uint8_t> b_message_random(::olm_encrypt_random_length(b_session));
+mock_random_b(b_message_random.data(), b_message_random.size());
+assert_not_equals(std::size_t(-1), ::olm_encrypt(
+    b_session,
+    plaintext, 12,
+    b_message_random.data(), b_message_random.size(),
+    message_2.data(), message_2.size()
+));
+assert_equals(std::size_t(0), ::olm_parse_message(
+    parsed, OLM_MESSAGE_TYPE_MESSAGE, message_2.data(), message_2.size()
+));
+assert_equals(std::size_t(-1), ::olm_parsed_message_base_key(
+    parsed, key.data(), key.size()
+));
+assert_equals(OLM_BAD_STATE, ::olm_parsed_message_last_error_code(parsed));
+assert_equals(std::size_t(-1), ::olm_matches_inbound_parsed_session(a_session, parsed));
+std::vector<std::uint8_t> plaintext_2(::olm_decrypt_parsed_max_plaintext_length(
+    a_session, parsed
+));
+assert_equals(std::size_t(12), ::olm_decrypt_parsed(
+    a_session, parsed, plaintext_2.data(), plaintext_2.size()
+));
+assert_equals(plaintext, plaintext_2.data(), 12);
+
+// Parsing errors
+std::uint8_t bad_base64[] = "AwogAAAA*";
+assert_equals(std::size_t(-1), ::olm_parse_message(
+    parsed, OLM_MESSAGE_TYPE_MESSAGE, bad_base64, sizeof(bad_base64) - 1
+));
+assert_equals(
+    std::string("INVALID_BASE64"),
+    std::string(::olm_parsed_message_last_error(parsed))
+);
+assert_equals(std::size_t(-1), ::olm_decrypt_parsed(
+    a_session, parsed, plaintext_2.data(), plaintext_2.size()
+));
+assert_equals(OLM_BAD_STATE, ::olm_session_last_error_code(a_session));
+
+std::uint8_t bad_version[] = "BAoBAA";
+assert_equals(std::size_t(-1), ::olm_parse_message(
+    parsed, OLM_MESSAGE_TYPE_MESSAGE, bad_version, sizeof(bad_version) - 1
+));
+assert_equals(OLM_BAD_MESSAGE_VERSION, ::olm_parsed_message_last_error_code(parsed));
+
+}
+
+{ /** Multiple session decrypt test */
+
+TestCase test_case("Multiple session decrypt test");
+MockRandom mock_random_a('A', 0x00);
+MockRandom mock_random_b('B', 0x80);
+
+std::vector<std::uint8_t> a_account_buffer(::olm_account_size());
+::OlmAccount *a_account = ::olm_account(a_account_buffer.data());
+std::vector<std::uint8_t> a_random(::olm_create_account_random_length(a_account));
+mock_random_a(a_random.data(), a_random.size());
+::olm_create_account(a_account, a_random.data(), a_random.size());
+
+std::vector<std::uint8_t> b_account_buffer(::olm_account_size());
+::OlmAccount *b_account = ::olm_account(b_account_buffer.data());
+std::vector<std::uint8_t> b_random(::olm_create_account_random_length(b_account));
+mock_random_b(b_random.data(), b_random.size());
+::olm_create_account(b_account, b_random.data(), b_random.size());
+std::vector<std::uint8_t> o_random(::olm_account_generate_one_time_keys_random_length(
+        b_account, 2
+));
+mock_random_b(o_random.data(), o_random.size());
+::olm_account_generate_one_time_keys(b_account, 2, o_random.data(), o_random.size());
+
+std::vector<std::uint8_t> b_id_keys(::olm_account_identity_keys_length(b_account));
+std::vector<std::uint8_t> b_ot_keys(::olm_account_one_time_keys_length(b_account));
+::olm_account_identity_keys(b_account, b_id_keys.data(), b_id_keys.size());
+::olm_account_one_time_keys(b_account, b_ot_keys.data(), b_ot_keys.size());
+
+std::uint8_t plaintext[] = "Hello, World";
+std::vector<std::uint8_t> a_session_buffers[2];
+std::vector<std::uint8_t> b_session_buffers[2];
+::OlmSession *a_sessions[2];
+::OlmSession *b_sessions[2];
+std::vector<std::uint8_t> messages[2];
+
+// Alice opens two sessions with Bob, one per one time key
+for (unsigned i = 0; i < 2; ++i) {
+    a_session_buffers[i].resize(::olm_session_size());
+    a_sessions[i] = ::olm_session(a_session_buffers[i].data());
+    std::vector<std::uint8_t> a_rand(::olm_create_outbound_session_random_length(a_sessions[i]));
+    mock_random_a(a_rand.data(), a_rand.size());
+    assert_not_equals(std::size_t(-1), ::olm_create_outbound_session(
+        a_sessions[i], a_account,
+        b_id_keys.data() + 15, 43,
+        b_ot_keys.data() + 25 + 55 * i, 43,
+        a_rand.data(), a_rand.size()
+    ));
+
+    messages[i].resize(::olm_encrypt_message_length(a_sessions[i], 12));
+    std::vector<std::uint8_t> a_message_random(::olm_encrypt_random_length(a_sessions[i]));
+    mock_random_a(a_message_random.data(), a_message_random.size());
+    ::olm_encrypt(
+        a_sessions[i], plaintext, 12,
+        a_message_random.data(), a_message_random.size(),
+        messages[i].data(), messages[i].size()
+    );
+
+    b_session_buffers[i].resize(::olm_session_size());
+    b_sessions[i] = ::olm_session(b_session_buffers[i].data());
+    std::vector<std::uint8_t> tmp(messages[i]);
+    assert_not_equals(std::size_t(-1), ::olm_create_inbound_session(
+        b_sessions[i], b_account, tmp.data(), tmp.size()
+    ));
+    tmp = messages[i];
+    std::vector<std::uint8_t> decrypted(::olm_decrypt_max_plaintext_length(
+        b_sessions[i], OLM_MESSAGE_TYPE_PRE_KEY, tmp.data(), tmp.size()
+    ));
+    tmp = messages[i];
+    assert_equals(std::size_t(12), ::olm_decrypt(
+        b_sessions[i], OLM_MESSAGE_TYPE_PRE_KEY, tmp.data(), tmp.size(),
+        decrypted.data(), decrypted.size()
+    ));
+}
+
+// A second message on Alice's first session reuses its ratchet key
+std::vector<std::uint8_t> message_3(::olm_encrypt_message_length(a_sessions[0], 12));
+::olm_encrypt(a_sessions[0], plaintext, 12, nullptr, 0, message_3.data(), message_3.size());
+
+std::vector<std::uint8_t> parsed_buffer(::olm_parsed_message_size());
+::OlmParsedMessage *parsed = ::olm_parsed_message(parsed_buffer.data());
+assert_equals(std::size_t(0), ::olm_parse_message(
+    parsed, OLM_MESSAGE_TYPE_PRE_KEY, message_3.data(), message_3.size()
+));
+assert_equals(std::size_t(1), ::olm_session_has_ratchet_key(b_sessions[0], parsed));
+assert_equals(std::size_t(0), ::olm_session_has_ratchet_key(b_sessions[1], parsed));
+
+::OlmSession *candidates[2] = {b_sessions[1], b_sessions[0]};
+std::vector<std::uint8_t> plaintext_3(::olm_decrypt_parsed_max_plaintext_length(
+    b_sessions[0], parsed
+));
+std::size_t session_index = 5;
+assert_equals(std::size_t(12), ::olm_decrypt_parsed_with_sessions(
+    candidates, 2, parsed, plaintext_3.data(), plaintext_3.size(), &session_index
+));
+assert_equals(std::size_t(1), session_index);
+assert_equals(plaintext, plaintext_3.data(), 12);
+
+// Its key is used up, so no session can decrypt it again
+assert_equals(std::size_t(-1), ::olm_decrypt_parsed_with_sessions(
+    candidates, 2, parsed, plaintext_3.data(), plaintext_3.size(), &session_index
+));
+assert_equals(OLM_BAD_MESSAGE_MAC, ::olm_parsed_message_last_error_code(parsed));
+assert_equals(std::size_t(-1), ::olm_decrypt_parsed_with_sessions(
+    candidates, 0, parsed, plaintext_3.data(), plaintext_3.size(), nullptr
+));
+assert_equals(OLM_BAD_MESSAGE_KEY_ID, ::olm_parsed_message_last_error_code(parsed));
+
+// Once Bob has replied, Alice's next message starts a new chain, which
+// none of Bob's sessions knows: the sessions are then tried in order
+std::vector<std::uint8_t> reply(::olm_encrypt_message_length(b_sessions[0], 12));
+std::vector<std::uint8_t> b_message_random(::olm_encrypt_random_length(b_sessions[0]));
+mock_random_b(b_message_random.data(), b_message_random.size());
+::olm_encrypt(
+    b_sessions[0], plaintext, 12,
+    b_message_random.data(), b_message_random.size(),
+    reply.data(), reply.size()
+);
+std::vector<std::uint8_t> tmp_reply(reply);
+std::vector<std::uint8_t> plaintext_reply(::olm_decrypt_max_plaintext_length(
+    a_sessions[0], OLM_MESSAGE_TYPE_MESSAGE, tmp_reply.data(), tmp_reply.size()
+));
+tmp_reply = reply;
+assert_equals(std::size_t(12), ::olm_decrypt(
+    a_sessions[0], OLM_MESSAGE_TYPE_MESSAGE, tmp_reply.data(), tmp_reply.size(),
+    plaintext_reply.data(), plaintext_reply.size()
+));
+
+std::vector<std::uint8_t> message_4(::olm_encrypt_message_length(a_sessions[0], 12));
+std::vector<std::uint8_t> a_message_random(::olm_encrypt_random_length(a_sessions[0]));
+mock_random_a(a_message_random.data(), a_message_random.size());
+::olm_encrypt(
+    a_sessions[0], plaintext, 12,
+    a_message_random.data(), a_message_random.size(),
+    message_4.data(), message_4.size()
+);
+assert_equals(std::size_t(0), ::olm_parse_message(
+    parsed, OLM_MESSAGE_TYPE_MESSAGE, message_4.data(), message_4.size()
+));
+assert_equals(std::size_t(0), ::olm_session_has_ratchet_key(b_sessions[0], parsed));
+std::vector<std::uint8_t> plaintext_4(::olm_decrypt_parsed_max_plaintext_length(
+    b_sessions[0], parsed
+));
+assert_equals(std::size_t(12), ::olm_decrypt_parsed_with_sessions(
+    candidates, 2, parsed, plaintext_4.data(), plaintext_4.size(), &session_index
+));
+assert_equals(std::size_t(1), session_index);
+assert_equals(plaintext, plaintext_4.data(), 12);
+assert_equals(std::size_t(1), ::olm_session_has_ratchet_key(b_sessions[0], parsed));
+
+}
+
+{ /** Pre-generated key pair test */
+
+TestCase test_case("Pre-generated key pair test");
+MockRandom mock_random_a('A', 0x00);
+MockRandom mock_random_b('B', 0x80);
+
+std::vector<std::uint8_t> a_account_buffer(::olm_account_size());
+::OlmAccount *a_account = ::olm_account(a_account_buffer.data());
+std::vector<std::uint8_t> a_random(::olm_create_account_random_length(a_account));
+mock_random_a(a_random.data(), a_random.size());
+::olm_create_account(a_account, a_random.data(), a_random.size());
+
+std::vector<std::uint8_t> b_account_buffer(::olm_account_size());
+::OlmAccount *b_account = ::olm_account(b_account_buffer.data());
+std::vector<std::uint8_t> b_random(::olm_create_account_random_length(b_account));
+mock_random_b(b_random.data(), b_random.size());
+::olm_create_account(b_account, b_random.data(), b_random.size());
+std::vector<std::uint8_t> o_random(::olm_account_generate_one_time_keys_random_length(
+        b_account, 1
+));
+mock_random_b(o_random.data(), o_random.size());
+::olm_account_generate_one_time_keys(b_account, 1, o_random.data(), o_random.size());
+
+std::vector<std::uint8_t> b_id_keys(::olm_account_identity_keys_length(b_account));
+std::vector<std::uint8_t> b_ot_keys(::olm_account_one_time_keys_length(b_account));
+::olm_account_identity_keys(b_account, b_id_keys.data(), b_id_keys.size());
+::olm_account_one_time_keys(b_account, b_ot_keys.data(), b_ot_keys.size());
+
+// The same random bytes, used directly or through key pairs
+std::vector<std::uint8_t> a_rand(64);
+mock_random_a(a_rand.data(), a_rand.size());
+std::vector<std::uint8_t> a_rand_copy(a_rand);
+
+std::size_t key_pair_length = ::olm_ephemeral_key_pair_length();
+assert_equals(std::size_t(64), key_pair_length);
+assert_equals(std::size_t(32), ::olm_ephemeral_key_pair_random_length());
+std::vector<std::uint8_t> key_pairs(2 * key_pair_length);
+assert_equals(key_pair_length, ::olm_generate_ephemeral_key_pair(
+    a_rand_copy.data(), 32, key_pairs.data(), key_pair_length
+));
+assert_equals(key_pair_length, ::olm_generate_ephemeral_key_pair(
+    a_rand_copy.data() + 32, 32, key_pairs.data() + key_pair_length, key_pair_length
+));
+std::vector<std::uint8_t> zeros(64, 0);
+assert_equals(zeros.data(), a_rand_copy.data(), 64);
+assert_equals(std::size_t(-1), ::olm_generate_ephemeral_key_pair(
+    a_rand_copy.data(), 31, zeros.data(), key_pair_length
+));
+
+std::vector<std::uint8_t> a_session_buffer(::olm_session_size());
+::OlmSession *a_session = ::olm_session(a_session_buffer.data());
+assert_equals(std::size_t(0), ::olm_create_outbound_session(
+    a_session, a_account,
+    b_id_keys.data() + 15, 43, b_ot_keys.data() + 25, 43,
+    a_rand.data(), a_rand.size()
+));
+
+std::vector<std::uint8_t> c_session_buffer(::olm_session_size());
+::OlmSession *c_session = ::olm_session(c_session_buffer.data());
+assert_equals(std::size_t(-1), ::olm_create_outbound_session_with_key_pairs(
+    c_session, a_account,
+    b_id_keys.data() + 15, 43, b_ot_keys.data() + 25, 43,
+    key_pairs.data(), key_pair_length
+));
+assert_equals(OLM_NOT_ENOUGH_RANDOM, ::olm_session_last_error_code(c_session));
+assert_equals(std::size_t(0), ::olm_create_outbound_session_with_key_pairs(
+    c_session, a_account,
+    b_id_keys.data() + 15, 43, b_ot_keys.data() + 25, 43,
+    key_pairs.data(), key_pairs.size()
+));
+assert_equals(zeros.data(), key_pairs.data(), 64);
+
+// No key pair is needed before a reply, and both sessions write the same message
+std::uint8_t plaintext[] = "Hello, World";
+assert_equals(std::size_t(0), ::olm_encrypt_random_length(c_session));
+std::vector<std::uint8_t> message_a(::olm_encrypt_message_length(a_session, 12));
+std::vector<std::uint8_t> message_c(::olm_encrypt_message_length(c_session, 12));
+assert_equals(message_a.size(), ::olm_encrypt(
+    a_session, plaintext, 12, nullptr, 0, message_a.data(), message_a.size()
+));
+assert_equals(message_c.size(), ::olm_encrypt_with_key_pair(
+    c_session, plaintext, 12, nullptr, 0, message_c.data(), message_c.size()
+));
+assert_equals(message_a.data(), message_c.data(), message_a.size());
+
+std::vector<std::uint8_t> b_session_buffer(::olm_session_size());
+::OlmSession *b_session = ::olm_session(b_session_buffer.data());
+std::vector<std::uint8_t> tmp(message_c);
+assert_equals(std::size_t(0), ::olm_create_inbound_session(
+    b_session, b_account, tmp.data(), tmp.size()
+));
+tmp = message_c;
+std::vector<std::uint8_t> decrypted(::olm_decrypt_max_plaintext_length(
+    b_session, OLM_MESSAGE_TYPE_PRE_KEY, tmp.data(), tmp.size()
+));
+tmp = message_c;
+assert_equals(std::size_t(12), ::olm_decrypt(
+    b_session, OLM_MESSAGE_TYPE_PRE_KEY, tmp.data(), tmp.size(),
+    decrypted.data(), decrypted.size()
+));
+
+// Bob's reply starts a new chain: it needs a key pair, which is wiped
+assert_equals(std::size_t(32), ::olm_encrypt_random_length(b_session));
+std::vector<std::uint8_t> reply(::olm_encrypt_message_length(b_session, 12));
+assert_equals(std::size_t(-1), ::olm_encrypt_with_key_pair(
+    b_session, plaintext, 12, nullptr, 0, reply.data(), reply.size()
+));
+assert_equals(OLM_NOT_ENOUGH_RANDOM, ::olm_session_last_error_code(b_session));
+
+std::vector<std::uint8_t> b_key_random(32);
+mock_random_b(b_key_random.data(), b_key_random.size());
+std::vector<std::uint8_t> b_key_pair(key_pair_length);
+::olm_generate_ephemeral_key_pair(
+    b_key_random.data(), b_key_random.size(), b_key_pair.data(), b_key_pair.size()
+);
+assert_equals(reply.size(), ::olm_encrypt_with_key_pair(
+    b_session, plaintext, 12, b_key_pair.data(), b_key_pair.size(),
+    reply.data(), reply.size()
+));
+assert_equals(zeros.data(), b_key_pair.data(), key_pair_length);
+
+tmp = reply;
+std::vector<std::uint8_t> decrypted_reply(::olm_decrypt_max_plaintext_length(
+    c_session, OLM_MESSAGE_TYPE_MESSAGE, tmp.data(), tmp.size()
+));
+tmp = reply;
+assert_equals(std::size_t(12), ::olm_decrypt(
+    c_session, OLM_MESSAGE_TYPE_MESSAGE, tmp.data(), tmp.size(),
+    decrypted_reply.data(), decrypted_reply.size()
+));
+assert_equals(plaintext, decrypted_reply.data(), 12);
+
+}
+
+{ /** Raw message test */
+
+TestCase test_case("Raw message test");
+MockRandom mock_random_a('A', 0x00);
+MockRandom mock_random_b('B', 0x80);
+
+std::vector<std::uint8_t> a_account_buffer(::olm_account_size());
+::OlmAccount *a_account = ::olm_account(a_account_buffer.data());
+std::vector<std::uint8_t> a_random(::olm_create_account_random_length(a_account));
+mock_random_a(a_random.data(), a_random.size());
+::olm_create_account(a_account, a_random.data(), a_random.size());
+
+std::vector<std::uint8_t> b_account_buffer(::olm_account_size());
+::OlmAccount *b_account = ::olm_account(b_account_buffer.data());
+std::vector<std::uint8_t> b_random(::olm_create_account_random_length(b_account));
+mock_random_b(b_random.data(), b_random.size());
+::olm_create_account(b_account, b_random.data(), b_random.size());
+std::vector<std::uint8_t> o_random(::olm_account_generate_one_time_keys_random_length(
+        b_account, 1
+));
+mock_random_b(o_random.data(), o_random.size());
+::olm_account_generate_one_time_keys(b_account, 1, o_random.data(), o_random.size());
+
+std::vector<std::uint8_t> b_id_keys(::olm_account_identity_keys_length(b_account));
+std::vector<std::uint8_t> b_ot_keys(::olm_account_one_time_keys_length(b_account));
+::olm_account_identity_keys(b_account, b_id_keys.data(), b_id_keys.size());
+::olm_account_one_time_keys(b_account, b_ot_keys.data(), b_ot_keys.size());
+
+std::vector<std::uint8_t> a_session_buffer(::olm_session_size());
+::OlmSession *a_session = ::olm_session(a_session_buffer.data());
+std::vector<std::uint8_t> a_rand(::olm_create_outbound_session_random_length(a_session));
+mock_random_a(a_rand.data(), a_rand.size());
+assert_equals(std::size_t(0), ::olm_create_outbound_session(
+    a_session, a_account,
+    b_id_keys.data() + 15, 43, b_ot_keys.data() + 25, 43,
+    a_rand.data(), a_rand.size()
+));
+
+// The raw message is the base64 message, unencoded
+std::uint8_t plaintext[] = "Hello, World";
+std::size_t raw_length = ::olm_encrypt_raw_message_length(a_session, 12);
+assert_equals(
+    ::olm_encrypt_message_length(a_session, 12),
+    olm::encode_base64_length(raw_length)
+);
+std::vector<std::uint8_t> raw(raw_length);
+assert_equals(std::size_t(-1), ::olm_encrypt_raw(
+    a_session, plaintext, 12, nullptr, 0, raw.data(), raw_length - 1
+));
+assert_equals(OLM_OUTPUT_BUFFER_TOO_SMALL, ::olm_session_last_error_code(a_session));
+assert_equals(std::size_t(0), ::olm_encrypt_message_type(a_session));
+assert_equals(raw_length, ::olm_encrypt_raw(
+    a_session, plaintext, 12, nullptr, 0, raw.data(), raw.size()
+));
+
+// The raw message is left untouched by the session creation and the decryption
+std::vector<std::uint8_t> raw_copy(raw);
+std::vector<std::uint8_t> b_session_buffer(::olm_session_size());
+::OlmSession *b_session = ::olm_session(b_session_buffer.data());
+assert_equals(std::size_t(0), ::olm_create_inbound_session_raw(
+    b_session, b_account, raw.data(), raw.size()
+));
+std::vector<std::uint8_t> decrypted(::olm_decrypt_raw_max_plaintext_length(
+    b_session, OLM_MESSAGE_TYPE_PRE_KEY, raw.data(), raw.size()
+));
+assert_equals(std::size_t(12), ::olm_decrypt_raw(
+    b_session, OLM_MESSAGE_TYPE_PRE_KEY, raw.data(), raw.size(),
+    decrypted.data(), decrypted.size()
+));
+assert_equals(plaintext, decrypted.data(), 12);
+assert_equals(raw_copy.data(), raw.data(), raw.size());
+
+// Bob replies with a key pair, and Alice decrypts the reply once base64 encoded
+std::vector<std::uint8_t> b_key_random(::olm_ephemeral_key_pair_random_length());
+mock_random_b(b_key_random.data(), b_key_random.size());
+std::vector<std::uint8_t> b_key_pair(::olm_ephemeral_key_pair_length());
+::olm_generate_ephemeral_key_pair(
+    b_key_random.data(), b_key_random.size(), b_key_pair.data(), b_key_pair.size()
+);
+std::vector<std::uint8_t> reply(::olm_encrypt_raw_message_length(b_session, 12));
+assert_equals(reply.size(), ::olm_encrypt_raw_with_key_pair(
+    b_session, plaintext, 12, b_key_pair.data(), b_key_pair.size(),
+    reply.data(), reply.size()
+));
+
+std::vector<std::uint8_t> encoded(olm::encode_base64_length(reply.size()));
+olm::encode_base64(reply.data(), reply.size(), encoded.data());
+std::vector<std::uint8_t> decrypted_reply(::olm_decrypt_raw_max_plaintext_length(
+    a_session, OLM_MESSAGE_TYPE_MESSAGE, reply.data(), reply.size()
+));
+assert_equals(std::size_t(12), ::olm_decrypt(
+    a_session, OLM_MESSAGE_TYPE_MESSAGE, encoded.data(), encoded.size(),
+    decrypted_reply.data(), decrypted_reply.size()
+));
+assert_equals(plaintext, decrypted_reply.data(), 12);
+
+// A corrupted raw message fails the MAC check
+reply[reply.size() - 1] ^= 1;
+assert_equals(std::size_t(-1), ::olm_decrypt_raw(
+    a_session, OLM_MESSAGE_TYPE_MESSAGE, reply.data(), reply.size(),
+    decrypted_reply.data(), decrypted_reply.size()
+));
+assert_equals(OLM_BAD_MESSAGE_MAC, ::olm_session_last_error_code(a_session));
+
+}
+
 { /** More messages test */
 
 TestCase test_case("More messages test");
@@ -63,6 +63,9 @@ void decrypt_case(int message_type, const test_case * test_case) {
             std::string(test_case->expected_error),
             std::string(::olm_session_last_error(session))
         );
+        assert_not_equals(
+            OLM_SUCCESS, ::olm_session_last_error_code(session)
+        );
         free(message);
         return;
     }
@@ -5,6 +5,7 @@
 #include "unittest.hh"
 
 #include <iostream>
+#include <thread>
 #include <vector>
 
 int main() {
@@ -75,6 +76,8 @@ olm_pk_encrypt(
 
 assert_equals(bob_public, ephemeral_key.data(), olm_pk_key_length());
 
+std::vector<std::uint8_t> ciphertext_copy(ciphertext_buffer, ciphertext_buffer + ciphertext_length);
+
 size_t max_plaintext_length = olm_pk_max_plaintext_length(decryption, ciphertext_length);
 std::uint8_t *plaintext_buffer = (std::uint8_t *) malloc(max_plaintext_length);
 
@@ -88,11 +91,209 @@ olm_pk_decrypt(
 
 assert_equals(plaintext, plaintext_buffer, plaintext_length);
 
+/* the same object decrypts concurrently, without touching its last error */
+std::vector<std::thread> threads;
+std::vector<int> successes(4, 0);
+for (unsigned t = 0; t < successes.size(); t++) {
+    threads.push_back(std::thread([&, t]() {
+        for (unsigned i = 0; i < 20; i++) {
+            std::vector<std::uint8_t> ciphertext(ciphertext_copy);
+            std::vector<std::uint8_t> thread_plaintext(max_plaintext_length);
+            OlmErrorCode error = OLM_BAD_STATE;
+            size_t length = olm_pk_decrypt_concurrent(
+                decryption,
+                ephemeral_key.data(), ephemeral_key.size(),
+                output_buffer.data(), output_buffer.size(),
+                ciphertext.data(), ciphertext.size(),
+                thread_plaintext.data(), thread_plaintext.size(),
+                &error
+            );
+            if (length == plaintext_length && error == OLM_SUCCESS
+                    && !memcmp(plaintext, thread_plaintext.data(), length)) {
+                successes[t]++;
+            }
+        }
+    }));
+}
+for (std::thread & thread : threads) {
+    thread.join();
+}
+for (int success : successes) {
+    assert_equals(20, success);
+}
+
+OlmErrorCode error = OLM_SUCCESS;
+std::vector<std::uint8_t> ciphertext(ciphertext_copy);
+output_buffer[0] = output_buffer[0] == 'A' ? 'B' : 'A';
+assert_equals(std::size_t(-1), olm_pk_decrypt_concurrent(
+    decryption,
+    ephemeral_key.data(), ephemeral_key.size(),
+    output_buffer.data(), output_buffer.size(),
+    ciphertext.data(), ciphertext.size(),
+    plaintext_buffer, max_plaintext_length,
+    &error
+));
+assert_equals(OLM_BAD_MESSAGE_MAC, error);
+
+ciphertext = ciphertext_copy;
+assert_equals(std::size_t(-1), olm_pk_decrypt_concurrent(
+    decryption,
+    ephemeral_key.data(), ephemeral_key.size() - 1,
+    output_buffer.data(), output_buffer.size(),
+    ciphertext.data(), ciphertext.size(),
+    plaintext_buffer, max_plaintext_length,
+    &error
+));
+assert_equals(OLM_BAD_MESSAGE_FORMAT, error);
+assert_equals(OLM_SUCCESS, olm_pk_decryption_last_error_code(decryption));
+
+/* the single-call path checks the lengths the same way */
+ciphertext = ciphertext_copy;
+assert_equals(std::size_t(-1), olm_pk_decrypt(
+    decryption,
+    ephemeral_key.data(), ephemeral_key.size(),
+    output_buffer.data(), output_buffer.size() - 1,
+    ciphertext.data(), ciphertext.size(),
+    plaintext_buffer, max_plaintext_length
+));
+assert_equals(OLM_BAD_MESSAGE_FORMAT, olm_pk_decryption_last_error_code(decryption));
+
 free(ciphertext_buffer);
 free(plaintext_buffer);
 
 }
 
+{ /* Concurrent encryption */
+
+TestCase test_case("Public Key concurrent encryption");
+
+std::uint8_t alice_private[32] = {
+    0x77, 0x07, 0x6D, 0x0A, 0x73, 0x18, 0xA5, 0x7D,
+    0x3C, 0x16, 0xC1, 0x72, 0x51, 0xB2, 0x66, 0x45,
+    0xDF, 0x4C, 0x2F, 0x87, 0xEB, 0xC0, 0x99, 0x2A,
+    0xB1, 0x77, 0xFB, 0xA5, 0x1D, 0xB9, 0x2C, 0x2A
+};
+
+std::vector<std::uint8_t> decryption_buffer(olm_pk_decryption_size());
+OlmPkDecryption *decryption = olm_pk_decryption(decryption_buffer.data());
+std::vector<std::uint8_t> pubkey(olm_pk_key_length());
+olm_pk_key_from_private(
+    decryption,
+    pubkey.data(), pubkey.size(),
+    alice_private, sizeof(alice_private)
+);
+
+std::vector<std::uint8_t> encryption_buffer(olm_pk_encryption_size());
+OlmPkEncryption *encryption = olm_pk_encryption(encryption_buffer.data());
+olm_pk_encryption_set_recipient_key(encryption, pubkey.data(), pubkey.size());
+
+const size_t plaintext_length = 14;
+const std::uint8_t *plaintext = (std::uint8_t *) "This is a test";
+size_t ciphertext_length = olm_pk_ciphertext_length(encryption, plaintext_length);
+size_t mac_length = olm_pk_mac_length(encryption);
+size_t random_length = olm_pk_encrypt_random_length(encryption);
+
+/* each thread encrypts with its own random, the results all decrypt */
+std::vector<std::thread> threads;
+std::vector<int> successes(4, 0);
+for (unsigned t = 0; t < successes.size(); t++) {
+    threads.push_back(std::thread([&, t]() {
+        for (unsigned i = 0; i < 20; i++) {
+            std::vector<std::uint8_t> random(random_length, (std::uint8_t)(t * 20 + i + 1));
+            std::vector<std::uint8_t> ciphertext(ciphertext_length);
+            std::vector<std::uint8_t> mac(mac_length);
+            std::vector<std::uint8_t> ephemeral_key(olm_pk_key_length());
+            OlmErrorCode error = OLM_BAD_STATE;
+            olm_pk_encrypt_concurrent(
+                encryption,
+                plaintext, plaintext_length,
+                ciphertext.data(), ciphertext.size(),
+                mac.data(), mac.size(),
+                ephemeral_key.data(), ephemeral_key.size(),
+                random.data(), random.size(),
+                &error
+            );
+            if (error != OLM_SUCCESS) {
+                continue;
+            }
+            std::vector<std::uint8_t> thread_plaintext(
+                olm_pk_max_plaintext_length(decryption, ciphertext_length)
+            );
+            size_t length = olm_pk_decrypt_concurrent(
+                decryption,
+                ephemeral_key.data(), ephemeral_key.size(),
+                mac.data(), mac.size(),
+                ciphertext.data(), ciphertext.size(),
+                thread_plaintext.data(), thread_plaintext.size(),
+                &error
+            );
+            if (length == plaintext_length && error == OLM_SUCCESS
+                    && !memcmp(plaintext, thread_plaintext.data(), length)) {
+                successes[t]++;
+            }
+        }
+    }));
+}
+for (std::thread & thread : threads) {
+    thread.join();
+}
+for (int success : successes) {
+    assert_equals(20, success);
+}
+
+/* the same random gives the same message as olm_pk_encrypt */
+std::vector<std::uint8_t> random(random_length, 0x42);
+std::vector<std::uint8_t> ciphertext(ciphertext_length), expected_ciphertext(ciphertext_length);
+std::vector<std::uint8_t> mac(mac_length), expected_mac(mac_length);
+std::vector<std::uint8_t> ephemeral_key(olm_pk_key_length()), expected_ephemeral_key(olm_pk_key_length());
+OlmErrorCode error = OLM_BAD_STATE;
+olm_pk_encrypt(
+    encryption,
+    plaintext, plaintext_length,
+    expected_ciphertext.data(), expected_ciphertext.size(),
+    expected_mac.data(), expected_mac.size(),
+    expected_ephemeral_key.data(), expected_ephemeral_key.size(),
+    random.data(), random.size()
+);
+olm_pk_encrypt_concurrent(
+    encryption,
+    plaintext, plaintext_length,
+    ciphertext.data(), ciphertext.size(),
+    mac.data(), mac.size(),
+    ephemeral_key.data(), ephemeral_key.size(),
+    random.data(), random.size(),
+    &error
+);
+assert_equals(OLM_SUCCESS, error);
+assert_equals(expected_ciphertext.data(), ciphertext.data(), ciphertext_length);
+assert_equals(expected_mac.data(), mac.data(), mac_length);
+assert_equals(expected_ephemeral_key.data(), ephemeral_key.data(), ephemeral_key.size());
+
+assert_equals(std::size_t(-1), olm_pk_encrypt_concurrent(
+    encryption,
+    plaintext, plaintext_length,
+    ciphertext.data(), ciphertext.size(),
+    mac.data(), mac.size() - 1,
+    ephemeral_key.data(), ephemeral_key.size(),
+    random.data(), random.size(),
+    &error
+));
+assert_equals(OLM_OUTPUT_BUFFER_TOO_SMALL, error);
+
+assert_equals(std::size_t(-1), olm_pk_encrypt_concurrent(
+    encryption,
+    plaintext, plaintext_length,
+    ciphertext.data(), ciphertext.size(),
+    mac.data(), mac.size(),
+    ephemeral_key.data(), ephemeral_key.size(),
+    random.data(), random.size() - 1,
+    &error
+));
+assert_equals(OLM_NOT_ENOUGH_RANDOM, error);
+assert_equals(OLM_SUCCESS, olm_pk_encryption_last_error_code(encryption));
+
+}
+
 { /* Encryption Test Case 1 */
 
 TestCase test_case("Public Key Decryption pickling");